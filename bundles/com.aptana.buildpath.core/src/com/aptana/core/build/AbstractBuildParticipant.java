@@ -71,6 +71,7 @@ public abstract class AbstractBuildParticipant implements IBuildParticipant, IEx
 	private static final String NAME = "name"; //$NON-NLS-1$
 	private static final String ID = "id"; //$NON-NLS-1$
 	private static final String ATTR_PRIORITY = "priority"; //$NON-NLS-1$
+	private static final String ATTR_THREAD_SAFE = "threadSafe"; //$NON-NLS-1$
 	public static final int DEFAULT_PRIORITY = 50;
 
 	private int fPriority = DEFAULT_PRIORITY;
@@ -79,6 +80,7 @@ public abstract class AbstractBuildParticipant implements IBuildParticipant, IEx
 	private String fName;
 	private String contributor;
 	private Set<String> projectNatures;
+	private boolean threadSafe;
 
 	/**
 	 * We lazily compile the filters into {@link Pattern}s as we try to match them.
@@ -115,6 +117,15 @@ public abstract class AbstractBuildParticipant implements IBuildParticipant, IEx
 		return false;
 	}
 
+	/**
+	 * By default participants are assumed to hold per-file state and are not thread-safe. Participants can declare
+	 * otherwise through the "threadSafe" attribute of their extension, or by overriding this method.
+	 */
+	public boolean isThreadSafe()
+	{
+		return threadSafe;
+	}
+
 	public boolean isEnabled(BuildType type)
 	{
 		if (isRequired())
@@ -378,6 +389,7 @@ public abstract class AbstractBuildParticipant implements IBuildParticipant, IEx
 		}
 		this.fId = config.getAttribute(ID);
 		this.fName = config.getAttribute(NAME);
+		this.threadSafe = Boolean.valueOf(config.getAttribute(ATTR_THREAD_SAFE));
 		this.contributor = config.getContributor().getName();
 
 		// Read in the content types
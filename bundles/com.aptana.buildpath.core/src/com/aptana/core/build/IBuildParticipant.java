@@ -118,6 +118,14 @@ public interface IBuildParticipant
 	 */
 	public boolean isRequired();
 
+	/**
+	 * Can {@link #buildFile(BuildContext, IProgressMonitor)} be called concurrently for different files? Participants
+	 * that answer false are never run on more than one file at a time, even when the build runs in parallel.
+	 * 
+	 * @return
+	 */
+	public boolean isThreadSafe();
+
 	/**
 	 * Returns the list of filters.
 	 * 
@@ -15,6 +15,14 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileStore;
@@ -33,12 +41,15 @@ import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.jobs.ISchedulingRule;
 
 import com.aptana.buildpath.core.BuildPathCorePlugin;
 import com.aptana.buildpath.core.BuildPathManager;
 import com.aptana.buildpath.core.IBuildPathEntry;
+import com.aptana.buildpath.core.IPreferenceConstants;
 import com.aptana.core.CorePlugin;
 import com.aptana.core.IDebugScopes;
 import com.aptana.core.IFilter;
@@ -63,6 +74,18 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 {
 
 	public static final String ID = "com.aptana.ide.core.unifiedBuilder"; //$NON-NLS-1$
+
+	/**
+	 * The number of files the parallel build may have queued or in flight per worker thread. Bounds the number of
+	 * parsed files held in memory while the builder thread catches up on markers.
+	 */
+	private static final int FILES_IN_FLIGHT_PER_THREAD = 4;
+
+	/**
+	 * The number of built files whose markers are updated in one workspace operation during a parallel build.
+	 */
+	private static final int MARKER_BATCH_SIZE = 50;
+
 	private boolean traceParticipantsEnabled = false;
 
 	public UnifiedBuilder()
@@ -507,6 +530,12 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 			return;
 		}
 
+		if (files.size() > 1 && isParallelBuildEnabled())
+		{
+			doBuildFilesInParallel(participants, files, monitor);
+			return;
+		}
+
 		SubMonitor sub = SubMonitor.convert(monitor, 15 * files.size());
 		for (IFile file : files)
 		{
@@ -533,6 +562,197 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 		sub.done();
 	}
 
+	/**
+	 * Is the parallel build enabled? Overridden in tests.
+	 * 
+	 * @return
+	 */
+	protected boolean isParallelBuildEnabled()
+	{
+		return Platform.getPreferencesService().getBoolean(BuildPathCorePlugin.PLUGIN_ID,
+				IPreferenceConstants.PARALLEL_BUILD, false, null);
+	}
+
+	/**
+	 * The number of worker threads to use in the parallel build.
+	 * 
+	 * @return
+	 */
+	protected int getBuildThreadCount()
+	{
+		int threads = Platform.getPreferencesService().getInt(BuildPathCorePlugin.PLUGIN_ID,
+				IPreferenceConstants.PARALLEL_BUILD_THREADS, 0, null);
+		return (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Builds the files on a bounded pool of worker threads. Each file gets its own {@link BuildContext}, which is
+	 * parsed and handed to the participants on a worker. Participants that aren't thread-safe are only ever run on one
+	 * file at a time. Markers are updated in batches back on the builder thread, which holds the build's scheduling
+	 * rule.
+	 * 
+	 * @param participants
+	 * @param files
+	 * @param monitor
+	 * @throws CoreException
+	 */
+	private void doBuildFilesInParallel(final List<IBuildParticipant> participants, Collection<IFile> files,
+			IProgressMonitor monitor) throws CoreException
+	{
+		final IBuildParticipantManager manager = getBuildParticipantManager();
+		if (manager == null)
+		{
+			return;
+		}
+
+		final SubMonitor sub = SubMonitor.convert(monitor, 2 * files.size());
+		int threads = Math.max(1, Math.min(getBuildThreadCount(), files.size()));
+		int maxInFlight = threads * FILES_IN_FLIGHT_PER_THREAD;
+
+		if (traceLoggingEnabled())
+		{
+			logTrace(MessageFormat.format("Building {0} files of project ''{1}'' on {2} threads", files.size(), //$NON-NLS-1$
+					getProjectHandle().getName(), threads));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new BuildThreadFactory());
+		CompletionService<BuildContext> completion = new ExecutorCompletionService<BuildContext>(executor);
+		List<BuildContext> built = new ArrayList<BuildContext>(MARKER_BATCH_SIZE);
+		int inFlight = 0;
+
+		try
+		{
+			for (final IFile file : files)
+			{
+				// apply back pressure: never have more than maxInFlight files queued or running
+				while (inFlight >= maxInFlight)
+				{
+					collectBuiltFile(completion, built, sub);
+					inFlight--;
+				}
+
+				if (sub.isCanceled())
+				{
+					break;
+				}
+
+				completion.submit(new Callable<BuildContext>()
+				{
+					public BuildContext call() throws Exception
+					{
+						if (sub.isCanceled())
+						{
+							return null;
+						}
+						BuildContext context = new BuildContext(file);
+						List<IBuildParticipant> filteredParticipants = manager.filterParticipants(participants,
+								context.getContentType());
+						buildFileConcurrently(context, filteredParticipants, sub);
+						return context;
+					}
+				});
+				inFlight++;
+
+				if (built.size() >= MARKER_BATCH_SIZE)
+				{
+					updateMarkers(built, sub.newChild(built.size()));
+					built.clear();
+				}
+			}
+
+			// drain the remaining files
+			while (inFlight > 0)
+			{
+				collectBuiltFile(completion, built, sub);
+				inFlight--;
+			}
+			updateMarkers(built, sub.newChild(built.size()));
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+		sub.done();
+	}
+
+	/**
+	 * Waits for the next file built on a worker thread and adds its context to the list of built files.
+	 * 
+	 * @param completion
+	 * @param built
+	 * @param monitor
+	 */
+	private void collectBuiltFile(CompletionService<BuildContext> completion, List<BuildContext> built,
+			SubMonitor monitor)
+	{
+		try
+		{
+			BuildContext context = completion.take().get();
+			if (context != null)
+			{
+				built.add(context);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			monitor.setCanceled(true);
+		}
+		catch (ExecutionException e)
+		{
+			IdeLog.logError(BuildPathCorePlugin.getDefault(), e.getCause());
+		}
+		monitor.worked(1);
+	}
+
+	/**
+	 * Runs the participants over a file on a worker thread. Participants that are not thread-safe are locked so that
+	 * they only build one file at a time.
+	 * 
+	 * @param context
+	 * @param participants
+	 * @param monitor
+	 *            the shared monitor of the build, only used to check for cancellation
+	 */
+	private void buildFileConcurrently(BuildContext context, List<IBuildParticipant> participants,
+			IProgressMonitor monitor)
+	{
+		if (CollectionsUtil.isEmpty(participants))
+		{
+			return;
+		}
+
+		for (IBuildParticipant participant : participants)
+		{
+			long startTime = System.nanoTime();
+			if (participant.isThreadSafe())
+			{
+				participant.buildFile(context, new NullProgressMonitor());
+			}
+			else
+			{
+				synchronized (participant)
+				{
+					participant.buildFile(context, new NullProgressMonitor());
+				}
+			}
+			if (traceParticipantsEnabled)
+			{
+				double endTime = ((double) System.nanoTime() - startTime) / 1000000;
+				IdeLog.logTrace(
+						BuildPathCorePlugin.getDefault(),
+						MessageFormat
+								.format("Executed build participant ''{0}'' on ''{1}'' in {2} ms on {3}.", participant.getName(), context.getURI(), endTime, Thread.currentThread().getName()), IDebugScopes.BUILDER_PARTICIPANTS); //$NON-NLS-1$
+			}
+
+			// stop building if it has been canceled
+			if (monitor.isCanceled())
+			{
+				break;
+			}
+		}
+	}
+
 	/**
 	 * FIXME This is a holy hell of a mess! We map from IFiles to IFileStores, then filter on that, then map back! Can't
 	 * we make the IIndexFilterParticipants also operate on IFiles? It seems like the only impl does anyways.
@@ -659,6 +879,51 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 		}
 	}
 
+	/**
+	 * Updates the markers of a batch of built files in a single workspace operation.
+	 * 
+	 * @param contexts
+	 * @param monitor
+	 */
+	private void updateMarkers(List<BuildContext> contexts, IProgressMonitor monitor)
+	{
+		final List<BuildContext> withProblems = new ArrayList<BuildContext>(contexts.size());
+		for (BuildContext context : contexts)
+		{
+			if (!CollectionsUtil.isEmpty(context.getProblems()))
+			{
+				withProblems.add(context);
+			}
+		}
+		if (withProblems.isEmpty())
+		{
+			return;
+		}
+
+		IWorkspaceRunnable runnable = new IWorkspaceRunnable()
+		{
+			public void run(IProgressMonitor monitor)
+			{
+				SubMonitor sub = SubMonitor.convert(monitor, withProblems.size());
+				for (BuildContext context : withProblems)
+				{
+					updateMarkers(context.getFile(), context.getProblems(), sub.newChild(1));
+				}
+				sub.done();
+			}
+		};
+
+		try
+		{
+			ResourcesPlugin.getWorkspace().run(runnable, getMarkerRule(getProjectHandle()), IWorkspace.AVOID_UPDATE,
+					monitor);
+		}
+		catch (CoreException e)
+		{
+			IdeLog.logError(BuildPathCorePlugin.getDefault(), "Error updating markers", e); //$NON-NLS-1$
+		}
+	}
+
 	/**
 	 * @param resource
 	 * @return
@@ -721,6 +986,21 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 		sub.done();
 	}
 
+	/**
+	 * Creates the daemon worker threads of the parallel build.
+	 */
+	private static class BuildThreadFactory implements ThreadFactory
+	{
+		private static final AtomicInteger COUNT = new AtomicInteger();
+
+		public Thread newThread(Runnable r)
+		{
+			Thread thread = new Thread(r, "Build worker " + COUNT.incrementAndGet()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
 	/**
 	 * Collects all files with infinite depth. Used to grab all files inside an {@link IProject} for full builds.
 	 * 
@@ -35,7 +35,8 @@ import com.aptana.index.core.build.BuildContext;
 public class IndexBuildParticipant extends RequiredBuildParticipant
 {
 
-	private Index fIndex;
+	// Files may be built concurrently, see plugin.xml
+	private volatile Index fIndex;
 	private boolean index_trace_enabled = false;
 	private boolean advanced_trace_enabled = false;
 
@@ -90,6 +90,13 @@ public class LazyBuildParticipant extends AbstractBuildParticipant
 		return getParticipant().isRequired();
 	}
 
+	@Override
+	public boolean isThreadSafe()
+	{
+		// the participant may override the value declared by its extension
+		return getParticipant().isThreadSafe();
+	}
+
 	@Override
 	public void restoreDefaults()
 	{
@@ -28,6 +28,7 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.SubMonitor;
 
+import com.aptana.core.io.vfs.IFileTreeVisitor;
 import com.aptana.core.io.vfs.Policy;
 import com.aptana.ide.core.io.IConnectionPoint;
 import com.aptana.ide.core.io.preferences.CloakingUtils;
@@ -204,7 +205,14 @@ public final class EFSUtils
 		}
 
 		List<IFileStore> list = new ArrayList<IFileStore>();
-		getFiles(file, recurse, list, includeCloakedFiles, progress.newChild(90));
+		if (recurse && file instanceof VirtualFile)
+		{
+			getFiles((VirtualFile) file, list, includeCloakedFiles, progress.newChild(90));
+		}
+		else
+		{
+			getFiles(file, recurse, list, includeCloakedFiles, progress.newChild(90));
+		}
 		return list.toArray(new IFileStore[list.size()]);
 	}
 
@@ -295,6 +303,37 @@ public final class EFSUtils
 		}
 	}
 
+	/**
+	 * Lists a remote tree through its connection, which may list several directories at once and already knows which
+	 * children are directories. Parents are listed before their children, though not necessarily right before.
+	 * 
+	 * @param file
+	 * @param list
+	 * @param includeCloakedFiles
+	 * @param monitor
+	 * @throws CoreException
+	 */
+	private static void getFiles(VirtualFile file, final List<IFileStore> list, final boolean includeCloakedFiles,
+			IProgressMonitor monitor) throws CoreException
+	{
+		if (!isFolder(file, monitor))
+		{
+			return;
+		}
+		file.fetchFileTree(new IFileTreeVisitor()
+		{
+			public boolean include(IFileStore store)
+			{
+				if (includeCloakedFiles || !CloakingUtils.isFileCloaked(store))
+				{
+					list.add(store);
+					return true;
+				}
+				return false;
+			}
+		}, monitor);
+	}
+
 	/**
 	 * Determines if the listed item is a file or a folder.
 	 * 
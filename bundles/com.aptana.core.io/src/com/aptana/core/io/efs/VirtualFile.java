@@ -15,7 +15,9 @@ import java.io.OutputStream;
 import java.net.URI;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileInfo;
@@ -27,7 +29,9 @@ import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 
 import com.aptana.core.io.vfs.IConnectionFileManager;
+import com.aptana.core.io.vfs.IExtendedFileInfo;
 import com.aptana.core.io.vfs.IExtendedFileStore;
+import com.aptana.core.io.vfs.IFileTreeListener;
 import com.aptana.core.io.vfs.IFileTreeVisitor;
 import com.aptana.core.io.vfs.Policy;
 import com.aptana.core.util.URLEncoder;
@@ -214,41 +218,45 @@ public class VirtualFile extends FileStore implements IExtendedFileStore {
 	public URI toCanonicalURI() {
 		return fileManager.getCanonicalURI(path);
 	}
+
+	public String fetchChecksum(String algorithm, IProgressMonitor monitor) throws CoreException {
+		return fileManager.fetchChecksum(path, algorithm, monitor);
+	}
 	
-	public IFileTree fetchFileTree(IFileTreeVisitor visitor, IProgressMonitor monitor) throws CoreException {
+	public IFileTree fetchFileTree(final IFileTreeVisitor visitor, IProgressMonitor monitor) throws CoreException {
 		monitor = Policy.monitorFor(monitor);
+		monitor.beginTask(MessageFormat.format(Messages.VirtualFile_ListingDirectory, path), IProgressMonitor.UNKNOWN);
 		try {
-			FileTree fileTree = new FileTree(this);
-			buildFileTree(fileTree, this, visitor, new InfiniteProgressMonitor(monitor));
+			final FileTree fileTree = new FileTree(this);
+			final Map<IPath, IFileStore> directories = new HashMap<IPath, IFileStore>();
+			directories.put(path, this);
+			fileManager.fetchTree(path, new IFileTreeListener() {
+				public IExtendedFileInfo[] childInfosFetched(IPath dirPath, IExtendedFileInfo[] childInfos) throws CoreException {
+					IFileStore parent = directories.remove(dirPath);
+					List<IFileStore> stores = new ArrayList<IFileStore>();
+					List<IExtendedFileInfo> infos = new ArrayList<IExtendedFileInfo>();
+					for (IExtendedFileInfo fileInfo : childInfos) {
+						IFileStore store = parent.getChild(fileInfo.getName());
+						if (visitor != null && !visitor.include(store)) {
+							continue;
+						}
+						stores.add(store);
+						infos.add(fileInfo);
+						if (fileInfo.isDirectory()) {
+							directories.put(dirPath.append(fileInfo.getName()), store);
+						}
+					}
+					fileTree.addChildren(parent, stores.toArray(new IFileStore[stores.size()]), infos.toArray(new IFileInfo[infos.size()]));
+					return infos.toArray(new IExtendedFileInfo[infos.size()]);
+				}
+			}, new InfiniteProgressMonitor(monitor));
 			return fileTree;
-			} finally {
-				monitor.done();
-			}
+		} finally {
+			monitor.done();
+		}
 	}
 
 	public String toString() {
 	    return toCanonicalURI().toString();
 	}
-
-	private static void buildFileTree(FileTree fileTree, VirtualFile parent, IFileTreeVisitor visitor, IProgressMonitor monitor) throws CoreException {
-		monitor.beginTask(MessageFormat.format(Messages.VirtualFile_ListingDirectory, parent.path), 20);
-		IFileInfo[] infos = parent.fileManager.childInfos(parent.path, IExtendedFileStore.DETAILED, monitor);
-		List<IFileStore> stores = new ArrayList<IFileStore>();
-		List<IFileStore> dirs = new ArrayList<IFileStore>();
-		for (IFileInfo fileInfo : infos) {
-			IFileStore store = parent.getChild(fileInfo.getName());
-			if (visitor != null && !visitor.include(store)) {
-				continue;
-			}
-			stores.add(store);
-			if (fileInfo.isDirectory()) {
-				dirs.add(store);
-			}
-		}
-		fileTree.addChildren(parent, stores.toArray(new IFileStore[stores.size()]), infos);
-		monitor.worked(1);
-		for (IFileStore store : dirs) {
-			buildFileTree(fileTree, (VirtualFile) store, visitor, monitor);
-		}
-	}
 }
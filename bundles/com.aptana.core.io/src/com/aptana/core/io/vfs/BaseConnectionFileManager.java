@@ -15,15 +15,24 @@ package com.aptana.core.io.vfs;
 
 import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileInfo;
@@ -37,7 +46,6 @@ import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Status;
 
 import com.aptana.core.logging.IdeLog;
-import com.aptana.core.util.ExpiringMap;
 import com.aptana.core.util.ProgressMonitorInterrupter;
 import com.aptana.core.util.ProgressMonitorInterrupter.InterruptDelegate;
 import com.aptana.core.util.StringUtil;
@@ -54,8 +62,10 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 {
 
 	protected static final int CACHE_TTL = 60000; /* 1min */
+	protected static final int CACHE_SIZE = 10000;
 
 	private static final int RETRIES_AFTER_FAILURE = 2;
+	private static final long CANCEL_CHECK_INTERVAL = 250;
 	protected static final char[] EMPTY_PASSWORD = StringUtil.EMPTY.toCharArray();
 	protected static final String[] EMPTY_STRING_ARRAY = new String[0];
 	protected static final byte[] EMPTY_BYTES = new byte[0];
@@ -66,8 +76,14 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 	protected IPath basePath;
 	protected String authId;
 
-	private Map<IPath, ExtendedFileInfo> fileInfoCache;
-	private Map<IPath, ExtendedFileInfo[]> fileInfosCache;
+	/**
+	 * Serializes the operations that go through the manager's connection. Cached infos are served without it, and
+	 * subclasses that list or transfer on connections of their own don't take it for those.
+	 */
+	protected final Object connectionLock = new Object();
+
+	private volatile ExpiringPathCache<CachedInfo<ExtendedFileInfo>> fileInfoCache;
+	private volatile ExpiringPathCache<CachedInfo<ExtendedFileInfo[]>> fileInfosCache;
 
 	private final InterruptDelegate interruptDelegate = new InterruptDelegate()
 	{
@@ -97,6 +113,12 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 		}
 	}
 
+	/**
+	 * Turns caching of file infos and listings on or off. It's off unless a subclass turns it on, since changes made
+	 * to the server by anything else go unnoticed until the cached infos expire, for up to {@link #CACHE_TTL} ms.
+	 * 
+	 * @param enabled
+	 */
 	protected final void setCaching(boolean enabled)
 	{
 		if ((fileInfoCache != null) == enabled)
@@ -105,8 +127,8 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 		}
 		if (enabled)
 		{
-			fileInfoCache = new ExpiringMap<IPath, ExtendedFileInfo>(CACHE_TTL);
-			fileInfosCache = new ExpiringMap<IPath, ExtendedFileInfo[]>(CACHE_TTL);
+			fileInfoCache = newCache();
+			fileInfosCache = newCache();
 		}
 		else
 		{
@@ -115,33 +137,64 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 		}
 	}
 
+	/**
+	 * Returns how many files can be read or written at once. Managers that open a separate connection for each
+	 * transfer can allow several; by default streams share one connection, so files are transferred one at a time.
+	 * 
+	 * @return the maximum number of concurrent transfers
+	 */
+	public int getMaxConcurrentTransfers()
+	{
+		return 1;
+	}
+
+	/**
+	 * Returns how many directories {@link #fetchTree(IPath, IFileTreeListener, IProgressMonitor)} may list at once.
+	 * Managers able to list on connections of their own can allow several, and list them in
+	 * {@link #fetchFilesConcurrently(IPath, int, IProgressMonitor)}; by default directories are listed one at a time.
+	 * 
+	 * @return the maximum number of concurrent listings
+	 */
+	protected int getMaxConcurrentListings()
+	{
+		return 1;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.core.io.vfs.IConnectionFileManager#fetchInfo(org.eclipse.core.runtime.IPath, int,
 	 * org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public final synchronized IExtendedFileInfo fetchInfo(IPath path, int options, IProgressMonitor monitor)
-			throws CoreException
+	public final IExtendedFileInfo fetchInfo(IPath path, int options, IProgressMonitor monitor) throws CoreException
 	{
-		monitor = Policy.monitorFor(monitor);
-		monitor.beginTask(
-				MessageFormat.format(Messages.BaseConnectionFileManager_gethering_details, path.toPortableString()), 2);
-		try
+		// cached infos don't wait for the operations under way on the connection
+		ExtendedFileInfo fileInfo = getCachedFileInfo(path, options);
+		if (fileInfo != null)
 		{
-			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(interruptDelegate);
-			ExtendedFileInfo fileInfo = getCachedFileInfo(path);
-			if (fileInfo == null)
-			{
-				testOrConnect(monitor);
-				fileInfo = fetchAndCacheFileInfo(path, options, monitor);
-				setLastOperationTime();
-			}
 			return (IExtendedFileInfo) fileInfo.clone();
 		}
-		finally
+		synchronized (connectionLock)
 		{
-			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
-			monitor.done();
+			monitor = Policy.monitorFor(monitor);
+			monitor.beginTask(MessageFormat.format(Messages.BaseConnectionFileManager_gethering_details,
+					path.toPortableString()), 2);
+			try
+			{
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(interruptDelegate);
+				fileInfo = getCachedFileInfo(path, options);
+				if (fileInfo == null)
+				{
+					testOrConnect(monitor);
+					fileInfo = fetchAndCacheFileInfo(path, options, monitor);
+					setLastOperationTime();
+				}
+				return (IExtendedFileInfo) fileInfo.clone();
+			}
+			finally
+			{
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
+				monitor.done();
+			}
 		}
 	}
 
@@ -150,39 +203,41 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 	 * @see com.aptana.core.io.vfs.IConnectionFileManager#childNames(org.eclipse.core.runtime.IPath, int,
 	 * org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public final synchronized String[] childNames(IPath path, int options, IProgressMonitor monitor)
-			throws CoreException
+	public final String[] childNames(IPath path, int options, IProgressMonitor monitor) throws CoreException
 	{
-		monitor = Policy.monitorFor(monitor);
-		monitor.beginTask(
-				MessageFormat.format(Messages.BaseConnectionFileManager_listing_directory, path.toPortableString()), 2);
-		try
+		ExtendedFileInfo[] fileInfos = getCachedFileInfos(path, EFS.NONE);
+		if (fileInfos != null)
+		{
+			return getNames(fileInfos);
+		}
+		synchronized (connectionLock)
 		{
-			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(interruptDelegate);
-			ExtendedFileInfo[] fileInfos = getCachedFileInfos(path);
-			if (fileInfos != null)
+			monitor = Policy.monitorFor(monitor);
+			monitor.beginTask(MessageFormat.format(Messages.BaseConnectionFileManager_listing_directory,
+					path.toPortableString()), 2);
+			try
 			{
-				List<String> list = new ArrayList<String>();
-				for (ExtendedFileInfo fileInfo : fileInfos)
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(interruptDelegate);
+				fileInfos = getCachedFileInfos(path, EFS.NONE);
+				if (fileInfos != null)
 				{
-					list.add(fileInfo.getName());
+					return getNames(fileInfos);
 				}
-				return list.toArray(new String[list.size()]);
+				testOrConnect(monitor);
+				String[] result = listDirectory(basePath.append(path), monitor);
+				setLastOperationTime();
+				return result;
+			}
+			catch (FileNotFoundException e)
+			{
+				setLastOperationTime();
+				return EMPTY_STRING_ARRAY;
+			}
+			finally
+			{
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
+				monitor.done();
 			}
-			testOrConnect(monitor);
-			String[] result = listDirectory(basePath.append(path), monitor);
-			setLastOperationTime();
-			return result;
-		}
-		catch (FileNotFoundException e)
-		{
-			setLastOperationTime();
-			return EMPTY_STRING_ARRAY;
-		}
-		finally
-		{
-			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
-			monitor.done();
 		}
 	}
 
@@ -191,96 +246,86 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 	 * @see com.aptana.core.io.vfs.IConnectionFileManager#childInfos(org.eclipse.core.runtime.IPath, int,
 	 * org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public final synchronized IExtendedFileInfo[] childInfos(IPath path, int options, IProgressMonitor monitor)
-			throws CoreException
+	public final IExtendedFileInfo[] childInfos(IPath path, int options, IProgressMonitor monitor) throws CoreException
 	{
-		monitor = Policy.monitorFor(monitor);
-		monitor.beginTask(
-				MessageFormat.format(Messages.BaseConnectionFileManager_gethering_details, path.toPortableString()), 2);
 		options = (options & IExtendedFileStore.DETAILED);
-		try
+		ExtendedFileInfo[] fileInfos = getCachedFileInfos(path, options);
+		if (fileInfos != null)
+		{
+			return fileInfos.clone();
+		}
+		synchronized (connectionLock)
 		{
-			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(interruptDelegate);
-			ExtendedFileInfo[] fileInfos = getCachedFileInfos(path);
-			if (fileInfos == null)
+			monitor = Policy.monitorFor(monitor);
+			monitor.beginTask(MessageFormat.format(Messages.BaseConnectionFileManager_gethering_details,
+					path.toPortableString()), 2);
+			try
 			{
-				testOrConnect(monitor);
-				try
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(interruptDelegate);
+				fileInfos = getCachedFileInfos(path, options);
+				if (fileInfos == null)
 				{
-					fileInfos = cache(path, fetchFilesInternal(basePath.append(path), options, monitor));
-					for (ExtendedFileInfo fileInfo : fileInfos)
+					testOrConnect(monitor);
+					try
 					{
-						postProcessFileInfo(fileInfo, basePath.append(path), options, monitor);
-						cache(path.append(fileInfo.getName()), fileInfo);
+						long stamp = ExpiringPathCache.stamp();
+						fileInfos = cacheChildInfos(path, fetchFilesInternal(basePath.append(path), options, monitor),
+								options, stamp, monitor);
+						setLastOperationTime();
+					}
+					catch (FileNotFoundException e)
+					{
+						setLastOperationTime();
+						return EMPTY_FILEINFO_ARRAY;
+					}
+					catch (PermissionDeniedException e)
+					{
+						setLastOperationTime();
+						throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID, MessageFormat.format(
+								Messages.BaseConnectionFileManager_PermissionDenied0, path.toPortableString()), e));
 					}
-					setLastOperationTime();
-				}
-				catch (FileNotFoundException e)
-				{
-					setLastOperationTime();
-					return EMPTY_FILEINFO_ARRAY;
-				}
-				catch (PermissionDeniedException e)
-				{
-					setLastOperationTime();
-					throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID, MessageFormat.format(
-							Messages.BaseConnectionFileManager_PermissionDenied0, path.toPortableString()), e));
 				}
+				return fileInfos.clone();
+			}
+			finally
+			{
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
+				monitor.done();
 			}
-			return fileInfos.clone();
-		}
-		finally
-		{
-			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
-			monitor.done();
 		}
 	}
 
 	/*
 	 * (non-Javadoc)
-	 * @see com.aptana.core.io.vfs.IConnectionFileManager#openInputStream(org.eclipse.core.runtime.IPath, int,
-	 * org.eclipse.core.runtime.IProgressMonitor)
+	 * @see com.aptana.core.io.vfs.IConnectionFileManager#fetchTree(org.eclipse.core.runtime.IPath,
+	 * com.aptana.core.io.vfs.IFileTreeListener, org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public final synchronized InputStream openInputStream(IPath path, int options, IProgressMonitor monitor)
-			throws CoreException
+	public final void fetchTree(IPath path, IFileTreeListener listener, IProgressMonitor monitor) throws CoreException
 	{
 		monitor = Policy.monitorFor(monitor);
 		monitor.beginTask(
-				MessageFormat.format(Messages.BaseConnectionFileManager_opening_file, path.toPortableString()), 3);
+				MessageFormat.format(Messages.BaseConnectionFileManager_gethering_details, path.toPortableString()),
+				IProgressMonitor.UNKNOWN);
 		try
 		{
-			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(interruptDelegate);
-			testOrConnect(monitor);
-			ExtendedFileInfo fileInfo = fetchAndCacheFileInfo(path, Policy.subMonitorFor(monitor, 1));
-			setLastOperationTime();
-			if (!fileInfo.exists())
-			{
-				throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
-						Messages.BaseConnectionFileManager_no_such_file, initFileNotFoundException(path, null)));
-			}
-			if (fileInfo.isDirectory())
+			IExtendedFileInfo[] fileInfos = childInfos(path, IExtendedFileStore.DETAILED,
+					Policy.subMonitorFor(monitor, 1));
+			List<IPath> directories = getDirectories(path, listener.childInfosFetched(path, fileInfos));
+			int listings = getMaxConcurrentListings();
+			if (listings > 1)
 			{
-				throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
-						Messages.BaseConnectionFileManager_file_is_directory, initFileNotFoundException(path, null)));
+				fetchTreeConcurrently(directories, listings, listener, monitor);
+				return;
 			}
-			if (fileInfo.getLength() == 0)
+			// depth first, in the order of a recursive walk
+			LinkedList<IPath> pending = new LinkedList<IPath>(directories);
+			while (!pending.isEmpty())
 			{
-				return new ByteArrayInputStream(EMPTY_BYTES);
+				Policy.checkCanceled(monitor);
+				IPath directory = pending.removeFirst();
+				fileInfos = childInfos(directory, IExtendedFileStore.DETAILED, Policy.subMonitorFor(monitor, 1));
+				pending.addAll(0, getDirectories(directory, listener.childInfosFetched(directory, fileInfos)));
 			}
-			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
-			return readFile(basePath.append(path), Policy.subMonitorFor(monitor, 1));
-		}
-		catch (FileNotFoundException e)
-		{
-			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
-			setLastOperationTime();
-			throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
-					Messages.BaseConnectionFileManager_no_such_file, initFileNotFoundException(path, e.getCause())));
-		}
-		catch (CoreException e)
-		{
-			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
-			throw e;
 		}
 		finally
 		{
@@ -288,270 +333,456 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 		}
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * @see com.aptana.core.io.vfs.IConnectionFileManager#openOutputStream(org.eclipse.core.runtime.IPath, int,
-	 * org.eclipse.core.runtime.IProgressMonitor)
+	/**
+	 * Lists the directories below the top of a tree on several threads at once. The listings are cached and handed to
+	 * the listener on the calling thread, as they come in.
 	 */
-	public final synchronized OutputStream openOutputStream(IPath path, int options, IProgressMonitor monitor)
-			throws CoreException
+	private void fetchTreeConcurrently(List<IPath> directories, int listings, IFileTreeListener listener,
+			IProgressMonitor monitor) throws CoreException
 	{
-		monitor = Policy.monitorFor(monitor);
-		monitor.beginTask(
-				MessageFormat.format(Messages.BaseConnectionFileManager_opening_file, path.toPortableString()), 3);
+		ExecutorService executor = Executors.newFixedThreadPool(listings,
+				ConcurrencyUtils.daemonThreadFactory("Remote listing")); //$NON-NLS-1$
+		CompletionService<Listing> completion = new ExecutorCompletionService<Listing>(executor);
+		IProgressMonitor listingMonitor = ConcurrencyUtils.cancelMonitorFor(monitor);
 		try
 		{
-			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(interruptDelegate);
-			testOrConnect(monitor);
-			ExtendedFileInfo fileInfo = fetchAndCacheFileInfo(path, Policy.subMonitorFor(monitor, 1));
-			setLastOperationTime();
-			if (fileInfo.exists() && fileInfo.isDirectory())
+			int pending = 0;
+			for (IPath directory : directories)
 			{
-				throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
-						Messages.BaseConnectionFileManager_file_is_directory, initFileNotFoundException(path, null)));
+				completion.submit(new Listing(directory, listingMonitor));
+				pending++;
 			}
-			long permissions = -1;
-			boolean useTemporary = canUseTemporaryFile(path, fileInfo, Policy.subMonitorFor(monitor, 1));
-			if (fileInfo.exists())
+			while (pending > 0)
 			{
-				if (useTemporary)
+				Future<Listing> future = completion.poll(CANCEL_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+				Policy.checkCanceled(monitor);
+				if (future == null)
 				{
-					permissions = fileInfo.getPermissions();
+					continue;
 				}
-			}
-			else
-			{
-				// new file; check if to use the user-defined default permissions
-				if (PreferenceUtils.getUpdatePermissions(PermissionDirection.UPLOAD)
-						&& PreferenceUtils.getSpecificPermissions(PermissionDirection.UPLOAD))
+				pending--;
+				Listing listing = future.get();
+				IExtendedFileInfo[] fileInfos = EMPTY_FILEINFO_ARRAY;
+				if (listing.fileInfos != null)
+				{
+					fileInfos = cacheChildInfos(listing.path, listing.fileInfos, IExtendedFileStore.DETAILED,
+							listing.stamp, monitor).clone();
+					setLastOperationTime();
+				}
+				for (IPath directory : getDirectories(listing.path, listener.childInfosFetched(listing.path, fileInfos)))
 				{
-					permissions = PreferenceUtils.getFilePermissions(PermissionDirection.UPLOAD);
+					completion.submit(new Listing(directory, listingMonitor));
+					pending++;
 				}
+				monitor.worked(1);
 			}
-			clearCache(path);
-			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
-			return writeFile(basePath.append(path), useTemporary, permissions, Policy.subMonitorFor(monitor, 1));
 		}
-		catch (FileNotFoundException e)
+		catch (InterruptedException e)
 		{
-			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
-			setLastOperationTime();
-			throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
-					Messages.BaseConnectionFileManager_parent_doesnt_exist, initFileNotFoundException(path,
-							e.getCause())));
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
 		}
-		catch (CoreException e)
+		catch (ExecutionException e)
 		{
-			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
-			throw e;
+			Throwable cause = e.getCause();
+			if (cause instanceof CoreException)
+			{
+				throw (CoreException) cause;
+			}
+			if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException) cause;
+			}
+			throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID, cause.getLocalizedMessage(),
+					cause));
 		}
 		finally
 		{
-			monitor.done();
+			executor.shutdownNow();
+		}
+	}
+
+	private static List<IPath> getDirectories(IPath path, IExtendedFileInfo[] fileInfos)
+	{
+		List<IPath> directories = new ArrayList<IPath>();
+		if (fileInfos != null)
+		{
+			for (IExtendedFileInfo fileInfo : fileInfos)
+			{
+				if (fileInfo.isDirectory())
+				{
+					directories.add(path.append(fileInfo.getName()));
+				}
+			}
 		}
+		return directories;
 	}
 
 	/*
 	 * (non-Javadoc)
-	 * @see com.aptana.core.io.vfs.IConnectionFileManager#delete(org.eclipse.core.runtime.IPath, int,
+	 * @see com.aptana.core.io.vfs.IConnectionFileManager#openInputStream(org.eclipse.core.runtime.IPath, int,
 	 * org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public final synchronized void delete(IPath path, int options, IProgressMonitor monitor) throws CoreException
+	public final InputStream openInputStream(IPath path, int options, IProgressMonitor monitor) throws CoreException
 	{
-		monitor = Policy.monitorFor(monitor);
-		monitor = new InfiniteProgressMonitor(monitor);
-		monitor.beginTask(Messages.BaseConnectionFileManager_deleting, 20);
-		try
+		synchronized (connectionLock)
 		{
-			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(interruptDelegate);
-			testOrConnect(monitor);
-			ExtendedFileInfo fileInfo = getCachedFileInfo(path);
-			if (fileInfo == null)
-			{
-				fileInfo = fetchAndCacheFileInfo(path, IExtendedFileStore.EXISTENCE, Policy.subMonitorFor(monitor, 1));
-			}
-			if (!fileInfo.exists())
-			{
-				return;
-			}
-			Policy.checkCanceled(monitor);
+			monitor = Policy.monitorFor(monitor);
+			monitor.beginTask(
+					MessageFormat.format(Messages.BaseConnectionFileManager_opening_file, path.toPortableString()), 3);
 			try
 			{
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(interruptDelegate);
+				testOrConnect(monitor);
+				ExtendedFileInfo fileInfo = fetchAndCacheFileInfo(path, Policy.subMonitorFor(monitor, 1));
+				setLastOperationTime();
+				if (!fileInfo.exists())
+				{
+					throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
+							Messages.BaseConnectionFileManager_no_such_file, initFileNotFoundException(path, null)));
+				}
 				if (fileInfo.isDirectory())
 				{
-					deleteDirectory(basePath.append(path), monitor);
+					throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
+							Messages.BaseConnectionFileManager_file_is_directory,
+									initFileNotFoundException(path, null)));
 				}
-				else
+				if (fileInfo.getLength() == 0)
 				{
-					deleteFile(basePath.append(path), monitor);
+					return new ByteArrayInputStream(EMPTY_BYTES);
 				}
-				setLastOperationTime();
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
+				return readFile(basePath.append(path), Policy.subMonitorFor(monitor, 1));
 			}
-			catch (FileNotFoundException ignore)
+			catch (FileNotFoundException e)
 			{
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
 				setLastOperationTime();
+				throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
+						Messages.BaseConnectionFileManager_no_such_file,
+								initFileNotFoundException(path, e.getCause())));
+			}
+			catch (CoreException e)
+			{
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
+				throw e;
 			}
 			finally
 			{
-				clearCache(path);
+				monitor.done();
 			}
 		}
-		finally
-		{
-			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
-			monitor.done();
-		}
 	}
 
 	/*
 	 * (non-Javadoc)
-	 * @see com.aptana.core.io.vfs.IConnectionFileManager#mkdir(org.eclipse.core.runtime.IPath, int,
+	 * @see com.aptana.core.io.vfs.IConnectionFileManager#openOutputStream(org.eclipse.core.runtime.IPath, int,
 	 * org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public final synchronized void mkdir(IPath path, int options, IProgressMonitor monitor) throws CoreException
+	public final OutputStream openOutputStream(IPath path, int options, IProgressMonitor monitor) throws CoreException
 	{
-		monitor = Policy.monitorFor(monitor);
-		monitor.beginTask(
-				MessageFormat.format(Messages.BaseConnectionFileManager_creating_folder, path.toPortableString()), 3);
-		try
+		synchronized (connectionLock)
 		{
-			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(interruptDelegate);
-			testOrConnect(monitor);
-			ExtendedFileInfo fileInfo = fetchAndCacheFileInfo(path, IExtendedFileStore.EXISTENCE,
-					Policy.subMonitorFor(monitor, 1));
-			setLastOperationTime();
-			if (fileInfo.exists())
+			monitor = Policy.monitorFor(monitor);
+			monitor.beginTask(
+					MessageFormat.format(Messages.BaseConnectionFileManager_opening_file, path.toPortableString()), 3);
+			try
 			{
-				if (!fileInfo.isDirectory())
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(interruptDelegate);
+				testOrConnect(monitor);
+				ExtendedFileInfo fileInfo = fetchAndCacheFileInfo(path, Policy.subMonitorFor(monitor, 1));
+				setLastOperationTime();
+				if (fileInfo.exists() && fileInfo.isDirectory())
 				{
 					throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
-							Messages.BaseConnectionFileManager_file_already_exists, initFileNotFoundException(path,
-									null)));
+							Messages.BaseConnectionFileManager_file_is_directory,
+									initFileNotFoundException(path, null)));
 				}
-				return;
-			}
-			if ((options & EFS.SHALLOW) != 0 && path.segmentCount() > 1)
-			{
-				fileInfo = fetchAndCacheFileInfo(path.removeLastSegments(1), IExtendedFileStore.EXISTENCE,
-						Policy.subMonitorFor(monitor, 1));
-				setLastOperationTime();
-				if (!fileInfo.exists())
+				long permissions = -1;
+				boolean useTemporary = canUseTemporaryFile(path, fileInfo, Policy.subMonitorFor(monitor, 1));
+				if (fileInfo.exists())
 				{
-					throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
-							Messages.BaseConnectionFileManager_parent_doesnt_exist, initFileNotFoundException(path,
-									null)));
+					if (useTemporary)
+					{
+						permissions = fileInfo.getPermissions();
+					}
 				}
-				if (!fileInfo.isDirectory())
+				else
 				{
-					throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
-							Messages.BaseConnectionFileManager_parent_is_not_directory, initFileNotFoundException(path,
-									null)));
+					// new file; check if to use the user-defined default permissions
+					if (PreferenceUtils.getUpdatePermissions(PermissionDirection.UPLOAD)
+							&& PreferenceUtils.getSpecificPermissions(PermissionDirection.UPLOAD))
+					{
+						permissions = PreferenceUtils.getFilePermissions(PermissionDirection.UPLOAD);
+					}
 				}
-				createDirectory(basePath.append(path), Policy.subMonitorFor(monitor, 1));
+				clearCache(path);
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
+				final IPath writtenPath = path;
+				return new FilterOutputStream(writeFile(basePath.append(path), useTemporary, permissions,
+						Policy.subMonitorFor(monitor, 1)))
+				{
+
+					@Override
+					public void write(byte[] b, int off, int len) throws IOException
+					{
+						out.write(b, off, len);
+					}
+
+					@Override
+					public void close() throws IOException
+					{
+						try
+						{
+							super.close();
+						}
+						finally
+						{
+							// the infos read while it was written are out of date
+							clearCache(writtenPath);
+						}
+					}
+				};
 			}
-			else if (path.segmentCount() == 1)
+			catch (FileNotFoundException e)
 			{
-				createDirectory(basePath.append(path), Policy.subMonitorFor(monitor, 1));
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
+				setLastOperationTime();
+				throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
+						Messages.BaseConnectionFileManager_parent_doesnt_exist, initFileNotFoundException(path,
+								e.getCause())));
 			}
-			else
+			catch (CoreException e)
 			{
-				IProgressMonitor subMonitor = Policy.subMonitorFor(monitor, 1);
-				subMonitor.beginTask(Messages.BaseConnectionFileManager_creating_folders, path.segmentCount());
-				for (int i = path.segmentCount() - 1; i >= 0; --i)
-				{
-					createDirectory(basePath.append(path).removeLastSegments(i), subMonitor);
-					subMonitor.worked(1);
-				}
-				subMonitor.done();
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
+				throw e;
+			}
+			finally
+			{
+				monitor.done();
 			}
-			setLastOperationTime();
-		}
-		catch (FileNotFoundException e)
-		{
-			setLastOperationTime();
-			throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
-					Messages.BaseConnectionFileManager_parent_doesnt_exist, initFileNotFoundException(path, e)
-							.getCause()));
 		}
-		finally
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.core.io.vfs.IConnectionFileManager#delete(org.eclipse.core.runtime.IPath, int,
+	 * org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	public final void delete(IPath path, int options, IProgressMonitor monitor) throws CoreException
+	{
+		synchronized (connectionLock)
 		{
-			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
-			monitor.done();
+			monitor = Policy.monitorFor(monitor);
+			monitor = new InfiniteProgressMonitor(monitor);
+			monitor.beginTask(Messages.BaseConnectionFileManager_deleting, 20);
+			try
+			{
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(interruptDelegate);
+				testOrConnect(monitor);
+				ExtendedFileInfo fileInfo = getCachedFileInfo(path, IExtendedFileStore.EXISTENCE);
+				if (fileInfo == null)
+				{
+					fileInfo = fetchAndCacheFileInfo(path, IExtendedFileStore.EXISTENCE,
+							Policy.subMonitorFor(monitor, 1));
+				}
+				if (!fileInfo.exists())
+				{
+					return;
+				}
+				Policy.checkCanceled(monitor);
+				try
+				{
+					if (fileInfo.isDirectory())
+					{
+						deleteDirectory(basePath.append(path), monitor);
+					}
+					else
+					{
+						deleteFile(basePath.append(path), monitor);
+					}
+					setLastOperationTime();
+				}
+				catch (FileNotFoundException ignore)
+				{
+					setLastOperationTime();
+				}
+				finally
+				{
+					clearCache(path);
+				}
+			}
+			finally
+			{
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
+				monitor.done();
+			}
 		}
 	}
 
 	/*
 	 * (non-Javadoc)
-	 * @see com.aptana.core.io.vfs.IConnectionFileManager#putInfo(org.eclipse.core.runtime.IPath,
-	 * org.eclipse.core.filesystem.IFileInfo, int, org.eclipse.core.runtime.IProgressMonitor)
+	 * @see com.aptana.core.io.vfs.IConnectionFileManager#mkdir(org.eclipse.core.runtime.IPath, int,
+	 * org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public final synchronized void putInfo(IPath path, IFileInfo info, int options, IProgressMonitor monitor)
-			throws CoreException
+	public final void mkdir(IPath path, int options, IProgressMonitor monitor) throws CoreException
 	{
-		monitor = Policy.monitorFor(monitor);
-		monitor.beginTask(
-				MessageFormat.format(Messages.BaseConnectionFileManager_putting_changes, path.toPortableString()), 5);
-		try
+		synchronized (connectionLock)
 		{
-			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(interruptDelegate);
-			testOrConnect(monitor);
-			if ((options & EFS.SET_LAST_MODIFIED) != 0)
+			monitor = Policy.monitorFor(monitor);
+			monitor.beginTask(
+					MessageFormat.format(Messages.BaseConnectionFileManager_creating_folder,
+							path.toPortableString()), 3);
+			try
 			{
-				setModificationTime(basePath.append(path), info.getLastModified(), Policy.subMonitorFor(monitor, 1));
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(interruptDelegate);
+				testOrConnect(monitor);
+				ExtendedFileInfo fileInfo = fetchAndCacheFileInfo(path, IExtendedFileStore.EXISTENCE,
+						Policy.subMonitorFor(monitor, 1));
 				setLastOperationTime();
-			}
-			if ((options & EFS.SET_ATTRIBUTES) != 0 && (options & IExtendedFileInfo.SET_PERMISSIONS) == 0)
-			{
-				ExtendedFileInfo fileInfo = fetchAndCacheFileInfo(path, Policy.subMonitorFor(monitor, 1));
 				if (fileInfo.exists())
 				{
-					long permissions = fileInfo.getPermissions();
-					if (!info.getAttribute(EFS.ATTRIBUTE_READ_ONLY))
+					if (!fileInfo.isDirectory())
 					{
-						permissions |= IExtendedFileInfo.PERMISSION_OWNER_WRITE;
+						throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
+								Messages.BaseConnectionFileManager_file_already_exists, initFileNotFoundException(path,
+										null)));
 					}
-					else
+					return;
+				}
+				IPath created = path;
+				if ((options & EFS.SHALLOW) != 0 && path.segmentCount() > 1)
+				{
+					fileInfo = fetchAndCacheFileInfo(path.removeLastSegments(1), IExtendedFileStore.EXISTENCE,
+							Policy.subMonitorFor(monitor, 1));
+					setLastOperationTime();
+					if (!fileInfo.exists())
 					{
-						permissions &= ~IExtendedFileInfo.PERMISSION_OWNER_WRITE;
+						throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
+								Messages.BaseConnectionFileManager_parent_doesnt_exist, initFileNotFoundException(path,
+										null)));
 					}
-					if (info.getAttribute(EFS.ATTRIBUTE_EXECUTABLE))
+					if (!fileInfo.isDirectory())
 					{
-						permissions |= IExtendedFileInfo.PERMISSION_OWNER_EXECUTE;
+						throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
+								Messages.BaseConnectionFileManager_parent_is_not_directory,
+								initFileNotFoundException(path, null)));
 					}
-					else
+					createDirectory(basePath.append(path), Policy.subMonitorFor(monitor, 1));
+				}
+				else if (path.segmentCount() == 1)
+				{
+					createDirectory(basePath.append(path), Policy.subMonitorFor(monitor, 1));
+				}
+				else
+				{
+					IProgressMonitor subMonitor = Policy.subMonitorFor(monitor, 1);
+					subMonitor.beginTask(Messages.BaseConnectionFileManager_creating_folders, path.segmentCount());
+					created = getFirstMissingAncestor(path, subMonitor);
+					setLastOperationTime();
+					for (int i = path.segmentCount() - created.segmentCount(); i >= 0; --i)
 					{
-						permissions &= ~IExtendedFileInfo.PERMISSION_OWNER_EXECUTE;
+						createDirectory(basePath.append(path).removeLastSegments(i), subMonitor);
+						subMonitor.worked(1);
 					}
-					changeFilePermissions(basePath.append(path), permissions, Policy.subMonitorFor(monitor, 1));
+					subMonitor.done();
 				}
+				// the folders above the ones created, and what's cached about them, are unchanged
+				clearCache(created);
 				setLastOperationTime();
 			}
-			if (info instanceof IExtendedFileInfo)
+			catch (FileNotFoundException e)
+			{
+				setLastOperationTime();
+				throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
+						Messages.BaseConnectionFileManager_parent_doesnt_exist, initFileNotFoundException(path, e)
+								.getCause()));
+			}
+			finally
 			{
-				IExtendedFileInfo extInfo = (IExtendedFileInfo) info;
-				if ((options & IExtendedFileInfo.SET_PERMISSIONS) != 0)
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
+				monitor.done();
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.core.io.vfs.IConnectionFileManager#putInfo(org.eclipse.core.runtime.IPath,
+	 * org.eclipse.core.filesystem.IFileInfo, int, org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	public final void putInfo(IPath path, IFileInfo info, int options, IProgressMonitor monitor) throws CoreException
+	{
+		synchronized (connectionLock)
+		{
+			monitor = Policy.monitorFor(monitor);
+			monitor.beginTask(
+					MessageFormat.format(Messages.BaseConnectionFileManager_putting_changes,
+							path.toPortableString()), 5);
+			try
+			{
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(interruptDelegate);
+				testOrConnect(monitor);
+				if ((options & EFS.SET_LAST_MODIFIED) != 0)
 				{
-					changeFilePermissions(basePath.append(path), extInfo.getPermissions(),
+					setModificationTime(basePath.append(path), info.getLastModified(),
 							Policy.subMonitorFor(monitor, 1));
+					setLastOperationTime();
+				}
+				if ((options & EFS.SET_ATTRIBUTES) != 0 && (options & IExtendedFileInfo.SET_PERMISSIONS) == 0)
+				{
+					ExtendedFileInfo fileInfo = fetchAndCacheFileInfo(path, Policy.subMonitorFor(monitor, 1));
+					if (fileInfo.exists())
+					{
+						long permissions = fileInfo.getPermissions();
+						if (!info.getAttribute(EFS.ATTRIBUTE_READ_ONLY))
+						{
+							permissions |= IExtendedFileInfo.PERMISSION_OWNER_WRITE;
+						}
+						else
+						{
+							permissions &= ~IExtendedFileInfo.PERMISSION_OWNER_WRITE;
+						}
+						if (info.getAttribute(EFS.ATTRIBUTE_EXECUTABLE))
+						{
+							permissions |= IExtendedFileInfo.PERMISSION_OWNER_EXECUTE;
+						}
+						else
+						{
+							permissions &= ~IExtendedFileInfo.PERMISSION_OWNER_EXECUTE;
+						}
+						changeFilePermissions(basePath.append(path), permissions, Policy.subMonitorFor(monitor, 1));
+					}
+					setLastOperationTime();
 				}
-				if ((options & IExtendedFileInfo.SET_GROUP) != 0)
+				if (info instanceof IExtendedFileInfo)
 				{
-					changeFileGroup(basePath.append(path), extInfo.getGroup(), Policy.subMonitorFor(monitor, 1));
+					IExtendedFileInfo extInfo = (IExtendedFileInfo) info;
+					if ((options & IExtendedFileInfo.SET_PERMISSIONS) != 0)
+					{
+						changeFilePermissions(basePath.append(path), extInfo.getPermissions(),
+								Policy.subMonitorFor(monitor, 1));
+					}
+					if ((options & IExtendedFileInfo.SET_GROUP) != 0)
+					{
+						changeFileGroup(basePath.append(path), extInfo.getGroup(), Policy.subMonitorFor(monitor, 1));
+					}
+					setLastOperationTime();
 				}
+			}
+			catch (FileNotFoundException e)
+			{
 				setLastOperationTime();
+				throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
+						Messages.BaseConnectionFileManager_no_such_file,
+								initFileNotFoundException(path, e.getCause())));
+			}
+			finally
+			{
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
+				clearCache(path);
+				monitor.done();
 			}
-		}
-		catch (FileNotFoundException e)
-		{
-			setLastOperationTime();
-			throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
-					Messages.BaseConnectionFileManager_no_such_file, initFileNotFoundException(path, e.getCause())));
-		}
-		finally
-		{
-			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
-			clearCache(path);
-			monitor.done();
 		}
 	}
 
@@ -560,91 +791,149 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 	 * @see com.aptana.core.io.vfs.IConnectionFileManager#move(org.eclipse.core.runtime.IPath,
 	 * org.eclipse.core.runtime.IPath, int, org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public final synchronized void move(IPath sourcePath, IPath destinationPath, int options, IProgressMonitor monitor)
+	public final void move(IPath sourcePath, IPath destinationPath, int options, IProgressMonitor monitor)
 			throws CoreException
 	{
-		monitor = Policy.monitorFor(monitor);
-		monitor.beginTask(
-				MessageFormat.format(Messages.BaseConnectionFileManager_moving, sourcePath.toPortableString()), 5);
-		try
+		synchronized (connectionLock)
 		{
-			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(interruptDelegate);
-			testOrConnect(monitor);
-			ExtendedFileInfo fileInfo = fetchAndCacheFileInfo(sourcePath, IExtendedFileStore.EXISTENCE,
-					Policy.subMonitorFor(monitor, 1));
-			setLastOperationTime();
-			if (!fileInfo.exists())
-			{
-				throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
-						Messages.BaseConnectionFileManager_no_such_file, initFileNotFoundException(sourcePath, null)));
-			}
-			boolean isDirectory = fileInfo.isDirectory();
-			fileInfo = fetchAndCacheFileInfo(destinationPath, IExtendedFileStore.EXISTENCE,
-					Policy.subMonitorFor(monitor, 1));
-			setLastOperationTime();
-			if (fileInfo.exists())
+			monitor = Policy.monitorFor(monitor);
+			monitor.beginTask(
+					MessageFormat.format(Messages.BaseConnectionFileManager_moving, sourcePath.toPortableString()), 5);
+			try
 			{
-				if ((options & EFS.OVERWRITE) == 0)
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(interruptDelegate);
+				testOrConnect(monitor);
+				ExtendedFileInfo fileInfo = fetchAndCacheFileInfo(sourcePath, IExtendedFileStore.EXISTENCE,
+						Policy.subMonitorFor(monitor, 1));
+				setLastOperationTime();
+				if (!fileInfo.exists())
 				{
 					throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
-							Messages.BaseConnectionFileManager_file_already_exists, initFileNotFoundException(
-									destinationPath, null)));
+							Messages.BaseConnectionFileManager_no_such_file,
+									initFileNotFoundException(sourcePath, null)));
 				}
-				if (fileInfo.isDirectory() != isDirectory)
+				boolean isDirectory = fileInfo.isDirectory();
+				fileInfo = fetchAndCacheFileInfo(destinationPath, IExtendedFileStore.EXISTENCE,
+						Policy.subMonitorFor(monitor, 1));
+				setLastOperationTime();
+				if (fileInfo.exists())
 				{
-					throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
-							Messages.BaseConnectionFileManager_cant_move));
+					if ((options & EFS.OVERWRITE) == 0)
+					{
+						throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
+								Messages.BaseConnectionFileManager_file_already_exists, initFileNotFoundException(
+										destinationPath, null)));
+					}
+					if (fileInfo.isDirectory() != isDirectory)
+					{
+						throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
+								Messages.BaseConnectionFileManager_cant_move));
+					}
 				}
-			}
-			else
-			{
-				try
+				else
 				{
-					changeCurrentDir(basePath.append(destinationPath).removeLastSegments(1));
+					try
+					{
+						changeCurrentDir(basePath.append(destinationPath).removeLastSegments(1));
+					}
+					catch (FileNotFoundException e)
+					{
+						setLastOperationTime();
+						throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
+								Messages.BaseConnectionFileManager_parent_doesnt_exist, initFileNotFoundException(
+										destinationPath, e.getCause())));
+					}
+					catch (Exception e)
+					{
+						throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
+								Messages.BaseConnectionFileManager_failed_change_directory, initFileNotFoundException(
+										destinationPath, null)));
+
+					}
 				}
-				catch (FileNotFoundException e)
+				clearCache(sourcePath);
+				clearCache(destinationPath);
+				if (isDirectory)
 				{
-					setLastOperationTime();
-					throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
-							Messages.BaseConnectionFileManager_parent_doesnt_exist, initFileNotFoundException(
-									destinationPath, e.getCause())));
+					renameDirectory(basePath.append(sourcePath), basePath.append(destinationPath),
+							Policy.subMonitorFor(monitor, 2));
 				}
-				catch (Exception e)
+				else
 				{
-					throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
-							Messages.BaseConnectionFileManager_failed_change_directory, initFileNotFoundException(
-									destinationPath, null)));
-
+					renameFile(basePath.append(sourcePath), basePath.append(destinationPath),
+							Policy.subMonitorFor(monitor, 2));
 				}
+				setLastOperationTime();
 			}
-			clearCache(sourcePath);
-			clearCache(destinationPath);
-			if (isDirectory)
+			catch (FileNotFoundException e)
 			{
-				renameDirectory(basePath.append(sourcePath), basePath.append(destinationPath),
-						Policy.subMonitorFor(monitor, 2));
+				setLastOperationTime();
+				throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
+						Messages.BaseConnectionFileManager_no_such_file,
+						initFileNotFoundException(sourcePath, e.getCause())));
 			}
-			else
+			finally
 			{
-				renameFile(basePath.append(sourcePath), basePath.append(destinationPath),
-						Policy.subMonitorFor(monitor, 2));
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
+				monitor.done();
 			}
-			setLastOperationTime();
 		}
-		catch (FileNotFoundException e)
-		{
-			setLastOperationTime();
-			throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
-					Messages.BaseConnectionFileManager_no_such_file,
-					initFileNotFoundException(sourcePath, e.getCause())));
-		}
-		finally
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.core.io.vfs.IConnectionFileManager#fetchChecksum(org.eclipse.core.runtime.IPath,
+	 * java.lang.String, org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	public final String fetchChecksum(IPath path, String algorithm, IProgressMonitor monitor) throws CoreException
+	{
+		synchronized (connectionLock)
 		{
-			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
-			monitor.done();
+			monitor = Policy.monitorFor(monitor);
+			monitor.beginTask(
+					MessageFormat.format(Messages.BaseConnectionFileManager_computing_checksum,
+							path.toPortableString()),
+					2);
+			try
+			{
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(interruptDelegate);
+				testOrConnect(monitor);
+				String checksum = computeChecksum(basePath.append(path), algorithm, monitor);
+				setLastOperationTime();
+				return checksum;
+			}
+			catch (FileNotFoundException e)
+			{
+				setLastOperationTime();
+				return null;
+			}
+			finally
+			{
+				ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
+				monitor.done();
+			}
 		}
 	}
 
+	/**
+	 * Asks the server for the checksum of a file, so it can be compared without being read. By default servers can't
+	 * compute checksums.
+	 * 
+	 * @param path
+	 *            absolute path
+	 * @param algorithm
+	 *            the digest algorithm, e.g. "MD5"
+	 * @param monitor
+	 * @return the checksum as lowercase hex digits, or null if the server can't compute it
+	 * @throws CoreException
+	 * @throws FileNotFoundException
+	 */
+	protected String computeChecksum(IPath path, String algorithm, IProgressMonitor monitor) throws CoreException,
+			FileNotFoundException
+	{
+		return null;
+	}
+
 	protected abstract void testConnection(boolean force);
 
 	protected abstract boolean canUseTemporaryFile(IPath path, ExtendedFileInfo fileInfo, IProgressMonitor monitor);
@@ -758,6 +1047,56 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 		throw new CoreException(multiStatus);
 	}
 
+	/**
+	 * Lists a directory on one of the threads fetching a tree, when more than one listing is allowed at once. Unlike
+	 * {@link #fetchFiles(IPath, int, IProgressMonitor)}, it's called without holding the {@link #connectionLock}, so
+	 * implementations must not use the connection the other operations go through. By default, it waits for the lock
+	 * and lists as usual.
+	 * 
+	 * @param path
+	 *            the absolute path of the directory
+	 * @param options
+	 * @param monitor
+	 *            only ever checked for cancellation
+	 * @return the children of the directory
+	 * @throws CoreException
+	 * @throws FileNotFoundException
+	 * @throws PermissionDeniedException
+	 */
+	protected ExtendedFileInfo[] fetchFilesConcurrently(IPath path, int options, IProgressMonitor monitor)
+			throws CoreException, FileNotFoundException, PermissionDeniedException
+	{
+		synchronized (connectionLock)
+		{
+			return fetchFilesInternal(path, options, monitor);
+		}
+	}
+
+	/**
+	 * Finds the topmost of the folders that have to be created for a path, by looking up its ancestors until one
+	 * exists.
+	 * 
+	 * @param path
+	 *            a path that doesn't exist
+	 * @param monitor
+	 * @return the first ancestor of the path that doesn't exist, or the path itself if its parent exists
+	 * @throws CoreException
+	 */
+	private IPath getFirstMissingAncestor(IPath path, IProgressMonitor monitor) throws CoreException
+	{
+		IPath missing = path;
+		while (missing.segmentCount() > 1)
+		{
+			IPath parent = missing.removeLastSegments(1);
+			if (fetchAndCacheFileInfo(parent, IExtendedFileStore.EXISTENCE, monitor).exists())
+			{
+				break;
+			}
+			missing = parent;
+		}
+		return missing;
+	}
+
 	private ExtendedFileInfo fetchAndCacheFileInfo(IPath path, IProgressMonitor monitor) throws CoreException
 	{
 		return fetchAndCacheFileInfo(path, EFS.NONE, monitor);
@@ -766,6 +1105,7 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 	private ExtendedFileInfo fetchAndCacheFileInfo(IPath path, int options, IProgressMonitor monitor)
 			throws CoreException
 	{
+		long stamp = ExpiringPathCache.stamp();
 		ExtendedFileInfo fileInfo;
 		try
 		{
@@ -788,7 +1128,7 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 			fileInfo.setName(Path.ROOT.toPortableString());
 		}
 		postProcessFileInfo(fileInfo, path, options, monitor);
-		return cache(path, fileInfo);
+		return cache(path, fileInfo, options, stamp);
 	}
 
 	private void postProcessFileInfo(ExtendedFileInfo fileInfo, IPath dirPath, int options, IProgressMonitor monitor)
@@ -856,14 +1196,14 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 				break;
 			}
 			visited.add(targetPath);
-			ExtendedFileInfo targetFileInfo = getCachedFileInfo(targetPath);
+			// targets are fetched as they are, so they aren't cached with the infos that have been processed
+			ExtendedFileInfo targetFileInfo = getCachedFileInfo(targetPath, options);
 			if (targetFileInfo == null)
 			{
 				Policy.checkCanceled(monitor);
 				try
 				{
-					targetFileInfo = cache(targetPath,
-							fetchFileInternal(targetPath, options, Policy.subMonitorFor(monitor, 1)));
+					targetFileInfo = fetchFileInternal(targetPath, options, Policy.subMonitorFor(monitor, 1));
 				}
 				catch (PermissionDeniedException e)
 				{
@@ -871,7 +1211,6 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 					throw initFileNotFoundException(targetPath, e);
 				}
 			}
-			cache(targetPath, targetFileInfo);
 			if (targetFileInfo.getAttribute(EFS.ATTRIBUTE_SYMLINK))
 			{
 				linkTarget = targetFileInfo.getStringAttribute(EFS.ATTRIBUTE_LINK_TARGET);
@@ -883,68 +1222,104 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 		return new ExtendedFileInfo();
 	}
 
-	private final ExtendedFileInfo getCachedFileInfo(IPath path)
+	private static <T> ExpiringPathCache<CachedInfo<T>> newCache()
+	{
+		return new ExpiringPathCache<CachedInfo<T>>(CACHE_TTL, CACHE_SIZE);
+	}
+
+	private final ExtendedFileInfo getCachedFileInfo(IPath path, int options)
 	{
-		return (fileInfoCache != null) ? fileInfoCache.get(path) : null;
+		ExpiringPathCache<CachedInfo<ExtendedFileInfo>> cache = fileInfoCache;
+		CachedInfo<ExtendedFileInfo> cached = (cache != null) ? cache.get(path) : null;
+		return (cached != null && cached.covers(options)) ? cached.value : null;
 	}
 
-	private final ExtendedFileInfo[] getCachedFileInfos(IPath path)
+	private final ExtendedFileInfo[] getCachedFileInfos(IPath path, int options)
 	{
-		return (fileInfosCache != null) ? fileInfosCache.get(path) : null;
+		ExpiringPathCache<CachedInfo<ExtendedFileInfo[]>> cache = fileInfosCache;
+		CachedInfo<ExtendedFileInfo[]> cached = (cache != null) ? cache.get(path) : null;
+		return (cached != null && cached.covers(options)) ? cached.value : null;
 	}
 
-	private final ExtendedFileInfo cache(IPath path, ExtendedFileInfo fileInfo)
+	private final ExtendedFileInfo cache(IPath path, ExtendedFileInfo fileInfo, int options, long stamp)
 	{
-		if (fileInfoCache != null && fileInfo.exists())
+		ExpiringPathCache<CachedInfo<ExtendedFileInfo>> cache = fileInfoCache;
+		if (cache != null && fileInfo.exists() && CachedInfo.isComplete(options))
 		{
-			fileInfoCache.put(path, fileInfo);
+			cache.put(path, new CachedInfo<ExtendedFileInfo>(fileInfo, options), stamp);
 		}
 		return fileInfo;
 	}
 
-	private final ExtendedFileInfo[] cache(IPath path, ExtendedFileInfo[] fileInfos)
+	private ExtendedFileInfo[] cacheChildInfos(IPath path, ExtendedFileInfo[] fileInfos, int options,
+			long stamp, IProgressMonitor monitor) throws CoreException
 	{
-		if (fileInfosCache != null)
+		synchronized (connectionLock)
 		{
-			fileInfosCache.put(path, fileInfos);
+			// processed before they are cached, as cached infos are read without holding the lock
+			for (ExtendedFileInfo fileInfo : fileInfos)
+			{
+				postProcessFileInfo(fileInfo, basePath.append(path), options, monitor);
+				cache(path.append(fileInfo.getName()), fileInfo, options, stamp);
+			}
+			ExpiringPathCache<CachedInfo<ExtendedFileInfo[]>> cache = fileInfosCache;
+			if (cache != null)
+			{
+				cache.put(path, new CachedInfo<ExtendedFileInfo[]>(fileInfos, options), stamp);
+			}
+			return fileInfos;
 		}
-		return fileInfos;
 	}
 
+	/**
+	 * Forgets what is cached about a path and everything below it, as well as the listing of its parent.
+	 * 
+	 * @param path
+	 */
 	protected void clearCache(IPath path)
 	{
-		int segments = path.segmentCount();
-		if (fileInfoCache != null)
+		IPath parent = (path.segmentCount() > 0) ? path.removeLastSegments(1) : null;
+		ExpiringPathCache<CachedInfo<ExtendedFileInfo>> infoCache = fileInfoCache;
+		if (infoCache != null)
 		{
-			for (IPath p : new ArrayList<IPath>(fileInfoCache.keySet()))
+			infoCache.removeTree(path);
+			if (parent != null)
 			{
-				if (p.segmentCount() >= segments && path.matchingFirstSegments(p) == segments)
-				{
-					fileInfoCache.remove(p);
-				}
+				infoCache.remove(parent);
 			}
 		}
-		if (fileInfosCache != null)
+		ExpiringPathCache<CachedInfo<ExtendedFileInfo[]>> infosCache = fileInfosCache;
+		if (infosCache != null)
 		{
-			for (IPath p : new ArrayList<IPath>(fileInfosCache.keySet()))
+			infosCache.removeTree(path);
+			if (parent != null)
 			{
-				if (p.segmentCount() >= segments && path.matchingFirstSegments(p) == segments)
-				{
-					fileInfosCache.remove(p);
-				}
+				infosCache.remove(parent);
 			}
 		}
 	}
 
+	private static String[] getNames(ExtendedFileInfo[] fileInfos)
+	{
+		String[] names = new String[fileInfos.length];
+		for (int i = 0; i < fileInfos.length; ++i)
+		{
+			names[i] = fileInfos[i].getName();
+		}
+		return names;
+	}
+
 	protected final void cleanup()
 	{
-		if (fileInfoCache != null)
+		ExpiringPathCache<CachedInfo<ExtendedFileInfo>> infoCache = fileInfoCache;
+		if (infoCache != null)
 		{
-			fileInfoCache.clear();
+			infoCache.clear();
 		}
-		if (fileInfosCache != null)
+		ExpiringPathCache<CachedInfo<ExtendedFileInfo[]>> infosCache = fileInfosCache;
+		if (infosCache != null)
 		{
-			fileInfosCache.clear();
+			infosCache.clear();
 		}
 	}
 
@@ -983,4 +1358,69 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 		return e;
 	}
 
+	/**
+	 * A cached info, or listing, and whether it has the details of a {@link IExtendedFileStore#DETAILED} fetch.
+	 */
+	private static class CachedInfo<T>
+	{
+		final T value;
+		final boolean detailed;
+
+		CachedInfo(T value, int options)
+		{
+			this.value = value;
+			this.detailed = (options & IExtendedFileStore.DETAILED) != 0;
+		}
+
+		/**
+		 * An {@link IExtendedFileStore#EXISTENCE} fetch only tells whether a file exists and is a directory.
+		 */
+		static boolean isComplete(int options)
+		{
+			int levels = IExtendedFileStore.DETAILED | IExtendedFileStore.EXISTENCE;
+			return (options & levels) != IExtendedFileStore.EXISTENCE;
+		}
+
+		boolean covers(int options)
+		{
+			return detailed || (options & IExtendedFileStore.DETAILED) == 0;
+		}
+	}
+
+	/**
+	 * Lists one directory of a tree.
+	 */
+	private class Listing implements Callable<Listing>
+	{
+		private final IPath path;
+		private final IProgressMonitor monitor;
+		private long stamp;
+		private ExtendedFileInfo[] fileInfos;
+
+		Listing(IPath path, IProgressMonitor monitor)
+		{
+			this.path = path;
+			this.monitor = monitor;
+		}
+
+		public Listing call() throws CoreException
+		{
+			stamp = ExpiringPathCache.stamp();
+			try
+			{
+				fileInfos = fetchFilesConcurrently(basePath.append(path), IExtendedFileStore.DETAILED, monitor);
+			}
+			catch (FileNotFoundException e)
+			{
+				// removed since its parent was listed
+				fileInfos = null;
+			}
+			catch (PermissionDeniedException e)
+			{
+				throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID, MessageFormat.format(
+						Messages.BaseConnectionFileManager_PermissionDenied0, path.toPortableString()), e));
+			}
+			return this;
+		}
+	}
 }
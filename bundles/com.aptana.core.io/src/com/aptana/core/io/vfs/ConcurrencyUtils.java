@@ -0,0 +1,84 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.core.io.vfs;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+/**
+ * Helpers for running file operations, such as listings and transfers, on threads of their own.
+ */
+public final class ConcurrencyUtils
+{
+
+	private ConcurrencyUtils()
+	{
+	}
+
+	/**
+	 * Lets work on other threads check whether an operation has been canceled, without reporting progress from those
+	 * threads.
+	 *
+	 * @param monitor
+	 *            the monitor of the operation
+	 * @return a monitor that only passes on {@link IProgressMonitor#isCanceled()}
+	 */
+	public static IProgressMonitor cancelMonitorFor(IProgressMonitor monitor)
+	{
+		return new CancelMonitor(Policy.monitorFor(monitor));
+	}
+
+	/**
+	 * Creates a factory of daemon threads, so that work left running doesn't keep the VM alive.
+	 *
+	 * @param name
+	 *            what the threads are named, followed by a number
+	 * @return the thread factory
+	 */
+	public static ThreadFactory daemonThreadFactory(String name)
+	{
+		return new DaemonThreadFactory(name);
+	}
+
+	private static class CancelMonitor extends NullProgressMonitor
+	{
+		private final IProgressMonitor monitor;
+
+		CancelMonitor(IProgressMonitor monitor)
+		{
+			this.monitor = monitor;
+		}
+
+		@Override
+		public boolean isCanceled()
+		{
+			return monitor.isCanceled();
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory
+	{
+		private final String name;
+		private final AtomicInteger count = new AtomicInteger();
+
+		DaemonThreadFactory(String name)
+		{
+			this.name = name;
+		}
+
+		public Thread newThread(Runnable r)
+		{
+			Thread thread = new Thread(r, name + ' ' + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,279 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.core.io.vfs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * A thread-safe cache of values by path, such as file infos, which expire after a while. Removing a path together
+ * with everything below it takes constant time: the removal is recorded, and the values below it are dropped as they
+ * are next looked up, or when the cache grows past its size.
+ * <p>
+ * A value fetched while the path was being changed elsewhere can be put with the stamp taken before fetching it, so
+ * that it's dropped if the path was removed in the meantime.
+ */
+public class ExpiringPathCache<V>
+{
+
+	private static final AtomicLong CLOCK = new AtomicLong();
+
+	private final long maxObjectTTL;
+	private final int maxSize;
+	private final ConcurrentMap<IPath, Item<V>> items = new ConcurrentHashMap<IPath, Item<V>>();
+	private final ConcurrentMap<IPath, Stamp> removals = new ConcurrentHashMap<IPath, Stamp>();
+	private final AtomicBoolean purging = new AtomicBoolean();
+	private volatile long cleared;
+
+	/**
+	 * The newest of the removals dropped so far. Values fetched before it, which may have started before the removal
+	 * and still be in flight when it's dropped, are no longer put.
+	 */
+	private volatile long dropped;
+
+	/**
+	 * @param maxObjectTTL
+	 *            how long values are kept, in ms
+	 * @param maxSize
+	 *            how many values are kept at most
+	 */
+	public ExpiringPathCache(long maxObjectTTL, int maxSize)
+	{
+		this.maxObjectTTL = maxObjectTTL;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Returns a stamp to take before fetching a value, and to put it with. Stamps are shared by all caches.
+	 * 
+	 * @return the stamp
+	 */
+	public static long stamp()
+	{
+		return CLOCK.incrementAndGet();
+	}
+
+	/**
+	 * @param path
+	 * @return the value, or null if there isn't any or it has expired
+	 */
+	public V get(IPath path)
+	{
+		Item<V> item = items.get(path);
+		if (item == null)
+		{
+			return null;
+		}
+		if (isStale(path, item, System.currentTimeMillis()))
+		{
+			items.remove(path, item);
+			return null;
+		}
+		return item.value;
+	}
+
+	/**
+	 * @param path
+	 * @param value
+	 */
+	public void put(IPath path, V value)
+	{
+		put(path, value, stamp());
+	}
+
+	/**
+	 * Puts a value, unless its path has been removed since the stamp was taken.
+	 * 
+	 * @param path
+	 * @param value
+	 * @param stamp
+	 *            taken before fetching the value
+	 */
+	public void put(IPath path, V value, long stamp)
+	{
+		Item<V> item = new Item<V>(stamp, value);
+		if (stamp < dropped || isStale(path, item, item.time))
+		{
+			return;
+		}
+		items.put(path, item);
+		if (items.size() > maxSize)
+		{
+			purge();
+		}
+	}
+
+	/**
+	 * Removes the value of a path.
+	 * 
+	 * @param path
+	 */
+	public void remove(IPath path)
+	{
+		items.remove(path);
+	}
+
+	/**
+	 * Removes the values of a path and of everything below it.
+	 * 
+	 * @param path
+	 */
+	public void removeTree(IPath path)
+	{
+		path = path.removeTrailingSeparator();
+		removals.put(path, new Stamp(stamp()));
+		items.remove(path);
+		if (removals.size() > maxSize)
+		{
+			purge();
+		}
+	}
+
+	/**
+	 * Removes all values.
+	 */
+	public void clear()
+	{
+		cleared = stamp();
+		items.clear();
+		removals.clear();
+	}
+
+	/**
+	 * @return how many values are kept, including those that have expired but haven't been dropped yet
+	 */
+	public int size()
+	{
+		return items.size();
+	}
+
+	private boolean isStale(IPath path, Item<V> item, long now)
+	{
+		if (item.time + maxObjectTTL < now || item.stamp < cleared)
+		{
+			return true;
+		}
+		if (removals.isEmpty())
+		{
+			return false;
+		}
+		IPath parent = path.removeTrailingSeparator();
+		while (true)
+		{
+			Stamp removal = removals.get(parent);
+			if (removal != null && removal.stamp > item.stamp)
+			{
+				return true;
+			}
+			if (parent.segmentCount() == 0)
+			{
+				return false;
+			}
+			parent = parent.removeLastSegments(1);
+		}
+	}
+
+	/**
+	 * Drops the values that have expired or were removed and, if that's not enough, the oldest ones, leaving room for
+	 * a quarter more before purging again.
+	 */
+	private void purge()
+	{
+		if (!purging.compareAndSet(false, true))
+		{
+			return;
+		}
+		try
+		{
+			long now = System.currentTimeMillis();
+			List<Map.Entry<IPath, Item<V>>> kept = new ArrayList<Map.Entry<IPath, Item<V>>>();
+			for (Map.Entry<IPath, Item<V>> entry : items.entrySet())
+			{
+				if (isStale(entry.getKey(), entry.getValue(), now))
+				{
+					items.remove(entry.getKey(), entry.getValue());
+				}
+				else
+				{
+					kept.add(entry);
+				}
+			}
+			// values put before a removal have all expired by the time it's this old, and those fetched before it but
+			// not put yet are refused once it's dropped
+			List<Map.Entry<IPath, Stamp>> expired = new ArrayList<Map.Entry<IPath, Stamp>>();
+			long newest = dropped;
+			for (Map.Entry<IPath, Stamp> entry : removals.entrySet())
+			{
+				Stamp removal = entry.getValue();
+				if (removal.time + maxObjectTTL < now)
+				{
+					expired.add(entry);
+					newest = Math.max(newest, removal.stamp);
+				}
+			}
+			dropped = newest;
+			for (Map.Entry<IPath, Stamp> entry : expired)
+			{
+				removals.remove(entry.getKey(), entry.getValue());
+			}
+			int target = maxSize * 3 / 4;
+			if (kept.size() > target)
+			{
+				Collections.sort(kept, new Comparator<Map.Entry<IPath, Item<V>>>()
+				{
+					public int compare(Map.Entry<IPath, Item<V>> o1, Map.Entry<IPath, Item<V>> o2)
+					{
+						long s1 = o1.getValue().stamp;
+						long s2 = o2.getValue().stamp;
+						return (s1 < s2) ? -1 : ((s1 == s2) ? 0 : 1);
+					}
+				});
+				for (Map.Entry<IPath, Item<V>> entry : kept.subList(0, kept.size() - target))
+				{
+					items.remove(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		finally
+		{
+			purging.set(false);
+		}
+	}
+
+	private static class Stamp
+	{
+		final long stamp;
+		final long time;
+
+		Stamp(long stamp)
+		{
+			this.stamp = stamp;
+			this.time = System.currentTimeMillis();
+		}
+	}
+
+	private static class Item<V> extends Stamp
+	{
+		final V value;
+
+		Item(long stamp, V value)
+		{
+			super(stamp);
+			this.value = value;
+		}
+	}
+}
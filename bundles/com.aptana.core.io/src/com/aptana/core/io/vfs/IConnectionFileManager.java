@@ -33,7 +33,19 @@ public interface IConnectionFileManager {
 	public IExtendedFileInfo fetchInfo(IPath path, int options, IProgressMonitor monitor) throws CoreException;
 	public String[] childNames(IPath path, int options, IProgressMonitor monitor) throws CoreException;
 	public IExtendedFileInfo[] childInfos(IPath path, int options, IProgressMonitor monitor) throws CoreException;
-	
+
+	/**
+	 * Lists a directory and, recursively, the directories below it, handing each listing to the listener as soon as
+	 * it is received. Managers that can list on several connections at once list several directories at a time.
+	 *
+	 * @param path
+	 *            the directory at the top of the tree
+	 * @param listener
+	 * @param monitor
+	 * @throws CoreException
+	 */
+	public void fetchTree(IPath path, IFileTreeListener listener, IProgressMonitor monitor) throws CoreException;
+
 	public InputStream openInputStream(IPath path, int options, IProgressMonitor monitor) throws CoreException;
 	public OutputStream openOutputStream(IPath path, int options, IProgressMonitor monitor) throws CoreException;
 
@@ -44,4 +56,16 @@ public interface IConnectionFileManager {
 	
 	public void move(IPath sourcePath, IPath destinationPath, int options, IProgressMonitor monitor) throws CoreException;
 
+	/**
+	 * Returns the checksum of a file as computed by the server.
+	 * 
+	 * @param path
+	 * @param algorithm
+	 *            the digest algorithm, e.g. "MD5"
+	 * @param monitor
+	 * @return the checksum as lowercase hex digits, or null if the server can't compute it
+	 * @throws CoreException
+	 */
+	public String fetchChecksum(IPath path, String algorithm, IProgressMonitor monitor) throws CoreException;
+
 }
@@ -54,4 +54,13 @@ public interface IExtendedFileStore extends IFileStore {
 	 */
 	public IFileTree fetchFileTree(IFileTreeVisitor visitor, IProgressMonitor monitor) throws CoreException;
 
+	/**
+	 * Fetch checksum of the file contents, as computed by the server
+	 * @param algorithm the digest algorithm, e.g. "MD5"
+	 * @param monitor
+	 * @return checksum as lowercase hex digits, or null if the server can't compute it
+	 * @throws CoreException
+	 */
+	public String fetchChecksum(String algorithm, IProgressMonitor monitor) throws CoreException;
+
 }
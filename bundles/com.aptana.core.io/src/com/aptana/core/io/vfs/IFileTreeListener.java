@@ -0,0 +1,34 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.core.io.vfs;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Receives the directories of a file tree as they are listed, while the rest of the tree is still being fetched.
+ *
+ * @see IConnectionFileManager#fetchTree(IPath, IFileTreeListener, org.eclipse.core.runtime.IProgressMonitor)
+ */
+public interface IFileTreeListener
+{
+
+	/**
+	 * The children of a directory have been listed. Called on the thread fetching the tree, one directory at a time,
+	 * and always after the directory itself has been received.
+	 *
+	 * @param path
+	 *            the path of the directory
+	 * @param childInfos
+	 *            the children of the directory
+	 * @return the children to keep; the directories among them are listed in turn.
+	 * @throws CoreException
+	 *             stops fetching the tree
+	 */
+	public IExtendedFileInfo[] childInfosFetched(IPath path, IExtendedFileInfo[] childInfos) throws CoreException;
+}
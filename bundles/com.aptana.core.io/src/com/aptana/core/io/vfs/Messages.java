@@ -19,6 +19,7 @@ public class Messages extends NLS // NO_UCD
 	public static String BaseConnectionFileManager_symlink_resolve_failed;
 
 	public static String BaseConnectionFileManager_cant_move;
+	public static String BaseConnectionFileManager_computing_checksum;
 	public static String BaseConnectionFileManager_creating_folder;
 	public static String BaseConnectionFileManager_creating_folders;
 	public static String BaseConnectionFileManager_deleting;
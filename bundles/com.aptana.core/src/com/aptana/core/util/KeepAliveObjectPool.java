@@ -9,111 +9,402 @@ package com.aptana.core.util;
 
 import java.text.MessageFormat;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
 import com.aptana.core.CorePlugin;
 import com.aptana.core.logging.IdeLog;
 
+/**
+ * A pool of connections, or other objects that are costly to create, holding at most a given number of them at a
+ * time. Once that many are checked out, further check outs wait in line until one is checked back in. A wait only
+ * times out once no object has been checked in for the check out timeout, so a long line keeps waiting as long as
+ * objects keep coming back.
+ * <p>
+ * Idle objects are validated in the background every now and then, which keeps connections from timing out, and are
+ * expired once they have been idle for the release time. The background thread only runs while there are idle
+ * objects.
+ * 
+ * @param <T>
+ */
 public abstract class KeepAliveObjectPool<T> implements IObjectPool<T> {
 
-	private final List<T> locked;
-	private final Map<T, Long> unlocked;
-	private final ConnectionReaper reaper;
+	private static final long KEEP_ALIVE_INTERVAL = 15000; // 15 seconds
+	private static final long DEFAULT_CHECK_OUT_TIMEOUT = 60000; // 1 minute
+	private static final long CANCEL_CHECK_INTERVAL = 250;
+
 	private final int releaseTime;
+	private final int maxSize;
+	private final long checkOutTimeout;
+	/**
+	 * The objects checked out, and when each was last validated.
+	 */
+	private final Map<T, Long> locked = new HashMap<T, Long>();
+	private final LinkedList<Idle<T>> unlocked = new LinkedList<Idle<T>>();
+	private final LinkedList<Waiter> waiters = new LinkedList<Waiter>();
+	private int available;
+	private long lastCheckIn;
+	private int generation;
+	private KeepAlive keepAlive;
+	private int waits;
+	private int creates;
+	private int failures;
 
+	/**
+	 * Creates a pool with no limit on its size.
+	 * 
+	 * @param releaseTime
+	 *            how long idle objects are kept, in ms
+	 */
 	public KeepAliveObjectPool(int releaseTime) {
+		this(releaseTime, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Creates a pool whose check outs wait for a minute without any object being checked in before they give up.
+	 * 
+	 * @param releaseTime
+	 *            how long idle objects are kept, in ms
+	 * @param maxSize
+	 *            how many objects the pool holds at most, checked out or idle
+	 */
+	public KeepAliveObjectPool(int releaseTime, int maxSize) {
+		this(releaseTime, maxSize, DEFAULT_CHECK_OUT_TIMEOUT);
+	}
+
+	/**
+	 * @param releaseTime
+	 *            how long idle objects are kept, in ms
+	 * @param maxSize
+	 *            how many objects the pool holds at most, checked out or idle
+	 * @param checkOutTimeout
+	 *            how long a check out waits when all objects are in use and none is checked in, in ms
+	 */
+	public KeepAliveObjectPool(int releaseTime, int maxSize, long checkOutTimeout) {
 		this.releaseTime = releaseTime;
-		locked = new ArrayList<T>();
-		unlocked = new LinkedHashMap<T, Long>();
+		this.maxSize = maxSize;
+		this.checkOutTimeout = checkOutTimeout;
+		available = maxSize;
+	}
 
-		reaper = new ConnectionReaper();
+	/**
+	 * Checks out an object, waiting for one to be checked in if all of them are in use.
+	 * 
+	 * @return the object, or null if none could be created or the wait timed out
+	 */
+	public T checkOut() {
+		return checkOut(null);
 	}
 
-	protected void start() {
-		reaper.start();
+	/**
+	 * Checks out an object, waiting in line for one to be checked in if all of them are in use.
+	 * 
+	 * @param monitor
+	 *            cancels the wait, may be null
+	 * @return the object, or null if none could be created or the wait timed out
+	 * @throws OperationCanceledException
+	 *             if the monitor was canceled while waiting
+	 */
+	public T checkOut(IProgressMonitor monitor) {
+		if (!acquire(monitor)) {
+			return null;
+		}
+		boolean acquired = true;
+		try {
+			Idle<T> entry;
+			while ((entry = takeIdle()) != null) {
+				// recently validated objects are taken as they are, to save a round trip
+				long validated = entry.validated;
+				if (System.currentTimeMillis() - validated >= KEEP_ALIVE_INTERVAL) {
+					if (!validate(entry.object)) {
+						fail();
+						expire(entry.object);
+						continue;
+					}
+					validated = System.currentTimeMillis();
+				}
+				lock(entry.object, validated, false);
+				acquired = false;
+				return entry.object;
+			}
+			T t = create();
+			if (t == null) {
+				fail();
+				return null;
+			}
+			lock(t, System.currentTimeMillis(), true);
+			acquired = false;
+			return t;
+		} catch (RuntimeException e) {
+			fail();
+			throw e;
+		} finally {
+			if (acquired) {
+				release();
+			}
+		}
 	}
 
 	public synchronized void checkIn(T t) {
-		locked.remove(t);
-		unlocked.put(t, System.currentTimeMillis());
+		Long validated = (t == null) ? null : locked.remove(t);
+		if (validated == null) {
+			return;
+		}
+		// being used doesn't tell whether it's still valid, so it's validated as usual once it's due
+		lastCheckIn = System.currentTimeMillis();
+		unlocked.addFirst(new Idle<T>(t, lastCheckIn, validated));
+		if (keepAlive == null) {
+			keepAlive = new KeepAlive();
+			keepAlive.start();
+		}
+		release();
 	}
 
-	public synchronized T checkOut() {
-		// returns the first valid connection from the unused queue
-		for (T c : unlocked.keySet()) {
-			if (validate(c)) {
-				unlocked.remove(c);
-				locked.add(c);
-				return c;
+	public void dispose() {
+		List<Idle<T>> idle;
+		synchronized (this) {
+			++generation;
+			idle = new ArrayList<Idle<T>>(unlocked);
+			unlocked.clear();
+			if (keepAlive != null) {
+				keepAlive.exit();
+				keepAlive = null;
+			}
+			if (locked.size() > 0) {
+				IdeLog.logWarning(CorePlugin.getDefault(), MessageFormat.format(
+						"Killed a connection pool that still has {0} locked items", locked.size())); //$NON-NLS-1$
 			}
 		}
+		for (Idle<T> entry : idle) {
+			expire(entry.object);
+		}
+	}
+
+	/**
+	 * @return how many objects the pool holds at most
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return how many objects are checked out
+	 */
+	public synchronized int getInUseCount() {
+		return locked.size();
+	}
+
+	/**
+	 * @return how many objects are waiting to be checked out
+	 */
+	public synchronized int getIdleCount() {
+		return unlocked.size();
+	}
+
+	/**
+	 * @return how many check outs had to wait for an object to be checked in
+	 */
+	public synchronized int getWaitCount() {
+		return waits;
+	}
+
+	/**
+	 * @return how many objects have been created
+	 */
+	public synchronized int getCreateCount() {
+		return creates;
+	}
+
+	/**
+	 * @return how many objects failed to be created or validated
+	 */
+	public synchronized int getFailureCount() {
+		return failures;
+	}
 
-		// creates a new connection
-		T c = create();
-		locked.add(c);
-		return c;
+	/**
+	 * Takes a place for an object to be checked out, waiting in line for one to free up. The wait times out once no
+	 * object has been checked in for the check out timeout.
+	 */
+	private synchronized boolean acquire(IProgressMonitor monitor) {
+		if (waiters.isEmpty() && available > 0) {
+			--available;
+			return true;
+		}
+		++waits;
+		Waiter waiter = new Waiter();
+		waiters.add(waiter);
+		long start = System.currentTimeMillis();
+		try {
+			while (!waiter.granted) {
+				long remaining = Math.max(start, lastCheckIn) + checkOutTimeout - System.currentTimeMillis();
+				if (remaining <= 0 || (monitor != null && monitor.isCanceled())) {
+					break;
+				}
+				wait(Math.min(remaining, CANCEL_CHECK_INTERVAL));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (waiter.granted) {
+			return true;
+		}
+		waiters.remove(waiter);
+		if (monitor != null && monitor.isCanceled()) {
+			throw new OperationCanceledException();
+		}
+		return false;
 	}
 
-	public synchronized void dispose() {
-		for (T c : unlocked.keySet()) {
-			expire(c);
+	/**
+	 * Hands a freed place to the first one in line.
+	 */
+	private synchronized void release() {
+		Waiter waiter = waiters.poll();
+		if (waiter != null) {
+			waiter.granted = true;
+			notifyAll();
+		} else {
+			++available;
 		}
-		unlocked.clear();
-		if (locked.size() > 0) {
-			IdeLog.logWarning(CorePlugin.getDefault(),
-					MessageFormat.format(
-					"Killed a connection pool that still has {0} locked items", locked.size())); //$NON-NLS-1$
-			locked.clear();
+	}
+
+	private synchronized Idle<T> takeIdle() {
+		return unlocked.poll();
+	}
+
+	private synchronized void lock(T t, long validated, boolean created) {
+		locked.put(t, validated);
+		if (created) {
+			++creates;
 		}
-		reaper.exit();
 	}
 
-	protected synchronized void reap() {
+	private synchronized void fail() {
+		++failures;
+	}
+
+	/**
+	 * Expires the objects that have been idle for too long, and validates those that haven't been lately. Objects are
+	 * only validated while no one is waiting for a place, and hold one meanwhile.
+	 * 
+	 * @return whether to keep running
+	 */
+	private boolean keepAlive(KeepAlive thread) {
 		long now = System.currentTimeMillis();
-		for (T c : unlocked.keySet()) {
-			if ((now - unlocked.get(c)) > timeToRelease()) {
-				// time to release the connection
-				unlocked.remove(c);
-				expire(c);
-			} else {
-				// keeps the connection alive unless it no longer validates
-				if (!validate(c)) {
-					unlocked.remove(c);
-					expire(c);
+		List<T> expired = new ArrayList<T>();
+		List<Idle<T>> due = new ArrayList<Idle<T>>();
+		int currentGeneration;
+		synchronized (this) {
+			for (Iterator<Idle<T>> i = unlocked.iterator(); i.hasNext();) {
+				Idle<T> entry = i.next();
+				if (now - entry.since > releaseTime) {
+					i.remove();
+					expired.add(entry.object);
+				} else if (now - entry.validated >= KEEP_ALIVE_INTERVAL && waiters.isEmpty() && available > 0) {
+					i.remove();
+					--available;
+					due.add(entry);
 				}
 			}
+			currentGeneration = generation;
+		}
+		for (T t : expired) {
+			expire(t);
+		}
+		for (Idle<T> entry : due) {
+			boolean valid = validate(entry.object);
+			boolean kept = false;
+			synchronized (this) {
+				if (!valid) {
+					++failures;
+				} else if (currentGeneration == generation) {
+					entry.validated = System.currentTimeMillis();
+					putIdle(entry);
+					kept = true;
+				}
+				release();
+			}
+			if (!kept) {
+				expire(entry.object);
+			}
+		}
+		synchronized (this) {
+			if (keepAlive != thread) {
+				return false;
+			}
+			if (unlocked.isEmpty()) {
+				keepAlive = null;
+				return false;
+			}
+			return true;
 		}
 	}
 
-	private int timeToRelease() {
-		int divider = ((unlocked.size() + locked.size()) ^ 2);
-		return releaseTime / (divider > 0 ? divider : 1);
+	/**
+	 * Puts an idle object back in place, the most recently checked in first.
+	 */
+	private void putIdle(Idle<T> entry) {
+		ListIterator<Idle<T>> i = unlocked.listIterator();
+		while (i.hasNext()) {
+			if (i.next().since < entry.since) {
+				i.previous();
+				break;
+			}
+		}
+		i.add(entry);
 	}
 
-	private class ConnectionReaper extends Thread {
+	private static class Idle<T> {
 
-		private static final long INTERVAL = 15000; // 15 seconds
+		final T object;
+		final long since;
+		long validated;
 
-		private boolean isRunning;
+		Idle(T object, long since, long validated) {
+			this.object = object;
+			this.since = since;
+			this.validated = validated;
+		}
+	}
+
+	private static class Waiter {
+
+		boolean granted;
+	}
 
-		public ConnectionReaper() {
+	private class KeepAlive extends Thread {
+
+		private volatile boolean isRunning;
+
+		public KeepAlive() {
+			super("Pool keep-alive"); //$NON-NLS-1$
+			setDaemon(true);
 			isRunning = true;
 		}
 
 		public void run() {
 			while (isRunning) {
 				try {
-					sleep(INTERVAL);
+					sleep(KEEP_ALIVE_INTERVAL);
 				} catch (InterruptedException e) {
 				}
-				reap();
+				if (!isRunning || !keepAlive(this)) {
+					break;
+				}
 			}
 		}
 
 		public void exit() {
 			isRunning = false;
+			interrupt();
 		}
 	}
 }
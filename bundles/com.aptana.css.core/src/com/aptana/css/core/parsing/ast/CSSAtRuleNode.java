@@ -15,6 +15,13 @@ public class CSSAtRuleNode extends CSSNode
 	private String fId;
 	private String fText;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private CSSAtRuleNode()
+	{
+	}
+
 	/**
 	 * CSSAtRuleNode
 	 * 
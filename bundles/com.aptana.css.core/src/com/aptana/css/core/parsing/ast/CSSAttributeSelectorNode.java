@@ -11,6 +11,13 @@ public class CSSAttributeSelectorNode extends CSSNode
 {
 	private String fAttributeText;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private CSSAttributeSelectorNode()
+	{
+	}
+
 	/**
 	 * ":" + function expression
 	 * 
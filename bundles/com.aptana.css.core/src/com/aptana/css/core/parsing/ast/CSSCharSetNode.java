@@ -12,6 +12,13 @@ public class CSSCharSetNode extends CSSNode
 	private String fEncoding;
 	private String fText;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private CSSCharSetNode()
+	{
+	}
+
 	/**
 	 * CSSCharSetNode
 	 * 
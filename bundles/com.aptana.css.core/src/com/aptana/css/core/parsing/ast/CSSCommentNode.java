@@ -11,6 +11,13 @@ public class CSSCommentNode extends CSSNode
 {
 	private String fText;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private CSSCommentNode()
+	{
+	}
+
 	/**
 	 * CSSCommentNode
 	 * 
@@ -11,6 +11,13 @@ public class CSSFunctionNode extends CSSExpressionNode
 {
 	private String fName;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private CSSFunctionNode()
+	{
+	}
+
 	/**
 	 * CSSFunctionNode
 	 * 
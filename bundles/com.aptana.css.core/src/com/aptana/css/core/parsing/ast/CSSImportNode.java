@@ -14,6 +14,13 @@ public class CSSImportNode extends CSSNode
 	private String fUriStr;
 	private CSSTextNode[] fMediaList;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private CSSImportNode()
+	{
+	}
+
 	/**
 	 * CSSImportNode
 	 * 
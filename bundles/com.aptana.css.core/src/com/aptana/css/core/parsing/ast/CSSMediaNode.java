@@ -19,6 +19,13 @@ public class CSSMediaNode extends CSSNode
 	private CSSTextNode[] fMedias;
 	private String fText;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private CSSMediaNode()
+	{
+	}
+
 	/**
 	 * CSSMediaNode
 	 * 
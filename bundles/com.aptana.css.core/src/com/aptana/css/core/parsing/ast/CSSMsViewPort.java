@@ -20,6 +20,13 @@ public class CSSMsViewPort extends CSSNode
 
 	private CSSDeclarationNode[] fDeclarations;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private CSSMsViewPort()
+	{
+	}
+
 	/**
 	 * CSSMsViewPort
 	 */
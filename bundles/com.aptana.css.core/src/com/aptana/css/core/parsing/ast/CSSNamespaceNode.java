@@ -13,6 +13,13 @@ public class CSSNamespaceNode extends CSSNode
 	private String fPrefix;
 	private String fUriStr;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private CSSNamespaceNode()
+	{
+	}
+
 	/**
 	 * CSSNamespaceNode
 	 * 
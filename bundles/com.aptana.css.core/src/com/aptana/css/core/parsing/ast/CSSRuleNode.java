@@ -19,6 +19,13 @@ public class CSSRuleNode extends CSSNode
 	private CSSSelectorNode[] fSelectors;
 	private CSSDeclarationNode[] fDeclarations;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private CSSRuleNode()
+	{
+	}
+
 	/**
 	 * CSSRuleNode
 	 * 
@@ -13,6 +13,13 @@ public class CSSSelectorNode extends CSSNode
 {
 	private String fCombinator;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private CSSSelectorNode()
+	{
+	}
+
 	/**
 	 * CSSSelectorNode
 	 * 
@@ -19,6 +19,13 @@ public class CSSSimpleSelectorNode extends CSSNode
 
 	private String fTypeSelector;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private CSSSimpleSelectorNode()
+	{
+	}
+
 	/**
 	 * CSSSimpleSelectorNode
 	 * 
@@ -11,6 +11,13 @@ public class CSSTermListNode extends CSSExpressionNode
 {
 	private String fSeparator;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private CSSTermListNode()
+	{
+	}
+
 	/**
 	 * CSSTermListNode
 	 * 
@@ -11,6 +11,14 @@ public class CSSTermNode extends CSSExpressionNode
 {
 	private final String fTerm;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private CSSTermNode()
+	{
+		fTerm = null;
+	}
+
 	/**
 	 * CSSTermNode
 	 * 
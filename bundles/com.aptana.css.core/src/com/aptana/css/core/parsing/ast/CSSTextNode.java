@@ -11,6 +11,13 @@ public class CSSTextNode extends CSSNode
 {
 	private String fText;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private CSSTextNode()
+	{
+	}
+
 	/**
 	 * CSSTextNode
 	 * 
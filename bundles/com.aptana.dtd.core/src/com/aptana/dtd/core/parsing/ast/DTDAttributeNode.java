@@ -12,6 +12,13 @@ public class DTDAttributeNode extends DTDNode
 	private String _name;
 	private String _mode;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private DTDAttributeNode()
+	{
+	}
+
 	/**
 	 * DTDAttributeNode
 	 */
@@ -13,6 +13,13 @@ public class DTDElementDeclNode extends DTDNode
 {
 	private String _name;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private DTDElementDeclNode()
+	{
+	}
+
 	/**
 	 * DTDElementDeclarationNode
 	 */
@@ -11,6 +11,13 @@ public class DTDNDataDeclNode extends DTDNode
 {
 	private String _name;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private DTDNDataDeclNode()
+	{
+	}
+
 	/**
 	 * DTDNDataDeclNode
 	 */
@@ -11,6 +11,13 @@ public class DTDProcessingInstructionNode extends DTDNode
 {
 	private String _text;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private DTDProcessingInstructionNode()
+	{
+	}
+
 	/**
 	 * DTDProcessingInstructionNode
 	 */
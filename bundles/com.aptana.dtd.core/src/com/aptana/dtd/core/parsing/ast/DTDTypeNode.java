@@ -11,6 +11,13 @@ public class DTDTypeNode extends DTDNode
 {
 	private String _type;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private DTDTypeNode()
+	{
+	}
+
 	/**
 	 * DTDTypeNode
 	 * 
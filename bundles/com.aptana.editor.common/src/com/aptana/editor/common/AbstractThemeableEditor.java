@@ -8,6 +8,7 @@
 package com.aptana.editor.common;
 
 import java.io.File;
+import java.net.URI;
 import java.text.MessageFormat;
 import java.util.List;
 import java.util.StringTokenizer;
@@ -112,8 +113,10 @@ import com.aptana.editor.common.properties.CommonEditorPropertySheetPage;
 import com.aptana.editor.common.scripting.commands.CommandExecutionUtils;
 import com.aptana.editor.common.text.reconciler.IFoldingComputer;
 import com.aptana.editor.common.text.reconciler.RubyRegexpFolder;
+import com.aptana.editor.common.util.EditorUtil;
 import com.aptana.editor.common.viewer.CommonProjectionViewer;
 import com.aptana.parsing.ParseResult;
+import com.aptana.parsing.ParseState;
 import com.aptana.parsing.ParserPoolFactory;
 import com.aptana.parsing.ast.IParseNode;
 import com.aptana.parsing.ast.IParseRootNode;
@@ -1187,7 +1190,11 @@ public abstract class AbstractThemeableEditor extends AbstractFoldingEditor impl
 	 */
 	protected ParseResult doGetAST(IDocument document) throws Exception
 	{
-		return ParserPoolFactory.parse(getContentType(), document.get());
+		// name the source, so parsers that reuse their recent parses only reuse the ones of this file
+		URI uri = EditorUtil.getURI(this);
+		String name = (uri == null) ? null : uri.toString();
+
+		return ParserPoolFactory.parse(getContentType(), new ParseState(document.get(), name));
 	}
 
 	/**
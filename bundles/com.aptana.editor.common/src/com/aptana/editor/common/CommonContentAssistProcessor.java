@@ -23,8 +23,13 @@ import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.PerformanceStats;
 import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
 import org.eclipse.core.runtime.preferences.InstanceScope;
@@ -53,8 +58,9 @@ import com.aptana.core.util.CollectionsUtil;
 import com.aptana.core.util.StringUtil;
 import com.aptana.editor.common.contentassist.CommonCompletionProposal;
 import com.aptana.editor.common.contentassist.CompletionProposalComparator;
+import com.aptana.editor.common.contentassist.IAsyncContentAssistProcessor;
 import com.aptana.editor.common.contentassist.ICommonCompletionProposal;
-import com.aptana.editor.common.contentassist.ICommonContentAssistProcessor;
+import com.aptana.editor.common.contentassist.ICompletionProposalCollector;
 import com.aptana.editor.common.contentassist.IPreferenceConstants;
 import com.aptana.editor.common.contentassist.UserAgentFilterType;
 import com.aptana.editor.common.contentassist.UserAgentManager;
@@ -72,9 +78,206 @@ import com.aptana.scripting.model.ContentAssistElement;
 import com.aptana.scripting.model.filters.ScopeFilter;
 import com.aptana.ui.util.UIUtils;
 
-public class CommonContentAssistProcessor implements IContentAssistProcessor, ICommonContentAssistProcessor,
+public class CommonContentAssistProcessor implements IContentAssistProcessor, IAsyncContentAssistProcessor,
 		IPreferenceChangeListener
 {
+	/**
+	 * An independent part of the proposals of a processor, such as the keywords or the globals from the index. In
+	 * asynchronous mode each source is computed on a background job, so it mustn't touch any widgets, nor read the
+	 * document or processor state the next invocation may change; whatever it depends on is taken when it's created.
+	 */
+	protected static abstract class ProposalSource
+	{
+		private final String name;
+
+		protected ProposalSource(String name)
+		{
+			this.name = name;
+		}
+
+		/**
+		 * getName
+		 * 
+		 * @return
+		 */
+		public String getName()
+		{
+			return name;
+		}
+
+		/**
+		 * Computes the proposals of this source.
+		 * 
+		 * @param monitor
+		 *            canceled once the proposals are no longer wanted, so that the source may stop early
+		 * @return
+		 */
+		public abstract Collection<ICompletionProposal> computeProposals(IProgressMonitor monitor);
+	}
+
+	/**
+	 * The proposal sources of one content assist invocation, computed on background jobs. The proposals of the sources
+	 * that finish before the deadline are returned right away, and each source finishing later reports the updated
+	 * list to the collector.
+	 */
+	private class ProposalComputation
+	{
+		private final ITextViewer viewer;
+		private final int offset;
+		private final Collection<ICompletionProposal> otherProposals;
+		private final ICompletionProposalCollector collector;
+		private final List<Collection<ICompletionProposal>> results;
+		private final List<Job> jobs;
+		private int pending;
+		private boolean returned;
+		private volatile boolean cancelled;
+
+		private ProposalComputation(ITextViewer viewer, int offset, Collection<ICompletionProposal> otherProposals,
+				ICompletionProposalCollector collector)
+		{
+			this.viewer = viewer;
+			this.offset = offset;
+			this.otherProposals = otherProposals;
+			this.collector = collector;
+			this.results = new ArrayList<Collection<ICompletionProposal>>();
+			this.jobs = new ArrayList<Job>();
+		}
+
+		private void schedule(List<ProposalSource> sources)
+		{
+			for (final ProposalSource source : sources)
+			{
+				final int index = results.size();
+				results.add(null);
+				Job job = new Job(MessageFormat.format("Computing {0} proposals", source.getName())) //$NON-NLS-1$
+				{
+					@Override
+					protected IStatus run(final IProgressMonitor monitor)
+					{
+						Collection<ICompletionProposal> proposals = null;
+						try
+						{
+							// the popup may be closed without the computation being cancelled
+							IProgressMonitor cancelMonitor = new NullProgressMonitor()
+							{
+								@Override
+								public boolean isCanceled()
+								{
+									return monitor.isCanceled() || isCancelled();
+								}
+							};
+							if (!cancelMonitor.isCanceled())
+							{
+								proposals = source.computeProposals(cancelMonitor);
+							}
+						}
+						catch (RuntimeException e)
+						{
+							IdeLog.logError(CommonEditorPlugin.getDefault(), MessageFormat.format(
+									"Failed to compute {0} proposals", source.getName()), e); //$NON-NLS-1$
+						}
+						finally
+						{
+							sourceDone(index, proposals);
+						}
+						return Status.OK_STATUS;
+					}
+				};
+				job.setSystem(true);
+				job.setPriority(Job.INTERACTIVE);
+				jobs.add(job);
+			}
+			pending = jobs.size();
+			for (Job job : jobs)
+			{
+				job.schedule();
+			}
+		}
+
+		/**
+		 * Waits for the sources until the deadline has passed and returns the proposals of the ones that are done.
+		 */
+		private synchronized ICompletionProposal[] awaitProposals(long deadline)
+		{
+			long end = System.currentTimeMillis() + deadline;
+			while (pending > 0)
+			{
+				long remaining = end - System.currentTimeMillis();
+				if (remaining <= 0)
+				{
+					break;
+				}
+				try
+				{
+					wait(remaining);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+
+			returned = true;
+			if (pending == 0)
+			{
+				collector.done();
+			}
+			return getSourceProposals();
+		}
+
+		private synchronized void sourceDone(int index, Collection<ICompletionProposal> proposals)
+		{
+			results.set(index, (proposals == null) ? Collections.<ICompletionProposal> emptyList() : proposals);
+			pending--;
+			if (!returned)
+			{
+				notifyAll();
+				return;
+			}
+			if (isCancelled())
+			{
+				return;
+			}
+			if (!CollectionsUtil.isEmpty(proposals))
+			{
+				collector.setProposals(combineProposals(otherProposals, getSourceProposals()));
+			}
+			if (pending == 0)
+			{
+				collector.done();
+			}
+		}
+
+		private ICompletionProposal[] getSourceProposals()
+		{
+			List<ICompletionProposal> proposals = new ArrayList<ICompletionProposal>();
+			for (Collection<ICompletionProposal> result : results)
+			{
+				if (result != null)
+				{
+					proposals.addAll(result);
+				}
+			}
+			return mergeSourceProposals(viewer, offset, proposals);
+		}
+
+		private boolean isCancelled()
+		{
+			return cancelled || collector.isCancelled();
+		}
+
+		private void cancel()
+		{
+			cancelled = true;
+			for (Job job : jobs)
+			{
+				job.cancel();
+			}
+		}
+	}
+
+
 	/**
 	 * Default image to use for ruble-contributed proposals (that don't override image)
 	 */
@@ -103,6 +306,11 @@ public class CommonContentAssistProcessor implements IContentAssistProcessor, IC
 
 	protected final AbstractThemeableEditor editor;
 
+	/**
+	 * The background computation of the latest invocation in asynchronous mode
+	 */
+	private ProposalComputation computation;
+
 	/**
 	 * IndexContentAssistProcessor
 	 * 
@@ -400,6 +608,20 @@ public class CommonContentAssistProcessor implements IContentAssistProcessor, IC
 	public ICompletionProposal[] computeCompletionProposals(ITextViewer viewer, int offset, char activationChar,
 			boolean autoActivated)
 	{
+		return computeCompletionProposals(viewer, offset, activationChar, autoActivated, null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * com.aptana.editor.common.contentassist.IAsyncContentAssistProcessor#computeCompletionProposals(org.eclipse.jface
+	 * .text.ITextViewer, int, char, boolean, com.aptana.editor.common.contentassist.ICompletionProposalCollector)
+	 */
+	public ICompletionProposal[] computeCompletionProposals(ITextViewer viewer, int offset, char activationChar,
+			boolean autoActivated, ICompletionProposalCollector collector)
+	{
+		cancelComputation();
+
 		PerformanceStats stats = null;
 		try
 		{
@@ -414,8 +636,27 @@ public class CommonContentAssistProcessor implements IContentAssistProcessor, IC
 
 			Collection<ICompletionProposal> proposals = CollectionsUtil.union(rubleProposals, snippetProposals);
 
-			ICompletionProposal[] others = this.doComputeCompletionProposals(viewer, offset, activationChar,
-					autoActivated);
+			List<ProposalSource> sources = null;
+			if (collector != null && isAsync())
+			{
+				sources = getProposalSources(viewer, offset, activationChar, autoActivated);
+			}
+
+			ICompletionProposal[] others;
+			if (sources != null)
+			{
+				computation = new ProposalComputation(viewer, offset, proposals, collector);
+				computation.schedule(sources);
+				others = computation.awaitProposals(getAsyncDeadline());
+			}
+			else
+			{
+				others = this.doComputeCompletionProposals(viewer, offset, activationChar, autoActivated);
+				if (collector != null)
+				{
+					collector.done();
+				}
+			}
 
 			// create empty array to simplify logic
 			if (others == null)
@@ -430,23 +671,8 @@ public class CommonContentAssistProcessor implements IContentAssistProcessor, IC
 						rubleProposals.size(), snippetProposals.size(), others.length), IDebugScopes.CONTENT_ASSIST);
 			}
 
-			// Combine the two
-			ICompletionProposal[] combined = new ICompletionProposal[proposals.size() + others.length];
-			proposals.toArray(combined);
-			System.arraycopy(others, 0, combined, proposals.size(), others.length);
-
-			if (IdeLog.isTraceEnabled(CommonEditorPlugin.getDefault(), IDebugScopes.CONTENT_ASSIST))
-			{
-				IdeLog.logTrace(CommonEditorPlugin.getDefault(),
-						MessageFormat.format("Combined {0} total proposals", combined.length), //$NON-NLS-1$
-						IDebugScopes.CONTENT_ASSIST);
-			}
-
-			// sort proposals using default mechanism
-			sortProposals(combined);
-
 			// selection currently is set to first item in list
-			return combined;
+			return combineProposals(proposals, others);
 		}
 		finally
 		{
@@ -457,6 +683,45 @@ public class CommonContentAssistProcessor implements IContentAssistProcessor, IC
 		}
 	}
 
+	/**
+	 * Combines the ruble and snippet proposals with the language proposals and sorts them
+	 * 
+	 * @param proposals
+	 * @param others
+	 * @return
+	 */
+	private ICompletionProposal[] combineProposals(Collection<ICompletionProposal> proposals,
+			ICompletionProposal[] others)
+	{
+		// Combine the two
+		ICompletionProposal[] combined = new ICompletionProposal[proposals.size() + others.length];
+		proposals.toArray(combined);
+		System.arraycopy(others, 0, combined, proposals.size(), others.length);
+
+		if (IdeLog.isTraceEnabled(CommonEditorPlugin.getDefault(), IDebugScopes.CONTENT_ASSIST))
+		{
+			IdeLog.logTrace(CommonEditorPlugin.getDefault(),
+					MessageFormat.format("Combined {0} total proposals", combined.length), //$NON-NLS-1$
+					IDebugScopes.CONTENT_ASSIST);
+		}
+
+		// sort proposals using default mechanism
+		sortProposals(combined);
+		return combined;
+	}
+
+	/**
+	 * Cancels the background computation of the previous invocation, if any
+	 */
+	private void cancelComputation()
+	{
+		if (computation != null)
+		{
+			computation.cancel();
+			computation = null;
+		}
+	}
+
 	/**
 	 * computeCompletionProposalsUsingIndex
 	 * 
@@ -486,6 +751,7 @@ public class CommonContentAssistProcessor implements IContentAssistProcessor, IC
 	 */
 	public void dispose()
 	{
+		cancelComputation();
 		if (getPreferenceNodeQualifier() != null)
 		{
 			InstanceScope.INSTANCE.getNode(getPreferenceNodeQualifier()).removePreferenceChangeListener(this);
@@ -500,6 +766,40 @@ public class CommonContentAssistProcessor implements IContentAssistProcessor, IC
 		return computeCompletionProposals(viewer, offset);
 	}
 
+	/**
+	 * Returns the sources of the language proposals to compute in the background in asynchronous mode. Anything a
+	 * source depends on, like the location in the document, has to be determined here. The default implementation
+	 * returns <code>null</code>, which has {@link #doComputeCompletionProposals(ITextViewer, int, char, boolean)}
+	 * compute the proposals synchronously.
+	 * 
+	 * @param viewer
+	 * @param offset
+	 * @param activationChar
+	 * @param autoActivated
+	 * @return
+	 */
+	protected List<ProposalSource> getProposalSources(ITextViewer viewer, int offset, char activationChar,
+			boolean autoActivated)
+	{
+		return null;
+	}
+
+	/**
+	 * Turns the proposals of all sources finished so far, in source order, into the language proposals, e.g. by
+	 * removing duplicates. This may be called on a background job. The default implementation returns them as they
+	 * are.
+	 * 
+	 * @param viewer
+	 * @param offset
+	 * @param proposals
+	 * @return
+	 */
+	protected ICompletionProposal[] mergeSourceProposals(ITextViewer viewer, int offset,
+			List<ICompletionProposal> proposals)
+	{
+		return proposals.toArray(new ICompletionProposal[proposals.size()]);
+	}
+
 	/**
 	 * getActiveUserAgentIds
 	 * 
@@ -530,6 +830,17 @@ public class CommonContentAssistProcessor implements IContentAssistProcessor, IC
 		return editor.getAST();
 	}
 
+	/**
+	 * Returns how long to wait for background proposals before returning the ones computed so far
+	 * 
+	 * @return
+	 */
+	protected long getAsyncDeadline()
+	{
+		return CommonEditorPlugin.getDefault().getPreferenceStore()
+				.getInt(com.aptana.editor.common.preferences.IPreferenceConstants.CONTENT_ASSIST_ASYNC_DEADLINE);
+	}
+
 	/**
 	 * getBundleManager
 	 * 
@@ -712,6 +1023,17 @@ public class CommonContentAssistProcessor implements IContentAssistProcessor, IC
 		return result;
 	}
 
+	/**
+	 * Are proposals computed in the background, showing the first ones before all are computed?
+	 * 
+	 * @return
+	 */
+	protected boolean isAsync()
+	{
+		return CommonEditorPlugin.getDefault().getPreferenceStore()
+				.getBoolean(com.aptana.editor.common.preferences.IPreferenceConstants.CONTENT_ASSIST_ASYNC);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.common.contentassist.ICommonContentAssistProcessor#isValidActivationCharacter(char, int)
@@ -97,6 +97,7 @@ public abstract class CommonSourceViewerConfiguration extends TextSourceViewerCo
 	public static final int NO_CONTENT_ASSIST_DELAY = 0;
 	public static final int DEFAULT_CONTENT_ASSIST_DELAY = 200;
 	public static final int LONG_CONTENT_ASSIST_DELAY = 1000;
+	public static final int DEFAULT_CONTENT_ASSIST_ASYNC_DEADLINE = 100;
 	private boolean disableBackgroundReconciler = false;
 
 	public static final String CONTENTTYPE_HTML_PREFIX = "com.aptana.contenttype.html"; //$NON-NLS-1$
@@ -0,0 +1,81 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.editor.common.contentassist;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.swt.graphics.Image;
+
+import com.aptana.core.IUserAgent;
+
+/**
+ * The enabled and disabled icons of the active user agents of a project. Icons can only be created on the UI thread,
+ * so they're all created along with this object, which then hands them out on any thread, e.g. to proposals computed
+ * on background jobs.
+ *
+ * @see UserAgentManager#createUserAgentImages(org.eclipse.core.resources.IProject)
+ */
+public class UserAgentImages
+{
+	private final IUserAgent[] userAgents;
+	private final Image[] enabledIcons;
+	private final Image[] disabledIcons;
+
+	/**
+	 * @param userAgents
+	 *            the active user agents, sorted
+	 * @param enabledIcons
+	 *            the enabled icon of each user agent
+	 * @param disabledIcons
+	 *            the disabled icon of each user agent
+	 */
+	UserAgentImages(IUserAgent[] userAgents, Image[] enabledIcons, Image[] disabledIcons)
+	{
+		this.userAgents = userAgents;
+		this.enabledIcons = enabledIcons;
+		this.disabledIcons = disabledIcons;
+	}
+
+	/**
+	 * Return an array of icons, one for each active user agent. The user agents in the specified array get enabled
+	 * icons, all others get disabled icons.
+	 *
+	 * @param userAgentIds
+	 *            An array of user agent IDs
+	 * @return Returns an array of Images
+	 */
+	public Image[] getImages(String... userAgentIds)
+	{
+		Set<String> enabledAgents;
+		if (userAgentIds == null)
+		{
+			enabledAgents = Collections.emptySet();
+		}
+		else
+		{
+			enabledAgents = new HashSet<String>(Arrays.asList(userAgentIds));
+		}
+		Image[] result = new Image[userAgents.length];
+
+		for (int i = 0; i < userAgents.length; i++)
+		{
+			IUserAgent userAgent = userAgents[i];
+
+			if (userAgent != null)
+			{
+				boolean isEnabled = enabledAgents.contains(userAgent.getID());
+				result[i] = isEnabled ? enabledIcons[i] : disabledIcons[i];
+			}
+		}
+
+		return result;
+	}
+}
@@ -9,12 +9,9 @@ package com.aptana.editor.common.contentassist;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.ProjectScope;
@@ -305,18 +302,23 @@ public class UserAgentManager implements IUserAgentManager
 	 * @return Returns an array of Images
 	 */
 	public Image[] getUserAgentImages(IProject project, String... userAgents)
+	{
+		return createUserAgentImages(project).getImages(userAgents);
+	}
+
+	/**
+	 * Creates the enabled and disabled icons of the active user agents of the specified project, as determined by
+	 * {@link #getActiveUserAgents(IProject)}. This has to be called on the UI thread, but the icons can then be looked
+	 * up on any thread.
+	 * 
+	 * @param project
+	 * @return Returns the icons of the active user agents
+	 */
+	public UserAgentImages createUserAgentImages(IProject project)
 	{
 		IUserAgent[] activeUserAgents = getActiveUserAgents(project);
-		Set<String> enabledAgents;
-		if (userAgents == null)
-		{
-			enabledAgents = Collections.emptySet();
-		}
-		else
-		{
-			enabledAgents = new HashSet<String>(Arrays.asList(userAgents));
-		}
-		Image[] result = new Image[activeUserAgents.length];
+		Image[] enabledIcons = new Image[activeUserAgents.length];
+		Image[] disabledIcons = new Image[activeUserAgents.length];
 
 		Arrays.sort(activeUserAgents);
 
@@ -326,12 +328,12 @@ public class UserAgentManager implements IUserAgentManager
 
 			if (userAgent != null)
 			{
-				boolean isEnabled = enabledAgents.contains(userAgent.getID());
-				result[i] = isEnabled ? getEnabledIcon(userAgent) : getDisabledIcon(userAgent);
+				enabledIcons[i] = getEnabledIcon(userAgent);
+				disabledIcons[i] = getDisabledIcon(userAgent);
 			}
 		}
 
-		return result;
+		return new UserAgentImages(activeUserAgents, enabledIcons, disabledIcons);
 	}
 
 	/**
@@ -225,6 +225,14 @@ public class ContentAssistPreferencePage extends PropertyAndPreferenceFieldEdito
 			)
 		);
 
+		addField(
+			new BooleanFieldEditor(
+				IPreferenceConstants.CONTENT_ASSIST_ASYNC,
+				Messages.EditorsPreferencePage_Content_Assist_Async,
+				parent
+			)
+		);
+
 		addField(
 			new ComboFieldEditor(
 				IPreferenceConstants.CONTENT_ASSIST_DELAY,
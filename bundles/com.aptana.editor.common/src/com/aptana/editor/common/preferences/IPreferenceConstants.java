@@ -27,6 +27,16 @@ public interface IPreferenceConstants
 	 */
 	public static final String CONTENT_ASSIST_DELAY = "CONTENT_ASSIST_DELAY"; //$NON-NLS-1$
 
+	/**
+	 * Do we compute content assist proposals in the background, showing the first ones before all are computed?
+	 */
+	public static final String CONTENT_ASSIST_ASYNC = "CONTENT_ASSIST_ASYNC"; //$NON-NLS-1$
+
+	/**
+	 * How long (in milliseconds) we wait for background proposals before showing the ones computed so far
+	 */
+	public static final String CONTENT_ASSIST_ASYNC_DEADLINE = "CONTENT_ASSIST_ASYNC_DEADLINE"; //$NON-NLS-1$
+
 	/**
 	 * Pref key for the enable of coloring pair matches.
 	 */
@@ -65,6 +65,7 @@ public class Messages extends NLS
 	public static String EditorsPreferencePage_Content_Assist_Auto_Display;
 	public static String EditorsPreferencePage_Content_Assist_Short_Delay;
 	public static String EditorsPreferencePage_Content_Assist_Auto_Insert;
+	public static String EditorsPreferencePage_Content_Assist_Async;
 	public static String EditorsPreferencePage_DefaultDelay;
 	public static String EditorsPreferencePage_Enable_WordWrap;
 	public static String EditorsPreferencePage_Formatting;
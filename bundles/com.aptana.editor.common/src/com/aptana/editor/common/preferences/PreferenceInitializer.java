@@ -43,6 +43,9 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer
 				CommonSourceViewerConfiguration.DEFAULT_CONTENT_ASSIST_DELAY);
 		prefs.putBoolean(IPreferenceConstants.CONTENT_ASSIST_AUTO_INSERT, true);
 		prefs.putBoolean(IPreferenceConstants.CONTENT_ASSIST_HOVER, true);
+		prefs.putBoolean(IPreferenceConstants.CONTENT_ASSIST_ASYNC, false);
+		prefs.putInt(IPreferenceConstants.CONTENT_ASSIST_ASYNC_DEADLINE,
+				CommonSourceViewerConfiguration.DEFAULT_CONTENT_ASSIST_ASYNC_DEADLINE);
 
 		// insert matching characters
 		prefs.putBoolean(IPreferenceConstants.EDITOR_PEER_CHARACTER_CLOSE, true);
@@ -9,6 +9,8 @@
 package com.aptana.editor.common.text.reconciler;
 
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -17,10 +19,12 @@ import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.ISynchronizable;
 import org.eclipse.jface.text.ITextViewer;
 import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.IViewportListener;
 import org.eclipse.jface.text.Region;
 import org.eclipse.jface.text.TextPresentation;
 import org.eclipse.jface.text.TextUtilities;
@@ -39,20 +43,65 @@ import com.aptana.theme.ThemePlugin;
 import com.aptana.ui.util.UIUtils;
 
 /**
+ * A presentation reconciler which colors the damaged region right away as far as the iteration limit, and leaves the
+ * rest of it to a background job. The job colors the regions in the viewport first, and picks up on scrolling as it
+ * goes. Presentations are computed without locking the document, unless it has a lock object: the modification stamp
+ * of the document is checked instead, and presentations computed while the document changed are thrown away and their
+ * regions queued again. The presentations computed in a row are applied together, asynchronously, on the UI thread.
+ * The repairers are shared by the UI thread and the job, so they're run under a lock of the reconciler's own, one
+ * region at a time.
+ * 
  * @author Max Stepanov
  */
 public class CommonPresentationReconciler extends PresentationReconciler
 {
+	/**
+	 * How many computed presentations may wait to be applied before the background job waits for the UI thread.
+	 */
+	private static final int MAX_PENDING_PRESENTATIONS = 4;
+	private static final int PENDING_PRESENTATIONS_WAIT = 100;
+
 	private int iterationPartitionLimit = 4000;
 	private int backgroundReconcileDelay = 2000;
 	private int iterationDelay = 500;
 	private int minimalVisibleLength = 20000;
 
-	private ITextViewer textViewer;
+	private volatile ITextViewer textViewer;
 	private Regions delayedRegions = new Regions();
-	private IRegion viewerVisibleRegion;
+	private volatile IRegion viewerVisibleRegion;
 	private Job job;
 
+	/**
+	 * Held while running the repairers, whose scanners keep the state of the scan they're in. Documents with a lock
+	 * object take it on reads, so the document lock, when held at all, is taken before this one.
+	 */
+	private final Object repairLock = new Object();
+
+	private List<PendingPresentation> pendingPresentations = new ArrayList<PendingPresentation>();
+	private boolean updateScheduled;
+
+	private final IViewportListener viewportListener = new IViewportListener()
+	{
+		public void viewportChanged(int verticalOffset)
+		{
+			updateVisibleRegion();
+			IRegion visible = viewerVisibleRegion;
+			synchronized (CommonPresentationReconciler.this)
+			{
+				if (visible == null || delayedRegions.isEmpty() || delayedRegions.overlap(visible) == null)
+				{
+					return;
+				}
+				// the job waits between regions out of sight, so wake it up to the regions which came into view
+				CommonPresentationReconciler.this.notifyAll();
+				if (job != null && job.getState() == Job.SLEEPING)
+				{
+					job.wakeUp();
+				}
+			}
+		}
+	};
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.eclipse.jface.text.presentation.PresentationReconciler#install(org.eclipse.jface.text.ITextViewer)
@@ -61,8 +110,14 @@ public class CommonPresentationReconciler extends PresentationReconciler
 	public void install(ITextViewer viewer)
 	{
 		super.install(viewer);
-		delayedRegions.clear();
+		synchronized (this)
+		{
+			delayedRegions.clear();
+			pendingPresentations.clear();
+		}
 		textViewer = viewer;
+		viewerVisibleRegion = null;
+		viewer.addViewportListener(viewportListener);
 		iterationPartitionLimit = Integer.getInteger(
 				ICommonEditorSystemProperties.RECONCILER_ITERATION_PARTITION_LIMIT, iterationPartitionLimit);
 		backgroundReconcileDelay = Integer.getInteger(ICommonEditorSystemProperties.RECONCILER_BACKGROUND_DELAY,
@@ -88,13 +143,24 @@ public class CommonPresentationReconciler extends PresentationReconciler
 	@Override
 	public void uninstall()
 	{
-		if (job != null)
+		ITextViewer viewer = textViewer;
+		if (viewer != null)
 		{
-			job.cancel();
-			job = null;
+			viewer.removeViewportListener(viewportListener);
+		}
+		synchronized (this)
+		{
+			if (job != null)
+			{
+				job.cancel();
+				job = null;
+			}
+			delayedRegions.clear();
+			pendingPresentations.clear();
+			notifyAll();
 		}
-		delayedRegions.clear();
 		textViewer = null;
+		viewerVisibleRegion = null;
 		super.uninstall();
 	}
 
@@ -116,9 +182,16 @@ public class CommonPresentationReconciler extends PresentationReconciler
 									damage.getOffset(), damage.getLength(), document.getLength()),
 					IDebugScopes.PRESENTATION);
 		}
+		// called on the UI thread, where the viewport can be read right away
+		updateVisibleRegion();
 		synchronized (this)
 		{
 			delayedRegions.append(damage);
+			if (job != null)
+			{
+				// let go of the repairers
+				job.cancel();
+			}
 		}
 		try
 		{
@@ -166,19 +239,22 @@ public class CommonPresentationReconciler extends PresentationReconciler
 						processingLength, document.getLength()));
 			}
 
-			for (int i = 0; i < limit; ++i)
+			synchronized (repairLock)
 			{
-				ITypedRegion r = partitioning[i];
-				IPresentationRepairer repairer = getRepairer(r.getType());
-				if (monitor.isCanceled())
+				for (int i = 0; i < limit; ++i)
 				{
-					return null;
-				}
-				if (repairer != null)
-				{
-					repairer.createPresentation(presentation, r);
+					ITypedRegion r = partitioning[i];
+					IPresentationRepairer repairer = getRepairer(r.getType());
+					if (monitor.isCanceled())
+					{
+						return null;
+					}
+					if (repairer != null)
+					{
+						repairer.createPresentation(presentation, r);
+					}
+					monitor.worked(r.getLength());
 				}
-				monitor.worked(r.getLength());
 			}
 
 			synchronized (this)
@@ -203,44 +279,149 @@ public class CommonPresentationReconciler extends PresentationReconciler
 		return ThemePlugin.getDefault().getThemeManager().getCurrentTheme();
 	}
 
-	private void processDamage(IRegion damage, IDocument document, IProgressMonitor monitor)
+	/**
+	 * Computes the presentation of a region in the background and queues it to be applied on the UI thread.
+	 * 
+	 * @return whether the region was in the viewport
+	 */
+	private boolean processDamage(IRegion damage, IDocument document, IProgressMonitor monitor)
 	{
-		if (damage != null && damage.getLength() > 0)
+		if (damage == null || damage.getLength() <= 0)
 		{
-			final TextPresentation[] presentation = new TextPresentation[1];
+			return false;
+		}
+		boolean visible = isVisible(damage);
+		long stamp = getModificationStamp(document);
+		TextPresentation presentation;
+		if (stamp == IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP || hasLockObject(document))
+		{
+			// without a stamp to tell whether the document changed meanwhile, keep it from changing; a document with a
+			// lock object takes it on the reads of the repairers, so take it before the repair lock, as the UI thread
+			// does when editing
 			synchronized (getLockObject(document))
 			{
-				presentation[0] = createPresentation(damage, document, monitor);
+				presentation = createPresentation(damage, document, monitor);
 			}
-			if (presentation[0] != null)
+		}
+		else
+		{
+			try
 			{
-				UIUtils.getDisplay().syncExec(new Runnable()
+				presentation = createPresentation(damage, document, monitor);
+			}
+			catch (RuntimeException e)
+			{
+				// the document changing underneath the repairers can throw them off
+				if (getModificationStamp(document) == stamp)
 				{
-					public void run()
+					throw e;
+				}
+				presentation = null;
+			}
+			if (getModificationStamp(document) != stamp)
+			{
+				// the presentation is off with the change, color the region again
+				requeue(damage, document);
+				return visible;
+			}
+		}
+		if (presentation != null)
+		{
+			queuePresentation(new PendingPresentation(presentation, document, stamp));
+		}
+		return visible;
+	}
+
+	private void queuePresentation(PendingPresentation pending)
+	{
+		synchronized (this)
+		{
+			pendingPresentations.add(pending);
+			if (updateScheduled)
+			{
+				return;
+			}
+			updateScheduled = true;
+		}
+		UIUtils.getDisplay().asyncExec(new Runnable()
+		{
+			public void run()
+			{
+				applyPresentations();
+			}
+		});
+	}
+
+	/**
+	 * Applies the presentations computed in the background since the last time, on the UI thread.
+	 */
+	private void applyPresentations()
+	{
+		List<PendingPresentation> presentations;
+		synchronized (this)
+		{
+			presentations = pendingPresentations;
+			pendingPresentations = new ArrayList<PendingPresentation>();
+			updateScheduled = false;
+			// make room for the job
+			notifyAll();
+		}
+		ITextViewer viewer = textViewer;
+		if (viewer == null || presentations.isEmpty())
+		{
+			return;
+		}
+		try
+		{
+			StyledText widget = viewer.getTextWidget();
+			if (widget == null || widget.isDisposed())
+			{
+				return;
+			}
+			IDocument document = viewer.getDocument();
+			boolean requeued = false;
+			for (PendingPresentation pending : presentations)
+			{
+				if (pending.document != document)
+				{
+					continue;
+				}
+				if (pending.stamp != IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP
+						&& pending.stamp != getModificationStamp(document))
+				{
+					requeue(pending.presentation.getExtent(), document);
+					requeued = true;
+					continue;
+				}
+				viewer.changeTextPresentation(pending.presentation, true);
+			}
+			updateVisibleRegion();
+			if (requeued)
+			{
+				synchronized (this)
+				{
+					if (job != null && job.getState() == Job.NONE)
 					{
-						ITextViewer viewer = textViewer;
-						if (viewer != null)
-						{
-							try
-							{
-								StyledText widget = viewer.getTextWidget();
-								if (widget != null && !widget.isDisposed())
-								{
-									viewer.changeTextPresentation(presentation[0], true);
-								}
-								// save visible region here since UI thread access required
-								int topOffset = viewer.getTopIndexStartOffset();
-								int length = viewer.getBottomIndexEndOffset() - topOffset;
-								viewerVisibleRegion = new Region(topOffset, Math.max(length, minimalVisibleLength));
-							}
-							catch (Exception e)
-							{
-								IdeLog.logWarning(CommonEditorPlugin.getDefault(),
-										"Problem with processing text presentation: " + e.getMessage()); //$NON-NLS-1$
-							}
-						}
+						job.schedule(backgroundReconcileDelay);
 					}
-				});
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			IdeLog.logWarning(CommonEditorPlugin.getDefault(),
+					"Problem with processing text presentation: " + e.getMessage()); //$NON-NLS-1$
+		}
+	}
+
+	private void requeue(IRegion region, IDocument document)
+	{
+		int length = Math.min(region.getOffset() + region.getLength(), document.getLength()) - region.getOffset();
+		if (length > 0)
+		{
+			synchronized (this)
+			{
+				delayedRegions.append(new Region(region.getOffset(), length));
 			}
 		}
 	}
@@ -260,32 +441,14 @@ public class CommonPresentationReconciler extends PresentationReconciler
 				{
 					int priority = Thread.currentThread().getPriority();
 					Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
-					IDocument document = textViewer != null ? textViewer.getDocument() : null;
-					if (document == null)
+					try
 					{
-						return Status.CANCEL_STATUS;
+						return reconcile(monitor);
 					}
-					monitor.beginTask("Reconciling document", document.getLength()); //$NON-NLS-1$
-					while (textViewer != null && !monitor.isCanceled())
+					finally
 					{
-						IRegion damage = nextDamagedRegion();
-						if (damage == null || monitor.isCanceled() || textViewer == null)
-						{
-							break;
-						}
-						processDamage(damage, textViewer.getDocument(), monitor);
-						try
-						{
-							Thread.sleep(iterationDelay);
-						}
-						catch (InterruptedException e)
-						{
-							break;
-						}
+						Thread.currentThread().setPriority(priority);
 					}
-					monitor.done();
-					Thread.currentThread().setPriority(priority);
-					return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
 				}
 			};
 			job.setPriority(Job.DECORATE);
@@ -297,42 +460,120 @@ public class CommonPresentationReconciler extends PresentationReconciler
 		}
 	}
 
-	private IRegion nextDamagedRegion()
+	private IStatus reconcile(IProgressMonitor monitor)
 	{
-		if (viewerVisibleRegion == null && textViewer != null)
+		ITextViewer viewer = textViewer;
+		IDocument document = viewer != null ? viewer.getDocument() : null;
+		if (document == null)
 		{
-			UIUtils.getDisplay().syncExec(new Runnable()
+			return Status.CANCEL_STATUS;
+		}
+		monitor.beginTask("Reconciling document", document.getLength()); //$NON-NLS-1$
+		try
+		{
+			while (!monitor.isCanceled())
 			{
-				public void run()
+				viewer = textViewer;
+				IRegion damage = nextDamagedRegion();
+				if (damage == null || viewer == null)
 				{
-					ITextViewer viewer = textViewer;
-					if (viewer == null)
+					break;
+				}
+				boolean visible = processDamage(damage, viewer.getDocument(), monitor);
+				synchronized (this)
+				{
+					// the regions in view are colored in a row, the rest leave the CPU to others in between
+					if (!visible && iterationDelay > 0 && !delayedRegions.isEmpty())
+					{
+						wait(iterationDelay);
+					}
+					while (pendingPresentations.size() >= MAX_PENDING_PRESENTATIONS && !monitor.isCanceled()
+							&& textViewer != null)
 					{
-						return;
+						wait(PENDING_PRESENTATIONS_WAIT);
 					}
-					int topOffset = viewer.getTopIndexStartOffset();
-					int length = viewer.getBottomIndexEndOffset() - topOffset;
-					viewerVisibleRegion = new Region(topOffset, Math.max(length, minimalVisibleLength));
 				}
-			});
+			}
 		}
-		synchronized (this)
+		catch (InterruptedException e)
+		{
+			// stop here
+		}
+		finally
 		{
-			if (delayedRegions.isEmpty())
+			monitor.done();
+		}
+		return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+	}
+
+	/**
+	 * Saves the region in the viewport. Has to be called on the UI thread.
+	 */
+	private void updateVisibleRegion()
+	{
+		ITextViewer viewer = textViewer;
+		if (viewer == null)
+		{
+			return;
+		}
+		StyledText widget = viewer.getTextWidget();
+		if (widget == null || widget.isDisposed())
+		{
+			return;
+		}
+		int topOffset = viewer.getTopIndexStartOffset();
+		int length = viewer.getBottomIndexEndOffset() - topOffset;
+		viewerVisibleRegion = new Region(topOffset, Math.max(length, minimalVisibleLength));
+	}
+
+	private boolean isVisible(IRegion region)
+	{
+		IRegion visible = viewerVisibleRegion;
+		return visible != null && region.getOffset() < visible.getOffset() + visible.getLength()
+				&& visible.getOffset() < region.getOffset() + region.getLength();
+	}
+
+	/**
+	 * Picks the next region to color: the part of the delayed regions in the viewport if any, else the first one below
+	 * the viewport, else the first one.
+	 */
+	private synchronized IRegion nextDamagedRegion()
+	{
+		if (delayedRegions.isEmpty())
+		{
+			return null;
+		}
+		IRegion visible = viewerVisibleRegion;
+		if (visible != null)
+		{
+			IRegion overlap = delayedRegions.overlap(visible);
+			if (overlap != null)
 			{
-				return null;
+				return overlap;
 			}
-			if (viewerVisibleRegion != null)
+			for (IRegion region : delayedRegions)
 			{
-				IRegion visible = delayedRegions.overlap(viewerVisibleRegion);
-				viewerVisibleRegion = null;
-				if (visible != null)
+				if (region.getOffset() >= visible.getOffset())
 				{
-					return visible;
+					return region;
 				}
 			}
-			return delayedRegions.iterator().next();
 		}
+		return delayedRegions.iterator().next();
+	}
+
+	private static long getModificationStamp(IDocument document)
+	{
+		if (document instanceof IDocumentExtension4)
+		{
+			return ((IDocumentExtension4) document).getModificationStamp();
+		}
+		return IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+	}
+
+	private static boolean hasLockObject(Object object)
+	{
+		return object instanceof ISynchronizable && ((ISynchronizable) object).getLockObject() != null;
 	}
 
 	private static Object getLockObject(Object object)
@@ -348,4 +589,21 @@ public class CommonPresentationReconciler extends PresentationReconciler
 		return object;
 	}
 
+	/**
+	 * A presentation computed in the background, waiting to be applied.
+	 */
+	private static class PendingPresentation
+	{
+		final TextPresentation presentation;
+		final IDocument document;
+		final long stamp;
+
+		PendingPresentation(TextPresentation presentation, IDocument document, long stamp)
+		{
+			this.presentation = presentation;
+			this.document = document;
+			this.stamp = stamp;
+		}
+	}
+
 }
@@ -12,6 +12,13 @@ public class HTMLCommentNode extends HTMLNode
 
 	private String fText;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private HTMLCommentNode()
+	{
+	}
+
 	public HTMLCommentNode(String text, int start, int end)
 	{
 		super(IHTMLNodeTypes.COMMENT, start, end);
@@ -59,6 +59,14 @@ public class HTMLElementNode extends HTMLNode
 
 	private boolean fIsSelfClosing;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	protected HTMLElementNode()
+	{
+		fTag = null;
+	}
+
 	public HTMLElementNode(Symbol tagSymbol, int start, int end)
 	{
 		this(tagSymbol, HTMLParserConstants.NO_HTML_NODES, start, end);
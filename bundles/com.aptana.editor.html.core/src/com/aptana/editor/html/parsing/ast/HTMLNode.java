@@ -15,6 +15,13 @@ public class HTMLNode extends ParseNode
 
 	private short fType;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	protected HTMLNode()
+	{
+	}
+
 	public HTMLNode(short type, int start, int end)
 	{
 		super();
@@ -14,6 +14,13 @@ import com.aptana.parsing.ast.IParseNode;
 public class HTMLSpecialNode extends HTMLElementNode
 {
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private HTMLSpecialNode()
+	{
+	}
+
 	public HTMLSpecialNode(Symbol tag, IParseNode[] children, int start, int end)
 	{
 		super(tag, start, end);
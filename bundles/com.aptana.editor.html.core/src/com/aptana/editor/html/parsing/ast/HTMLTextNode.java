@@ -12,6 +12,13 @@ public class HTMLTextNode extends HTMLNode
 
 	private String fText;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private HTMLTextNode()
+	{
+	}
+
 	public HTMLTextNode(String text, int start, int end)
 	{
 		super(IHTMLNodeTypes.TEXT, start, end);
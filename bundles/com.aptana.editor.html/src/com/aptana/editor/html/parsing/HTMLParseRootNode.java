@@ -18,6 +18,14 @@ import com.aptana.parsing.ast.ParseRootNode;
 public class HTMLParseRootNode extends ParseRootNode
 {
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private HTMLParseRootNode()
+	{
+		super(null);
+	}
+
 	HTMLParseRootNode(int start, int end)
 	{
 		super(new Symbol[0], start, end);
@@ -20,6 +20,8 @@ import java.util.Set;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
@@ -43,6 +45,7 @@ import com.aptana.editor.common.AbstractThemeableEditor;
 import com.aptana.editor.common.CommonContentAssistProcessor;
 import com.aptana.editor.common.contentassist.CommonCompletionProposal;
 import com.aptana.editor.common.contentassist.ILexemeProvider;
+import com.aptana.editor.common.contentassist.UserAgentImages;
 import com.aptana.editor.common.contentassist.UserAgentManager;
 import com.aptana.editor.common.util.EditorUtil;
 import com.aptana.editor.js.JSPlugin;
@@ -120,6 +123,83 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 		}
 	}
 
+	/**
+	 * What the proposals of an invocation depend on. It's taken on the UI thread when the proposal sources are
+	 * created, since they may be computed on background jobs while the next invocation resets the fields of this
+	 * processor or the document changes.
+	 */
+	private class ProposalContext
+	{
+		private final int offset;
+		private final IParseNode targetNode;
+		private final IParseNode statementNode;
+		private final IRange replaceRange;
+		private final String typedPrefix;
+		private final String replacedText;
+		private final IProject project;
+		private final URI projectURI;
+		private final URI uri;
+		private final Index index;
+		private final String filename;
+		private final String[] activeUserAgentIds;
+		private final UserAgentImages userAgentImages;
+
+		private ProposalContext(int offset)
+		{
+			this.offset = offset;
+			this.targetNode = JSContentAssistProcessor.this.targetNode;
+			this.statementNode = JSContentAssistProcessor.this.statementNode;
+			this.replaceRange = JSContentAssistProcessor.this.replaceRange;
+			this.typedPrefix = getTypedPrefix(offset);
+			this.replacedText = getReplacedText();
+			this.project = getProject();
+			this.projectURI = getProjectURI();
+			this.uri = getURI();
+			this.index = getIndex();
+			this.filename = getFilename();
+			this.activeUserAgentIds = getActiveUserAgentIds();
+			this.userAgentImages = UserAgentManager.getInstance().createUserAgentImages(project);
+
+			// create the query helper before the sources share it
+			getQueryHelper();
+		}
+	}
+
+	/**
+	 * A proposal source adding its proposals the way the add methods of this processor do
+	 */
+	private abstract class JSProposalSource extends ProposalSource
+	{
+		private final ProposalContext context;
+
+		private JSProposalSource(String name, ProposalContext context)
+		{
+			super(name);
+			this.context = context;
+		}
+
+		@Override
+		public Collection<ICompletionProposal> computeProposals(IProgressMonitor monitor)
+		{
+			Set<ICompletionProposal> proposals = new LinkedHashSet<ICompletionProposal>();
+			addProposals(proposals, context, monitor);
+
+			// select the current proposal based on the prefix
+			setSelectedProposal(context.replacedText, proposals.toArray(new ICompletionProposal[proposals.size()]));
+			return proposals;
+		}
+
+		/**
+		 * Adds the proposals of this source
+		 * 
+		 * @param proposals
+		 * @param context
+		 * @param monitor
+		 */
+		protected abstract void addProposals(Set<ICompletionProposal> proposals, ProposalContext context,
+				IProgressMonitor monitor);
+	}
+
 	private static final Image JS_FUNCTION = JSPlugin.getImage("/icons/js_function.png"); //$NON-NLS-1$
 	private static final Image JS_PROPERTY = JSPlugin.getImage("/icons/js_property.png"); //$NON-NLS-1$
 	private static final Image JS_KEYWORD = JSPlugin.getImage("/icons/keyword.png"); //$NON-NLS-1$
@@ -223,18 +303,17 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 	}
 
 	/**
-	 * @param prefix
-	 * @param completionProposals
+	 * @param proposals
+	 * @param context
 	 */
-	private void addKeywords(Set<ICompletionProposal> proposals, int offset)
+	private void addKeywords(Set<ICompletionProposal> proposals, ProposalContext context)
 	{
-		String[] activeUserAgentIds = getActiveUserAgentIds();
 		for (String name : JSLanguageConstants.KEYWORDS)
 		{
 			// TODO Create a KeywordProposal class that lazily generates description, etc?
 			String description = MessageFormat.format(Messages.JSContentAssistProcessor_KeywordDescription, name);
-			addProposal(proposals, name, JS_KEYWORD, description, activeUserAgentIds,
-					Messages.JSContentAssistProcessor_KeywordLocation, offset);
+			addProposal(proposals, name, JS_KEYWORD, description, context.activeUserAgentIds,
+					Messages.JSContentAssistProcessor_KeywordLocation, context);
 		}
 	}
 
@@ -243,53 +322,72 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 	 * parameter type. Useful for things like Ti.UI.create* functions.
 	 * 
 	 * @param proposals
+	 * @param context
+	 * @param param
+	 *            the parameter the object literal is passed as, found on the UI thread since this parses the document
+	 * @param monitor
+	 */
+	private void addObjectLiteralProperties(Set<ICompletionProposal> proposals, ProposalContext context,
+			ParameterElement param, IProgressMonitor monitor)
+	{
+		for (String type : param.getTypes())
+		{
+			if (monitor.isCanceled())
+			{
+				return;
+			}
+			Collection<PropertyElement> properties = getQueryHelper().getTypeProperties(type);
+
+			for (PropertyElement property : CollectionsUtil.filter(properties, isVisibleFilter))
+			{
+				addProposal(proposals, property, context, null);
+			}
+		}
+	}
+
+	/**
+	 * Returns the parameter of the function whose arguments we're invoked in, at the argument we're in.
+	 * 
+	 * @param viewer
 	 * @param offset
+	 * @return null if we're not in the arguments of a known function
 	 */
-	protected void addObjectLiteralProperties(Set<ICompletionProposal> proposals, ITextViewer viewer, int offset)
+	private ParameterElement getParameterElement(ITextViewer viewer, int offset)
 	{
 		FunctionElement function = getFunctionElement(viewer, offset);
 		if (function == null)
 		{
-			return;
+			return null;
 		}
 		List<ParameterElement> params = function.getParameters();
 		int index = getArgumentIndex(offset);
 
-		if (0 <= index && index < params.size())
-		{
-			ParameterElement param = params.get(index);
-			URI projectURI = getProjectURI();
-
-			for (String type : param.getTypes())
-			{
-				Collection<PropertyElement> properties = getQueryHelper().getTypeProperties(type);
-
-				for (PropertyElement property : CollectionsUtil.filter(properties, isVisibleFilter))
-				{
-					addProposal(proposals, property, offset, projectURI, null);
-				}
-			}
-		}
+		return (0 <= index && index < params.size()) ? params.get(index) : null;
 	}
 
 	/**
 	 * addProjectGlobalFunctions
 	 * 
 	 * @param proposals
-	 * @param offset
+	 * @param context
+	 * @param monitor
 	 */
-	private void addGlobals(Set<ICompletionProposal> proposals, int offset)
+	private void addGlobals(Set<ICompletionProposal> proposals, ProposalContext context, IProgressMonitor monitor)
 	{
-		Collection<PropertyElement> projectGlobals = getQueryHelper().getGlobals(getFilename());
+		// only the globals which start with what's been typed would make it past the proposal popup's filtering
+		Collection<PropertyElement> projectGlobals = getQueryHelper().getGlobalsStartingWith(context.filename,
+				context.typedPrefix);
 		if (CollectionsUtil.isEmpty(projectGlobals))
 		{
 			return;
 		}
 
-		String[] userAgentIds = getActiveUserAgentIds();
-		URI projectURI = getProjectURI();
 		for (PropertyElement property : CollectionsUtil.filter(projectGlobals, isVisibleFilter))
 		{
+			if (monitor.isCanceled())
+			{
+				return;
+			}
 			// TODO Use Messages.JSContentAssistProcessor_KeywordLocation for core stuff!
 			String location = null;
 			List<String> documents = property.getDocuments();
@@ -306,7 +404,55 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 					location = docString;
 				}
 			}
-			addProposal(proposals, property, offset, projectURI, location, userAgentIds);
+			addProposal(proposals, property, context, location, context.activeUserAgentIds);
+		}
+	}
+
+	/**
+	 * Returns the text typed from the start of the replace range up to the offset, which proposals have to start with.
+	 * 
+	 * @param offset
+	 * @return
+	 */
+	private String getTypedPrefix(int offset)
+	{
+		if (replaceRange == null || textViewer == null)
+		{
+			return StringUtil.EMPTY;
+		}
+		int start = replaceRange.getStartingOffset();
+		if (start < 0 || offset <= start)
+		{
+			return StringUtil.EMPTY;
+		}
+		try
+		{
+			return textViewer.getDocument().get(start, offset - start);
+		}
+		catch (BadLocationException e)
+		{
+			return StringUtil.EMPTY;
+		}
+	}
+
+	/**
+	 * Returns the text in the replace range, which selects the proposal to replace it with.
+	 * 
+	 * @return
+	 */
+	private String getReplacedText()
+	{
+		if (replaceRange == null || textViewer == null)
+		{
+			return null;
+		}
+		try
+		{
+			return textViewer.getDocument().get(replaceRange.getStartingOffset(), replaceRange.getLength());
+		}
+		catch (BadLocationException e)
+		{
+			return null;
 		}
 	}
 
@@ -314,18 +460,24 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 	 * addProperties
 	 * 
 	 * @param proposals
-	 * @param offset
+	 * @param context
+	 * @param monitor
 	 */
-	protected void addProperties(Set<ICompletionProposal> proposals, int offset)
+	private void addProperties(Set<ICompletionProposal> proposals, ProposalContext context, IProgressMonitor monitor)
 	{
-		JSGetPropertyNode node = ParseUtil.getGetPropertyNode(targetNode, statementNode);
+		JSGetPropertyNode node = ParseUtil.getGetPropertyNode(context.targetNode, context.statementNode);
 		boolean isInstance = isInstance(node);
-		List<String> types = getParentObjectTypes(node, offset);
+		List<String> types = ParseUtil.getReceiverTypeNames(getQueryHelper(), context.index, context.uri,
+				context.targetNode, node, context.offset);
 
 		// add all properties of each type to our proposal list
 		for (String type : types)
 		{
-			addTypeProperties(proposals, type, offset, isInstance);
+			if (monitor.isCanceled())
+			{
+				return;
+			}
+			addTypeProperties(proposals, context, type, isInstance, monitor);
 		}
 	}
 
@@ -380,17 +532,16 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 	 * 
 	 * @param proposals
 	 * @param property
-	 * @param offset
-	 * @param projectURI
+	 * @param context
 	 * @param overriddenLocation
 	 */
-	private void addProposal(Set<ICompletionProposal> proposals, PropertyElement property, int offset, URI projectURI,
+	private void addProposal(Set<ICompletionProposal> proposals, PropertyElement property, ProposalContext context,
 			String overriddenLocation)
 	{
 		List<String> userAgentNameList = property.getUserAgentNames();
 		String[] userAgentNames = userAgentNameList.toArray(new String[userAgentNameList.size()]);
 
-		addProposal(proposals, property, offset, projectURI, overriddenLocation, userAgentNames);
+		addProposal(proposals, property, context, overriddenLocation, userAgentNames);
 	}
 
 	/**
@@ -398,23 +549,23 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 	 * 
 	 * @param proposals
 	 * @param property
-	 * @param offset
-	 * @param projectURI
+	 * @param context
 	 * @param overriddenLocation
 	 * @param userAgentNames
 	 */
-	private void addProposal(Set<ICompletionProposal> proposals, PropertyElement property, int offset, URI projectURI,
+	private void addProposal(Set<ICompletionProposal> proposals, PropertyElement property, ProposalContext context,
 			String overriddenLocation, String[] userAgentNames)
 	{
 		if (isActiveByUserAgent(userAgentNames))
 		{
 			// calculate what text will be replaced
+			int offset = context.offset;
 			int replaceLength = 0;
 
-			if (replaceRange != null)
+			if (context.replaceRange != null)
 			{
-				offset = replaceRange.getStartingOffset(); // $codepro.audit.disable questionableAssignment
-				replaceLength = replaceRange.getLength();
+				offset = context.replaceRange.getStartingOffset();
+				replaceLength = context.replaceRange.getLength();
 			}
 
 			if (property.getOwningType().startsWith("$module")) //$NON-NLS-1$
@@ -422,14 +573,15 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 				IPath path = getQueryHelper().getModulePath(property.getOwningType());
 				property.setOwningType(path.toOSString());
 			}
-			PropertyElementProposal proposal = new PropertyElementProposal(property, offset, replaceLength, projectURI);
+			PropertyElementProposal proposal = new PropertyElementProposal(property, offset, replaceLength,
+					context.projectURI);
 			proposal.setTriggerCharacters(getProposalTriggerCharacters());
 			if (!StringUtil.isEmpty(overriddenLocation))
 			{
 				proposal.setFileLocation(overriddenLocation);
 			}
 
-			Image[] userAgents = UserAgentManager.getInstance().getUserAgentImages(getProject(), userAgentNames);
+			Image[] userAgents = context.userAgentImages.getImages(userAgentNames);
 			proposal.setUserAgentImages(userAgents);
 
 			// add the proposal to the list
@@ -447,27 +599,28 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 	 * @param description
 	 * @param userAgents
 	 * @param fileLocation
-	 * @param offset
+	 * @param context
 	 */
 	private CommonCompletionProposal addProposal(Set<ICompletionProposal> proposals, String displayName, Image image,
-			String description, String[] userAgentIds, String fileLocation, int offset)
+			String description, String[] userAgentIds, String fileLocation, ProposalContext context)
 	{
 		if (isActiveByUserAgent(userAgentIds))
 		{
 			int length = displayName.length();
 
 			// calculate what text will be replaced
+			int offset = context.offset;
 			int replaceLength = 0;
 
-			if (replaceRange != null)
+			if (context.replaceRange != null)
 			{
-				offset = replaceRange.getStartingOffset(); // $codepro.audit.disable questionableAssignment
-				replaceLength = replaceRange.getLength();
+				offset = context.replaceRange.getStartingOffset();
+				replaceLength = context.replaceRange.getLength();
 			}
 
 			// build proposal
 			IContextInformation contextInfo = null;
-			Image[] userAgents = UserAgentManager.getInstance().getUserAgentImages(getProject(), userAgentIds);
+			Image[] userAgents = context.userAgentImages.getImages(userAgentIds);
 
 			CommonCompletionProposal proposal = new CommonCompletionProposal(displayName, offset, replaceLength,
 					length, image, displayName, contextInfo, description);
@@ -482,21 +635,27 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 		return null;
 	}
 
-	protected void addSymbolsInScope(Set<ICompletionProposal> proposals, int offset)
+	/**
+	 * addSymbolsInScope
+	 * 
+	 * @param proposals
+	 * @param context
+	 * @param monitor
+	 */
+	private void addSymbolsInScope(Set<ICompletionProposal> proposals, ProposalContext context,
+			IProgressMonitor monitor)
 	{
-		if (targetNode == null)
+		if (context.targetNode == null)
 		{
 			return;
 		}
 
-		JSScope globalScope = ParseUtil.getGlobalScope(targetNode);
+		JSScope globalScope = ParseUtil.getGlobalScope(context.targetNode);
 		if (globalScope == null)
 		{
 			return;
 		}
-		JSScope localScope = globalScope.getScopeAtOffset(offset);
-		String fileLocation = getFilename();
-		String[] userAgentNames = getActiveUserAgentIds();
+		JSScope localScope = globalScope.getScopeAtOffset(context.offset);
 
 		while (localScope != null && localScope != globalScope)
 		{
@@ -504,6 +663,10 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 
 			for (String symbol : symbols)
 			{
+				if (monitor.isCanceled())
+				{
+					return;
+				}
 				boolean isFunction = false;
 				JSPropertyCollection object = localScope.getLocalSymbol(symbol);
 				List<JSNode> nodes = object.getValues();
@@ -525,7 +688,8 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 				Image image = (isFunction) ? JS_FUNCTION : JS_PROPERTY;
 
 				// TODO Add a JSPropertyCollectionProposal that takes the object and generates the rest?
-				addProposal(proposals, name, image, description, userAgentNames, fileLocation, offset);
+				addProposal(proposals, name, image, description, context.activeUserAgentIds, context.filename,
+						context);
 			}
 
 			localScope = localScope.getParentScope();
@@ -536,13 +700,15 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 	 * addThisProposals
 	 * 
 	 * @param proposals
-	 * @param offset
+	 * @param context
+	 * @param activeNode
+	 *            the node at the offset, found on the UI thread since this parses the document
+	 * @param monitor
 	 */
-	protected void addThisProperties(Set<ICompletionProposal> proposals, int offset)
+	private void addThisProperties(Set<ICompletionProposal> proposals, ProposalContext context, IParseNode activeNode,
+			IProgressMonitor monitor)
 	{
 		// find containing function or JSParseRootNode
-		IParseNode activeNode = getActiveASTNode(offset);
-
 		while (!(activeNode instanceof JSFunctionNode))
 		{
 			activeNode = activeNode.getParent();
@@ -620,6 +786,11 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 
 		for (JSFunctionNode function : functionsToAnalyze)
 		{
+			if (monitor.isCanceled())
+			{
+				return;
+			}
+
 			// collect all this.property assignments
 			ThisAssignmentCollector collector = new ThisAssignmentCollector();
 			((JSNode) function.getBody()).accept(collector);
@@ -627,13 +798,11 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 
 			if (!CollectionsUtil.isEmpty(assignments))
 			{
-				JSScope globalScope = ParseUtil.getGlobalScope(targetNode);
+				JSScope globalScope = ParseUtil.getGlobalScope(context.targetNode);
 
 				if (globalScope != null)
 				{
-					JSScope localScope = globalScope.getScopeAtOffset(offset);
-					Index index = getIndex();
-					URI location = EditorUtil.getURI(editor);
+					JSScope localScope = globalScope.getScopeAtOffset(context.offset);
 					String typeName = StringUtil.concat(getNestedFunctionTypeName(function)
 							+ IJSIndexConstants.NESTED_TYPE_SEPARATOR + "this"); //$NON-NLS-1$
 
@@ -644,8 +813,8 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 						IParseNode rhs = assignment.getRightHandSide();
 						String name = lhs.getLastChild().getText();
 
-						JSNodeTypeInferrer nodeInferrer = new JSNodeTypeInferrer(localScope, index, location,
-								getQueryHelper());
+						JSNodeTypeInferrer nodeInferrer = new JSNodeTypeInferrer(localScope, context.index,
+								context.uri, getQueryHelper());
 						((JSNode) rhs).accept(nodeInferrer);
 						List<String> types = nodeInferrer.getTypes();
 
@@ -661,7 +830,7 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 							}
 						}
 
-						addProposal(proposals, property, offset, getProjectURI(), typeName);
+						addProposal(proposals, property, context, typeName);
 					}
 				}
 			}
@@ -722,8 +891,23 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 	 * @param offset
 	 * @param isInstance
 	 */
-	@SuppressWarnings("unchecked")
 	protected void addTypeProperties(Set<ICompletionProposal> proposals, String typeName, int offset, boolean isInstance)
+	{
+		addTypeProperties(proposals, new ProposalContext(offset), typeName, isInstance, new NullProgressMonitor());
+	}
+
+	/**
+	 * addTypeProperties
+	 * 
+	 * @param proposals
+	 * @param context
+	 * @param typeName
+	 * @param isInstance
+	 * @param monitor
+	 */
+	@SuppressWarnings("unchecked")
+	private void addTypeProperties(Set<ICompletionProposal> proposals, ProposalContext context, String typeName,
+			boolean isInstance, IProgressMonitor monitor)
 	{
 		// grab all ancestors of the specified type
 		List<String> allTypes = getQueryHelper().getTypeAncestorNames(typeName);
@@ -733,22 +917,24 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 
 		// add properties and methods
 		Collection<PropertyElement> properties = getQueryHelper().getTypeMembers(allTypes);
-		URI projectURI = getProjectURI();
 		List<IFilter<PropertyElement>> propertyFilters = CollectionsUtil.newList(isNotConstructorFilter,
 				isVisibleFilter);
 
 		// Hack for SDK < 3.4.1.GA. The api.jsca file has correctly categorized whether the methods are static or
 		// instance only from 3.4.1.GA SDK. So, we can filter out static/instance based on the type. If the SDK <=
 		// 3.4.0, then we shouldn't filter them at all.
-		IProject project = getProject();
-		if (!hasSDKLessThanOrEqualToVersion(project, SDK_3_4_0))
+		if (!hasSDKLessThanOrEqualToVersion(context.project, SDK_3_4_0))
 		{
 			CollectionsUtil.addToList(propertyFilters, isInstance ? isInstanceFilter : isStaticFilter);
 		}
 		IFilter<PropertyElement>[] filters = propertyFilters.toArray(new IFilter[propertyFilters.size()]);
 		for (PropertyElement property : CollectionsUtil.filter(properties, new AndFilter<PropertyElement>(filters)))
 		{
-			addProposal(proposals, property, offset, projectURI, null);
+			if (monitor.isCanceled())
+			{
+				return;
+			}
+			addProposal(proposals, property, context, null);
 		}
 	}
 
@@ -865,69 +1051,162 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 	protected ICompletionProposal[] doComputeCompletionProposals(ITextViewer viewer, int offset, char activationChar,
 			boolean autoActivated)
 	{
-		this.textViewer = viewer;
-
 		// NOTE: Using a linked hash set to preserve add-order. We need this in case we end up filtering proposals. This
 		// will give precedence to the first of a collection of proposals with like names
 		Set<ICompletionProposal> result = new LinkedHashSet<ICompletionProposal>();
 
+		IProgressMonitor monitor = new NullProgressMonitor();
+		for (ProposalSource source : getProposalSources(viewer, offset, activationChar, autoActivated))
+		{
+			result.addAll(source.computeProposals(monitor));
+		}
+
+		return mergeSourceProposals(viewer, offset, new ArrayList<ICompletionProposal>(result));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * com.aptana.editor.common.CommonContentAssistProcessor#getProposalSources(org.eclipse.jface.text.ITextViewer,
+	 * int, char, boolean)
+	 */
+	@Override
+	protected List<ProposalSource> getProposalSources(ITextViewer viewer, int offset, char activationChar,
+			boolean autoActivated)
+	{
+		this.textViewer = viewer;
+
 		// grab document
 		IDocument document = viewer.getDocument();
 
 		// determine the content assist location type
 		LocationType location = getLocationType(document, offset);
 
+		// compute the function argument proposals right away, since doing so may set the replace range the other
+		// sources depend on
+		final Set<ICompletionProposal> arguments = new LinkedHashSet<ICompletionProposal>();
+		if (location == LocationType.IN_ARGUMENTS || location == LocationType.IN_VARIABLE_NAME)
+		{
+			addFunctionArgumentProposals(arguments, viewer, offset);
+		}
+
+		// the sources only read what's in the context, or what they're handed here, as they may run in the background
+		ProposalContext context = new ProposalContext(offset);
+
 		// process the resulting location
+		List<ProposalSource> sources = new ArrayList<ProposalSource>();
 		switch (location)
 		{
 			case IN_PROPERTY_NAME:
-				addProperties(result, offset);
+				sources.add(new JSProposalSource("properties", context) //$NON-NLS-1$
+				{
+					@Override
+					protected void addProposals(Set<ICompletionProposal> proposals, ProposalContext context,
+							IProgressMonitor monitor)
+					{
+						addProperties(proposals, context, monitor);
+					}
+				});
 				break;
 
 			case IN_ARGUMENTS:
 			case IN_VARIABLE_NAME:
-				addFunctionArgumentProposals(result, viewer, offset);
+				sources.add(new JSProposalSource("function arguments", context) //$NON-NLS-1$
+				{
+					@Override
+					protected void addProposals(Set<ICompletionProposal> proposals, ProposalContext context,
+							IProgressMonitor monitor)
+					{
+						proposals.addAll(arguments);
+					}
+				});
 				//$FALL-THROUGH$
 			case IN_GLOBAL:
 			case IN_CONSTRUCTOR:
-				addKeywords(result, offset);
-				addGlobals(result, offset);
-				addSymbolsInScope(result, offset);
+				sources.add(new JSProposalSource("keywords", context) //$NON-NLS-1$
+				{
+					@Override
+					protected void addProposals(Set<ICompletionProposal> proposals, ProposalContext context,
+							IProgressMonitor monitor)
+					{
+						addKeywords(proposals, context);
+					}
+				});
+				sources.add(new JSProposalSource("globals", context) //$NON-NLS-1$
+				{
+					@Override
+					protected void addProposals(Set<ICompletionProposal> proposals, ProposalContext context,
+							IProgressMonitor monitor)
+					{
+						addGlobals(proposals, context, monitor);
+					}
+				});
+				sources.add(new JSProposalSource("symbols", context) //$NON-NLS-1$
+				{
+					@Override
+					protected void addProposals(Set<ICompletionProposal> proposals, ProposalContext context,
+							IProgressMonitor monitor)
+					{
+						addSymbolsInScope(proposals, context, monitor);
+					}
+				});
 				break;
 
 			case IN_OBJECT_LITERAL_PROPERTY:
-				addObjectLiteralProperties(result, viewer, offset);
+			{
+				final ParameterElement param = getParameterElement(viewer, offset);
+				if (param != null)
+				{
+					sources.add(new JSProposalSource("object literal properties", context) //$NON-NLS-1$
+					{
+						@Override
+						protected void addProposals(Set<ICompletionProposal> proposals, ProposalContext context,
+								IProgressMonitor monitor)
+						{
+							addObjectLiteralProperties(proposals, context, param, monitor);
+						}
+					});
+				}
 				break;
+			}
 
 			case IN_THIS:
-				addThisProperties(result, offset);
+			{
+				final IParseNode activeNode = getActiveASTNode(offset);
+				sources.add(new JSProposalSource("this properties", context) //$NON-NLS-1$
+				{
+					@Override
+					protected void addProposals(Set<ICompletionProposal> proposals, ProposalContext context,
+							IProgressMonitor monitor)
+					{
+						addThisProperties(proposals, context, activeNode, monitor);
+					}
+				});
 				break;
+			}
 
 			default:
 				break;
 		}
 
-		// merge and remove duplicates from the proposal list
-		List<ICompletionProposal> filteredProposalList = getMergedProposals(new ArrayList<ICompletionProposal>(result));
-		ICompletionProposal[] resultList = filteredProposalList.toArray(new ICompletionProposal[filteredProposalList
-				.size()]);
-
-		// select the current proposal based on the prefix
-		if (replaceRange != null)
-		{
-			try
-			{
-				String prefix = document.get(replaceRange.getStartingOffset(), replaceRange.getLength());
-
-				setSelectedProposal(prefix, resultList);
-			}
-			catch (BadLocationException e) // $codepro.audit.disable emptyCatchClause
-			{
-				// ignore
-			}
-		}
+		return sources;
+	}
 
-		return resultList;
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * com.aptana.editor.common.CommonContentAssistProcessor#mergeSourceProposals(org.eclipse.jface.text.ITextViewer,
+	 * int, java.util.List)
+	 */
+	@Override
+	protected ICompletionProposal[] mergeSourceProposals(ITextViewer viewer, int offset,
+			List<ICompletionProposal> proposals)
+	{
+		// merge and remove duplicates from the proposal list, giving precedence to the first of the like proposals.
+		// The sources have already selected the current proposal, since this may run in the background.
+		List<ICompletionProposal> filteredProposalList = getMergedProposals(new ArrayList<ICompletionProposal>(
+				new LinkedHashSet<ICompletionProposal>(proposals)));
+		return filteredProposalList.toArray(new ICompletionProposal[filteredProposalList.size()]);
 	}
 
 	private void addFunctionArgumentProposals(Set<ICompletionProposal> result, ITextViewer viewer, int offset)
@@ -961,10 +1240,11 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 			{
 				replaceRange = new Range(offset);
 			}
+			ProposalContext context = new ProposalContext(offset);
 			for (String moduleId : possible)
 			{
 				CommonCompletionProposal proposal = addProposal(result, "'" + moduleId + "'", STRING_ICON, null,
-						userAgentIds, moduleId + ".js", offset);
+						userAgentIds, moduleId + ".js", context);
 				if (proposal != null)
 				{
 					proposal.setRelevance(CommonCompletionProposal.RELEVANCE_EXACT);
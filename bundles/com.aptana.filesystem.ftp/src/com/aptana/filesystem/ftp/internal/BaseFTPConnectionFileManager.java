@@ -9,6 +9,7 @@
 package com.aptana.filesystem.ftp.internal;
 
 import java.net.URI;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.eclipse.core.filesystem.EFS;
@@ -38,6 +39,7 @@ public abstract class BaseFTPConnectionFileManager extends BaseConnectionFileMan
 	protected static final int CHECK_CONNECTION_TIMEOUT = 30000;
 	protected static final String TMP_UPLOAD_SUFFIX = "._tmp_upload"; //$NON-NLS-1$
 	protected static final Pattern PASS_COMMAND_PATTERN = Pattern.compile("^(.*PASS ).+$"); //$NON-NLS-1$
+	protected static final Pattern CHECKSUM_PATTERN = Pattern.compile("\\b[0-9a-fA-F]{32,128}\\b"); //$NON-NLS-1$
 
 	protected String host;
 	protected int port;
@@ -46,6 +48,11 @@ public abstract class BaseFTPConnectionFileManager extends BaseConnectionFileMan
 	protected String defaultOwner;
 	protected String defaultGroup;
 
+	protected BaseFTPConnectionFileManager() {
+		// every fetch is a round trip to the server, worth a minute of staleness with changes made by others
+		setCaching(true);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.core.io.vfs.BaseConnectionFileManager#canUseTemporaryFile(org.eclipse.core.runtime.IPath,
@@ -107,6 +114,19 @@ public abstract class BaseFTPConnectionFileManager extends BaseConnectionFileMan
 
 	protected abstract URI getRootCanonicalURI();
 
+	/**
+	 * Picks the checksum out of a server reply or command output.
+	 * @param text
+	 * @return the checksum as lowercase hex digits, or null if there isn't one
+	 */
+	protected static String parseChecksum(String text) {
+		if (text == null) {
+			return null;
+		}
+		Matcher matcher = CHECKSUM_PATTERN.matcher(text);
+		return matcher.find() ? matcher.group().toLowerCase() : null;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.core.io.vfs.BaseConnectionFileManager#testConnection(boolean)
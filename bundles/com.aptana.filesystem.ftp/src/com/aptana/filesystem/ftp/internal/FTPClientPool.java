@@ -23,10 +23,14 @@ public final class FTPClientPool extends KeepAliveObjectPool<FTPClientInterface>
 	private IPoolConnectionManager manager;
 
 	public FTPClientPool(IPoolConnectionManager manager) {
-		super(Platform.getPreferencesService().getInt(FTPPlugin.PLUGIN_ID, IFTPPreferenceConstants.KEEP_ALIVE_TIME,
-				FTPPreferenceInitializer.DEFAULT_KEEP_ALIVE_MINUTES, null) * 60 * 1000);
+		super(getPreference(IFTPPreferenceConstants.KEEP_ALIVE_TIME,
+				FTPPreferenceInitializer.DEFAULT_KEEP_ALIVE_MINUTES) * 60 * 1000, Math.max(1, getPreference(
+				IFTPPreferenceConstants.MAX_CONNECTIONS, FTPPreferenceInitializer.DEFAULT_MAX_CONNECTIONS)));
 		this.manager = manager;
-		start();
+	}
+
+	private static int getPreference(String key, int defaultValue) {
+		return Platform.getPreferencesService().getInt(FTPPlugin.PLUGIN_ID, key, defaultValue, null);
 	}
 
 	public FTPClientInterface create() {
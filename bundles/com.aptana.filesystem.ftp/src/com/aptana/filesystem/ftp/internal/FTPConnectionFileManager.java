@@ -29,7 +29,6 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
-import java.util.Map;
 import java.util.TimeZone;
 import java.util.regex.Matcher;
 
@@ -45,9 +44,9 @@ import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.PerformanceStats;
 import org.eclipse.core.runtime.Status;
 
+import com.aptana.core.io.vfs.ExpiringPathCache;
 import com.aptana.core.io.vfs.ExtendedFileInfo;
 import com.aptana.core.io.vfs.IExtendedFileStore;
-import com.aptana.core.util.ExpiringMap;
 import com.aptana.filesystem.ftp.FTPPlugin;
 import com.aptana.filesystem.ftp.IFTPConnectionFileManager;
 import com.aptana.filesystem.ftp.IFTPConstants;
@@ -97,7 +96,8 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 	private Boolean statSupported = null;
 	private Boolean listASupported = null;
 	private int utimeFormat = -1;
-	private Map<IPath, FTPFile> ftpFileCache = new ExpiringMap<IPath, FTPFile>(CACHE_TTL);
+	private String hashAlgorithm;
+	private final ExpiringPathCache<FTPFile> ftpFileCache = new ExpiringPathCache<FTPFile>(CACHE_TTL, CACHE_SIZE);
 	private long serverToLocalTimeZoneShift = Integer.MIN_VALUE;
 	protected boolean hasServerInfo;
 	protected PrintWriter messageLogWriter;
@@ -355,6 +355,7 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 		Policy.checkCanceled(monitor);
 		monitor.subTask(Messages.FTPConnectionFileManager_gethering_server_info);
 		serverFeatures = null;
+		hashAlgorithm = null;
 		try
 		{
 			String[] features = ftpClient.features();
@@ -574,34 +575,37 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 	 * (non-Javadoc)
 	 * @see com.aptana.core.io.vfs.IConnectionFileManager#disconnect(org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public synchronized void disconnect(IProgressMonitor monitor) throws CoreException
+	public void disconnect(IProgressMonitor monitor) throws CoreException
 	{
-		if (!isConnected())
-		{
-			return;
-		}
-		monitor = Policy.monitorFor(monitor);
-		monitor.beginTask(Messages.FTPConnectionFileManager_closing_connection, IProgressMonitor.UNKNOWN);
-		try
-		{
-			ftpClient.quit();
-		}
-		catch (Exception e)
+		synchronized (connectionLock)
 		{
+			if (!isConnected())
+			{
+				return;
+			}
+			monitor = Policy.monitorFor(monitor);
+			monitor.beginTask(Messages.FTPConnectionFileManager_closing_connection, IProgressMonitor.UNKNOWN);
 			try
 			{
-				ftpClient.quitImmediately();
+				ftpClient.quit();
 			}
-			catch (Exception ignore)
+			catch (Exception e)
 			{
+				try
+				{
+					ftpClient.quitImmediately();
+				}
+				catch (Exception ignore)
+				{
+				}
+			}
+			finally
+			{
+				cwd = null;
+				pool.dispose();
+				cleanup();
+				monitor.done();
 			}
-		}
-		finally
-		{
-			cwd = null;
-			pool.dispose();
-			cleanup();
-			monitor.done();
 		}
 	}
 
@@ -639,6 +643,23 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 		}
 	}
 
+	private void changeCurrentDir(FTPClient client, IPath path) throws FTPException, IOException
+	{
+		if (client == ftpClient)
+		{
+			changeCurrentDir(path);
+			return;
+		}
+		try
+		{
+			client.chdir(path.toPortableString());
+		}
+		catch (FTPException e)
+		{
+			throwFileNotFound(e, path);
+		}
+	}
+
 	private static void throwFileNotFound(FTPException e, IPath path) throws FileNotFoundException, FTPException
 	{
 		int code = e.getReplyCode();
@@ -673,6 +694,84 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 		return fileInfo;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.core.io.vfs.BaseConnectionFileManager#getMaxConcurrentTransfers()
+	 */
+	@Override
+	public int getMaxConcurrentTransfers()
+	{
+		// each transfer checks out its own client from the pool
+		return pool.getMaxSize();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.core.io.vfs.BaseConnectionFileManager#getMaxConcurrentListings()
+	 */
+	@Override
+	protected int getMaxConcurrentListings()
+	{
+		// each listing checks out its own client from the pool, which holds as many as the server is expected to allow
+		return pool.getMaxSize();
+	}
+
+	/**
+	 * Checks out a client from the pool, waiting for one to be checked in if all of them are in use.
+	 * 
+	 * @param monitor
+	 * @return the client
+	 * @throws CoreException
+	 *             if none was checked in in time
+	 */
+	private FTPClient checkOutClient(IProgressMonitor monitor) throws CoreException
+	{
+		FTPClient client = (FTPClient) pool.checkOut(monitor);
+		if (client == null)
+		{
+			throw new CoreException(new Status(Status.ERROR, FTPPlugin.PLUGIN_ID, MessageFormat.format(
+					Messages.FTPConnectionFileManager_no_connection_available, pool.getMaxSize())));
+		}
+		return client;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.core.io.vfs.BaseConnectionFileManager#fetchFilesConcurrently(org.eclipse.core.runtime.IPath,
+	 * int, org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	@Override
+	protected ExtendedFileInfo[] fetchFilesConcurrently(IPath path, int options, IProgressMonitor monitor)
+			throws CoreException, FileNotFoundException
+	{
+		FTPClient listFtpClient = checkOutClient(monitor);
+		try
+		{
+			initAndAuthFTPClient(listFtpClient, monitor);
+			Policy.checkCanceled(monitor);
+			setMessageLogger(listFtpClient, messageLogWriter);
+			return listFileInfos(listFtpClient, path, options, monitor);
+		}
+		catch (FileNotFoundException e)
+		{
+			throw e;
+		}
+		catch (OperationCanceledException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new CoreException(new Status(Status.ERROR, FTPPlugin.PLUGIN_ID,
+					Messages.FTPConnectionFileManager_fetching_directory_failed, e));
+		}
+		finally
+		{
+			setMessageLogger(listFtpClient, null);
+			pool.checkIn(listFtpClient);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.ide.core.ftp.BaseFTPConnectionFileManager#clearCache(org.eclipse.core.runtime.IPath)
@@ -686,14 +785,7 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 
 	private void clearCacheAbsolute(IPath path)
 	{
-		int segments = path.segmentCount();
-		for (IPath p : new ArrayList<IPath>(ftpFileCache.keySet()))
-		{
-			if (p.segmentCount() >= segments && path.matchingFirstSegments(p) == segments)
-			{
-				ftpFileCache.remove(p);
-			}
-		}
+		ftpFileCache.removeTree(path);
 	}
 
 	/*
@@ -894,7 +986,6 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 	 * @see com.aptana.ide.core.ftp.BaseFTPConnectionFileManager#fetchFiles(org.eclipse.core.runtime.IPath, int,
 	 * org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	@SuppressWarnings("deprecation")
 	@Override
 	protected ExtendedFileInfo[] fetchFiles(IPath path, int options, IProgressMonitor monitor) throws CoreException,
 			FileNotFoundException
@@ -902,50 +993,7 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 		monitor = Policy.subMonitorFor(monitor, 1);
 		try
 		{
-			FTPFile[] ftpFiles = listFiles(path, monitor);
-			monitor.beginTask(Messages.FTPConnectionFileManager_gethering_file_details, ftpFiles.length);
-			List<ExtendedFileInfo> list = new ArrayList<ExtendedFileInfo>();
-			for (FTPFile ftpFile : ftpFiles)
-			{
-				String fileName = ftpFile.getName();
-				if (fileName == null || ".".equals(fileName) || "..".equals(fileName)) { //$NON-NLS-1$ //$NON-NLS-2$
-					monitor.worked(1);
-					continue;
-				}
-				Date lastModifiedServerInLocalTZ = ftpFile.lastModified();
-				if (serverToLocalTimeZoneShift != 0 && lastModifiedServerInLocalTZ != null)
-				{
-					ftpFile.setLastModified(new Date(lastModifiedServerInLocalTZ.getTime() + serverToLocalTimeZoneShift));
-				}
-				if ((options & IExtendedFileStore.DETAILED) != 0)
-				{
-					if (!ftpFile.isDir() && ftpFile.lastModified().getSeconds() == 0)
-					{
-						if (serverSupportsFeature("MDTM")) { //$NON-NLS-1$
-							changeCurrentDir(path);
-							Policy.checkCanceled(monitor);
-							try
-							{
-								Date lastModifiedLocalTZ = ftpClient.modtime(fileName);
-								if (lastModifiedLocalTZ != null)
-								{
-									ftpFile.setLastModified(lastModifiedLocalTZ);
-								}
-							}
-							catch (FTPException e)
-							{
-							}
-						}
-					}
-				}
-				IPath filePath = path.append(fileName);
-				ftpFileCache.put(filePath, ftpFile);
-
-				ExtendedFileInfo fileInfo = createFileInfo(ftpFile);
-				list.add(fileInfo);
-				monitor.worked(1);
-			}
-			return list.toArray(new ExtendedFileInfo[list.size()]);
+			return listFileInfos(ftpClient, path, options, monitor);
 		}
 		catch (FileNotFoundException e)
 		{
@@ -966,6 +1014,56 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 		}
 	}
 
+	@SuppressWarnings("deprecation")
+	private ExtendedFileInfo[] listFileInfos(FTPClient client, IPath path, int options, IProgressMonitor monitor)
+			throws IOException, ParseException, FTPException
+	{
+		FTPFile[] ftpFiles = listFiles(client, path, monitor);
+		monitor.beginTask(Messages.FTPConnectionFileManager_gethering_file_details, ftpFiles.length);
+		List<ExtendedFileInfo> list = new ArrayList<ExtendedFileInfo>();
+		for (FTPFile ftpFile : ftpFiles)
+		{
+			String fileName = ftpFile.getName();
+			if (fileName == null || ".".equals(fileName) || "..".equals(fileName)) { //$NON-NLS-1$ //$NON-NLS-2$
+				monitor.worked(1);
+				continue;
+			}
+			Date lastModifiedServerInLocalTZ = ftpFile.lastModified();
+			if (serverToLocalTimeZoneShift != 0 && lastModifiedServerInLocalTZ != null)
+			{
+				ftpFile.setLastModified(new Date(lastModifiedServerInLocalTZ.getTime() + serverToLocalTimeZoneShift));
+			}
+			if ((options & IExtendedFileStore.DETAILED) != 0)
+			{
+				if (!ftpFile.isDir() && ftpFile.lastModified().getSeconds() == 0)
+				{
+					if (serverSupportsFeature("MDTM")) { //$NON-NLS-1$
+						changeCurrentDir(client, path);
+						Policy.checkCanceled(monitor);
+						try
+						{
+							Date lastModifiedLocalTZ = client.modtime(fileName);
+							if (lastModifiedLocalTZ != null)
+							{
+								ftpFile.setLastModified(lastModifiedLocalTZ);
+							}
+						}
+						catch (FTPException e)
+						{
+						}
+					}
+				}
+			}
+			IPath filePath = path.append(fileName);
+			ftpFileCache.put(filePath, ftpFile);
+
+			ExtendedFileInfo fileInfo = createFileInfo(ftpFile);
+			list.add(fileInfo);
+			monitor.worked(1);
+		}
+		return list.toArray(new ExtendedFileInfo[list.size()]);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.ide.core.ftp.BaseFTPConnectionFileManager#listDirectory(org.eclipse.core.runtime.IPath,
@@ -1017,7 +1115,7 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 	protected InputStream readFile(IPath path, IProgressMonitor monitor) throws CoreException, FileNotFoundException
 	{
 		monitor.beginTask(Messages.FTPConnectionFileManager_initiating_download, 4);
-		FTPClient downloadFtpClient = (FTPClient) pool.checkOut();
+		FTPClient downloadFtpClient = checkOutClient(monitor);
 		try
 		{
 			initAndAuthFTPClient(downloadFtpClient, monitor);
@@ -1077,7 +1175,7 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 			throws CoreException, FileNotFoundException
 	{
 		monitor.beginTask(Messages.FTPConnectionFileManager_initiating_file_upload, 4);
-		FTPClient uploadFtpClient = (FTPClient) pool.checkOut();
+		FTPClient uploadFtpClient = checkOutClient(monitor);
 		try
 		{
 			initAndAuthFTPClient(uploadFtpClient, monitor);
@@ -1102,6 +1200,7 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 					{
 						public void run()
 						{
+							// runs as the upload completes, which may be on another thread
 							clearCacheAbsolute(path);
 						}
 					});
@@ -1431,6 +1530,61 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.core.io.vfs.BaseConnectionFileManager#computeChecksum(org.eclipse.core.runtime.IPath,
+	 * java.lang.String, org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	@Override
+	protected String computeChecksum(IPath path, String algorithm, IProgressMonitor monitor) throws CoreException,
+			FileNotFoundException
+	{
+		String command;
+		if (serverSupportsFeature("HASH")) { //$NON-NLS-1$
+			command = "HASH"; //$NON-NLS-1$
+		}
+		else if ("MD5".equalsIgnoreCase(algorithm) && serverSupportsFeature("XMD5")) { //$NON-NLS-1$ //$NON-NLS-2$
+			command = "XMD5"; //$NON-NLS-1$
+		}
+		else if ("MD5".equalsIgnoreCase(algorithm) && serverSupportsFeature("MD5")) { //$NON-NLS-1$ //$NON-NLS-2$
+			command = "MD5"; //$NON-NLS-1$
+		}
+		else
+		{
+			return null;
+		}
+		try
+		{
+			// HASH computes whichever algorithm was last selected
+			if ("HASH".equals(command) && !algorithm.equalsIgnoreCase(hashAlgorithm)) { //$NON-NLS-1$
+				FTPReply reply = ftpClient.sendCommand("OPTS HASH " + algorithm); //$NON-NLS-1$
+				if (!reply.getReplyCode().startsWith("2")) { //$NON-NLS-1$
+					return null;
+				}
+				hashAlgorithm = algorithm;
+			}
+			Policy.checkCanceled(monitor);
+			FTPReply reply = ftpClient.sendCommand(command + ' ' + path.toPortableString());
+			if (!reply.getReplyCode().startsWith("2")) { //$NON-NLS-1$
+				return null;
+			}
+			return parseChecksum(reply.getReplyText());
+		}
+		catch (OperationCanceledException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new CoreException(new Status(Status.ERROR, FTPPlugin.PLUGIN_ID,
+					Messages.FTPConnectionFileManager_computing_checksum_failed, e));
+		}
+		finally
+		{
+			monitor.done();
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.ide.core.ftp.BaseFTPConnectionFileManager#changeFilePermissions(org.eclipse.core.runtime.IPath,
@@ -1512,12 +1666,12 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 		return ftpClient.existsFile(filePath.toPortableString());
 	}
 
-	private FTPFile[] ftpSTAT(String dirname) throws IOException, FTPException, ParseException
+	private FTPFile[] ftpSTAT(FTPClient client, String dirname) throws IOException, FTPException, ParseException
 	{
 		setupFileFactory();
 		String[] validCodes = { "211", "212", "213" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-		FTPReply reply = ftpClient.sendCommand("STAT " + dirname); //$NON-NLS-1$
-		ftpClient.validateReply(reply, validCodes);
+		FTPReply reply = client.sendCommand("STAT " + dirname); //$NON-NLS-1$
+		client.validateReply(reply, validCodes);
 		String[] data = reply.getReplyData();
 		if (data == null)
 		{
@@ -1527,7 +1681,7 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 		{
 			data[i] = data[i].trim();
 		}
-		FTPFile[] ftpFiles = fileFactory.parse(data);
+		FTPFile[] ftpFiles = parseListing(data);
 		for (FTPFile ftpFile : ftpFiles)
 		{
 			String name = ftpFile.getName();
@@ -1539,16 +1693,17 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 		return ftpFiles;
 	}
 
-	private FTPFile[] ftpLIST(IPath dirPath, IProgressMonitor monitor) throws IOException, ParseException, FTPException
+	private FTPFile[] ftpLIST(FTPClient client, IPath dirPath, IProgressMonitor monitor) throws IOException,
+			ParseException, FTPException
 	{
 		setupFileFactory();
-		changeCurrentDir(dirPath);
+		changeCurrentDir(client, dirPath);
 		Policy.checkCanceled(monitor);
 		if (!Boolean.FALSE.equals(listASupported))
 		{
 			try
 			{
-				FTPFile[] ftpFiles = fileFactory.parse(ftpClient.dir("-a", true)); //$NON-NLS-1$
+				FTPFile[] ftpFiles = parseListing(client.dir("-a", true)); //$NON-NLS-1$
 				listASupported = Boolean.TRUE;
 				return ftpFiles;
 			}
@@ -1564,34 +1719,55 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 				}
 			}
 		}
-		return fileFactory.parse(ftpClient.dir(".", true)); //$NON-NLS-1$
+		return parseListing(client.dir(".", true)); //$NON-NLS-1$
+	}
+
+	/**
+	 * Parses a listing. Directories are also listed on pooled clients while fetching a tree, so the parser, which
+	 * isn't thread-safe, is only used by one thread at a time.
+	 */
+	private FTPFile[] parseListing(String[] lines) throws ParseException
+	{
+		synchronized (fileFactory)
+		{
+			return fileFactory.parse(lines);
+		}
 	}
 
 	private void setupFileFactory() throws IOException, FTPException
 	{
-		if (fileFactory == null)
+		synchronized (connectionLock)
 		{
-			try
-			{
-				fileFactory = new FTPFileFactory(ftpClient.system());
-			}
-			catch (FTPException ex)
+			if (fileFactory == null)
 			{
-				fileFactory = new FTPFileFactory("UNIX"); //$NON-NLS-1$
+				try
+				{
+					fileFactory = new FTPFileFactory(ftpClient.system());
+				}
+				catch (FTPException ex)
+				{
+					fileFactory = new FTPFileFactory("UNIX"); //$NON-NLS-1$
+				}
+				fileFactory.setLocales(FTPClient.DEFAULT_LISTING_LOCALES);
 			}
-			fileFactory.setLocales(FTPClient.DEFAULT_LISTING_LOCALES);
 		}
 	}
 
 	private FTPFile[] listFiles(IPath dirPath, IProgressMonitor monitor) throws IOException, ParseException,
 			FTPException
+	{
+		return listFiles(ftpClient, dirPath, monitor);
+	}
+
+	private FTPFile[] listFiles(FTPClient client, IPath dirPath, IProgressMonitor monitor) throws IOException,
+			ParseException, FTPException
 	{
 		FTPFile[] ftpFiles = null;
 		if (!Boolean.FALSE.equals(statSupported) && dirPath.toPortableString().indexOf(' ') == -1)
 		{
 			try
 			{
-				ftpFiles = ftpSTAT(dirPath.addTrailingSeparator().toPortableString());
+				ftpFiles = ftpSTAT(client, dirPath.addTrailingSeparator().toPortableString());
 			}
 			catch (MalformedReplyException e)
 			{
@@ -1614,11 +1790,11 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 				{
 					statSupported = Boolean.FALSE;
 				}
-				return ftpLIST(dirPath, monitor);
+				return ftpLIST(client, dirPath, monitor);
 			}
 			else if (ftpFiles[0].isLink())
 			{
-				return ftpLIST(dirPath, monitor);
+				return ftpLIST(client, dirPath, monitor);
 			}
 			else if (statSupported == null)
 			{
@@ -1627,7 +1803,7 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 		}
 		else
 		{
-			ftpFiles = ftpLIST(dirPath, monitor);
+			ftpFiles = ftpLIST(client, dirPath, monitor);
 		}
 		if (fileFactory.getSystem().toUpperCase().startsWith(WINDOWS_STR) && ftpFiles != null)
 		{
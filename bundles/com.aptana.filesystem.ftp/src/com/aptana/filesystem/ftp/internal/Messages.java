@@ -21,6 +21,7 @@ import org.eclipse.osgi.util.NLS;
 	public static String FTPConnectionFileManager_already_initialized;
 	public static String FTPConnectionFileManager_authenticating;
 	public static String FTPConnectionFileManager_closing_connection;
+	public static String FTPConnectionFileManager_computing_checksum_failed;
 	public static String FTPConnectionFileManager_connecting;
 	public static String FTPConnectionFileManager_connection_failed;
 
@@ -35,6 +36,7 @@ import org.eclipse.osgi.util.NLS;
 	public static String FTPConnectionFileManager_FailedSetPermissions;
 	public static String FTPConnectionFileManager_fetch_failed;
 	public static String FTPConnectionFileManager_fetching_directory_failed;
+	public static String FTPConnectionFileManager_no_connection_available;
 	public static String FTPConnectionFileManager_ftp_auth;
 	public static String FTPConnectionFileManager_gethering_file_details;
 	public static String FTPConnectionFileManager_gethering_server_info;
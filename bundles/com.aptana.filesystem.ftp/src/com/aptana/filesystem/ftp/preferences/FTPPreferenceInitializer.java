@@ -17,11 +17,13 @@ public class FTPPreferenceInitializer extends AbstractPreferenceInitializer
 {
 
 	public static final int DEFAULT_KEEP_ALIVE_MINUTES = 7;
+	public static final int DEFAULT_MAX_CONNECTIONS = 4;
 
 	@Override
 	public void initializeDefaultPreferences()
 	{
 		IEclipsePreferences prefs = DefaultScope.INSTANCE.getNode(FTPPlugin.PLUGIN_ID);
 		prefs.putInt(IFTPPreferenceConstants.KEEP_ALIVE_TIME, DEFAULT_KEEP_ALIVE_MINUTES);
+		prefs.putInt(IFTPPreferenceConstants.MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS);
 	}
 }
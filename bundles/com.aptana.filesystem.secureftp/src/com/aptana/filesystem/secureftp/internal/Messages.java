@@ -39,6 +39,7 @@ import org.eclipse.osgi.util.NLS;
 	public static String SFTPConnectionFileManager_EstablishingConnection;
 	public static String SFTPConnectionFileManager_FailedAuthenticate;
 	public static String SFTPConnectionFileManager_FailedAuthenticatePublicKey;
+	public static String SFTPConnectionFileManager_FailedComputeChecksum;
 	public static String SFTPConnectionFileManager_FailedCreateDirectory;
 	public static String SFTPConnectionFileManager_FailedDeleteDirectory;
 	public static String SFTPConnectionFileManager_FailedDeleteFile;
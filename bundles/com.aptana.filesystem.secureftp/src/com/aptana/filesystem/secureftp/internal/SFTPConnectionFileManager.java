@@ -29,6 +29,7 @@ import java.text.MessageFormat;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -43,9 +44,9 @@ import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Status;
 
+import com.aptana.core.io.vfs.ExpiringPathCache;
 import com.aptana.core.io.vfs.ExtendedFileInfo;
 import com.aptana.core.io.vfs.IExtendedFileStore;
-import com.aptana.core.util.ExpiringMap;
 import com.aptana.filesystem.ftp.Policy;
 import com.aptana.filesystem.ftp.internal.BaseFTPConnectionFileManager;
 import com.aptana.filesystem.secureftp.ISFTPConnectionFileManager;
@@ -74,13 +75,34 @@ import com.enterprisedt.net.j2ssh.transport.publickey.SshPrivateKeyFile;
 public class SFTPConnectionFileManager extends BaseFTPConnectionFileManager implements ISFTPConnectionFileManager
 {
 
+	private static final Map<String, String> CHECKSUM_COMMANDS = new HashMap<String, String>();
+	static
+	{
+		CHECKSUM_COMMANDS.put("MD5", "md5sum"); //$NON-NLS-1$ //$NON-NLS-2$
+		CHECKSUM_COMMANDS.put("SHA-1", "sha1sum"); //$NON-NLS-1$ //$NON-NLS-2$
+		CHECKSUM_COMMANDS.put("SHA-256", "sha256sum"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Printed after the output of a checksum command, followed by its exit status, so we can tell whether the command
+	 * ran at all.
+	 */
+	private static final String EXIT_STATUS_PREFIX = "exit:"; //$NON-NLS-1$
+
+	/**
+	 * The exit statuses the shell reports when it can't run a command, because it isn't there or isn't executable.
+	 */
+	private static final int COMMAND_NOT_EXECUTABLE = 126;
+	private static final int COMMAND_NOT_FOUND = 127;
+
 	private SSHFTPClient ftpClient;
 	private IPath keyFilePath;
 	private String transferType;
 	private IPath cwd;
-	private Map<IPath, FTPFile> ftpFileCache = new ExpiringMap<IPath, FTPFile>(CACHE_TTL);
+	private final ExpiringPathCache<FTPFile> ftpFileCache = new ExpiringPathCache<FTPFile>(CACHE_TTL, CACHE_SIZE);
 
 	private Thread keepaliveThread;
+	private boolean execUnsupported;
 
 	/*
 	 * (non-Javadoc)
@@ -457,6 +479,17 @@ public class SFTPConnectionFileManager extends BaseFTPConnectionFileManager impl
 		return ftpClient != null && ftpClient.connected();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.core.io.vfs.BaseConnectionFileManager#getMaxConcurrentTransfers()
+	 */
+	@Override
+	public int getMaxConcurrentTransfers()
+	{
+		// Every transfer goes over our one SSH client, which copies a file at a time. Syncs log that they're limited.
+		return 1;
+	}
+
 	protected void changeCurrentDir(IPath path) throws FTPException, IOException, PermissionDeniedException
 	{
 		try
@@ -545,14 +578,7 @@ public class SFTPConnectionFileManager extends BaseFTPConnectionFileManager impl
 
 	private void clearCacheAbsolute(IPath path)
 	{
-		int segments = path.segmentCount();
-		for (IPath p : new ArrayList<IPath>(ftpFileCache.keySet()))
-		{
-			if (p.segmentCount() >= segments && path.matchingFirstSegments(p) == segments)
-			{
-				ftpFileCache.remove(p);
-			}
-		}
+		ftpFileCache.removeTree(path);
 	}
 
 	/*
@@ -1204,6 +1230,83 @@ public class SFTPConnectionFileManager extends BaseFTPConnectionFileManager impl
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.core.io.vfs.BaseConnectionFileManager#computeChecksum(org.eclipse.core.runtime.IPath,
+	 * java.lang.String, org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	@Override
+	protected String computeChecksum(IPath path, String algorithm, IProgressMonitor monitor) throws CoreException,
+			FileNotFoundException
+	{
+		String command = CHECKSUM_COMMANDS.get(algorithm.toUpperCase());
+		if (command == null || execUnsupported)
+		{
+			return null;
+		}
+		try
+		{
+			Policy.checkCanceled(monitor);
+			// single quotes keep the shell from expanding anything in the path
+			String quotedPath = "'" + path.toPortableString().replace("'", "'\\''") + "'"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			// the shell then tells us whether it could run the command
+			String commandLine = command + " -- " + quotedPath //$NON-NLS-1$
+					+ "; echo " + EXIT_STATUS_PREFIX + "$?"; //$NON-NLS-1$ //$NON-NLS-2$
+			String output = ftpClient.executeCommand(commandLine);
+			int exitStatus = parseExitStatus(output);
+			if (exitStatus == -1 || exitStatus == COMMAND_NOT_FOUND || exitStatus == COMMAND_NOT_EXECUTABLE)
+			{
+				// no shell, or no such command on the server; the files are read instead from now on
+				execUnsupported = true;
+				return null;
+			}
+			// otherwise the command ran, but may have failed for just this file (e.g. it's unreadable)
+			return (exitStatus == 0) ? parseChecksum(output) : null;
+		}
+		catch (OperationCanceledException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			// servers that only allow SFTP refuse to execute commands
+			execUnsupported = true;
+			SecureFTPPlugin.log(new Status(IStatus.WARNING, SecureFTPPlugin.PLUGIN_ID,
+					Messages.SFTPConnectionFileManager_FailedComputeChecksum, e));
+			return null;
+		}
+		finally
+		{
+			monitor.done();
+		}
+	}
+
+	/**
+	 * @param output
+	 *            the output of a command followed by its exit status
+	 * @return the exit status, or -1 if there's none (the command wasn't run by a shell)
+	 */
+	private static int parseExitStatus(String output)
+	{
+		if (output == null)
+		{
+			return -1;
+		}
+		int index = output.lastIndexOf(EXIT_STATUS_PREFIX);
+		if (index == -1)
+		{
+			return -1;
+		}
+		try
+		{
+			return Integer.parseInt(output.substring(index + EXIT_STATUS_PREFIX.length()).trim());
+		}
+		catch (NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.filesystem.ftp.BaseFTPConnectionFileManager#changeFileGroup(org.eclipse.core.runtime.IPath,
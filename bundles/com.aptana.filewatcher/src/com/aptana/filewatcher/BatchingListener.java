@@ -0,0 +1,134 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.filewatcher;
+
+import net.contentobjects.jnotify.IJNotify;
+import net.contentobjects.jnotify.JNotifyListener;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Collects the events of a watch into a {@link FileChangeBatch}, and hands it to an {@link IFileChangeBatchListener}
+ * once no event came in for the delay, or at the latest {@link #MAX_DELAY_FACTOR} times the delay after the first
+ * event of the batch.
+ */
+class BatchingListener implements JNotifyListener
+{
+	private static final int MAX_DELAY_FACTOR = 5;
+
+	private final String fRootPath;
+	private final long fDelay;
+	private final IFileChangeBatchListener fListener;
+	private final Job fJob;
+
+	private FileChangeBatch fBatch;
+	private long fFirstEvent;
+	private long fLastEvent;
+	private boolean fDisposed;
+
+	BatchingListener(String rootPath, long delay, IFileChangeBatchListener listener)
+	{
+		fRootPath = rootPath;
+		fDelay = delay;
+		fListener = listener;
+		fJob = new Job("Reporting file changes") //$NON-NLS-1$
+		{
+			@Override
+			protected IStatus run(IProgressMonitor monitor)
+			{
+				deliver();
+				return Status.OK_STATUS;
+			}
+		};
+		fJob.setSystem(true);
+	}
+
+	public void fileCreated(int wd, String rootPath, String name)
+	{
+		add(rootPath, name, IJNotify.FILE_CREATED);
+	}
+
+	public void fileDeleted(int wd, String rootPath, String name)
+	{
+		add(rootPath, name, IJNotify.FILE_DELETED);
+	}
+
+	public void fileModified(int wd, String rootPath, String name)
+	{
+		add(rootPath, name, IJNotify.FILE_MODIFIED);
+	}
+
+	public synchronized void fileRenamed(int wd, String rootPath, String oldName, String newName)
+	{
+		add(rootPath, oldName, IJNotify.FILE_DELETED);
+		add(rootPath, newName, IJNotify.FILE_CREATED);
+	}
+
+	private synchronized void add(String rootPath, String name, int kind)
+	{
+		// renames from or to outside the watched path come without one of the names
+		if (fDisposed || name == null)
+		{
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		if (fBatch == null)
+		{
+			fBatch = new FileChangeBatch(fRootPath);
+			fFirstEvent = now;
+			fJob.schedule(fDelay);
+		}
+		fBatch.add(rootPath, name, kind);
+		fLastEvent = now;
+	}
+
+	private void deliver()
+	{
+		FileChangeBatch batch;
+		synchronized (this)
+		{
+			if (fBatch == null)
+			{
+				return;
+			}
+			long wait = Math.min(fLastEvent + fDelay, fFirstEvent + MAX_DELAY_FACTOR * fDelay)
+					- System.currentTimeMillis();
+			if (wait > 0)
+			{
+				// still busy, this runs again once the job is done
+				fJob.schedule(wait);
+				return;
+			}
+			batch = fBatch;
+			fBatch = null;
+		}
+
+		if (!batch.isEmpty())
+		{
+			try
+			{
+				fListener.filesChanged(batch);
+			}
+			catch (RuntimeException e)
+			{
+				FileWatcherPlugin.log(e);
+			}
+		}
+	}
+
+	synchronized void dispose()
+	{
+		fDisposed = true;
+		fBatch = null;
+		fJob.cancel();
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.filewatcher;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The changes a watch saw during a burst of file system activity, grouped by directory.
+ */
+public class FileChangeBatch
+{
+	private final String fRootPath;
+	private final Map<String, FileChangeSet> fChangeSets = new LinkedHashMap<String, FileChangeSet>();
+
+	FileChangeBatch(String rootPath)
+	{
+		fRootPath = rootPath;
+	}
+
+	/**
+	 * Adds an event reported by a notifier, which names files relative to a root path.
+	 * 
+	 * @param rootPath
+	 * @param name
+	 * @param kind
+	 */
+	void add(String rootPath, String name, int kind)
+	{
+		File file = new File(rootPath, name);
+		String directory = file.getParent();
+		FileChangeSet changeSet = fChangeSets.get(directory);
+		if (changeSet == null)
+		{
+			changeSet = new FileChangeSet(directory);
+			fChangeSets.put(directory, changeSet);
+		}
+		changeSet.add(file.getName(), kind);
+	}
+
+	/**
+	 * The path that is watched
+	 * 
+	 * @return
+	 */
+	public String getRootPath()
+	{
+		return fRootPath;
+	}
+
+	/**
+	 * The changes to the directory, or null if nothing in it changed
+	 * 
+	 * @param directory
+	 *            the absolute path of the directory
+	 * @return
+	 */
+	public FileChangeSet getChangeSet(String directory)
+	{
+		FileChangeSet changeSet = fChangeSets.get(directory);
+		return (changeSet == null || changeSet.isEmpty()) ? null : changeSet;
+	}
+
+	/**
+	 * The changes to each directory in which something changed, in the order the directories first changed
+	 * 
+	 * @return
+	 */
+	public Collection<FileChangeSet> getChangeSets()
+	{
+		List<FileChangeSet> changeSets = new ArrayList<FileChangeSet>(fChangeSets.size());
+		for (FileChangeSet changeSet : fChangeSets.values())
+		{
+			if (!changeSet.isEmpty())
+			{
+				changeSets.add(changeSet);
+			}
+		}
+		return Collections.unmodifiableList(changeSets);
+	}
+
+	public boolean isEmpty()
+	{
+		return getChangeSets().isEmpty();
+	}
+
+	@Override
+	public String toString()
+	{
+		return fRootPath + ": " + getChangeSets(); //$NON-NLS-1$
+	}
+}
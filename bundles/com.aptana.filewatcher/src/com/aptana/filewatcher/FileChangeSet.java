@@ -0,0 +1,155 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.filewatcher;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.contentobjects.jnotify.IJNotify;
+
+/**
+ * What changed in a single directory during a {@link FileChangeBatch}. Each file is reported once, as created, deleted
+ * or modified, according to {@link #fold(int, int)}.
+ */
+public class FileChangeSet
+{
+	private final String fDirectory;
+	private final Map<String, Integer> fChanges = new LinkedHashMap<String, Integer>();
+
+	FileChangeSet(String directory)
+	{
+		fDirectory = directory;
+	}
+
+	/**
+	 * Folds the next event for a file into what its earlier events add up to. A file that was created and then
+	 * modified counts as created, one that was modified and then deleted as deleted, one that was deleted and created
+	 * again as modified, and one that was created and deleted again as nothing at all (0).
+	 * 
+	 * @param kind
+	 *            what the earlier events add up to: one of IJNotify's FILE_CREATED, FILE_DELETED and FILE_MODIFIED,
+	 *            or 0
+	 * @param next
+	 *            one of IJNotify's FILE_CREATED, FILE_DELETED and FILE_MODIFIED
+	 * @return what all events add up to
+	 */
+	public static int fold(int kind, int next)
+	{
+		switch (kind)
+		{
+			case IJNotify.FILE_CREATED:
+				return (next == IJNotify.FILE_DELETED) ? 0 : IJNotify.FILE_CREATED;
+
+			case IJNotify.FILE_DELETED:
+				// created again means replaced
+				return (next == IJNotify.FILE_CREATED) ? IJNotify.FILE_MODIFIED : IJNotify.FILE_DELETED;
+
+			case IJNotify.FILE_MODIFIED:
+				return (next == IJNotify.FILE_DELETED) ? IJNotify.FILE_DELETED : IJNotify.FILE_MODIFIED;
+
+			default:
+				// nothing so far, or created and deleted again
+				return next;
+		}
+	}
+
+	void add(String name, int kind)
+	{
+		Integer previous = fChanges.get(name);
+		fChanges.put(name, (previous == null) ? kind : fold(previous, kind));
+	}
+
+	/**
+	 * The absolute path of the directory
+	 * 
+	 * @return
+	 */
+	public String getDirectory()
+	{
+		return fDirectory;
+	}
+
+	/**
+	 * The names of the files that were created in the directory
+	 * 
+	 * @return
+	 */
+	public Set<String> getCreated()
+	{
+		return getNames(IJNotify.FILE_CREATED);
+	}
+
+	/**
+	 * The names of the files that were deleted from the directory
+	 * 
+	 * @return
+	 */
+	public Set<String> getDeleted()
+	{
+		return getNames(IJNotify.FILE_DELETED);
+	}
+
+	/**
+	 * The names of the files in the directory that were modified
+	 * 
+	 * @return
+	 */
+	public Set<String> getModified()
+	{
+		return getNames(IJNotify.FILE_MODIFIED);
+	}
+
+	/**
+	 * The names of all files that were created, deleted or modified
+	 * 
+	 * @return
+	 */
+	public Set<String> getChanged()
+	{
+		return getNames(IJNotify.FILE_ANY);
+	}
+
+	/**
+	 * What happened to the file
+	 * 
+	 * @param name
+	 * @return IJNotify's FILE_CREATED, FILE_DELETED or FILE_MODIFIED, or 0 if the file didn't change
+	 */
+	public int getKind(String name)
+	{
+		Integer kind = fChanges.get(name);
+		return (kind == null) ? 0 : kind;
+	}
+
+	public boolean isEmpty()
+	{
+		return getChanged().isEmpty();
+	}
+
+	private Set<String> getNames(int mask)
+	{
+		Set<String> names = new LinkedHashSet<String>();
+		for (Map.Entry<String, Integer> change : fChanges.entrySet())
+		{
+			if ((change.getValue() & mask) != 0)
+			{
+				names.add(change.getKey());
+			}
+		}
+		return Collections.unmodifiableSet(names);
+	}
+
+	@Override
+	public String toString()
+	{
+		return fDirectory + ": created " + getCreated() + ", deleted " + getDeleted() + ", modified " + getModified(); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+}
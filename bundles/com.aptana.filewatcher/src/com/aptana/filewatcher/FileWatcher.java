@@ -7,6 +7,9 @@
  */
 package com.aptana.filewatcher;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import net.contentobjects.jnotify.IJNotify;
 import net.contentobjects.jnotify.JNotifyException;
 import net.contentobjects.jnotify.JNotifyListener;
@@ -14,6 +17,7 @@ import net.contentobjects.jnotify.JNotifyListener;
 import org.eclipse.core.runtime.Platform;
 import org.osgi.framework.Bundle;
 
+import com.aptana.filewatcher.nio.WatchServiceNotifier;
 import com.aptana.filewatcher.poller.PollingNotifier;
 
 public class FileWatcher
@@ -21,42 +25,62 @@ public class FileWatcher
 
 	private static IJNotify _instance;
 	private static boolean fgNotify = true;
+	private static final Map<Integer, BatchingListener> fgBatchingListeners = new HashMap<Integer, BatchingListener>();
 
 	private synchronized static IJNotify instance()
 	{
 		if (_instance == null)
 		{
-			String className = null;
-			if (Platform.OS_LINUX.equals(Platform.getOS()))
-			{
-				className = "net.contentobjects.jnotify.linux.JNotifyAdapterLinux"; //$NON-NLS-1$
-			}
-			else if (Platform.OS_WIN32.equals(Platform.getOS()))
+			String notifier = System.getProperty(IFileWatcherSystemProperties.NOTIFIER,
+					IFileWatcherSystemProperties.NOTIFIER_NATIVE);
+			if (IFileWatcherSystemProperties.NOTIFIER_POLLING.equals(notifier))
 			{
-				className = "net.contentobjects.jnotify.win32.JNotifyAdapterWin32"; //$NON-NLS-1$
+				_instance = new PollingNotifier();
 			}
-			else if (Platform.OS_MACOSX.equals(Platform.getOS()))
+			else if (IFileWatcherSystemProperties.NOTIFIER_NIO.equals(notifier))
 			{
-				className = "net.contentobjects.jnotify.macosx.JNotifyAdapterMacOSX"; //$NON-NLS-1$
+				_instance = new WatchServiceNotifier();
 			}
-			if (className != null)
+			else
 			{
-				try
+				_instance = createNativeNotifier();
+				if (_instance == null)
 				{
-					Bundle b = FileWatcherPlugin.getDefault().getBundle();
-					_instance = (IJNotify) b.loadClass(className).newInstance();
-				}
-				catch (Throwable e)
-				{
-					FileWatcherPlugin.log(e);
+					_instance = new WatchServiceNotifier();
 				}
 			}
-			if (_instance == null)
+		}
+		return _instance;
+	}
+
+	private static IJNotify createNativeNotifier()
+	{
+		String className = null;
+		if (Platform.OS_LINUX.equals(Platform.getOS()))
+		{
+			className = "net.contentobjects.jnotify.linux.JNotifyAdapterLinux"; //$NON-NLS-1$
+		}
+		else if (Platform.OS_WIN32.equals(Platform.getOS()))
+		{
+			className = "net.contentobjects.jnotify.win32.JNotifyAdapterWin32"; //$NON-NLS-1$
+		}
+		else if (Platform.OS_MACOSX.equals(Platform.getOS()))
+		{
+			className = "net.contentobjects.jnotify.macosx.JNotifyAdapterMacOSX"; //$NON-NLS-1$
+		}
+		if (className != null)
+		{
+			try
 			{
-				_instance = new PollingNotifier();
+				Bundle b = FileWatcherPlugin.getDefault().getBundle();
+				return (IJNotify) b.loadClass(className).newInstance();
+			}
+			catch (Throwable e)
+			{
+				FileWatcherPlugin.log(e);
 			}
 		}
-		return _instance;
+		return null;
 	}
 
 	public static int addWatch(String path, int mask, boolean watchSubtree, final JNotifyListener listener)
@@ -71,8 +95,44 @@ public class FileWatcher
 		return instance().addWatch(path, mask, watchSubtree, recursive, listener);
 	}
 
+	/**
+	 * Like {@link #addWatch(String, int, boolean, JNotifyListener)}, but rather than getting an event at a time, the
+	 * listener gets everything that changed until no event came in for the delay, grouped by directory and with the
+	 * events for each file folded into one. A batch is reported after at most five times the delay, however busy the
+	 * file system is. Renames are reported as a deletion and a creation.
+	 * 
+	 * @param path
+	 * @param mask
+	 * @param watchSubtree
+	 * @param delay
+	 *            how long to wait for more events before reporting a batch, in milliseconds
+	 * @param listener
+	 * @return the id to remove the watch with
+	 * @throws JNotifyException
+	 */
+	public static int addBatchedWatch(String path, int mask, boolean watchSubtree, long delay,
+			IFileChangeBatchListener listener) throws JNotifyException
+	{
+		BatchingListener batchingListener = new BatchingListener(path, delay, listener);
+		int watchId = addWatch(path, mask, watchSubtree, batchingListener);
+		synchronized (fgBatchingListeners)
+		{
+			fgBatchingListeners.put(watchId, batchingListener);
+		}
+		return watchId;
+	}
+
 	public static boolean removeWatch(int watchId) throws JNotifyException
 	{
+		BatchingListener batchingListener;
+		synchronized (fgBatchingListeners)
+		{
+			batchingListener = fgBatchingListeners.remove(watchId);
+		}
+		if (batchingListener != null)
+		{
+			batchingListener.dispose();
+		}
 		return instance().removeWatch(watchId);
 	}
 
@@ -0,0 +1,24 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.filewatcher;
+
+/**
+ * Gets the changes to a watched path in batches, rather than an event at a time like a
+ * {@link net.contentobjects.jnotify.JNotifyListener}. See
+ * {@link FileWatcher#addBatchedWatch(String, int, boolean, long, IFileChangeBatchListener)}.
+ */
+public interface IFileChangeBatchListener
+{
+	/**
+	 * Called from a background job, one batch at a time, with what changed since the previous batch. The batch is
+	 * never empty.
+	 * 
+	 * @param batch
+	 */
+	public void filesChanged(FileChangeBatch batch);
+}
@@ -0,0 +1,36 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.filewatcher;
+
+/**
+ * Various options that can be passed on the command line to control how we watch the file system
+ */
+public interface IFileWatcherSystemProperties
+{
+	/**
+	 * Which implementation watches the file system: {@link #NOTIFIER_NATIVE} (the default), {@link #NOTIFIER_NIO} or
+	 * {@link #NOTIFIER_POLLING}.
+	 */
+	public static String NOTIFIER = "studio.fileWatcher"; //$NON-NLS-1$
+
+	/**
+	 * Use the JNotify library for the platform, falling back to {@link #NOTIFIER_NIO} if there's none.
+	 */
+	public static String NOTIFIER_NATIVE = "native"; //$NON-NLS-1$
+
+	/**
+	 * Use the {@link java.nio.file.WatchService} of the JRE.
+	 */
+	public static String NOTIFIER_NIO = "nio"; //$NON-NLS-1$
+
+	/**
+	 * Rescan the watched directories every two seconds.
+	 */
+	public static String NOTIFIER_POLLING = "polling"; //$NON-NLS-1$
+
+}
@@ -0,0 +1,79 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.filewatcher.nio;
+
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+
+import net.contentobjects.jnotify.JNotifyException;
+
+/**
+ * Reports a failure to register with a {@link java.nio.file.WatchService}. The system error is one of our own codes,
+ * derived from the type and message of the {@link IOException} we got.
+ */
+public class WatchServiceException extends JNotifyException
+{
+	private static final long serialVersionUID = 1L;
+
+	private static final int NO_SUCH_FILE_OR_DIRECTORY = 1;
+	private static final int PERMISSION_DENIED = 2;
+	private static final int WATCH_LIMIT_REACHED = 3;
+	private static final int OTHER = 4;
+
+	public WatchServiceException(String path, IOException e)
+	{
+		super(describe(path, e), getSystemErrorCode(e));
+		initCause(e);
+	}
+
+	private static String describe(String path, IOException e)
+	{
+		String message = e.getMessage();
+		if (message != null && message.contains(path))
+		{
+			return message;
+		}
+		return path + ": " + message; //$NON-NLS-1$
+	}
+
+	private static int getSystemErrorCode(IOException e)
+	{
+		if (e instanceof NoSuchFileException || e instanceof NotDirectoryException)
+		{
+			return NO_SUCH_FILE_OR_DIRECTORY;
+		}
+		if (e instanceof AccessDeniedException)
+		{
+			return PERMISSION_DENIED;
+		}
+		// the inotify based service reports ENOSPC as "User limit of inotify watches reached"
+		String message = e.getMessage();
+		if (message != null && message.contains("limit")) //$NON-NLS-1$
+		{
+			return WATCH_LIMIT_REACHED;
+		}
+		return OTHER;
+	}
+
+	public int getErrorCode()
+	{
+		switch (_systemErrorCode)
+		{
+			case NO_SUCH_FILE_OR_DIRECTORY:
+				return ERROR_NO_SUCH_FILE_OR_DIRECTORY;
+			case PERMISSION_DENIED:
+				return ERROR_PERMISSION_DENIED;
+			case WATCH_LIMIT_REACHED:
+				return ERROR_WATCH_LIMIT_REACHED;
+			default:
+				return ERROR_UNSPECIFIED;
+		}
+	}
+}
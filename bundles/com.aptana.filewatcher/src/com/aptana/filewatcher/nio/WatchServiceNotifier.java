@@ -0,0 +1,615 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.filewatcher.nio;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.contentobjects.jnotify.IJNotify;
+import net.contentobjects.jnotify.JNotifyException;
+import net.contentobjects.jnotify.JNotifyListener;
+
+import com.aptana.filewatcher.FileChangeSet;
+import com.aptana.filewatcher.FileWatcherPlugin;
+import com.aptana.filewatcher.poller.PollingNotifier;
+
+/**
+ * An implementation on top of the {@link WatchService} of the default file system, which is backed by inotify on Linux
+ * and by the native change notifications on Windows. Unlike the {@link com.aptana.filewatcher.poller.PollingNotifier}
+ * it costs nothing while the watched trees don't change.
+ * <p>
+ * A subtree watch registers every directory below its root, and registers directories as they get created, reporting
+ * whatever was created in them before we got there. The events a directory has collected by the time we get to them
+ * are reported together, with the events for a path folded into one: a file that was created and then modified is
+ * reported as created, one that was created and deleted again isn't reported at all. Folding events over a longer
+ * period is up to {@link com.aptana.filewatcher.FileWatcher#addBatchedWatch}. When the service drops events for a
+ * directory, we rescan it instead, reporting the files modified since the previous events we took and the
+ * subdirectories we hadn't registered yet; files deleted in the meantime go unreported. Renames are reported as a
+ * deletion and a creation.
+ * </p>
+ * <p>
+ * A path the service can't watch, typically a tree with more directories than the inotify limit allows, is polled by a
+ * {@link PollingNotifier} instead. Only paths that don't exist or can't be read are refused.
+ * </p>
+ */
+public class WatchServiceNotifier implements IJNotify
+{
+	/**
+	 * The coarsest granularity of file timestamps we expect, in milliseconds.
+	 */
+	private static final long TIMESTAMP_GRANULARITY = 2000;
+
+	private static final WatchEvent.Kind<?>[] KINDS = { ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY };
+
+	/**
+	 * A watch added by a client
+	 */
+	private static class Watch
+	{
+		final int id;
+		final Path root;
+		final String rootPath;
+		final int mask;
+		final boolean watchSubtree;
+		final JNotifyListener listener;
+		final Set<Directory> directories = new HashSet<Directory>();
+		volatile boolean removed;
+
+		Watch(int id, Path root, String rootPath, int mask, boolean watchSubtree, JNotifyListener listener)
+		{
+			this.id = id;
+			this.root = root;
+			this.rootPath = rootPath;
+			this.mask = mask;
+			this.watchSubtree = watchSubtree;
+			this.listener = listener;
+		}
+	}
+
+	/**
+	 * A directory registered with the service, on behalf of one or more watches
+	 */
+	private static class Directory
+	{
+		final WatchKey key;
+		final Path path;
+		final List<Watch> watches = new ArrayList<Watch>(1);
+
+		Directory(WatchKey key, Path path)
+		{
+			this.key = key;
+			this.path = path;
+		}
+	}
+
+	/**
+	 * What happened to a path, according to the events of its directory
+	 */
+	private static class Change
+	{
+		final Path path;
+		final List<Watch> watches;
+
+		/**
+		 * One of FILE_CREATED, FILE_DELETED and FILE_MODIFIED, or 0 if nothing needs to be reported.
+		 */
+		int kind;
+
+		/**
+		 * Was the path created, whether it existed before or not?
+		 */
+		boolean created;
+
+		Change(Path path, List<Watch> watches, int kind)
+		{
+			this.path = path;
+			this.watches = watches;
+			this.kind = kind;
+			this.created = kind == FILE_CREATED;
+		}
+
+		void fold(int next)
+		{
+			if (next == FILE_CREATED)
+			{
+				created = true;
+			}
+			kind = FileChangeSet.fold(kind, next);
+		}
+	}
+
+	private WatchService fWatchService;
+	private int fNextId;
+	private final Map<Integer, Watch> fWatches = new HashMap<Integer, Watch>();
+	private final Map<WatchKey, Directory> fDirectories = new HashMap<WatchKey, Directory>();
+	private final Map<Path, Directory> fDirectoriesByPath = new HashMap<Path, Directory>();
+	private PollingNotifier fPollingNotifier;
+
+	/**
+	 * The ids the polling notifier gave the watches we handed to it, by our ids
+	 */
+	private final Map<Integer, Integer> fPolledWatches = new HashMap<Integer, Integer>();
+
+	public int addWatch(String path, int mask, boolean watchSubtree, boolean recursive, JNotifyListener listener)
+			throws JNotifyException
+	{
+		Path root = Paths.get(path);
+		Watch watch;
+		synchronized (this)
+		{
+			if (fWatchService == null)
+			{
+				try
+				{
+					start();
+				}
+				catch (IOException e)
+				{
+					return poll(root, path, mask, watchSubtree, recursive, listener, e);
+				}
+			}
+			watch = new Watch(fNextId++, root, path, mask, watchSubtree, listener);
+			fWatches.put(watch.id, watch);
+		}
+
+		try
+		{
+			if (watchSubtree)
+			{
+				registerTree(watch, root, false);
+			}
+			else
+			{
+				register(watch, root);
+			}
+		}
+		catch (IOException e)
+		{
+			removeWatch(watch.id);
+			if (isInaccessible(e))
+			{
+				throw new WatchServiceException(path, e);
+			}
+			return poll(root, path, mask, watchSubtree, recursive, listener, e);
+		}
+		return watch.id;
+	}
+
+	/**
+	 * Hands a watch to the polling notifier, and passes its events on the way we report ours: relative to the watched
+	 * path, with our id.
+	 */
+	private synchronized int poll(final Path root, final String path, int mask, boolean watchSubtree,
+			boolean recursive, final JNotifyListener listener, IOException e) throws JNotifyException
+	{
+		FileWatcherPlugin.log(
+				MessageFormat.format("Unable to watch {0}, polling it for changes instead", path), e); //$NON-NLS-1$
+
+		if (fPollingNotifier == null)
+		{
+			fPollingNotifier = new PollingNotifier();
+		}
+
+		final int id = fNextId++;
+		int pollingId = fPollingNotifier.addWatch(path, mask, watchSubtree, recursive, new JNotifyListener()
+		{
+			public void fileCreated(int wd, String parent, String name)
+			{
+				listener.fileCreated(id, path, relativize(parent, name));
+			}
+
+			public void fileDeleted(int wd, String parent, String name)
+			{
+				listener.fileDeleted(id, path, relativize(parent, name));
+			}
+
+			public void fileModified(int wd, String parent, String name)
+			{
+				listener.fileModified(id, path, relativize(parent, name));
+			}
+
+			public void fileRenamed(int wd, String parent, String oldName, String newName)
+			{
+				listener.fileRenamed(id, path, relativize(parent, oldName), relativize(parent, newName));
+			}
+
+			private String relativize(String parent, String name)
+			{
+				return root.relativize(Paths.get(parent, name)).toString();
+			}
+		});
+		fPolledWatches.put(id, pollingId);
+		return id;
+	}
+
+	public synchronized boolean removeWatch(int wd) throws JNotifyException
+	{
+		Integer pollingId = fPolledWatches.remove(wd);
+		if (pollingId != null)
+		{
+			return fPollingNotifier.removeWatch(pollingId);
+		}
+
+		Watch watch = fWatches.remove(wd);
+		if (watch == null)
+		{
+			return false;
+		}
+
+		watch.removed = true;
+		for (Directory directory : watch.directories)
+		{
+			directory.watches.remove(watch);
+			if (directory.watches.isEmpty())
+			{
+				directory.key.cancel();
+				fDirectories.remove(directory.key);
+				fDirectoriesByPath.remove(directory.path);
+			}
+		}
+		watch.directories.clear();
+
+		if (fWatches.isEmpty())
+		{
+			stop();
+		}
+		return true;
+	}
+
+	private void start() throws IOException
+	{
+		final WatchService service = FileSystems.getDefault().newWatchService();
+		Thread thread = new Thread("File Watcher") //$NON-NLS-1$
+		{
+			@Override
+			public void run()
+			{
+				takeEvents(service);
+			}
+		};
+		thread.setDaemon(true);
+
+		fWatchService = service;
+		thread.start();
+	}
+
+	private void stop()
+	{
+		try
+		{
+			// this ends the thread taking its events
+			fWatchService.close();
+		}
+		catch (IOException e)
+		{
+			FileWatcherPlugin.log(e);
+		}
+		fWatchService = null;
+	}
+
+	private void takeEvents(WatchService service)
+	{
+		// when we took the previous events
+		long lastTake = System.currentTimeMillis();
+		try
+		{
+			while (true)
+			{
+				WatchKey key = service.take();
+				long take = System.currentTimeMillis();
+				Map<Path, Change> changes = new LinkedHashMap<Path, Change>();
+				Map<Path, List<Watch>> overflows = new LinkedHashMap<Path, List<Watch>>();
+
+				collect(key, changes, overflows);
+
+				try
+				{
+					for (Change change : changes.values())
+					{
+						report(change);
+					}
+					for (Map.Entry<Path, List<Watch>> overflow : overflows.entrySet())
+					{
+						rescan(overflow.getKey(), overflow.getValue(), lastTake - TIMESTAMP_GRANULARITY);
+					}
+				}
+				catch (RuntimeException e)
+				{
+					FileWatcherPlugin.log(e);
+				}
+				lastTake = take;
+			}
+		}
+		catch (ClosedWatchServiceException e)
+		{
+			// all watches were removed
+		}
+		catch (InterruptedException e)
+		{
+			// we're done
+		}
+	}
+
+	private synchronized void collect(WatchKey key, Map<Path, Change> changes, Map<Path, List<Watch>> overflows)
+	{
+		List<WatchEvent<?>> events = key.pollEvents();
+		Directory directory = fDirectories.get(key);
+		if (directory == null)
+		{
+			// its watches were removed after the events came in
+			return;
+		}
+
+		List<Watch> watches = new ArrayList<Watch>(directory.watches);
+		for (WatchEvent<?> event : events)
+		{
+			WatchEvent.Kind<?> kind = event.kind();
+			if (kind == OVERFLOW)
+			{
+				overflows.put(directory.path, watches);
+				continue;
+			}
+
+			Path path = directory.path.resolve((Path) event.context());
+			int mask = (kind == ENTRY_CREATE) ? FILE_CREATED : (kind == ENTRY_DELETE) ? FILE_DELETED : FILE_MODIFIED;
+			Change change = changes.get(path);
+			if (change == null)
+			{
+				changes.put(path, new Change(path, watches, mask));
+			}
+			else
+			{
+				change.fold(mask);
+			}
+		}
+
+		if (!key.reset())
+		{
+			// the directory is gone
+			fDirectories.remove(key);
+			fDirectoriesByPath.remove(directory.path);
+			for (Watch watch : directory.watches)
+			{
+				watch.directories.remove(directory);
+			}
+		}
+	}
+
+	private void report(Change change)
+	{
+		if (change.kind == 0)
+		{
+			return;
+		}
+
+		boolean newDirectory = change.created && Files.isDirectory(change.path, LinkOption.NOFOLLOW_LINKS);
+		for (Watch watch : change.watches)
+		{
+			notify(watch, change.kind, change.path);
+			if (newDirectory && watch.watchSubtree)
+			{
+				try
+				{
+					registerTree(watch, change.path, true);
+				}
+				catch (IOException e)
+				{
+					FileWatcherPlugin.log(e);
+				}
+			}
+		}
+	}
+
+	private void rescan(Path path, List<Watch> watches, long since)
+	{
+		DirectoryStream<Path> stream = null;
+		try
+		{
+			stream = Files.newDirectoryStream(path);
+			for (Path child : stream)
+			{
+				BasicFileAttributes attributes;
+				try
+				{
+					attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+				}
+				catch (IOException e)
+				{
+					// deleted already
+					continue;
+				}
+
+				boolean registered = attributes.isDirectory() && isRegistered(child);
+				for (Watch watch : watches)
+				{
+					if (attributes.isDirectory() && watch.watchSubtree && !registered)
+					{
+						notify(watch, FILE_CREATED, child);
+						registerTree(watch, child, true);
+					}
+					else if (attributes.lastModifiedTime().toMillis() >= since)
+					{
+						notify(watch, FILE_MODIFIED, child);
+					}
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			// the directory is gone, or we can't read it anymore
+		}
+		finally
+		{
+			if (stream != null)
+			{
+				try
+				{
+					stream.close();
+				}
+				catch (IOException e)
+				{
+					// ignore
+				}
+			}
+		}
+	}
+
+	private synchronized boolean isRegistered(Path path)
+	{
+		return fDirectoriesByPath.containsKey(path);
+	}
+
+	/**
+	 * Registers the directory and all directories below it for the watch.
+	 *
+	 * @param watch
+	 * @param start
+	 * @param reportContents
+	 *            whether to report what we find below the directory as created
+	 * @throws IOException
+	 *             if the directory itself can't be registered, or the service's limit is reached
+	 */
+	private void registerTree(final Watch watch, final Path start, final boolean reportContents) throws IOException
+	{
+		Files.walkFileTree(start, new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException
+			{
+				if (watch.removed)
+				{
+					return FileVisitResult.TERMINATE;
+				}
+				try
+				{
+					register(watch, dir);
+				}
+				catch (IOException e)
+				{
+					if (dir.equals(start) || !isInaccessible(e))
+					{
+						throw e;
+					}
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				if (reportContents && !dir.equals(start))
+				{
+					WatchServiceNotifier.this.notify(watch, FILE_CREATED, dir);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes)
+			{
+				if (reportContents)
+				{
+					WatchServiceNotifier.this.notify(watch, FILE_CREATED, file);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException
+			{
+				if (file.equals(start))
+				{
+					throw e;
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private static boolean isInaccessible(IOException e)
+	{
+		return e instanceof NoSuchFileException || e instanceof AccessDeniedException
+				|| e instanceof NotDirectoryException;
+	}
+
+	private synchronized void register(Watch watch, Path path) throws IOException
+	{
+		if (watch.removed)
+		{
+			return;
+		}
+
+		// registering a directory again gives us the key it already has
+		WatchKey key = path.register(fWatchService, KINDS);
+		Directory directory = fDirectories.get(key);
+		if (directory == null)
+		{
+			directory = new Directory(key, path);
+			fDirectories.put(key, directory);
+			fDirectoriesByPath.put(path, directory);
+		}
+		if (watch.directories.add(directory))
+		{
+			directory.watches.add(watch);
+		}
+	}
+
+	private void notify(Watch watch, int kind, Path path)
+	{
+		if (watch.removed || (watch.mask & kind) == 0)
+		{
+			return;
+		}
+
+		String name = watch.root.relativize(path).toString();
+		try
+		{
+			switch (kind)
+			{
+				case FILE_CREATED:
+					watch.listener.fileCreated(watch.id, watch.rootPath, name);
+					break;
+
+				case FILE_DELETED:
+					watch.listener.fileDeleted(watch.id, watch.rootPath, name);
+					break;
+
+				default:
+					watch.listener.fileModified(watch.id, watch.rootPath, name);
+					break;
+			}
+		}
+		catch (RuntimeException e)
+		{
+			FileWatcherPlugin.log(e);
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Indexes a listing of changed files by the segments of their paths relative to the working directory. There is a node
+ * for a directory only if it contains changes, so the decorators can ask about a file or folder in time proportional
+ * to the depth of its path rather than the number of changed files. The tree is never modified once built; when the
+ * listing is replaced, a new tree is built for it.
+ */
+class ChangedFileTree
+{
+
+	private static class Node
+	{
+		private Map<String, Node> children;
+		private ChangedFile file;
+
+		private Node getChild(String segment)
+		{
+			return (children == null) ? null : children.get(segment);
+		}
+
+		private Node addChild(String segment)
+		{
+			if (children == null)
+			{
+				children = new TreeMap<String, Node>();
+			}
+			Node child = children.get(segment);
+			if (child == null)
+			{
+				child = new Node();
+				children.put(segment, child);
+			}
+			return child;
+		}
+
+		private void collect(List<ChangedFile> result)
+		{
+			if (file != null)
+			{
+				result.add(file);
+			}
+			if (children != null)
+			{
+				for (Node child : children.values())
+				{
+					child.collect(result);
+				}
+			}
+		}
+	}
+
+	private final List<ChangedFile> source;
+	private final Node root;
+	private final int size;
+
+	ChangedFileTree(List<ChangedFile> changedFiles)
+	{
+		this.source = changedFiles;
+		this.root = new Node();
+		this.size = changedFiles.size();
+
+		for (ChangedFile changedFile : changedFiles)
+		{
+			IPath path = changedFile.getRelativePath();
+			Node node = root;
+			for (int i = 0; i < path.segmentCount(); i++)
+			{
+				node = node.addChild(path.segment(i));
+			}
+			node.file = changedFile;
+		}
+	}
+
+	/**
+	 * @return whether this tree was built from the given listing (and not just an equal one).
+	 */
+	boolean isFor(List<ChangedFile> changedFiles)
+	{
+		return source == changedFiles;
+	}
+
+	boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * @param path
+	 *            relative to the working directory
+	 * @return the changed file at exactly this path, or null.
+	 */
+	ChangedFile get(IPath path)
+	{
+		Node node = find(path);
+		return (node == null) ? null : node.file;
+	}
+
+	/**
+	 * @param path
+	 *            relative to the working directory. The empty path is the working directory itself.
+	 * @return whether the file at this path, or anything underneath it, has changed.
+	 */
+	boolean hasChanges(IPath path)
+	{
+		if (path.isEmpty())
+		{
+			return !isEmpty();
+		}
+		return find(path) != null;
+	}
+
+	/**
+	 * @param path
+	 *            relative to the working directory. The empty path is the working directory itself.
+	 * @return the changed files at or underneath this path, ordered by path.
+	 */
+	List<ChangedFile> getChangedFiles(IPath path)
+	{
+		Node node = find(path);
+		if (node == null)
+		{
+			return new ArrayList<ChangedFile>(0);
+		}
+		List<ChangedFile> result = new ArrayList<ChangedFile>();
+		node.collect(result);
+		return result;
+	}
+
+	private Node find(IPath path)
+	{
+		Node node = root;
+		for (int i = 0; i < path.segmentCount() && node != null; i++)
+		{
+			node = node.getChild(path.segment(i));
+		}
+		return node;
+	}
+}
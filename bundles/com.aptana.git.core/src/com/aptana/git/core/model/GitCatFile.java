@@ -0,0 +1,288 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+import com.aptana.core.util.IOUtil;
+
+/**
+ * A long running "git cat-file --batch" (or "--batch-check") process. Object names are written to its input one per
+ * line and answered in the same order on its output, so a single process serves any number of lookups. Requests are
+ * pipelined: we write a window of them before reading the answers.
+ * 
+ * @see GitCatFilePool
+ */
+class GitCatFile
+{
+
+	/**
+	 * How many bytes of requests we write before reading the answers. This stays below the smallest pipe buffer we
+	 * expect, so writing a window never blocks while git is blocked writing answers we haven't read yet.
+	 */
+	private static final int WINDOW_SIZE = 2048;
+
+	/**
+	 * The answer for an object that exists: "<sha> <type> <size>". Anything else ("<object> missing",
+	 * "<object> ambiguous") means there's no such object.
+	 */
+	static final Pattern OBJECT_INFO_PATTERN = Pattern.compile("^([0-9a-f]{40,64}) \\S+ (\\d+)$"); //$NON-NLS-1$
+
+	private final Process process;
+	private final OutputStream requests;
+	private final InputStream answers;
+	private final boolean contents;
+	private final int generation;
+	private long lastUsed;
+	private boolean broken;
+
+	/**
+	 * @param git
+	 * @param workingDirectory
+	 * @param contents
+	 *            whether to run "--batch", which answers with the contents of objects, rather than "--batch-check"
+	 * @param generation
+	 *            the {@link GitCatFilePool}'s generation when started
+	 * @return
+	 * @throws IOException
+	 *             if we couldn't launch git
+	 */
+	static GitCatFile start(GitExecutable git, IPath workingDirectory, boolean contents, int generation)
+			throws IOException
+	{
+		try
+		{
+			Process process = git.run(workingDirectory, "cat-file", contents ? "--batch" : "--batch-check"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			return new GitCatFile(process, contents, generation);
+		}
+		catch (CoreException e)
+		{
+			IOException ioe = new IOException(e.getMessage());
+			ioe.initCause(e);
+			throw ioe;
+		}
+	}
+
+	private GitCatFile(Process process, boolean contents, int generation)
+	{
+		this.process = process;
+		this.requests = new BufferedOutputStream(process.getOutputStream());
+		this.answers = new BufferedInputStream(process.getInputStream());
+		this.contents = contents;
+		this.generation = generation;
+		this.lastUsed = System.currentTimeMillis();
+	}
+
+	boolean isContents()
+	{
+		return contents;
+	}
+
+	int getGeneration()
+	{
+		return generation;
+	}
+
+	long getLastUsed()
+	{
+		return lastUsed;
+	}
+
+	/**
+	 * @return whether the process is still running and in step with our requests.
+	 */
+	boolean isAlive()
+	{
+		if (broken)
+		{
+			return false;
+		}
+		try
+		{
+			process.exitValue();
+			return false;
+		}
+		catch (IllegalThreadStateException e)
+		{
+			return true;
+		}
+	}
+
+	/**
+	 * Only for "--batch-check" processes.
+	 * 
+	 * @param objects
+	 * @return for each object, "<sha> <type> <size>" if it exists; otherwise "<object> missing".
+	 * @throws IOException
+	 */
+	List<String> check(List<String> objects) throws IOException
+	{
+		List<String> lines = new ArrayList<String>(objects.size());
+		try
+		{
+			int next = 0;
+			while (next < objects.size())
+			{
+				int end = writeWindow(objects, next);
+				for (; next < end; next++)
+				{
+					lines.add(readLine());
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			broken = true;
+			throw e;
+		}
+		lastUsed = System.currentTimeMillis();
+		return lines;
+	}
+
+	/**
+	 * Only for "--batch" processes.
+	 * 
+	 * @param objects
+	 * @return for each object, its contents, or null if there's no such object.
+	 * @throws IOException
+	 */
+	List<byte[]> read(List<String> objects) throws IOException
+	{
+		List<byte[]> result = new ArrayList<byte[]>(objects.size());
+		try
+		{
+			int next = 0;
+			while (next < objects.size())
+			{
+				int end = writeWindow(objects, next);
+				for (; next < end; next++)
+				{
+					String header = readLine();
+					Matcher m = OBJECT_INFO_PATTERN.matcher(header);
+					if (!m.matches())
+					{
+						result.add(null);
+						continue;
+					}
+					byte[] data = readFully(Integer.parseInt(m.group(2)));
+					if (answers.read() != '\n')
+					{
+						throw new IOException(MessageFormat.format(
+								"Unexpected answer from git cat-file for {0}", objects.get(next))); //$NON-NLS-1$
+					}
+					result.add(data);
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			broken = true;
+			throw e;
+		}
+		catch (NumberFormatException e)
+		{
+			broken = true;
+			IOException ioe = new IOException(e.getMessage());
+			ioe.initCause(e);
+			throw ioe;
+		}
+		lastUsed = System.currentTimeMillis();
+		return result;
+	}
+
+	/**
+	 * Writes requests for objects, starting at the given index, until we've filled a window.
+	 * 
+	 * @return the index of the first object not written.
+	 */
+	private int writeWindow(List<String> objects, int start) throws IOException
+	{
+		int written = 0;
+		int i = start;
+		while (i < objects.size() && (i == start || written < WINDOW_SIZE))
+		{
+			byte[] request = (objects.get(i) + '\n').getBytes(IOUtil.UTF_8);
+			requests.write(request);
+			written += request.length;
+			i++;
+		}
+		requests.flush();
+		return i;
+	}
+
+	private String readLine() throws IOException
+	{
+		ByteArrayOutputStream line = new ByteArrayOutputStream(80);
+		int b;
+		while ((b = answers.read()) != '\n')
+		{
+			if (b == -1)
+			{
+				throw new EOFException("git cat-file exited"); //$NON-NLS-1$
+			}
+			line.write(b);
+		}
+		return line.toString(IOUtil.UTF_8);
+	}
+
+	private byte[] readFully(int size) throws IOException
+	{
+		byte[] data = new byte[size];
+		int offset = 0;
+		while (offset < size)
+		{
+			int read = answers.read(data, offset, size - offset);
+			if (read == -1)
+			{
+				throw new EOFException("git cat-file exited"); //$NON-NLS-1$
+			}
+			offset += read;
+		}
+		return data;
+	}
+
+	/**
+	 * Stops the process. Closing its input is enough for git to exit; we destroy it in case it's stuck.
+	 */
+	void close()
+	{
+		broken = true;
+		try
+		{
+			requests.close();
+		}
+		catch (IOException e) // $codepro.audit.disable emptyCatchClause
+		{
+			// ignore
+		}
+		try
+		{
+			answers.close();
+			process.getErrorStream().close();
+		}
+		catch (IOException e) // $codepro.audit.disable emptyCatchClause
+		{
+			// ignore
+		}
+		process.destroy();
+	}
+}
@@ -0,0 +1,324 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import com.aptana.core.util.EclipseUtil;
+
+/**
+ * Keeps a few {@link GitCatFile} processes running for a repository, so that looking up objects (file contents at a
+ * commit or in the index, refs typed into a dialog) doesn't launch git every time. Processes are started on demand,
+ * serve one caller at a time, and are stopped once they've been idle for a while.
+ * <p>
+ * git reads the index and packed refs once per process, so the repository calls {@link #invalidate()} whenever those
+ * may have changed; processes started before that are stopped rather than reused.
+ * <p>
+ * Every lookup throws an {@link IOException} when it can't be served by a healthy process (git couldn't be launched,
+ * all processes stayed busy, one died or answered out of step), in which case callers fall back to running git for
+ * that lookup alone.
+ */
+class GitCatFilePool
+{
+
+	/**
+	 * The most processes of each kind ("--batch" and "--batch-check") we run at once.
+	 */
+	private static final int MAX_PROCESSES = 2;
+
+	/**
+	 * How long (in ms) a lookup waits for a busy process before giving up.
+	 */
+	private static final long CHECK_OUT_TIMEOUT = 500;
+
+	/**
+	 * How long (in ms) a process may sit idle before we stop it.
+	 */
+	private static final long MAX_IDLE_TIME = 60000;
+
+	private final GitRepository repository;
+	private final Object lock = new Object();
+	private final LinkedList<GitCatFile> idleContents = new LinkedList<GitCatFile>();
+	private final LinkedList<GitCatFile> idleChecks = new LinkedList<GitCatFile>();
+	private int liveContents;
+	private int liveChecks;
+	private int generation;
+	private boolean disposed;
+	private final Job reaper;
+
+	GitCatFilePool(GitRepository repository)
+	{
+		this.repository = repository;
+		this.reaper = new Job("Stopping idle git cat-file processes") //$NON-NLS-1$
+		{
+			@Override
+			protected IStatus run(IProgressMonitor monitor)
+			{
+				long nextCheck = stopIdleProcesses();
+				if (nextCheck > 0)
+				{
+					schedule(nextCheck);
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		EclipseUtil.setSystemForJob(reaper);
+	}
+
+	/**
+	 * @param objects
+	 * @return for each object, "<sha> <type> <size>" if it exists; otherwise "<object> missing".
+	 * @throws IOException
+	 *             if the objects couldn't be looked up by a running process
+	 */
+	List<String> check(List<String> objects) throws IOException
+	{
+		checkNames(objects);
+		GitCatFile process = checkOut(false);
+		try
+		{
+			return process.check(objects);
+		}
+		finally
+		{
+			checkIn(process);
+		}
+	}
+
+	/**
+	 * @param object
+	 * @return the contents of the object, or null if there's no such object.
+	 * @throws IOException
+	 *             if the object couldn't be read by a running process
+	 */
+	byte[] read(String object) throws IOException
+	{
+		return read(Collections.singletonList(object)).get(0);
+	}
+
+	/**
+	 * @param objects
+	 * @return for each object, its contents, or null if there's no such object.
+	 * @throws IOException
+	 *             if the objects couldn't be read by a running process
+	 */
+	List<byte[]> read(List<String> objects) throws IOException
+	{
+		checkNames(objects);
+		GitCatFile process = checkOut(true);
+		try
+		{
+			return process.read(objects);
+		}
+		finally
+		{
+			checkIn(process);
+		}
+	}
+
+	/**
+	 * Stops using the running processes, since what they've cached of the index or refs may be out of date.
+	 */
+	void invalidate()
+	{
+		synchronized (lock)
+		{
+			generation++;
+			stopAll(idleContents);
+			stopAll(idleChecks);
+		}
+	}
+
+	void dispose()
+	{
+		synchronized (lock)
+		{
+			disposed = true;
+			stopAll(idleContents);
+			stopAll(idleChecks);
+			lock.notifyAll();
+		}
+		reaper.cancel();
+	}
+
+	/**
+	 * Object names are sent one per line, so a name spanning lines would put the answers out of step.
+	 */
+	private void checkNames(List<String> objects) throws IOException
+	{
+		for (String object : objects)
+		{
+			if (object.indexOf('\n') != -1)
+			{
+				throw new IOException("Object names can't span lines: " + object); //$NON-NLS-1$
+			}
+		}
+	}
+
+	private GitCatFile checkOut(boolean contents) throws IOException
+	{
+		long deadline = System.currentTimeMillis() + CHECK_OUT_TIMEOUT;
+		int startGeneration;
+		synchronized (lock)
+		{
+			LinkedList<GitCatFile> idle = contents ? idleContents : idleChecks;
+			while (true)
+			{
+				if (disposed)
+				{
+					throw new IOException("Repository has been disposed"); //$NON-NLS-1$
+				}
+				// Prefer the most recently used process, so that the others can go idle and be stopped
+				while (!idle.isEmpty())
+				{
+					GitCatFile process = idle.removeLast();
+					if (process.getGeneration() == generation && process.isAlive())
+					{
+						return process;
+					}
+					stop(process);
+				}
+				if ((contents ? liveContents : liveChecks) < MAX_PROCESSES)
+				{
+					break;
+				}
+				long wait = deadline - System.currentTimeMillis();
+				if (wait <= 0)
+				{
+					throw new IOException("All git cat-file processes are busy"); //$NON-NLS-1$
+				}
+				try
+				{
+					lock.wait(wait);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			}
+			addLive(contents, 1);
+			startGeneration = generation;
+		}
+
+		// Launch outside the lock, it takes a while
+		try
+		{
+			return GitCatFile.start(repository.getGitExecutable(), repository.workingDirectory(), contents,
+					startGeneration);
+		}
+		catch (IOException e)
+		{
+			synchronized (lock)
+			{
+				addLive(contents, -1);
+				lock.notifyAll();
+			}
+			throw e;
+		}
+	}
+
+	private void checkIn(GitCatFile process)
+	{
+		synchronized (lock)
+		{
+			if (disposed || process.getGeneration() != generation || !process.isAlive())
+			{
+				stop(process);
+			}
+			else
+			{
+				(process.isContents() ? idleContents : idleChecks).addLast(process);
+				if (reaper.getState() == Job.NONE)
+				{
+					reaper.schedule(MAX_IDLE_TIME);
+				}
+			}
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * @return how long until the next idle process should be stopped, or 0 if none are idle.
+	 */
+	private long stopIdleProcesses()
+	{
+		synchronized (lock)
+		{
+			long now = System.currentTimeMillis();
+			long oldest = Math.min(stopIdleProcesses(idleContents, now), stopIdleProcesses(idleChecks, now));
+			if (idleContents.isEmpty() && idleChecks.isEmpty())
+			{
+				return 0;
+			}
+			return oldest + MAX_IDLE_TIME - now;
+		}
+	}
+
+	/**
+	 * @return when the longest idle process left in the list was last used (now, if none are left).
+	 */
+	private long stopIdleProcesses(List<GitCatFile> idle, long now)
+	{
+		long oldest = now;
+		for (Iterator<GitCatFile> i = idle.iterator(); i.hasNext();)
+		{
+			GitCatFile process = i.next();
+			if (now - process.getLastUsed() >= MAX_IDLE_TIME)
+			{
+				i.remove();
+				stop(process);
+			}
+			else
+			{
+				oldest = Math.min(oldest, process.getLastUsed());
+			}
+		}
+		return oldest;
+	}
+
+	private void stopAll(List<GitCatFile> idle)
+	{
+		for (GitCatFile process : idle)
+		{
+			stop(process);
+		}
+		idle.clear();
+	}
+
+	/**
+	 * Callers must hold the lock, and have already taken the process out of the idle lists.
+	 */
+	private void stop(GitCatFile process)
+	{
+		addLive(process.isContents(), -1);
+		process.close();
+	}
+
+	private void addLive(boolean contents, int delta)
+	{
+		if (contents)
+		{
+			liveContents += delta;
+		}
+		else
+		{
+			liveChecks += delta;
+		}
+	}
+}
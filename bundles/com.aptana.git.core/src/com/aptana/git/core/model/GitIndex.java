@@ -9,6 +9,7 @@ package com.aptana.git.core.model;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -85,6 +86,10 @@ public class GitIndex
 	 */
 	List<ChangedFile> changedFiles;
 	private Object changedFilesLock = new Object();
+	/**
+	 * The {@link #changedFiles} by path, for the lookups done while decorating. Guarded by {@link #changedFilesLock}.
+	 */
+	private ChangedFileTree changedFileTree;
 
 	private boolean notify;
 
@@ -155,25 +160,6 @@ public class GitIndex
 		}
 		this.notify = notify;
 
-		// If we don't run this, we end up showing files as unstaged when they're no longer modified!
-		IStatus result;
-		synchronized (this)
-		{
-			repository.forceWrite(); // Do we only want to try the lock if we're in UI thread?
-			result = GitExecutable.instance().runInBackground(repository.workingDirectory(), "update-index", "-q", //$NON-NLS-1$ //$NON-NLS-2$
-					"--unmerged", "--ignore-missing", "--refresh"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-			repository.exitWriteProcess();
-		}
-		if (result == null) // couldn't even execute!
-		{
-			return new Status(IStatus.ERROR, GitPlugin.getPluginId(), "Failed to execute git update-index"); //$NON-NLS-1$
-		}
-		if (!result.isOK())
-		{
-			IdeLog.logWarning(GitPlugin.getDefault(), "Unable to run update-index: " + result.getMessage()); //$NON-NLS-1$
-			return result;
-		}
-
 		final Set<String> portablePathStrings = new HashSet<String>(CollectionsUtil.map(filePaths,
 				new IMap<IPath, String>()
 				{
@@ -183,9 +169,33 @@ public class GitIndex
 					}
 				}));
 
+		// Only files whose size or timestamp no longer match the index can have unstaged changes
+		List<String> statDirtyPaths = getStatDirtyPaths(portablePathStrings);
+		if (statDirtyPaths == null || !statDirtyPaths.isEmpty())
+		{
+			// If we don't run this, we end up showing files as unstaged when they're no longer modified!
+			IStatus result;
+			synchronized (this)
+			{
+				repository.forceWrite(); // Do we only want to try the lock if we're in UI thread?
+				result = GitExecutable.instance().runInBackground(repository.workingDirectory(), "update-index", "-q", //$NON-NLS-1$ //$NON-NLS-2$
+						"--unmerged", "--ignore-missing", "--refresh"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				repository.exitWriteProcess();
+			}
+			if (result == null) // couldn't even execute!
+			{
+				return new Status(IStatus.ERROR, GitPlugin.getPluginId(), "Failed to execute git update-index"); //$NON-NLS-1$
+			}
+			if (!result.isOK())
+			{
+				IdeLog.logWarning(GitPlugin.getDefault(), "Unable to run update-index: " + result.getMessage()); //$NON-NLS-1$
+				return result;
+			}
+		}
+
 		Set<Callable<Map<IPath, ChangedFile>>> jobs = new HashSet<Callable<Map<IPath, ChangedFile>>>(3);
 		jobs.add(new UntrackedFilesRefreshJob(this, portablePathStrings));
-		jobs.add(new UnstagedFilesRefreshJob(this, portablePathStrings));
+		jobs.add(new UnstagedFilesRefreshJob(this, portablePathStrings, statDirtyPaths));
 		jobs.add(new StagedFilesRefreshJob(this, portablePathStrings));
 
 		// Last chance to cancel...
@@ -292,8 +302,8 @@ public class GitIndex
 				preRefresh = new ArrayList<ChangedFile>(0);
 			}
 
-			// Now wipe any existing ChangedFile entries for any of the filePaths and add the ones we generated in
-			// dictionary
+			// Now wipe any existing ChangedFile entries for any of the filePaths (or inside them, if they're
+			// directories) and add the ones we generated in dictionary
 			if (CollectionsUtil.isEmpty(filePaths))
 			{
 				this.changedFiles = new ArrayList<ChangedFile>();
@@ -304,7 +314,8 @@ public class GitIndex
 				{
 					public boolean include(ChangedFile item)
 					{
-						return !portablePathStrings.contains(item.getRelativePath().toPortableString());
+						String path = item.getRelativePath().toPortableString();
+						return !GitIndexFile.isIncluded(path, portablePathStrings);
 					}
 				});
 			}
@@ -312,6 +323,7 @@ public class GitIndex
 			{
 				this.changedFiles.addAll(newChangedFiles.values());
 			}
+			this.changedFileTree = new ChangedFileTree(this.changedFiles);
 		}
 
 		// Don't hold onto temp list in memory!
@@ -346,6 +358,34 @@ public class GitIndex
 	 * @return
 	 */
 	public List<ChangedFile> changedFiles()
+	{
+		if (!loadChangedFiles())
+		{
+			return Collections.emptyList();
+		}
+
+		synchronized (this.changedFilesLock)
+		{
+			if (this.changedFiles == null)
+			{
+				return Collections.emptyList();
+			}
+
+			List<ChangedFile> copy = new ArrayList<ChangedFile>(this.changedFiles.size());
+			for (ChangedFile file : this.changedFiles)
+			{
+				copy.add(file.clone());
+			}
+			return copy;
+		}
+	}
+
+	/**
+	 * Populates the changedFiles collection if this is the first demand for it.
+	 * 
+	 * @return false if we failed to list the changed files.
+	 */
+	private boolean loadChangedFiles()
 	{
 		boolean isNull = false;
 		synchronized (this.changedFilesLock)
@@ -360,24 +400,46 @@ public class GitIndex
 			if (!status.isOK())
 			{
 				IdeLog.logWarning(GitPlugin.getDefault(), status.getMessage());
-				return Collections.emptyList();
+				return false;
 			}
 		}
+		return true;
+	}
+
+	/**
+	 * The changed files by path, populated lazily like {@link #changedFiles()} but without copying them. The files in
+	 * the tree must only be read while holding {@link #changedFilesLock}.
+	 * 
+	 * @return null if we failed to list the changed files.
+	 */
+	private ChangedFileTree changedFileTree()
+	{
+		if (!loadChangedFiles())
+		{
+			return null;
+		}
 
 		synchronized (this.changedFilesLock)
 		{
-			if (this.changedFiles == null)
-			{
-				return Collections.emptyList();
-			}
+			return currentChangedFileTree();
+		}
+	}
 
-			List<ChangedFile> copy = new ArrayList<ChangedFile>(this.changedFiles.size());
-			for (ChangedFile file : this.changedFiles)
-			{
-				copy.add(file.clone());
-			}
-			return copy;
+	/**
+	 * Callers must hold {@link #changedFilesLock}.
+	 */
+	private ChangedFileTree currentChangedFileTree()
+	{
+		if (this.changedFiles == null)
+		{
+			return null;
 		}
+		// The listing may have been swapped out from under us without going through refresh
+		if (this.changedFileTree == null || !this.changedFileTree.isFor(this.changedFiles))
+		{
+			this.changedFileTree = new ChangedFileTree(this.changedFiles);
+		}
+		return this.changedFileTree;
 	}
 
 	public IStatus stageFiles(Collection<ChangedFile> stageFiles)
@@ -416,13 +478,12 @@ public class GitIndex
 			preFiles.add(file.clone());
 			synchronized (changedFilesLock)
 			{
-				if (this.changedFiles != null)
+				ChangedFileTree tree = currentChangedFileTree();
+				if (tree != null)
 				{
-					int index = Collections.binarySearch(this.changedFiles, file);
-					if (index >= 0)
+					ChangedFile orig = tree.get(file.getRelativePath());
+					if (orig != null)
 					{
-
-						ChangedFile orig = this.changedFiles.get(index);
 						orig.makeStaged();
 					}
 				}
@@ -471,13 +532,12 @@ public class GitIndex
 
 			synchronized (this.changedFilesLock)
 			{
-				if (this.changedFiles != null)
+				ChangedFileTree tree = currentChangedFileTree();
+				if (tree != null)
 				{
-					int index = Collections.binarySearch(this.changedFiles, file);
-					if (index >= 0)
+					ChangedFile orig = tree.get(file.getRelativePath());
+					if (orig != null)
 					{
-
-						ChangedFile orig = this.changedFiles.get(index);
 						orig.makeUnstaged();
 					}
 				}
@@ -602,7 +662,7 @@ public class GitIndex
 
 			if (file.status == ChangedFile.Status.NEW)
 			{
-				IStatus status = repository.execute(GitRepository.ReadWrite.READ, "show", indexPath); //$NON-NLS-1$
+				IStatus status = repository.readObject(indexPath);
 				return status.getMessage();
 			}
 
@@ -676,29 +736,19 @@ public class GitIndex
 	 */
 	protected boolean resourceOrChildHasChanges(IResource resource)
 	{
-		List<ChangedFile> changedFiles = changedFiles();
-		if (CollectionsUtil.isEmpty(changedFiles))
+		ChangedFileTree tree = changedFileTree();
+		if (tree == null || tree.isEmpty())
 		{
 			return false;
 		}
-		// FIXME Can we sort the changed files by path or something to help speed up this lookup?
-		IPath workingDirectory = repository.workingDirectory();
-		IPath resourcePath = resource.getLocation();
-		for (ChangedFile changedFile : changedFiles)
-		{
-			IPath fullPath = workingDirectory.append(changedFile.getRelativePath()).makeAbsolute();
-			if (resourcePath.isPrefixOf(fullPath))
-			{
-				return true;
-			}
-		}
-
-		return false;
+		IPath relativePath = getRelativePath(resource.getLocation());
+		return relativePath != null && tree.hasChanges(relativePath);
 	}
 
 	public boolean isDirty()
 	{
-		return !changedFiles().isEmpty();
+		ChangedFileTree tree = changedFileTree();
+		return tree != null && !tree.isEmpty();
 	}
 
 	protected boolean hasUnresolvedMergeConflicts()
@@ -749,21 +799,17 @@ public class GitIndex
 			return null;
 		}
 
-		IPath resourcePath = resource.getLocation();
-		List<ChangedFile> changedFiles = changedFiles();
-		// FIXME Doing searches like this every time
-		if (!CollectionsUtil.isEmpty(changedFiles))
+		IPath relativePath = getRelativePath(resource.getLocation());
+		ChangedFileTree tree = changedFileTree();
+		if (relativePath == null || tree == null)
 		{
-			for (ChangedFile changedFile : changedFiles)
-			{
-				IPath fullPath = workingDirectory().append(changedFile.getRelativePath());
-				if (resourcePath.equals(fullPath))
-				{
-					return changedFile;
-				}
-			}
+			return null;
+		}
+		synchronized (this.changedFilesLock)
+		{
+			ChangedFile changedFile = tree.get(relativePath);
+			return (changedFile == null) ? null : changedFile.clone();
 		}
-		return null;
 	}
 
 	private IPath workingDirectory()
@@ -771,6 +817,31 @@ public class GitIndex
 		return repository.workingDirectory();
 	}
 
+	/**
+	 * Converts an absolute location to a path relative to the working directory. A location above the working
+	 * directory is treated as the working directory itself, since everything in the repository is underneath it.
+	 * 
+	 * @param location
+	 * @return null if the location is outside the repository.
+	 */
+	private IPath getRelativePath(IPath location)
+	{
+		if (location == null)
+		{
+			return null;
+		}
+		IPath workingDirectory = workingDirectory();
+		if (location.isPrefixOf(workingDirectory))
+		{
+			return Path.EMPTY;
+		}
+		if (!workingDirectory.isPrefixOf(location))
+		{
+			return null;
+		}
+		return location.removeFirstSegments(workingDirectory.segmentCount()).setDevice(null).makeRelative();
+	}
+
 	/**
 	 * Gets the list of changed files that are underneath the given container.
 	 * 
@@ -784,25 +855,45 @@ public class GitIndex
 			return Collections.emptyList();
 		}
 
-		List<ChangedFile> changedFiles = changedFiles();
-		if (CollectionsUtil.isEmpty(changedFiles))
+		IPath relativePath = getRelativePath(container.getLocation());
+		ChangedFileTree tree = changedFileTree();
+		if (relativePath == null || tree == null || tree.isEmpty())
 		{
 			return Collections.emptyList();
 		}
 
-		IPath resourcePath = container.getLocation();
-		List<ChangedFile> filtered = new ArrayList<ChangedFile>();
-		IPath workingDirectory = repository.workingDirectory();
-		for (ChangedFile changedFile : changedFiles)
+		synchronized (this.changedFilesLock)
 		{
-			IPath fullPath = workingDirectory.append(changedFile.getRelativePath()).makeAbsolute();
-			if (resourcePath.isPrefixOf(fullPath))
+			List<ChangedFile> filtered = tree.getChangedFiles(relativePath);
+			for (int i = 0; i < filtered.size(); i++)
 			{
-				filtered.add(changedFile);
+				filtered.set(i, filtered.get(i).clone());
 			}
+			return filtered;
 		}
+	}
 
-		return filtered;
+	/**
+	 * Compares the files in the working tree against the size and timestamp the index holds for them. This reads the
+	 * index file directly, so it's much cheaper than asking git.
+	 * 
+	 * @param portablePathStrings
+	 *            the paths to look at, or empty for all of them
+	 * @return the paths of the tracked files that may have unstaged changes, or null if we couldn't read the index.
+	 */
+	private List<String> getStatDirtyPaths(Set<String> portablePathStrings)
+	{
+		try
+		{
+			GitIndexFile indexFile = GitIndexFile.read(repository.gitFile(GitRepository.INDEX));
+			return indexFile.getStatDirtyPaths(workingDirectory().toFile(), portablePathStrings);
+		}
+		catch (IOException e)
+		{
+			IdeLog.logInfo(GitPlugin.getDefault(), "Unable to read the index, leaving it to git", e, //$NON-NLS-1$
+					IDebugScopes.DEBUG);
+			return null;
+		}
 	}
 
 	/**
@@ -977,16 +1068,36 @@ public class GitIndex
 
 	private final class UnstagedFilesRefreshJob extends FilesRefreshJob
 	{
-		private UnstagedFilesRefreshJob(GitIndex index, Set<String> filePaths)
+		/**
+		 * The most paths we pass to diff-files, rather than having it look at everything.
+		 */
+		private static final int MAX_DIFF_PATHS = 100;
+
+		/**
+		 * The only paths that may have changed, or null if we don't know.
+		 */
+		private List<String> statDirtyPaths;
+
+		private UnstagedFilesRefreshJob(GitIndex index, Set<String> filePaths, List<String> statDirtyPaths)
 		{
 			super(index, filePaths);
+			this.statDirtyPaths = statDirtyPaths;
 		}
 
 		public Map<IPath, ChangedFile> call() throws Exception
 		{
 			// index vs filesystem
 			List<String> args = CollectionsUtil.newList("diff-files", "-z"); //$NON-NLS-1$ //$NON-NLS-2$
-			if (!CollectionsUtil.isEmpty(filePaths))
+			if (statDirtyPaths != null && statDirtyPaths.isEmpty())
+			{
+				return Collections.emptyMap();
+			}
+			if (statDirtyPaths != null && statDirtyPaths.size() <= MAX_DIFF_PATHS)
+			{
+				args.add("--"); //$NON-NLS-1$
+				args.addAll(statDirtyPaths);
+			}
+			else if (!CollectionsUtil.isEmpty(filePaths))
 			{
 				args.add("--"); //$NON-NLS-1$
 				args.addAll(filePaths);
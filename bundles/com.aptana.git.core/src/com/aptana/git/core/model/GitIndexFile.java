@@ -0,0 +1,477 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import com.aptana.core.util.IOUtil;
+
+/**
+ * The entries of a repository's index, read straight from the .git/index file (the "DIRC" format) rather than through
+ * "git ls-files". Versions 2 to 4 of the format are supported. Anything else, including split and sparse indexes and
+ * hash functions other than SHA-1, is reported as an {@link IOException} so callers can ask git instead.
+ */
+class GitIndexFile
+{
+
+	/**
+	 * An entry in the index. Unmerged paths have an entry per stage.
+	 */
+	static class Entry
+	{
+
+		private static final int MODE_TYPE_MASK = 0170000;
+		private static final int MODE_REGULAR_FILE = 0100000;
+
+		private final String path;
+		private final int mode;
+		private final int stage;
+		private final int mtimeSeconds;
+		private final int mtimeNanos;
+		private final int size;
+		private final String sha;
+		private final boolean assumeValid;
+		private final boolean skipWorktree;
+		private final boolean intentToAdd;
+
+		private Entry(String path, int mode, int stage, int mtimeSeconds, int mtimeNanos, int size, String sha,
+				boolean assumeValid, boolean skipWorktree, boolean intentToAdd)
+		{
+			this.path = path;
+			this.mode = mode;
+			this.stage = stage;
+			this.mtimeSeconds = mtimeSeconds;
+			this.mtimeNanos = mtimeNanos;
+			this.size = size;
+			this.sha = sha;
+			this.assumeValid = assumeValid;
+			this.skipWorktree = skipWorktree;
+			this.intentToAdd = intentToAdd;
+		}
+
+		/**
+		 * @return the path relative to the working directory, in portable form.
+		 */
+		String getPath()
+		{
+			return path;
+		}
+
+		int getMode()
+		{
+			return mode;
+		}
+
+		/**
+		 * @return 0 for a merged entry, 1 to 3 for the base, ours and theirs versions of an unmerged one.
+		 */
+		int getStage()
+		{
+			return stage;
+		}
+
+		String getSHA()
+		{
+			return sha;
+		}
+
+		/**
+		 * @return whether the file in the working tree may differ from this entry. Like git, we compare the size and
+		 *         modification time recorded when the entry was last refreshed; only files that differ need their
+		 *         contents compared.
+		 */
+		private boolean isStatDirty(File file, long indexModified)
+		{
+			if (stage != 0 || intentToAdd)
+			{
+				return true;
+			}
+			if (assumeValid || skipWorktree)
+			{
+				return false;
+			}
+			// Leave symlinks and submodules to git
+			if ((mode & MODE_TYPE_MASK) != MODE_REGULAR_FILE)
+			{
+				return true;
+			}
+			if (!file.isFile())
+			{
+				return true;
+			}
+			// the index only records the lower 32 bits of the size
+			if ((int) file.length() != size)
+			{
+				return true;
+			}
+			long modified = file.lastModified();
+			if (modified / 1000 != (mtimeSeconds & 0xFFFFFFFFL))
+			{
+				return true;
+			}
+			// Compare sub second times only if both sides have them
+			int millis = (int) (modified % 1000);
+			if (millis != 0 && mtimeNanos != 0 && millis != mtimeNanos / 1000000)
+			{
+				return true;
+			}
+			// "Racily clean": modified in the same second the index was written, so it may have changed since
+			return modified / 1000 >= indexModified / 1000;
+		}
+	}
+
+	private static final int SIGNATURE = 0x44495243; // "DIRC"
+	private static final int SHA_LENGTH = 20;
+
+	/**
+	 * The fixed size part of an entry, up to and including the flags.
+	 */
+	private static final int ENTRY_HEADER_LENGTH = 62;
+
+	private static final int FLAG_ASSUME_VALID = 0x8000;
+	private static final int FLAG_EXTENDED = 0x4000;
+	private static final int FLAG_STAGE_MASK = 0x3000;
+	private static final int FLAG_STAGE_SHIFT = 12;
+	private static final int FLAG_NAME_MASK = 0x0FFF;
+	private static final int EXTENDED_FLAG_SKIP_WORKTREE = 0x4000;
+	private static final int EXTENDED_FLAG_INTENT_TO_ADD = 0x2000;
+
+	/**
+	 * Extensions whose entries aren't all in this file: the split index ("link") and the sparse index ("sdir").
+	 */
+	private static final String[] UNSUPPORTED_EXTENSIONS = { "link", "sdir" }; //$NON-NLS-1$ //$NON-NLS-2$
+
+	private final List<Entry> entries;
+	private final long modified;
+	private final String checksum;
+
+	private GitIndexFile(List<Entry> entries, long modified, String checksum)
+	{
+		this.entries = entries;
+		this.modified = modified;
+		this.checksum = checksum;
+	}
+
+	/**
+	 * @param file
+	 *            the .git/index file. If it doesn't exist, nothing has been added to the repository yet.
+	 * @return
+	 * @throws IOException
+	 *             if the file can't be read or is in a format we don't understand
+	 */
+	static GitIndexFile read(File file) throws IOException
+	{
+		if (!file.exists())
+		{
+			return new GitIndexFile(Collections.<Entry> emptyList(), 0, null);
+		}
+		long modified = file.lastModified();
+		byte[] data = readFully(file);
+		return new Parser(data).parse(modified);
+	}
+
+	List<Entry> getEntries()
+	{
+		return entries;
+	}
+
+	/**
+	 * @return the trailing checksum of the file, which changes whenever the index is rewritten. null for an empty
+	 *         repository without an index.
+	 */
+	String getChecksum()
+	{
+		return checksum;
+	}
+
+	/**
+	 * Finds the tracked files that may have been changed in the working tree, without reading their contents. Those
+	 * that were modified, deleted, replaced, or are unmerged are included. So are files git would have to read to be
+	 * sure: those modified in the same second the index was written, symlinks and submodules.
+	 *
+	 * @param workingDirectory
+	 * @param paths
+	 *            portable paths relative to the working directory of the files, or directories, to look at. Empty to
+	 *            look at everything.
+	 * @return portable paths relative to the working directory, in index order.
+	 */
+	List<String> getStatDirtyPaths(File workingDirectory, Collection<String> paths)
+	{
+		List<String> dirty = new ArrayList<String>();
+		String last = null;
+		for (Entry entry : entries)
+		{
+			// Stages of an unmerged path are next to each other
+			if (entry.path.equals(last))
+			{
+				continue;
+			}
+			if (!paths.isEmpty() && !isIncluded(entry.path, paths))
+			{
+				continue;
+			}
+			if (entry.isStatDirty(new File(workingDirectory, entry.path), modified))
+			{
+				dirty.add(entry.path);
+				last = entry.path;
+			}
+		}
+		return dirty;
+	}
+
+	/**
+	 * @return whether the path, or one of the directories containing it, is one of the given paths.
+	 */
+	static boolean isIncluded(String path, Collection<String> paths)
+	{
+		String prefix = path;
+		while (true)
+		{
+			if (paths.contains(prefix))
+			{
+				return true;
+			}
+			int slash = prefix.lastIndexOf('/');
+			if (slash == -1)
+			{
+				return false;
+			}
+			prefix = prefix.substring(0, slash);
+		}
+	}
+
+	private static byte[] readFully(File file) throws IOException
+	{
+		long length = file.length();
+		if (length > Integer.MAX_VALUE)
+		{
+			throw new IOException("Index is too large: " + file); //$NON-NLS-1$
+		}
+		byte[] data = new byte[(int) length];
+		InputStream in = new FileInputStream(file);
+		try
+		{
+			int offset = 0;
+			while (offset < data.length)
+			{
+				int read = in.read(data, offset, data.length - offset);
+				if (read == -1)
+				{
+					// truncated while we were reading it
+					throw new IOException("Unexpected end of index: " + file); //$NON-NLS-1$
+				}
+				offset += read;
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		return data;
+	}
+
+	/**
+	 * Reads the entries out of the contents of an index file.
+	 */
+	private static class Parser
+	{
+		private final byte[] data;
+		private int position;
+
+		private Parser(byte[] data)
+		{
+			this.data = data;
+		}
+
+		private GitIndexFile parse(long modified) throws IOException
+		{
+			if (data.length < 12 + SHA_LENGTH || readInt() != SIGNATURE)
+			{
+				throw new IOException("Not an index file"); //$NON-NLS-1$
+			}
+			int version = readInt();
+			if (version < 2 || version > 4)
+			{
+				throw new IOException("Unsupported index version: " + version); //$NON-NLS-1$
+			}
+			int count = readInt();
+			if (count < 0)
+			{
+				throw new IOException("Bad index entry count: " + count); //$NON-NLS-1$
+			}
+
+			List<Entry> entries = new ArrayList<Entry>(count);
+			String previousPath = ""; //$NON-NLS-1$
+			for (int i = 0; i < count; i++)
+			{
+				int start = position;
+				need(ENTRY_HEADER_LENGTH);
+				position += 8; // ctime
+				int mtimeSeconds = readInt();
+				int mtimeNanos = readInt();
+				position += 8; // dev, ino
+				int mode = readInt();
+				position += 8; // uid, gid
+				int size = readInt();
+				String sha = readSHA();
+				int flags = readShort();
+				int extendedFlags = 0;
+				if ((flags & FLAG_EXTENDED) != 0)
+				{
+					if (version < 3)
+					{
+						throw new IOException("Extended flags in a version 2 index"); //$NON-NLS-1$
+					}
+					need(2);
+					extendedFlags = readShort();
+				}
+
+				String path;
+				if (version == 4)
+				{
+					// prefix compressed: how much of the previous path to drop, then what to add to it
+					int strip = readVarInt();
+					if (strip > previousPath.length())
+					{
+						throw new IOException("Bad path compression in index"); //$NON-NLS-1$
+					}
+					path = previousPath.substring(0, previousPath.length() - strip) + readPath();
+				}
+				else
+				{
+					path = readPath();
+					// entries are padded with 1 to 8 NULs to a multiple of 8 bytes
+					int length = position - start;
+					position = start + ((length + 7) & ~7);
+					need(0);
+				}
+				// we don't need the name length in the flags, the path is NUL terminated anyway
+				int nameLength = flags & FLAG_NAME_MASK;
+				if (nameLength != FLAG_NAME_MASK && version != 4 && nameLength != utf8Length(path))
+				{
+					throw new IOException("Bad path length in index for " + path); //$NON-NLS-1$
+				}
+
+				entries.add(new Entry(path, mode, (flags & FLAG_STAGE_MASK) >> FLAG_STAGE_SHIFT, mtimeSeconds,
+						mtimeNanos, size, sha, (flags & FLAG_ASSUME_VALID) != 0,
+						(extendedFlags & EXTENDED_FLAG_SKIP_WORKTREE) != 0,
+						(extendedFlags & EXTENDED_FLAG_INTENT_TO_ADD) != 0));
+				previousPath = path;
+			}
+
+			// Extensions: a 4 byte signature and a 4 byte length each, up to the checksum
+			int end = data.length - SHA_LENGTH;
+			while (position < end)
+			{
+				need(8);
+				String signature = new String(data, position, 4, "US-ASCII"); //$NON-NLS-1$
+				position += 4;
+				int length = readInt();
+				for (String unsupported : UNSUPPORTED_EXTENSIONS)
+				{
+					if (unsupported.equals(signature))
+					{
+						throw new IOException("Unsupported index extension: " + signature); //$NON-NLS-1$
+					}
+				}
+				if (length < 0 || position + length > end)
+				{
+					throw new IOException("Bad index extension length: " + signature); //$NON-NLS-1$
+				}
+				position += length;
+			}
+			// If we didn't end up right at the checksum, we've misread the file (e.g. it isn't using SHA-1)
+			if (position != end)
+			{
+				throw new IOException("Unexpected data at end of index"); //$NON-NLS-1$
+			}
+			return new GitIndexFile(entries, modified, readSHA());
+		}
+
+		private void need(int bytes) throws IOException
+		{
+			if (position + bytes > data.length - SHA_LENGTH)
+			{
+				throw new IOException("Unexpected end of index"); //$NON-NLS-1$
+			}
+		}
+
+		private int readInt()
+		{
+			int value = ((data[position] & 0xFF) << 24) | ((data[position + 1] & 0xFF) << 16)
+					| ((data[position + 2] & 0xFF) << 8) | (data[position + 3] & 0xFF);
+			position += 4;
+			return value;
+		}
+
+		private int readShort()
+		{
+			int value = ((data[position] & 0xFF) << 8) | (data[position + 1] & 0xFF);
+			position += 2;
+			return value;
+		}
+
+		/**
+		 * git's variable length encoding of offsets, used for path compression in version 4.
+		 */
+		private int readVarInt() throws IOException
+		{
+			need(1);
+			int c = data[position++] & 0xFF;
+			int value = c & 0x7F;
+			while ((c & 0x80) != 0)
+			{
+				need(1);
+				c = data[position++] & 0xFF;
+				value = ((value + 1) << 7) | (c & 0x7F);
+			}
+			return value;
+		}
+
+		private String readSHA()
+		{
+			StringBuilder sha = new StringBuilder(SHA_LENGTH * 2);
+			for (int i = 0; i < SHA_LENGTH; i++)
+			{
+				int b = data[position + i] & 0xFF;
+				sha.append(Character.forDigit(b >> 4, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			position += SHA_LENGTH;
+			return sha.toString();
+		}
+
+		private String readPath() throws IOException
+		{
+			int end = position;
+			while (end < data.length - SHA_LENGTH && data[end] != 0)
+			{
+				end++;
+			}
+			if (end == data.length - SHA_LENGTH)
+			{
+				throw new IOException("Unexpected end of index"); //$NON-NLS-1$
+			}
+			String path = new String(data, position, end - position, IOUtil.UTF_8);
+			position = end + 1;
+			return path;
+		}
+
+		private static int utf8Length(String path) throws UnsupportedEncodingException
+		{
+			return path.getBytes(IOUtil.UTF_8).length;
+		}
+	}
+}
@@ -7,8 +7,10 @@
  */
 package com.aptana.git.core.model;
 
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -25,6 +27,7 @@ import com.aptana.core.logging.IdeLog;
 import com.aptana.core.util.CollectionsUtil;
 import com.aptana.core.util.EclipseUtil;
 import com.aptana.git.core.GitPlugin;
+import com.aptana.git.core.IDebugScopes;
 
 class GitIndexRefreshJob extends Job
 {
@@ -34,6 +37,11 @@ class GitIndexRefreshJob extends Job
 	 */
 	private static final long UPDATE_DELAY = 200;
 
+	/**
+	 * How many requested paths we queue before giving up on them and refreshing everything.
+	 */
+	private static final int MAX_QUEUED_PATHS = 10000;
+
 	/**
 	 * List of refresh requests. This basically just serves to queue up all requests.
 	 */
@@ -49,6 +57,11 @@ class GitIndexRefreshJob extends Job
 	 */
 	private AtomicBoolean refreshAll;
 
+	/**
+	 * Decides how to refresh for the requested paths, based on how long earlier refreshes took.
+	 */
+	private GitIndexRefreshPlanner planner;
+
 	public GitIndexRefreshJob(GitIndex index)
 	{
 		super(Messages.GitIndexRefreshJob_Name);
@@ -56,6 +69,7 @@ class GitIndexRefreshJob extends Job
 		this.index = index;
 		fRequests = new HashSet<IPath>(3);
 		refreshAll = new AtomicBoolean(false);
+		planner = new GitIndexRefreshPlanner();
 	}
 
 	@Override
@@ -73,7 +87,7 @@ class GitIndexRefreshJob extends Job
 				}
 
 				// FIXME What if the refresh fails? Should we retry? Can we?
-				IStatus status;
+				GitIndexRefreshPlanner.Plan plan;
 				if (refreshAll.compareAndSet(true, false))
 				{
 					// Clear all the requests out, because we'll refresh everything anyways
@@ -81,8 +95,7 @@ class GitIndexRefreshJob extends Job
 					{
 						fRequests = new HashSet<IPath>(3);
 					}
-					// refresh everything
-					status = index.refresh(monitor);
+					plan = planner.plan(Collections.<IPath> emptyList());
 				}
 				else
 				{
@@ -98,9 +111,31 @@ class GitIndexRefreshJob extends Job
 						copy = new ArrayList<IPath>(fRequests);
 						fRequests = new HashSet<IPath>(3);
 					}
+					plan = planner.plan(copy);
+				}
 
+				long start = System.currentTimeMillis();
+				IStatus status;
+				if (plan.getStrategy() == GitIndexRefreshPlanner.Strategy.FULL)
+				{
+					// refresh everything
+					status = index.refresh(monitor);
+				}
+				else
+				{
 					// Now refresh all the paths we had
-					status = index.refresh(true, copy, monitor);
+					status = index.refresh(true, plan.getPaths(), monitor);
+				}
+				if (status.isOK())
+				{
+					long duration = System.currentTimeMillis() - start;
+					planner.record(plan, duration);
+					if (IdeLog.isTraceEnabled(GitPlugin.getDefault(), IDebugScopes.DEBUG))
+					{
+						IdeLog.logTrace(GitPlugin.getDefault(),
+								MessageFormat.format("Refreshed index with {0} in {1} ms", plan, duration), //$NON-NLS-1$
+								IDebugScopes.DEBUG);
+					}
 				}
 				if (!status.isOK())
 				{
@@ -136,10 +171,18 @@ class GitIndexRefreshJob extends Job
 		{
 			return;
 		}
-		// TODO If the requests grow large enough, just flip the refreshAll flag?
 		synchronized (fRequests)
 		{
-			fRequests.addAll(paths);
+			// Past this many, we'd refresh everything anyways, so don't hold onto them
+			if (refreshAll.get() || fRequests.size() + paths.size() > MAX_QUEUED_PATHS)
+			{
+				refreshAll.set(true);
+				fRequests = new HashSet<IPath>(3);
+			}
+			else
+			{
+				fRequests.addAll(paths);
+			}
 		}
 		schedule(UPDATE_DELAY);
 	}
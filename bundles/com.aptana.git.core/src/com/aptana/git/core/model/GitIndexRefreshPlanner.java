@@ -0,0 +1,301 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+/**
+ * Decides how to refresh the index for a set of changed paths: by passing git the paths themselves, the directories
+ * containing them, or by refreshing everything. Each refresh runs three git processes with the paths as arguments, so
+ * a handful of paths is cheapest, while thousands (say, from an "npm install") are better collapsed to directories or
+ * dropped for a full refresh.
+ * <p>
+ * We time the refreshes of each kind and fit the cost against the number of paths passed, so that we pick whichever is
+ * expected to be cheapest for this repository. Until a kind has been timed, we prefer the narrowest refresh.
+ */
+class GitIndexRefreshPlanner
+{
+
+	enum Strategy
+	{
+		/**
+		 * Refresh the requested paths.
+		 */
+		PATHS,
+		/**
+		 * Refresh the directories containing the requested paths.
+		 */
+		DIRECTORIES,
+		/**
+		 * Refresh the whole index.
+		 */
+		FULL
+	}
+
+	/**
+	 * How to refresh for a set of requested paths.
+	 */
+	static class Plan
+	{
+		private final Strategy strategy;
+		private final List<IPath> paths;
+
+		private Plan(Strategy strategy, List<IPath> paths)
+		{
+			this.strategy = strategy;
+			this.paths = paths;
+		}
+
+		Strategy getStrategy()
+		{
+			return strategy;
+		}
+
+		/**
+		 * @return the paths to pass to git; empty for a full refresh.
+		 */
+		List<IPath> getPaths()
+		{
+			return paths;
+		}
+
+		@Override
+		public String toString()
+		{
+			return MessageFormat.format("{0} ({1} paths)", strategy, paths.size()); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * The most paths we pass git on one refresh. Past this, we collapse to directories or refresh everything.
+	 */
+	static final int MAX_PATHSPECS = 100;
+
+	/**
+	 * How much each timing counts for after another has been recorded, so the estimates follow the repository as it
+	 * changes.
+	 */
+	private static final double DECAY = 0.8;
+
+	private static final Plan FULL_REFRESH = new Plan(Strategy.FULL, Collections.<IPath> emptyList());
+
+	private final Map<Strategy, CostModel> costs = new EnumMap<Strategy, CostModel>(Strategy.class);
+
+	GitIndexRefreshPlanner()
+	{
+		for (Strategy strategy : Strategy.values())
+		{
+			costs.put(strategy, new CostModel());
+		}
+	}
+
+	/**
+	 * @param requested
+	 *            paths relative to the working directory
+	 * @return
+	 */
+	synchronized Plan plan(Collection<IPath> requested)
+	{
+		List<IPath> paths = minimize(requested);
+		if (paths == null || paths.isEmpty())
+		{
+			return FULL_REFRESH;
+		}
+
+		List<Plan> candidates = new ArrayList<Plan>(3);
+		if (paths.size() <= MAX_PATHSPECS)
+		{
+			candidates.add(new Plan(Strategy.PATHS, paths));
+		}
+		List<IPath> directories = collapse(paths);
+		if (directories != null)
+		{
+			candidates.add(new Plan(Strategy.DIRECTORIES, directories));
+		}
+		candidates.add(FULL_REFRESH);
+
+		// Try the narrowest refresh until we know what it costs
+		Plan narrowest = candidates.get(0);
+		if (!costs.get(narrowest.strategy).hasSamples())
+		{
+			return narrowest;
+		}
+		Plan cheapest = null;
+		double cheapestCost = Double.MAX_VALUE;
+		for (Plan candidate : candidates)
+		{
+			CostModel model = costs.get(candidate.strategy);
+			if (!model.hasSamples())
+			{
+				continue;
+			}
+			double cost = model.estimate(candidate.paths.size());
+			if (cost < cheapestCost)
+			{
+				cheapest = candidate;
+				cheapestCost = cost;
+			}
+		}
+		return cheapest;
+	}
+
+	/**
+	 * Records how long a refresh took.
+	 * 
+	 * @param plan
+	 * @param duration
+	 *            in ms
+	 */
+	synchronized void record(Plan plan, long duration)
+	{
+		costs.get(plan.strategy).add(plan.paths.size(), duration);
+	}
+
+	/**
+	 * @return the estimated cost (in ms) of a refresh passing git the given number of paths, or -1 if we haven't timed
+	 *         one yet.
+	 */
+	synchronized double estimate(Strategy strategy, int paths)
+	{
+		CostModel model = costs.get(strategy);
+		return model.hasSamples() ? model.estimate(paths) : -1;
+	}
+
+	/**
+	 * Sorts the paths and drops those that are inside another one.
+	 * 
+	 * @return null if one of them is the root of the repository.
+	 */
+	private static List<IPath> minimize(Collection<IPath> requested)
+	{
+		TreeSet<String> sorted = new TreeSet<String>();
+		for (IPath path : requested)
+		{
+			if (path.isEmpty() || path.isRoot())
+			{
+				return null;
+			}
+			sorted.add(path.removeTrailingSeparator().toPortableString());
+		}
+		// Parents sort before their children, so we've seen any path containing this one by the time we get to it
+		Set<String> kept = new HashSet<String>(sorted.size());
+		List<IPath> paths = new ArrayList<IPath>(sorted.size());
+		for (String path : sorted)
+		{
+			if (!isInside(path, kept))
+			{
+				kept.add(path);
+				paths.add(Path.fromPortableString(path));
+			}
+		}
+		return paths;
+	}
+
+	private static boolean isInside(String path, Set<String> directories)
+	{
+		int slash = path.indexOf('/');
+		while (slash != -1)
+		{
+			if (directories.contains(path.substring(0, slash)))
+			{
+				return true;
+			}
+			slash = path.indexOf('/', slash + 1);
+		}
+		return false;
+	}
+
+	/**
+	 * Replaces the paths by the directories containing them, moving up from the deepest ones until there are few
+	 * enough to pass to git. Paths at the root of the repository stay as they are.
+	 * 
+	 * @return null if we'd have to go up to the root of the repository.
+	 */
+	private static List<IPath> collapse(List<IPath> paths)
+	{
+		List<IPath> directories = new ArrayList<IPath>(paths.size());
+		for (IPath path : paths)
+		{
+			directories.add(path.segmentCount() > 1 ? path.removeLastSegments(1) : path);
+		}
+		directories = minimize(directories);
+		while (directories.size() > MAX_PATHSPECS)
+		{
+			int deepest = 0;
+			for (IPath directory : directories)
+			{
+				deepest = Math.max(deepest, directory.segmentCount());
+			}
+			if (deepest <= 1)
+			{
+				return null;
+			}
+			List<IPath> parents = new ArrayList<IPath>(directories.size());
+			for (IPath directory : directories)
+			{
+				parents.add(directory.segmentCount() == deepest ? directory.removeLastSegments(1) : directory);
+			}
+			directories = minimize(parents);
+		}
+		return directories;
+	}
+
+	/**
+	 * Fits the cost of a refresh as a straight line against the number of paths passed to git, weighing recent
+	 * timings more.
+	 */
+	private static class CostModel
+	{
+		private double weight;
+		private double sumN;
+		private double sumNN;
+		private double sumT;
+		private double sumNT;
+
+		void add(int n, long t)
+		{
+			weight = weight * DECAY + 1;
+			sumN = sumN * DECAY + n;
+			sumNN = sumNN * DECAY + (double) n * n;
+			sumT = sumT * DECAY + t;
+			sumNT = sumNT * DECAY + (double) n * t;
+		}
+
+		boolean hasSamples()
+		{
+			return weight > 0;
+		}
+
+		double estimate(int n)
+		{
+			double meanN = sumN / weight;
+			double meanT = sumT / weight;
+			double varianceN = sumNN / weight - meanN * meanN;
+			// If we've only seen one size, assume the cost doesn't depend on it. Passing more paths never makes it
+			// cheaper.
+			double slope = 0;
+			if (varianceN > 1e-6)
+			{
+				slope = Math.max(0, (sumNT / weight - meanN * meanT) / varianceN);
+			}
+			return Math.max(0, meanT + slope * (n - meanN));
+		}
+	}
+}
@@ -0,0 +1,335 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import com.aptana.core.util.IOUtil;
+import com.aptana.core.util.StringUtil;
+
+/**
+ * Reads refs straight from a git directory: the loose refs under refs/, the packed-refs file, and symbolic refs like
+ * HEAD. This tells us what "git for-each-ref" and "git symbolic-ref" would, without launching git. Anything we don't
+ * understand (such as the reftable format) is reported as an {@link IOException}, so callers can ask git instead.
+ */
+class GitRefReader
+{
+
+	private static final String SYMBOLIC_REF_PREFIX = "ref: "; //$NON-NLS-1$
+	private static final String PEELED_PREFIX = "^"; //$NON-NLS-1$
+	private static final String COMMENT_PREFIX = "#"; //$NON-NLS-1$
+	private static final String TRAITS_PREFIX = "# pack-refs with:"; //$NON-NLS-1$
+	private static final String PEELED_TRAIT = "peeled"; //$NON-NLS-1$
+	private static final String FULLY_PEELED_TRAIT = "fully-peeled"; //$NON-NLS-1$
+	private static final String LOCK_EXTENSION = ".lock"; //$NON-NLS-1$
+	private static final String PACKED_REFS = "packed-refs"; //$NON-NLS-1$
+	private static final String COMMON_DIR = "commondir"; //$NON-NLS-1$
+	private static final String REFTABLE = "reftable"; //$NON-NLS-1$
+
+	/**
+	 * How many symbolic refs we follow before giving up, like git.
+	 */
+	private static final int MAX_SYMBOLIC_REF_DEPTH = 5;
+
+	private static final Pattern SHA_PATTERN = Pattern.compile("[0-9a-f]{40}"); //$NON-NLS-1$
+
+	/**
+	 * Where HEAD and other per worktree refs live.
+	 */
+	private final File gitDir;
+
+	/**
+	 * Where refs/ and packed-refs live. The same as {@link #gitDir}, except for linked worktrees.
+	 */
+	private final File commonDir;
+
+	GitRefReader(File gitDir) throws IOException
+	{
+		this.gitDir = gitDir;
+		File commonDirFile = new File(gitDir, COMMON_DIR);
+		if (commonDirFile.isFile())
+		{
+			File dir = new File(readFile(commonDirFile).trim());
+			this.commonDir = dir.isAbsolute() ? dir : new File(gitDir, dir.getPath());
+		}
+		else
+		{
+			this.commonDir = gitDir;
+		}
+		if (new File(commonDir, REFTABLE).exists())
+		{
+			throw new IOException("Refs are stored in the reftable format: " + commonDir); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * @return the sha each ref under refs/ points at, by name, in the order "git for-each-ref" lists them. Loose refs
+	 *         take precedence over packed ones, and symbolic refs are resolved.
+	 * @throws IOException
+	 */
+	SortedMap<String, String> readRefs() throws IOException
+	{
+		return readRefs(new HashMap<String, String>());
+	}
+
+	/**
+	 * @param peeled
+	 *            gets the sha of the object each ref points at once annotated tags are peeled, like "%(*objectname)"
+	 *            in "git for-each-ref", for the refs packed-refs records that for. Other refs, such as loose ones,
+	 *            aren't added; callers have to peel them.
+	 * @return the sha each ref under refs/ points at, by name, in the order "git for-each-ref" lists them. Loose refs
+	 *         take precedence over packed ones, and symbolic refs are resolved.
+	 * @throws IOException
+	 */
+	SortedMap<String, String> readRefs(Map<String, String> peeled) throws IOException
+	{
+		Map<String, String> packedPeeled = new HashMap<String, String>();
+		Map<String, String> packed = readPackedRefs(packedPeeled);
+		Map<String, String> loose = new HashMap<String, String>();
+		Map<String, String> symbolic = new HashMap<String, String>();
+		readLooseRefs(new File(commonDir, GitRef.REFS), GitRef.REFS, loose, symbolic);
+
+		SortedMap<String, String> refs = new TreeMap<String, String>(packed);
+		refs.putAll(loose);
+		for (Map.Entry<String, String> entry : packedPeeled.entrySet())
+		{
+			// What the packed ref peels to doesn't matter once a loose one overrides it
+			if (!loose.containsKey(entry.getKey()) && !symbolic.containsKey(entry.getKey()))
+			{
+				peeled.put(entry.getKey(), entry.getValue());
+			}
+		}
+
+		for (Map.Entry<String, String> entry : symbolic.entrySet())
+		{
+			String sha = resolve(entry.getValue(), packed, 1);
+			if (sha != null)
+			{
+				refs.put(entry.getKey(), sha);
+			}
+		}
+		return refs;
+	}
+
+	/**
+	 * @param name
+	 *            such as "HEAD"
+	 * @return the name of the ref this symbolic ref points at, or null if it isn't symbolic (e.g. a detached HEAD) or
+	 *         doesn't exist.
+	 * @throws IOException
+	 */
+	String readSymbolicRef(String name) throws IOException
+	{
+		String contents = readLooseRef(name);
+		if (contents == null || !contents.startsWith(SYMBOLIC_REF_PREFIX))
+		{
+			return null;
+		}
+		return contents.substring(SYMBOLIC_REF_PREFIX.length()).trim();
+	}
+
+	/**
+	 * @param name
+	 *            such as "refs/heads/master" or "HEAD"
+	 * @return the sha the ref points at, following symbolic refs, or null if there's no such ref.
+	 * @throws IOException
+	 */
+	String resolve(String name) throws IOException
+	{
+		return resolve(name, null, 0);
+	}
+
+	private String resolve(String name, Map<String, String> packed, int depth) throws IOException
+	{
+		if (depth > MAX_SYMBOLIC_REF_DEPTH)
+		{
+			throw new IOException("Too many levels of symbolic refs: " + name); //$NON-NLS-1$
+		}
+		String contents = readLooseRef(name);
+		if (contents == null)
+		{
+			if (packed == null)
+			{
+				packed = readPackedRefs(new HashMap<String, String>());
+			}
+			return packed.get(name);
+		}
+		if (contents.startsWith(SYMBOLIC_REF_PREFIX))
+		{
+			return resolve(contents.substring(SYMBOLIC_REF_PREFIX.length()).trim(), packed, depth + 1);
+		}
+		return isSHA(contents) ? contents : null;
+	}
+
+	/**
+	 * @return the trimmed contents of the loose ref, or null if there isn't one.
+	 */
+	private String readLooseRef(String name) throws IOException
+	{
+		// Only refs/ is shared between worktrees; HEAD and friends are per worktree
+		File file = new File(name.startsWith(GitRef.REFS) ? commonDir : gitDir, name);
+		if (!file.isFile())
+		{
+			return null;
+		}
+		try
+		{
+			return readFile(file).trim();
+		}
+		catch (FileNotFoundException e)
+		{
+			// packed in the meantime
+			return null;
+		}
+	}
+
+	private void readLooseRefs(File dir, String prefix, Map<String, String> refs, Map<String, String> symbolic)
+			throws IOException
+	{
+		File[] files = dir.listFiles();
+		if (files == null)
+		{
+			return;
+		}
+		for (File file : files)
+		{
+			String name = prefix + file.getName();
+			if (file.isDirectory())
+			{
+				readLooseRefs(file, name + '/', refs, symbolic);
+				continue;
+			}
+			// Skip the lock files git writes refs through
+			if (name.endsWith(LOCK_EXTENSION))
+			{
+				continue;
+			}
+			String contents;
+			try
+			{
+				contents = readFile(file).trim();
+			}
+			catch (FileNotFoundException e)
+			{
+				// deleted or packed in the meantime
+				continue;
+			}
+			if (contents.startsWith(SYMBOLIC_REF_PREFIX))
+			{
+				symbolic.put(name, contents.substring(SYMBOLIC_REF_PREFIX.length()).trim());
+			}
+			else if (isSHA(contents))
+			{
+				refs.put(name, contents);
+			}
+			// otherwise it's broken, and git skips it too
+		}
+	}
+
+	/**
+	 * @param peeled
+	 *            gets what each packed ref peels to, for the refs whose peeled value the file records. With the
+	 *            "fully-peeled" trait that's every ref, with "peeled" just the tags; refs without a "^" line aren't
+	 *            annotated tags, and peel to themselves.
+	 * @return the sha of each packed ref, by name.
+	 */
+	private Map<String, String> readPackedRefs(Map<String, String> peeled) throws IOException
+	{
+		File file = new File(commonDir, PACKED_REFS);
+		if (!file.isFile())
+		{
+			return new HashMap<String, String>(0);
+		}
+		String contents;
+		try
+		{
+			contents = readFile(file);
+		}
+		catch (FileNotFoundException e)
+		{
+			return new HashMap<String, String>(0);
+		}
+
+		List<String> lines = StringUtil.tokenize(contents, "\n"); //$NON-NLS-1$
+		Map<String, String> refs = new HashMap<String, String>(lines.size());
+		boolean fullyPeeled = false;
+		boolean tagsPeeled = false;
+		String lastName = null;
+		for (String line : lines)
+		{
+			if (line.length() == 0)
+			{
+				continue;
+			}
+			if (line.startsWith(COMMENT_PREFIX))
+			{
+				// The header lists the traits of the file, e.g. "# pack-refs with: peeled fully-peeled sorted "
+				if (line.startsWith(TRAITS_PREFIX))
+				{
+					String traitList = line.substring(TRAITS_PREFIX.length());
+					List<String> traits = StringUtil.tokenize(traitList, " "); //$NON-NLS-1$
+					fullyPeeled = traits.contains(FULLY_PEELED_TRAIT);
+					tagsPeeled = traits.contains(PEELED_TRAIT);
+				}
+				continue;
+			}
+			if (line.startsWith(PEELED_PREFIX))
+			{
+				// the object the annotated tag on the line before points at
+				String sha = line.substring(PEELED_PREFIX.length()).trim();
+				if (lastName == null || !isSHA(sha))
+				{
+					throw new IOException("Unexpected line in " + file + ": " + line); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+				peeled.put(lastName, sha);
+				lastName = null;
+				continue;
+			}
+			// each line is 40 char sha, space, ref name
+			int space = line.indexOf(' ');
+			if (space == -1 || !isSHA(line.substring(0, space)))
+			{
+				throw new IOException("Unexpected line in " + file + ": " + line); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			String name = line.substring(space + 1).trim();
+			String sha = line.substring(0, space);
+			refs.put(name, sha);
+			lastName = name;
+			if (fullyPeeled || (tagsPeeled && name.startsWith(GitRef.REFS_TAGS)))
+			{
+				// peels to itself, unless a "^" line follows
+				peeled.put(name, sha);
+			}
+		}
+		return refs;
+	}
+
+	private static boolean isSHA(String string)
+	{
+		return SHA_PATTERN.matcher(string).matches();
+	}
+
+	private static String readFile(File file) throws IOException
+	{
+		String contents = IOUtil.read(new FileInputStream(file), IOUtil.UTF_8); // $codepro.audit.disable closeWhereCreated
+		if (contents == null)
+		{
+			throw new IOException("Unable to read " + file); //$NON-NLS-1$
+		}
+		return contents;
+	}
+}
@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -62,7 +63,10 @@ import com.aptana.core.util.CollectionsUtil;
 import com.aptana.core.util.EclipseUtil;
 import com.aptana.core.util.IOUtil;
 import com.aptana.core.util.StringUtil;
+import com.aptana.filewatcher.FileChangeBatch;
+import com.aptana.filewatcher.FileChangeSet;
 import com.aptana.filewatcher.FileWatcher;
+import com.aptana.filewatcher.IFileChangeBatchListener;
 import com.aptana.git.core.GitPlugin;
 import com.aptana.git.core.IDebugScopes;
 import com.aptana.git.core.IPreferenceConstants;
@@ -138,6 +142,11 @@ public class GitRepository
 	 */
 	public static final char BRANCH_DELIMITER = '/';
 
+	/**
+	 * How "git cat-file --batch-check" answers for an object that doesn't exist.
+	 */
+	private static final String MISSING_OBJECT = " missing"; //$NON-NLS-1$
+
 	/**
 	 * Extension of temporary git lock files.
 	 */
@@ -155,11 +164,6 @@ public class GitRepository
 	 */
 	public static final String GITIGNORE = ".gitignore"; //$NON-NLS-1$
 
-	/**
-	 * File used to associate SHAs and refs when git pack-refs has been used.
-	 */
-	private static final String PACKED_REFS = "packed-refs"; //$NON-NLS-1$
-
 	/**
 	 * The file used to write the commit message.
 	 */
@@ -179,7 +183,7 @@ public class GitRepository
 	 * The most important file in git. This holds the current file state. When this changes, the state of files in the
 	 * repo has changed.
 	 */
-	private static final String INDEX = "index"; //$NON-NLS-1$
+	static final String INDEX = "index"; //$NON-NLS-1$
 
 	/**
 	 * File created prior to merges (which happen as part of pull, which is just fetch + merge).
@@ -196,6 +200,11 @@ public class GitRepository
 	 */
 	public static final String HEAD = "HEAD"; //$NON-NLS-1$
 
+	/**
+	 * How long we wait for the changes to the git dir to settle before looking at them, in milliseconds.
+	 */
+	private static final long GIT_DIR_EVENT_DELAY = 250;
+
 	/**
 	 * The default 'remote' name for git.
 	 */
@@ -229,6 +238,11 @@ public class GitRepository
 	 */
 	private ReadWriteLock monitor = new ReentrantReadWriteLock();
 
+	/**
+	 * Long running git processes for looking up objects, so we don't launch git for each one.
+	 */
+	private final GitCatFilePool catFilePool;
+
 	private Set<GitRevSpecifier> branches;
 	Map<String, List<GitRef>> refs;
 	private URI fileURL;
@@ -244,6 +258,7 @@ public class GitRepository
 	{
 		this.fileURL = fileURL;
 		this.branches = new HashSet<GitRevSpecifier>();
+		this.catFilePool = new GitCatFilePool(this);
 		reloadRefs();
 		readCurrentBranch();
 
@@ -258,84 +273,38 @@ public class GitRepository
 		{
 			// FIXME When actions are taken through our model/UI we end up causing multiple refreshes for index changes
 			// index appears to change on commit/stage/unstage/pull
-			// Add listener for changes in HEAD (i.e. switched branches), and index
-			fileWatcherIds.add(FileWatcher.addWatch(gitDirPath().toOSString(), IJNotify.FILE_ANY, false,
-					new JNotifyAdapter()
+			// Add listener for changes in HEAD (i.e. switched branches), and index. Git rewrites these through lock files,
+			// so we look at what a burst of changes adds up to rather than at each event.
+			fileWatcherIds.add(FileWatcher.addBatchedWatch(gitDirPath().toOSString(), IJNotify.FILE_ANY, false,
+					GIT_DIR_EVENT_DELAY, new IFileChangeBatchListener()
 					{
 
-						private Set<String> filesToWatch;
-
-						@Override
-						public void fileRenamed(int wd, String rootPath, String oldName, String newName)
+						public void filesChanged(FileChangeBatch batch)
 						{
-							if (newName == null || !filesToWatch().contains(newName))
-							{
-								return;
-							}
-							if (newName.equals(HEAD))
-							{
-								checkForBranchChange();
-							}
-							else if (newName.equals(INDEX) || newName.equals(COMMIT_EDITMSG))
-							{
-								refreshIndex();
-							}
-						}
+							// The running cat-file processes may have read the index or packed-refs before this
+							catFilePool.invalidate();
 
-						@Override
-						public void fileCreated(int wd, String rootPath, String name)
-						{
-							if (name == null)
+							for (FileChangeSet changes : batch.getChangeSets())
 							{
-								return;
-							}
-							if (name.equals(INDEX))
-							{
-								refreshIndex();
-							}
-							else if (name.equals(ORIG_HEAD)) // this is done before merges (or pulls, which are just
-																// fetch + merge)
-							{
-								firePullEvent(); // we're conflating the two events here because I don't have the ideas
-							}
-							// separated in the listeners yet.
-						}
-
-						@Override
-						public void fileDeleted(int wd, String rootPath, String name)
-						{
-							if (name != null && name.equals(INDEX))
-							{
-								refreshIndex();
-							}
-						}
+								int head = changes.getKind(HEAD);
+								if (head == IJNotify.FILE_CREATED || head == IJNotify.FILE_MODIFIED)
+								{
+									checkForBranchChange();
+								}
 
-						private Set<String> filesToWatch()
-						{
-							if (filesToWatch == null)
-							{
-								filesToWatch = new HashSet<String>();
-								filesToWatch.add(HEAD);
-								filesToWatch.add(INDEX);
-								filesToWatch.add(COMMIT_EDITMSG);
-							}
-							return filesToWatch;
-						}
+								int commitMessage = changes.getKind(COMMIT_EDITMSG);
+								if (changes.getKind(INDEX) != 0 || commitMessage == IJNotify.FILE_CREATED
+										|| commitMessage == IJNotify.FILE_MODIFIED)
+								{
+									refreshIndex();
+								}
 
-						@Override
-						public void fileModified(int wd, String rootPath, String name)
-						{
-							if (name == null || !filesToWatch().contains(name))
-							{
-								return;
-							}
-							if (name.equals(HEAD))
-							{
-								checkForBranchChange();
-							}
-							else if (name.equals(INDEX) || name.equals(COMMIT_EDITMSG))
-							{
-								refreshIndex();
+								// this is done before merges (or pulls, which are just fetch + merge)
+								if (changes.getKind(ORIG_HEAD) == IJNotify.FILE_CREATED)
+								{
+									firePullEvent(); // we're conflating the two events here because I don't have the
+														// ideas separated in the listeners yet.
+								}
 							}
 						}
 
@@ -884,35 +853,26 @@ public class GitRepository
 
 		// Now do a batch check against all the projects underneath our repo
 		Set<IProject> projectsNotExistingOnNewBranch = new HashSet<IProject>();
-		StringBuilder input = new StringBuilder();
+		List<String> objects = new ArrayList<String>(beneathRepo.size());
 		for (IProject project : beneathRepo)
 		{
-			input.append(branchName).append(':')
-					.append(relativePath(project).append(IProjectDescription.DESCRIPTION_FILE_NAME).toPortableString())
-					.append('\n');
+			objects.add(branchName + ':'
+					+ relativePath(project).append(IProjectDescription.DESCRIPTION_FILE_NAME).toPortableString());
 		}
 
-		if (!enterRead())
+		List<String> lines = checkObjects(objects);
+		if (lines == null)
 		{
-			IdeLog.logError(GitPlugin.getDefault(), Messages.GitRepository_FailedAcquireReadLock);
 			return Collections.emptySet();
 		}
-
-		IStatus result = getGitExecutable().runInBackground(input.toString(), workingDir, "cat-file", "--batch-check"); //$NON-NLS-1$ //$NON-NLS-2$
-		exitRead();
-		if (result.isOK())
+		int lineNum = 0;
+		for (String line : lines)
 		{
-			String output = result.getMessage();
-			String[] lines = output.split("\r?\n|\r"); //$NON-NLS-1$ // $codepro.audit.disable platformSpecificLineSeparator
-			int lineNum = 0;
-			for (String line : lines)
+			if (line.endsWith(MISSING_OBJECT) && lineNum < beneathRepo.size())
 			{
-				if (line.endsWith(" missing")) //$NON-NLS-1$
-				{
-					projectsNotExistingOnNewBranch.add(beneathRepo.get(lineNum));
-				}
-				lineNum++;
+				projectsNotExistingOnNewBranch.add(beneathRepo.get(lineNum));
 			}
+			lineNum++;
 		}
 		// APSTUD-3399 We need to see if the projects that don't exist are untracked and therefore ok (we don't need to
 		// close them)
@@ -944,24 +904,11 @@ public class GitRepository
 
 		refs = new HashMap<String, List<GitRef>>();
 
-		IStatus result = execute(ReadWrite.READ, "for-each-ref", //$NON-NLS-1$
-				"--format=%(refname) %(objecttype) %(objectname) %(*objectname)", "refs"); //$NON-NLS-1$ //$NON-NLS-2$
-
-		String output = result.getMessage();
-		List<String> lines = StringUtil.tokenize(output, "\n"); //$NON-NLS-1$
-
-		for (String line : lines)
+		Map<String, String> shas = readRefs();
+		for (Map.Entry<String, String> entry : shas.entrySet())
 		{
-			// If its an empty line, skip it (e.g. with empty repositories)
-			if (line.length() == 0)
-			{
-				continue;
-			}
-
-			List<String> components = StringUtil.tokenize(line, " "); //$NON-NLS-1$
-
 			// First do the ref matching. If this ref is new, add it to our ref list
-			GitRef newRef = GitRef.refFromString(components.get(0));
+			GitRef newRef = GitRef.refFromString(entry.getKey());
 			GitRevSpecifier revSpec = new GitRevSpecifier(newRef);
 			if (!addBranch(revSpec).equals(revSpec))
 			{
@@ -969,7 +916,7 @@ public class GitRepository
 			}
 
 			// Also add this ref to the refs list
-			addRef(newRef, components);
+			addRef(newRef, entry.getValue());
 		}
 
 		// Add an "All branches" option in the branches list
@@ -979,6 +926,94 @@ public class GitRepository
 		return ret;
 	}
 
+	/**
+	 * @return the sha each ref points at, by ref name, with annotated tags peeled to the commit they tag. Read from the
+	 *         git directory, or if that fails, from "git for-each-ref".
+	 */
+	private Map<String, String> readRefs()
+	{
+		try
+		{
+			Map<String, String> peeled = new HashMap<String, String>();
+			Map<String, String> shas = new GitRefReader(gitDirPath().toFile()).readRefs(peeled);
+			peelRefs(shas, peeled);
+			return shas;
+		}
+		catch (IOException e)
+		{
+			IdeLog.logInfo(GitPlugin.getDefault(), "Unable to read refs, falling back to git for-each-ref", e, //$NON-NLS-1$
+					IDebugScopes.DEBUG);
+		}
+
+		Map<String, String> shas = new TreeMap<String, String>();
+		IStatus result = execute(ReadWrite.READ, "for-each-ref", //$NON-NLS-1$
+				"--format=%(refname) %(objectname) %(*objectname)", "refs"); //$NON-NLS-1$ //$NON-NLS-2$
+		if (result == null || !result.isOK())
+		{
+			return shas;
+		}
+		for (String line : StringUtil.tokenize(result.getMessage(), "\n")) //$NON-NLS-1$
+		{
+			// Skips empty lines (e.g. with empty repositories)
+			List<String> components = StringUtil.tokenize(line, " "); //$NON-NLS-1$
+			if (components.size() < 2)
+			{
+				continue;
+			}
+			// annotated tags have a third component, the object they point at
+			shas.put(components.get(0), components.get(components.size() - 1));
+		}
+		return shas;
+	}
+
+	/**
+	 * Replaces the sha of each ref that may be an annotated tag with the sha of the object it points at. We only ask
+	 * git about the refs whose peeled value packed-refs doesn't record, usually just the loose ones.
+	 * 
+	 * @param shas
+	 *            the sha each ref points at, by ref name
+	 * @param peeled
+	 *            what we already know refs peel to, by ref name
+	 */
+	private void peelRefs(Map<String, String> shas, Map<String, String> peeled)
+	{
+		List<String> names = new ArrayList<String>();
+		List<String> objects = new ArrayList<String>();
+		for (Map.Entry<String, String> entry : shas.entrySet())
+		{
+			String sha = peeled.get(entry.getKey());
+			if (sha != null)
+			{
+				entry.setValue(sha);
+			}
+			else
+			{
+				names.add(entry.getKey());
+				objects.add(entry.getValue() + "^{}"); //$NON-NLS-1$
+			}
+		}
+		if (objects.isEmpty())
+		{
+			return;
+		}
+
+		List<String> lines = checkObjects(objects);
+		if (lines == null || lines.size() != objects.size())
+		{
+			return;
+		}
+		for (int i = 0; i < lines.size(); i++)
+		{
+			// "<sha> <type> <size>", or "<object> missing" if it can't be peeled
+			String line = lines.get(i);
+			int space = line.indexOf(' ');
+			if (space != -1 && !line.endsWith(MISSING_OBJECT))
+			{
+				shas.put(names.get(i), line.substring(0, space));
+			}
+		}
+	}
+
 	private GitRevSpecifier addBranch(GitRevSpecifier rev)
 	{
 		if (rev.parameters().isEmpty())
@@ -1019,6 +1054,17 @@ public class GitRepository
 
 	private String parseSymbolicReference(String reference)
 	{
+		try
+		{
+			String ref = new GitRefReader(gitDirPath().toFile()).readSymbolicRef(reference);
+			return (ref != null && ref.startsWith(GitRef.REFS)) ? ref : null;
+		}
+		catch (IOException e)
+		{
+			IdeLog.logInfo(GitPlugin.getDefault(), "Unable to read " + reference + ", falling back to git symbolic-ref", //$NON-NLS-1$ //$NON-NLS-2$
+					e, IDebugScopes.DEBUG);
+		}
+
 		IStatus result = execute(ReadWrite.READ, "symbolic-ref", "-q", reference); //$NON-NLS-1$ //$NON-NLS-2$
 		if (result == null || !result.isOK())
 		{
@@ -1033,20 +1079,8 @@ public class GitRepository
 		return null;
 	}
 
-	private void addRef(GitRef ref, List<String> components)
+	private void addRef(GitRef ref, String sha)
 	{
-		String type = components.get(1);
-
-		String sha;
-		if (type.equals(GitRef.TYPE.TAG) && components.size() == 4)
-		{
-			sha = components.get(3);
-		}
-		else
-		{
-			sha = components.get(2);
-		}
-
 		if (refs == null)
 		{
 			return;
@@ -1607,6 +1641,89 @@ public class GitRepository
 		return GitExecutable.instance();
 	}
 
+	/**
+	 * Reads the contents of a git object, such as "&lt;sha&gt;:&lt;path&gt;" for a file at a commit, or
+	 * ":0:&lt;path&gt;" for a staged file. This is served by a long running "git cat-file --batch" process, falling
+	 * back to "git show" if that fails.
+	 * 
+	 * @param object
+	 * @return a status whose message is the contents of the object, or an error status if there's no such object.
+	 */
+	public IStatus readObject(String object)
+	{
+		if (!enterRead())
+		{
+			return new Status(IStatus.ERROR, GitPlugin.getPluginId(), Messages.GitRepository_FailedAcquireReadLock);
+		}
+		try
+		{
+			byte[] contents = catFilePool.read(object);
+			if (contents == null)
+			{
+				return new Status(IStatus.ERROR, GitPlugin.getPluginId(), MessageFormat.format(
+						"{0} is not a valid object name", object)); //$NON-NLS-1$
+			}
+			return new Status(IStatus.OK, GitPlugin.getPluginId(), new String(contents, IOUtil.UTF_8));
+		}
+		catch (IOException e)
+		{
+			IdeLog.logWarning(GitPlugin.getDefault(), e, IDebugScopes.DEBUG);
+			return getGitExecutable().runInBackground(workingDirectory(), null, "show", object); //$NON-NLS-1$
+		}
+		finally
+		{
+			exitRead();
+		}
+	}
+
+	/**
+	 * Looks up several objects at once through a long running "git cat-file --batch-check" process, falling back to
+	 * launching one for just these objects if that fails.
+	 * 
+	 * @param objects
+	 * @return for each object, "&lt;sha&gt; &lt;type&gt; &lt;size&gt;" if it exists; otherwise
+	 *         "&lt;object&gt; missing". null if git failed.
+	 */
+	List<String> checkObjects(List<String> objects)
+	{
+		if (!enterRead())
+		{
+			IdeLog.logError(GitPlugin.getDefault(), Messages.GitRepository_FailedAcquireReadLock);
+			return null;
+		}
+		try
+		{
+			return catFilePool.check(objects);
+		}
+		catch (IOException e)
+		{
+			IdeLog.logWarning(GitPlugin.getDefault(), e, IDebugScopes.DEBUG);
+		}
+		finally
+		{
+			exitRead();
+		}
+
+		StringBuilder input = new StringBuilder();
+		for (String object : objects)
+		{
+			input.append(object).append('\n');
+		}
+		if (!enterRead())
+		{
+			IdeLog.logError(GitPlugin.getDefault(), Messages.GitRepository_FailedAcquireReadLock);
+			return null;
+		}
+		IStatus result = getGitExecutable().runInBackground(input.toString(), workingDirectory(),
+				"cat-file", "--batch-check"); //$NON-NLS-1$ //$NON-NLS-2$
+		exitRead();
+		if (!result.isOK())
+		{
+			return null;
+		}
+		return Arrays.asList(result.getMessage().split("\r?\n|\r")); //$NON-NLS-1$ // $codepro.audit.disable platformSpecificLineSeparator
+	}
+
 	IStatus executeWithInput(String input, String... args)
 	{
 		// All of these processes appear to be write, so just hard-code that
@@ -1713,6 +1830,8 @@ public class GitRepository
 			}
 		}
 		fileWatcherIds = null;
+		// stop any git processes we keep running
+		catFilePool.dispose();
 		// stop running any jobs related to this repo!
 		Job.getJobManager().cancel(this);
 		// stop running any jobs in the index!
@@ -1905,30 +2024,17 @@ public class GitRepository
 	 */
 	public String toSHA(GitRef ref)
 	{
-		File sha1File = gitFile(ref.ref());
-		// If the file doesn't exist, it's inside packed-refs!
 		try
 		{
-			if (!sha1File.isFile())
+			String sha = new GitRefReader(gitDirPath().toFile()).resolve(ref.ref());
+			if (sha != null)
 			{
-				File packedRefs = gitFile(PACKED_REFS);
-				String packedRefContents = IOUtil.read(new FileInputStream(packedRefs)); // $codepro.audit.disable
-																							// closeWhereCreated
-				// each line is 40 char sha, space, ref name
-				int index = packedRefContents.indexOf(ref.ref());
-				if (index != -1)
-				{
-					return new String(packedRefContents.substring(index - 41, index - 1));
-				}
-			}
-			else
-			{
-				return IOUtil.read(new FileInputStream(sha1File)).trim(); // $codepro.audit.disable closeWhereCreated
+				return sha;
 			}
 		}
-		catch (FileNotFoundException e) // $codepro.audit.disable emptyCatchClause
+		catch (IOException e)
 		{
-			// ignore
+			IdeLog.logInfo(GitPlugin.getDefault(), "Unable to resolve " + ref.ref(), e, IDebugScopes.DEBUG); //$NON-NLS-1$
 		}
 		return ref.ref();
 	}
@@ -2122,6 +2228,8 @@ public class GitRepository
 	 */
 	public void exitWriteProcess()
 	{
+		// Whatever was written may have changed the index or refs the running cat-file processes have read
+		catFilePool.invalidate();
 		try
 		{
 			monitor.writeLock().unlock();
@@ -2298,14 +2406,26 @@ public class GitRepository
 	}
 
 	/**
-	 * Executes "git rev-parse --verify <ref>"
+	 * Resolves a ref (or any other revision) to the sha of the object it names, like "git rev-parse --verify <ref>".
+	 * This is answered by a long running "git cat-file --batch-check" process where possible.
 	 * 
 	 * @param ref
 	 * @return
 	 */
 	public IStatus revParse(String ref)
 	{
-		return execute(GitRepository.ReadWrite.READ, "rev-parse", "--verify", ref); //$NON-NLS-1$ //$NON-NLS-2$
+		List<String> lines = checkObjects(Collections.singletonList(ref));
+		if (lines == null || lines.size() != 1)
+		{
+			return execute(GitRepository.ReadWrite.READ, "rev-parse", "--verify", ref); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		Matcher m = GitCatFile.OBJECT_INFO_PATTERN.matcher(lines.get(0));
+		if (!m.matches())
+		{
+			return new Status(IStatus.ERROR, GitPlugin.getPluginId(), MessageFormat.format(
+					"{0} is not a valid object name", ref)); //$NON-NLS-1$
+		}
+		return new Status(IStatus.OK, GitPlugin.getPluginId(), m.group(1));
 	}
 
 	/**
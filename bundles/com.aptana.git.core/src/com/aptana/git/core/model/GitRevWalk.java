@@ -0,0 +1,457 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.osgi.framework.Version;
+
+import com.aptana.core.logging.IdeLog;
+import com.aptana.core.util.CollectionsUtil;
+import com.aptana.core.util.IOUtil;
+import com.aptana.core.util.StringUtil;
+import com.aptana.git.core.GitPlugin;
+import com.aptana.git.core.IDebugScopes;
+
+/**
+ * A revision walk that is read a page at a time, as the commits are needed (e.g. as the user scrolls down the
+ * history). A single "git log" lists the whole walk, and waits for us to read on in between pages, so a page far down
+ * the history costs no more than the first one. We only hold the repository's read lock while reading; in between,
+ * git keeps listing from the commits it resolved when it started.
+ * <p>
+ * Walks must be {@link #close() closed} once done with, so that git doesn't wait around for us.
+ *
+ * @see GitRevList#startWalk(GitRevSpecifier)
+ */
+public class GitRevWalk
+{
+
+	/**
+	 * Passed as max to read everything that's left.
+	 */
+	public static final int NO_LIMIT = -1;
+
+	private final GitRepository repository;
+	private final GitRevSpecifier rev;
+	private final int skip;
+	private final int max;
+
+	private volatile Process process;
+	private InputStream stream;
+	private boolean useRaw;
+	private boolean showSign;
+
+	/**
+	 * Whether git has listed all the commits, and we've read them.
+	 */
+	private volatile boolean ended;
+
+	/**
+	 * Set when the walk is closed, possibly while another thread is reading.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * @param repository
+	 * @param rev
+	 *            the revision to walk, HEAD if null
+	 * @param skip
+	 *            how many commits to skip from the start of the list
+	 * @param max
+	 *            how many commits the walk lists at most, or {@link #NO_LIMIT}
+	 */
+	GitRevWalk(GitRepository repository, GitRevSpecifier rev, int skip, int max)
+	{
+		this.repository = repository;
+		this.rev = rev;
+		this.skip = skip;
+		this.max = max;
+	}
+
+	/**
+	 * Reads on from where the last read stopped, handing the commits to a consumer in reverse chronological order as
+	 * git lists them, a page at a time. Git is started by the first read.
+	 *
+	 * @param count
+	 *            how many commits to read at most, {@link #NO_LIMIT} for the rest of the walk
+	 * @param pageSize
+	 *            how many commits to hand over at a time
+	 * @param consumer
+	 *            receives each page; stopping the walk closes it
+	 * @param monitor
+	 *            cancelling closes the walk, whatever has already been handed over stays with the consumer
+	 * @return
+	 */
+	public synchronized IStatus read(int count, int pageSize, IGitCommitConsumer consumer, IProgressMonitor monitor)
+	{
+		// If unknown, just use some huge fake number so that some progress is shown...
+		SubMonitor subMonitor = SubMonitor.convert(monitor, (count == NO_LIMIT) ? 100000 : count);
+		if (subMonitor.isCanceled())
+		{
+			close();
+			return Status.CANCEL_STATUS;
+		}
+		if (!hasMore())
+		{
+			return Status.OK_STATUS;
+		}
+
+		if (!repository.enterRead())
+		{
+			// Bail early and report a failure to acquire the lock on the repo
+			return new Status(
+					IStatus.ERROR,
+					GitPlugin.getPluginId(),
+					"Failed to acquire read lock on the git repository. A long-running operation that writes to the repo is running (i.e. pull). Please ensure that has finished before trying again."); //$NON-NLS-1$
+		}
+
+		long start = System.currentTimeMillis();
+		int num = 0;
+		try
+		{
+			if (stream == null)
+			{
+				start();
+			}
+
+			List<GitCommit> page = new ArrayList<GitCommit>(pageSize);
+			while (count == NO_LIMIT || num < count)
+			{
+				if (subMonitor.isCanceled())
+				{
+					close();
+					return Status.CANCEL_STATUS;
+				}
+
+				GitCommit commit = readCommit();
+				if (commit == null)
+				{
+					break;
+				}
+				page.add(commit);
+				num++;
+				subMonitor.worked(1);
+
+				if (page.size() >= pageSize)
+				{
+					if (!consumer.commitsRead(page))
+					{
+						close();
+						return Status.OK_STATUS;
+					}
+					page = new ArrayList<GitCommit>(pageSize);
+				}
+			}
+			if (closed)
+			{
+				// closed by another thread, what we read last may be cut short
+				return Status.CANCEL_STATUS;
+			}
+			if (!page.isEmpty())
+			{
+				consumer.commitsRead(page);
+			}
+
+			long duration = System.currentTimeMillis() - start;
+			logInfo(MessageFormat.format("Loaded {0} commits in {1} ms", num, duration)); //$NON-NLS-1$
+			if (ended)
+			{
+				process.waitFor();
+			}
+		}
+		catch (Exception e)
+		{
+			if (closed)
+			{
+				// git was stopped halfway through a commit
+				return Status.CANCEL_STATUS;
+			}
+			close();
+			return new Status(IStatus.ERROR, GitPlugin.getPluginId(), e.getMessage(), e);
+		}
+		finally
+		{
+			repository.exitRead();
+			subMonitor.done();
+		}
+		return Status.OK_STATUS;
+	}
+
+	/**
+	 * @return whether there may be more commits to read; false once they've all been read or the walk was closed.
+	 */
+	public boolean hasMore()
+	{
+		return !ended && !closed;
+	}
+
+	/**
+	 * Stops git, if it's still listing commits. May be called from any thread, even while reading.
+	 */
+	public void close()
+	{
+		closed = true;
+		Process p = process;
+		if (p != null)
+		{
+			// If we stopped early, git may be blocked writing commits nobody will read
+			p.destroy();
+		}
+	}
+
+	private void start() throws Exception
+	{
+		GitExecutable gitExe = GitExecutable.instance();
+		Version v = gitExe.version();
+		// Git format doesn't support %B until 1.7.3+
+		useRaw = false;
+		if (v.compareTo(Version.parseVersion("1.7.3")) >= 0) //$NON-NLS-1$
+		{
+			useRaw = true;
+		}
+		// We stream the commits as they come, so we don't use --early-output, which lists them over again once done.
+		// @formatter:off
+		List<String> arguments = CollectionsUtil.newList(
+			"log", //$NON-NLS-1$
+			"-z", //$NON-NLS-1$
+			"--topo-order", //$NON-NLS-1$
+			"--children"); //$NON-NLS-1$
+		// @formatter:on
+		if (max > 0)
+		{
+			arguments.add("-" + max); // only last N revs //$NON-NLS-1$
+		}
+		if (skip > 0)
+		{
+			arguments.add("--skip=" + skip); //$NON-NLS-1$
+		}
+
+		String formatString;
+		if (useRaw)
+		{
+			formatString = "--pretty=format:%H\01%e\01%an\01%ae\01%B\01%P\01%at"; //$NON-NLS-1$
+		}
+		else
+		{
+			formatString = "--pretty=format:%H\01%e\01%an\01%ae\01%s\01%b\01%P\01%at"; //$NON-NLS-1$
+		}
+		showSign = ((rev == null) ? false : rev.hasLeftRight());
+		if (showSign)
+		{
+			formatString += "\01%m"; //$NON-NLS-1$
+		}
+		arguments.add(formatString);
+
+		if (rev == null)
+		{
+			arguments.add(GitRepository.HEAD);
+		}
+		else
+		{
+			arguments.addAll(rev.parameters());
+		}
+
+		// FIXME Move this into GitRepository, so we can set up lock/monitor on it!
+		process = gitExe.run(repository.workingDirectory(), arguments.toArray(new String[arguments.size()]));
+		stream = new BufferedInputStream(process.getInputStream());
+		if (closed)
+		{
+			// closed while we were starting git
+			process.destroy();
+		}
+	}
+
+	/**
+	 * @return the next commit git lists, or null once there are no more.
+	 */
+	private GitCommit readCommit() throws IOException
+	{
+		if (ended)
+		{
+			return null;
+		}
+		String sha = getline(stream, '\1');
+		if (sha == null)
+		{
+			ended = true;
+			return null;
+		}
+
+		String encoding = getline(stream, '\1', IOUtil.UTF_8);
+		GitCommit newCommit = new GitCommit(repository, sha);
+
+		String author = getline(stream, '\1', encoding);
+		String authorEmail = getline(stream, '\1', encoding);
+
+		String subject;
+		String body;
+		if (useRaw)
+		{
+			body = getline(stream, '\1', encoding);
+			subject = StringUtil.LINE_SPLITTER.split(body)[0];
+		}
+		else
+		{
+			subject = getline(stream, '\1', encoding);
+			body = getline(stream, '\1', encoding);
+		}
+
+		String parentString = getline(stream, '\1');
+		if (parentString != null && parentString.length() != 0)
+		{
+			if (((parentString.length() + 1) % 41) != 0)
+			{
+				IdeLog.logError(GitPlugin.getDefault(), MessageFormat.format("invalid parents: {0}", //$NON-NLS-1$
+						parentString.length()), IDebugScopes.DEBUG);
+			}
+			else
+			{
+				int nParents = (parentString.length() + 1) / 41;
+				List<String> parents = new ArrayList<String>(nParents);
+				for (int parentIndex = 0; parentIndex < nParents; ++parentIndex)
+				{
+					int stringIndex = parentIndex * 41;
+					parents.add(parentString.substring(stringIndex, stringIndex + 40));
+				}
+
+				newCommit.setParents(parents);
+			}
+		}
+
+		long time = readLong(stream); // read 10 chars as a string and parse into a long
+
+		newCommit.setSubject(subject);
+		newCommit.setComment(body);
+		newCommit.setAuthor(author);
+		newCommit.setAuthorEmail(authorEmail);
+		newCommit.setTimestamp(time);
+
+		if (showSign)
+		{
+			stream.read(); // Remove separator
+			char c = (char) stream.read();
+			if (c != '>' && c != '<' && c != '^' && c != '-')
+			{
+				IdeLog.logError(GitPlugin.getDefault(),
+						"Error loading commits: sign not correct", IDebugScopes.DEBUG); //$NON-NLS-1$
+				// newCommit.setSign(c);
+			}
+		}
+
+		int read = stream.read();
+		if (read == -1)
+		{
+			// commits are separated by a NUL, so this was the last one
+			ended = true;
+		}
+		else if (read != 0)
+		{
+			IdeLog.logError(GitPlugin.getDefault(), "Error", IDebugScopes.DEBUG); //$NON-NLS-1$
+		}
+		return newCommit;
+	}
+
+	private void logInfo(String string)
+	{
+		if (GitPlugin.getDefault() != null)
+		{
+			IdeLog.logInfo(GitPlugin.getDefault(), string);
+		}
+		else
+		{
+			System.out.println(string);
+		}
+	}
+
+	private long readLong(InputStream stream)
+	{
+		StringBuilder builder = new StringBuilder();
+		while (true)
+		{
+			try
+			{
+				int read = stream.read();
+				if (read == -1)
+				{
+					break;
+				}
+				builder.append((char) read);
+				if (builder.length() == 10)
+				{
+					break;
+				}
+			}
+			catch (IOException e)
+			{
+				break;
+			}
+		}
+		// Since we get time in seconds since epoch, not ms we need to multiply by 1000
+		long time = Long.parseLong(builder.toString()) * 1000;
+		// HACK for some reason my times are 5 minutes off the console/GitX. Adjust 5 mins
+		return time + (5 * 60 * 1000);
+	}
+
+	private String getline(InputStream stream, char c)
+	{
+		byte[] bytes = read(stream, c);
+		if (bytes == null || bytes.length == 0)
+		{
+			return null;
+		}
+		return new String(bytes);
+	}
+
+	private String getline(InputStream stream, char c, String encoding) throws UnsupportedEncodingException
+	{
+		if (encoding == null || encoding.length() == 0)
+		{
+			return getline(stream, c);
+		}
+		byte[] bytes = read(stream, c);
+		return new String(bytes, encoding);
+	}
+
+	private byte[] read(InputStream stream, char c)
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		while (true)
+		{
+			try
+			{
+				int read = stream.read();
+				if (read == -1)
+				{
+					break;
+				}
+				char readC = (char) read;
+				if (readC == c)
+				{
+					break;
+				}
+				out.write(read);
+			}
+			catch (IOException e)
+			{
+				break;
+			}
+		}
+		return out.toByteArray();
+	}
+}
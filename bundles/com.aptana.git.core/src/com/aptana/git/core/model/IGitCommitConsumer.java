@@ -0,0 +1,30 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import java.util.List;
+
+/**
+ * Receives the commits of a revision walk a page at a time, while git is still producing the rest.
+ * 
+ * @see GitRevList#walkRevisionListWithSpecifier(GitRevSpecifier, int, int, int, IGitCommitConsumer,
+ *      org.eclipse.core.runtime.IProgressMonitor)
+ * @see GitRevWalk#read(int, int, IGitCommitConsumer, org.eclipse.core.runtime.IProgressMonitor)
+ */
+public interface IGitCommitConsumer
+{
+
+	/**
+	 * A page of commits has been read. Called on the thread running the walk.
+	 *
+	 * @param commits
+	 *            the next commits, in reverse chronological order. The list belongs to the consumer.
+	 * @return whether to keep walking; false stops the walk after this page.
+	 */
+	public boolean commitsRead(List<GitCommit> commits);
+}
@@ -8,6 +8,7 @@
 package com.aptana.git.ui.internal.history;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -46,10 +47,21 @@ import com.aptana.git.core.model.GitRef;
 class CommitGraphTable extends TableViewer
 {
 
+	/**
+	 * How close (in rows) to the end of the loaded commits the user may scroll before we ask for more.
+	 */
+	private static final int LOAD_MORE_THRESHOLD = 100;
+
 	private BranchPainter renderer;
+	private GitGrapher grapher;
 	private Map<GitCommit, GraphCellInfo> decorations;
 	private List<GitCommit> commits;
 
+	/**
+	 * Loads the commits following those we have, or null if there are no more.
+	 */
+	private Runnable loadMore;
+
 	CommitGraphTable(Composite parent)
 	{
 		super(parent, SWT.MULTI | SWT.H_SCROLL | SWT.V_SCROLL | SWT.BORDER | SWT.FULL_SELECTION | SWT.VIRTUAL);
@@ -102,21 +114,57 @@ class CommitGraphTable extends TableViewer
 				TableItem item = (TableItem) event.item;
 				int index = table.indexOf(item);
 				item.setData(commits.get(index));
+				// Items are only filled in as they're shown, so the user is scrolling towards the end
+				if (loadMore != null && index >= commits.size() - LOAD_MORE_THRESHOLD)
+				{
+					Runnable runnable = loadMore;
+					loadMore = null;
+					runnable.run();
+				}
 			}
 		});
 	}
 
 	void setCommits(final List<GitCommit> commits)
 	{
-		this.commits = commits;
-		decorations = new GitGrapher().decorateCommits(commits);
-		setInput(commits);
+		this.commits = new ArrayList<GitCommit>(commits);
+		this.loadMore = null;
+		grapher = new GitGrapher();
+		decorations = grapher.decorateCommits(commits);
+		setInput(this.commits);
 		if (!commits.isEmpty())
 		{
 			setSelection(new StructuredSelection(commits.get(0)));
 		}
 	}
 
+	/**
+	 * Appends commits following those already shown.
+	 * 
+	 * @param moreCommits
+	 */
+	void addCommits(List<GitCommit> moreCommits)
+	{
+		if (commits == null)
+		{
+			setCommits(moreCommits);
+			return;
+		}
+		commits.addAll(moreCommits);
+		decorations.putAll(grapher.decorateMoreCommits(moreCommits));
+		add(moreCommits.toArray());
+	}
+
+	/**
+	 * @param loadMore
+	 *            run (once, on the UI thread) when the user scrolls near the end of the commits shown, to load the
+	 *            ones that follow. null if there are no more.
+	 */
+	void setLoadMore(Runnable loadMore)
+	{
+		this.loadMore = loadMore;
+	}
+
 	/**
 	 * Tell SWT that we'll be painting the first column.
 	 * 
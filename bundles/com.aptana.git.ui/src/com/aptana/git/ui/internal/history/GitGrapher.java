@@ -47,6 +47,18 @@ class GitGrapher
 	Map<GitCommit, GraphCellInfo> decorateCommits(List<GitCommit> commits)
 	{
 		GitLane.resetColors();
+		return decorateMoreCommits(commits);
+	}
+
+	/**
+	 * Carries on from the commits decorated so far, so a long history can be decorated as it's loaded.
+	 * 
+	 * @param commits
+	 *            the commits following those already decorated, in the same order.
+	 * @return
+	 */
+	Map<GitCommit, GraphCellInfo> decorateMoreCommits(List<GitCommit> commits)
+	{
 		Map<GitCommit, GraphCellInfo> decorations = new HashMap<GitCommit, GraphCellInfo>();
 		for (GitCommit commit : commits)
 		{
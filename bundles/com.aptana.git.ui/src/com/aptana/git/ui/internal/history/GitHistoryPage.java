@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -60,7 +61,9 @@ import com.aptana.git.core.IDebugScopes;
 import com.aptana.git.core.model.GitCommit;
 import com.aptana.git.core.model.GitRepository;
 import com.aptana.git.core.model.GitRevList;
+import com.aptana.git.core.model.GitRevWalk;
 import com.aptana.git.core.model.GitRevSpecifier;
+import com.aptana.git.core.model.IGitCommitConsumer;
 import com.aptana.git.core.model.IGitRepositoryManager;
 import com.aptana.git.ui.GitUIPlugin;
 import com.aptana.ui.util.UIUtils;
@@ -70,6 +73,16 @@ public class GitHistoryPage extends HistoryPage
 
 	private static final String POPUP_MENU_ID = "com.aptana.git.ui.git_history"; //$NON-NLS-1$
 
+	/**
+	 * How many commits we load at a time. More are loaded as the user scrolls down to them.
+	 */
+	private static final int HISTORY_PAGE_SIZE = 500;
+
+	/**
+	 * How many commits we read before showing them.
+	 */
+	private static final int UPDATE_PAGE_SIZE = 100;
+
 	private static final SimpleDateFormat TIMESTAMP_FORMAT = new SimpleDateFormat(Messages.GitHistoryPage_DateFormat);
 
 	private Composite ourControl;
@@ -80,6 +93,17 @@ public class GitHistoryPage extends HistoryPage
 	private CommitFileDiffViewer fileViewer;
 	private String currentRef;
 
+	/**
+	 * Incremented whenever we start loading history anew, so that pages still being loaded for a previous load are
+	 * dropped. Only changed on the UI thread.
+	 */
+	private volatile int historyGeneration;
+
+	/**
+	 * The walk of the history shown, while git may have more commits for us. Only used on the UI thread.
+	 */
+	private GitRevWalk historyWalk;
+
 	@Override
 	public boolean inputSet()
 	{
@@ -117,19 +141,72 @@ public class GitHistoryPage extends HistoryPage
 	private void loadHistory(final IResource resource, final String ref)
 	{
 		currentRef = ref;
-		Job job = new Job(Messages.GitHistoryPage_GeneratingHistoryJob_title)
+		closeHistoryWalk();
+		schedule(new LoadHistoryJob(resource, ref, ++historyGeneration, null));
+	}
+
+	/**
+	 * Stops the git process listing the history shown, if there's one waiting for us to load more.
+	 */
+	private void closeHistoryWalk()
+	{
+		if (historyWalk != null)
 		{
-			@Override
-			protected IStatus run(IProgressMonitor monitor)
+			historyWalk.close();
+			historyWalk = null;
+		}
+	}
+
+	@Override
+	public void dispose()
+	{
+		closeHistoryWalk();
+		super.dispose();
+	}
+
+	/**
+	 * Loads a page of history, handing commits to the table as they're read.
+	 */
+	private class LoadHistoryJob extends Job
+	{
+		private final IResource resource;
+		private final String ref;
+		private final int generation;
+		private final GitRevWalk walk;
+
+		/**
+		 * @param resource
+		 * @param ref
+		 * @param generation
+		 *            the load this page belongs to; pages of earlier loads are dropped
+		 * @param walk
+		 *            the walk to read on from, null to start a new one for the first page
+		 */
+		LoadHistoryJob(IResource resource, String ref, int generation, GitRevWalk walk)
+		{
+			super(Messages.GitHistoryPage_GeneratingHistoryJob_title);
+			this.resource = resource;
+			this.ref = ref;
+			this.generation = generation;
+			this.walk = walk;
+			setUser(walk == null);
+			setPriority(Job.SHORT);
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor)
+		{
+			SubMonitor subMonitor = SubMonitor.convert(monitor, 100);
+			final boolean firstPage = (walk == null);
+			GitRevWalk pageWalk = walk;
+			if (firstPage)
 			{
-				SubMonitor subMonitor = SubMonitor.convert(monitor, 100);
 				// Generate the commit list and set the components up with it!
 				GitRepository repo = getGitRepositoryManager().getAttached(resource.getProject());
 				if (repo == null)
 				{
 					return Status.OK_STATUS;
 				}
-				GitRevList revList = new GitRevList(repo);
 				// Need the repo relative path
 				IPath resourcePath = repo.relativePath(resource);
 				if (subMonitor.isCanceled())
@@ -137,7 +214,6 @@ public class GitHistoryPage extends HistoryPage
 					return Status.CANCEL_STATUS;
 				}
 				repo.lazyReload();
-				subMonitor.worked(5);
 				GitRevSpecifier rev;
 				if (resourcePath.isEmpty())
 				{
@@ -147,31 +223,93 @@ public class GitHistoryPage extends HistoryPage
 				{
 					rev = new GitRevSpecifier(ref, "--", resourcePath.toOSString()); //$NON-NLS-1$
 				}
-				IStatus result = revList.walkRevisionListWithSpecifier(rev, subMonitor.newChild(95));
-				if (result != null && result.isOK())
+				// git lists the whole history once; we read it a page at a time as the user scrolls down
+				pageWalk = new GitRevList(repo).startWalk(rev);
+			}
+			subMonitor.worked(5);
+
+			// Show the first commits as soon as we have them, then add to them as we go
+			final int[] loaded = new int[1];
+			IStatus result = pageWalk.read(HISTORY_PAGE_SIZE, UPDATE_PAGE_SIZE, new IGitCommitConsumer()
+			{
+				public boolean commitsRead(List<GitCommit> commits)
+				{
+					showCommits(commits, firstPage && loaded[0] == 0, null);
+					loaded[0] += commits.size();
+					return generation == historyGeneration;
+				}
+			}, subMonitor.newChild(95));
+			if (result != null && result.isOK())
+			{
+				if (firstPage && loaded[0] == 0)
 				{
-					final List<GitCommit> commits = revList.getCommits();
-					Display.getDefault().asyncExec(new Runnable()
-					{
+					// Empty history, clear what was shown before
+					showCommits(Collections.<GitCommit> emptyList(), true, null);
+				}
+				else if (pageWalk.hasMore())
+				{
+					// There may be more, load them once the user scrolls down to them
+					showCommits(Collections.<GitCommit> emptyList(), false, new LoadHistoryJob(resource, ref,
+							generation, pageWalk));
+				}
+			}
+			else
+			{
+				pageWalk.close();
+			}
+			subMonitor.done();
+			return result;
+		}
 
-						public void run()
+		/**
+		 * @param commits
+		 * @param first
+		 *            whether these replace the commits shown
+		 * @param nextPage
+		 *            the job to load the commits that follow, if there are any
+		 */
+		private void showCommits(final List<GitCommit> commits, final boolean first, final LoadHistoryJob nextPage)
+		{
+			Display.getDefault().asyncExec(new Runnable()
+			{
+
+				public void run()
+				{
+					if (generation != historyGeneration || graph.getControl().isDisposed())
+					{
+						if (nextPage != null)
+						{
+							nextPage.walk.close();
+						}
+						return;
+					}
+					if (first)
+					{
+						graph.setCommits(commits);
+					}
+					else
+					{
+						graph.addCommits(commits);
+					}
+					if (nextPage != null)
+					{
+						historyWalk = nextPage.walk;
+						graph.setLoadMore(new Runnable()
 						{
-							graph.setCommits(commits);
-							if (getControl() != null && !getControl().isDisposed())
+							public void run()
 							{
-								getSite().getPage().activate((IWorkbenchPart) getHistoryView());
-								((IViewPart) getHistoryView()).getViewSite().getActionBars().updateActionBars();
+								GitHistoryPage.this.schedule(nextPage);
 							}
-						}
-					});
+						});
+					}
+					if (first && getControl() != null && !getControl().isDisposed())
+					{
+						getSite().getPage().activate((IWorkbenchPart) getHistoryView());
+						((IViewPart) getHistoryView()).getViewSite().getActionBars().updateActionBars();
+					}
 				}
-				subMonitor.done();
-				return result;
-			}
-		};
-		job.setUser(true);
-		job.setPriority(Job.SHORT);
-		schedule(job);
+			});
+		}
 	}
 
 	private IGitRepositoryManager getGitRepositoryManager()
@@ -0,0 +1,414 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.index.core;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.aptana.jetty.util.epl.ajax.JSON;
+import com.aptana.jetty.util.epl.ajax.JSON.Convertible;
+import com.aptana.jetty.util.epl.ajax.JSON.Output;
+
+/**
+ * A compact, tagged encoding of {@link Convertible} elements for use in index words. It is a drop-in replacement for
+ * JSON: elements write themselves through {@link Convertible#toJSON(Output)} and are read back with
+ * {@link Convertible#fromJSON(Map)}, from the same Maps, Object arrays, Longs, Doubles, Booleans and Strings that
+ * {@link JSON#parse(String)} returns. Decoding is a single pass over the characters, with no tokenizing, unescaping or
+ * number parsing, and property names are written once per value and shared after that.
+ * <p>
+ * Every value starts with a tag character. Lengths, counts and numbers are written as variable length integers in six
+ * bit groups. All groups but the last are mapped to characters 0x40-0x7F and the last one to 0x01-0x3F, so they take a
+ * single byte each in the index file and never contain the '\0' column delimiter. Strings are written as a length
+ * followed by the raw characters.
+ */
+public final class ElementSerializer
+{
+	/**
+	 * The first character of every encoded value. Anything else is assumed to be JSON written by an older version.
+	 */
+	private static final char MARKER = '\u0001';
+
+	private static final char NULL = 'n';
+	private static final char TRUE = 't';
+	private static final char FALSE = 'f';
+	private static final char LONG = 'l';
+	private static final char DOUBLE = 'd';
+	private static final char STRING = 's';
+	private static final char ARRAY = 'a';
+	private static final char OBJECT = 'o';
+
+	private static final int GROUP_BITS = 6;
+	private static final int GROUP_MASK = (1 << GROUP_BITS) - 1;
+	private static final char LAST_GROUP = 0x01;
+	private static final char MORE_GROUPS = 0x80 - (1 << GROUP_BITS);
+	// the last group ends right below the other groups, so it holds one value less than a full group
+	private static final int LAST_GROUP_MAX = MORE_GROUPS - LAST_GROUP - 1;
+
+	private ElementSerializer()
+	{
+	}
+
+	/**
+	 * Encodes the specified object, typically a {@link Convertible}, to a string.
+	 * 
+	 * @param object
+	 * @return
+	 */
+	public static String serialize(Object object)
+	{
+		Writer writer = new Writer();
+
+		writer.buffer.append(MARKER);
+		writer.writeValue(object);
+
+		return writer.buffer.toString();
+	}
+
+	/**
+	 * Decodes a value written by {@link #serialize(Object)}. Values that were written as JSON are parsed as JSON.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public static Object deserialize(String value)
+	{
+		return deserialize(value, 0);
+	}
+
+	/**
+	 * Decodes a value written by {@link #serialize(Object)}, which starts at the specified offset and runs to the end of
+	 * the string. This avoids copying the value out of a larger index word.
+	 * 
+	 * @param value
+	 * @param offset
+	 * @return
+	 */
+	public static Object deserialize(String value, int offset)
+	{
+		if (value == null || offset >= value.length())
+		{
+			return null;
+		}
+		if (value.charAt(offset) != MARKER)
+		{
+			return JSON.parse(value.substring(offset));
+		}
+
+		Reader reader = new Reader(value, offset + 1);
+
+		return reader.readValue();
+	}
+
+	/**
+	 * appendUnsigned
+	 * 
+	 * @param buffer
+	 * @param value
+	 */
+	private static void appendUnsigned(StringBuilder buffer, long value)
+	{
+		while (value < 0 || value > LAST_GROUP_MAX)
+		{
+			buffer.append((char) (MORE_GROUPS + (value & GROUP_MASK)));
+			value >>>= GROUP_BITS;
+		}
+		buffer.append((char) (LAST_GROUP + value));
+	}
+
+	/**
+	 * Writer
+	 */
+	private static class Writer implements Output
+	{
+		private final StringBuilder buffer = new StringBuilder(128);
+		private final Map<String, Integer> names = new HashMap<String, Integer>();
+
+		// the number of properties written to the current object so far
+		private int propertyCount;
+
+		public void add(Object obj)
+		{
+			// a Convertible that writes a single value rather than properties; the value replaces the object tag
+			buffer.deleteCharAt(buffer.length() - 1);
+			writeValue(obj);
+			propertyCount = -1;
+		}
+
+		public void add(String name, boolean value)
+		{
+			writeName(name);
+			buffer.append(value ? TRUE : FALSE);
+		}
+
+		public void add(String name, double value)
+		{
+			writeName(name);
+			writeDouble(value);
+		}
+
+		public void add(String name, long value)
+		{
+			writeName(name);
+			writeLong(value);
+		}
+
+		public void add(String name, Object value)
+		{
+			writeName(name);
+			writeValue(value);
+		}
+
+		@SuppressWarnings("rawtypes")
+		public void addClass(Class c)
+		{
+			add("class", c.getName()); //$NON-NLS-1$
+		}
+
+		private void writeConvertible(Convertible convertible)
+		{
+			// the property count isn't known up front, so write the properties to the end of the buffer and insert
+			// the count in front of them afterwards
+			int savedCount = propertyCount;
+			buffer.append(OBJECT);
+			int start = buffer.length();
+
+			propertyCount = 0;
+			convertible.toJSON(this);
+
+			if (propertyCount >= 0)
+			{
+				StringBuilder count = new StringBuilder(2);
+				appendUnsigned(count, propertyCount);
+				buffer.insert(start, count);
+			}
+			propertyCount = savedCount;
+		}
+
+		private void writeDouble(double value)
+		{
+			buffer.append(DOUBLE);
+			writeUnsigned(Double.doubleToLongBits(value));
+		}
+
+		private void writeLong(long value)
+		{
+			buffer.append(LONG);
+			// zig-zag so small negative numbers stay short
+			writeUnsigned((value << 1) ^ (value >> 63));
+		}
+
+		@SuppressWarnings("rawtypes")
+		private void writeMap(Map map)
+		{
+			buffer.append(OBJECT);
+			writeUnsigned(map.size());
+
+			int savedCount = propertyCount;
+			for (Object entry : map.entrySet())
+			{
+				Map.Entry e = (Map.Entry) entry;
+				writeName(String.valueOf(e.getKey()));
+				writeValue(e.getValue());
+			}
+			propertyCount = savedCount;
+		}
+
+		private void writeName(String name)
+		{
+			Integer id = names.get(name);
+
+			if (id == null)
+			{
+				names.put(name, names.size() + 1);
+				writeUnsigned(0);
+				writeString(name);
+			}
+			else
+			{
+				writeUnsigned(id);
+			}
+			propertyCount++;
+		}
+
+		private void writeString(String value)
+		{
+			writeUnsigned(value.length());
+			buffer.append(value);
+		}
+
+		private void writeUnsigned(long value)
+		{
+			appendUnsigned(buffer, value);
+		}
+
+		@SuppressWarnings("rawtypes")
+		private void writeValue(Object value)
+		{
+			if (value == null)
+			{
+				buffer.append(NULL);
+			}
+			else if (value instanceof String)
+			{
+				buffer.append(STRING);
+				writeString((String) value);
+			}
+			else if (value instanceof Boolean)
+			{
+				buffer.append(((Boolean) value).booleanValue() ? TRUE : FALSE);
+			}
+			else if (value instanceof Convertible)
+			{
+				writeConvertible((Convertible) value);
+			}
+			else if (value instanceof Map)
+			{
+				writeMap((Map) value);
+			}
+			else if (value instanceof Collection)
+			{
+				Collection collection = (Collection) value;
+
+				buffer.append(ARRAY);
+				writeUnsigned(collection.size());
+				for (Object item : collection)
+				{
+					writeValue(item);
+				}
+			}
+			else if (value.getClass().isArray())
+			{
+				int length = Array.getLength(value);
+
+				buffer.append(ARRAY);
+				writeUnsigned(length);
+				for (int i = 0; i < length; i++)
+				{
+					writeValue(Array.get(value, i));
+				}
+			}
+			else if (value instanceof Double || value instanceof Float)
+			{
+				writeDouble(((Number) value).doubleValue());
+			}
+			else if (value instanceof Number)
+			{
+				writeLong(((Number) value).longValue());
+			}
+			else
+			{
+				buffer.append(STRING);
+				writeString(value.toString());
+			}
+		}
+	}
+
+	/**
+	 * Reader
+	 */
+	private static class Reader
+	{
+		private final String value;
+		private int offset;
+		private final List<String> names = new ArrayList<String>();
+
+		private Reader(String value, int offset)
+		{
+			this.value = value;
+			this.offset = offset;
+		}
+
+		private Object readValue()
+		{
+			char tag = value.charAt(offset++);
+
+			switch (tag)
+			{
+				case NULL:
+					return null;
+
+				case TRUE:
+					return Boolean.TRUE;
+
+				case FALSE:
+					return Boolean.FALSE;
+
+				case LONG:
+					long zigZag = readUnsigned();
+					return Long.valueOf((zigZag >>> 1) ^ -(zigZag & 1));
+
+				case DOUBLE:
+					return Double.valueOf(Double.longBitsToDouble(readUnsigned()));
+
+				case STRING:
+					return readString();
+
+				case ARRAY:
+					Object[] array = new Object[(int) readUnsigned()];
+					for (int i = 0; i < array.length; i++)
+					{
+						array[i] = readValue();
+					}
+					return array;
+
+				case OBJECT:
+					int count = (int) readUnsigned();
+					Map<String, Object> object = new HashMap<String, Object>(count * 4 / 3 + 1);
+					for (int i = 0; i < count; i++)
+					{
+						int id = (int) readUnsigned();
+						String name;
+
+						if (id == 0)
+						{
+							name = readString();
+							names.add(name);
+						}
+						else
+						{
+							name = names.get(id - 1);
+						}
+						object.put(name, readValue());
+					}
+					return object;
+
+				default:
+					throw new IllegalArgumentException("Unexpected tag '" + tag + "' at offset " + (offset - 1)); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+
+		private String readString()
+		{
+			int length = (int) readUnsigned();
+			String result = value.substring(offset, offset + length);
+
+			offset += length;
+
+			return result;
+		}
+
+		private long readUnsigned()
+		{
+			long result = 0;
+			int shift = 0;
+			char c;
+
+			while ((c = value.charAt(offset++)) >= MORE_GROUPS)
+			{
+				result |= ((long) (c - MORE_GROUPS)) << shift;
+				shift += GROUP_BITS;
+			}
+
+			return result | (((long) (c - LAST_GROUP)) << shift);
+		}
+	}
+}
@@ -12,15 +12,16 @@ import java.io.IOException;
 import java.net.URI;
 import java.text.MessageFormat;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
 import java.util.zip.CRC32;
 
 import org.eclipse.core.runtime.IPath;
@@ -28,113 +29,18 @@ import org.eclipse.core.runtime.IPath;
 import com.aptana.core.logging.IdeLog;
 import com.aptana.internal.index.core.DiskIndex;
 import com.aptana.internal.index.core.MemoryIndex;
+import com.aptana.internal.index.core.PatternCache;
 
 public class Index
 {
 	private static final int MATCH_RULE_INDEX_MASK = SearchPattern.EXACT_MATCH | SearchPattern.PREFIX_MATCH
 			| SearchPattern.PATTERN_MATCH | SearchPattern.CASE_SENSITIVE | SearchPattern.REGEX_MATCH;
-	private static final Map<String, Pattern> PATTERNS = new HashMap<String, Pattern>();
+	// compiled PATTERN_MATCH and REGEX_MATCH patterns, shared by all indexes and kept across queries
+	private static final int MAX_CACHED_PATTERNS = 512;
+	private static final PatternCache PATTERNS = new PatternCache(MAX_CACHED_PATTERNS);
 	// Separator to use after the container path
 	public static final char DEFAULT_SEPARATOR = '/';
 
-	/**
-	 * appendAsRegEx
-	 * 
-	 * @param pattern
-	 * @param buffer
-	 * @return
-	 */
-	private static StringBuffer appendAsRegEx(String pattern, StringBuffer buffer)
-	{
-		boolean isEscaped = false;
-
-		for (int i = 0; i < pattern.length(); i++)
-		{
-			char c = pattern.charAt(i);
-
-			switch (c)
-			{
-			// the backslash
-				case '\\':
-					// the backslash is escape char in string matcher
-					if (!isEscaped)
-					{
-						isEscaped = true;
-					}
-					else
-					{
-						buffer.append("\\\\"); //$NON-NLS-1$
-						isEscaped = false;
-					}
-					break;
-
-				// characters that need to be escaped in the regex.
-				case '(':
-				case ')':
-				case '{':
-				case '}':
-				case '.':
-				case '[':
-				case ']':
-				case '$':
-				case '^':
-				case '+':
-				case '|':
-					if (isEscaped)
-					{
-						buffer.append("\\\\"); //$NON-NLS-1$
-						isEscaped = false;
-					}
-					buffer.append('\\');
-					buffer.append(c);
-					break;
-
-				case '?':
-					if (!isEscaped)
-					{
-						buffer.append('.');
-					}
-					else
-					{
-						buffer.append('\\');
-						buffer.append(c);
-						isEscaped = false;
-					}
-					break;
-
-				case '*':
-					if (!isEscaped)
-					{
-						buffer.append(".*"); //$NON-NLS-1$
-					}
-					else
-					{
-						buffer.append('\\');
-						buffer.append(c);
-						isEscaped = false;
-					}
-					break;
-
-				default:
-					if (isEscaped)
-					{
-						buffer.append("\\\\"); //$NON-NLS-1$
-						isEscaped = false;
-					}
-					buffer.append(c);
-					break;
-			}
-		}
-
-		if (isEscaped)
-		{
-			buffer.append("\\\\"); //$NON-NLS-1$
-			isEscaped = false;
-		}
-
-		return buffer;
-	}
-
 	/**
 	 * computeIndexLocation
 	 * 
@@ -215,17 +121,6 @@ public class Index
 		return false;
 	}
 
-	/**
-	 * isWordChar
-	 * 
-	 * @param c
-	 * @return
-	 */
-	private static boolean isWordChar(char c)
-	{
-		return Character.isLetterOrDigit(c);
-	}
-
 	/**
 	 * patternMatch
 	 * 
@@ -240,35 +135,7 @@ public class Index
 			return true;
 		}
 
-		// see if we've cached a regex for this pattern already
-		Pattern p = PATTERNS.get(pattern);
-
-		// nope, so try and create one
-		if (p == null)
-		{
-			int len = pattern.length();
-			StringBuffer buffer = new StringBuffer(len + 10);
-
-			if (len > 0 && isWordChar(pattern.charAt(0)))
-			{
-				buffer.append("\\b"); //$NON-NLS-1$
-			}
-
-			appendAsRegEx(pattern, buffer);
-
-			if (len > 0 && isWordChar(pattern.charAt(len - 1)))
-			{
-				buffer.append("\\b"); //$NON-NLS-1$
-			}
-
-			String regex = buffer.toString();
-
-			p = Pattern.compile(regex);
-
-			PATTERNS.put(pattern, p);
-		}
-
-		return (p != null) ? p.matcher(word).find() : false;
+		return PATTERNS.getGlobMatcher(pattern).matches(word);
 	}
 
 	/**
@@ -280,31 +147,23 @@ public class Index
 	 */
 	private static boolean regexPatternMatch(String regex, String word, boolean caseSensitive)
 	{
-		Pattern pattern = PATTERNS.get(regex);
-
-		if (pattern == null)
-		{
-			try
-			{
-				// compile the pattern
-				pattern = (caseSensitive) ? Pattern.compile(regex) : Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
-
-				// cache for later
-				PATTERNS.put(regex, pattern);
-			}
-			catch (PatternSyntaxException e)
-			{
-			}
-		}
-
-		return (pattern != null) ? pattern.matcher(word).find() : false;
+		return PATTERNS.getRegexMatcher(regex, caseSensitive).matches(word);
 	}
 
 	private MemoryIndex memoryIndex;
 	private DiskIndex diskIndex;
+	/**
+	 * The read lock is shared by queries and by the writers of the memory index, which is itself thread-safe. The write
+	 * lock is only taken to merge the memory index to disk, or to swap out the memory or disk index.
+	 */
 	ReadWriteLock monitor;
 	private URI containerURI;
 
+	private final AtomicLong readLockAcquisitions = new AtomicLong();
+	private final AtomicLong readLockContentions = new AtomicLong();
+	private final AtomicLong readLockWaitNanos = new AtomicLong();
+	private final AtomicLong modificationCount = new AtomicLong();
+
 	/**
 	 * Index
 	 * 
@@ -348,17 +207,30 @@ public class Index
 	 */
 	public void addEntry(String category, String key, URI containerRelativeURI)
 	{
-		this.enterWrite();
+		// the memory index is concurrent, so adding entries only has to keep it from being merged or swapped out
+		this.enterRead();
 		try
 		{
 			this.memoryIndex.addEntry(category, key, containerRelativeURI.toString());
+			this.modificationCount.incrementAndGet();
 		}
 		finally
 		{
-			this.exitWrite();
+			this.exitRead();
 		}
 	}
 
+	/**
+	 * Returns how many times the content of the index has changed. Callers caching query results can compare the
+	 * count taken before the query to the current one, to tell whether the results may be out of date.
+	 * 
+	 * @return
+	 */
+	public long getModificationCount()
+	{
+		return this.modificationCount.get();
+	}
+
 	/**
 	 * deleteIndexFile
 	 */
@@ -374,6 +246,7 @@ public class Index
 		File indexFile = this.getIndexFile();
 		if (indexFile != null && indexFile.exists())
 		{
+			this.diskIndex.close();
 			indexFile.delete();
 		}
 	}
@@ -389,16 +262,83 @@ public class Index
 	}
 
 	/**
-	 * Blocks to acquire the read lock.
+	 * Blocks to acquire the read lock. Keeps track of how often, and for how long, we had to wait for it.
 	 */
 	private void enterRead()
 	{
 		if (this.monitor != null)
 		{
-			this.monitor.readLock().lock();
+			readLockAcquisitions.incrementAndGet();
+			if (!this.monitor.readLock().tryLock())
+			{
+				long start = System.nanoTime();
+				this.monitor.readLock().lock();
+				readLockWaitNanos.addAndGet(System.nanoTime() - start);
+				readLockContentions.incrementAndGet();
+			}
 		}
 	}
 
+	/**
+	 * Returns the number of times the read lock was acquired.
+	 * 
+	 * @return
+	 */
+	public long getReadLockAcquisitions()
+	{
+		return readLockAcquisitions.get();
+	}
+
+	/**
+	 * Returns the number of times the read lock could not be acquired right away, because the index was being saved.
+	 * 
+	 * @return
+	 */
+	public long getReadLockContentions()
+	{
+		return readLockContentions.get();
+	}
+
+	/**
+	 * Returns the total time spent waiting for the read lock, in milliseconds.
+	 * 
+	 * @return
+	 */
+	public long getReadLockWaitTime()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(readLockWaitNanos.get());
+	}
+
+	/**
+	 * Returns the number of pattern and regex matches that reused an already compiled pattern.
+	 * 
+	 * @return
+	 */
+	public static long getPatternCacheHits()
+	{
+		return PATTERNS.getHits();
+	}
+
+	/**
+	 * Returns the number of pattern and regex matches that had to compile their pattern.
+	 * 
+	 * @return
+	 */
+	public static long getPatternCacheMisses()
+	{
+		return PATTERNS.getMisses();
+	}
+
+	/**
+	 * Returns the number of compiled patterns dropped to keep the pattern cache within its bounds.
+	 * 
+	 * @return
+	 */
+	public static long getPatternCacheEvictions()
+	{
+		return PATTERNS.getEvictions();
+	}
+
 	/**
 	 * Blocks to acquire the write lock
 	 */
@@ -419,7 +359,8 @@ public class Index
 	}
 
 	/**
-	 * This method does not guarantee that it will acquire the write lock. A boolean is returned indicating success.
+	 * This method does not guarantee that it will acquire the write lock. A boolean is returned indicating success. If
+	 * the write lock could not be acquired, the read lock is held again on return.
 	 * 
 	 * @return
 	 */
@@ -431,6 +372,12 @@ public class Index
 		{
 			monitor.readLock().unlock();
 			result = monitor.writeLock().tryLock();
+
+			if (!result)
+			{
+				// entries are added under the read lock, so other readers are common; don't leave the caller unlocked
+				enterRead();
+			}
 		}
 
 		return result;
@@ -517,6 +464,39 @@ public class Index
 	 * @throws IOException
 	 */
 	public List<QueryResult> query(String[] categories, String key, int matchRule)
+	{
+		return query(categories, new String[] { key }, matchRule);
+	}
+
+	/**
+	 * Returns the words in the categories that match any of the keys. Case sensitive exact and prefix matches seek to
+	 * each key in the sorted index, so looking up the members of every type in a hierarchy costs one seek per type
+	 * rather than a scan of the whole category.
+	 * 
+	 * @param categories
+	 * @param keys
+	 * @param matchRule
+	 * @return
+	 */
+	public List<QueryResult> queryAny(String[] categories, Collection<String> keys, int matchRule)
+	{
+		if (keys == null || keys.isEmpty())
+		{
+			return Collections.emptyList();
+		}
+
+		return query(categories, keys.toArray(new String[keys.size()]), matchRule);
+	}
+
+	/**
+	 * query
+	 * 
+	 * @param categories
+	 * @param keys
+	 * @param matchRule
+	 * @return
+	 */
+	private List<QueryResult> query(String[] categories, String[] keys, int matchRule)
 	{
 		Map<String, QueryResult> results = null;
 
@@ -544,12 +524,12 @@ public class Index
 
 			if (this.memoryIndex.hasChanged())
 			{
-				results = this.diskIndex.addQueryResults(categories, key, rule, this.memoryIndex);
-				results = this.memoryIndex.addQueryResults(categories, key, rule, results);
+				results = this.diskIndex.addQueryResults(categories, keys, rule, this.memoryIndex);
+				results = this.memoryIndex.addQueryResults(categories, keys, rule, results);
 			}
 			else
 			{
-				results = this.diskIndex.addQueryResults(categories, key, rule, null);
+				results = this.diskIndex.addQueryResults(categories, keys, rule, null);
 			}
 		}
 		catch (IOException e)
@@ -563,9 +543,6 @@ public class Index
 		finally
 		{
 			this.exitRead();
-
-			// clear any cached regexes or patterns we might have used during the query
-			PATTERNS.clear();
 		}
 
 		return (results == null) ? null : new ArrayList<QueryResult>(results.values());
@@ -617,19 +594,12 @@ public class Index
 				// @formatter:on
 				logTrace(message);
 			}
-		}
-		finally
-		{
-			this.exitRead();
-			this.enterWrite(); // we must wait for write! DO NOT CALL exitReadEnterWrite!
-		}
-		try
-		{
 			this.memoryIndex.remove(documentName);
+			this.modificationCount.incrementAndGet();
 		}
 		finally
 		{
-			this.exitWrite();
+			this.exitRead();
 		}
 	}
 
@@ -644,6 +614,7 @@ public class Index
 		try
 		{
 			this.memoryIndex.removeCategories(categoryNames);
+			this.modificationCount.incrementAndGet();
 			this.diskIndex = this.diskIndex.removeCategories(categoryNames, this.memoryIndex);
 		}
 		catch (IOException e)
@@ -737,8 +708,18 @@ public class Index
 	 */
 	public void reset() throws IOException
 	{
-		this.memoryIndex = new MemoryIndex();
-		this.diskIndex = new DiskIndex(this.diskIndex.indexFile.getCanonicalPath());
-		this.diskIndex.initialize(false/* do not reuse the index file */);
+		this.enterWrite();
+		try
+		{
+			this.memoryIndex = new MemoryIndex();
+			this.diskIndex.close();
+			this.diskIndex = new DiskIndex(this.diskIndex.indexFile.getCanonicalPath());
+			this.diskIndex.initialize(false/* do not reuse the index file */);
+			this.modificationCount.incrementAndGet();
+		}
+		finally
+		{
+			this.exitWrite();
+		}
 	}
 }
@@ -185,6 +185,18 @@ public abstract class IndexReader
 		return element;
 	}
 
+	/**
+	 * Convert the string representation of an object, as created by {@link IndexWriter#serialize(Object)}, back into
+	 * the Maps, arrays and values used to populate the object
+	 * 
+	 * @param value
+	 * @return
+	 */
+	protected Object deserialize(String value)
+	{
+		return JSON.parse(value);
+	}
+
 	/**
 	 * populateElement
 	 * 
@@ -194,13 +206,13 @@ public abstract class IndexReader
 	 * @return
 	 */
 	@SuppressWarnings("rawtypes")
-	private <T extends Convertible & IndexDocument> T populateElement(T element, String value, Set<String> documents)
+	protected <T extends Convertible & IndexDocument> T populateElement(T element, String value, Set<String> documents)
 	{
 		if (element != null && value != null)
 		{
 			try
 			{
-				Object m = JSON.parse(value);
+				Object m = this.deserialize(value);
 
 				if (m instanceof Map)
 				{
@@ -216,7 +228,7 @@ public abstract class IndexReader
 			{
 				// @formatter:off
 				String message = MessageFormat.format(
-					"An error occurred while processing the following JSON string\n{0}", // //$NON-NLS-1$
+					"An error occurred while processing the following index value\n{0}", // //$NON-NLS-1$
 					value
 				);
 				// @formatter:on
@@ -92,7 +92,9 @@ public class BuildContext
 
 	public IParseRootNode getAST() throws CoreException
 	{
-		return getAST(new ParseState(getContents())).getRootNode();
+		URI uri = getURI();
+
+		return getAST(new ParseState(getContents(), (uri == null) ? null : uri.toString())).getRootNode();
 	}
 
 	/**
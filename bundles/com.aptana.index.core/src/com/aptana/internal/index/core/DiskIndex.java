@@ -7,22 +7,22 @@
  */
 package com.aptana.internal.index.core;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -36,23 +36,38 @@ import com.aptana.index.core.QueryResult;
 import com.aptana.index.core.SearchPattern;
 
 /**
- * Yuck this needs to be a random access file that stores the index of documents, category names, and the relationship
- * between them. We need to be careful to allow for quick access into the categories when reading, and to keep filesize
- * down if possible.
+ * A random access file that stores the index of documents, category names, and the relationship between them. The file
+ * is memory-mapped when opened and every category keeps a sorted word dictionary split into blocks, so a query only
+ * decodes the blocks and posting lists it actually needs instead of materializing whole category tables.
  * 
  * @author cwilliams
  */
 public class DiskIndex
 {
-	private static final String SIGNATURE = "INDEX VERSION 0.1"; //$NON-NLS-1$
+	private static final String SIGNATURE = "INDEX VERSION 0.2"; //$NON-NLS-1$
+	/**
+	 * Signature of the older, stream based format. Files with this signature are converted on open.
+	 */
+	private static final String LEGACY_SIGNATURE = "INDEX VERSION 0.1"; //$NON-NLS-1$
 	private static final int CHUNK_SIZE = 100;
+	/**
+	 * The number of sorted words stored in each block of a category's word dictionary.
+	 */
+	private static final int BLOCK_SIZE = 32;
+	private static final int LARGE_ARRAY_SIZE = 256;
 	private static final int RE_INDEXED = -1;
 	private static final int DELETED = -2;
 	private static final boolean DEBUG = true;
+	private static final String OBSOLETE_EXTENSION = ".obsolete"; //$NON-NLS-1$
+
+	/**
+	 * Replaced index files that could not be deleted yet. Some platforms refuse to delete a file while a mapping of it
+	 * is alive, and a mapping is only released once its buffer has been collected, so these get deleted later.
+	 */
+	private static final List<File> OBSOLETE_FILES = new ArrayList<File>();
 
 	public File indexFile;
 	private int headerInfoOffset;
-	private int streamRead;
 	private int numberOfChunks;
 	private int sizeOfLastChunk;
 	private int documentReferenceSize;
@@ -60,15 +75,162 @@ public class DiskIndex
 	private int[] chunkOffsets;
 	private int startOfCategoryTables;
 	private Map<String, Integer> categoryOffsets;
-	// Usually a map from string to map from string to list of integer. But may also be a single integer (to represent a
-	// pointer to long array)
-	// FIXME YUCK!! This "usually a list of integers, sometimes one integer that acts as a pointer" stuff is killing me!
-	private Map<String, Map<String, Object>> categoryTables;
+	// Only used while writing a new index: category name -> word -> document numbers
+	private Map<String, Map<String, List<Integer>>> categoryTables;
+	// Lazily read block dictionaries of the mapped file, keyed by category name
+	private Map<String, CategoryDictionary> categoryDictionaries;
+	private ByteBuffer buffer;
 
 	private int streamEnd;
 	private String[][] cachedChunks;
 	private String[] categoriesToDiscard;
 
+	/**
+	 * The block dictionary of a category table. Holds the first word of every block of sorted words along with the
+	 * offset of the block in the file.
+	 */
+	private static class CategoryDictionary
+	{
+		final int wordCount;
+		final String[] firstWords;
+		final int[] blockOffsets;
+
+		CategoryDictionary(int wordCount, String[] firstWords, int[] blockOffsets)
+		{
+			this.wordCount = wordCount;
+			this.firstWords = firstWords;
+			this.blockOffsets = blockOffsets;
+		}
+
+		/**
+		 * Returns the index of the block that would contain the given word.
+		 * 
+		 * @param word
+		 * @return
+		 */
+		int findBlock(String word)
+		{
+			int index = Arrays.binarySearch(firstWords, word);
+
+			if (index >= 0)
+			{
+				return index;
+			}
+
+			// the block before the insertion point may contain the word, if there is one
+			return Math.max(0, -index - 2);
+		}
+
+		int sizeOfBlock(int block)
+		{
+			return (block == firstWords.length - 1) ? wordCount - block * BLOCK_SIZE : BLOCK_SIZE;
+		}
+	}
+
+	/**
+	 * Walks the words of a category table in sorted order, starting at a given block. Posting lists are only decoded
+	 * when asked for.
+	 */
+	private class WordCursor
+	{
+		private final CategoryDictionary dictionary;
+		private final ByteBuffer view;
+		private int block;
+		private int remainingInBlock;
+		private String word;
+		private int postingCode;
+		private int postingOffset;
+
+		WordCursor(CategoryDictionary dictionary, int block)
+		{
+			this.dictionary = dictionary;
+			this.view = buffer.duplicate();
+			this.block = block - 1;
+			this.remainingInBlock = 0;
+		}
+
+		/**
+		 * Advances to the next word in the category. Returns false once all words have been visited.
+		 * 
+		 * @return
+		 * @throws IOException
+		 */
+		boolean next() throws IOException
+		{
+			if (remainingInBlock == 0)
+			{
+				block++;
+
+				if (block >= dictionary.firstWords.length)
+				{
+					word = null;
+					return false;
+				}
+
+				view.position(dictionary.blockOffsets[block]);
+				remainingInBlock = dictionary.sizeOfBlock(block);
+				word = readString(view);
+			}
+			else
+			{
+				// words in a block are front-coded against the previous word
+				int shared = view.get() & 0xFF;
+				word = word.substring(0, shared) + readString(view);
+			}
+
+			remainingInBlock--;
+			postingCode = view.getInt();
+
+			// if postingCode is:
+			// <= 0 then the array size == 1 with the value -> -postingCode
+			// > 1 & < 256 then the size of the array is > 1 & < 256, the document array follows immediately
+			// 256 if the array size >= 256 followed by another int which is the offset to the array (written prior
+			// to the table)
+			if (postingCode > 0 && postingCode < LARGE_ARRAY_SIZE)
+			{
+				postingOffset = view.position();
+				view.position(postingOffset + postingCode * documentReferenceSize);
+			}
+			else if (postingCode >= LARGE_ARRAY_SIZE)
+			{
+				postingOffset = view.getInt();
+			}
+
+			return true;
+		}
+
+		String word()
+		{
+			return word;
+		}
+
+		/**
+		 * Decodes the document numbers of the current word.
+		 * 
+		 * @return
+		 */
+		List<Integer> documentNumbers()
+		{
+			if (postingCode <= 0)
+			{
+				return CollectionsUtil.newList(-postingCode);
+			}
+
+			ByteBuffer posting = buffer.duplicate();
+
+			if (postingCode < LARGE_ARRAY_SIZE)
+			{
+				posting.position(postingOffset);
+
+				return readDocumentArray(posting, postingCode);
+			}
+
+			posting.position(postingOffset);
+
+			return readDocumentArray(posting, posting.getInt());
+		}
+	}
+
 	/**
 	 * DiskIndex
 	 * 
@@ -86,6 +248,7 @@ public class DiskIndex
 		this.documentReferenceSize = -1;
 		this.categoryTables = null;
 		this.categoryOffsets = null;
+		this.categoryDictionaries = null;
 		this.categoriesToDiscard = null;
 	}
 
@@ -110,11 +273,9 @@ public class DiskIndex
 				return new HashSet<String>(docNames);
 			}
 
-			Map<String, Map<String, Set<String>>> docsToRefs = memoryIndex.getDocumentsToReferences();
-
 			for (String docName : docNames)
 			{
-				if (!docsToRefs.containsKey(docName))
+				if (!memoryIndex.isDocumentChanged(docName))
 				{
 					results.add(docName);
 				}
@@ -134,11 +295,9 @@ public class DiskIndex
 			}
 			else
 			{
-				Map<String, Map<String, Set<String>>> docsToRefs = memoryIndex.getDocumentsToReferences();
-
 				for (String docName : docNames)
 				{
-					if (docName.startsWith(substring, 0) && !docsToRefs.containsKey(docName))
+					if (docName.startsWith(substring, 0) && !memoryIndex.isDocumentChanged(docName))
 					{
 						results.add(docName);
 					}
@@ -153,14 +312,13 @@ public class DiskIndex
 	 * addQueryResult
 	 * 
 	 * @param results
-	 * @param word
-	 * @param wordsToDocNumbers
+	 * @param cursor
 	 * @param memoryIndex
 	 * @return
 	 * @throws IOException
 	 */
-	private Map<String, QueryResult> addQueryResult(Map<String, QueryResult> results, String word,
-			Map<String, Object> wordsToDocNumbers, MemoryIndex memoryIndex) throws IOException
+	private Map<String, QueryResult> addQueryResult(Map<String, QueryResult> results, WordCursor cursor,
+			MemoryIndex memoryIndex) throws IOException
 	{
 		// must skip over documents which have been added/changed/deleted in the memory index
 		if (results == null)
@@ -168,6 +326,7 @@ public class DiskIndex
 			results = new HashMap<String, QueryResult>(13);
 		}
 
+		String word = cursor.word();
 		QueryResult result = results.get(word);
 
 		if (memoryIndex == null)
@@ -178,31 +337,23 @@ public class DiskIndex
 				results.put(word, result);
 			}
 
-			result.addDocumentTable(wordsToDocNumbers);
-
-			List<Integer> docNumbers = readDocumentNumbers(wordsToDocNumbers.get(word));
-
-			for (Integer docNumber : docNumbers)
+			for (Integer docNumber : cursor.documentNumbers())
 			{
 				result.addDocumentName(readDocumentName(docNumber));
 			}
 		}
 		else
 		{
-			Map<String, Map<String, Set<String>>> docsToRefs = memoryIndex.getDocumentsToReferences();
-
 			if (result == null)
 			{
 				result = new QueryResult(word, null);
 			}
 
-			List<Integer> docNumbers = readDocumentNumbers(wordsToDocNumbers.get(word));
-
-			for (Integer docNumber : docNumbers)
+			for (Integer docNumber : cursor.documentNumbers())
 			{
 				String docName = readDocumentName(docNumber);
 
-				if (!docsToRefs.containsKey(docName))
+				if (!memoryIndex.isDocumentChanged(docName))
 				{
 					result.addDocumentName(docName);
 				}
@@ -231,149 +382,345 @@ public class DiskIndex
 			MemoryIndex memoryIndex) throws IOException
 	{
 		// assumes sender has called startQuery() & will call stopQuery() when finished
-		if (this.categoryOffsets == null)
+		if (this.categoryOffsets == null || this.buffer == null)
 		{
 			return null; // file is empty
 		}
 
 		Map<String, QueryResult> results = null; // initialized if needed
 
-		// Add perf fixes for common ways of searching for everything:
-		// PREFIX_MATCH with an empty key
-		if ((matchRule == SearchPattern.PREFIX_MATCH || matchRule == (SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE))
-				&& StringUtil.EMPTY.equals(key))
+		key = normalizeKey(key, matchRule);
+
+		for (int i = 0, l = categories.length; i < l; i++)
 		{
-			key = null;
+			CategoryDictionary dictionary = readCategoryDictionary(categories[i]);
+
+			if (dictionary == null || dictionary.wordCount == 0)
+			{
+				continue;
+			}
+
+			results = addQueryResults(dictionary, key, matchRule, results, memoryIndex);
 		}
-		// PATTERN_MATCH with a key of "*"
-		else if ((matchRule == SearchPattern.PATTERN_MATCH || matchRule == (SearchPattern.PATTERN_MATCH | SearchPattern.CASE_SENSITIVE))
-				&& "*".equals(key)) //$NON-NLS-1$
+
+		if (key == null && results != null && this.cachedChunks == null)
 		{
-			key = null;
+			cacheDocumentNames();
 		}
 
-		if (key == null)
+		return results;
+	}
+
+	/**
+	 * Adds the words of the categories that match any of the keys. Case sensitive exact and prefix matches seek to each
+	 * key in the sorted dictionary in turn. Other match rules test each word against the keys in a single scan.
+	 * 
+	 * @param categories
+	 * @param keys
+	 * @param matchRule
+	 * @param memoryIndex
+	 * @return
+	 * @throws IOException
+	 */
+	public Map<String, QueryResult> addQueryResults(String[] categories, String[] keys, int matchRule,
+			MemoryIndex memoryIndex) throws IOException
+	{
+		if (keys.length == 1)
+		{
+			return addQueryResults(categories, keys[0], matchRule, memoryIndex);
+		}
+		if (this.categoryOffsets == null || this.buffer == null || keys.length == 0)
+		{
+			return null;
+		}
+
+		for (String key : keys)
+		{
+			if (normalizeKey(key, matchRule) == null)
+			{
+				// one of the keys matches every word
+				return addQueryResults(categories, (String) null, matchRule, memoryIndex);
+			}
+		}
+
+		Map<String, QueryResult> results = null;
+		boolean seek = matchRule == (SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE)
+				|| matchRule == (SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE);
+
+		for (int i = 0, l = categories.length; i < l; i++)
 		{
-			for (int i = 0, l = categories.length; i < l; i++)
+			CategoryDictionary dictionary = readCategoryDictionary(categories[i]);
+
+			if (dictionary == null || dictionary.wordCount == 0)
+			{
+				continue;
+			}
+
+			if (seek)
 			{
-				Map<String, Object> wordsToDocNumbers = readCategoryTable(categories[i], true); // cache if key
-				// is null
-				// since its a definite
-				// match
-				if (wordsToDocNumbers != null)
+				for (String key : keys)
 				{
-					if (results == null)
-					{
-						results = new HashMap<String, QueryResult>(wordsToDocNumbers.size());
-					}
+					results = addQueryResults(dictionary, key, matchRule, results, memoryIndex);
+				}
+			}
+			else
+			{
+				WordCursor cursor = new WordCursor(dictionary, 0);
 
-					for (String word : wordsToDocNumbers.keySet())
+				while (cursor.next())
+				{
+					String word = cursor.word();
+
+					for (String key : keys)
 					{
-						if (word != null)
+						if (Index.isMatch(key, word, matchRule))
 						{
-							results = addQueryResult(results, word, wordsToDocNumbers, memoryIndex);
+							results = addQueryResult(results, cursor, memoryIndex);
+							break;
 						}
 					}
 				}
 			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Adds the words of a single category that match the key. A null key matches every word.
+	 * 
+	 * @param dictionary
+	 * @param key
+	 * @param matchRule
+	 * @param results
+	 * @param memoryIndex
+	 * @return
+	 * @throws IOException
+	 */
+	private Map<String, QueryResult> addQueryResults(CategoryDictionary dictionary, String key, int matchRule,
+			Map<String, QueryResult> results, MemoryIndex memoryIndex) throws IOException
+	{
+		if (key == null)
+		{
+			WordCursor cursor = new WordCursor(dictionary, 0);
 
-			if (results != null && this.cachedChunks == null)
+			while (cursor.next())
 			{
-				cacheDocumentNames();
+				results = addQueryResult(results, cursor, memoryIndex);
 			}
+
+			return results;
 		}
-		else
+
+		switch (matchRule)
 		{
-			switch (matchRule)
+			case SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE:
 			{
-				case SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE:
-					for (int i = 0, l = categories.length; i < l; i++)
-					{
-						Map<String, Object> wordsToDocNumbers = readCategoryTable(categories[i], false);
+				// binary search the dictionary, then scan the single block that may hold the key
+				WordCursor cursor = new WordCursor(dictionary, dictionary.findBlock(key));
 
-						if (wordsToDocNumbers != null && wordsToDocNumbers.containsKey(key))
-						{
-							results = addQueryResult(results, key, wordsToDocNumbers, memoryIndex);
-						}
-					}
-					break;
+				while (cursor.next())
+				{
+					int comparison = cursor.word().compareTo(key);
 
-				case SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE:
-					for (int i = 0, l = categories.length; i < l; i++)
+					if (comparison == 0)
 					{
-						Map<String, Object> wordsToDocNumbers = readCategoryTable(categories[i], false);
+						results = addQueryResult(results, cursor, memoryIndex);
+					}
 
-						if (wordsToDocNumbers != null)
-						{
-							for (String word : wordsToDocNumbers.keySet())
-							{
-								if (word != null && word.startsWith(key))
-								{
-									results = addQueryResult(results, word, wordsToDocNumbers, memoryIndex);
-								}
-							}
-						}
+					if (comparison >= 0)
+					{
+						break;
 					}
-					break;
+				}
+				break;
+			}
 
-				default:
-					for (int i = 0, l = categories.length; i < l; i++)
+			case SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE:
+			{
+				// words sharing a prefix are contiguous in the sorted dictionary, so seek to the first one
+				WordCursor cursor = new WordCursor(dictionary, dictionary.findBlock(key));
+
+				while (cursor.next())
+				{
+					String word = cursor.word();
+
+					if (word.startsWith(key))
 					{
-						Map<String, Object> wordsToDocNumbers = readCategoryTable(categories[i], false);
+						results = addQueryResult(results, cursor, memoryIndex);
+					}
+					else if (word.compareTo(key) > 0)
+					{
+						break;
+					}
+				}
+				break;
+			}
 
-						if (wordsToDocNumbers != null)
-						{
-							for (String word : wordsToDocNumbers.keySet())
-							{
-								if (word != null && Index.isMatch(key, word, matchRule))
-								{
-									results = addQueryResult(results, word, wordsToDocNumbers, memoryIndex);
-								}
-							}
-						}
+			default:
+			{
+				WordCursor cursor = new WordCursor(dictionary, 0);
+
+				while (cursor.next())
+				{
+					if (Index.isMatch(key, cursor.word(), matchRule))
+					{
+						results = addQueryResult(results, cursor, memoryIndex);
 					}
+				}
 			}
 		}
 
 		return results;
 	}
 
+	/**
+	 * Returns null for the keys that match everything, so that the query can skip matching altogether.
+	 * 
+	 * @param key
+	 * @param matchRule
+	 * @return
+	 */
+	private static String normalizeKey(String key, int matchRule)
+	{
+		// Add perf fixes for common ways of searching for everything:
+		// PREFIX_MATCH with an empty key
+		if ((matchRule == SearchPattern.PREFIX_MATCH || matchRule == (SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE))
+				&& StringUtil.EMPTY.equals(key))
+		{
+			return null;
+		}
+		// PATTERN_MATCH with a key of "*"
+		if ((matchRule == SearchPattern.PATTERN_MATCH || matchRule == (SearchPattern.PATTERN_MATCH | SearchPattern.CASE_SENSITIVE))
+				&& "*".equals(key)) //$NON-NLS-1$
+		{
+			return null;
+		}
+		return key;
+	}
+
 	/**
 	 * cacheDocumentNames
 	 * 
 	 * @throws IOException
 	 */
-	private void cacheDocumentNames() throws IOException
+	private synchronized void cacheDocumentNames() throws IOException
 	{
 		// will need all document names so get them now
-		this.cachedChunks = new String[this.numberOfChunks][];
+		String[][] chunks = new String[this.numberOfChunks][];
+		ByteBuffer view = this.buffer.duplicate();
 
-		InputStream stream = new BufferedInputStream(new FileInputStream(this.indexFile));
+		view.position(this.chunkOffsets[0]);
 
-		try
+		for (int i = 0; i < this.numberOfChunks; i++)
 		{
-			// if (this.numberOfChunks > 5)
-			// BUFFER_READ_SIZE <<= 1;
-			int offset = this.chunkOffsets[0];
+			int size = i == this.numberOfChunks - 1 ? this.sizeOfLastChunk : CHUNK_SIZE;
+
+			readChunk(chunks[i] = new String[size], view, 0, size);
+		}
+
+		this.cachedChunks = chunks;
+	}
+
+	/**
+	 * Releases the memory mapping of the index file so it may be deleted or replaced.
+	 */
+	public synchronized void close()
+	{
+		this.buffer = null;
+		this.categoryDictionaries = null;
+		this.cachedChunks = null;
 
-			skip(stream, offset);
+		deleteObsoleteFiles();
+	}
 
-			for (int i = 0; i < this.numberOfChunks; i++)
+	/**
+	 * Gets rid of an index file. When it can't be deleted because it is still mapped, it is renamed out of the way and
+	 * deleted once the mapping has been released.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	private static void discard(File file) throws IOException
+	{
+		deleteObsoleteFiles();
+
+		if (!file.exists() || file.delete())
+		{
+			return;
+		}
+
+		File obsolete;
+		int i = 0;
+		do
+		{
+			obsolete = new File(file.getPath() + '.' + i++ + OBSOLETE_EXTENSION);
+		}
+		while (obsolete.exists());
+
+		if (!file.renameTo(obsolete))
+		{
+			throw new IOException("Failed to delete index file " + file); //$NON-NLS-1$
+		}
+
+		obsolete.deleteOnExit();
+		synchronized (OBSOLETE_FILES)
+		{
+			OBSOLETE_FILES.add(obsolete);
+		}
+	}
+
+	/**
+	 * Deletes the replaced index files whose mappings have been released by now.
+	 */
+	private static void deleteObsoleteFiles()
+	{
+		synchronized (OBSOLETE_FILES)
+		{
+			for (Iterator<File> i = OBSOLETE_FILES.iterator(); i.hasNext();)
 			{
-				int size = i == this.numberOfChunks - 1 ? this.sizeOfLastChunk : CHUNK_SIZE;
+				File file = i.next();
 
-				readChunk(this.cachedChunks[i] = new String[size], stream, 0, size);
+				if (!file.exists() || file.delete())
+				{
+					i.remove();
+				}
 			}
 		}
-		catch (IOException e)
+	}
+
+	/**
+	 * Picks up the replaced files of this index left behind by an earlier session, so they get deleted.
+	 */
+	private void collectObsoleteFiles()
+	{
+		File directory = this.indexFile.getAbsoluteFile().getParentFile();
+		String[] names = (directory == null) ? null : directory.list();
+
+		if (names == null)
 		{
-			this.cachedChunks = null;
-			throw e;
+			return;
 		}
-		finally
+
+		String prefix = this.indexFile.getName() + '.';
+
+		synchronized (OBSOLETE_FILES)
 		{
-			stream.close();
+			for (String name : names)
+			{
+				if (name.startsWith(prefix) && name.endsWith(OBSOLETE_EXTENSION))
+				{
+					File file = new File(directory, name);
+
+					if (!OBSOLETE_FILES.contains(file))
+					{
+						OBSOLETE_FILES.add(file);
+					}
+				}
+			}
 		}
+
+		deleteObsoleteFiles();
 	}
 
 	/**
@@ -389,16 +736,14 @@ public class DiskIndex
 			Map<String, Integer> indexedDocuments, MemoryIndex memoryIndex)
 	{
 		int onDiskLength = onDiskNames.size();
-		Map<String, Map<String, Set<String>>> memIndexDocs = memoryIndex.getDocumentsToReferences();
+		Map<String, Boolean> memIndexDocs = memoryIndex.getChangedDocuments();
 
 		if (onDiskLength == 0)
 		{
 			// disk index was empty, so add every indexed document
-			for (Map.Entry<String, Map<String, Set<String>>> entry : memIndexDocs.entrySet())
+			for (Map.Entry<String, Boolean> entry : memIndexDocs.entrySet())
 			{
-				Map<String, Set<String>> refTable = entry.getValue();
-
-				if (refTable != null)
+				if (!entry.getValue())
 				{
 					indexedDocuments.put(entry.getKey(), null); // remember each new document
 				}
@@ -435,7 +780,7 @@ public class DiskIndex
 		int numDeletedDocNames = 0;
 		int numReindexedDocNames = 0;
 
-		nextPath: for (Map.Entry<String, Map<String, Set<String>>> entry : memIndexDocs.entrySet())
+		nextPath: for (Map.Entry<String, Boolean> entry : memIndexDocs.entrySet())
 		{
 			String docName = entry.getKey();
 
@@ -448,7 +793,7 @@ public class DiskIndex
 			{
 				if (docName.equals(onDiskNames.get(j)))
 				{
-					if (entry.getValue() == null)
+					if (entry.getValue())
 					{
 						positions[j] = DELETED;
 						numDeletedDocNames++;
@@ -463,7 +808,7 @@ public class DiskIndex
 				}
 			}
 
-			if (entry.getValue() != null)
+			if (!entry.getValue())
 			{
 				indexedDocuments.put(docName, null); // remember each new document, skip deleted documents which were
 			}
@@ -547,7 +892,6 @@ public class DiskIndex
 	 * @param categoryToWords
 	 * @param newPosition
 	 */
-	@SuppressWarnings("unchecked")
 	private void copyQueryResults(Map<String, Set<String>> categoryToWords, int newPosition)
 	{
 		for (Map.Entry<String, Set<String>> entry : categoryToWords.entrySet())
@@ -559,11 +903,11 @@ public class DiskIndex
 				continue;
 			}
 
-			Map<String, Object> wordsToDocs = this.categoryTables.get(categoryName);
+			Map<String, List<Integer>> wordsToDocs = this.categoryTables.get(categoryName);
 
 			if (wordsToDocs == null)
 			{
-				this.categoryTables.put(categoryName, wordsToDocs = new HashMap<String, Object>());
+				this.categoryTables.put(categoryName, wordsToDocs = new HashMap<String, List<Integer>>());
 			}
 
 			for (String word : entry.getValue())
@@ -573,14 +917,14 @@ public class DiskIndex
 					continue;
 				}
 
-				Object positions = wordsToDocs.get(word);
+				List<Integer> positions = wordsToDocs.get(word);
 
 				if (positions == null)
 				{
 					wordsToDocs.put(word, positions = new ArrayList<Integer>());
 				}
 
-				((List<Integer>) positions).add(newPosition);
+				positions.add(newPosition);
 			}
 		}
 	}
@@ -633,61 +977,60 @@ public class DiskIndex
 	 */
 	public void initialize(boolean reuseExistingFile) throws IOException
 	{
+		collectObsoleteFiles();
+
 		if (this.indexFile.exists())
 		{
 			if (reuseExistingFile)
 			{
-				// read it in!
-				InputStream stream = new BufferedInputStream(new FileInputStream(this.indexFile));
-
+				// map it in!
 				try
 				{
-					streamRead = 0;
+					mapIndexFile();
 
-					String signature = readString(stream);
+					ByteBuffer view = this.buffer.duplicate();
+					String signature = readString(view);
 
-					if (!signature.equals(SIGNATURE))
+					if (LEGACY_SIGNATURE.equals(signature))
 					{
-						throw new IOException(Messages.DiskIndex_Wrong_Format);
+						migrateLegacyIndex(view);
 					}
-
-					this.headerInfoOffset = readStreamInt(stream);
-
-					if (this.headerInfoOffset > 0)
-					{ // file is empty if its not set
-						skip(stream, this.headerInfoOffset - this.streamRead); // assume that the header info offset is
-						// over
-						// current buffer end
-						readHeaderInfo(stream);
+					else if (SIGNATURE.equals(signature))
+					{
+						readHeader(view);
+					}
+					else
+					{
+						throw new IOException(Messages.DiskIndex_Wrong_Format);
 					}
 				}
-				finally
+				catch (IOException e)
 				{
-					stream.close();
+					close();
+					throw e;
 				}
-				return;
-			}
-
-			if (!this.indexFile.delete())
-			{
-				if (DEBUG)
+				catch (RuntimeException e)
 				{
-					System.out.println("initialize - Failed to delete index " + this.indexFile); //$NON-NLS-1$
+					// truncated or garbled file, make sure the caller can clean it up
+					close();
+					throw new IOException(MessageFormat.format(
+							"Corrupt index file ''{0}'': {1}", this.indexFile, e.toString())); //$NON-NLS-1$
 				}
-
-				throw new IOException("Failed to delete index " + this.indexFile); //$NON-NLS-1$
+				return;
 			}
+
+			discard(this.indexFile);
 		}
 
 		// create a new empty one!
 		if (indexFile.createNewFile())
 		{
-			FileOutputStream stream = new FileOutputStream(this.indexFile, false);
+			OutputStream stream = new BufferedOutputStream(new FileOutputStream(this.indexFile, false));
 
 			try
 			{
 				writeString(stream, SIGNATURE);
-				stream.write(-1);
+				writeStreamInt(stream, -1);
 			}
 			finally
 			{
@@ -733,11 +1076,35 @@ public class DiskIndex
 
 		int size = diskIndex.categoryOffsets == null ? 8 : diskIndex.categoryOffsets.size();
 		this.categoryOffsets = new HashMap<String, Integer>(size);
-		this.categoryTables = new HashMap<String, Map<String, Object>>(size);
+		this.categoryTables = new HashMap<String, Map<String, List<Integer>>>(size);
 		this.separator = diskIndex.separator;
 		this.categoriesToDiscard = diskIndex.categoriesToDiscard;
 	}
 
+	/**
+	 * Maps the whole index file into memory, read-only.
+	 * 
+	 * @throws IOException
+	 */
+	private synchronized void mapIndexFile() throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(this.indexFile, "r"); //$NON-NLS-1$
+
+		try
+		{
+			FileChannel channel = file.getChannel();
+
+			// the mapping remains valid after the channel is closed
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			this.categoryDictionaries = new HashMap<String, CategoryDictionary>();
+			this.cachedChunks = null;
+		}
+		finally
+		{
+			file.close();
+		}
+	}
+
 	/**
 	 * mergeCategories
 	 * 
@@ -781,31 +1148,25 @@ public class DiskIndex
 	 * @param stream
 	 * @throws IOException
 	 */
-	@SuppressWarnings("unchecked")
 	private void mergeCategory(String categoryName, DiskIndex onDisk, int[] positions, OutputStream stream)
 			throws IOException
 	{
-		Map<String, Object> wordsToDocs = this.categoryTables.get(categoryName);
+		Map<String, List<Integer>> wordsToDocs = this.categoryTables.get(categoryName);
 
 		if (wordsToDocs == null)
 		{
-			wordsToDocs = new HashMap<String, Object>(3);
+			wordsToDocs = new HashMap<String, List<Integer>>(3);
 		}
 
-		Map<String, Object> oldWordsToDocs = onDisk.readCategoryTable(categoryName, true);
+		CategoryDictionary dictionary = onDisk.readCategoryDictionary(categoryName);
 
-		if (oldWordsToDocs != null)
+		if (dictionary != null && dictionary.wordCount > 0)
 		{
-			nextWord: for (Map.Entry<String, Object> entry : oldWordsToDocs.entrySet())
-			{
-				String oldWord = entry.getKey();
-
-				if (oldWord == null)
-				{
-					continue;
-				}
+			WordCursor cursor = onDisk.new WordCursor(dictionary, 0);
 
-				List<Integer> oldDocNumbers = (List<Integer>) entry.getValue();
+			nextWord: while (cursor.next())
+			{
+				List<Integer> oldDocNumbers = cursor.documentNumbers();
 				List<Integer> mappedNumbers = new ArrayList<Integer>(oldDocNumbers.size());
 
 				for (Integer oldDocNumber : oldDocNumbers)
@@ -823,31 +1184,17 @@ public class DiskIndex
 					continue nextWord; // skip words which no longer have any references
 				}
 
-				Object o = wordsToDocs.get(oldWord);
+				List<Integer> list = wordsToDocs.get(cursor.word());
 
-				if (o == null)
+				if (list == null)
 				{
-					wordsToDocs.put(oldWord, mappedNumbers);
+					wordsToDocs.put(cursor.word(), mappedNumbers);
 				}
 				else
 				{
-					List<Integer> list = null;
-
-					if (o instanceof List<?>)
-					{
-						list = (List<Integer>) o;
-					}
-					else
-					{
-						list = new ArrayList<Integer>();
-						wordsToDocs.put(oldWord, list);
-					}
-
 					list.addAll(mappedNumbers);
 				}
 			}
-
-			onDisk.categoryTables.put(categoryName, null); // flush cached table
 		}
 
 		writeCategoryTable(categoryName, wordsToDocs, stream);
@@ -881,14 +1228,13 @@ public class DiskIndex
 			}
 
 			// index is now empty since all the saved documents were removed
+			close();
 			DiskIndex newDiskIndex = new DiskIndex(this.indexFile.getPath());
 			newDiskIndex.initialize(false);
 
 			return newDiskIndex;
 		}
 
-		this.streamEnd = 0;
-
 		DiskIndex newDiskIndex = new DiskIndex(this.indexFile.getPath() + ".tmp"); //$NON-NLS-1$
 
 		try
@@ -939,50 +1285,150 @@ public class DiskIndex
 			}
 
 			newDiskIndex.writeOffsetToHeader(offsetToHeader);
+			replaceWith(newDiskIndex);
+		}
+		catch (IOException e)
+		{
+			if (newDiskIndex.indexFile.exists() && !newDiskIndex.indexFile.delete())
+			{
+				if (DEBUG)
+				{
+					System.out.println("mergeWith - Failed to delete temp index " + newDiskIndex.indexFile); //$NON-NLS-1$
+				}
+			}
+
+			// we may have let go of our own mapping while trying to swap files, get it back
+			if (this.buffer == null && this.indexFile.exists())
+			{
+				mapIndexFile();
+			}
+
+			throw e;
+		}
+
+		return newDiskIndex;
+	}
+
+	/**
+	 * Converts an index file written in the legacy format into the current format. The view is expected to be
+	 * positioned right after the signature.
+	 * 
+	 * @param view
+	 * @throws IOException
+	 */
+	private void migrateLegacyIndex(ByteBuffer view) throws IOException
+	{
+		// the legacy format writes a single byte instead of an int for the header offset of an empty file
+		this.headerInfoOffset = (view.remaining() < 4) ? -1 : view.getInt();
 
-			// rename file by deleting previous index file & renaming temp one
-			if (this.indexFile.exists() && !this.indexFile.delete())
+		if (this.headerInfoOffset > 0)
+		{
+			view.position(this.headerInfoOffset);
+			readHeaderInfo(view);
+		}
+
+		List<String> names = readAllDocumentNames();
+		Map<String, Map<String, List<Integer>>> tables = new HashMap<String, Map<String, List<Integer>>>();
+
+		if (this.categoryOffsets != null)
+		{
+			for (Map.Entry<String, Integer> entry : this.categoryOffsets.entrySet())
 			{
-				throw new IOException("Failed to delete index file " + this.indexFile); //$NON-NLS-1$
+				tables.put(entry.getKey(), readLegacyCategoryTable(entry.getValue()));
 			}
+		}
+
+		IdeLog.logInfo(IndexPlugin.getDefault(), MessageFormat.format(
+				"Converting index ''{0}'' from ''{1}'' to ''{2}''", this.indexFile, LEGACY_SIGNATURE, SIGNATURE)); //$NON-NLS-1$
+
+		if (names.isEmpty())
+		{
+			close();
+			DiskIndex empty = new DiskIndex(this.indexFile.getPath());
+			empty.initialize(false);
+			copyStateFrom(empty);
+			return;
+		}
 
-			if (!newDiskIndex.indexFile.renameTo(this.indexFile))
+		DiskIndex newDiskIndex = new DiskIndex(this.indexFile.getPath() + ".tmp"); //$NON-NLS-1$
+
+		try
+		{
+			newDiskIndex.initializeFrom(this, newDiskIndex.indexFile);
+			newDiskIndex.categoryTables = tables;
+			OutputStream stream = new BufferedOutputStream(new FileOutputStream(newDiskIndex.indexFile, false));
+			int offsetToHeader = -1;
+
+			try
 			{
-				throw new IOException("Failed to rename index file " + this.indexFile); //$NON-NLS-1$
+				newDiskIndex.writeDocumentNames(stream, names);
+				newDiskIndex.writeCategories(stream);
+				offsetToHeader = newDiskIndex.streamEnd;
+				newDiskIndex.writeHeaderInfo(stream);
 			}
+			finally
+			{
+				stream.close();
+			}
+
+			newDiskIndex.writeOffsetToHeader(offsetToHeader);
+			replaceWith(newDiskIndex);
 		}
 		catch (IOException e)
 		{
-			if (newDiskIndex.indexFile.exists() && !newDiskIndex.indexFile.delete())
+			if (newDiskIndex.indexFile.exists())
 			{
-				if (DEBUG)
-				{
-					System.out.println("mergeWith - Failed to delete temp index " + newDiskIndex.indexFile); //$NON-NLS-1$
-				}
+				newDiskIndex.indexFile.delete();
 			}
 
 			throw e;
 		}
 
-		newDiskIndex.indexFile = this.indexFile;
+		copyStateFrom(newDiskIndex);
+	}
 
-		return newDiskIndex;
+	/**
+	 * Takes over the state of another index on the same file. Used when an index gets rewritten in place.
+	 * 
+	 * @param other
+	 */
+	private synchronized void copyStateFrom(DiskIndex other)
+	{
+		this.headerInfoOffset = other.headerInfoOffset;
+		this.numberOfChunks = other.numberOfChunks;
+		this.sizeOfLastChunk = other.sizeOfLastChunk;
+		this.documentReferenceSize = other.documentReferenceSize;
+		this.separator = other.separator;
+		this.chunkOffsets = other.chunkOffsets;
+		this.startOfCategoryTables = other.startOfCategoryTables;
+		this.categoryOffsets = other.categoryOffsets;
+		this.categoryTables = null;
+		this.categoryDictionaries = other.categoryDictionaries;
+		this.buffer = other.buffer;
+		this.cachedChunks = other.cachedChunks;
 	}
 
 	/**
-	 * read
+	 * Replaces our index file with the freshly written file of the given index, which then gets mapped in.
 	 * 
-	 * @param stream
-	 * @return
+	 * @param newDiskIndex
 	 * @throws IOException
 	 */
-	private int read(InputStream stream) throws IOException
+	private void replaceWith(DiskIndex newDiskIndex) throws IOException
 	{
-		int val = stream.read();
+		// let go of our mapping, it stays alive until the buffer is collected
+		close();
 
-		streamRead++;
+		// rename file by discarding previous index file & renaming temp one
+		discard(this.indexFile);
+
+		if (!newDiskIndex.indexFile.renameTo(this.indexFile))
+		{
+			throw new IOException("Failed to rename index file " + this.indexFile); //$NON-NLS-1$
+		}
 
-		return val;
+		newDiskIndex.indexFile = this.indexFile;
+		newDiskIndex.mapIndexFile();
 	}
 
 	/**
@@ -993,237 +1439,101 @@ public class DiskIndex
 	 */
 	private synchronized List<String> readAllDocumentNames() throws IOException
 	{
-		if (this.numberOfChunks <= 0)
+		if (this.numberOfChunks <= 0 || this.buffer == null)
 		{
 			return Collections.emptyList();
 		}
 
-		InputStream stream = new BufferedInputStream(new FileInputStream(this.indexFile));
-
-		try
-		{
-			int offset = this.chunkOffsets[0];
-
-			skip(stream, offset);
+		ByteBuffer view = this.buffer.duplicate();
 
-			int lastIndex = this.numberOfChunks - 1;
+		view.position(this.chunkOffsets[0]);
 
-			String[] docNames = new String[lastIndex * CHUNK_SIZE + sizeOfLastChunk];
+		int lastIndex = this.numberOfChunks - 1;
 
-			for (int i = 0; i < this.numberOfChunks; i++)
-			{
-				readChunk(docNames, stream, i * CHUNK_SIZE, i < lastIndex ? CHUNK_SIZE : sizeOfLastChunk);
-			}
+		String[] docNames = new String[lastIndex * CHUNK_SIZE + sizeOfLastChunk];
 
-			return Arrays.asList(docNames);
-		}
-		finally
+		for (int i = 0; i < this.numberOfChunks; i++)
 		{
-			stream.close();
+			readChunk(docNames, view, i * CHUNK_SIZE, i < lastIndex ? CHUNK_SIZE : sizeOfLastChunk);
 		}
+
+		return Arrays.asList(docNames);
 	}
 
 	/**
-	 * readCategoryTable
+	 * Reads the block dictionary of the given category. The dictionary is cached, the words themselves are not.
 	 * 
 	 * @param categoryName
-	 * @param readDocNumbers
-	 * @return
+	 * @return null if the category is unknown
 	 * @throws IOException
 	 */
-	private synchronized Map<String, Object> readCategoryTable(String categoryName, boolean readDocNumbers)
-			throws IOException
+	private synchronized CategoryDictionary readCategoryDictionary(String categoryName) throws IOException
 	{
-		// result will be null if categoryName is unknown
 		Integer offset = this.categoryOffsets.get(categoryName);
 
-		if (offset == null)
+		if (offset == null || this.buffer == null)
 		{
 			return null;
 		}
 
-		if (this.categoryTables == null)
+		CategoryDictionary dictionary = this.categoryDictionaries.get(categoryName);
+
+		if (dictionary != null)
 		{
-			this.categoryTables = new HashMap<String, Map<String, Object>>(3);
+			return dictionary;
 		}
-		else
-		{
-			Map<String, Object> cachedTable = this.categoryTables.get(categoryName);
-
-			if (cachedTable != null)
-			{
-				if (readDocNumbers)
-				{ // must cache remaining document number arrays
-					Map<String, Object> copy = new HashMap<String, Object>(cachedTable);
-
-					for (Map.Entry<String, Object> entry : cachedTable.entrySet())
-					{
-						Object arrayOffset = entry.getValue();
-
-						if (arrayOffset instanceof Integer)
-						{
-							copy.put(entry.getKey(), readDocumentNumbers(arrayOffset));
-						}
-					}
 
-					cachedTable = copy;
-				}
+		ByteBuffer view = this.buffer.duplicate();
 
-				return cachedTable;
-			}
-		}
+		view.position(offset);
 
-		InputStream stream = new BufferedInputStream(new FileInputStream(this.indexFile));
-		Map<String, Object> categoryTable = null;
-		String[] matchingWords = null;
-		int count = 0;
-		int firstOffset = -1;
+		int wordCount = view.getInt();
+		int blockCount = view.getInt();
 
-		try
+		if (wordCount < 0 || blockCount < 0 || blockCount != (wordCount + BLOCK_SIZE - 1) / BLOCK_SIZE)
 		{
-			// skip to start of category
-			skip(stream, offset);
-
-			// Read the number of words in the category
-			int size = readStreamInt(stream);
-
-			try
-			{
-				if (size < 0)
-				{
-					// DEBUG
-					StringBuilder debug = new StringBuilder();
-					debug.append("-------------------- DEBUG --------------------\n"); //$NON-NLS-1$
-					debug.append("file = ").append(this.indexFile).append('\n'); //$NON-NLS-1$
-					debug.append("offset = ").append(offset).append('\n'); //$NON-NLS-1$
-					debug.append("size = ").append(size).append('\n'); //$NON-NLS-1$
-					debug.append("--------------------   END   --------------------\n"); //$NON-NLS-1$
-					System.err.print(debug.toString());
-					IdeLog.logError(
-							IndexPlugin.getDefault(),
-							MessageFormat.format(
-									"Size of category ''{0}'' negative:\n{1}", categoryName, debug.toString())); //$NON-NLS-1$
-					size = 0;
-				}
-
-				categoryTable = new HashMap<String, Object>(size);
-			}
-			catch (OutOfMemoryError oom)
-			{
-				// Here we hope that those string allocation will not throw another OutOfMemoryError...
-				// DEBUG
-				oom.printStackTrace();
-				String error = MessageFormat
-						.format("Index error in readCategoryTable. \nfile = {0} \noffset = {1} \n size = {2}", this.indexFile, offset, size); //$NON-NLS-1$
-				System.err.println("-------------------- DEBUG --------------------\n"); //$NON-NLS-1$
-				System.err.println(error);
-				System.err.println("--------------------   END   --------------------\n"); //$NON-NLS-1$
-				IdeLog.logError(IndexPlugin.getDefault(), error, oom);
-				throw oom;
-			}
-
-			int largeArraySize = 256;
-
-			for (int i = 0; i < size; i++)
-			{
-				String word = readString(stream);
-				int arrayOffset = readStreamInt(stream);
-
-				// if arrayOffset is:
-				// <= 0 then the array size == 1 with the value -> -arrayOffset
-				// > 1 & < 256 then the size of the array is > 1 & < 256, the document array follows immediately
-				// 256 if the array size >= 256 followed by another int which is the offset to the array (written prior
-				// to the table)
-				if (arrayOffset <= 0)
-				{
-					categoryTable.put(word, CollectionsUtil.newList(-arrayOffset)); // store 1 element array by negating
-					// documentNumber
-				}
-				else if (arrayOffset < largeArraySize)
-				{
-					categoryTable.put(word, readStreamDocumentArray(stream, arrayOffset)); // read in-lined array
-					// providing size
-				}
-				else
-				{
-					arrayOffset = readStreamInt(stream); // read actual offset
-
-					if (readDocNumbers)
-					{
-						if (matchingWords == null)
-						{
-							matchingWords = new String[size];
-						}
-
-						if (count == 0)
-						{
-							firstOffset = arrayOffset;
-						}
-
-						matchingWords[count++] = word;
-					}
+			String error = MessageFormat.format(
+					"Corrupt dictionary for category ''{0}'' in index file ''{1}'': {2} words in {3} blocks", //$NON-NLS-1$
+					categoryName, this.indexFile, wordCount, blockCount);
+			IdeLog.logError(IndexPlugin.getDefault(), error);
+			throw new IOException(error);
+		}
 
-					categoryTable.put(word, new Integer(arrayOffset)); // offset to array in the file
-				}
-			}
+		String[] firstWords = new String[blockCount];
+		int[] blockOffsets = new int[blockCount];
 
-			this.categoryTables.put(categoryName, categoryTable);
-		}
-		catch (IOException ioe)
-		{
-			throw ioe;
-		}
-		finally
+		for (int i = 0; i < blockCount; i++)
 		{
-			stream.close();
+			firstWords[i] = readString(view);
+			blockOffsets[i] = view.getInt();
 		}
 
-		if (matchingWords != null && count > 0)
-		{
-			stream = new BufferedInputStream(new FileInputStream(this.indexFile));
-
-			try
-			{
-				skip(stream, firstOffset);
-
-				for (int i = 0; i < count; i++)
-				{ // each array follows the previous one
-					categoryTable.put(matchingWords[i], readStreamDocumentArray(stream, readStreamInt(stream)));
-				}
-			}
-			catch (IOException ioe)
-			{
-				throw ioe;
-			}
-			finally
-			{
-				stream.close();
-			}
-		}
+		dictionary = new CategoryDictionary(wordCount, firstWords, blockOffsets);
+		this.categoryDictionaries.put(categoryName, dictionary);
 
-		return categoryTable;
+		return dictionary;
 	}
 
 	/**
 	 * readChunk
 	 * 
 	 * @param docNames
-	 * @param stream
+	 * @param view
 	 * @param index
 	 * @param size
 	 * @throws IOException
 	 */
-	private void readChunk(String[] docNames, InputStream stream, int index, int size) throws IOException
+	private void readChunk(String[] docNames, ByteBuffer view, int index, int size) throws IOException
 	{
-		String current = readString(stream);
+		String current = readString(view);
 
 		docNames[index++] = current;
 
 		for (int i = 1; i < size; i++)
 		{
-			int start = read(stream) & 0xFF;
-			int end = read(stream) & 0xFF;
-			String next = readString(stream);
+			int start = view.get() & 0xFF;
+			int end = view.get() & 0xFF;
+			String next = readString(view);
 
 			if (start > 0)
 			{
@@ -1250,6 +1560,47 @@ public class DiskIndex
 		}
 	}
 
+	/**
+	 * readDocumentArray
+	 * 
+	 * @param view
+	 * @param arraySize
+	 * @return
+	 */
+	private List<Integer> readDocumentArray(ByteBuffer view, int arraySize)
+	{
+		if (arraySize == 0)
+		{
+			return Collections.emptyList();
+		}
+
+		List<Integer> indexes = new ArrayList<Integer>(arraySize);
+
+		for (int i = 0; i < arraySize; i++)
+		{
+			int value = 0;
+
+			switch (this.documentReferenceSize)
+			{
+				case 1:
+					value = view.get() & 0xFF;
+					break;
+
+				case 2:
+					value = view.getShort() & 0xFFFF;
+					break;
+
+				default:
+					value = view.getInt();
+					break;
+			}
+
+			indexes.add(value);
+		}
+
+		return indexes;
+	}
+
 	/**
 	 * readDocumentName
 	 * 
@@ -1278,25 +1629,14 @@ public class DiskIndex
 				throw new IllegalArgumentException();
 			}
 
-			InputStream file = new BufferedInputStream(new FileInputStream(this.indexFile));
+			ByteBuffer view = this.buffer.duplicate();
 
-			try
-			{
-				skip(file, start);
+			view.position(start);
 
-				int numberOfNames = isLastChunk ? this.sizeOfLastChunk : CHUNK_SIZE;
+			int numberOfNames = isLastChunk ? this.sizeOfLastChunk : CHUNK_SIZE;
 
-				chunk = new String[numberOfNames];
-				readChunk(chunk, file, 0, numberOfNames);
-			}
-			catch (IOException ioe)
-			{
-				throw ioe;
-			}
-			finally
-			{
-				file.close();
-			}
+			chunk = new String[numberOfNames];
+			readChunk(chunk, view, 0, numberOfNames);
 
 			this.cachedChunks[chunkNumber] = chunk;
 		}
@@ -1305,147 +1645,128 @@ public class DiskIndex
 	}
 
 	/**
-	 * readDocumentNumbers
+	 * Reads the header offset and, if the index isn't empty, the header itself. The view is expected to be positioned
+	 * right after the signature.
 	 * 
-	 * @param arrayOffset
-	 * @return
+	 * @param view
 	 * @throws IOException
 	 */
-	private @SuppressWarnings("unchecked")
-	synchronized List<Integer> readDocumentNumbers(Object arrayOffset) throws IOException
+	private void readHeader(ByteBuffer view) throws IOException
 	{
-		// arrayOffset is either a cached array of docNumbers or an Integer offset in the file
-		if (arrayOffset instanceof List<?>)
-		{
-			return (List<Integer>) arrayOffset;
-		}
+		this.headerInfoOffset = view.getInt();
 
-		InputStream stream = new BufferedInputStream(new FileInputStream(this.indexFile));
-
-		try
-		{
-			int offset = ((Integer) arrayOffset).intValue();
-
-			skip(stream, offset);
-
-			return readStreamDocumentArray(stream, readStreamInt(stream));
-		}
-		finally
-		{
-			stream.close();
+		if (this.headerInfoOffset > 0)
+		{ // file is empty if its not set
+			view.position(this.headerInfoOffset);
+			readHeaderInfo(view);
 		}
 	}
 
 	/**
 	 * readHeaderInfo
 	 * 
-	 * @param stream
+	 * @param view
 	 * @throws IOException
 	 */
-	private void readHeaderInfo(InputStream stream) throws IOException
+	private void readHeaderInfo(ByteBuffer view) throws IOException
 	{
 		// must be same order as writeHeaderInfo()
-		this.numberOfChunks = readStreamInt(stream);
+		this.numberOfChunks = view.getInt();
 		if (this.numberOfChunks < 0)
 		{
 			throw new IOException(MessageFormat.format("Corrupt index file, reported {0} chunks", numberOfChunks)); //$NON-NLS-1$
 		}
-		this.sizeOfLastChunk = read(stream) & 0xFF;
-		this.documentReferenceSize = read(stream) & 0xFF;
-		this.separator = (char) (read(stream) & 0xFF);
+		this.sizeOfLastChunk = view.get() & 0xFF;
+		this.documentReferenceSize = view.get() & 0xFF;
+		this.separator = (char) (view.get() & 0xFF);
 
 		this.chunkOffsets = new int[this.numberOfChunks];
 		for (int i = 0; i < this.numberOfChunks; i++)
 		{
-			this.chunkOffsets[i] = readStreamInt(stream);
+			this.chunkOffsets[i] = view.getInt();
 		}
 
-		this.startOfCategoryTables = readStreamInt(stream);
+		this.startOfCategoryTables = view.getInt();
 
 		// Build the table of categories to offsets where they start
-		int categoryCount = readStreamInt(stream);
+		int categoryCount = view.getInt();
+		if (categoryCount < 0)
+		{
+			throw new IOException(MessageFormat.format("Corrupt index file, reported {0} categories", categoryCount)); //$NON-NLS-1$
+		}
 		this.categoryOffsets = new HashMap<String, Integer>(categoryCount);
 		for (int i = 0; i < categoryCount; i++)
 		{
-			String categoryName = readString(stream);
-			int offset = readStreamInt(stream);
+			String categoryName = readString(view);
+			int offset = view.getInt();
 			this.categoryOffsets.put(categoryName, offset); // cache offset to category table
 		}
-
-		this.categoryTables = new HashMap<String, Map<String, Object>>(3);
 	}
 
 	/**
-	 * readStreamDocumentArray
+	 * Reads a whole category table written in the legacy format, along with all of its document numbers.
 	 * 
-	 * @param stream
-	 * @param arraySize
+	 * @param offset
 	 * @return
 	 * @throws IOException
 	 */
-	private List<Integer> readStreamDocumentArray(InputStream stream, int arraySize) throws IOException
+	private Map<String, List<Integer>> readLegacyCategoryTable(int offset) throws IOException
 	{
-		if (arraySize == 0)
+		ByteBuffer view = this.buffer.duplicate();
+
+		view.position(offset);
+
+		// Read the number of words in the category
+		int size = view.getInt();
+
+		if (size < 0)
 		{
-			return Collections.emptyList();
+			throw new IOException(MessageFormat.format(
+					"Corrupt index file ''{0}'', category at offset {1} has negative size {2}", this.indexFile, offset, //$NON-NLS-1$
+					size));
 		}
 
-		List<Integer> indexes = new ArrayList<Integer>();
+		Map<String, List<Integer>> categoryTable = new HashMap<String, List<Integer>>(size);
+		ByteBuffer arrays = this.buffer.duplicate();
 
-		for (int i = 0; i < arraySize; i++)
+		for (int i = 0; i < size; i++)
 		{
-			int value = 0;
+			String word = readString(view);
+			int arrayOffset = view.getInt();
 
-			switch (this.documentReferenceSize)
+			// if arrayOffset is:
+			// <= 0 then the array size == 1 with the value -> -arrayOffset
+			// > 1 & < 256 then the size of the array is > 1 & < 256, the document array follows immediately
+			// 256 if the array size >= 256 followed by another int which is the offset to the array (written prior
+			// to the table)
+			if (arrayOffset <= 0)
 			{
-				case 1:
-					value = read(stream) & 0xFF;
-					break;
-
-				case 2:
-					value = (read(stream) & 0xFF) << 8;
-					value = value + (read(stream) & 0xFF);
-					break;
-
-				default:
-					value = readStreamInt(stream);
-					break;
+				categoryTable.put(word, CollectionsUtil.newList(-arrayOffset));
+			}
+			else if (arrayOffset < LARGE_ARRAY_SIZE)
+			{
+				categoryTable.put(word, readDocumentArray(view, arrayOffset));
+			}
+			else
+			{
+				arrays.position(view.getInt());
+				categoryTable.put(word, readDocumentArray(arrays, arrays.getInt()));
 			}
-
-			indexes.add(value);
 		}
 
-		return indexes;
-	}
-
-	/**
-	 * readStreamInt
-	 * 
-	 * @param stream
-	 * @return
-	 * @throws IOException
-	 */
-	private int readStreamInt(InputStream stream) throws IOException
-	{
-		int val = (read(stream) & 0xFF) << 24;
-
-		val += (read(stream) & 0xFF) << 16;
-		val += (read(stream) & 0xFF) << 8;
-
-		return val + (read(stream) & 0xFF);
+		return categoryTable;
 	}
 
 	/**
 	 * readString
 	 * 
-	 * @param stream
+	 * @param view
 	 * @return
 	 * @throws IOException
 	 */
-	private String readString(InputStream stream) throws IOException
+	private String readString(ByteBuffer view) throws IOException
 	{
-		int length = (read(stream) & 0xFF) << 8;
-		length += read(stream) & 0xFF;
+		int length = view.getShort() & 0xFFFF;
 
 		// fill the chars from bytes buffer
 		char[] word = new char[length];
@@ -1453,7 +1774,7 @@ public class DiskIndex
 
 		while (i < length)
 		{
-			byte b = (byte) read(stream);
+			byte b = view.get();
 
 			switch (b & 0xF0)
 			{
@@ -1470,7 +1791,7 @@ public class DiskIndex
 
 				case 0xC0:
 				case 0xD0:
-					char next = (char) read(stream);
+					char next = (char) (view.get() & 0xFF);
 
 					if ((next & 0xC0) != 0x80)
 					{
@@ -1484,8 +1805,8 @@ public class DiskIndex
 					break;
 
 				case 0xE0:
-					char first = (char) read(stream);
-					char second = (char) read(stream);
+					char first = (char) (view.get() & 0xFF);
+					char second = (char) (view.get() & 0xFF);
 
 					if ((first & second & 0xC0) != 0x80)
 					{
@@ -1522,13 +1843,6 @@ public class DiskIndex
 		// FIXME We need to wipe out the category from the file somehow! The problem is that we can drop a document/file
 		// fairly easily by setting it's mapping to null in memory index and merging, but the way the thing is set up we
 		// don't really have an easy way of wiping a category out from memory and disk right now.
-
-		// int offset = this.categoryOffsets.get(categoryName);
-		// // "Wipe out" from the category offset to next category offset. However we need to handle the "long arrays"
-		// written just before offsets!
-		// RandomAccessFile file = new RandomAccessFile(this.indexFile, "rw");
-		// file.seek(offset);
-
 		this.categoriesToDiscard = categoryNames;
 
 		DiskIndex newIndex = mergeWith(memoryIndex);
@@ -1538,45 +1852,6 @@ public class DiskIndex
 		return newIndex;
 	}
 
-	/**
-	 * skip
-	 * 
-	 * @param stream
-	 * @param n
-	 * @return
-	 * @throws IOException
-	 */
-	private long skip(InputStream stream, long n) throws IOException
-	{
-		final long wantToSkip = n;
-		long actuallySkipped = 0;
-
-		while (n > 0)
-		{
-			long skipped = stream.skip(n);
-
-			actuallySkipped += skipped;
-			n = n - skipped;
-
-			if (actuallySkipped == wantToSkip)
-			{
-				return actuallySkipped;
-			}
-
-			int read = stream.read();
-
-			if (read == -1)
-			{
-				return actuallySkipped;
-			}
-
-			n--;
-			actuallySkipped++;
-		}
-
-		return actuallySkipped;
-	}
-
 	/**
 	 * writeCategories
 	 * 
@@ -1585,7 +1860,7 @@ public class DiskIndex
 	 */
 	private void writeCategories(OutputStream stream) throws IOException
 	{
-		for (Map.Entry<String, Map<String, Object>> entry : categoryTables.entrySet())
+		for (Map.Entry<String, Map<String, List<Integer>>> entry : categoryTables.entrySet())
 		{
 			String categoryName = entry.getKey();
 
@@ -1606,8 +1881,7 @@ public class DiskIndex
 	 * @param stream
 	 * @throws IOException
 	 */
-	@SuppressWarnings("unchecked")
-	private void writeCategoryTable(String categoryName, Map<String, Object> wordsToDocs, OutputStream stream)
+	private void writeCategoryTable(String categoryName, Map<String, List<Integer>> wordsToDocs, OutputStream stream)
 			throws IOException
 	{
 		if (this.categoriesToDiscard != null)
@@ -1624,65 +1898,115 @@ public class DiskIndex
 		// the format of a category table is as follows:
 		// any document number arrays with >= 256 elements are written before the table (the offset to each array is
 		// remembered)
-		// then the number of word->int[] pairs in the table is written
-		// for each word -> int[] pair, the word is written followed by:
+		// then the words are written in sorted order, in blocks of BLOCK_SIZE words. The first word of a block is
+		// written in full, every following word as the number of leading characters it shares with the previous word
+		// and the remaining characters. Each word is followed by:
 		// an int <= 0 if the array size == 1
 		// an int > 1 & < 256 for the size of the array if its > 1 & < 256, the document array follows immediately
 		// 256 if the array size >= 256 followed by another int which is the offset to the array (written prior to the
 		// table)
+		// finally the dictionary: the number of words, the number of blocks and the first word and offset of each
+		// block. The category offset points at the dictionary.
+		List<String> words = new ArrayList<String>(wordsToDocs.size());
+
+		for (String word : wordsToDocs.keySet())
+		{
+			if (word == null)
+			{
+				continue;
+			}
+
+			if (word.length() >= 65535)
+			{
+				// We may have run into the JS indexing issue: https://jira.appcelerator.org/browse/APSTUD-7366
+				// To limit the damage, we're going to effectively skip writing one entry into the index. This will
+				// break our knowledge of some property/type in JS but will allow indexing to continue.
+				IdeLog.logError(IndexPlugin.getDefault(), MessageFormat.format(
+						"Skipping word of length {0} in category ''{1}'' of index file {2}", word.length(), //$NON-NLS-1$
+						categoryName, indexFile.getAbsolutePath()));
+				continue;
+			}
+
+			words.add(word);
+		}
+
+		Collections.sort(words);
 
 		Map<String, Integer> longArrays = new HashMap<String, Integer>();
-		int largeArraySize = 256;
 
-		for (Map.Entry<String, Object> entry : wordsToDocs.entrySet())
+		for (String word : words)
 		{
-			List<Integer> docNumbers = (List<Integer>) entry.getValue();
+			List<Integer> docNumbers = wordsToDocs.get(word);
 
-			if (docNumbers.size() >= largeArraySize)
+			if (docNumbers.size() >= LARGE_ARRAY_SIZE)
 			{
-				longArrays.put(entry.getKey(), new Integer(this.streamEnd));
+				longArrays.put(word, new Integer(this.streamEnd));
 				writeDocumentNumbers(docNumbers, stream);
 			}
 		}
 
-		this.categoryOffsets.put(categoryName, this.streamEnd); // remember the offset to the start of the table
-		this.categoryTables.put(categoryName, null); // flush cached table
-		writeStreamInt(stream, wordsToDocs.size());
+		int wordCount = words.size();
+		int blockCount = (wordCount + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		int[] blockOffsets = new int[blockCount];
+		String previous = null;
 
-		for (Map.Entry<String, Object> entry : wordsToDocs.entrySet())
+		for (int i = 0; i < wordCount; i++)
 		{
-			try
+			String word = words.get(i);
+
+			if (i % BLOCK_SIZE == 0)
 			{
-				writeString(stream, entry.getKey());
+				blockOffsets[i / BLOCK_SIZE] = this.streamEnd;
+				writeString(stream, word);
+			}
+			else
+			{
+				int max = Math.min(Math.min(previous.length(), word.length()), 255);
+				int shared = 0;
 
-				if (longArrays.containsKey(entry.getKey()))
+				while (shared < max && previous.charAt(shared) == word.charAt(shared))
 				{
-					writeStreamInt(stream, largeArraySize); // mark to identify that an offset follows
-					writeStreamInt(stream, longArrays.get(entry.getKey()).intValue()); // offset in the file of the
-																						// array of
-					// document numbers
+					shared++;
 				}
-				else
-				{
-					List<Integer> documentNumbers = (List<Integer>) entry.getValue();
 
-					if (documentNumbers.size() == 1)
-					{
-						writeStreamInt(stream, -documentNumbers.get(0));
-					}
-					else
-					{
-						writeDocumentNumbers(documentNumbers, stream);
-					}
-				}
+				stream.write((byte) shared);
+				this.streamEnd++;
+				writeString(stream, word.substring(shared));
 			}
-			catch (IOException ioe)
+
+			Integer longArrayOffset = longArrays.get(word);
+
+			if (longArrayOffset != null)
 			{
-				// We may have run into the JS indexing issue: https://jira.appcelerator.org/browse/APSTUD-7366
-				IdeLog.logError(IndexPlugin.getDefault(), ioe);
-				// To limit the damage, we're going to effectively skip writing one entry into the index. This will
-				// break our knowledge of some property/type in JS but will allow indexing to continue.
+				writeStreamInt(stream, LARGE_ARRAY_SIZE); // mark to identify that an offset follows
+				writeStreamInt(stream, longArrayOffset.intValue()); // offset in the file of the array of document
+				// numbers
+			}
+			else
+			{
+				List<Integer> documentNumbers = wordsToDocs.get(word);
+
+				if (documentNumbers.size() == 1)
+				{
+					writeStreamInt(stream, -documentNumbers.get(0));
+				}
+				else
+				{
+					writeDocumentNumbers(documentNumbers, stream);
+				}
 			}
+
+			previous = word;
+		}
+
+		this.categoryOffsets.put(categoryName, this.streamEnd); // remember the offset to the dictionary of the table
+		writeStreamInt(stream, wordCount);
+		writeStreamInt(stream, blockCount);
+
+		for (int i = 0; i < blockCount; i++)
+		{
+			writeString(stream, words.get(i * BLOCK_SIZE));
+			writeStreamInt(stream, blockOffsets[i]);
 		}
 	}
 
@@ -1822,8 +2146,6 @@ public class DiskIndex
 					break;
 			}
 		}
-
-		stream.flush();
 	}
 
 	/**
@@ -1901,7 +2223,6 @@ public class DiskIndex
 		stream.write((byte) (val >> 8));
 		stream.write((byte) val);
 		this.streamEnd += 4;
-		stream.flush();
 	}
 
 	/**
@@ -1929,7 +2250,6 @@ public class DiskIndex
 		stream.write((byte) (length & 0xFF)); // this will allow to read it faster
 		this.streamEnd += 2;
 
-		// we're assuming that very few char[] are so large that we need to flush the buffer more than once, if at all
 		for (char ch : array)
 		{
 			if ((ch & 0x007F) == ch)
@@ -1972,7 +2292,5 @@ public class DiskIndex
 				streamEnd++;
 			}
 		}
-
-		stream.flush();
 	}
 }
@@ -8,28 +8,43 @@
 package com.aptana.internal.index.core;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.aptana.index.core.Index;
 import com.aptana.index.core.QueryResult;
 import com.aptana.index.core.SearchPattern;
 
+/**
+ * Holds the entries of documents that were added, changed or removed since the index was last saved to disk. The
+ * tables are concurrent, striped by document name, so entries may be added and removed while queries iterate over them
+ * without any locking. Readers see a weakly consistent view: a document that is being indexed may be partially visible.
+ */
 public class MemoryIndex
 {
 	private static final int MERGE_THRESHOLD = 100;
-	private HashMap<String, Map<String, Set<String>>> documentsToTable;
+
+	/**
+	 * Marks a document that was removed. ConcurrentHashMap doesn't allow null values, so this takes the place of the
+	 * null table. It is only compared by identity and is never modified.
+	 */
+	private static final ConcurrentMap<String, ConcurrentMap<String, Boolean>> REMOVED = new ConcurrentHashMap<String, ConcurrentMap<String, Boolean>>(
+			1);
+
+	private final ConcurrentMap<String, ConcurrentMap<String, ConcurrentMap<String, Boolean>>> documentsToTable;
 
 	/**
 	 * MemoryIndex
 	 */
 	public MemoryIndex()
 	{
-		documentsToTable = new HashMap<String, Map<String, Set<String>>>();
+		documentsToTable = new ConcurrentHashMap<String, ConcurrentMap<String, ConcurrentMap<String, Boolean>>>();
 	}
 
 	/**
@@ -43,21 +58,16 @@ public class MemoryIndex
 		// assumed the disk index already skipped over documents which have been added/changed/deleted
 		Set<String> results = new HashSet<String>();
 
-		for (Map.Entry<String, Map<String, Set<String>>> entry : documentsToTable.entrySet())
+		for (Map.Entry<String, ConcurrentMap<String, ConcurrentMap<String, Boolean>>> entry : documentsToTable
+				.entrySet())
 		{
-			if (substring == null)
-			{ // add all new/changed documents
-				if (entry.getValue() != null)
-				{
-					results.add(entry.getKey());
-				}
+			if (entry.getValue() == REMOVED)
+			{
+				continue;
 			}
-			else
+			if (substring == null || entry.getKey().startsWith(substring, 0))
 			{
-				if (entry.getValue() != null && (entry.getKey()).startsWith(substring, 0))
-				{
-					results.add(entry.getKey());
-				}
+				results.add(entry.getKey());
 			}
 		}
 
@@ -73,23 +83,54 @@ public class MemoryIndex
 	 */
 	public void addEntry(String category, String key, String filePath)
 	{
-		Map<String, Set<String>> categoriesToWords = documentsToTable.get(filePath);
+		ConcurrentMap<String, ConcurrentMap<String, Boolean>> categoriesToWords = getOrCreateTable(filePath);
+		ConcurrentMap<String, Boolean> words = categoriesToWords.get(category);
 
-		if (categoriesToWords == null)
+		if (words == null)
 		{
-			categoriesToWords = new HashMap<String, Set<String>>();
-			documentsToTable.put(filePath, categoriesToWords);
+			ConcurrentMap<String, Boolean> newWords = new ConcurrentHashMap<String, Boolean>();
+			words = categoriesToWords.putIfAbsent(category, newWords);
+			if (words == null)
+			{
+				words = newWords;
+			}
 		}
 
-		Set<String> words = categoriesToWords.get(category);
+		words.put(key, Boolean.TRUE);
+	}
 
-		if (words == null)
+	/**
+	 * getOrCreateTable
+	 * 
+	 * @param filePath
+	 * @return
+	 */
+	private ConcurrentMap<String, ConcurrentMap<String, Boolean>> getOrCreateTable(String filePath)
+	{
+		while (true)
 		{
-			words = new HashSet<String>();
-			categoriesToWords.put(category, words);
-		}
+			ConcurrentMap<String, ConcurrentMap<String, Boolean>> categoriesToWords = documentsToTable.get(filePath);
+
+			if (categoriesToWords != null && categoriesToWords != REMOVED)
+			{
+				return categoriesToWords;
+			}
+
+			ConcurrentMap<String, ConcurrentMap<String, Boolean>> newTable = new ConcurrentHashMap<String, ConcurrentMap<String, Boolean>>();
 
-		words.add(key);
+			if (categoriesToWords == null)
+			{
+				if (documentsToTable.putIfAbsent(filePath, newTable) == null)
+				{
+					return newTable;
+				}
+			}
+			else if (documentsToTable.replace(filePath, REMOVED, newTable))
+			{
+				return newTable;
+			}
+			// lost a race with another writer, try again
+		}
 	}
 
 	/**
@@ -109,18 +150,19 @@ public class MemoryIndex
 			results = new HashMap<String, QueryResult>();
 		}
 
-		for (Map.Entry<String, Map<String, Set<String>>> entry : documentsToTable.entrySet())
+		for (Map.Entry<String, ConcurrentMap<String, ConcurrentMap<String, Boolean>>> entry : documentsToTable
+				.entrySet())
 		{
-			Map<String, Set<String>> categoriesToWords = entry.getValue();
+			Map<String, ConcurrentMap<String, Boolean>> categoriesToWords = entry.getValue();
 
-			if (categoriesToWords == null)
+			if (categoriesToWords == REMOVED)
 			{
 				continue;
 			}
 
 			for (String category : categories)
 			{
-				Set<String> words = categoriesToWords.get(category);
+				Map<String, Boolean> words = categoriesToWords.get(category);
 				if (words == null)
 				{
 					continue;
@@ -129,7 +171,7 @@ public class MemoryIndex
 				// When we're looking for exact matches, case sensitive, just ask wordset if it contains key!
 				if (matchRules == (SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE))
 				{
-					if (words.contains(key))
+					if (words.containsKey(key))
 					{
 						QueryResult result = results.get(key);
 
@@ -145,7 +187,7 @@ public class MemoryIndex
 				else
 				{
 					// Otherwise we need to check each word individually
-					for (String word : words)
+					for (String word : words.keySet())
 					{
 						if (Index.isMatch(key, word, matchRules))
 						{
@@ -167,6 +209,160 @@ public class MemoryIndex
 		return results;
 	}
 
+	/**
+	 * Adds the words of the categories that match any of the keys.
+	 * 
+	 * @param categories
+	 * @param keys
+	 * @param matchRules
+	 * @param results
+	 * @return
+	 */
+	public Map<String, QueryResult> addQueryResults(String[] categories, String[] keys, int matchRules,
+			Map<String, QueryResult> results)
+	{
+		if (keys.length == 1)
+		{
+			return addQueryResults(categories, keys[0], matchRules, results);
+		}
+		if (results == null)
+		{
+			results = new HashMap<String, QueryResult>();
+		}
+
+		boolean exact = matchRules == (SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE);
+		String[] prefixes = (matchRules == (SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE)) ? getPrefixFreeKeys(keys)
+				: null;
+
+		for (Map.Entry<String, ConcurrentMap<String, ConcurrentMap<String, Boolean>>> entry : documentsToTable
+				.entrySet())
+		{
+			Map<String, ConcurrentMap<String, Boolean>> categoriesToWords = entry.getValue();
+
+			if (categoriesToWords == REMOVED)
+			{
+				continue;
+			}
+
+			for (String category : categories)
+			{
+				Map<String, Boolean> words = categoriesToWords.get(category);
+				if (words == null)
+				{
+					continue;
+				}
+
+				if (exact)
+				{
+					for (String key : keys)
+					{
+						if (words.containsKey(key))
+						{
+							addDocumentName(results, key, entry.getKey());
+						}
+					}
+					continue;
+				}
+
+				for (String word : words.keySet())
+				{
+					if (prefixes != null ? startsWithAny(word, prefixes) : isMatch(keys, word, matchRules))
+					{
+						addDocumentName(results, word, entry.getKey());
+					}
+				}
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * addDocumentName
+	 * 
+	 * @param results
+	 * @param word
+	 * @param documentName
+	 */
+	private static void addDocumentName(Map<String, QueryResult> results, String word, String documentName)
+	{
+		QueryResult result = results.get(word);
+
+		if (result == null)
+		{
+			result = new QueryResult(word);
+			results.put(word, result);
+		}
+
+		result.addDocumentName(documentName);
+	}
+
+	/**
+	 * Sorts the keys and drops the ones that start with another key, since every word they match is matched by the
+	 * shorter key too.
+	 * 
+	 * @param keys
+	 * @return
+	 */
+	private static String[] getPrefixFreeKeys(String[] keys)
+	{
+		String[] sorted = keys.clone();
+		Arrays.sort(sorted);
+
+		List<String> result = new ArrayList<String>(sorted.length);
+		for (String key : sorted)
+		{
+			if (result.isEmpty() || !key.startsWith(result.get(result.size() - 1)))
+			{
+				result.add(key);
+			}
+		}
+
+		return result.toArray(new String[result.size()]);
+	}
+
+	/**
+	 * isMatch
+	 * 
+	 * @param keys
+	 * @param word
+	 * @param matchRules
+	 * @return
+	 */
+	private static boolean isMatch(String[] keys, String word, int matchRules)
+	{
+		for (String key : keys)
+		{
+			if (Index.isMatch(key, word, matchRules))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Does the word start with one of the sorted, prefix free keys? Only the greatest key that sorts before the word can
+	 * be its prefix.
+	 * 
+	 * @param word
+	 * @param prefixes
+	 * @return
+	 */
+	private static boolean startsWithAny(String word, String[] prefixes)
+	{
+		int index = Arrays.binarySearch(prefixes, word);
+
+		if (index >= 0)
+		{
+			return true;
+		}
+
+		int floor = -index - 2;
+
+		return floor >= 0 && word.startsWith(prefixes[floor]);
+	}
+
 	/**
 	 * getCategories
 	 * 
@@ -176,36 +372,53 @@ public class MemoryIndex
 	{
 		Set<String> categories = new HashSet<String>();
 
-		for (Map<String, Set<String>> value : documentsToTable.values())
+		for (Map<String, ConcurrentMap<String, Boolean>> value : documentsToTable.values())
 		{
-			if (value != null)
-			{
-				categories.addAll(value.keySet());
-			}
+			categories.addAll(value.keySet());
 		}
 
 		return new ArrayList<String>(categories);
 	}
 
 	/**
-	 * getCategoriesForDocument
+	 * Returns a snapshot of the words in each category of a document, or null if the document was removed.
 	 * 
 	 * @param docname
 	 * @return
 	 */
 	Map<String, Set<String>> getCategoriesForDocument(String docname)
 	{
-		return documentsToTable.get(docname);
+		Map<String, ConcurrentMap<String, Boolean>> categoriesToWords = documentsToTable.get(docname);
+
+		if (categoriesToWords == null || categoriesToWords == REMOVED)
+		{
+			return null;
+		}
+
+		Map<String, Set<String>> snapshot = new HashMap<String, Set<String>>(categoriesToWords.size());
+		for (Map.Entry<String, ConcurrentMap<String, Boolean>> entry : categoriesToWords.entrySet())
+		{
+			snapshot.put(entry.getKey(), new HashSet<String>(entry.getValue().keySet()));
+		}
+		return snapshot;
 	}
 
 	/**
-	 * getDocumentsToReferences
+	 * Returns a snapshot of the changed documents, mapping each document name to whether it was removed.
 	 * 
 	 * @return
 	 */
-	Map<String, Map<String, Set<String>>> getDocumentsToReferences()
+	Map<String, Boolean> getChangedDocuments()
 	{
-		return Collections.unmodifiableMap(documentsToTable);
+		Map<String, Boolean> snapshot = new HashMap<String, Boolean>(documentsToTable.size());
+
+		for (Map.Entry<String, ConcurrentMap<String, ConcurrentMap<String, Boolean>>> entry : documentsToTable
+				.entrySet())
+		{
+			snapshot.put(entry.getKey(), entry.getValue() == REMOVED);
+		}
+
+		return snapshot;
 	}
 
 	/**
@@ -215,7 +428,7 @@ public class MemoryIndex
 	 */
 	public boolean hasChanged()
 	{
-		return numberOfChanges() > 0;
+		return !documentsToTable.isEmpty();
 	}
 
 	/**
@@ -226,7 +439,20 @@ public class MemoryIndex
 	 */
 	public boolean hasDocument(String documentName)
 	{
-		return documentsToTable.get(documentName) != null;
+		Map<String, ConcurrentMap<String, Boolean>> categoriesToWords = documentsToTable.get(documentName);
+
+		return categoriesToWords != null && categoriesToWords != REMOVED;
+	}
+
+	/**
+	 * Has the document been added, changed or removed? If so, its entries on disk are stale.
+	 * 
+	 * @param documentName
+	 * @return
+	 */
+	boolean isDocumentChanged(String documentName)
+	{
+		return documentsToTable.containsKey(documentName);
 	}
 
 	/**
@@ -246,7 +472,7 @@ public class MemoryIndex
 	 */
 	public void remove(String documentName)
 	{
-		this.documentsToTable.put(documentName, null);
+		this.documentsToTable.put(documentName, REMOVED);
 	}
 
 	/**
@@ -256,9 +482,9 @@ public class MemoryIndex
 	 */
 	public void removeCategories(String[] categoryNames)
 	{
-		for (Map<String, Set<String>> categoriesToWords : documentsToTable.values())
+		for (Map<String, ConcurrentMap<String, Boolean>> categoriesToWords : documentsToTable.values())
 		{
-			if (categoriesToWords != null)
+			if (categoriesToWords != REMOVED)
 			{
 				for (String category : categoryNames)
 				{
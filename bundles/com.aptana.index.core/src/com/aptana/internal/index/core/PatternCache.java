@@ -0,0 +1,490 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license-epl.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.internal.index.core;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A bounded, thread-safe cache of the matchers used for PATTERN_MATCH and REGEX_MATCH queries. Matchers are kept
+ * across queries, so the same member patterns aren't compiled over and over again. Globs that only use '*' and '?' are
+ * matched without a regex.
+ */
+public class PatternCache
+{
+	/**
+	 * Matches words against a glob or regex
+	 */
+	public interface WordMatcher
+	{
+		/**
+		 * Does the pattern occur in the word?
+		 * 
+		 * @param word
+		 * @return
+		 */
+		boolean matches(String word);
+	}
+
+	private static final char GLOB = 'g';
+	private static final char REGEX = 'r';
+	private static final char REGEX_IGNORE_CASE = 'i';
+
+	private static final WordMatcher NO_MATCH = new WordMatcher()
+	{
+		public boolean matches(String word)
+		{
+			return false;
+		}
+	};
+
+	private final int maxSize;
+	private final ConcurrentMap<String, WordMatcher> matchers;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * PatternCache
+	 * 
+	 * @param maxSize
+	 *            the number of matchers to keep
+	 */
+	public PatternCache(int maxSize)
+	{
+		this.maxSize = maxSize;
+		this.matchers = new ConcurrentHashMap<String, WordMatcher>(maxSize * 4 / 3 + 1);
+	}
+
+	/**
+	 * Returns the matcher for a glob, in which '*' matches any characters and '?' a single character. Literal
+	 * characters match themselves, and a leading or trailing letter or digit must start or end a word.
+	 * 
+	 * @param glob
+	 * @return
+	 */
+	public WordMatcher getGlobMatcher(String glob)
+	{
+		return getMatcher(GLOB, glob);
+	}
+
+	/**
+	 * Returns the matcher for a regex. An invalid regex matches nothing.
+	 * 
+	 * @param regex
+	 * @param caseSensitive
+	 * @return
+	 */
+	public WordMatcher getRegexMatcher(String regex, boolean caseSensitive)
+	{
+		return getMatcher(caseSensitive ? REGEX : REGEX_IGNORE_CASE, regex);
+	}
+
+	/**
+	 * getHits
+	 * 
+	 * @return
+	 */
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * getMisses
+	 * 
+	 * @return
+	 */
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * getEvictions
+	 * 
+	 * @return
+	 */
+	public long getEvictions()
+	{
+		return evictions.get();
+	}
+
+	/**
+	 * size
+	 * 
+	 * @return
+	 */
+	public int size()
+	{
+		return matchers.size();
+	}
+
+	/**
+	 * clear
+	 */
+	public void clear()
+	{
+		matchers.clear();
+	}
+
+	/**
+	 * getMatcher
+	 * 
+	 * @param kind
+	 * @param pattern
+	 * @return
+	 */
+	private WordMatcher getMatcher(char kind, String pattern)
+	{
+		String key = kind + pattern;
+		WordMatcher matcher = matchers.get(key);
+
+		if (matcher != null)
+		{
+			hits.incrementAndGet();
+			return matcher;
+		}
+
+		misses.incrementAndGet();
+		matcher = createMatcher(kind, pattern);
+
+		// two threads may compile the same pattern at once; that's harmless, the last one wins
+		matchers.put(key, matcher);
+		if (matchers.size() > maxSize)
+		{
+			evict();
+		}
+
+		return matcher;
+	}
+
+	/**
+	 * Drops matchers until the cache is back to three quarters of its size. Queries tend to reuse the patterns they
+	 * just used, but there's no ordering in the map, so this simply makes room in batches rather than tracking use.
+	 */
+	private void evict()
+	{
+		int target = maxSize * 3 / 4;
+		Iterator<String> keys = matchers.keySet().iterator();
+
+		while (matchers.size() > target && keys.hasNext())
+		{
+			keys.next();
+			keys.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * createMatcher
+	 * 
+	 * @param kind
+	 * @param pattern
+	 * @return
+	 */
+	private static WordMatcher createMatcher(char kind, String pattern)
+	{
+		switch (kind)
+		{
+			case GLOB:
+				if (pattern.indexOf('\\') == -1)
+				{
+					return new GlobMatcher(pattern);
+				}
+				return new RegexMatcher(Pattern.compile(globToRegex(pattern)));
+
+			default:
+				try
+				{
+					int flags = (kind == REGEX_IGNORE_CASE) ? Pattern.CASE_INSENSITIVE : 0;
+
+					return new RegexMatcher(Pattern.compile(pattern, flags));
+				}
+				catch (PatternSyntaxException e)
+				{
+					return NO_MATCH;
+				}
+		}
+	}
+
+	/**
+	 * Converts a glob to the regex it stands for.
+	 * 
+	 * @param pattern
+	 * @return
+	 */
+	static String globToRegex(String pattern)
+	{
+		int len = pattern.length();
+		StringBuffer buffer = new StringBuffer(len + 10);
+
+		if (len > 0 && isWordChar(pattern.charAt(0)))
+		{
+			buffer.append("\\b"); //$NON-NLS-1$
+		}
+
+		appendAsRegEx(pattern, buffer);
+
+		if (len > 0 && isWordChar(pattern.charAt(len - 1)))
+		{
+			buffer.append("\\b"); //$NON-NLS-1$
+		}
+
+		return buffer.toString();
+	}
+
+	/**
+	 * appendAsRegEx
+	 * 
+	 * @param pattern
+	 * @param buffer
+	 * @return
+	 */
+	private static StringBuffer appendAsRegEx(String pattern, StringBuffer buffer)
+	{
+		boolean isEscaped = false;
+
+		for (int i = 0; i < pattern.length(); i++)
+		{
+			char c = pattern.charAt(i);
+
+			switch (c)
+			{
+			// the backslash
+				case '\\':
+					// the backslash is escape char in string matcher
+					if (!isEscaped)
+					{
+						isEscaped = true;
+					}
+					else
+					{
+						buffer.append("\\\\"); //$NON-NLS-1$
+						isEscaped = false;
+					}
+					break;
+
+				// characters that need to be escaped in the regex.
+				case '(':
+				case ')':
+				case '{':
+				case '}':
+				case '.':
+				case '[':
+				case ']':
+				case '$':
+				case '^':
+				case '+':
+				case '|':
+					if (isEscaped)
+					{
+						buffer.append("\\\\"); //$NON-NLS-1$
+						isEscaped = false;
+					}
+					buffer.append('\\');
+					buffer.append(c);
+					break;
+
+				case '?':
+					if (!isEscaped)
+					{
+						buffer.append('.');
+					}
+					else
+					{
+						buffer.append('\\');
+						buffer.append(c);
+						isEscaped = false;
+					}
+					break;
+
+				case '*':
+					if (!isEscaped)
+					{
+						buffer.append(".*"); //$NON-NLS-1$
+					}
+					else
+					{
+						buffer.append('\\');
+						buffer.append(c);
+						isEscaped = false;
+					}
+					break;
+
+				default:
+					if (isEscaped)
+					{
+						buffer.append("\\\\"); //$NON-NLS-1$
+						isEscaped = false;
+					}
+					buffer.append(c);
+					break;
+			}
+		}
+
+		if (isEscaped)
+		{
+			buffer.append("\\\\"); //$NON-NLS-1$
+			isEscaped = false;
+		}
+
+		return buffer;
+	}
+
+	/**
+	 * isWordChar
+	 * 
+	 * @param c
+	 * @return
+	 */
+	private static boolean isWordChar(char c)
+	{
+		return Character.isLetterOrDigit(c);
+	}
+
+	/**
+	 * RegexMatcher
+	 */
+	private static class RegexMatcher implements WordMatcher
+	{
+		private final Pattern pattern;
+
+		RegexMatcher(Pattern pattern)
+		{
+			this.pattern = pattern;
+		}
+
+		public boolean matches(String word)
+		{
+			return pattern.matcher(word).find();
+		}
+	}
+
+	/**
+	 * Matches a glob without a regex, with the same results as finding {@link PatternCache#globToRegex(String)} in the
+	 * word. Words with characters that make regex word boundaries or '.' harder to reproduce, namely surrogate pairs and
+	 * combining marks, are handed to the regex.
+	 */
+	private static class GlobMatcher implements WordMatcher
+	{
+		private final char[] glob;
+		private final boolean boundaryAtStart;
+		private final boolean boundaryAtEnd;
+		private volatile Pattern regex;
+
+		GlobMatcher(String glob)
+		{
+			this.glob = glob.toCharArray();
+			this.boundaryAtStart = glob.length() > 0 && isWordChar(glob.charAt(0));
+			this.boundaryAtEnd = glob.length() > 0 && isWordChar(glob.charAt(glob.length() - 1));
+		}
+
+		public boolean matches(String word)
+		{
+			int length = word.length();
+
+			for (int i = 0; i < length; i++)
+			{
+				char c = word.charAt(i);
+
+				if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)
+						|| Character.getType(c) == Character.NON_SPACING_MARK)
+				{
+					return matchesRegex(word);
+				}
+			}
+
+			for (int start = 0; start <= length; start++)
+			{
+				if (boundaryAtStart && start > 0 && isRegexWordChar(word.charAt(start - 1)))
+				{
+					continue;
+				}
+				if (matchesAt(word, 0, start))
+				{
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		private boolean matchesAt(String word, int globIndex, int wordIndex)
+		{
+			int length = word.length();
+
+			while (globIndex < glob.length)
+			{
+				char g = glob[globIndex];
+
+				if (g == '*')
+				{
+					// '.*' may match any run of characters up to the next line terminator
+					for (int i = wordIndex; i <= length; i++)
+					{
+						if (matchesAt(word, globIndex + 1, i))
+						{
+							return true;
+						}
+						if (i < length && isLineTerminator(word.charAt(i)))
+						{
+							break;
+						}
+					}
+					return false;
+				}
+
+				if (wordIndex >= length)
+				{
+					return false;
+				}
+
+				char c = word.charAt(wordIndex);
+
+				if (g == '?' ? isLineTerminator(c) : g != c)
+				{
+					return false;
+				}
+
+				globIndex++;
+				wordIndex++;
+			}
+
+			return !boundaryAtEnd || wordIndex == length || !isRegexWordChar(word.charAt(wordIndex));
+		}
+
+		private boolean matchesRegex(String word)
+		{
+			Pattern p = regex;
+
+			if (p == null)
+			{
+				p = regex = Pattern.compile(globToRegex(new String(glob)));
+			}
+
+			return p.matcher(word).find();
+		}
+
+		private static boolean isLineTerminator(char c)
+		{
+			return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+		}
+
+		private static boolean isRegexWordChar(char c)
+		{
+			// what java.util.regex considers a word character for \b
+			return Character.isLetterOrDigit(c) || c == '_';
+		}
+	}
+}
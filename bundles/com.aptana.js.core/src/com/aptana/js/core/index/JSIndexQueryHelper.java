@@ -7,14 +7,17 @@
  */
 package com.aptana.js.core.index;
 
+import java.lang.ref.WeakReference;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 
@@ -51,6 +54,17 @@ public class JSIndexQueryHelper
 
 	private static final String DOT_EXPORTS = ".exports"; //$NON-NLS-1$
 
+	/**
+	 * How many lists of indices, about one per project, to keep the last looked up globals for.
+	 */
+	private static final int MAX_GLOBALS_SNAPSHOTS = 16;
+
+	/**
+	 * The last globals looked up for each list of indices. The indices are only referenced weakly, so that those
+	 * removed from the index manager can be garbage collected.
+	 */
+	private static final Map<IndicesKey, GlobalsSnapshot> GLOBALS_SNAPSHOTS = new GlobalsSnapshots();
+
 	public static Index getJSCoreIndex()
 	{
 		IndexManager manager = getIndexManager();
@@ -185,6 +199,65 @@ public class JSIndexQueryHelper
 	 * @return
 	 */
 	public Collection<PropertyElement> getGlobals(String fileName)
+	{
+		return getTypeMembers(getGlobalTypes(fileName));
+	}
+
+	/**
+	 * Gets the members defined on Window or Global whose names start with the given prefix, ignoring case. The prefix
+	 * is looked up in the indices, so only the matching members are read.
+	 * <p>
+	 * The last globals looked up for the indices are kept, so looking up a longer prefix, as the user types, filters
+	 * those rather than querying again. They are looked up again once any of the indices changes.
+	 * 
+	 * @param fileName
+	 * @param prefix
+	 *            an empty or null prefix gets all the globals
+	 * @return an unmodifiable collection
+	 */
+	public Collection<PropertyElement> getGlobalsStartingWith(String fileName, String prefix)
+	{
+		List<String> types = getGlobalTypes(fileName);
+		if (prefix == null)
+		{
+			prefix = StringUtil.EMPTY;
+		}
+		long[] modificationCounts = getModificationCounts();
+		IndicesKey key = new IndicesKey(indices);
+
+		GlobalsSnapshot snapshot;
+		synchronized (GLOBALS_SNAPSHOTS)
+		{
+			snapshot = GLOBALS_SNAPSHOTS.get(key);
+		}
+		if (snapshot != null && snapshot.covers(types, prefix, modificationCounts))
+		{
+			return snapshot.getGlobals(prefix);
+		}
+
+		ArrayList<PropertyElement> properties = new ArrayList<PropertyElement>();
+		for (Index index : indices)
+		{
+			properties.addAll(_reader.getFunctions(index, types, prefix));
+			properties.addAll(_reader.getProperties(index, types, prefix));
+		}
+		properties.trimToSize();
+		List<PropertyElement> globals = Collections.unmodifiableList(properties);
+
+		synchronized (GLOBALS_SNAPSHOTS)
+		{
+			GLOBALS_SNAPSHOTS.put(key, new GlobalsSnapshot(types, prefix, modificationCounts, globals));
+		}
+		return globals;
+	}
+
+	/**
+	 * Returns the types holding the globals for the given file, Window first if it's one of them.
+	 * 
+	 * @param fileName
+	 * @return
+	 */
+	private List<String> getGlobalTypes(String fileName)
 	{
 		String globalType = JSTypeUtil.getGlobalType(project, fileName);
 		List<String> types = CollectionsUtil.newList(JSTypeConstants.GLOBAL_TYPE);
@@ -192,7 +265,17 @@ public class JSIndexQueryHelper
 		{
 			types.add(0, JSTypeConstants.WINDOW_TYPE);
 		}
-		return getTypeMembers(types);
+		return types;
+	}
+
+	private long[] getModificationCounts()
+	{
+		long[] counts = new long[indices.size()];
+		for (int i = 0; i < counts.length; i++)
+		{
+			counts[i] = indices.get(i).getModificationCount();
+		}
+		return counts;
 	}
 
 	/**
@@ -514,4 +597,141 @@ public class JSIndexQueryHelper
 		return Path.EMPTY;
 	}
 
+	/**
+	 * The globals looked up for a prefix, along with what they were looked up against.
+	 */
+	private static class GlobalsSnapshot
+	{
+		private final List<String> types;
+		private final String prefix;
+		private final long[] modificationCounts;
+		private final List<PropertyElement> globals;
+
+		GlobalsSnapshot(List<String> types, String prefix, long[] modificationCounts, List<PropertyElement> globals)
+		{
+			this.types = types;
+			this.prefix = prefix;
+			this.modificationCounts = modificationCounts;
+			this.globals = globals;
+		}
+
+		/**
+		 * Whether the globals for the prefix are among these ones, and the indices haven't changed since.
+		 */
+		boolean covers(List<String> types, String prefix, long[] modificationCounts)
+		{
+			return this.types.equals(types) && Arrays.equals(this.modificationCounts, modificationCounts)
+					&& startsWithIgnoreCase(prefix, this.prefix);
+		}
+
+		List<PropertyElement> getGlobals(final String prefix)
+		{
+			if (prefix.length() == this.prefix.length())
+			{
+				return globals;
+			}
+			return Collections.unmodifiableList(CollectionsUtil.filter(globals, new IFilter<PropertyElement>()
+			{
+				public boolean include(PropertyElement item)
+				{
+					return item.getName() != null && startsWithIgnoreCase(item.getName(), prefix);
+				}
+			}));
+		}
+
+		private static boolean startsWithIgnoreCase(String string, String prefix)
+		{
+			return string.regionMatches(true, 0, prefix, 0, prefix.length());
+		}
+	}
+
+	/**
+	 * A list of indices, compared by identity, which doesn't keep them from being garbage collected.
+	 */
+	private static class IndicesKey
+	{
+		private final List<WeakReference<Index>> indices;
+		private final int hashCode;
+
+		IndicesKey(List<Index> indices)
+		{
+			this.indices = new ArrayList<WeakReference<Index>>(indices.size());
+			int hash = 1;
+			for (Index index : indices)
+			{
+				this.indices.add(new WeakReference<Index>(index));
+				hash = 31 * hash + System.identityHashCode(index);
+			}
+			this.hashCode = hash;
+		}
+
+		/**
+		 * Whether any of the indices has been garbage collected, in which case the key no longer matches any other.
+		 */
+		boolean isCleared()
+		{
+			for (WeakReference<Index> index : indices)
+			{
+				if (index.get() == null)
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+			{
+				return true;
+			}
+			if (!(obj instanceof IndicesKey))
+			{
+				return false;
+			}
+			List<WeakReference<Index>> other = ((IndicesKey) obj).indices;
+			if (other.size() != indices.size())
+			{
+				return false;
+			}
+			for (int i = 0; i < indices.size(); i++)
+			{
+				Index index = indices.get(i).get();
+				if (index == null || index != other.get(i).get())
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashCode;
+		}
+	}
+
+	/**
+	 * Keeps the globals of the lists of indices most recently looked up, dropping those of indices that have been
+	 * garbage collected first.
+	 */
+	private static class GlobalsSnapshots extends LinkedHashMap<IndicesKey, GlobalsSnapshot>
+	{
+		private static final long serialVersionUID = 1L;
+
+		GlobalsSnapshots()
+		{
+			super(MAX_GLOBALS_SNAPSHOTS, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<IndicesKey, GlobalsSnapshot> eldest)
+		{
+			// the globals of removed indices are never looked up again, so they end up eldest
+			return size() > MAX_GLOBALS_SNAPSHOTS || eldest.getKey().isCleared();
+		}
+	}
 }
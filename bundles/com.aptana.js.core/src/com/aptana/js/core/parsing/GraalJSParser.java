@@ -5,12 +5,17 @@ import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.preferences.IPreferencesService;
+
 import com.aptana.core.build.IProblem.Severity;
 import com.aptana.core.util.StringUtil;
 import com.aptana.js.core.IJSConstants;
+import com.aptana.js.core.JSCorePlugin;
 import com.aptana.js.core.parsing.ast.IJSNodeTypes;
 import com.aptana.js.core.parsing.ast.JSCommentNode;
 import com.aptana.js.core.parsing.ast.JSParseRootNode;
+import com.aptana.js.core.preferences.IPreferenceConstants;
 import com.aptana.parsing.AbstractParser;
 import com.aptana.parsing.IParseState;
 import com.aptana.parsing.WorkingParseResult;
@@ -35,6 +40,42 @@ public class GraalJSParser extends AbstractParser
 	private static final String DEFAULT_FILENAME = "filename.js"; //$NON-NLS-1$
 	private CommentCollectingParser fParser;
 
+	/**
+	 * Do we reuse the unchanged statements of a recent parse? See {@link IncrementalReparser}.
+	 */
+	private final boolean fIncremental;
+
+	/**
+	 * Was the last source parsed as a module, rather than as a script?
+	 */
+	private boolean fModule;
+
+	/**
+	 * Creates a parser that reparses incrementally when turned on in the preferences.
+	 */
+	public GraalJSParser()
+	{
+		this(isIncrementalParsingEnabled());
+	}
+
+	/**
+	 * GraalJSParser
+	 * 
+	 * @param incremental
+	 *            whether edits to a recently parsed source only reparse the statements around the edit
+	 */
+	public GraalJSParser(boolean incremental)
+	{
+		fIncremental = incremental;
+	}
+
+	private static boolean isIncrementalParsingEnabled()
+	{
+		IPreferencesService service = Platform.getPreferencesService();
+		return service != null
+				&& service.getBoolean(JSCorePlugin.PLUGIN_ID, IPreferenceConstants.JS_INCREMENTAL_PARSING, false, null);
+	}
+
 	protected void parse(IParseState parseState, final WorkingParseResult working) throws Exception
 	{
 		String source = parseState.getSource();
@@ -46,14 +87,28 @@ public class GraalJSParser extends AbstractParser
 
 		try
 		{
-			FunctionNode graalAST = parse(filename, 0, source, working);
-			JSParseRootNode ast = (JSParseRootNode) convertAST(source, graalAST);
-			if (ast != null)
+			int start = parseState.getStartingOffset();
+			JSParseRootNode ast = null;
+			// recent parses are kept per file, so a source without one is always parsed from scratch
+			boolean incremental = fIncremental && start == 0 && parseState.getFilename() != null;
+
+			if (incremental)
+			{
+				ast = reparse(filename, source);
+			}
+			if (ast == null)
 			{
-				ast.setCommentNodes(fParser.getCommentNodes());
+				FunctionNode graalAST = parse(filename, 0, source, working);
+				ast = (JSParseRootNode) convertAST(source, graalAST);
+				if (ast != null)
+				{
+					ast.setCommentNodes(fParser.getCommentNodes());
+				}
+			}
 
+			if (ast != null)
+			{
 				// update node offsets
-				int start = parseState.getStartingOffset();
 				int length = source.length();
 
 				// align root with zero-based offset
@@ -64,6 +119,10 @@ public class GraalJSParser extends AbstractParser
 					// shift all offsets to the correct position
 					ParseUtil.addOffset(ast, start);
 				}
+				else if (incremental && working.getErrors().isEmpty())
+				{
+					IncrementalReparser.remember(filename, source, ast, fModule);
+				}
 				working.setParseResult(ast);
 			}
 
@@ -79,6 +138,59 @@ public class GraalJSParser extends AbstractParser
 
 	}
 
+	/**
+	 * Reparses the top-level statements around the edit to a source we recently parsed, and reuses the rest of that
+	 * parse. Returns null if the source needs a full parse.
+	 * 
+	 * @param filename
+	 * @param source
+	 * @return
+	 */
+	private JSParseRootNode reparse(String filename, String source)
+	{
+		IncrementalReparser.Region region = IncrementalReparser.getRegion(filename, source);
+		if (region == null)
+		{
+			return null;
+		}
+
+		final boolean[] failed = new boolean[] { false };
+		ErrorManager errorManager = new ErrorManager()
+		{
+			@Override
+			public void error(final ParserException e)
+			{
+				failed[0] = true;
+			}
+		};
+		fParser = new CommentCollectingParser(createEnvironment(), Source.sourceFor(filename, source), errorManager);
+
+		try
+		{
+			// parse with the goal the rest of the source was parsed with
+			int length = region.end - region.start;
+			FunctionNode graalAST = region.isModule() ? fParser.parseModule(filename, region.start, length)
+					: fParser.parse(filename, region.start, length, false);
+			if (graalAST == null || failed[0])
+			{
+				return null;
+			}
+
+			JSParseRootNode regionAST = (JSParseRootNode) convertAST(source, graalAST);
+			if (regionAST == null)
+			{
+				return null;
+			}
+			fModule = region.isModule();
+			return IncrementalReparser.merge(region, regionAST, fParser.getCommentNodes());
+		}
+		catch (RuntimeException e)
+		{
+			// whatever went wrong, the full parse will deal with it
+			return null;
+		}
+	}
+
 	private IParseError handleError(Exception e)
 	{
 		// print the stack traces to a string!
@@ -108,7 +220,7 @@ public class GraalJSParser extends AbstractParser
 
 		final Boolean inRecoveryMode[] = new Boolean[] { false };
 
-		ScriptEnvironment env = ScriptEnvironment.builder().es6(true).strict(false).emptyStatements(true).build();
+		ScriptEnvironment env = createEnvironment();
 		ErrorManager errorManager = new ErrorManager()
 		{
 			@Override
@@ -137,8 +249,10 @@ public class GraalJSParser extends AbstractParser
 
 		// First try as module. This also implicitly does strict mode.
 		FunctionNode result = fParser.parseModule(filename, startOffset, source.length() - startOffset);
+		fModule = true;
 		if (result == null || errorManager.getParserException() != null)
 		{
+			fModule = false;
 			// Reset state and fall back to non-strict script as our goal
 			working.getErrors().clear();
 			fParser = new CommentCollectingParser(env, src, errorManager);
@@ -158,6 +272,11 @@ public class GraalJSParser extends AbstractParser
 		return result;
 	}
 
+	private static ScriptEnvironment createEnvironment()
+	{
+		return ScriptEnvironment.builder().es6(true).strict(false).emptyStatements(true).build();
+	}
+
 	private static class CommentCollectingParser extends Parser
 	{
 		private static final int DIDNT_SEE_COMMENT = -1;
@@ -0,0 +1,536 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.js.core.parsing;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import com.aptana.js.core.parsing.ast.IJSNodeTypes;
+import com.aptana.js.core.parsing.ast.JSClassNode;
+import com.aptana.js.core.parsing.ast.JSDeclarationNode;
+import com.aptana.js.core.parsing.ast.JSExportNode;
+import com.aptana.js.core.parsing.ast.JSFunctionNode;
+import com.aptana.js.core.parsing.ast.JSImportNode;
+import com.aptana.js.core.parsing.ast.JSParseRootNode;
+import com.aptana.js.core.parsing.ast.JSVarNode;
+import com.aptana.parsing.ast.IParseNode;
+import com.aptana.parsing.ast.ParseNode;
+
+/**
+ * Reuses the top-level statements of a recent parse of a nearly identical source. The edit is found by comparing the
+ * new source with the sources of the last few parses, and only the statements around it are reparsed. The statements
+ * before the edit are copied as they are, and the ones after it are copied and shifted by the length of the edit.
+ * <p>
+ * The parsers don't know what was edited, hence the comparison. Parses are remembered per source name, so only later
+ * versions of the same file reuse them, and sources without a name are always parsed from scratch. A parse is only
+ * reused if it had no errors. The reparsed region always starts and ends with an untouched statement, and it must
+ * come back with those statements unchanged and without errors, so that an edit that runs into the surrounding code,
+ * like an unclosed brace or comment, falls back to a full parse. So do edits that declare new top-level names, as
+ * those could clash with declarations outside of the region, and edits around imports and exports.
+ */
+class IncrementalReparser
+{
+	/**
+	 * Smaller sources are parsed from scratch, which is fast enough and saves keeping them around.
+	 */
+	static final int MIN_SOURCE_LENGTH = 8 * 1024;
+
+	/**
+	 * The number of recent parses to keep, one per source name, typically one per open editor being typed in.
+	 */
+	private static final int MAX_SNAPSHOTS = 4;
+
+	private static final LinkedList<SoftReference<Snapshot>> SNAPSHOTS = new LinkedList<SoftReference<Snapshot>>();
+
+	/**
+	 * A successful full or incremental parse
+	 */
+	private static class Snapshot
+	{
+		private final String name;
+		private final String source;
+		private final IParseNode[] statements;
+		private final IParseNode[] comments;
+		private final boolean module;
+
+		private Snapshot(String name, String source, JSParseRootNode root, boolean module)
+		{
+			this.name = name;
+			this.source = source;
+			this.statements = root.getChildren();
+			this.comments = root.getCommentNodes();
+			this.module = module;
+		}
+	}
+
+	/**
+	 * The part of a new source that has to be reparsed
+	 */
+	static class Region
+	{
+		private final Snapshot base;
+
+		/**
+		 * The number of statements before the region, which are reused as they are
+		 */
+		private final int prefixCount;
+
+		/**
+		 * The index of the first statement after the region, which are reused and shifted
+		 */
+		private final int suffixStart;
+
+		/**
+		 * The number of characters inserted, or removed if negative
+		 */
+		private final int delta;
+
+		/**
+		 * The offsets of the region in the new source. The end is exclusive.
+		 */
+		final int start;
+		final int end;
+
+		private Region(Snapshot base, int prefixCount, int suffixStart, int start, int end, int delta)
+		{
+			this.base = base;
+			this.prefixCount = prefixCount;
+			this.suffixStart = suffixStart;
+			this.start = start;
+			this.end = end;
+			this.delta = delta;
+		}
+
+		/**
+		 * Was the source parsed as a module? The region has to be parsed the same way.
+		 * 
+		 * @return
+		 */
+		boolean isModule()
+		{
+			return base.module;
+		}
+
+		/**
+		 * The inclusive end offset of the region in the old source
+		 * 
+		 * @return
+		 */
+		private int getOldEndingOffset()
+		{
+			return end - delta - 1;
+		}
+	}
+
+	private IncrementalReparser()
+	{
+	}
+
+	/**
+	 * Records a parse without errors, so that edits to its source can reuse it. It replaces the parse recorded for the
+	 * same name.
+	 * 
+	 * @param name
+	 *            the name of the source, typically its file
+	 * @param source
+	 * @param root
+	 * @param module
+	 *            whether the source was parsed as a module
+	 */
+	static void remember(String name, String source, JSParseRootNode root, boolean module)
+	{
+		if (name == null || source.length() < MIN_SOURCE_LENGTH
+				|| !areSelfContained(root.getChildren(), 0, source.length()))
+		{
+			return;
+		}
+
+		Snapshot snapshot = new Snapshot(name, source, root, module);
+
+		synchronized (SNAPSHOTS)
+		{
+			Iterator<SoftReference<Snapshot>> iterator = SNAPSHOTS.iterator();
+
+			while (iterator.hasNext())
+			{
+				Snapshot old = iterator.next().get();
+
+				if (old == null || name.equals(old.name))
+				{
+					iterator.remove();
+				}
+			}
+
+			SNAPSHOTS.addFirst(new SoftReference<Snapshot>(snapshot));
+			while (SNAPSHOTS.size() > MAX_SNAPSHOTS)
+			{
+				SNAPSHOTS.removeLast();
+			}
+		}
+	}
+
+	/**
+	 * Forgets all recorded parses
+	 */
+	static void clear()
+	{
+		synchronized (SNAPSHOTS)
+		{
+			SNAPSHOTS.clear();
+		}
+	}
+
+	/**
+	 * Finds the part of the source that needs to be reparsed, based on the recent parse of the source with the same
+	 * name. Returns null if the source has to be parsed from scratch.
+	 * 
+	 * @param name
+	 *            the name of the source, typically its file
+	 * @param source
+	 * @return
+	 */
+	static Region getRegion(String name, String source)
+	{
+		if (name == null || source.length() < MIN_SOURCE_LENGTH)
+		{
+			return null;
+		}
+
+		Snapshot base = null;
+
+		synchronized (SNAPSHOTS)
+		{
+			Iterator<SoftReference<Snapshot>> iterator = SNAPSHOTS.iterator();
+
+			while (base == null && iterator.hasNext())
+			{
+				Snapshot snapshot = iterator.next().get();
+
+				if (snapshot == null)
+				{
+					iterator.remove();
+				}
+				else if (name.equals(snapshot.name))
+				{
+					base = snapshot;
+				}
+			}
+		}
+
+		if (base == null)
+		{
+			return null;
+		}
+
+		int prefix = getCommonPrefixLength(base.source, source);
+		int suffix = getCommonSuffixLength(base.source, source, prefix);
+
+		// Parse from scratch when more than half of the source changed, like when the file was replaced
+		if ((prefix + suffix) * 2 < source.length())
+		{
+			return null;
+		}
+
+		IParseNode[] statements = base.statements;
+		int count = statements.length;
+		int editStart = prefix;
+		int oldEditEnd = base.source.length() - suffix;
+
+		// statements that end at least a character before the edit, and start at least a character after it, are
+		// untouched, since an edit right next to a statement may well become part of it
+		int before = 0;
+		while (before < count && statements[before].getEndingOffset() + 1 < editStart)
+		{
+			before++;
+		}
+		int after = before;
+		while (after < count && statements[after].getStartingOffset() <= oldEditEnd)
+		{
+			after++;
+		}
+
+		// extend the region to the untouched statements on either side of the edit, so we can tell whether the
+		// edit ran into them
+		int prefixCount = Math.max(before - 1, 0);
+		int suffixStart = Math.min(after + 1, count);
+
+		if (prefixCount == 0 && suffixStart == count)
+		{
+			return null;
+		}
+
+		int delta = source.length() - base.source.length();
+		int start = (prefixCount == 0) ? 0 : statements[prefixCount].getStartingOffset();
+		int end = (suffixStart == count) ? source.length() : statements[suffixStart - 1].getEndingOffset() + 1 + delta;
+
+		return new Region(base, prefixCount, suffixStart, start, end, delta);
+	}
+
+	/**
+	 * Combines the statements of the reparsed region with the reused ones before and after it. Returns null if the
+	 * edit affected more than the region, in which case the source has to be parsed from scratch.
+	 * 
+	 * @param region
+	 * @param regionRoot
+	 *            the root node of the region's statements
+	 * @param regionComments
+	 *            the comments in the region
+	 * @return
+	 */
+	static JSParseRootNode merge(Region region, JSParseRootNode regionRoot, IParseNode[] regionComments)
+	{
+		Snapshot base = region.base;
+		IParseNode[] statements = base.statements;
+		IParseNode[] regionStatements = regionRoot.getChildren();
+
+		if (regionStatements.length == 0 || !areSelfContained(regionStatements, region.start, region.end))
+		{
+			return null;
+		}
+		if (region.prefixCount > 0 && !isSameStatement(statements[region.prefixCount], regionStatements[0], 0))
+		{
+			return null;
+		}
+		if (region.suffixStart < statements.length
+				&& !isSameStatement(statements[region.suffixStart - 1],
+						regionStatements[regionStatements.length - 1], region.delta))
+		{
+			return null;
+		}
+
+		// the region may only declare names it already declared
+		Set<String> oldNames = new HashSet<String>();
+		Set<String> newNames = new HashSet<String>();
+
+		for (int i = region.prefixCount; i < region.suffixStart; i++)
+		{
+			if (!addDeclaredNames(statements[i], oldNames))
+			{
+				return null;
+			}
+		}
+		for (IParseNode statement : regionStatements)
+		{
+			if (!addDeclaredNames(statement, newNames))
+			{
+				return null;
+			}
+		}
+		if (!oldNames.containsAll(newNames))
+		{
+			return null;
+		}
+
+		JSParseRootNode result = new JSParseRootNode();
+
+		for (int i = 0; i < region.prefixCount; i++)
+		{
+			result.addChild(((ParseNode) statements[i]).copy());
+		}
+		for (IParseNode statement : regionStatements)
+		{
+			result.addChild(statement);
+		}
+		for (int i = region.suffixStart; i < statements.length; i++)
+		{
+			result.addChild(((ParseNode) statements[i]).copy(region.delta));
+		}
+
+		List<IParseNode> comments = new ArrayList<IParseNode>(base.comments.length + regionComments.length);
+		int oldEnd = region.getOldEndingOffset();
+
+		for (IParseNode comment : base.comments)
+		{
+			if (comment.getEndingOffset() < region.start)
+			{
+				comments.add(((ParseNode) comment).copy());
+			}
+		}
+		for (IParseNode comment : regionComments)
+		{
+			comments.add(comment);
+		}
+		for (IParseNode comment : base.comments)
+		{
+			if (comment.getStartingOffset() > oldEnd)
+			{
+				comments.add(((ParseNode) comment).copy(region.delta));
+			}
+		}
+		result.setCommentNodes(comments.toArray(new IParseNode[comments.size()]));
+
+		return result;
+	}
+
+	/**
+	 * Do the statements follow each other, and do their nodes lie within them? The AST walker moves some nodes, like
+	 * the hoisted parts of destructuring declarations, into other statements, and gives some statements the wrong
+	 * offsets. Such statements can't be reused or reparsed on their own.
+	 * 
+	 * @param statements
+	 * @param start
+	 *            the offset of the first character the statements may cover
+	 * @param end
+	 *            the exclusive end offset
+	 * @return
+	 */
+	private static boolean areSelfContained(IParseNode[] statements, int start, int end)
+	{
+		int previousEnd = start - 1;
+
+		for (IParseNode statement : statements)
+		{
+			if (statement.getStartingOffset() <= previousEnd || statement.getEndingOffset() >= end
+					|| !isWithin(statement, statement.getStartingOffset(), statement.getEndingOffset()))
+			{
+				return false;
+			}
+			previousEnd = statement.getEndingOffset();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Do all descendants of the node lie within the specified offsets?
+	 * 
+	 * @param node
+	 * @param start
+	 * @param end
+	 *            the inclusive end offset
+	 * @return
+	 */
+	private static boolean isWithin(IParseNode node, int start, int end)
+	{
+		for (IParseNode child : node.getChildren())
+		{
+			if (child.getStartingOffset() < start || child.getEndingOffset() > end || !isWithin(child, start, end))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Does the reparsed statement match the statement from the previous parse, shifted by the specified amount?
+	 * 
+	 * @param oldStatement
+	 * @param newStatement
+	 * @param delta
+	 * @return
+	 */
+	private static boolean isSameStatement(IParseNode oldStatement, IParseNode newStatement, int delta)
+	{
+		return oldStatement.getNodeType() == newStatement.getNodeType()
+				&& oldStatement.getStartingOffset() + delta == newStatement.getStartingOffset()
+				&& oldStatement.getEndingOffset() + delta == newStatement.getEndingOffset()
+				&& oldStatement.getChildCount() == newStatement.getChildCount();
+	}
+
+	/**
+	 * Adds the names declared by a top-level statement. Returns false for statements whose declarations we can't tell,
+	 * like destructuring, imports and exports.
+	 * 
+	 * @param statement
+	 * @param names
+	 * @return
+	 */
+	private static boolean addDeclaredNames(IParseNode statement, Set<String> names)
+	{
+		if (statement instanceof JSImportNode || statement instanceof JSExportNode)
+		{
+			return false;
+		}
+		if (statement instanceof JSVarNode)
+		{
+			for (IParseNode declaration : ((JSVarNode) statement).getDeclarations())
+			{
+				if (!(declaration instanceof JSDeclarationNode))
+				{
+					return false;
+				}
+
+				IParseNode identifier = ((JSDeclarationNode) declaration).getIdentifier();
+
+				if (identifier == null || identifier.getNodeType() != IJSNodeTypes.IDENTIFIER)
+				{
+					return false;
+				}
+				names.add(identifier.getText());
+			}
+		}
+		else if (statement instanceof JSFunctionNode)
+		{
+			IParseNode name = ((JSFunctionNode) statement).getName();
+
+			if (name != null)
+			{
+				names.add(name.getText());
+			}
+		}
+		else if (statement instanceof JSClassNode)
+		{
+			if (((JSClassNode) statement).hasName())
+			{
+				names.add(statement.getFirstChild().getText());
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * getCommonPrefixLength
+	 * 
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	private static int getCommonPrefixLength(String a, String b)
+	{
+		int length = Math.min(a.length(), b.length());
+		int i = 0;
+
+		while (i < length && a.charAt(i) == b.charAt(i))
+		{
+			i++;
+		}
+
+		return i;
+	}
+
+	/**
+	 * Returns the length of the common suffix, which doesn't overlap with the common prefix.
+	 * 
+	 * @param a
+	 * @param b
+	 * @param prefixLength
+	 * @return
+	 */
+	private static int getCommonSuffixLength(String a, String b, int prefixLength)
+	{
+		int length = Math.min(a.length(), b.length()) - prefixLength;
+		int aEnd = a.length() - 1;
+		int bEnd = b.length() - 1;
+		int i = 0;
+
+		while (i < length && a.charAt(aEnd - i) == b.charAt(bEnd - i))
+		{
+			i++;
+		}
+
+		return i;
+	}
+}
@@ -13,6 +13,13 @@ public abstract class JSAbstractForNode extends JSNode
 	private Symbol _leftParenthesis;
 	private Symbol _rightParenthesis;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	protected JSAbstractForNode()
+	{
+	}
+
 	protected JSAbstractForNode(short type, int start, int end, Symbol leftParenthesis, Symbol rightParenthesis)
 	{
 		super(type);
@@ -21,6 +28,14 @@ public abstract class JSAbstractForNode extends JSNode
 		this.setLocation(start, end);
 	}
 
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		_leftParenthesis = moveSymbol(_leftParenthesis, offset);
+		_rightParenthesis = moveSymbol(_rightParenthesis, offset);
+	}
+
 	public void replaceInit(JSNode combinedVarDecls)
 	{
 		this.replaceChild(0, combinedVarDecls);
@@ -10,6 +10,13 @@ package com.aptana.js.core.parsing.ast;
 public class JSArgumentsNode extends JSNode
 {
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSArgumentsNode()
+	{
+	}
+
 	public JSArgumentsNode(int start, int end)
 	{
 		super(IJSNodeTypes.ARGUMENTS);
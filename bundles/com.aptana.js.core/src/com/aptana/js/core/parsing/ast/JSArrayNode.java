@@ -14,6 +14,13 @@ public class JSArrayNode extends JSNode
 	private Symbol _leftBracket;
 	private Symbol _rightBracket;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSArrayNode()
+	{
+	}
+
 	/**
 	 * JSArrayNode
 	 * 
@@ -28,6 +35,14 @@ public class JSArrayNode extends JSNode
 		this.setLocation(leftBracket.getStart(), rightBracket.getEnd());
 	}
 
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		_leftBracket = moveSymbol(_leftBracket, offset);
+		_rightBracket = moveSymbol(_rightBracket, offset);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
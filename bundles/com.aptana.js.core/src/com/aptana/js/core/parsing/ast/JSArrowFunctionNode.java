@@ -5,6 +5,13 @@ import com.aptana.parsing.ast.IParseNode;
 public class JSArrowFunctionNode extends JSFunctionNode
 {
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSArrowFunctionNode()
+	{
+	}
+
 	public JSArrowFunctionNode(int start, int end)
 	{
 		super(start, end);
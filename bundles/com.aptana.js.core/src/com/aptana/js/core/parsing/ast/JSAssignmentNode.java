@@ -16,6 +16,13 @@ public class JSAssignmentNode extends JSNode
 {
 	private Symbol _operator;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSAssignmentNode()
+	{
+	}
+
 	/**
 	 * JSAssignmentNode - used when we only have the operator and need to descend to add the left and right expressions as children later
 	 * 
@@ -75,6 +82,13 @@ public class JSAssignmentNode extends JSNode
 		this.setNodeType(type);
 	}
 
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		_operator = moveSymbol(_operator, offset);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
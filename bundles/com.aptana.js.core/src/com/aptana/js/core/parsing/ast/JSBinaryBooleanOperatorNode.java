@@ -13,6 +13,13 @@ import beaver.Symbol;
 
 public class JSBinaryBooleanOperatorNode extends JSBinaryOperatorNode
 {
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSBinaryBooleanOperatorNode()
+	{
+	}
+
 	/**
 	 * JSBooleanOperatorNode
 	 * 
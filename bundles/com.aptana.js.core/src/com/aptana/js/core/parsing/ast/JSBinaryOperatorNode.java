@@ -16,6 +16,13 @@ public abstract class JSBinaryOperatorNode extends JSNode
 	private Symbol _operator;
 
 	
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	protected JSBinaryOperatorNode()
+	{
+	}
+
 	/**
 	 * Used when building ANTLR AST. Children get added later!
 	 * @param operator
@@ -26,6 +33,13 @@ public abstract class JSBinaryOperatorNode extends JSNode
 		this.setLocation(start, end);
 	}
 
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		_operator = moveSymbol(_operator, offset);
+	}
+
 	/**
 	 * getLeftHandSide
 	 * 
@@ -15,6 +15,13 @@ public class JSCaseNode extends JSNode
 {
 	private Symbol _colon;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSCaseNode()
+	{
+	}
+
 	/**
 	 * Used by ANTLR AST
 	 * 
@@ -27,6 +34,13 @@ public class JSCaseNode extends JSNode
 		this.setLocation(start, end);
 	}
 
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		_colon = moveSymbol(_colon, offset);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
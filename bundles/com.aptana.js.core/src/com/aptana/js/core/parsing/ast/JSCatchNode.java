@@ -17,6 +17,13 @@ public class JSCatchNode extends JSNode
 	private Symbol _leftParenthesis;
 	private Symbol _rightParenthesis;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSCatchNode()
+	{
+	}
+
 	public JSCatchNode(int start, int end, Symbol leftParenthesis, Symbol rightParenthesis)
 	{
 		super(IJSNodeTypes.CATCH);
@@ -25,6 +32,14 @@ public class JSCatchNode extends JSNode
 		this._rightParenthesis = rightParenthesis;
 	}
 
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		_leftParenthesis = moveSymbol(_leftParenthesis, offset);
+		_rightParenthesis = moveSymbol(_rightParenthesis, offset);
+	}
+
 	public Symbol getLeftParenthesis()
 	{
 		return this._leftParenthesis;
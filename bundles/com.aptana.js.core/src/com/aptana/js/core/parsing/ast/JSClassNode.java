@@ -8,6 +8,15 @@ public class JSClassNode extends JSNode
 	private final boolean _hasName;
 	private final boolean _hasSuperclass;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSClassNode()
+	{
+		_hasName = false;
+		_hasSuperclass = false;
+	}
+
 	public JSClassNode(JSIdentifierNode ident, JSNode heritage, JSStatementsNode body)
 	{
 		super(IJSNodeTypes.CLASS, ident, heritage, body);
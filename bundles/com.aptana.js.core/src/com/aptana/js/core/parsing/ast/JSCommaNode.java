@@ -12,6 +12,13 @@ import beaver.Symbol;
 public class JSCommaNode extends JSNode
 {
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSCommaNode()
+	{
+	}
+
 	public JSCommaNode(int start, int end, Symbol symbol)
 	{
 		super(IJSNodeTypes.COMMA);
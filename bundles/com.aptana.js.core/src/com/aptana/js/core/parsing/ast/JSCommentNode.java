@@ -9,6 +9,13 @@ package com.aptana.js.core.parsing.ast;
 
 public class JSCommentNode extends JSNode
 {
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSCommentNode()
+	{
+	}
+
 	/**
 	 * JSCommentNode
 	 * 
@@ -16,6 +16,13 @@ public class JSConditionalNode extends JSNode
 	private Symbol _questionMark;
 	private Symbol _colon;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSConditionalNode()
+	{
+	}
+
 	/**
 	 * USed by ANTLR AST
 	 * @param start
@@ -32,6 +39,14 @@ public class JSConditionalNode extends JSNode
 		this.setLocation(start, end);
 	}
 
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		_questionMark = moveSymbol(_questionMark, offset);
+		_colon = moveSymbol(_colon, offset);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
@@ -12,6 +12,13 @@ import com.aptana.parsing.ast.IParseNode;
 public class JSConstructNode extends JSNode
 {
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSConstructNode()
+	{
+	}
+
 	public JSConstructNode(int start, int end)
 	{
 		super(IJSNodeTypes.CONSTRUCT);
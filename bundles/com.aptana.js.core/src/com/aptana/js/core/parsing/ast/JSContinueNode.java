@@ -11,6 +11,13 @@ import beaver.Symbol;
 
 public class JSContinueNode extends JSLabelStatementNode
 {
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSContinueNode()
+	{
+	}
+
 	/**
 	 * JSContinueNode
 	 */
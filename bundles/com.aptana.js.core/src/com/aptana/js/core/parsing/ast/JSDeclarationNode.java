@@ -15,6 +15,13 @@ public class JSDeclarationNode extends JSNode
 {
 	private Symbol _equalSign;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSDeclarationNode()
+	{
+	}
+
 	/**
 	 * Used by ANTLR AST
 	 * 
@@ -28,6 +35,13 @@ public class JSDeclarationNode extends JSNode
 		this.setLocation(start, end);
 	}
 
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		_equalSign = moveSymbol(_equalSign, offset);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
@@ -16,6 +16,13 @@ public class JSDoNode extends JSNode
 	private Symbol _leftParenthesis;
 	private Symbol _rightParenthesis;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSDoNode()
+	{
+	}
+
 	/**
 	 * Used by ANTLR AST
 	 * 
@@ -31,6 +38,14 @@ public class JSDoNode extends JSNode
 		this.setLocation(start, end);
 	}
 
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		_leftParenthesis = moveSymbol(_leftParenthesis, offset);
+		_rightParenthesis = moveSymbol(_rightParenthesis, offset);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
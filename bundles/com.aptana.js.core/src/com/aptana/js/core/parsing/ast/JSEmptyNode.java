@@ -11,6 +11,13 @@ import beaver.Symbol;
 
 public class JSEmptyNode extends JSNode
 {
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSEmptyNode()
+	{
+	}
+
 	/**
 	 * JSEmptyNode
 	 * 
@@ -8,6 +8,15 @@ public class JSExportNode extends JSNode
 	private final boolean _isDefault;
 	private final String _from;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSExportNode()
+	{
+		_isDefault = false;
+		_from = null;
+	}
+
 	public JSExportNode(boolean isDefault, Symbol star, String from)
 	{
 		super(IJSNodeTypes.EXPORT);
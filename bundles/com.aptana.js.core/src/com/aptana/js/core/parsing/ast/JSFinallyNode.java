@@ -11,6 +11,13 @@ import com.aptana.parsing.ast.IParseNode;
 
 public class JSFinallyNode extends JSNode
 {
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSFinallyNode()
+	{
+	}
+
 	public JSFinallyNode(int start, int end, JSNode statements)
 	{
 		super(IJSNodeTypes.FINALLY, statements);
@@ -15,6 +15,13 @@ public class JSForInNode extends JSAbstractForNode
 {
 	private Symbol _in;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSForInNode()
+	{
+	}
+
 	/**
 	 * Used by ANTLR AST
 	 * 
@@ -30,6 +37,13 @@ public class JSForInNode extends JSAbstractForNode
 		this._in = in;
 	}
 
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		_in = moveSymbol(_in, offset);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
@@ -16,6 +16,13 @@ public class JSForNode extends JSAbstractForNode
 	private Symbol _semicolon1;
 	private Symbol _semicolon2;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSForNode()
+	{
+	}
+
 	/**
 	 * Used by ANTLR AST
 	 * 
@@ -31,6 +38,14 @@ public class JSForNode extends JSAbstractForNode
 		this._semicolon1 = semicolon1;
 		this._semicolon2 = semicolon2;
 	}
+
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		_semicolon1 = moveSymbol(_semicolon1, offset);
+		_semicolon2 = moveSymbol(_semicolon2, offset);
+	}
 	
 	@Override
 	public void replaceInit(JSNode combinedVarDecls)
@@ -13,6 +13,13 @@ import beaver.Symbol;
 
 public class JSForOfNode extends JSAbstractForNode
 {
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSForOfNode()
+	{
+	}
+
 	/**
 	 * Used by ANTLR AST
 	 * 
@@ -27,6 +27,13 @@ public class JSFunctionNode extends JSNode
 	private List<String> fReturnTypes;
 	private boolean _isStatic;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	protected JSFunctionNode()
+	{
+	}
+
 	/**
 	 * Used by ANTLR AST
 	 */
@@ -36,6 +43,20 @@ public class JSFunctionNode extends JSNode
 		this.setLocation(start, end);
 	}
 
+	@Override
+	public ParseNode copy(int offset)
+	{
+		JSFunctionNode result = (JSFunctionNode) super.copy(offset);
+
+		// callers may add to the list
+		if (fReturnTypes != null)
+		{
+			result.fReturnTypes = new LinkedList<String>(fReturnTypes);
+		}
+
+		return result;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
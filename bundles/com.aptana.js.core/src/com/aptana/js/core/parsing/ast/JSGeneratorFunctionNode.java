@@ -3,6 +3,13 @@ package com.aptana.js.core.parsing.ast;
 public class JSGeneratorFunctionNode extends JSFunctionNode
 {
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSGeneratorFunctionNode()
+	{
+	}
+
 	/**
 	 * Used by ANTLR AST
 	 */
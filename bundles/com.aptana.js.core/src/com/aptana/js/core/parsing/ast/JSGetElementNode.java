@@ -13,6 +13,13 @@ public class JSGetElementNode extends JSBinaryOperatorNode
 {
 	private Symbol _rightBracket;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSGetElementNode()
+	{
+	}
+
 	/**
 	 * Used by ANTLR AST.
 	 * 
@@ -26,6 +33,13 @@ public class JSGetElementNode extends JSBinaryOperatorNode
 		this.setNodeType(IJSNodeTypes.GET_ELEMENT);
 	}
 
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		_rightBracket = moveSymbol(_rightBracket, offset);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
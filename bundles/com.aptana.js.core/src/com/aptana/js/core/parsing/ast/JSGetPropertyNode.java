@@ -12,6 +12,13 @@ import beaver.Symbol;
 public class JSGetPropertyNode extends JSBinaryOperatorNode
 {
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSGetPropertyNode()
+	{
+	}
+
 	/**
 	 * Used by ANTLR AST
 	 * 
@@ -5,6 +5,14 @@ public class JSGetterNode extends JSNameValuePairNode
 
 	private final boolean isStatic;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSGetterNode()
+	{
+		isStatic = false;
+	}
+
 	public JSGetterNode(int start, int end, boolean isStatic)
 	{
 		super(start, end);
@@ -14,6 +14,13 @@ public class JSGroupNode extends JSPreUnaryOperatorNode
 	private Symbol _leftParenthesis;
 	private Symbol _rightParenthesis;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSGroupNode()
+	{
+	}
+
 	/**
 	 * Used by ANTLR AST
 	 * @param leftParenthesis
@@ -28,6 +35,14 @@ public class JSGroupNode extends JSPreUnaryOperatorNode
 		this.setLocation(leftParenthesis.getStart(), rightParenthesis.getEnd());
 	}
 
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		_leftParenthesis = moveSymbol(_leftParenthesis, offset);
+		_rightParenthesis = moveSymbol(_rightParenthesis, offset);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
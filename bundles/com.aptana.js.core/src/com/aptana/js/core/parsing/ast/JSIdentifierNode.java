@@ -11,6 +11,13 @@ import beaver.Symbol;
 
 public class JSIdentifierNode extends JSPrimitiveNode
 {
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSIdentifierNode()
+	{
+	}
+
 	/**
 	 * JSIdentifierNode
 	 * 
@@ -5,6 +5,14 @@ public class JSImportNode extends JSNode
 
 	private final String _from;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSImportNode()
+	{
+		_from = null;
+	}
+
 	public JSImportNode(JSNode[] clauses, String from)
 	{
 		super(IJSNodeTypes.IMPORT, clauses);
@@ -6,12 +6,26 @@ public class JSInitializerNode extends JSNode
 {
 	private Symbol _equals;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSInitializerNode()
+	{
+	}
+
 	public JSInitializerNode(Symbol equals, JSNode expression)
 	{
 		super(IJSNodeTypes.INITIALIZER, expression);
 		this._equals = equals;
 	}
 
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		_equals = moveSymbol(_equals, offset);
+	}
+
 	public Symbol getEquals()
 	{
 		return this._equals;
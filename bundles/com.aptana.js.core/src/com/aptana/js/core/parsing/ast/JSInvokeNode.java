@@ -9,6 +9,13 @@ package com.aptana.js.core.parsing.ast;
 
 public class JSInvokeNode extends JSNode
 {
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSInvokeNode()
+	{
+	}
+
 	/**
 	 * JSInvokeNode
 	 * 
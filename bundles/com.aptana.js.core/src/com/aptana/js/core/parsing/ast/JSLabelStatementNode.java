@@ -16,6 +16,13 @@ public abstract class JSLabelStatementNode extends JSNode
 {
 	private Symbol _label;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	protected JSLabelStatementNode()
+	{
+	}
+
 	/**
 	 * JSLabelStatementNode
 	 * 
@@ -39,6 +46,13 @@ public abstract class JSLabelStatementNode extends JSNode
 		this._label = label;
 	}
 
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		_label = moveSymbol(_label, offset);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#equals(java.lang.Object)
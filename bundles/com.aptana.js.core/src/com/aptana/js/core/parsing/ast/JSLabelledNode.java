@@ -15,6 +15,13 @@ public class JSLabelledNode extends JSNode
 {
 	private Symbol _colon;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSLabelledNode()
+	{
+	}
+
 	/**
 	 * JSLabelledNode
 	 * 
@@ -38,6 +45,13 @@ public class JSLabelledNode extends JSNode
 		this._colon = colon;
 	}
 
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		_colon = moveSymbol(_colon, offset);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
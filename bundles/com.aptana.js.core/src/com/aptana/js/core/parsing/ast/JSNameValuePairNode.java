@@ -15,6 +15,13 @@ public class JSNameValuePairNode extends JSNode
 {
 	private Symbol _colon;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	protected JSNameValuePairNode()
+	{
+	}
+
 	/**
 	 * Used by ANTLR AST for typical property: value definitions
 	 * @param colon
@@ -34,6 +41,13 @@ public class JSNameValuePairNode extends JSNode
 		this(start, end, null);
 	}
 
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		_colon = moveSymbol(_colon, offset);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
@@ -10,6 +10,7 @@ package com.aptana.js.core.parsing.ast;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -363,6 +364,55 @@ public class JSNode extends ParseNode
 		return fHash;
 	}
 
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		fDoc = moveSymbol(fDoc, offset);
+	}
+
+	/**
+	 * Returns a copy of the token or documentation symbol, moved by the specified amount. Symbols can't be moved in
+	 * place, and nodes that are copied share them with the original until then.
+	 * 
+	 * @param symbol
+	 * @param offset
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	protected static Symbol moveSymbol(Symbol symbol, int offset)
+	{
+		// tokens made up by the AST walker have no position
+		if (symbol == null || offset == 0 || (symbol.getStart() == 0 && symbol.getEnd() == 0))
+		{
+			return symbol;
+		}
+		if (symbol instanceof ParseNode)
+		{
+			return ((ParseNode) symbol).copy(offset);
+		}
+		if (symbol instanceof DocumentationBlock)
+		{
+			return ((DocumentationBlock) symbol).move(offset);
+		}
+
+		Object value = symbol.value;
+
+		// vsdoc keeps the symbols of its lines
+		if (value instanceof List)
+		{
+			List<Symbol> lines = new ArrayList<Symbol>();
+
+			for (Symbol line : (List<Symbol>) value)
+			{
+				lines.add(moveSymbol(line, offset));
+			}
+			value = lines;
+		}
+
+		return new Symbol(symbol.getId(), symbol.getStart() + offset, symbol.getEnd() + offset, value);
+	}
+
 	@Override
 	public void addChild(IParseNode child)
 	{
@@ -14,6 +14,13 @@ public class JSObjectNode extends JSNode
 	private Symbol _leftBrace;
 	private Symbol _rightBrace;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSObjectNode()
+	{
+	}
+
 	/**
 	 * JSObjectNode
 	 * 
@@ -30,6 +37,14 @@ public class JSObjectNode extends JSNode
 		this.setLocation(leftBrace.getStart(), rightBrace.getEnd());
 	}
 
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		_leftBrace = moveSymbol(_leftBrace, offset);
+		_rightBrace = moveSymbol(_rightBrace, offset);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
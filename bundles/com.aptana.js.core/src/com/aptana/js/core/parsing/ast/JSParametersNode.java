@@ -10,6 +10,13 @@ package com.aptana.js.core.parsing.ast;
 public class JSParametersNode extends JSNode
 {
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSParametersNode()
+	{
+	}
+
 	public JSParametersNode(int lParen, int rParen)
 	{
 		super(IJSNodeTypes.PARAMETERS);
@@ -16,6 +16,13 @@ public class JSPostUnaryOperatorNode extends JSNode
 {
 	private Symbol _operator;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSPostUnaryOperatorNode()
+	{
+	}
+
 	/**
 	 * Used by ANTLR AST
 	 * 
@@ -49,6 +56,13 @@ public class JSPostUnaryOperatorNode extends JSNode
 		this.setNodeType(type);
 	}
 
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		_operator = moveSymbol(_operator, offset);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
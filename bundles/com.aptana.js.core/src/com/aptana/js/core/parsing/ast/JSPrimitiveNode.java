@@ -15,6 +15,13 @@ public abstract class JSPrimitiveNode extends JSNode
 {
 	private String fText;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	protected JSPrimitiveNode()
+	{
+	}
+
 	/**
 	 * JSPrimitiveNode
 	 * 
@@ -12,6 +12,13 @@ public class JSRestElementNode extends JSNode
 {
 	private Symbol _ellipsis;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSRestElementNode()
+	{
+	}
+
 	public JSRestElementNode(Symbol ellipsis, JSIdentifierNode ident)
 	{
 		this(ellipsis);
@@ -29,6 +36,13 @@ public class JSRestElementNode extends JSNode
 		this._ellipsis = ellipsis;
 	}
 
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		_ellipsis = moveSymbol(_ellipsis, offset);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
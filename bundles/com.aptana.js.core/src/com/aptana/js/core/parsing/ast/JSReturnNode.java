@@ -10,6 +10,13 @@ package com.aptana.js.core.parsing.ast;
 public class JSReturnNode extends JSPreUnaryOperatorNode
 {
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSReturnNode()
+	{
+	}
+
 	/**
 	 * Used by ANTLR AST
 	 * @param end
@@ -3,6 +3,13 @@ package com.aptana.js.core.parsing.ast;
 public class JSSetterNode extends JSNameValuePairNode
 {
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSSetterNode()
+	{
+	}
+
 	public JSSetterNode(int start, int end)
 	{
 		super(start, end);
@@ -6,6 +6,13 @@ public class JSSpreadElementNode extends JSNode
 {
 	private Symbol _ellipsis;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSSpreadElementNode()
+	{
+	}
+
 	public JSSpreadElementNode(int start, int end, Symbol ellipsis)
 	{
 		super(IJSNodeTypes.SPREAD_ELEMENT);
@@ -13,6 +20,13 @@ public class JSSpreadElementNode extends JSNode
 		this.setLocation(start, end);
 	}
 
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		_ellipsis = moveSymbol(_ellipsis, offset);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
@@ -10,6 +10,13 @@ package com.aptana.js.core.parsing.ast;
 public class JSStatementsNode extends JSNode
 {
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSStatementsNode()
+	{
+	}
+
 	public JSStatementsNode(int start, int end)
 	{
 		super(IJSNodeTypes.STATEMENTS);
@@ -11,6 +11,13 @@ import beaver.Symbol;
 
 public class JSStringNode extends JSPrimitiveNode
 {
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSStringNode()
+	{
+	}
+
 	/**
 	 * JSStringNode
 	 * 
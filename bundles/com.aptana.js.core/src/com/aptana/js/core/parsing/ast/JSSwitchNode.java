@@ -18,6 +18,13 @@ public class JSSwitchNode extends JSNode
 	private Symbol _leftBrace;
 	private Symbol _rightBrace;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSSwitchNode()
+	{
+	}
+
 	/**
 	 * Used by ANTLR AST
 	 * 
@@ -37,6 +44,16 @@ public class JSSwitchNode extends JSNode
 		this.setLocation(start, end);
 	}
 
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		_leftParenthesis = moveSymbol(_leftParenthesis, offset);
+		_rightParenthesis = moveSymbol(_rightParenthesis, offset);
+		_leftBrace = moveSymbol(_leftBrace, offset);
+		_rightBrace = moveSymbol(_rightBrace, offset);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
@@ -12,6 +12,13 @@ import com.aptana.parsing.ast.IParseNode;
 public class JSTryNode extends JSNode
 {
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSTryNode()
+	{
+	}
+
 	public JSTryNode(int start, int end)
 	{
 		super(IJSNodeTypes.TRY);
@@ -15,6 +15,13 @@ public class JSVarNode extends JSNode
 {
 	private Symbol _var;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSVarNode()
+	{
+	}
+
 	public JSVarNode(int start, int end, Symbol var)
 	{
 		super(IJSNodeTypes.VAR);
@@ -23,6 +30,13 @@ public class JSVarNode extends JSNode
 		this.setLocation(start, end);
 	}
 
+	@Override
+	public void addOffset(int offset)
+	{
+		super.addOffset(offset);
+		_var = moveSymbol(_var, offset);
+	}
+
 	@Override
 	public void accept(JSTreeWalker walker)
 	{
@@ -8,6 +8,14 @@ public class JSYieldNode extends JSNode
 {
 	private final boolean _hasStar;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSYieldNode()
+	{
+		_hasStar = false;
+	}
+
 	public JSYieldNode(int start, int end, Symbol y)
 	{
 		super(IJSNodeTypes.YIELD);
@@ -39,4 +39,9 @@ public interface IPreferenceConstants
 	 */
 	public static final String PREF_MISSING_SEMICOLON_SEVERITY = "missing_semicolon_severity"; //$NON-NLS-1$
 
+	/**
+	 * Should edits to large files only reparse the top-level statements around the edit?
+	 */
+	public static final String JS_INCREMENTAL_PARSING = "incremental_parsing"; //$NON-NLS-1$
+
 }
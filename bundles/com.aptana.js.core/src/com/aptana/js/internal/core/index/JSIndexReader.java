@@ -11,17 +11,21 @@ import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Set;
 
+import com.aptana.core.IFilter;
 import com.aptana.core.IMap;
 import com.aptana.core.util.CollectionsUtil;
-import com.aptana.core.util.RegexUtil;
 import com.aptana.core.util.StringUtil;
+import com.aptana.index.core.ElementSerializer;
 import com.aptana.index.core.Index;
+import com.aptana.index.core.IndexDocument;
 import com.aptana.index.core.IndexReader;
 import com.aptana.index.core.QueryResult;
 import com.aptana.index.core.SearchPattern;
+import com.aptana.jetty.util.epl.ajax.JSON.Convertible;
 import com.aptana.js.core.JSTypeConstants;
 import com.aptana.js.core.index.IJSIndexConstants;
 import com.aptana.js.core.model.EventElement;
@@ -33,6 +37,11 @@ import com.aptana.js.core.model.UserAgentElement;
 // TODO Combine with JSIndexQueryHelper! They're both doing the same thing, but Query helper adds the JS Core index in to calls!
 public class JSIndexReader extends IndexReader
 {
+	/**
+	 * How many characters of a member name prefix are spelled in every case to seek the index with.
+	 */
+	private static final int MAX_CASE_VARIANT_LENGTH = 3;
+
 	/**
 	 * attachMembers
 	 * 
@@ -75,7 +84,7 @@ public class JSIndexReader extends IndexReader
 	 */
 	protected EventElement createEvent(QueryResult event)
 	{
-		return this.populateElement(new EventElement(), event, 2);
+		return this.populateMember(new EventElement(), event);
 	}
 
 	/**
@@ -86,7 +95,7 @@ public class JSIndexReader extends IndexReader
 	 */
 	protected FunctionElement createFunction(QueryResult function)
 	{
-		return this.populateElement(new FunctionElement(), function, 2);
+		return this.populateMember(new FunctionElement(), function);
 	}
 
 	/**
@@ -97,7 +106,7 @@ public class JSIndexReader extends IndexReader
 	 */
 	protected PropertyElement createProperty(QueryResult property)
 	{
-		return this.populateElement(new PropertyElement(), property, 2);
+		return this.populateMember(new PropertyElement(), property);
 	}
 
 	/**
@@ -181,6 +190,16 @@ public class JSIndexReader extends IndexReader
 		return result;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.index.core.IndexReader#deserialize(java.lang.String)
+	 */
+	@Override
+	protected Object deserialize(String value)
+	{
+		return ElementSerializer.deserialize(value);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.index.core.IndexReader#getDelimiter()
@@ -205,10 +224,10 @@ public class JSIndexReader extends IndexReader
 		{
 			// read events
 			// @formatter:off
-			List<QueryResult> events = index.query(
+			List<QueryResult> events = index.queryAny(
 				new String[] { IJSIndexConstants.EVENT },
-				this.getMemberPattern(owningTypes),
-				SearchPattern.REGEX_MATCH | SearchPattern.CASE_SENSITIVE
+				this.getMemberPrefixes(owningTypes),
+				SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE
 			);
 			// @formatter:on
 
@@ -285,10 +304,10 @@ public class JSIndexReader extends IndexReader
 		{
 			// read functions
 			// @formatter:off
-			List<QueryResult> functions = index.query(
+			List<QueryResult> functions = index.queryAny(
 				new String[] { IJSIndexConstants.FUNCTION },
-				this.getMemberPattern(owningTypes),
-				SearchPattern.REGEX_MATCH | SearchPattern.CASE_SENSITIVE
+				this.getMemberPrefixes(owningTypes),
+				SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE
 			);
 			// @formatter:on
 
@@ -304,6 +323,44 @@ public class JSIndexReader extends IndexReader
 		return Collections.emptyList();
 	}
 
+	/**
+	 * Gets the functions of the given types whose names start with the given prefix, ignoring case.
+	 * 
+	 * @param index
+	 * @param owningTypes
+	 * @param namePrefix
+	 *            an empty prefix gets all the functions of the types
+	 * @return
+	 */
+	public List<FunctionElement> getFunctions(Index index, List<String> owningTypes, String namePrefix)
+	{
+		if (StringUtil.isEmpty(namePrefix))
+		{
+			return getFunctions(index, owningTypes);
+		}
+		if (index != null && !CollectionsUtil.isEmpty(owningTypes))
+		{
+			// @formatter:off
+			List<QueryResult> functions = index.queryAny(
+				new String[] { IJSIndexConstants.FUNCTION },
+				this.getMemberPrefixes(owningTypes, namePrefix),
+				SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE
+			);
+			// @formatter:on
+
+			return CollectionsUtil.map(CollectionsUtil.filter(functions, new MemberNamePrefixFilter(namePrefix)),
+					new IMap<QueryResult, FunctionElement>()
+					{
+						public FunctionElement map(QueryResult item)
+						{
+							return createFunction(item);
+						}
+					});
+		}
+
+		return Collections.emptyList();
+	}
+
 	/**
 	 * getFunctions
 	 * 
@@ -351,23 +408,82 @@ public class JSIndexReader extends IndexReader
 	}
 
 	/**
-	 * getMemberPattern
+	 * Returns the prefix of the index words of the members of each type
+	 * 
+	 * @param typeNames
+	 * @return
+	 */
+	private Set<String> getMemberPrefixes(List<String> typeNames)
+	{
+		Set<String> prefixes = new LinkedHashSet<String>(typeNames.size());
+
+		for (String typeName : typeNames)
+		{
+			prefixes.add(stripGenericsFromType(typeName) + this.getDelimiter());
+		}
+
+		return prefixes;
+	}
+
+	/**
+	 * Returns the prefixes of the index words of the members of each type whose names start with the given prefix,
+	 * ignoring case. The index only seeks case sensitive prefixes, so the name prefix is spelled in every case for as
+	 * long as {@link #MAX_CASE_VARIANT_LENGTH} characters which only match themselves in either case. The words found
+	 * have to be checked against the whole name prefix with a {@link MemberNamePrefixFilter}.
 	 * 
 	 * @param typeNames
+	 * @param namePrefix
 	 * @return
 	 */
-	private String getMemberPattern(List<String> typeNames)
+	private Set<String> getMemberPrefixes(List<String> typeNames, String namePrefix)
 	{
-		typeNames = CollectionsUtil.map(typeNames, new IMap<String, String>()
+		List<String> nameVariants = CollectionsUtil.newList(StringUtil.EMPTY);
+		for (int i = 0; i < namePrefix.length() && i < MAX_CASE_VARIANT_LENGTH; i++)
 		{
-			public String map(String item)
+			char c = namePrefix.charAt(i);
+			if (!isSeekableNameChar(c))
 			{
-				return stripGenericsFromType(item);
+				break;
 			}
-		});
-		String typePattern = RegexUtil.createQuotedListPattern(typeNames);
+			char lower = Character.toLowerCase(c);
+			char upper = Character.toUpperCase(c);
+			List<String> grown = new ArrayList<String>(nameVariants.size() * 2);
+			for (String variant : nameVariants)
+			{
+				grown.add(variant + lower);
+				if (upper != lower)
+				{
+					grown.add(variant + upper);
+				}
+			}
+			nameVariants = grown;
+		}
 
-		return MessageFormat.format("^{1}{0}", new Object[] { this.getDelimiter(), typePattern }); //$NON-NLS-1$
+		Set<String> prefixes = new LinkedHashSet<String>(typeNames.size() * nameVariants.size());
+		for (String typePrefix : this.getMemberPrefixes(typeNames))
+		{
+			for (String variant : nameVariants)
+			{
+				prefixes.add(typePrefix + variant);
+			}
+		}
+		return prefixes;
+	}
+
+	/**
+	 * Ignoring case, these characters only match their lower and upper case, unlike i, k and s which also match
+	 * characters outside of ASCII.
+	 * 
+	 * @param c
+	 * @return
+	 */
+	private static boolean isSeekableNameChar(char c)
+	{
+		if (c == 'i' || c == 'I' || c == 'k' || c == 'K' || c == 's' || c == 'S')
+		{
+			return false;
+		}
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '$';
 	}
 
 	/**
@@ -398,6 +514,30 @@ public class JSIndexReader extends IndexReader
 		return typeName;
 	}
 
+	/**
+	 * Populates a property, function or event from the element that follows its owning type and name in the index
+	 * word. The encoded element may itself contain delimiters, so the word isn't split into columns.
+	 * 
+	 * @param element
+	 * @param item
+	 * @param <T>
+	 * @return
+	 */
+	private <T extends Convertible & IndexDocument> T populateMember(T element, QueryResult item)
+	{
+		String word = item.getWord();
+		String delimiter = this.getDelimiter();
+		int typeEnd = word.indexOf(delimiter);
+		int nameEnd = (typeEnd == -1) ? -1 : word.indexOf(delimiter, typeEnd + delimiter.length());
+
+		if (nameEnd != -1)
+		{
+			this.populateElement(element, word.substring(nameEnd + delimiter.length()), item.getDocuments());
+		}
+
+		return element;
+	}
+
 	/**
 	 * getProperties
 	 * 
@@ -412,10 +552,10 @@ public class JSIndexReader extends IndexReader
 		{
 			// read properties
 			// @formatter:off
-			List<QueryResult> properties = index.query(
+			List<QueryResult> properties = index.queryAny(
 				new String[] { IJSIndexConstants.PROPERTY },
-				this.getMemberPattern(owningTypes),
-				SearchPattern.REGEX_MATCH | SearchPattern.CASE_SENSITIVE
+				this.getMemberPrefixes(owningTypes),
+				SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE
 			);
 			// @formatter:on
 
@@ -431,6 +571,44 @@ public class JSIndexReader extends IndexReader
 		return Collections.emptyList();
 	}
 
+	/**
+	 * Gets the properties of the given types whose names start with the given prefix, ignoring case.
+	 * 
+	 * @param index
+	 * @param owningTypes
+	 * @param namePrefix
+	 *            an empty prefix gets all the properties of the types
+	 * @return
+	 */
+	public List<PropertyElement> getProperties(Index index, List<String> owningTypes, String namePrefix)
+	{
+		if (StringUtil.isEmpty(namePrefix))
+		{
+			return getProperties(index, owningTypes);
+		}
+		if (index != null && !CollectionsUtil.isEmpty(owningTypes))
+		{
+			// @formatter:off
+			List<QueryResult> properties = index.queryAny(
+				new String[] { IJSIndexConstants.PROPERTY },
+				this.getMemberPrefixes(owningTypes, namePrefix),
+				SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE
+			);
+			// @formatter:on
+
+			return CollectionsUtil.map(CollectionsUtil.filter(properties, new MemberNamePrefixFilter(namePrefix)),
+					new IMap<QueryResult, PropertyElement>()
+					{
+						public PropertyElement map(QueryResult item)
+						{
+							return createProperty(item);
+						}
+					});
+		}
+
+		return Collections.emptyList();
+	}
+
 	/**
 	 * getProperties
 	 * 
@@ -589,26 +767,6 @@ public class JSIndexReader extends IndexReader
 		return result;
 	}
 
-	/**
-	 * Convert a list of types into a regular expression. Note that this method assumes that list is non-empty
-	 * 
-	 * @param owningTypes
-	 * @return
-	 */
-	protected String getUserTypesPattern(List<String> owningTypes)
-	{
-		List<String> quotedOwningTypes = new ArrayList<String>(owningTypes.size());
-
-		// escape each owning type
-		for (String owningType : owningTypes)
-		{
-			quotedOwningTypes.add(Pattern.quote(owningType));
-		}
-
-		// build pattern for all types
-		return "(" + StringUtil.join("|", quotedOwningTypes) + ")"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-	}
-
 	public List<String> getTypeNames(Index index, String pattern, int matchFlags)
 	{
 		List<String> result = new ArrayList<String>();
@@ -640,4 +798,35 @@ public class JSIndexReader extends IndexReader
 
 		return result;
 	}
+
+	/**
+	 * Keeps the member words whose name starts with a prefix, ignoring case.
+	 */
+	private class MemberNamePrefixFilter implements IFilter<QueryResult>
+	{
+		private final String namePrefix;
+
+		MemberNamePrefixFilter(String namePrefix)
+		{
+			this.namePrefix = namePrefix;
+		}
+
+		public boolean include(QueryResult item)
+		{
+			String word = item.getWord();
+			int typeEnd = word.indexOf(getDelimiter());
+			if (typeEnd == -1)
+			{
+				return false;
+			}
+			int nameStart = typeEnd + getDelimiter().length();
+			int nameEnd = word.indexOf(getDelimiter(), nameStart);
+			if (nameEnd == -1)
+			{
+				nameEnd = word.length();
+			}
+			return nameEnd - nameStart >= namePrefix.length()
+					&& word.regionMatches(true, nameStart, namePrefix, 0, namePrefix.length());
+		}
+	}
 }
@@ -13,6 +13,7 @@ import java.util.List;
 
 import com.aptana.core.logging.IdeLog;
 import com.aptana.core.util.StringUtil;
+import com.aptana.index.core.ElementSerializer;
 import com.aptana.index.core.Index;
 import com.aptana.index.core.IndexWriter;
 import com.aptana.js.core.IDebugScopes;
@@ -36,6 +37,17 @@ public class JSIndexWriter extends IndexWriter
 		return URI.create(IJSIndexConstants.METADATA_FILE_LOCATION);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.index.core.IndexWriter#serialize(java.lang.Object)
+	 */
+	@Override
+	protected String serialize(Object object)
+	{
+		// members are read back on every content assist request, so use the compact encoding rather than JSON
+		return ElementSerializer.serialize(object);
+	}
+
 	/**
 	 * writeEvent
 	 * 
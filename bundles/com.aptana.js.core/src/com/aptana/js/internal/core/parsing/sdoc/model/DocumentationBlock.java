@@ -171,6 +171,21 @@ public class DocumentationBlock extends Symbol
 		this.end = end;
 	}
 
+	/**
+	 * Returns a copy of this block moved by the specified amount. The copy shares the tags of this block.
+	 * 
+	 * @param offset
+	 * @return
+	 */
+	public DocumentationBlock move(int offset)
+	{
+		DocumentationBlock result = new DocumentationBlock(this._text, this._tags);
+
+		result.setRange(this.getStart() + offset, this.getEnd() + offset);
+
+		return result;
+	}
+
 	/**
 	 * toSource
 	 * 
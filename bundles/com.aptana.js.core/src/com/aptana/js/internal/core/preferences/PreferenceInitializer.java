@@ -36,6 +36,9 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer
 		// Warn on missing semicolons
 		prefs.put(IPreferenceConstants.PREF_MISSING_SEMICOLON_SEVERITY, IProblem.Severity.WARNING.id());
 
+		// Reparse whole files, reusing statements around an edit is experimental
+		prefs.putBoolean(IPreferenceConstants.JS_INCREMENTAL_PARSING, false);
+
 		// Set up JS Parser validator to be on for build and reconcile
 		prefs.putBoolean(PreferenceUtil.getEnablementPreferenceKey(JSParserValidator.ID, BuildType.BUILD), true);
 		prefs.putBoolean(PreferenceUtil.getEnablementPreferenceKey(JSParserValidator.ID, BuildType.RECONCILE), true);
@@ -16,6 +16,13 @@ public class JSONEntryNode extends JSONNode
 {
 	private Symbol _colon;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSONEntryNode()
+	{
+	}
+
 	/**
 	 * JSONEntryNode
 	 */
@@ -14,6 +14,13 @@ public class JSONNumberNode extends JSONNode
 {
 	private String _text;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSONNumberNode()
+	{
+	}
+
 	/**
 	 * JSONNumberNode
 	 */
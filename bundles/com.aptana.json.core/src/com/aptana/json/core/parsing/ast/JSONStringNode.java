@@ -14,6 +14,13 @@ public class JSONStringNode extends JSONNode
 {
 	private String _text;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private JSONStringNode()
+	{
+	}
+
 	/**
 	 * JSONStringNode
 	 */
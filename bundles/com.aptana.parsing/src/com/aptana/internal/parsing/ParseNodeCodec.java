@@ -0,0 +1,1068 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.internal.parsing;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import beaver.Symbol;
+
+/**
+ * Writes ASTs in a compact binary form, and reads them back. The non-transient fields of nodes, and of the
+ * {@link Serializable} objects they hold on to, are written one after the other, without the class descriptors and
+ * block headers of Java's serialization. Objects are read back by creating them with their no-arg constructor, which
+ * may be private, and setting their fields. Integers are written in as few bytes as they need, each string is written
+ * once, and a class's field names are written with its first instance so that a stream written by a different version
+ * of a class is rejected rather than misread.
+ * <p>
+ * Fields may hold primitives, strings, boxed primitives, enums, arrays, lists, maps and other serializable objects that
+ * have a no-arg constructor. Writing any other value fails with a {@link NotSerializableException}.
+ */
+class ParseNodeCodec
+{
+	// tags of the values of fields whose declared type isn't primitive
+	private static final int NULL = 0;
+	private static final int REFERENCE = 1;
+	private static final int OBJECT = 2;
+	private static final int STRING = 3;
+	private static final int ENUM = 4;
+	private static final int ARRAY = 5;
+	private static final int LIST = 6;
+	private static final int MAP = 7;
+	private static final int BOOLEAN = 8;
+	private static final int BYTE = 9;
+	private static final int CHAR = 10;
+	private static final int SHORT = 11;
+	private static final int INT = 12;
+	private static final int LONG = 13;
+	private static final int FLOAT = 14;
+	private static final int DOUBLE = 15;
+
+	/**
+	 * Orders fields by name, as the order of {@link Class#getDeclaredFields()} isn't specified
+	 */
+	private static final Comparator<Field> FIELD_ORDER = new Comparator<Field>()
+	{
+		public int compare(Field a, Field b)
+		{
+			return a.getName().compareTo(b.getName());
+		}
+	};
+
+	/**
+	 * The fields written for instances of a class, and how to create instances
+	 */
+	private static class Layout
+	{
+		private final Field[] fields;
+		private final int[] kinds;
+		private final String[] names;
+		private final Constructor<?> constructor;
+
+		private Layout(Constructor<?> constructor, List<Field> fields)
+		{
+			int size = fields.size();
+
+			this.constructor = constructor;
+			this.fields = fields.toArray(new Field[size]);
+			this.kinds = new int[size];
+			this.names = new String[size];
+
+			for (int i = 0; i < size; i++)
+			{
+				Field field = this.fields[i];
+
+				kinds[i] = getKind(field.getType());
+				names[i] = field.getDeclaringClass().getName() + '.' + field.getName();
+			}
+		}
+	}
+
+	/**
+	 * The component types of primitive arrays, by name
+	 */
+	private static final Map<String, Class<?>> PRIMITIVE_TYPES = new HashMap<String, Class<?>>();
+	static
+	{
+		Class<?>[] types = { Boolean.TYPE, Byte.TYPE, Character.TYPE, Short.TYPE, Integer.TYPE, Long.TYPE, Float.TYPE,
+				Double.TYPE };
+
+		for (Class<?> type : types)
+		{
+			PRIMITIVE_TYPES.put(type.getName(), type);
+		}
+	}
+
+	private final Map<Class<?>, Layout> fLayouts = new HashMap<Class<?>, Layout>();
+
+	/**
+	 * Encodes an AST
+	 *
+	 * @param root
+	 * @return the encoded AST, which takes up the first {@link ByteArray#size()} bytes of the array
+	 * @throws IOException
+	 *             if the AST holds on to a value that can't be written
+	 */
+	ByteArray encode(Object root) throws IOException
+	{
+		Encoder encoder = new Encoder();
+
+		encoder.writeValue(root);
+		return encoder;
+	}
+
+	/**
+	 * Decodes an AST
+	 *
+	 * @param data
+	 *            the bytes {@link #encode(Object)} returned
+	 * @param classLoader
+	 *            resolves the classes of the nodes
+	 * @return
+	 * @throws IOException
+	 *             if the data wasn't encoded with the current version of the classes in it
+	 */
+	Object decode(byte[] data, ClassLoader classLoader) throws IOException
+	{
+		return new Decoder(data, classLoader).readValue();
+	}
+
+	/**
+	 * Drops the layouts of the classes seen so far
+	 */
+	synchronized void clear()
+	{
+		fLayouts.clear();
+	}
+
+	private synchronized Layout getLayout(Class<?> type) throws IOException
+	{
+		Layout layout = fLayouts.get(type);
+
+		if (layout == null)
+		{
+			if (!isWritable(type))
+			{
+				throw new NotSerializableException(type.getName());
+			}
+
+			Constructor<?> constructor;
+			try
+			{
+				constructor = type.getDeclaredConstructor();
+			}
+			catch (NoSuchMethodException e)
+			{
+				// we'd have no way to create it when reading it back
+				throw new NotSerializableException(type.getName());
+			}
+			constructor.setAccessible(true);
+
+			List<Field> fields = new ArrayList<Field>();
+			addFields(type, fields);
+			layout = new Layout(constructor, fields);
+			fLayouts.put(type, layout);
+		}
+
+		return layout;
+	}
+
+	private static void addFields(Class<?> type, List<Field> fields) throws IOException
+	{
+		if (type == Object.class)
+		{
+			return;
+		}
+		addFields(type.getSuperclass(), fields);
+
+		Field[] declared = type.getDeclaredFields();
+		Arrays.sort(declared, FIELD_ORDER);
+
+		for (Field field : declared)
+		{
+			int modifiers = field.getModifiers();
+
+			if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers))
+			{
+				continue;
+			}
+			if (!isWritable(type))
+			{
+				// only the fields of classes that opt in are written
+				throw new NotSerializableException(type.getName());
+			}
+
+			field.setAccessible(true);
+			fields.add(field);
+		}
+	}
+
+	/**
+	 * Nodes are symbols; other objects opt in by implementing {@link Serializable}. The fields of the classes of the
+	 * JRE are implementation details, and often transient, so those classes are only written by value.
+	 */
+	private static boolean isWritable(Class<?> type)
+	{
+		return (Symbol.class.isAssignableFrom(type) || Serializable.class.isAssignableFrom(type))
+				&& !type.getName().startsWith("java."); //$NON-NLS-1$
+	}
+
+	private static int getKind(Class<?> type)
+	{
+		if (!type.isPrimitive())
+		{
+			return OBJECT;
+		}
+		if (type == Integer.TYPE)
+		{
+			return INT;
+		}
+		if (type == Short.TYPE)
+		{
+			return SHORT;
+		}
+		if (type == Boolean.TYPE)
+		{
+			return BOOLEAN;
+		}
+		if (type == Byte.TYPE)
+		{
+			return BYTE;
+		}
+		if (type == Character.TYPE)
+		{
+			return CHAR;
+		}
+		if (type == Long.TYPE)
+		{
+			return LONG;
+		}
+		if (type == Float.TYPE)
+		{
+			return FLOAT;
+		}
+		return DOUBLE;
+	}
+
+	/**
+	 * Creates an instance with its no-arg constructor, its fields are set after that
+	 */
+	private static Object newInstance(Layout layout, Class<?> type) throws IOException
+	{
+		try
+		{
+			return layout.constructor.newInstance();
+		}
+		catch (Exception e)
+		{
+			InvalidClassException exception = new InvalidClassException(type.getName(), e.toString());
+			exception.initCause(e);
+			throw exception;
+		}
+	}
+
+	/**
+	 * A growable array of bytes. Writing to it directly is a lot cheaper than going through a stream per byte.
+	 */
+	static class ByteArray
+	{
+		protected byte[] bytes = new byte[8192];
+		protected int count;
+
+		int size()
+		{
+			return count;
+		}
+
+		void writeTo(OutputStream out) throws IOException
+		{
+			out.write(bytes, 0, count);
+		}
+
+		protected void writeByte(int value)
+		{
+			if (count == bytes.length)
+			{
+				byte[] newBytes = new byte[count * 2];
+				System.arraycopy(bytes, 0, newBytes, 0, count);
+				bytes = newBytes;
+			}
+			bytes[count++] = (byte) value;
+		}
+
+		protected void writeBoolean(boolean value)
+		{
+			writeByte(value ? 1 : 0);
+		}
+
+		protected void writeInt(int value)
+		{
+			writeByte(value >>> 24);
+			writeByte(value >>> 16);
+			writeByte(value >>> 8);
+			writeByte(value);
+		}
+
+		protected void writeLong(long value)
+		{
+			writeInt((int) (value >>> 32));
+			writeInt((int) value);
+		}
+
+		protected void writeFloat(float value)
+		{
+			writeInt(Float.floatToIntBits(value));
+		}
+
+		protected void writeDouble(double value)
+		{
+			writeLong(Double.doubleToLongBits(value));
+		}
+	}
+
+	private class Encoder extends ByteArray
+	{
+		private final Map<Object, Integer> objects = new IdentityHashMap<Object, Integer>();
+		private final Map<String, Integer> strings = new HashMap<String, Integer>();
+		private final Map<Class<?>, Integer> classes = new HashMap<Class<?>, Integer>();
+		private final Map<Class<?>, Layout> layouts = new HashMap<Class<?>, Layout>();
+
+		private void writeValue(Object value) throws IOException
+		{
+			if (value == null)
+			{
+				writeByte(NULL);
+				return;
+			}
+			if (value instanceof String)
+			{
+				writeByte(STRING);
+				writeString((String) value);
+				return;
+			}
+			if (writeBoxed(value))
+			{
+				return;
+			}
+			if (value instanceof Enum<?>)
+			{
+				writeByte(ENUM);
+				writeClass(((Enum<?>) value).getDeclaringClass(), null);
+				writeString(((Enum<?>) value).name());
+				return;
+			}
+
+			Integer handle = objects.get(value);
+			if (handle != null)
+			{
+				writeByte(REFERENCE);
+				writeVarInt(handle);
+				return;
+			}
+
+			Class<?> type = value.getClass();
+
+			if (type.isArray())
+			{
+				objects.put(value, objects.size());
+				writeArray(type, value);
+			}
+			else if (value instanceof List<?>)
+			{
+				objects.put(value, objects.size());
+				writeByte(LIST);
+				writeList((List<?>) value);
+			}
+			else if (value instanceof Map<?, ?>)
+			{
+				objects.put(value, objects.size());
+				writeByte(MAP);
+				writeMap((Map<?, ?>) value);
+			}
+			else
+			{
+				Layout layout = layouts.get(type);
+				if (layout == null)
+				{
+					layout = getLayout(type);
+					layouts.put(type, layout);
+				}
+
+				objects.put(value, objects.size());
+				writeByte(OBJECT);
+				writeClass(type, layout);
+				writeFields(layout, value);
+			}
+		}
+
+		private boolean writeBoxed(Object value)
+		{
+			if (value instanceof Integer)
+			{
+				writeByte(INT);
+				writeVarInt(zigZag((Integer) value));
+			}
+			else if (value instanceof Boolean)
+			{
+				writeByte(BOOLEAN);
+				writeBoolean((Boolean) value);
+			}
+			else if (value instanceof Short)
+			{
+				writeByte(SHORT);
+				writeVarInt(zigZag((Short) value));
+			}
+			else if (value instanceof Character)
+			{
+				writeByte(CHAR);
+				writeVarInt((Character) value);
+			}
+			else if (value instanceof Byte)
+			{
+				writeByte(BYTE);
+				writeByte((Byte) value);
+			}
+			else if (value instanceof Long)
+			{
+				writeByte(LONG);
+				writeLong((Long) value);
+			}
+			else if (value instanceof Float)
+			{
+				writeByte(FLOAT);
+				writeFloat((Float) value);
+			}
+			else if (value instanceof Double)
+			{
+				writeByte(DOUBLE);
+				writeDouble((Double) value);
+			}
+			else
+			{
+				return false;
+			}
+			return true;
+		}
+
+		private void writeArray(Class<?> type, Object array) throws IOException
+		{
+			Class<?> componentType = type.getComponentType();
+			int length = Array.getLength(array);
+
+			writeByte(ARRAY);
+			writeClass(componentType, null);
+			writeVarInt(length);
+
+			if (componentType.isPrimitive())
+			{
+				int kind = getKind(componentType);
+
+				for (int i = 0; i < length; i++)
+				{
+					writePrimitive(kind, Array.get(array, i));
+				}
+			}
+			else
+			{
+				Object[] objectArray = (Object[]) array;
+
+				for (int i = 0; i < length; i++)
+				{
+					writeValue(objectArray[i]);
+				}
+			}
+		}
+
+		private void writeList(List<?> list) throws IOException
+		{
+			writeVarInt(list.size());
+			for (Object element : list)
+			{
+				writeValue(element);
+			}
+		}
+
+		private void writeMap(Map<?, ?> map) throws IOException
+		{
+			writeVarInt(map.size());
+			for (Map.Entry<?, ?> entry : map.entrySet())
+			{
+				writeValue(entry.getKey());
+				writeValue(entry.getValue());
+			}
+		}
+
+		private void writeFields(Layout layout, Object object) throws IOException
+		{
+			Field[] fields = layout.fields;
+			int[] kinds = layout.kinds;
+
+			try
+			{
+				for (int i = 0; i < fields.length; i++)
+				{
+					Field field = fields[i];
+
+					switch (kinds[i])
+					{
+						case INT:
+							writeVarInt(zigZag(field.getInt(object)));
+							break;
+
+						case SHORT:
+							writeVarInt(zigZag(field.getShort(object)));
+							break;
+
+						case BOOLEAN:
+							writeBoolean(field.getBoolean(object));
+							break;
+
+						case OBJECT:
+							writeValue(field.get(object));
+							break;
+
+						default:
+							writePrimitive(kinds[i], field.get(object));
+							break;
+					}
+				}
+			}
+			catch (IllegalAccessException e)
+			{
+				throw new NotSerializableException(e.getMessage());
+			}
+		}
+
+		private void writePrimitive(int kind, Object value)
+		{
+			switch (kind)
+			{
+				case INT:
+					writeVarInt(zigZag((Integer) value));
+					break;
+
+				case SHORT:
+					writeVarInt(zigZag((Short) value));
+					break;
+
+				case BOOLEAN:
+					writeBoolean((Boolean) value);
+					break;
+
+				case BYTE:
+					writeByte((Byte) value);
+					break;
+
+				case CHAR:
+					writeVarInt((Character) value);
+					break;
+
+				case LONG:
+					writeLong((Long) value);
+					break;
+
+				case FLOAT:
+					writeFloat((Float) value);
+					break;
+
+				default:
+					writeDouble((Double) value);
+					break;
+			}
+		}
+
+		/**
+		 * Writes the index of a class, followed by its name and field names the first time it's written
+		 */
+		private void writeClass(Class<?> type, Layout layout)
+		{
+			Integer index = classes.get(type);
+
+			if (index != null)
+			{
+				writeVarInt(index);
+				return;
+			}
+
+			index = classes.size();
+			classes.put(type, index);
+			writeVarInt(index);
+			writeString(type.getName());
+
+			if (layout != null)
+			{
+				writeVarInt(layout.names.length);
+				for (String name : layout.names)
+				{
+					writeString(name);
+				}
+			}
+		}
+
+		/**
+		 * Writes 0 and the characters of a string the first time it's written, and its index + 1 after that
+		 */
+		private void writeString(String string)
+		{
+			Integer index = strings.get(string);
+
+			if (index != null)
+			{
+				writeVarInt(index + 1);
+				return;
+			}
+
+			strings.put(string, strings.size());
+			writeVarInt(0);
+
+			int length = string.length();
+			writeVarInt(length);
+			for (int i = 0; i < length; i++)
+			{
+				writeVarInt(string.charAt(i));
+			}
+		}
+
+		/**
+		 * Writes 7 bits per byte, low bits first, with the high bit set on all but the last byte
+		 */
+		private void writeVarInt(int value)
+		{
+			while ((value & ~0x7F) != 0)
+			{
+				writeByte((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			writeByte(value);
+		}
+
+		/**
+		 * Maps small negative numbers, such as the -1 of unset offsets, to small positive ones
+		 */
+		private int zigZag(int value)
+		{
+			return (value << 1) ^ (value >> 31);
+		}
+	}
+
+	private class Decoder
+	{
+		private final byte[] data;
+		private int position;
+		private final ClassLoader classLoader;
+		private final List<Object> objects = new ArrayList<Object>();
+		private final List<String> strings = new ArrayList<String>();
+		private final List<Class<?>> classes = new ArrayList<Class<?>>();
+		private final Map<Class<?>, Layout> layouts = new HashMap<Class<?>, Layout>();
+
+		private Decoder(byte[] data, ClassLoader classLoader)
+		{
+			this.data = data;
+			this.classLoader = classLoader;
+		}
+
+		private Object readValue() throws IOException
+		{
+			int tag = readUnsignedByte();
+
+			switch (tag)
+			{
+				case NULL:
+					return null;
+
+				case REFERENCE:
+					int handle = readVarInt();
+					if (handle >= objects.size())
+					{
+						throw new StreamCorruptedException();
+					}
+					return objects.get(handle);
+
+				case OBJECT:
+					return readObject();
+
+				case STRING:
+					return readString();
+
+				case ENUM:
+					return readEnum();
+
+				case ARRAY:
+					return readArray();
+
+				case LIST:
+					return readList();
+
+				case MAP:
+					return readMap();
+
+				default:
+					return readPrimitive(tag);
+			}
+		}
+
+		private Object readObject() throws IOException
+		{
+			int index = readVarInt();
+			Class<?> type;
+			Layout layout;
+
+			if (index == classes.size())
+			{
+				type = readClass();
+				layout = getLayout(type);
+
+				// reject streams written with a different version of the class
+				int count = readVarInt();
+				if (count != layout.names.length)
+				{
+					throw new InvalidClassException(type.getName());
+				}
+				for (String name : layout.names)
+				{
+					if (!name.equals(readString()))
+					{
+						throw new InvalidClassException(type.getName());
+					}
+				}
+				layouts.put(type, layout);
+			}
+			else
+			{
+				type = getClass(index);
+				layout = layouts.get(type);
+				if (layout == null)
+				{
+					// the class was seen as something other than an object before
+					throw new StreamCorruptedException(type.getName());
+				}
+			}
+
+			Object object = newInstance(layout, type);
+			objects.add(object);
+			readFields(layout, object);
+
+			return object;
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private Object readEnum() throws IOException
+		{
+			Class type = readClassReference();
+			String name = readString();
+
+			try
+			{
+				return Enum.valueOf(type, name);
+			}
+			catch (RuntimeException e)
+			{
+				throw new InvalidClassException(type.getName(), name);
+			}
+		}
+
+		private Object readArray() throws IOException
+		{
+			Class<?> componentType = readClassReference();
+			int length = readVarInt();
+			Object array = Array.newInstance(componentType, length);
+
+			objects.add(array);
+
+			if (componentType.isPrimitive())
+			{
+				int kind = getKind(componentType);
+
+				for (int i = 0; i < length; i++)
+				{
+					Array.set(array, i, readPrimitive(kind));
+				}
+			}
+			else
+			{
+				Object[] objectArray = (Object[]) array;
+
+				try
+				{
+					for (int i = 0; i < length; i++)
+					{
+						objectArray[i] = readValue();
+					}
+				}
+				catch (ArrayStoreException e)
+				{
+					throw new StreamCorruptedException(e.getMessage());
+				}
+			}
+
+			return array;
+		}
+
+		private Object readList() throws IOException
+		{
+			int size = readVarInt();
+			List<Object> list = new ArrayList<Object>(size);
+
+			objects.add(list);
+			for (int i = 0; i < size; i++)
+			{
+				list.add(readValue());
+			}
+
+			return list;
+		}
+
+		private Object readMap() throws IOException
+		{
+			int size = readVarInt();
+			Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+
+			objects.add(map);
+			for (int i = 0; i < size; i++)
+			{
+				Object key = readValue();
+				map.put(key, readValue());
+			}
+
+			return map;
+		}
+
+		private void readFields(Layout layout, Object object) throws IOException
+		{
+			Field[] fields = layout.fields;
+			int[] kinds = layout.kinds;
+
+			try
+			{
+				for (int i = 0; i < fields.length; i++)
+				{
+					Field field = fields[i];
+
+					switch (kinds[i])
+					{
+						case INT:
+							field.setInt(object, unZigZag(readVarInt()));
+							break;
+
+						case SHORT:
+							field.setShort(object, (short) unZigZag(readVarInt()));
+							break;
+
+						case BOOLEAN:
+							field.setBoolean(object, readBoolean());
+							break;
+
+						case OBJECT:
+							field.set(object, readValue());
+							break;
+
+						default:
+							field.set(object, readPrimitive(kinds[i]));
+							break;
+					}
+				}
+			}
+			catch (IllegalAccessException e)
+			{
+				throw new InvalidClassException(e.getMessage());
+			}
+			catch (IllegalArgumentException e)
+			{
+				// a value of the wrong type
+				throw new StreamCorruptedException(e.getMessage());
+			}
+		}
+
+		private Object readPrimitive(int kind) throws IOException
+		{
+			switch (kind)
+			{
+				case INT:
+					return unZigZag(readVarInt());
+
+				case SHORT:
+					return (short) unZigZag(readVarInt());
+
+				case BOOLEAN:
+					return readBoolean();
+
+				case BYTE:
+					return readByte();
+
+				case CHAR:
+					return (char) readVarInt();
+
+				case LONG:
+					return readLong();
+
+				case FLOAT:
+					return readFloat();
+
+				case DOUBLE:
+					return readDouble();
+
+				default:
+					throw new StreamCorruptedException(Integer.toString(kind));
+			}
+		}
+
+		private Class<?> readClassReference() throws IOException
+		{
+			int index = readVarInt();
+
+			return (index == classes.size()) ? readClass() : getClass(index);
+		}
+
+		private Class<?> getClass(int index) throws IOException
+		{
+			if (index >= classes.size())
+			{
+				throw new StreamCorruptedException();
+			}
+			return classes.get(index);
+		}
+
+		private Class<?> readClass() throws IOException
+		{
+			String name = readString();
+			Class<?> type = PRIMITIVE_TYPES.get(name);
+
+			if (type == null)
+			{
+				try
+				{
+					type = Class.forName(name, false, classLoader);
+				}
+				catch (ClassNotFoundException e)
+				{
+					try
+					{
+						type = Class.forName(name, false, ParseNodeCodec.class.getClassLoader());
+					}
+					catch (ClassNotFoundException e2)
+					{
+						throw new InvalidClassException(name);
+					}
+				}
+			}
+
+			classes.add(type);
+			return type;
+		}
+
+		private String readString() throws IOException
+		{
+			int index = readVarInt();
+
+			if (index != 0)
+			{
+				if (index > strings.size())
+				{
+					throw new StreamCorruptedException();
+				}
+				return strings.get(index - 1);
+			}
+
+			int length = readVarInt();
+			char[] chars = new char[length];
+
+			for (int i = 0; i < length; i++)
+			{
+				chars[i] = (char) readVarInt();
+			}
+
+			String string = new String(chars);
+			strings.add(string);
+
+			return string;
+		}
+
+		private int readUnsignedByte() throws IOException
+		{
+			if (position == data.length)
+			{
+				throw new EOFException();
+			}
+			return data[position++] & 0xFF;
+		}
+
+		private byte readByte() throws IOException
+		{
+			return (byte) readUnsignedByte();
+		}
+
+		private boolean readBoolean() throws IOException
+		{
+			return readUnsignedByte() != 0;
+		}
+
+		private int readInt() throws IOException
+		{
+			return (readUnsignedByte() << 24) | (readUnsignedByte() << 16) | (readUnsignedByte() << 8)
+					| readUnsignedByte();
+		}
+
+		private long readLong() throws IOException
+		{
+			return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+		}
+
+		private float readFloat() throws IOException
+		{
+			return Float.intBitsToFloat(readInt());
+		}
+
+		private double readDouble() throws IOException
+		{
+			return Double.longBitsToDouble(readLong());
+		}
+
+		private int readVarInt() throws IOException
+		{
+			int value = 0;
+			int shift = 0;
+			int b;
+
+			do
+			{
+				if (shift > 28)
+				{
+					throw new StreamCorruptedException();
+				}
+				b = readUnsignedByte();
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			}
+			while ((b & 0x80) != 0);
+
+			return value;
+		}
+
+		private int unZigZag(int value)
+		{
+			return (value >>> 1) ^ -(value & 1);
+		}
+	}
+}
@@ -0,0 +1,661 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.internal.parsing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+
+import com.aptana.core.logging.IdeLog;
+import com.aptana.parsing.IDebugScopes;
+import com.aptana.parsing.IParseState;
+import com.aptana.parsing.IParser;
+import com.aptana.parsing.Messages;
+import com.aptana.parsing.ParseResult;
+import com.aptana.parsing.ParseState;
+import com.aptana.parsing.ParsingPlugin;
+import com.aptana.parsing.ast.IParseError;
+import com.aptana.parsing.ast.IParseRootNode;
+
+/**
+ * Keeps parse results on disk, so that sources that haven't changed since a previous session don't need to be parsed
+ * again. Entries are keyed by content type, parser and a digest of the source, and hold the AST in the compact format
+ * of {@link ParseNodeCodec}, deflated.
+ * <p>
+ * Only results without errors for plain {@link ParseState}s are kept; subclasses add options to the parse we can't
+ * tell apart. Results are written in the background once parsing has been idle for a moment, so that the results of
+ * the keystrokes in a burst of typing don't all end up on disk. Files that were least recently read or written are
+ * deleted once the cache grows beyond its maximum size. Results whose nodes can't be written, such as nodes of a class
+ * without a no-arg constructor, are simply not kept.
+ */
+public class PersistentParseCache
+{
+	/**
+	 * Bump when the layout of the entries changes
+	 */
+	private static final int FORMAT_VERSION = 1;
+
+	private static final String EXTENSION = ".ast"; //$NON-NLS-1$
+	private static final String DIGEST_ALGORITHM = "SHA-1"; //$NON-NLS-1$
+
+	/**
+	 * How long parsing has to be idle before pending results are written
+	 */
+	private static final long WRITE_DELAY = 2000;
+
+	/**
+	 * The most results waiting to be written. Older ones are dropped.
+	 */
+	private static final int MAX_PENDING = 8;
+
+	/**
+	 * A parse result waiting to be written
+	 */
+	private static class PendingEntry
+	{
+		private final String contentTypeId;
+		private final String parserKey;
+		private final int startingOffset;
+		private final String source;
+		private final IParseRootNode root;
+
+		private PendingEntry(String contentTypeId, String parserKey, int startingOffset, String source,
+				IParseRootNode root)
+		{
+			this.contentTypeId = contentTypeId;
+			this.parserKey = parserKey;
+			this.startingOffset = startingOffset;
+			this.source = source;
+			this.root = root;
+		}
+	}
+
+	private final File fDirectory;
+	private final long fMaxSize;
+
+	/**
+	 * The total size of the entries on disk, or -1 until we've looked
+	 */
+	private long fSize = -1;
+
+	/**
+	 * Results waiting to be written, by file name. Access is synchronized on the map.
+	 */
+	private final Map<String, PendingEntry> fPending = new LinkedHashMap<String, PendingEntry>();
+
+	private final ParseNodeCodec fCodec = new ParseNodeCodec();
+	private final Job fWriteJob;
+
+	private final AtomicLong fHits = new AtomicLong();
+	private final AtomicLong fMisses = new AtomicLong();
+	private final AtomicLong fWrites = new AtomicLong();
+
+	/**
+	 * PersistentParseCache
+	 *
+	 * @param directory
+	 *            where the entries are kept
+	 * @param maxSize
+	 *            the number of bytes the entries may take up
+	 */
+	public PersistentParseCache(File directory, long maxSize)
+	{
+		fDirectory = directory;
+		fMaxSize = maxSize;
+		fWriteJob = new Job(Messages.PersistentParseCache_Write_Job_Name)
+		{
+			@Override
+			protected IStatus run(IProgressMonitor monitor)
+			{
+				flush();
+				return Status.OK_STATUS;
+			}
+		};
+		fWriteJob.setSystem(true);
+		fWriteJob.setPriority(Job.DECORATE);
+	}
+
+	/**
+	 * Can the result of parsing this state be kept? Subclasses of {@link ParseState} carry options that change the
+	 * result of a parse, and skipped ranges make it depend on more than the source.
+	 *
+	 * @param parseState
+	 * @return
+	 */
+	public static boolean canCache(IParseState parseState)
+	{
+		return parseState.getClass() == ParseState.class && parseState.getSkippedRanges() == null;
+	}
+
+	/**
+	 * Returns the result stored for the source of the parse state, or null if there's none.
+	 *
+	 * @param contentTypeId
+	 * @param parseState
+	 * @param parser
+	 *            the parser that would otherwise parse the source
+	 * @return
+	 */
+	public ParseResult get(String contentTypeId, IParseState parseState, IParser parser)
+	{
+		String source = parseState.getSource();
+		String parserKey = getParserKey(parser);
+		File file = new File(fDirectory, getFileName(contentTypeId, parserKey, parseState.getStartingOffset(), source));
+
+		if (!file.isFile())
+		{
+			fMisses.incrementAndGet();
+			return null;
+		}
+
+		IParseRootNode root = null;
+		InputStream in = null;
+		Inflater inflater = new Inflater();
+
+		try
+		{
+			in = new BufferedInputStream(new FileInputStream(file));
+			DataInputStream data = new DataInputStream(in);
+
+			if (readHeader(data, contentTypeId, parserKey, parseState.getStartingOffset(), source))
+			{
+				int size = data.readInt();
+				if (size < 0)
+				{
+					throw new StreamCorruptedException();
+				}
+				byte[] nodes = new byte[size];
+
+				new DataInputStream(new InflaterInputStream(in, inflater)).readFully(nodes);
+				root = (IParseRootNode) fCodec.decode(nodes, parser.getClass().getClassLoader());
+			}
+		}
+		catch (Exception e)
+		{
+			// most likely written by a different version of the node classes
+			logTrace(MessageFormat.format("Unable to read parse result from {0}: {1}", file, e)); //$NON-NLS-1$
+		}
+		catch (StackOverflowError e)
+		{
+			logTrace(MessageFormat.format("AST in {0} is too deep to read", file)); //$NON-NLS-1$
+		}
+		finally
+		{
+			close(in);
+			inflater.end();
+		}
+
+		if (root == null)
+		{
+			remove(file);
+			fMisses.incrementAndGet();
+			return null;
+		}
+
+		// keep the entries we use from being evicted
+		file.setLastModified(System.currentTimeMillis());
+		fHits.incrementAndGet();
+
+		return new ParseResult(root, Collections.<IParseError> emptyList());
+	}
+
+	/**
+	 * Queues the result of a parse to be written. Results with errors aren't kept.
+	 *
+	 * @param contentTypeId
+	 * @param parseState
+	 * @param parser
+	 * @param result
+	 */
+	public void put(String contentTypeId, IParseState parseState, IParser parser, ParseResult result)
+	{
+		IParseRootNode root = result.getRootNode();
+
+		if (root == null || !result.getErrors().isEmpty())
+		{
+			return;
+		}
+
+		String source = parseState.getSource();
+		String parserKey = getParserKey(parser);
+		int startingOffset = parseState.getStartingOffset();
+		String fileName = getFileName(contentTypeId, parserKey, startingOffset, source);
+
+		synchronized (fPending)
+		{
+			fPending.remove(fileName);
+			fPending.put(fileName, new PendingEntry(contentTypeId, parserKey, startingOffset, source, root));
+
+			if (fPending.size() > MAX_PENDING)
+			{
+				Iterator<String> names = fPending.keySet().iterator();
+
+				names.next();
+				names.remove();
+			}
+		}
+
+		// push the write back while parsing is busy
+		fWriteJob.cancel();
+		fWriteJob.schedule(WRITE_DELAY);
+	}
+
+	/**
+	 * Writes the pending results now
+	 */
+	public void flush()
+	{
+		while (true)
+		{
+			String fileName;
+			PendingEntry entry;
+
+			synchronized (fPending)
+			{
+				if (fPending.isEmpty())
+				{
+					return;
+				}
+
+				Iterator<Map.Entry<String, PendingEntry>> entries = fPending.entrySet().iterator();
+				Map.Entry<String, PendingEntry> next = entries.next();
+
+				entries.remove();
+				fileName = next.getKey();
+				entry = next.getValue();
+			}
+
+			write(new File(fDirectory, fileName), entry);
+		}
+	}
+
+	/**
+	 * Drops the pending results and deletes all entries
+	 */
+	public synchronized void clear()
+	{
+		synchronized (fPending)
+		{
+			fPending.clear();
+		}
+
+		for (File file : listEntries())
+		{
+			delete(file);
+		}
+		fSize = 0;
+	}
+
+	/**
+	 * Writes what's pending and stops writing in the background
+	 */
+	public void dispose()
+	{
+		fWriteJob.cancel();
+		flush();
+		fCodec.clear();
+	}
+
+	/**
+	 * getHits
+	 *
+	 * @return
+	 */
+	public long getHits()
+	{
+		return fHits.get();
+	}
+
+	/**
+	 * getMisses
+	 *
+	 * @return
+	 */
+	public long getMisses()
+	{
+		return fMisses.get();
+	}
+
+	/**
+	 * getWrites
+	 *
+	 * @return
+	 */
+	public long getWrites()
+	{
+		return fWrites.get();
+	}
+
+	/**
+	 * Returns the total size of the entries on disk
+	 *
+	 * @return
+	 */
+	public synchronized long getSize()
+	{
+		if (fSize == -1)
+		{
+			fSize = 0;
+			for (File file : listEntries())
+			{
+				fSize += file.length();
+			}
+		}
+
+		return fSize;
+	}
+
+	/**
+	 * Writes an entry to a temporary file, and moves it in place once complete so that readers never see half an
+	 * entry.
+	 *
+	 * @param file
+	 * @param entry
+	 */
+	private synchronized void write(File file, PendingEntry entry)
+	{
+		if (!fDirectory.isDirectory() && !fDirectory.mkdirs())
+		{
+			return;
+		}
+
+		ParseNodeCodec.ByteArray nodes;
+
+		try
+		{
+			nodes = fCodec.encode(entry.root);
+		}
+		catch (Exception e)
+		{
+			// typically a node that isn't serializable
+			logTrace(MessageFormat.format("Unable to write parse result for {0}: {1}", entry.contentTypeId, e)); //$NON-NLS-1$
+			return;
+		}
+		catch (StackOverflowError e)
+		{
+			logTrace(MessageFormat.format("AST for {0} is too deep to write", entry.contentTypeId)); //$NON-NLS-1$
+			return;
+		}
+
+		File temp = new File(fDirectory, file.getName() + ".tmp"); //$NON-NLS-1$
+		OutputStream out = null;
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		boolean written = false;
+
+		try
+		{
+			out = new BufferedOutputStream(new FileOutputStream(temp));
+
+			DataOutputStream data = new DataOutputStream(out);
+			writeHeader(data, entry);
+			data.writeInt(nodes.size());
+			data.flush();
+
+			DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater);
+			nodes.writeTo(deflated);
+			deflated.finish();
+			written = true;
+		}
+		catch (IOException e)
+		{
+			logTrace(MessageFormat.format("Unable to write {0}: {1}", temp, e)); //$NON-NLS-1$
+		}
+		finally
+		{
+			close(out);
+			deflater.end();
+		}
+
+		if (!written)
+		{
+			delete(temp);
+			return;
+		}
+
+		long size = getSize();
+
+		if (file.exists())
+		{
+			size -= file.length();
+			delete(file);
+		}
+		if (!temp.renameTo(file))
+		{
+			delete(temp);
+			fSize = size;
+			return;
+		}
+
+		fSize = size + file.length();
+		fWrites.incrementAndGet();
+
+		if (fSize > fMaxSize)
+		{
+			evict();
+		}
+	}
+
+	/**
+	 * Deletes the least recently used entries until the cache is back to three quarters of its maximum size, which
+	 * saves evicting again on each of the next writes.
+	 */
+	private void evict()
+	{
+		File[] files = listEntries();
+
+		Arrays.sort(files, new Comparator<File>()
+		{
+			public int compare(File a, File b)
+			{
+				long aModified = a.lastModified();
+				long bModified = b.lastModified();
+
+				return (aModified < bModified) ? -1 : ((aModified == bModified) ? 0 : 1);
+			}
+		});
+
+		long target = fMaxSize * 3 / 4;
+
+		for (int i = 0; i < files.length && fSize > target; i++)
+		{
+			long length = files[i].length();
+
+			if (delete(files[i]))
+			{
+				fSize -= length;
+			}
+		}
+	}
+
+	/**
+	 * Deletes an entry that can't be read
+	 *
+	 * @param file
+	 */
+	private synchronized void remove(File file)
+	{
+		long length = file.length();
+
+		if (delete(file) && fSize != -1)
+		{
+			fSize -= length;
+		}
+	}
+
+	private void writeHeader(DataOutputStream out, PendingEntry entry) throws IOException
+	{
+		out.writeInt(FORMAT_VERSION);
+		out.writeUTF(entry.contentTypeId);
+		out.writeUTF(entry.parserKey);
+		out.writeInt(entry.startingOffset);
+		out.writeInt(entry.source.length());
+		out.write(digest(entry.source));
+	}
+
+	/**
+	 * Does the entry hold the result for this source? File names are based on hash codes, so this compares a digest of
+	 * the source too.
+	 */
+	private boolean readHeader(DataInputStream in, String contentTypeId, String parserKey, int startingOffset,
+			String source) throws IOException
+	{
+		if (in.readInt() != FORMAT_VERSION || !contentTypeId.equals(in.readUTF()) || !parserKey.equals(in.readUTF())
+				|| in.readInt() != startingOffset || in.readInt() != source.length())
+		{
+			return false;
+		}
+
+		byte[] expected = digest(source);
+		byte[] actual = new byte[expected.length];
+
+		in.readFully(actual);
+
+		return Arrays.equals(expected, actual);
+	}
+
+	/**
+	 * Identifies the parser and its version, so that results of older parsers aren't used
+	 *
+	 * @param parser
+	 * @return
+	 */
+	private static String getParserKey(IParser parser)
+	{
+		Class<?> parserClass = parser.getClass();
+		Bundle bundle = FrameworkUtil.getBundle(parserClass);
+
+		if (bundle == null)
+		{
+			return parserClass.getName();
+		}
+
+		return parserClass.getName() + '@' + bundle.getVersion();
+	}
+
+	private static String getFileName(String contentTypeId, String parserKey, int startingOffset, String source)
+	{
+		StringBuilder builder = new StringBuilder();
+
+		builder.append(Integer.toHexString((contentTypeId + '\0' + parserKey).hashCode()));
+		builder.append('-').append(Integer.toHexString(source.hashCode()));
+		builder.append('-').append(Integer.toHexString(source.length()));
+		builder.append('-').append(Integer.toHexString(startingOffset));
+		builder.append(EXTENSION);
+
+		return builder.toString();
+	}
+
+	private static byte[] digest(String source)
+	{
+		MessageDigest digest;
+
+		try
+		{
+			digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// every JRE has SHA-1
+			throw new IllegalStateException(e);
+		}
+
+		byte[] buffer = new byte[8192];
+		int length = source.length();
+		int i = 0;
+
+		while (i < length)
+		{
+			int count = 0;
+
+			while (count < buffer.length && i < length)
+			{
+				char c = source.charAt(i++);
+
+				buffer[count++] = (byte) (c >> 8);
+				buffer[count++] = (byte) c;
+			}
+			digest.update(buffer, 0, count);
+		}
+
+		return digest.digest();
+	}
+
+	private File[] listEntries()
+	{
+		File[] files = fDirectory.listFiles(new FileFilter()
+		{
+			public boolean accept(File file)
+			{
+				return file.getName().endsWith(EXTENSION);
+			}
+		});
+
+		return (files == null) ? new File[0] : files;
+	}
+
+	private static boolean delete(File file)
+	{
+		return !file.exists() || file.delete();
+	}
+
+	private static void close(Closeable closeable)
+	{
+		if (closeable != null)
+		{
+			try
+			{
+				closeable.close();
+			}
+			catch (IOException e)
+			{
+				// ignore
+			}
+		}
+	}
+
+	private static void logTrace(String message)
+	{
+		ParsingPlugin plugin = ParsingPlugin.getDefault();
+
+		if (plugin != null && IdeLog.isTraceEnabled(plugin, IDebugScopes.PARSING))
+		{
+			IdeLog.logTrace(plugin, message, IDebugScopes.PARSING);
+		}
+	}
+}
@@ -0,0 +1,21 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.parsing;
+
+public interface IPreferenceConstants
+{
+	/**
+	 * Boolean preference: do we keep parse results on disk so that they survive a restart?
+	 */
+	public static final String PERSISTENT_PARSE_CACHE = "PERSISTENT_PARSE_CACHE"; //$NON-NLS-1$
+
+	/**
+	 * Integer preference: the size, in megabytes, the parse results kept on disk may take up.
+	 */
+	public static final String PERSISTENT_PARSE_CACHE_SIZE = "PERSISTENT_PARSE_CACHE_SIZE"; //$NON-NLS-1$
+}
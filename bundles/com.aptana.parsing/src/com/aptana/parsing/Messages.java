@@ -19,6 +19,7 @@ public class Messages extends NLS
 	public static String ParserPoolFactory_Expecting_Source;
 	public static String ParserPoolFactory_Cannot_Acquire_Parser;
 	public static String ParserPoolFactory_Cannot_Acquire_Parser_Pool;
+	public static String PersistentParseCache_Write_Job_Name;
 
 	static
 	{
@@ -15,6 +15,7 @@ import com.aptana.core.epl.util.ILRUCacheable;
 import com.aptana.core.epl.util.LRUCacheWithSoftPrunedValues;
 import com.aptana.core.logging.IdeLog;
 import com.aptana.core.util.StringUtil;
+import com.aptana.internal.parsing.PersistentParseCache;
 
 /**
  * This class is responsible for actually calling the parsing. It'll use the ParseState#getCacheKey() to know if an
@@ -139,6 +140,11 @@ public class ParsingEngine
 	 */
 	private IParserPoolProvider fParserPoolProvider;
 
+	/**
+	 * Keeps results on disk across sessions. May be null.
+	 */
+	private final PersistentParseCache fPersistentCache;
+
 	/**
 	 * Any access to the fParseCache should have this lock in place.
 	 */
@@ -173,16 +179,35 @@ public class ParsingEngine
 	 *            if an element does not have at least this size (in chars), it won't even enter the cache.
 	 */
 	protected ParsingEngine(IParserPoolProvider parserPoolProvider, int cacheSize, int minCacheElementSize)
+	{
+		this(parserPoolProvider, cacheSize, minCacheElementSize, null);
+	}
+
+	/**
+	 * Same as above, but results that aren't in memory are also looked up in, and added to, the persistent cache.
+	 * 
+	 * @param persistentCache
+	 *            the cache that keeps results on disk, or null
+	 */
+	protected ParsingEngine(IParserPoolProvider parserPoolProvider, int cacheSize, int minCacheElementSize,
+			PersistentParseCache persistentCache)
 	{
 		fParseCache = new LRUCacheWithSoftPrunedValues<IParseStateCacheKey, CacheValue>(cacheSize);
 		fParserPoolProvider = parserPoolProvider;
 		fMinimumNumberOfCharsToEnterCache = minCacheElementSize;
+		fPersistentCache = persistentCache;
 	}
 
 	public ParsingEngine(IParserPoolProvider parserPoolProvider)
 	{
 		this(parserPoolProvider, MAXIMUM_NUMBER_OF_CHARS_IN_STRONG_REFERENCES_CACHE,
-				MINIMUM_NUMBER_OF_CHARS_TO_ENTER_CACHE);
+				MINIMUM_NUMBER_OF_CHARS_TO_ENTER_CACHE, getDefaultPersistentCache());
+	}
+
+	private static PersistentParseCache getDefaultPersistentCache()
+	{
+		ParsingPlugin plugin = ParsingPlugin.getDefault();
+		return (plugin == null) ? null : plugin.getPersistentParseCache();
 	}
 
 	public void dispose()
@@ -365,8 +390,7 @@ public class ParsingEngine
 									IDebugScopes.PARSING);
 						}
 
-						result = parser.parse(parseState);
-
+						result = parseWithPersistentCache(contentTypeId, parseState, parser);
 					}
 					finally
 					{
@@ -397,6 +421,26 @@ public class ParsingEngine
 
 	}
 
+	/**
+	 * Returns the result kept on disk for the source if there is one, and parses it otherwise.
+	 */
+	private ParseResult parseWithPersistentCache(String contentTypeId, IParseState parseState, IParser parser)
+			throws Exception // $codepro.audit.disable declaredExceptions
+	{
+		if (fPersistentCache == null || !PersistentParseCache.canCache(parseState))
+		{
+			return parser.parse(parseState);
+		}
+
+		ParseResult result = fPersistentCache.get(contentTypeId, parseState, parser);
+		if (result == null)
+		{
+			result = parser.parse(parseState);
+			fPersistentCache.put(contentTypeId, parseState, parser, result);
+		}
+		return result;
+	}
+
 	private ParseResult noCacheParse(String contentTypeId, IParseState parseState) throws Exception
 	{
 		IParserPool pool = null;
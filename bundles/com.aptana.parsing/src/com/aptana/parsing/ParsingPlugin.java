@@ -7,9 +7,14 @@
  */
 package com.aptana.parsing;
 
+import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Plugin;
+import org.eclipse.core.runtime.preferences.IPreferencesService;
 import org.osgi.framework.BundleContext;
 
+import com.aptana.internal.parsing.PersistentParseCache;
+import com.aptana.parsing.preferences.PreferenceInitializer;
+
 /**
  * The activator class controls the plug-in life cycle
  */
@@ -19,6 +24,12 @@ public class ParsingPlugin extends Plugin
 	public static final String PLUGIN_ID = "com.aptana.parsing"; //$NON-NLS-1$
 	private static ParsingPlugin PLUGIN;
 
+	private static final String PERSISTENT_PARSE_CACHE_DIRECTORY = "asts"; //$NON-NLS-1$
+	private static final long BYTES_PER_MB = 1024 * 1024;
+
+	private PersistentParseCache fPersistentParseCache;
+	private boolean fPersistentParseCacheInitialized;
+
 	/**
 	 * The constructor
 	 */
@@ -45,6 +56,14 @@ public class ParsingPlugin extends Plugin
 		try
 		{
 			ParserPoolFactory.getInstance().dispose();
+			synchronized (this)
+			{
+				if (fPersistentParseCache != null)
+				{
+					fPersistentParseCache.dispose();
+					fPersistentParseCache = null;
+				}
+			}
 		}
 		finally
 		{
@@ -62,4 +81,27 @@ public class ParsingPlugin extends Plugin
 	{
 		return PLUGIN;
 	}
+
+	/**
+	 * Returns the cache that keeps parse results on disk across sessions, or null unless the user turned it on.
+	 * 
+	 * @return the persistent parse cache, or null
+	 */
+	public synchronized PersistentParseCache getPersistentParseCache()
+	{
+		if (!fPersistentParseCacheInitialized)
+		{
+			fPersistentParseCacheInitialized = true;
+
+			IPreferencesService service = Platform.getPreferencesService();
+			if (service.getBoolean(PLUGIN_ID, IPreferenceConstants.PERSISTENT_PARSE_CACHE, false, null))
+			{
+				int size = service.getInt(PLUGIN_ID, IPreferenceConstants.PERSISTENT_PARSE_CACHE_SIZE,
+						PreferenceInitializer.DEFAULT_PERSISTENT_PARSE_CACHE_SIZE, null);
+				fPersistentParseCache = new PersistentParseCache(getStateLocation()
+						.append(PERSISTENT_PARSE_CACHE_DIRECTORY).toFile(), size * BYTES_PER_MB);
+			}
+		}
+		return fPersistentParseCache;
+	}
 }
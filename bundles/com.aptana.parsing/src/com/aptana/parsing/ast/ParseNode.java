@@ -7,6 +7,7 @@
  */
 package com.aptana.parsing.ast;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
@@ -19,10 +20,12 @@ import com.aptana.parsing.lexer.Range;
 import beaver.spec.ast.Node;
 import beaver.spec.ast.TreeWalker;
 
-public abstract class ParseNode extends Node implements IParseNode
+public abstract class ParseNode extends Node implements IParseNode, Cloneable
 {
-	protected static final class NameNode implements INameNode
+	protected static final class NameNode implements INameNode, Serializable
 	{
+		private static final long serialVersionUID = 1L;
+
 		private final String fName;
 		private final int fStart;
 		private final int fEnd;
@@ -787,6 +790,64 @@ public abstract class ParseNode extends Node implements IParseNode
 		}
 	}
 
+	/**
+	 * Returns a deep copy of this node. The copy has no parent and its descendants are copies too, so it can be added
+	 * to another tree and have its offsets changed without affecting this node. Subclasses that keep offsets of their
+	 * own move them in {@link #addOffset(int)}, and copy any other mutable state they keep.
+	 * 
+	 * @return
+	 */
+	public ParseNode copy()
+	{
+		return copy(0);
+	}
+
+	/**
+	 * Returns a deep copy of this node, like {@link #copy()}, with the offsets of the copy and its descendants moved by
+	 * the specified amount.
+	 * 
+	 * @param offset
+	 * @return
+	 */
+	public ParseNode copy(int offset)
+	{
+		ParseNode result;
+
+		try
+		{
+			result = (ParseNode) super.clone();
+		}
+		catch (CloneNotSupportedException e)
+		{
+			// we're Cloneable
+			throw new IllegalStateException(e);
+		}
+
+		result.fParent = null;
+		result.fChildren = (fChildrenCount == 0) ? NO_CHILDREN : new IParseNode[fChildrenCount];
+
+		for (int i = 0; i < fChildrenCount; i++)
+		{
+			IParseNode child = fChildren[i];
+
+			if (child instanceof ParseNode)
+			{
+				ParseNode childCopy = ((ParseNode) child).copy(offset);
+
+				childCopy.setParent(result);
+				child = childCopy;
+			}
+			result.fChildren[i] = child;
+		}
+
+		if (offset != 0)
+		{
+			result.addOffset(offset);
+		}
+
+		return result;
+	}
+
 	/**
 	 * Remove any unneeded memory from this node. This compacts the internal array used to store child nodes and is
 	 * similar in concept to {@link ArrayList#trimToSize()}.
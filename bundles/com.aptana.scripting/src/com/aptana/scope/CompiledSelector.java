@@ -0,0 +1,441 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.scope;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.aptana.core.util.StringUtil;
+
+/**
+ * An immutable form of a selector tree which matches the steps of a scope the same way the selector nodes do, without
+ * keeping any state in the nodes, so it can be shared between threads. Match results come back as an array with the
+ * match length at each step of the scope.
+ * <p>
+ * A compiled selector also knows the names one of which has to start a step of the scope for the selector to match at
+ * all. Those keys are what {@link ScopeSelectorIndex} indexes selectors by.
+ */
+final class CompiledSelector
+{
+
+	private final Node root;
+	private final List<String> keys;
+
+	private CompiledSelector(Node root)
+	{
+		this.root = root;
+		List<String> rootKeys = root.getKeys();
+		this.keys = (rootKeys == null) ? null : Collections.unmodifiableList(rootKeys);
+	}
+
+	/**
+	 * Compiles a selector tree.
+	 * 
+	 * @param node
+	 *            the root of the tree, may be null
+	 * @return the compiled selector
+	 */
+	static CompiledSelector compile(ISelectorNode node)
+	{
+		return new CompiledSelector(compileNode(node));
+	}
+
+	/**
+	 * Returns the names one of which has to start a step of a scope for this selector to match it.
+	 * 
+	 * @return the names, or null if the selector can't be narrowed down that way
+	 */
+	List<String> getKeys()
+	{
+		return keys;
+	}
+
+	/**
+	 * Matches the steps of a scope, trying from the deepest step up, like {@link ScopeSelector#matches(String)}.
+	 * 
+	 * @param steps
+	 * @return the match length at each step, or null if the selector doesn't match
+	 */
+	int[] match(String[] steps)
+	{
+		Results results = new Results();
+		for (int start = steps.length - 1; start >= 0; start--)
+		{
+			results.size = 0;
+			if (root.match(steps, start, results) >= 0)
+			{
+				int[] lengths = new int[steps.length];
+				System.arraycopy(results.values, 0, lengths, start, Math.min(results.size, steps.length - start));
+				return lengths;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Compares match results the way {@link ScopeSelector#compareTo(IScopeSelector)} does: the longest match at the
+	 * deepest step wins, ties are broken at the steps above it.
+	 * 
+	 * @param results
+	 * @param otherResults
+	 * @return a positive number if the first results are the better match, negative if the other ones are, 0 for a tie
+	 */
+	static int compare(int[] results, int[] otherResults)
+	{
+		for (int i = Math.max(results.length, otherResults.length) - 1; i >= 0; i--)
+		{
+			int value = (i < results.length) ? results[i] : 0;
+			int otherValue = (i < otherResults.length) ? otherResults[i] : 0;
+			if (value != otherValue)
+			{
+				return value - otherValue;
+			}
+		}
+		return 0;
+	}
+
+	private static Node compileNode(ISelectorNode node)
+	{
+		if (node == null || node.getClass() == SelectorNode.class)
+		{
+			return NEVER;
+		}
+		if (node instanceof NameSelector)
+		{
+			return new Name(node.toString());
+		}
+		if (node instanceof GroupSelector)
+		{
+			return compileNode(((GroupSelector) node).getChild());
+		}
+		if (node instanceof NegativeLookaheadSelector || node instanceof OrSelector
+				|| node instanceof DescendantSelector || node instanceof IntersectionSelector)
+		{
+			BinarySelector binary = (BinarySelector) node;
+			ISelectorNode leftChild = binary.getLeftChild();
+			ISelectorNode rightChild = binary.getRightChild();
+			if (node instanceof NegativeLookaheadSelector)
+			{
+				// without both sides, the node matches without taking any step
+				return (leftChild == null || rightChild == null) ? ALWAYS : new Without(compileNode(leftChild),
+						compileNode(rightChild));
+			}
+			if (node instanceof OrSelector)
+			{
+				if (leftChild == null)
+				{
+					return NEVER;
+				}
+				return (rightChild == null) ? compileNode(leftChild) : new Or(compileNode(leftChild),
+						compileNode(rightChild));
+			}
+			if (leftChild == null || rightChild == null)
+			{
+				return NEVER;
+			}
+			if (node instanceof DescendantSelector)
+			{
+				return new Descendant(compileNode(leftChild), compileNode(rightChild));
+			}
+			return new Intersection(compileNode(leftChild), compileNode(rightChild));
+		}
+		return new Other(node);
+	}
+
+	/**
+	 * A growable list of match lengths, truncated back when a match fails.
+	 */
+	private static class Results
+	{
+		int[] values = new int[8];
+		int size;
+
+		void add(int value)
+		{
+			if (size == values.length)
+			{
+				int[] grown = new int[size * 2];
+				System.arraycopy(values, 0, grown, 0, size);
+				values = grown;
+			}
+			values[size++] = value;
+		}
+	}
+
+	private static abstract class Node
+	{
+
+		/**
+		 * Matches at a step, adding the match length of each step matched to the results.
+		 * 
+		 * @return the step after the match, or -1 if it doesn't match, in which case the results are left as they were
+		 */
+		abstract int match(String[] steps, int step, Results results);
+
+		abstract List<String> getKeys();
+	}
+
+	private static final Node NEVER = new Node()
+	{
+		int match(String[] steps, int step, Results results)
+		{
+			return -1;
+		}
+
+		List<String> getKeys()
+		{
+			return Collections.emptyList();
+		}
+	};
+
+	private static final Node ALWAYS = new Node()
+	{
+		int match(String[] steps, int step, Results results)
+		{
+			return step;
+		}
+
+		List<String> getKeys()
+		{
+			return null;
+		}
+	};
+
+	private static class Name extends Node
+	{
+		private final String name;
+
+		Name(String name)
+		{
+			this.name = name;
+		}
+
+		int match(String[] steps, int step, Results results)
+		{
+			if (step >= steps.length || StringUtil.isEmpty(name))
+			{
+				return -1;
+			}
+			String scope = steps[step];
+			int length = name.length();
+			if (scope.startsWith(name) && (scope.length() == length || scope.charAt(length) == '.'))
+			{
+				results.add(length);
+				return step + 1;
+			}
+			return -1;
+		}
+
+		List<String> getKeys()
+		{
+			List<String> keys = new ArrayList<String>(1);
+			if (!StringUtil.isEmpty(name))
+			{
+				keys.add(name);
+			}
+			return keys;
+		}
+	}
+
+	private static class Or extends Node
+	{
+		private final Node left;
+		private final Node right;
+
+		Or(Node left, Node right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		int match(String[] steps, int step, Results results)
+		{
+			int next = left.match(steps, step, results);
+			return (next >= 0) ? next : right.match(steps, step, results);
+		}
+
+		List<String> getKeys()
+		{
+			List<String> leftKeys = left.getKeys();
+			List<String> rightKeys = right.getKeys();
+			if (leftKeys == null || rightKeys == null)
+			{
+				return null;
+			}
+			List<String> keys = new ArrayList<String>(leftKeys);
+			keys.addAll(rightKeys);
+			return keys;
+		}
+	}
+
+	/**
+	 * The right side has to match at some step after the left side.
+	 */
+	private static class Descendant extends Node
+	{
+		private final Node left;
+		private final Node right;
+
+		Descendant(Node left, Node right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		int match(String[] steps, int step, Results results)
+		{
+			int size = results.size;
+			int next = left.match(steps, step, results);
+			if (next < 0)
+			{
+				return -1;
+			}
+			for (int i = next;; i++)
+			{
+				int end = right.match(steps, i, results);
+				if (end >= 0)
+				{
+					return end;
+				}
+				results.add(0);
+				if (i >= steps.length - 1)
+				{
+					break;
+				}
+			}
+			results.size = size;
+			return -1;
+		}
+
+		List<String> getKeys()
+		{
+			// the deepest part is the most selective
+			List<String> keys = right.getKeys();
+			return (keys != null) ? keys : left.getKeys();
+		}
+	}
+
+	/**
+	 * The right side has to match at the step right after the left side.
+	 */
+	private static class Intersection extends Node
+	{
+		private final Node left;
+		private final Node right;
+
+		Intersection(Node left, Node right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		int match(String[] steps, int step, Results results)
+		{
+			int size = results.size;
+			int next = left.match(steps, step, results);
+			if (next < 0)
+			{
+				return -1;
+			}
+			int end = right.match(steps, next, results);
+			if (end < 0)
+			{
+				results.size = size;
+			}
+			return end;
+		}
+
+		List<String> getKeys()
+		{
+			List<String> keys = right.getKeys();
+			return (keys != null) ? keys : left.getKeys();
+		}
+	}
+
+	/**
+	 * The left side has to match, and the right side must not match at any step after it.
+	 */
+	private static class Without extends Node
+	{
+		private final Node left;
+		private final Node right;
+
+		Without(Node left, Node right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		int match(String[] steps, int step, Results results)
+		{
+			int size = results.size;
+			int next = left.match(steps, step, results);
+			if (next < 0)
+			{
+				return -1;
+			}
+			int leftSize = results.size;
+			for (int i = next;; i++)
+			{
+				if (right.match(steps, i, results) >= 0)
+				{
+					results.size = size;
+					return -1;
+				}
+				if (i >= steps.length - 1)
+				{
+					break;
+				}
+			}
+			results.size = leftSize;
+			return next;
+		}
+
+		List<String> getKeys()
+		{
+			return left.getKeys();
+		}
+	}
+
+	/**
+	 * Matches with a node of a type this doesn't know about, through the node itself.
+	 */
+	private static class Other extends Node
+	{
+		private final ISelectorNode node;
+
+		Other(ISelectorNode node)
+		{
+			this.node = node;
+		}
+
+		int match(String[] steps, int step, Results results)
+		{
+			// the node keeps its match results
+			synchronized (node)
+			{
+				MatchContext context = new MatchContext(steps, step);
+				if (!node.matches(context))
+				{
+					return -1;
+				}
+				for (Integer result : node.getMatchResults())
+				{
+					results.add(result);
+				}
+				return context.getCurrentIndex();
+			}
+		}
+
+		List<String> getKeys()
+		{
+			return null;
+		}
+	}
+}
@@ -7,13 +7,12 @@
  */
 package com.aptana.scope;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Stack;
-import java.util.regex.Pattern;
 
 public class MatchContext
 {
-	private static final Pattern spaces = Pattern.compile("\\s+"); //$NON-NLS-1$
-
 	private String[] _steps;
 	private int _currentIndex;
 	private Stack<Integer> _savedPositions;
@@ -25,11 +24,86 @@ public class MatchContext
 	 */
 	MatchContext(String scope)
 	{
-		this._steps = (scope != null) ? spaces.split(scope) : new String[0];
-		this._currentIndex = this._steps.length - 1;
+		this((scope != null) ? split(scope) : new String[0]);
+	}
+
+	/**
+	 * MatchContext
+	 * 
+	 * @param steps
+	 */
+	MatchContext(String[] steps)
+	{
+		this(steps, steps.length - 1);
+	}
+
+	/**
+	 * MatchContext
+	 * 
+	 * @param steps
+	 * @param currentIndex
+	 */
+	MatchContext(String[] steps, int currentIndex)
+	{
+		this._steps = steps;
+		this._currentIndex = currentIndex;
 		this._savedPositions = new Stack<Integer>();
 	}
 
+	/**
+	 * Splits a scope into its steps at whitespace, the same way as splitting with the pattern "\\s+": a scope starting
+	 * with whitespace has an empty first step, and trailing whitespace is dropped.
+	 * 
+	 * @param scope
+	 * @return
+	 */
+	static String[] split(String scope)
+	{
+		int length = scope.length();
+		List<String> steps = null;
+		int start = 0;
+
+		for (int i = 0; i < length; i++)
+		{
+			if (isSpace(scope.charAt(i)))
+			{
+				if (steps == null)
+				{
+					steps = new ArrayList<String>();
+				}
+				steps.add(scope.substring(start, i));
+
+				while (i + 1 < length && isSpace(scope.charAt(i + 1)))
+				{
+					i++;
+				}
+				start = i + 1;
+			}
+		}
+
+		if (steps == null)
+		{
+			return new String[] { scope };
+		}
+		if (start < length)
+		{
+			steps.add(scope.substring(start));
+		}
+
+		int size = steps.size();
+		while (size > 0 && steps.get(size - 1).length() == 0)
+		{
+			size--;
+		}
+
+		return steps.subList(0, size).toArray(new String[size]);
+	}
+
+	private static boolean isSpace(char c)
+	{
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
 	/**
 	 * Advance to the next step within the match context. This method does no bounds checking.
 	 */
@@ -73,6 +147,16 @@ public class MatchContext
 		return result;
 	}
 
+	/**
+	 * Return the index of the currently active step within this match context
+	 * 
+	 * @return
+	 */
+	int getCurrentIndex()
+	{
+		return this._currentIndex;
+	}
+
 	/**
 	 * Return the number of steps within this context
 	 * 
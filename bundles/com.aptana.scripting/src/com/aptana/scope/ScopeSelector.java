@@ -46,13 +46,39 @@ public class ScopeSelector extends Symbol implements IScopeSelector
 
 		if (!CollectionsUtil.isEmpty(selectors))
 		{
-			List<IScopeSelector> reversed = new ArrayList<IScopeSelector>(selectors);
+			// split the scope once for all the selectors
+			String[] steps = (scope != null) ? MatchContext.split(scope) : null;
+			IScopeSelector[] array = selectors.toArray(new IScopeSelector[selectors.size()]);
 
-			Collections.reverse(reversed);
-
-			for (IScopeSelector selector : reversed)
+			for (int i = array.length - 1; i >= 0; i--)
 			{
-				if (selector != null && selector.matches(scope))
+				IScopeSelector selector = array[i];
+
+				if (selector instanceof ScopeSelector)
+				{
+					ScopeSelector scopeSelector = (ScopeSelector) selector;
+
+					if (scopeSelector.matchSteps(steps))
+					{
+						if (bestMatch == null)
+						{
+							bestMatch = selector;
+						}
+						else if (bestMatch instanceof ScopeSelector)
+						{
+							if (CompiledSelector.compare(scopeSelector.matchLengths,
+									((ScopeSelector) bestMatch).matchLengths) > 0)
+							{
+								bestMatch = selector;
+							}
+						}
+						else if (selector.compareTo(bestMatch) > 0)
+						{
+							bestMatch = selector;
+						}
+					}
+				}
+				else if (selector != null && selector.matches(scope))
 				{
 					if (bestMatch == null)
 					{
@@ -76,32 +102,12 @@ public class ScopeSelector extends Symbol implements IScopeSelector
 		// winner is the one with longest deepest match
 		// so first look for highest offset with a non-zero value
 
-		// if lists are not of same length, expand smaller one to match by filling with zeros
-		while (results.size() > matchResults.size())
-		{
-			if (matchResults.isEmpty())
-			{
-				matchResults = new ArrayList<Integer>();
-			}
-
-			matchResults.add(0);
-		}
-
-		while (matchResults.size() > results.size())
-		{
-			if (results.isEmpty())
-			{
-				results = new ArrayList<Integer>();
-			}
-
-			results.add(0);
-		}
-
+		// if lists are not of same length, treat the smaller one as filled with zeros
 		// So starting at the end of the lists, look for the highest match length, ties go back an offset to be broken
-		for (int i = results.size() - 1; i >= 0; i--)
+		for (int i = Math.max(results.size(), matchResults.size()) - 1; i >= 0; i--)
 		{
-			int firstVal = results.get(i);
-			int secondVal = matchResults.get(i);
+			int firstVal = (i < results.size()) ? results.get(i) : 0;
+			int secondVal = (i < matchResults.size()) ? matchResults.get(i) : 0;
 
 			// If one of the two has a longer match at the offset, it wins
 			if (firstVal != secondVal)
@@ -133,8 +139,15 @@ public class ScopeSelector extends Symbol implements IScopeSelector
 	}
 
 	private final ISelectorNode _root;
+	private int[] matchLengths;
 	private List<Integer> matchResults;
 
+	/**
+	 * The root compiled into a form that matches without keeping state in the nodes, which are shared with other
+	 * selectors through the parse cache. Compiled on first use.
+	 */
+	private volatile CompiledSelector compiled;
+
 	/**
 	 * Lazily cache the toString() value solely for performance reasons. We call toString() in equals(), hashCode(),
 	 * some other locations - so this value is computed by concatenating children nodes repeatedly.
@@ -156,6 +169,11 @@ public class ScopeSelector extends Symbol implements IScopeSelector
 	 */
 	private static final SelectorNode NULL_SELECTOR = new SelectorNode();
 
+	/**
+	 * Match results of a selector that hasn't been matched.
+	 */
+	private static final int[] NO_MATCH = new int[0];
+
 	/**
 	 * ScopeSelector
 	 * 
@@ -197,7 +215,14 @@ public class ScopeSelector extends Symbol implements IScopeSelector
 
 	public int compareTo(IScopeSelector o)
 	{
-		return compare(matchResults, o.getMatchResults());
+		if (o instanceof ScopeSelector)
+		{
+			int[] otherLengths = ((ScopeSelector) o).matchLengths;
+			return CompiledSelector.compare((matchLengths != null) ? matchLengths : NO_MATCH,
+					(otherLengths != null) ? otherLengths : NO_MATCH);
+		}
+
+		return compare(getMatchResults(), o.getMatchResults());
 	}
 
 	@Override
@@ -219,12 +244,40 @@ public class ScopeSelector extends Symbol implements IScopeSelector
 	{
 		if (matchResults == null)
 		{
-			return Collections.emptyList();
+			if (matchLengths == null)
+			{
+				return Collections.emptyList();
+			}
+
+			List<Integer> results = new ArrayList<Integer>(matchLengths.length);
+			for (int length : matchLengths)
+			{
+				results.add(length);
+			}
+			matchResults = results;
 		}
 
 		return matchResults;
 	}
 
+	/**
+	 * Returns the root compiled for matching, compiling it on first use.
+	 * 
+	 * @return
+	 */
+	CompiledSelector getCompiledSelector()
+	{
+		CompiledSelector result = compiled;
+
+		if (result == null)
+		{
+			result = CompiledSelector.compile(this._root);
+			compiled = result;
+		}
+
+		return result;
+	}
+
 	/**
 	 * getRoot
 	 * 
@@ -247,49 +300,36 @@ public class ScopeSelector extends Symbol implements IScopeSelector
 	 */
 	public boolean matches(String scope)
 	{
-		matchResults = new ArrayList<Integer>();
-		boolean result = false;
-
-		if (this._root != null && scope != null)
-		{
-			MatchContext context = new MatchContext(scope);
-
-			for (int i = 0; i < context.getLength(); i++)
-			{
-				// save current position so we can advance later
-				context.pushCurrentStep();
+		return matchSteps((scope != null) ? MatchContext.split(scope) : null);
+	}
 
-				// see if we match at this point within the context
-				if (this._root.matches(context))
-				{
-					// Add match results. If more than one value, we need to replace existing zeros in our list...
-					Collection<Integer> tmpResults = this._root.getMatchResults();
-					int toRemove = tmpResults.size() - 1;
-					for (int x = 0; x < toRemove; x++)
-					{
-						matchResults.remove(0);
-					}
-					matchResults.addAll(0, tmpResults);
+	/**
+	 * Matches the steps of a scope, trying from the deepest step up, and records the match results.
+	 * 
+	 * @param steps
+	 *            the scope split at whitespace, may be null
+	 * @return
+	 */
+	private boolean matchSteps(String[] steps)
+	{
+		int[] lengths = null;
 
-					// Fill with preceding zeros.
-					while (matchResults.size() < context.getLength())
-					{
-						matchResults.add(0, 0);
-					}
+		if (this._root != null && steps != null)
+		{
+			lengths = getCompiledSelector().match(steps);
+		}
 
-					// we matched, so report success and stop looking for a match
-					result = true;
-					break;
-				}
-				matchResults.add(0, 0); // Add a non-match
+		matchResults = null;
 
-				// restore position where we started and move forward one
-				context.popCurrentStep();
-				context.backup();
-			}
+		if (lengths != null)
+		{
+			matchLengths = lengths;
+			return true;
 		}
 
-		return result;
+		// no match, every step is marked down with a zero
+		matchLengths = (this._root != null && steps != null) ? new int[steps.length] : NO_MATCH;
+		return false;
 	}
 
 	/*
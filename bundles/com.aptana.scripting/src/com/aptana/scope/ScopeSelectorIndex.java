@@ -0,0 +1,245 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.scope;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the value of the scope selector which best matches a scope, among many selectors, picking the same one as
+ * {@link ScopeSelector#bestMatch(java.util.Collection, String)} over the selectors in the order they were added.
+ * <p>
+ * Selectors are indexed in a tree of the dot separated atoms of the names they require, so only those with a name
+ * that starts a step of the scope are matched against it. Selectors are matched in their compiled form, which keeps
+ * no state, so once all the selectors have been added the index can be looked up from several threads at once.
+ * 
+ * @param <T>
+ *            the type of the values
+ */
+public class ScopeSelectorIndex<T>
+{
+	private final AtomNode<T> root = new AtomNode<T>();
+	private final List<Entry<T>> unindexed = new ArrayList<Entry<T>>();
+	private int size;
+
+	/**
+	 * Adds a selector. Of selectors matching a scope equally well, the one added last wins.
+	 * 
+	 * @param selector
+	 *            null selectors are ignored
+	 * @param value
+	 */
+	public void add(IScopeSelector selector, T value)
+	{
+		if (selector == null)
+		{
+			return;
+		}
+
+		Entry<T> entry;
+		List<String> keys = null;
+
+		if (selector instanceof ScopeSelector)
+		{
+			CompiledSelector compiled = ((ScopeSelector) selector).getCompiledSelector();
+			entry = new Entry<T>(size, compiled, null, value);
+			keys = compiled.getKeys();
+		}
+		else
+		{
+			entry = new Entry<T>(size, null, (selector instanceof MatchAnyScopeSelector) ? null : selector, value);
+		}
+		size++;
+
+		if (keys == null)
+		{
+			unindexed.add(entry);
+			return;
+		}
+		for (String key : keys)
+		{
+			AtomNode<T> node = root;
+			int start = 0;
+			while (true)
+			{
+				int end = key.indexOf('.', start);
+				node = node.getOrAddChild(key.substring(start, (end == -1) ? key.length() : end));
+				if (end == -1)
+				{
+					break;
+				}
+				start = end + 1;
+			}
+			node.entries.add(entry);
+		}
+	}
+
+	/**
+	 * Returns the value of the selector which best matches a scope.
+	 * 
+	 * @param scope
+	 * @return the value, or null if no selector matches
+	 */
+	public T bestMatch(String scope)
+	{
+		if (scope == null)
+		{
+			return null;
+		}
+
+		String[] steps = MatchContext.split(scope);
+		Match<T> best = new Match<T>();
+
+		for (String step : steps)
+		{
+			// walk down the atoms of the step, every node on the way holds selectors requiring a name which starts it
+			AtomNode<T> node = root;
+			int start = 0;
+			while (node.children != null)
+			{
+				int end = step.indexOf('.', start);
+				node = node.children.get(step.substring(start, (end == -1) ? step.length() : end));
+				if (node == null)
+				{
+					break;
+				}
+				for (Entry<T> entry : node.entries)
+				{
+					best.offer(entry, steps, scope);
+				}
+				if (end == -1)
+				{
+					break;
+				}
+				start = end + 1;
+			}
+		}
+		for (Entry<T> entry : unindexed)
+		{
+			best.offer(entry, steps, scope);
+		}
+
+		return (best.entry != null) ? best.entry.value : null;
+	}
+
+	/**
+	 * @return how many selectors were added
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	private static class AtomNode<T>
+	{
+		Map<String, AtomNode<T>> children;
+		final List<Entry<T>> entries = new ArrayList<Entry<T>>(1);
+
+		AtomNode<T> getOrAddChild(String atom)
+		{
+			if (children == null)
+			{
+				children = new HashMap<String, AtomNode<T>>();
+			}
+			AtomNode<T> child = children.get(atom);
+			if (child == null)
+			{
+				child = new AtomNode<T>();
+				children.put(atom, child);
+			}
+			return child;
+		}
+	}
+
+	private static class Entry<T>
+	{
+		final int order;
+		final CompiledSelector compiled;
+		final IScopeSelector other;
+		final T value;
+
+		/**
+		 * @param order
+		 * @param compiled
+		 *            the compiled selector, null if the selector matches through itself
+		 * @param other
+		 *            the selector matching through itself, null if it matches any scope
+		 * @param value
+		 */
+		Entry(int order, CompiledSelector compiled, IScopeSelector other, T value)
+		{
+			this.order = order;
+			this.compiled = compiled;
+			this.other = other;
+			this.value = value;
+		}
+
+		/**
+		 * @return the match results, or null if the selector doesn't match
+		 */
+		int[] match(String[] steps, String scope)
+		{
+			if (compiled != null)
+			{
+				return compiled.match(steps);
+			}
+			if (other == null)
+			{
+				return new int[0];
+			}
+			synchronized (other)
+			{
+				if (!other.matches(scope))
+				{
+					return null;
+				}
+				List<Integer> results = other.getMatchResults();
+				int[] lengths = new int[results.size()];
+				for (int i = 0; i < lengths.length; i++)
+				{
+					lengths[i] = results.get(i);
+				}
+				return lengths;
+			}
+		}
+	}
+
+	/**
+	 * The best match so far.
+	 */
+	private static class Match<T>
+	{
+		Entry<T> entry;
+		int[] results;
+
+		void offer(Entry<T> candidate, String[] steps, String scope)
+		{
+			if (entry != null && candidate.order == entry.order)
+			{
+				return;
+			}
+			int[] candidateResults = candidate.match(steps, scope);
+			if (candidateResults == null)
+			{
+				return;
+			}
+			if (entry != null)
+			{
+				int comparison = CompiledSelector.compare(candidateResults, results);
+				if (comparison < 0 || (comparison == 0 && candidate.order < entry.order))
+				{
+					return;
+				}
+			}
+			entry = candidate;
+			results = candidateResults;
+		}
+	}
+}
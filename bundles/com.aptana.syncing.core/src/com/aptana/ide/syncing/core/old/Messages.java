@@ -125,6 +125,8 @@ public final class Messages extends NLS
 
 	public static String Synchronizer_Times_Modified;
 
+	public static String Synchronizer_TransfersLimited;
+
 	/**
 	 * Synchronizer_Uploading
 	 */
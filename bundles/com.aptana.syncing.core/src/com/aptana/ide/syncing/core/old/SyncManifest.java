@@ -0,0 +1,248 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.ide.syncing.core.old;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.eclipse.core.filesystem.IFileInfo;
+
+import com.aptana.core.logging.IdeLog;
+import com.aptana.core.util.StringUtil;
+import com.aptana.ide.core.io.IConnectionPoint;
+import com.aptana.ide.syncing.core.SyncingPlugin;
+
+/**
+ * Remembers the files last known to be identical on both ends of a site connection, along with their sizes and
+ * modification times. When a later comparison finds both files unchanged since, they are known to match without
+ * reading them.
+ */
+public class SyncManifest
+{
+
+	private static final String MANIFESTS_DIRECTORY = "manifests"; //$NON-NLS-1$
+	private static final String NO_CHECKSUM = "-"; //$NON-NLS-1$
+
+	private final File file;
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	private boolean dirty;
+
+	/**
+	 * Creates a manifest kept in the given file, reading what was saved there before.
+	 * 
+	 * @param file
+	 */
+	public SyncManifest(File file)
+	{
+		this.file = file;
+		load();
+	}
+
+	/**
+	 * Returns the manifest of the site connection between two connection points.
+	 * 
+	 * @param client
+	 * @param server
+	 * @return the manifest, or null if it can't be kept
+	 */
+	public static SyncManifest getManifest(IConnectionPoint client, IConnectionPoint server)
+	{
+		SyncingPlugin plugin = SyncingPlugin.getDefault();
+		if (plugin == null || client == null || server == null)
+		{
+			return null;
+		}
+		String name = StringUtil.md5(client.getId() + '\n' + server.getId());
+		if (name == null)
+		{
+			return null;
+		}
+		return new SyncManifest(plugin.getStateLocation().append(MANIFESTS_DIRECTORY).append(name).toFile());
+	}
+
+	/**
+	 * Tells whether the files at a path were recorded as identical, and haven't changed on either end since.
+	 * 
+	 * @param path
+	 * @param clientInfo
+	 * @param serverInfo
+	 * @return true if the files still match
+	 */
+	public synchronized boolean isUnchanged(String path, IFileInfo clientInfo, IFileInfo serverInfo)
+	{
+		Entry entry = entries.get(path);
+		return entry != null && entry.clientLength == clientInfo.getLength()
+				&& entry.clientModified == clientInfo.getLastModified()
+				&& entry.serverLength == serverInfo.getLength()
+				&& entry.serverModified == serverInfo.getLastModified();
+	}
+
+	/**
+	 * Returns the checksum recorded for the files at a path, as long as they haven't changed since.
+	 * 
+	 * @param path
+	 * @param clientInfo
+	 * @param serverInfo
+	 * @return the checksum, or null if there isn't one
+	 */
+	public synchronized String getChecksum(String path, IFileInfo clientInfo, IFileInfo serverInfo)
+	{
+		return isUnchanged(path, clientInfo, serverInfo) ? entries.get(path).checksum : null;
+	}
+
+	/**
+	 * Records the files at a path as identical.
+	 * 
+	 * @param path
+	 * @param clientInfo
+	 * @param serverInfo
+	 * @param checksum
+	 *            the checksum of their content, or null if it's unknown
+	 */
+	public synchronized void put(String path, IFileInfo clientInfo, IFileInfo serverInfo, String checksum)
+	{
+		Entry entry = new Entry();
+		entry.clientLength = clientInfo.getLength();
+		entry.clientModified = clientInfo.getLastModified();
+		entry.serverLength = serverInfo.getLength();
+		entry.serverModified = serverInfo.getLastModified();
+		entry.checksum = checksum;
+		entries.put(path, entry);
+		dirty = true;
+	}
+
+	/**
+	 * Forgets the files at a path.
+	 * 
+	 * @param path
+	 */
+	public synchronized void remove(String path)
+	{
+		if (entries.remove(path) != null)
+		{
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Writes the manifest out, if anything was recorded since it was read.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void save() throws IOException
+	{
+		if (!dirty)
+		{
+			return;
+		}
+		Properties properties = new Properties();
+		for (Map.Entry<String, Entry> entry : entries.entrySet())
+		{
+			properties.setProperty(entry.getKey(), entry.getValue().toString());
+		}
+		file.getParentFile().mkdirs();
+		OutputStream out = new FileOutputStream(file);
+		try
+		{
+			properties.store(out, null);
+		}
+		finally
+		{
+			out.close();
+		}
+		dirty = false;
+	}
+
+	private void load()
+	{
+		if (!file.isFile())
+		{
+			return;
+		}
+		Properties properties = new Properties();
+		InputStream in = null;
+		try
+		{
+			in = new FileInputStream(file);
+			properties.load(in);
+		}
+		catch (IOException e)
+		{
+			IdeLog.logError(SyncingPlugin.getDefault(), e);
+			return;
+		}
+		finally
+		{
+			if (in != null)
+			{
+				try
+				{
+					in.close();
+				}
+				catch (IOException e)
+				{
+					// ignores the exception
+				}
+			}
+		}
+		for (Map.Entry<Object, Object> property : properties.entrySet())
+		{
+			Entry entry = Entry.parse((String) property.getValue());
+			if (entry != null)
+			{
+				entries.put((String) property.getKey(), entry);
+			}
+		}
+	}
+
+	private static class Entry
+	{
+		long clientLength;
+		long clientModified;
+		long serverLength;
+		long serverModified;
+		String checksum;
+
+		static Entry parse(String value)
+		{
+			String[] parts = value.split(" "); //$NON-NLS-1$
+			if (parts.length != 5)
+			{
+				return null;
+			}
+			try
+			{
+				Entry entry = new Entry();
+				entry.clientLength = Long.parseLong(parts[0]);
+				entry.clientModified = Long.parseLong(parts[1]);
+				entry.serverLength = Long.parseLong(parts[2]);
+				entry.serverModified = Long.parseLong(parts[3]);
+				entry.checksum = NO_CHECKSUM.equals(parts[4]) ? null : parts[4];
+				return entry;
+			}
+			catch (NumberFormatException e)
+			{
+				return null;
+			}
+		}
+
+		@Override
+		public String toString()
+		{
+			return clientLength + " " + clientModified + ' ' + serverLength + ' ' + serverModified + ' ' //$NON-NLS-1$
+					+ (checksum == null ? NO_CHECKSUM : checksum);
+		}
+	}
+}
@@ -9,6 +9,9 @@ package com.aptana.ide.syncing.core.old;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.DateFormat;
 import java.text.MessageFormat;
 import java.util.ArrayList;
@@ -18,7 +21,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.zip.CRC32;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileInfo;
@@ -32,11 +40,15 @@ import org.eclipse.core.runtime.SubMonitor;
 
 import com.aptana.core.io.efs.EFSUtils;
 import com.aptana.core.io.efs.SyncUtils;
+import com.aptana.core.io.vfs.BaseConnectionFileManager;
+import com.aptana.core.io.vfs.ConcurrencyUtils;
+import com.aptana.core.io.vfs.IConnectionFileManager;
 import com.aptana.core.io.vfs.IExtendedFileInfo;
 import com.aptana.core.io.vfs.IExtendedFileStore;
 import com.aptana.core.io.vfs.Policy;
 import com.aptana.core.logging.IdeLog;
 import com.aptana.core.util.FileUtil;
+import com.aptana.core.util.StringUtil;
 import com.aptana.filewatcher.FileWatcher;
 import com.aptana.ide.core.io.IConnectionPoint;
 import com.aptana.ide.core.io.preferences.PermissionDirection;
@@ -53,11 +65,22 @@ public class Synchronizer implements ILoggable
 	public static final QualifiedName SYNC_IN_PROGRESS = new QualifiedName(Synchronizer.class.getPackage().getName(),
 			"SYNC_IN_PROGRESS"); //$NON-NLS-1$
 
+	/**
+	 * The number of files copied at once by default, when both ends of the sync allow it.
+	 */
+	public static final int DEFAULT_TRANSFER_CONNECTIONS = 4;
+
 	private static final int DEFAULT_TIME_TOLERANCE = 1000;
 
+	/**
+	 * The algorithm used to compare file contents, which servers are most likely to support.
+	 */
+	private static final String CHECKSUM_ALGORITHM = "MD5"; //$NON-NLS-1$
+
 	private boolean _useCRC;
 	private boolean _includeCloakedFiles = false;
 	private long _timeTolerance;
+	private int _transferConnections = DEFAULT_TRANSFER_CONNECTIONS;
 
 	private int _clientDirectoryCreatedCount;
 	private int _clientDirectoryDeletedCount;
@@ -73,6 +96,7 @@ public class Synchronizer implements ILoggable
 	private IFileStore _clientFileRoot;
 	private IFileStore _serverFileRoot;
 	private ISyncEventHandler _eventHandler;
+	private SyncManifest _manifest;
 	private ILogger logger;
 
 	private List<IFileStore> _newFilesDownloaded;
@@ -549,6 +573,7 @@ public class Synchronizer implements ILoggable
 		}
 		// long end = System.currentTimeMillis();
 		// System.out.println(end - start);
+		saveManifest();
 
 		// return results
 		return syncItems;
@@ -606,6 +631,28 @@ public class Synchronizer implements ILoggable
 		this._useCRC = calculateCrc;
 	}
 
+	/**
+	 * Sets how many files are copied at once. Connections that can't transfer that many files at once, such as SFTP
+	 * which copies one file at a time, limit it further; the sync log then says so.
+	 * 
+	 * @param connections
+	 *            the number of connections to copy files over
+	 */
+	public void setTransferConnections(int connections)
+	{
+		this._transferConnections = Math.max(1, connections);
+	}
+
+	/**
+	 * Gets how many files are copied at once, when both ends of the sync allow it.
+	 * 
+	 * @return the number of connections to copy files over
+	 */
+	public int getTransferConnections()
+	{
+		return this._transferConnections;
+	}
+
 	/**
 	 * isCalculateCrc
 	 * 
@@ -619,73 +666,148 @@ public class Synchronizer implements ILoggable
 	/**
 	 * compareCRC
 	 * 
+	 * Compares the content of two files whose modification times match. Files the sync manifest records as identical,
+	 * and that haven't changed since, aren't read at all; otherwise the checksums are computed by the servers where
+	 * they can be, and by reading the files where they can't.
+	 * 
 	 * @param item
 	 * @return SyncState
 	 * @throws CoreException
 	 */
 	private int compareCRC(VirtualFileSyncPair item) throws CoreException
 	{
-		InputStream clientStream = item.getSourceInputStream();
-		InputStream serverStream = item.getDestinationInputStream();
-		int result;
-
-		if (clientStream != null && serverStream != null)
+		IFileInfo clientInfo = item.getSourceFileInfo();
+		IFileInfo serverInfo = item.getDestinationFileInfo();
+		SyncManifest manifest = getManifest();
+		String manifestPath = getManifestPath(item.getDestinationFile());
+		if (manifest != null && manifest.isUnchanged(manifestPath, clientInfo, serverInfo))
 		{
-			// get individual CRC's
-			long clientCRC = getCRC(clientStream);
-			long serverCRC = getCRC(serverStream);
-
-			// close streams
-			try
-			{
-				clientStream.close();
-				serverStream.close();
-			}
-			catch (IOException e)
-			{
-				IdeLog.logError(SyncingPlugin.getDefault(),
-						MessageFormat.format(Messages.Synchronizer_ErrorClosingStreams, item.getRelativePath()), e);
-			}
-
-			result = (clientCRC == serverCRC) ? SyncState.ItemsMatch : SyncState.CRCMismatch;
+			logDebug(Messages.Synchronizer_Items_Identical);
+			return SyncState.ItemsMatch;
 		}
-		else
+		if (clientInfo.getLength() != serverInfo.getLength())
 		{
-			// NOTE: clientStream can only equal serverStream if both are null,
-			// so we assume the files match in that case
-			result = (clientStream == serverStream) ? SyncState.ItemsMatch : SyncState.CRCMismatch;
+			return SyncState.CRCMismatch;
 		}
 
-		return result;
+		String clientChecksum = getChecksum(item.getSourceFile());
+		String serverChecksum = getChecksum(item.getDestinationFile());
+		if (clientChecksum == null || serverChecksum == null)
+		{
+			// NOTE: we assume the files match if neither could be read
+			return (clientChecksum == serverChecksum) ? SyncState.ItemsMatch : SyncState.CRCMismatch;
+		}
+		if (!clientChecksum.equals(serverChecksum))
+		{
+			return SyncState.CRCMismatch;
+		}
+		if (manifest != null)
+		{
+			manifest.put(manifestPath, clientInfo, serverInfo, clientChecksum);
+		}
+		return SyncState.ItemsMatch;
 	}
 
 	/**
-	 * getCRC
+	 * getChecksum
 	 * 
-	 * @param stream
-	 * @return CRC
+	 * @param file
+	 * @return the checksum of the file's content, computed by its server if it can, or null if the file can't be read
+	 * @throws CoreException
 	 */
-	private long getCRC(InputStream stream)
+	private String getChecksum(IFileStore file) throws CoreException
 	{
-		CRC32 crc = new CRC32();
+		if (file instanceof IExtendedFileStore)
+		{
+			String checksum = ((IExtendedFileStore) file).fetchChecksum(CHECKSUM_ALGORITHM, null);
+			if (checksum != null)
+			{
+				return checksum;
+			}
+		}
 
+		InputStream stream = file.openInputStream(EFS.NONE, null);
 		try
 		{
-			byte[] buffer = new byte[1024];
+			MessageDigest digest = MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+			byte[] buffer = new byte[8192];
 			int length;
 
 			while ((length = stream.read(buffer)) != -1)
 			{
-				crc.update(buffer, 0, length);
+				digest.update(buffer, 0, length);
 			}
+			return StringUtil.pad(new BigInteger(1, digest.digest()).toString(16), digest.getDigestLength() * 2, '0');
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			IdeLog.logError(SyncingPlugin.getDefault(), Messages.Synchronizer_ErrorRetrievingCRC, e);
 		}
 		catch (IOException e)
 		{
 			IdeLog.logError(SyncingPlugin.getDefault(), Messages.Synchronizer_ErrorRetrievingCRC, e);
+		}
+		finally
+		{
+			try
+			{
+				stream.close();
+			}
+			catch (IOException e)
+			{
+				IdeLog.logError(SyncingPlugin.getDefault(),
+						MessageFormat.format(Messages.Synchronizer_ErrorClosingStreams, file.getName()), e);
+			}
+		}
+		return null;
+	}
 
+	/**
+	 * Returns the sync manifest of the connection points being synced, reading it the first time it's needed.
+	 * 
+	 * @return the manifest, or null if there isn't one
+	 */
+	private SyncManifest getManifest()
+	{
+		if (_manifest == null && _useCRC)
+		{
+			_manifest = SyncManifest.getManifest(_clientFileManager, _serverFileManager);
 		}
+		return _manifest;
+	}
 
-		return crc.getValue();
+	/**
+	 * Sets the manifest recording which files are known to match, so they don't have to be read to compare them.
+	 * By default, the manifest of the connection points being synced is used.
+	 * 
+	 * @param manifest
+	 */
+	public void setManifest(SyncManifest manifest)
+	{
+		this._manifest = manifest;
+	}
+
+	/**
+	 * Files are recorded in the manifest by their path on the server, which doesn't depend on the folders being synced.
+	 */
+	private static String getManifestPath(IFileStore serverFile)
+	{
+		return EFSUtils.getAbsolutePath(serverFile);
+	}
+
+	private void saveManifest()
+	{
+		if (_manifest != null)
+		{
+			try
+			{
+				_manifest.save();
+			}
+			catch (IOException e)
+			{
+				IdeLog.logError(SyncingPlugin.getDefault(), e);
+			}
+		}
 	}
 
 	// public void cancelAllOperations()
@@ -756,109 +878,90 @@ public class Synchronizer implements ILoggable
 					fileList.length);
 			Policy.checkCanceled(subMonitor);
 
-			FILE_LOOP: for (int i = 0; i < fileList.length; i++)
+			// files start copying as they come up, while the other items are handled on this thread
+			TransferQueue queue = new TransferQueue(getConcurrentTransfers(), totalItems, subMonitor);
+			try
 			{
-				final VirtualFileSyncPair item = fileList[i];
-				final IFileStore clientFile = item.getSourceFile();
-				final IFileStore serverFile = item.getDestinationFile();
-
-				setSyncItemDirection(item, false, true);
-
-				SubMonitor childMonitor = subMonitor.newChild(1);
-				childMonitor.setTaskName(getSyncStatus(item));
-
-				try
+				for (int i = 0; i < fileList.length; i++)
 				{
-					final IFileInfo clientFileInfo = item.getSourceFileInfo();
-					final IFileInfo serverFileInfo = item.getDestinationFileInfo();
+					final VirtualFileSyncPair item = fileList[i];
+					final IFileStore clientFile = item.getSourceFile();
+					final IFileStore serverFile = item.getDestinationFile();
 
-					// fire event
-					if (!syncEvent(item, i, totalItems, childMonitor))
-					{
-						delete = false;
-						break;
-					}
+					setSyncItemDirection(item, false, true);
 
-					Policy.checkCanceled(childMonitor);
+					SubMonitor childMonitor = subMonitor.newChild(1);
+					childMonitor.setTaskName(getSyncStatus(item));
 
-					switch (item.getSyncState())
+					try
 					{
-						case SyncState.ClientItemOnly:
-							// only exists on client; checks if it needs to be deleted
-							if (delete)
+						final IFileInfo clientFileInfo = item.getSourceFileInfo();
+						final IFileInfo serverFileInfo = item.getDestinationFileInfo();
+
+						FileTransfer transfer = createTransfer(item, i, false, true, delete, false);
+						if (transfer != null)
+						{
+							if (!queue.start(transfer, childMonitor))
 							{
-								// Need to query first because deletion makes isDirectory always return false
-								boolean wasDirectory = clientFileInfo.isDirectory();
-								clientFile.delete(EFS.NONE, null);
-								if (wasDirectory)
-								{
-									this._clientDirectoryDeletedCount++;
-								}
-								else
+								return false;
+							}
+							continue;
+						}
+
+						// fire event
+						if (!syncEvent(item, i, totalItems, childMonitor))
+						{
+							return result;
+						}
+
+						Policy.checkCanceled(childMonitor);
+
+						switch (item.getSyncState())
+						{
+							case SyncState.ClientItemOnly:
+								// only exists on client; checks if it needs to be deleted
+								if (delete)
 								{
-									this._clientFileDeletedCount++;
+									// Need to query first because deletion makes isDirectory always return false
+									boolean wasDirectory = clientFileInfo.isDirectory();
+									clientFile.delete(EFS.NONE, null);
+									if (wasDirectory)
+									{
+										this._clientDirectoryDeletedCount++;
+									}
+									else
+									{
+										this._clientFileDeletedCount++;
+									}
 								}
-							}
-							syncDone(item, childMonitor);
-							break;
-
-						case SyncState.ServerItemOnly:
-							IFileStore targetClientFile = EFSUtils.createFile(_serverFileRoot,
-									item.getDestinationFile(), _clientFileRoot);
-							boolean exists = targetClientFile.fetchInfo().exists();
-							if (serverFileInfo.isDirectory())
-							{
+								syncDone(item, childMonitor);
+								break;
+
+							case SyncState.ServerItemOnly:
+								// files are queued, so this is a directory
+								IFileStore targetClientFile = EFSUtils.createFile(_serverFileRoot,
+										item.getDestinationFile(), _clientFileRoot);
 								logCreatedDirectory(targetClientFile);
 
-								if (!exists)
+								if (!targetClientFile.fetchInfo().exists())
 								{
 									targetClientFile.mkdir(EFS.NONE, null);
 									this._clientDirectoryCreatedCount++;
 									_newFilesDownloaded.add(targetClientFile);
 									// update permissions for the newly created directory
-									updatePermissions(serverFile, targetClientFile, false,
-											PermissionDirection.DOWNLOAD, childMonitor);
+									updatePermissions(serverFile, targetClientFile, false, PermissionDirection.DOWNLOAD,
+											childMonitor);
 								}
 
 								logSuccess();
 								syncDone(item, childMonitor);
-							}
-							else
-							{
-								logDownloading(serverFile);
-								try
-								{
-									SyncUtils
-											.copy(serverFile, serverFileInfo, targetClientFile, EFS.NONE, childMonitor);
-									Synchronizer.this._serverFileTransferedCount++;
-									_newFilesDownloaded.add(targetClientFile);
-									// update permissions for the newly created file
-									if (!exists)
-									{
-										updatePermissions(serverFile, targetClientFile, true,
-												PermissionDirection.DOWNLOAD, childMonitor);
-									}
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
-									if (!syncError(item, e, childMonitor))
-									{
-										result = false;
-										break FILE_LOOP;
-									}
-								}
-							}
-							break;
+								break;
 
-						case SyncState.ServerItemIsNewer:
-						case SyncState.CRCMismatch:
-							// exists on both sides, but the server item is newer
-							logDownloading(serverFile);
-							if (serverFileInfo.isDirectory())
-							{
+							case SyncState.ServerItemIsNewer:
+							case SyncState.CRCMismatch:
+								// exists on both sides, but the server item is newer; files are queued, so this is a
+								// directory
+								logDownloading(serverFile);
 								try
 								{
 									EFSUtils.setModificationTime(serverFileInfo.getLastModified(), clientFile);
@@ -870,46 +973,31 @@ public class Synchronizer implements ILoggable
 
 								logSuccess();
 								syncDone(item, childMonitor);
-							}
-							else
-							{
-								try
-								{
-									SyncUtils.copy(serverFile, serverFileInfo, clientFile, EFS.NONE, childMonitor);
-									Synchronizer.this._serverFileTransferedCount++;
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
-									if (!syncError(item, e, childMonitor))
-									{
-										result = false;
-										break FILE_LOOP;
-									}
-								}
-							}
-							break;
+								break;
 
-						default:
-							syncDone(item, childMonitor);
-							break;
+							default:
+								syncDone(item, childMonitor);
+								break;
+						}
 					}
-				}
-				catch (Exception ex)
-				{
-					IdeLog.logError(SyncingPlugin.getDefault(), Messages.Synchronizer_ErrorDuringSync, ex);
-					result = false;
-
-					if (!syncError(item, ex, childMonitor))
+					catch (Exception ex)
 					{
-						break FILE_LOOP;
+						IdeLog.logError(SyncingPlugin.getDefault(), Messages.Synchronizer_ErrorDuringSync, ex);
+						result = false;
+
+						if (!syncError(item, ex, childMonitor))
+						{
+							return result;
+						}
 					}
 				}
-			}
 
-			return result;
+				return queue.finish() && result;
+			}
+			finally
+			{
+				queue.dispose();
+			}
 		}
 		finally
 		{
@@ -936,6 +1024,110 @@ public class Synchronizer implements ILoggable
 		return MessageFormat.format(Messages.Synchronizer_Skipping_File, item.getRelativePath());
 	}
 
+	/**
+	 * Returns the copy of a file that syncing the item calls for, if any, so that it can run alongside other copies.
+	 * The copy starts as soon as the sync comes to the item, in list order, so the directory it goes into has to exist
+	 * by then; this relies on parent directories coming before their children in the list of items.
+	 * 
+	 * @param item
+	 * @param index
+	 * @param upload
+	 *            whether files that are newer or only exist on the client are copied to the server
+	 * @param download
+	 *            whether files that are newer or only exist on the server are copied to the client
+	 * @param deleteLocal
+	 *            whether files that only exist on the client are deleted rather than uploaded
+	 * @param deleteRemote
+	 *            whether files that only exist on the server are deleted rather than downloaded
+	 * @return the copy, or null if the item isn't a file to copy
+	 * @throws CoreException
+	 */
+	private FileTransfer createTransfer(VirtualFileSyncPair item, int index, boolean upload, boolean download,
+			boolean deleteLocal, boolean deleteRemote) throws CoreException
+	{
+		IFileInfo clientFileInfo = item.getSourceFileInfo(null);
+		IFileInfo serverFileInfo = item.getDestinationFileInfo(null);
+		switch (item.getSyncState())
+		{
+			case SyncState.ClientItemOnly:
+				if (upload && !deleteLocal && !clientFileInfo.isDirectory())
+				{
+					return new FileTransfer(item, index, true, EFSUtils.createFile(_clientFileRoot,
+							item.getSourceFile(), _serverFileRoot), true);
+				}
+				break;
+
+			case SyncState.ClientItemIsNewer:
+				if (upload && !clientFileInfo.isDirectory())
+				{
+					return new FileTransfer(item, index, true, item.getDestinationFile(), false);
+				}
+				break;
+
+			case SyncState.ServerItemOnly:
+				if (download && !deleteRemote && !serverFileInfo.isDirectory())
+				{
+					return new FileTransfer(item, index, false, EFSUtils.createFile(_serverFileRoot,
+							item.getDestinationFile(), _clientFileRoot), true);
+				}
+				break;
+
+			case SyncState.ServerItemIsNewer:
+				if (download && !serverFileInfo.isDirectory())
+				{
+					return new FileTransfer(item, index, false, item.getSourceFile(), false);
+				}
+				break;
+
+			case SyncState.CRCMismatch:
+				// a full sync can't tell which of the two to keep
+				if (upload != download && !clientFileInfo.isDirectory())
+				{
+					return new FileTransfer(item, index, upload, upload ? item.getDestinationFile()
+							: item.getSourceFile(), false);
+				}
+				break;
+		}
+		return null;
+	}
+
+	/**
+	 * @return how many files to copy at once: as many as set, unless one of the ends can't transfer that many files
+	 *         at once
+	 */
+	private int getConcurrentTransfers()
+	{
+		int transfers = Math.max(1, Math.min(getMaxConcurrentTransfers(_clientFileManager),
+				getMaxConcurrentTransfers(_serverFileManager)));
+		if (transfers < _transferConnections)
+		{
+			// e.g. SFTP, whose single connection copies one file at a time
+			log(FileUtil.NEW_LINE + MessageFormat.format(Messages.Synchronizer_TransfersLimited, transfers));
+			return transfers;
+		}
+		return _transferConnections;
+	}
+
+	private static int getMaxConcurrentTransfers(IConnectionPoint connectionPoint)
+	{
+		if (connectionPoint == null)
+		{
+			return 1;
+		}
+		Object fileManager = connectionPoint.getAdapter(IConnectionFileManager.class);
+		if (fileManager == null)
+		{
+			// local files
+			return Integer.MAX_VALUE;
+		}
+		if (fileManager instanceof BaseConnectionFileManager)
+		{
+			return ((BaseConnectionFileManager) fileManager).getMaxConcurrentTransfers();
+		}
+		return 1;
+	}
+
+
 	/**
 	 * fullSync
 	 * 
@@ -983,96 +1175,82 @@ public class Synchronizer implements ILoggable
 			SubMonitor subMonitor = SubMonitor.convert(monitor, Messages.Synchronizer_Synchronizing, fileList.length);
 			Policy.checkCanceled(subMonitor);
 
-			// process all items in our list
-			FILE_LOOP: for (int i = 0; i < fileList.length; i++)
+			// files start copying as they come up, while the other items are handled on this thread
+			TransferQueue queue = new TransferQueue(getConcurrentTransfers(), totalItems, subMonitor);
+			try
 			{
-				final VirtualFileSyncPair item = fileList[i];
-				final IFileStore clientFile = item.getSourceFile();
-				final IFileStore serverFile = item.getDestinationFile();
-
-				setSyncItemDirection(item, false, true);
-
-				SubMonitor childMonitor = subMonitor.newChild(1);
-				childMonitor.setTaskName(getSyncStatus(item));
-
-				try
+				for (int i = 0; i < fileList.length; i++)
 				{
-					final IFileInfo clientFileInfo = item.getSourceFileInfo(childMonitor);
-					final IFileInfo serverFileInfo = item.getDestinationFileInfo(childMonitor);
+					final VirtualFileSyncPair item = fileList[i];
+					final IFileStore clientFile = item.getSourceFile();
+					final IFileStore serverFile = item.getDestinationFile();
 
-					// fire event
-					if (!syncEvent(item, i, totalItems, childMonitor))
-					{
-						result = false;
-						break FILE_LOOP;
-					}
+					setSyncItemDirection(item, false, true);
 
-					Policy.checkCanceled(childMonitor);
+					SubMonitor childMonitor = subMonitor.newChild(1);
+					childMonitor.setTaskName(getSyncStatus(item));
 
-					switch (item.getSyncState())
+					try
 					{
-						case SyncState.ClientItemIsNewer:
-							// item exists on both ends, but the client one is newer
-							logUploading(serverFile);
-							if (clientFileInfo.isDirectory())
+						final IFileInfo clientFileInfo = item.getSourceFileInfo(childMonitor);
+						final IFileInfo serverFileInfo = item.getDestinationFileInfo(childMonitor);
+
+						FileTransfer transfer = createTransfer(item, i, true, true, deleteLocal, deleteRemote);
+						if (transfer != null)
+						{
+							if (!queue.start(transfer, childMonitor))
 							{
+								return false;
+							}
+							continue;
+						}
+
+						// fire event
+						if (!syncEvent(item, i, totalItems, childMonitor))
+						{
+							return false;
+						}
+
+						Policy.checkCanceled(childMonitor);
+
+						switch (item.getSyncState())
+						{
+							case SyncState.ClientItemIsNewer:
+								// item exists on both ends, but the client one is newer; files are queued, so this is a
+								// directory
+								logUploading(serverFile);
 								EFSUtils.setModificationTime(clientFileInfo.getLastModified(), serverFile);
 								logSuccess();
 								syncDone(item, childMonitor);
-							}
-							else
-							{
-								try
-								{
-									SyncUtils.copy(clientFile, clientFileInfo, serverFile, EFS.NONE, childMonitor);
-									Synchronizer.this._clientFileTransferedCount++;
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
+								break;
 
-									if (!syncError(item, e, childMonitor))
+							case SyncState.ClientItemOnly:
+								// only exists on client
+								if (deleteLocal)
+								{
+									// need to query first because deletion causes isDirectory to always return false
+									boolean wasDirectory = clientFileInfo.isDirectory();
+									// deletes the item
+									clientFile.delete(EFS.NONE, null);
+									if (wasDirectory)
 									{
-										result = false;
-										break FILE_LOOP;
+										this._clientDirectoryDeletedCount++;
 									}
-								}
-
-							}
-							break;
-
-						case SyncState.ClientItemOnly:
-							// only exists on client
-							if (deleteLocal)
-							{
-								// need to query first because deletion causes isDirectory to always return false
-								boolean wasDirectory = clientFileInfo.isDirectory();
-								// deletes the item
-								clientFile.delete(EFS.NONE, null);
-								if (wasDirectory)
-								{
-									this._clientDirectoryDeletedCount++;
+									else
+									{
+										this._clientFileDeletedCount++;
+									}
+									logSuccess();
+									syncDone(item, childMonitor);
 								}
 								else
 								{
-									this._clientFileDeletedCount++;
-								}
-								logSuccess();
-								syncDone(item, childMonitor);
-							}
-							else
-							{
-								// creates the item on server
-								IFileStore targetServerFile = EFSUtils.createFile(_clientFileRoot,
-										item.getSourceFile(), _serverFileRoot);
-								boolean exists = targetServerFile.fetchInfo().exists();
-								if (clientFileInfo.isDirectory())
-								{
+									// creates the directory on server
+									IFileStore targetServerFile = EFSUtils.createFile(_clientFileRoot,
+											item.getSourceFile(), _serverFileRoot);
 									logCreatedDirectory(targetServerFile);
 
-									if (!exists)
+									if (!targetServerFile.fetchInfo().exists())
 									{
 										targetServerFile.mkdir(EFS.NONE, null);
 										this._serverDirectoryCreatedCount++;
@@ -1085,102 +1263,46 @@ public class Synchronizer implements ILoggable
 									logSuccess();
 									syncDone(item, childMonitor);
 								}
-								else
-								{
-									logUploading(clientFile);
-									try
-									{
-										SyncUtils.copy(clientFile, clientFileInfo, targetServerFile, EFS.NONE,
-												childMonitor);
-										Synchronizer.this._clientFileTransferedCount++;
-										_newFilesUploaded.add(targetServerFile);
-										// update permissions for the newly created file
-										if (!exists)
-										{
-											updatePermissions(clientFile, targetServerFile, true,
-													PermissionDirection.UPLOAD, childMonitor);
-										}
-										logSuccess();
-										syncDone(item, childMonitor);
-									}
-									catch (CoreException e)
-									{
-										logError(e);
+								break;
 
-										if (!syncError(item, e, childMonitor))
-										{
-											result = false;
-											break FILE_LOOP;
-										}
-									}
-								}
-							}
-							break;
-
-						case SyncState.ServerItemIsNewer:
-							// item exists on both ends, but the server one is newer
-							logDownloading(clientFile);
-							if (serverFileInfo.isDirectory())
-							{
+							case SyncState.ServerItemIsNewer:
+								// item exists on both ends, but the server one is newer; files are queued, so this is a
+								// directory
+								logDownloading(clientFile);
 								// just needs to set the modification time for directory
 								EFSUtils.setModificationTime(serverFileInfo.getLastModified(), clientFile);
 
 								logSuccess();
 								syncDone(item, childMonitor);
-							}
-							else
-							{
-								try
-								{
-									SyncUtils.copy(serverFile, serverFileInfo, clientFile, EFS.NONE, childMonitor);
-									Synchronizer.this._serverFileTransferedCount++;
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
+								break;
 
-									if (!syncError(item, e, childMonitor))
+							case SyncState.ServerItemOnly:
+								// only exists on client
+								if (deleteRemote)
+								{
+									// need to query first because deletion causes isDirectory to always return false
+									boolean wasDirectory = serverFileInfo.isDirectory();
+									// deletes the item
+									serverFile.delete(EFS.NONE, null); // server.deleteFile(serverFile);
+									if (wasDirectory)
 									{
-										result = false;
-										break FILE_LOOP;
+										this._serverDirectoryDeletedCount++;
 									}
-								}
-
-							}
-							break;
-
-						case SyncState.ServerItemOnly:
-							// only exists on client
-							if (deleteRemote)
-							{
-								// need to query first because deletion causes isDirectory to always return false
-								boolean wasDirectory = serverFileInfo.isDirectory();
-								// deletes the item
-								serverFile.delete(EFS.NONE, null); // server.deleteFile(serverFile);
-								if (wasDirectory)
-								{
-									this._serverDirectoryDeletedCount++;
+									else
+									{
+										this._serverFileDeletedCount++;
+									}
+									logSuccess();
+									syncDone(item, childMonitor);
 								}
 								else
 								{
-									this._serverFileDeletedCount++;
-								}
-								logSuccess();
-								syncDone(item, childMonitor);
-							}
-							else
-							{
-								// creates the item on client
-								IFileStore targetClientFile = EFSUtils.createFile(_serverFileRoot,
-										item.getDestinationFile(), _clientFileRoot);
-								boolean exists = targetClientFile.fetchInfo().exists();
-								if (serverFileInfo.isDirectory())
-								{
+									// creates the directory on client
+									IFileStore targetClientFile = EFSUtils.createFile(_serverFileRoot,
+											item.getDestinationFile(), _clientFileRoot);
 									logCreatedDirectory(targetClientFile);
 
-									if (!exists)
+									if (!targetClientFile.fetchInfo().exists())
 									{
 										targetClientFile.mkdir(EFS.NONE, null);
 										this._clientDirectoryCreatedCount++;
@@ -1193,72 +1315,46 @@ public class Synchronizer implements ILoggable
 									logSuccess();
 									syncDone(item, childMonitor);
 								}
-								else
+								break;
+
+							case SyncState.CRCMismatch:
+								result = false;
+								IdeLog.logError(
+										SyncingPlugin.getDefault(),
+										MessageFormat.format(Messages.Synchronizer_FullSyncCRCMismatches,
+												item.getRelativePath()), (Throwable) null);
+								if (!syncError(item, null, childMonitor))
 								{
-									logDownloading(targetClientFile);
-
-									try
-									{
-										SyncUtils.copy(serverFile, serverFileInfo, targetClientFile, EFS.NONE,
-												childMonitor);
-										Synchronizer.this._serverFileTransferedCount++;
-										_newFilesDownloaded.add(targetClientFile);
-										// update permissions for the newly created file
-										if (!exists)
-										{
-											updatePermissions(serverFile, targetClientFile, true,
-													PermissionDirection.DOWNLOAD, childMonitor);
-										}
-										logSuccess();
-										syncDone(item, childMonitor);
-									}
-									catch (CoreException e)
-									{
-										logError(e);
-
-										if (!syncError(item, e, childMonitor))
-										{
-											result = false;
-											break FILE_LOOP;
-										}
-									}
+									return false;
 								}
-							}
-							break;
-
-						case SyncState.CRCMismatch:
-							result = false;
-							IdeLog.logError(
-									SyncingPlugin.getDefault(),
-									MessageFormat.format(Messages.Synchronizer_FullSyncCRCMismatches,
-											item.getRelativePath()), (Throwable) null);
-							if (!syncError(item, null, childMonitor))
-							{
-								break FILE_LOOP;
-							}
-							break;
+								break;
 
-						case SyncState.Ignore:
-							// ignore this file
-							break;
+							case SyncState.Ignore:
+								// ignore this file
+								break;
 
-						default:
-							break;
+							default:
+								break;
+						}
 					}
-				}
-				catch (Exception ex)
-				{
-					IdeLog.logError(SyncingPlugin.getDefault(), Messages.Synchronizer_ErrorDuringSync, ex);
-					result = false;
-
-					if (!syncError(item, ex, childMonitor))
+					catch (Exception ex)
 					{
-						break FILE_LOOP;
+						IdeLog.logError(SyncingPlugin.getDefault(), Messages.Synchronizer_ErrorDuringSync, ex);
+						result = false;
+
+						if (!syncError(item, ex, childMonitor))
+						{
+							return false;
+						}
 					}
 				}
-			}
 
-			return result;
+				return queue.finish() && result;
+			}
+			finally
+			{
+				queue.dispose();
+			}
 		}
 		finally
 		{
@@ -1338,112 +1434,88 @@ public class Synchronizer implements ILoggable
 			SubMonitor subMonitor = SubMonitor.convert(monitor, Messages.Synchronizer_Uploading_Files, fileList.length);
 			Policy.checkCanceled(subMonitor);
 
-			FILE_LOOP: for (int i = 0; i < fileList.length; i++)
+			// files start copying as they come up, while the other items are handled on this thread
+			TransferQueue queue = new TransferQueue(getConcurrentTransfers(), totalItems, subMonitor);
+			try
 			{
-				final VirtualFileSyncPair item = fileList[i];
-				final IFileStore clientFile = item.getSourceFile();
-				final IFileStore serverFile = item.getDestinationFile();
-
-				setSyncItemDirection(item, false, true);
-
-				SubMonitor childMonitor = subMonitor.newChild(1);
-				childMonitor.setTaskName(getSyncStatus(item));
-
-				try
+				for (int i = 0; i < fileList.length; i++)
 				{
-					final IFileInfo clientFileInfo = item.getSourceFileInfo(childMonitor);
-					final IFileInfo serverFileInfo = item.getDestinationFileInfo(childMonitor);
+					final VirtualFileSyncPair item = fileList[i];
+					final IFileStore clientFile = item.getSourceFile();
+					final IFileStore serverFile = item.getDestinationFile();
 
-					// fire event
-					if (!syncEvent(item, i, totalItems, childMonitor))
-					{
-						result = false;
-						break;
-					}
+					setSyncItemDirection(item, false, true);
 
-					Policy.checkCanceled(childMonitor);
+					SubMonitor childMonitor = subMonitor.newChild(1);
+					childMonitor.setTaskName(getSyncStatus(item));
 
-					switch (item.getSyncState())
+					try
 					{
-						case SyncState.ClientItemOnly:
-							// only exists on client; creates the item on server
-							IFileStore targetServerFile = EFSUtils.createFile(_clientFileRoot, item.getSourceFile(),
-									_serverFileRoot);
-							boolean exists = targetServerFile.fetchInfo().exists();
-							if (clientFileInfo.isDirectory())
+						final IFileInfo clientFileInfo = item.getSourceFileInfo(childMonitor);
+						final IFileInfo serverFileInfo = item.getDestinationFileInfo(childMonitor);
+
+						FileTransfer transfer = createTransfer(item, i, true, false, false, delete);
+						if (transfer != null)
+						{
+							if (!queue.start(transfer, childMonitor))
 							{
-								if (!exists)
+								return false;
+							}
+							continue;
+						}
+
+						// fire event
+						if (!syncEvent(item, i, totalItems, childMonitor))
+						{
+							return false;
+						}
+
+						Policy.checkCanceled(childMonitor);
+
+						switch (item.getSyncState())
+						{
+							case SyncState.ClientItemOnly:
+								// only exists on client; files are queued, so this creates a directory on server
+								IFileStore targetServerFile = EFSUtils.createFile(_clientFileRoot, item.getSourceFile(),
+										_serverFileRoot);
+								if (!targetServerFile.fetchInfo().exists())
 								{
 									targetServerFile.mkdir(EFS.NONE, null);
 									this._serverDirectoryCreatedCount++;
 									_newFilesUploaded.add(targetServerFile);
 									// update permissions for the newly created directory
-									updatePermissions(clientFile, targetServerFile, false, PermissionDirection.UPLOAD,
-											childMonitor);
+									updatePermissions(clientFile, targetServerFile, false,
+											PermissionDirection.UPLOAD, childMonitor);
 								}
 
 								syncDone(item, childMonitor);
-							}
-							else
-							{
-								logUploading(clientFile);
+								break;
 
-								try
+							case SyncState.ServerItemOnly:
+								// only exists on server; checks if it needs to be deleted
+								if (delete)
 								{
-									SyncUtils
-											.copy(clientFile, clientFileInfo, targetServerFile, EFS.NONE, childMonitor);
-									Synchronizer.this._clientFileTransferedCount++;
-									_newFilesUploaded.add(targetServerFile);
-									// update permissions for the newly created file
-									if (!exists)
+									// Need to query if directory first because deletion makes isDirectory always return
+									// false.
+									boolean wasDirectory = serverFileInfo.isDirectory();
+									serverFile.delete(EFS.NONE, childMonitor);
+									if (wasDirectory)
 									{
-										updatePermissions(clientFile, targetServerFile, true,
-												PermissionDirection.UPLOAD, childMonitor);
+										this._serverDirectoryDeletedCount++;
 									}
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
-
-									if (!syncError(item, e, childMonitor))
+									else
 									{
-										result = false;
-										break FILE_LOOP;
+										this._serverFileDeletedCount++;
 									}
 								}
+								syncDone(item, childMonitor);
+								break;
 
-							}
-							break;
-
-						case SyncState.ServerItemOnly:
-							// only exists on server; checks if it needs to be deleted
-							if (delete)
-							{
-								// Need to query if directory first because deletion makes isDirectory always return
-								// false.
-								boolean wasDirectory = serverFileInfo.isDirectory();
-								serverFile.delete(EFS.NONE, childMonitor);
-								if (wasDirectory)
-								{
-									this._serverDirectoryDeletedCount++;
-								}
-								else
-								{
-									this._serverFileDeletedCount++;
-								}
-							}
-							syncDone(item, childMonitor);
-							break;
-
-						case SyncState.ClientItemIsNewer:
-						case SyncState.CRCMismatch:
-							// exists on both sides, but the client item is newer
-							logUploading(clientFile);
-							if (clientFileInfo.isDirectory())
-							{
-								// just needs to set the modification time for directory
+							case SyncState.ClientItemIsNewer:
+							case SyncState.CRCMismatch:
+								// exists on both sides, but the client item is newer; files are queued, so this is a
+								// directory and just needs its modification time set
+								logUploading(clientFile);
 								try
 								{
 									EFSUtils.setModificationTime(clientFileInfo.getLastModified(), serverFile);
@@ -1454,55 +1526,37 @@ public class Synchronizer implements ILoggable
 
 									if (!syncError(item, e, childMonitor))
 									{
-										result = false;
-										break FILE_LOOP;
+										return false;
 									}
 								}
 
 								logSuccess();
 								syncDone(item, childMonitor);
-							}
-							else
-							{
-								try
-								{
-									SyncUtils.copy(clientFile, clientFileInfo, serverFile, EFS.NONE, childMonitor);
-									Synchronizer.this._clientFileTransferedCount++;
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
-
-									if (!syncError(item, e, childMonitor))
-									{
-										result = false;
-										break FILE_LOOP;
-									}
-								}
-
-							}
-							break;
+								break;
 
-						default:
-							syncDone(item, childMonitor);
-							break;
+							default:
+								syncDone(item, childMonitor);
+								break;
+						}
 					}
-				}
-				catch (Exception ex)
-				{
-					IdeLog.logError(SyncingPlugin.getDefault(), Messages.Synchronizer_ErrorDuringSync, ex);
-					result = false;
-
-					if (!syncError(item, ex, childMonitor))
+					catch (Exception ex)
 					{
-						break FILE_LOOP;
+						IdeLog.logError(SyncingPlugin.getDefault(), Messages.Synchronizer_ErrorDuringSync, ex);
+						result = false;
+
+						if (!syncError(item, ex, childMonitor))
+						{
+							return false;
+						}
 					}
 				}
-			}
 
-			return result;
+				return queue.finish() && result;
+			}
+			finally
+			{
+				queue.dispose();
+			}
 		}
 		finally
 		{
@@ -1836,4 +1890,280 @@ public class Synchronizer implements ILoggable
 		}
 	}
 
+	/**
+	 * A file copied from one end of the sync to the other on one of the transfer threads.
+	 */
+	private static class FileTransfer implements Callable<FileTransfer>
+	{
+		final VirtualFileSyncPair item;
+		final int index;
+		final boolean upload;
+		final IFileStore source;
+		final IFileInfo sourceInfo;
+		final IFileStore target;
+		final boolean newFile;
+
+		/**
+		 * Whether to fetch the info of the target once it's copied, to record the files in the manifest.
+		 */
+		boolean fetchTargetInfo;
+		IFileInfo targetInfo;
+
+		/**
+		 * Handed to the event handler on the thread running the sync.
+		 */
+		IProgressMonitor monitor;
+		/**
+		 * Used by the copy on the transfer thread, which only checks it for cancellation.
+		 */
+		IProgressMonitor copyMonitor;
+		Exception error;
+
+		FileTransfer(VirtualFileSyncPair item, int index, boolean upload, IFileStore target, boolean newFile)
+		{
+			this.item = item;
+			this.index = index;
+			this.upload = upload;
+			this.source = upload ? item.getSourceFile() : item.getDestinationFile();
+			this.sourceInfo = upload ? item.getSourceFileInfo() : item.getDestinationFileInfo();
+			this.target = target;
+			this.newFile = newFile;
+		}
+
+		public FileTransfer call()
+		{
+			try
+			{
+				boolean exists = newFile && target.fetchInfo().exists();
+				SyncUtils.copy(source, sourceInfo, target, EFS.NONE, copyMonitor);
+				// update permissions for the newly created file
+				if (newFile && !exists)
+				{
+					updatePermissions(source, target, true, upload ? PermissionDirection.UPLOAD
+							: PermissionDirection.DOWNLOAD, copyMonitor);
+				}
+				if (fetchTargetInfo)
+				{
+					try
+					{
+						targetInfo = target.fetchInfo(IExtendedFileStore.DETAILED, copyMonitor);
+					}
+					catch (CoreException e)
+					{
+						// the files just aren't recorded in the manifest
+					}
+				}
+			}
+			catch (Exception e)
+			{
+				error = e;
+			}
+			return this;
+		}
+	}
+
+	/**
+	 * Runs file copies on as many threads as there are connections to use. Copies are started and their results
+	 * collected on the thread running the sync, which alone fires the events, updates the counters and logs. The event
+	 * for each item still fires in list order, as the sync comes to it, but a copy is only reported done once it
+	 * finishes, which may be after the events of the items that follow it.
+	 */
+	private class TransferQueue
+	{
+		private final int connections;
+		private final int totalItems;
+		private final SubMonitor monitor;
+		private final IProgressMonitor copyMonitor;
+		private final ExecutorService executor;
+		private final CompletionService<FileTransfer> completion;
+
+		private int inFlight;
+		private boolean result = true;
+		private boolean stopped;
+
+		TransferQueue(int connections, int totalItems, SubMonitor monitor)
+		{
+			this.connections = connections;
+			this.totalItems = totalItems;
+			this.monitor = monitor;
+			this.copyMonitor = ConcurrencyUtils.cancelMonitorFor(monitor);
+			this.executor = Executors.newFixedThreadPool(connections,
+					ConcurrencyUtils.daemonThreadFactory("Sync transfer")); //$NON-NLS-1$
+			this.completion = new ExecutorCompletionService<FileTransfer>(executor);
+		}
+
+		/**
+		 * Starts copying a file once a connection is free, so the event for it fires as its copy starts.
+		 * 
+		 * @param transfer
+		 * @param itemMonitor
+		 *            the monitor of the item, handed to the event handler
+		 * @return false if the sync has been stopped
+		 */
+		boolean start(FileTransfer transfer, IProgressMonitor itemMonitor)
+		{
+			while (inFlight >= connections && !stopped)
+			{
+				finishNext();
+			}
+			if (stopped)
+			{
+				return false;
+			}
+
+			transfer.monitor = itemMonitor;
+			transfer.copyMonitor = copyMonitor;
+			transfer.fetchTargetInfo = getManifest() != null;
+			try
+			{
+				// fire event
+				if (!syncEvent(transfer.item, transfer.index, totalItems, transfer.monitor))
+				{
+					result = false;
+					stopped = true;
+					return false;
+				}
+				Policy.checkCanceled(monitor);
+			}
+			catch (Exception ex)
+			{
+				IdeLog.logError(SyncingPlugin.getDefault(), Messages.Synchronizer_ErrorDuringSync, ex);
+				result = false;
+
+				stopped = !syncError(transfer.item, ex, transfer.monitor);
+				transfer.monitor.done();
+				return !stopped;
+			}
+
+			completion.submit(transfer);
+			inFlight++;
+			return true;
+		}
+
+		/**
+		 * Records the files just copied as identical in the manifest.
+		 */
+		private void recordTransfer(FileTransfer transfer)
+		{
+			SyncManifest manifest = getManifest();
+			if (manifest == null || transfer.targetInfo == null)
+			{
+				return;
+			}
+			if (transfer.upload)
+			{
+				manifest.put(getManifestPath(transfer.target), transfer.sourceInfo, transfer.targetInfo, null);
+			}
+			else
+			{
+				manifest.put(getManifestPath(transfer.source), transfer.targetInfo, transfer.sourceInfo, null);
+			}
+		}
+
+		/**
+		 * Waits for the copies under way to finish.
+		 * 
+		 * @return success
+		 */
+		boolean finish()
+		{
+			while (inFlight > 0)
+			{
+				finishNext();
+			}
+			return result;
+		}
+
+		/**
+		 * Waits for the copies still under way, unless the sync has been interrupted, and records the files copied in
+		 * the manifest.
+		 */
+		void dispose()
+		{
+			// the sync may be stopping early, so errors are only logged from now on
+			stopped = true;
+			finish();
+			executor.shutdownNow();
+			saveManifest();
+		}
+
+		private void finishNext()
+		{
+			FileTransfer transfer;
+			try
+			{
+				transfer = completion.take().get();
+			}
+			catch (InterruptedException e)
+			{
+				// leaves the copies under way to be interrupted by dispose()
+				Thread.currentThread().interrupt();
+				monitor.setCanceled(true);
+				inFlight = 0;
+				result = false;
+				stopped = true;
+				return;
+			}
+			catch (ExecutionException e)
+			{
+				IdeLog.logError(SyncingPlugin.getDefault(), Messages.Synchronizer_ErrorDuringSync, e.getCause());
+				inFlight--;
+				result = false;
+				return;
+			}
+			inFlight--;
+
+			if (transfer.upload)
+			{
+				logUploading(transfer.source);
+			}
+			else
+			{
+				logDownloading(transfer.source);
+			}
+
+			Exception error = transfer.error;
+			if (error == null)
+			{
+				if (transfer.upload)
+				{
+					_clientFileTransferedCount++;
+					if (transfer.newFile)
+					{
+						_newFilesUploaded.add(transfer.target);
+					}
+				}
+				else
+				{
+					_serverFileTransferedCount++;
+					if (transfer.newFile)
+					{
+						_newFilesDownloaded.add(transfer.target);
+					}
+				}
+				recordTransfer(transfer);
+				logSuccess();
+				syncDone(transfer.item, transfer.monitor);
+			}
+			else
+			{
+				if (error instanceof CoreException)
+				{
+					logError(error);
+				}
+				else
+				{
+					IdeLog.logError(SyncingPlugin.getDefault(), Messages.Synchronizer_ErrorDuringSync, error);
+					result = false;
+				}
+				// once stopped, the copies still under way are only logged
+				if (!stopped && !syncError(transfer.item, error, transfer.monitor))
+				{
+					result = false;
+					stopped = true;
+				}
+			}
+			transfer.monitor.done();
+		}
+	}
 }
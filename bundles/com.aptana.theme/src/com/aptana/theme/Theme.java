@@ -87,8 +87,9 @@ public class Theme
 
 	/**
 	 * Access to get the text attribute. May cache internal information, so, must be recreated when the theme changes.
+	 * Replacing it drops everything cached for the previous state of the theme at once.
 	 */
-	private ThemeGetTextAttribute themeGetTextAttribute;
+	private volatile ThemeGetTextAttribute themeGetTextAttribute;
 
 	public Theme(ColorManager colormanager, Properties props)
 	{
@@ -98,13 +99,15 @@ public class Theme
 		storeDefaults();
 	}
 
-	private ThemeGetTextAttribute obtainGetThemeTextAttribute()
+	/* default */ThemeGetTextAttribute obtainGetThemeTextAttribute()
 	{
-		if (themeGetTextAttribute == null)
+		ThemeGetTextAttribute result = themeGetTextAttribute;
+		if (result == null)
 		{
-			themeGetTextAttribute = new ThemeGetTextAttribute(this);
+			result = new ThemeGetTextAttribute(this);
+			themeGetTextAttribute = result;
 		}
-		return themeGetTextAttribute;
+		return result;
 	}
 
 	private void parseProps(Properties props)
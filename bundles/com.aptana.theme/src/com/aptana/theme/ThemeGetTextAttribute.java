@@ -7,11 +7,12 @@
  */
 package com.aptana.theme;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jface.text.TextAttribute;
 import org.eclipse.swt.SWT;
@@ -21,49 +22,57 @@ import org.eclipse.swt.graphics.RGB;
 import com.aptana.core.util.ImmutableTuple;
 import com.aptana.scope.IScopeSelector;
 import com.aptana.scope.ScopeSelector;
+import com.aptana.scope.ScopeSelectorIndex;
 
 /**
  * Helper class used to get the text attribute for a given scope (given the related theme). Should not be manipulated
  * directly (only through the Theme class). Caches information based on the theme, so, if it changes, this instance
  * should be deleted and a new one created.
+ * <p>
+ * Text attributes are cached without locking, so that editors on several threads can look them up at once. The cache
+ * holds an entry per scope, which links to the entry of its parent scope (the scope without its last step), so that
+ * the scopes nested in a common parent share what was worked out for it. The cache holds a bounded number of entries,
+ * dropping those that haven't been used lately when it grows past that.
  */
 /* default */class ThemeGetTextAttribute
 {
 
 	/**
-	 * Used for recursion in getDelayedTextAttribute to avoid matching same rule on scope twice
+	 * How many scopes the cache holds at most.
 	 */
-	private IScopeSelector lastSelectorMatch;
+	private static final int MAX_CACHE_SIZE = 5000;
+
 	private final ColorManager colorManager;
 	private final Theme theme;
 	private final RGB defaultFG;
 	private final RGB defaultBG;
-	private final Collection<IScopeSelector> selectors;
+	private final ScopeSelectorIndex<IScopeSelector> selectors;
 
 	/**
-	 * A cache to memoize the ultimate TextAttribute generated for a given fully qualified scope.
+	 * The cached entries by scope.
 	 */
-	private final Map<String, TextAttribute> cacheGetTextAttribute;
+	private final ConcurrentMap<String, Entry> cache;
+	private final AtomicBoolean purging;
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+
 	private static volatile ImmutableTuple<ScopeSelector, DelayedTextAttribute>[] scopeToAttribute;
 	private static volatile ImmutableTuple<ScopeSelector, DelayedTextAttribute>[] scopeToAttributeLight;
 	private static volatile ImmutableTuple<ScopeSelector, DelayedTextAttribute>[] scopeToAttributeDark;
 
-	/**
-	 * A cache to memoize internally gotten delayed text attributes.
-	 */
-	private final Map<String, DelayedTextAttribute> cacheDelayedGetTextAttribute;
-
 	public ThemeGetTextAttribute(Theme theme)
 	{
 		this.theme = theme;
 		this.colorManager = theme.getColorManager();
 		this.defaultFG = theme.getForeground();
 		this.defaultBG = theme.getBackground();
-		this.cacheGetTextAttribute = new HashMap<String, TextAttribute>();
-		this.cacheDelayedGetTextAttribute = new HashMap<String, DelayedTextAttribute>();
+		this.cache = new ConcurrentHashMap<String, Entry>();
+		this.purging = new AtomicBoolean();
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
 
 		List<ThemeRule> tokens = theme.getTokens();
-		selectors = new ArrayList<IScopeSelector>(tokens.size());
+		selectors = new ScopeSelectorIndex<IScopeSelector>();
 
 		for (ThemeRule rule : tokens)
 		{
@@ -71,82 +80,165 @@ import com.aptana.scope.ScopeSelector;
 			{
 				continue;
 			}
-			selectors.add(rule.getScopeSelector());
+			IScopeSelector selector = rule.getScopeSelector();
+			selectors.add(selector, selector);
 		}
 	}
 
 	/* default */IScopeSelector findMatch(String scope)
 	{
-		return ScopeSelector.bestMatch(selectors, scope);
+		return selectors.bestMatch(scope);
 	}
 
-	/* default */synchronized TextAttribute getTextAttribute(String scope)
+	/* default */TextAttribute getTextAttribute(String scope)
 	{
-		TextAttribute ta = cacheGetTextAttribute.get(scope);
+		Entry entry = getEntry(scope);
+		TextAttribute ta = entry.textAttribute;
 		if (ta != null)
 		{
+			hits.incrementAndGet();
 			return ta;
 		}
-		ta = internalGetTextAttribute(scope);
-		cacheGetTextAttribute.put(scope, ta);
+		misses.incrementAndGet();
+		// threads missing at once work out the same attribute, any of them may be kept
+		ta = toTextAttribute(getDelayedTextAttribute(entry, null), true);
+		entry.textAttribute = ta;
 		return ta;
 	}
 
-	private TextAttribute internalGetTextAttribute(String scope)
+	/**
+	 * @return how many text attributes were found in the cache
+	 */
+	/* default */long getHitCount()
 	{
-		lastSelectorMatch = null;
-		TextAttribute ta = toTextAttribute(getDelayedTextAttribute(scope), true);
-		return ta;
+		return hits.get();
 	}
 
-	private DelayedTextAttribute getDelayedTextAttribute(String scope)
+	/**
+	 * @return how many text attributes had to be worked out
+	 */
+	/* default */long getMissCount()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * @return how many scopes are cached
+	 */
+	/* default */int getCacheSize()
 	{
-		DelayedTextAttribute delayedTextAttribute = cacheDelayedGetTextAttribute.get(scope);
-		if (delayedTextAttribute != null)
+		return cache.size();
+	}
+
+	private Entry getEntry(String scope)
+	{
+		Entry entry = cache.get(scope);
+		if (entry == null)
 		{
-			return delayedTextAttribute;
+			entry = new Entry(scope);
+			Entry existing = cache.putIfAbsent(scope, entry);
+			if (existing != null)
+			{
+				entry = existing;
+			}
+			else if (cache.size() > MAX_CACHE_SIZE)
+			{
+				purge();
+			}
 		}
-		delayedTextAttribute = internalDelayedTextAttribute(scope);
-		cacheDelayedGetTextAttribute.put(scope, delayedTextAttribute);
-		return delayedTextAttribute;
+		entry.used = true;
+		return entry;
 	}
 
 	/**
-	 * @return DelayedTextAttribute or TextAttribute if already gotten from the cache.
+	 * Drops the entries that haven't been used since the last purge and, if that's not enough, others, leaving room
+	 * for a quarter more before purging again. Entries still linked from their nested scopes' entries stay reachable
+	 * through them.
 	 */
-	private DelayedTextAttribute getParent(String scope)
+	private void purge()
 	{
-		DelayedTextAttribute parentAttr = null;
-		int index = scope.lastIndexOf(' ');
-		if (index != -1)
+		if (!purging.compareAndSet(false, true))
 		{
-			String subType = scope.substring(0, index);
-			parentAttr = getDelayedTextAttribute(subType);
+			return;
 		}
-		if (parentAttr == null)
+		try
 		{
-			// If we never find a parent, use default bg
-			parentAttr = new DelayedTextAttribute(new RGBa(defaultFG), new RGBa(defaultBG), 0);
+			int target = MAX_CACHE_SIZE * 3 / 4;
+			for (Iterator<Entry> i = cache.values().iterator(); i.hasNext();)
+			{
+				Entry entry = i.next();
+				if (!entry.used)
+				{
+					i.remove();
+				}
+				else
+				{
+					entry.used = false;
+				}
+			}
+			for (Iterator<Entry> i = cache.values().iterator(); i.hasNext() && cache.size() > target;)
+			{
+				i.next();
+				i.remove();
+			}
+		}
+		finally
+		{
+			purging.set(false);
 		}
-		return parentAttr;
 	}
 
 	/**
-	 * @return DelayedTextAttribute or TextAttribute if already gotten from the cache.
+	 * Returns the attribute of a scope.
+	 * 
+	 * @param entry
+	 *            the entry of the scope
+	 * @param lastSelectorMatch
+	 *            the rule matched by the nested scope this is the parent of, to avoid matching same rule on scope
+	 *            twice; null for the scope itself
 	 */
-	private DelayedTextAttribute internalDelayedTextAttribute(String scope)
+	private DelayedTextAttribute getDelayedTextAttribute(Entry entry, IScopeSelector lastSelectorMatch)
 	{
+		Resolved resolved = entry.resolved;
+		if (resolved == null)
+		{
+			resolved = internalDelayedTextAttribute(entry);
+			entry.resolved = resolved;
+		}
+		// This is to avoid matching the same selector multiple times when recursing up the scope! Basically our
+		// match may have been many steps up our scope, not at the end!
+		if (lastSelectorMatch != null && lastSelectorMatch.equals(resolved.match))
+		{
+			// We just matched the same rule! We need to recurse from parent scope!
+			return getParent(entry, lastSelectorMatch);
+		}
+		return resolved.attribute;
+	}
+
+	private DelayedTextAttribute getParent(Entry entry, IScopeSelector lastSelectorMatch)
+	{
+		Entry parent = entry.parent;
+		if (parent == null)
+		{
+			int index = entry.scope.lastIndexOf(' ');
+			parent = (index != -1) ? getEntry(entry.scope.substring(0, index)) : Entry.NONE;
+			entry.parent = parent;
+		}
+		if (parent == Entry.NONE)
+		{
+			// If we never find a parent, use default bg
+			return new DelayedTextAttribute(new RGBa(defaultFG), new RGBa(defaultBG), 0);
+		}
+		parent.used = true;
+		return getDelayedTextAttribute(parent, lastSelectorMatch);
+	}
+
+	private Resolved internalDelayedTextAttribute(Entry entry)
+	{
+		String scope = entry.scope;
 		IScopeSelector match = findMatch(scope);
 		if (match != null)
 		{
-			// This is to avoid matching the same selector multiple times when recursing up the scope! Basically our
-			// match may have been many steps up our scope, not at the end!
-			if (lastSelectorMatch != null && lastSelectorMatch.equals(match))
-			{
-				// We just matched the same rule! We need to recurse from parent scope!
-				return getParent(scope);
-			}
-			lastSelectorMatch = match;
 			ThemeRule rule = theme.getRuleForSelector(match);
 			DelayedTextAttribute attr = rule.getTextAttribute();
 
@@ -155,11 +247,11 @@ import com.aptana.scope.ScopeSelector;
 			if (attr.background == null || !attr.background.isFullyOpaque())
 			{
 				// Need to merge bg color up the scope!
-				DelayedTextAttribute parentAttr = getParent(scope);
+				DelayedTextAttribute parentAttr = getParent(entry, match);
 				// Now do actual merge
-				attr = merge(attr, (DelayedTextAttribute) parentAttr);
+				attr = merge(attr, parentAttr);
 			}
-			return attr;
+			return new Resolved(match, attr);
 		}
 		if (scopeToAttribute == null)
 		{
@@ -170,7 +262,7 @@ import com.aptana.scope.ScopeSelector;
 		{
 			if (tup.first.matches(scope))
 			{
-				return tup.second;
+				return new Resolved(null, tup.second);
 			}
 		}
 		if (theme.hasDarkBG())
@@ -179,7 +271,7 @@ import com.aptana.scope.ScopeSelector;
 			{
 				if (tup.first.matches(scope))
 				{
-					return tup.second;
+					return new Resolved(null, tup.second);
 				}
 			}
 		}
@@ -189,12 +281,12 @@ import com.aptana.scope.ScopeSelector;
 			{
 				if (tup.first.matches(scope))
 				{
-					return tup.second;
+					return new Resolved(null, tup.second);
 				}
 			}
 		}
 
-		return new DelayedTextAttribute(new RGBa(defaultFG));
+		return new Resolved(null, new DelayedTextAttribute(new RGBa(defaultFG)));
 	}
 
 	@SuppressWarnings("unchecked")
@@ -203,7 +295,7 @@ import com.aptana.scope.ScopeSelector;
 		// Some tokens are special. They have fallbacks even if not in the theme! Looks like bundles can contribute
 		// them?
 
-		scopeToAttribute = new ImmutableTuple[] {
+		ImmutableTuple<ScopeSelector, DelayedTextAttribute>[] special = new ImmutableTuple[] {
 				new ImmutableTuple<ScopeSelector, DelayedTextAttribute>(new ScopeSelector("markup.changed"), //$NON-NLS-1$
 						new DelayedTextAttribute(new RGBa(255, 255, 255), new RGBa(248, 205, 14), SWT.NORMAL)),
 
@@ -275,6 +367,9 @@ import com.aptana.scope.ScopeSelector;
 
 				new ImmutableTuple<ScopeSelector, DelayedTextAttribute>(new ScopeSelector("hyperlink"), //$NON-NLS-1$
 						new DelayedTextAttribute(new RGBa(13, 17, 113), null, SWT.NORMAL)) };
+
+		// set last, as it tells the others are set
+		scopeToAttribute = special;
 	}
 
 	private TextAttribute toTextAttribute(DelayedTextAttribute delayedOrTextAttr, boolean forceColor)
@@ -319,4 +414,41 @@ import com.aptana.scope.ScopeSelector;
 		}
 		return new RGBa(Theme.alphaBlend(bottom.toRGB(), top.toRGB(), top.getAlpha()));
 	}
+
+	/**
+	 * What a scope's own attribute was worked out to be, and the rule that matched it.
+	 */
+	private static class Resolved
+	{
+		final IScopeSelector match;
+		final DelayedTextAttribute attribute;
+
+		Resolved(IScopeSelector match, DelayedTextAttribute attribute)
+		{
+			this.match = match;
+			this.attribute = attribute;
+		}
+	}
+
+	/**
+	 * The cached information of a scope.
+	 */
+	private static class Entry
+	{
+		/**
+		 * The parent of scopes with a single step.
+		 */
+		static final Entry NONE = new Entry(null);
+
+		final String scope;
+		volatile Entry parent;
+		volatile Resolved resolved;
+		volatile TextAttribute textAttribute;
+		volatile boolean used;
+
+		Entry(String scope)
+		{
+			this.scope = scope;
+		}
+	}
 }
@@ -15,7 +15,9 @@ package com.aptana.editor.common.contentassist;
 
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
@@ -67,6 +69,7 @@ import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.Shell;
@@ -177,6 +180,78 @@ public class CompletionProposalPopup implements IContentAssistListener
 		}
 	}
 
+	/**
+	 * Collects the proposals a processor reports after its initial ones and hands them to the popup on the UI thread.
+	 * Updates are coalesced so that only the latest list is merged.
+	 */
+	private final class ProposalCollector implements ICompletionProposalCollector
+	{
+		private final Display fDisplay;
+		private volatile boolean fCancelled;
+		private boolean fDone;
+		private boolean fUpdatePosted;
+		private ICompletionProposal[] fPendingProposals;
+
+		private ProposalCollector(Display display)
+		{
+			fDisplay = display;
+		}
+
+		public synchronized void setProposals(ICompletionProposal[] proposals)
+		{
+			fPendingProposals = proposals;
+			postUpdate();
+		}
+
+		public synchronized void done()
+		{
+			fDone = true;
+			postUpdate();
+		}
+
+		public boolean isCancelled()
+		{
+			return fCancelled;
+		}
+
+		private void cancel()
+		{
+			fCancelled = true;
+		}
+
+		/**
+		 * Returns whether all proposals have been reported and merged.
+		 */
+		private synchronized boolean isFinished()
+		{
+			return fDone && fPendingProposals == null;
+		}
+
+		private synchronized ICompletionProposal[] takeProposals()
+		{
+			ICompletionProposal[] proposals = fPendingProposals;
+			fPendingProposals = null;
+			fUpdatePosted = false;
+			return proposals;
+		}
+
+		private void postUpdate()
+		{
+			if (fCancelled || fUpdatePosted || fDisplay.isDisposed())
+			{
+				return;
+			}
+			fUpdatePosted = true;
+			fDisplay.asyncExec(new Runnable()
+			{
+				public void run()
+				{
+					mergeProposals(ProposalCollector.this);
+				}
+			});
+		}
+	}
+
 	/** The associated text viewer. */
 	private ITextViewer fViewer;
 	/** The associated code assistant. */
@@ -209,6 +284,8 @@ public class CompletionProposalPopup implements IContentAssistListener
 	private int fFilterOffset;
 	/** The key last pressed to trigger activation * */
 	private char fActivationKey;
+	/** The collector for the proposals still being computed for <code>fInvocationOffset</code>. */
+	private ProposalCollector fCollector;
 
 	/** Do we insert the selected proposal on tab? * */
 	private boolean _insertOnTab;
@@ -344,9 +421,9 @@ public class CompletionProposalPopup implements IContentAssistListener
 
 					if (count == 0)
 					{
-						hide();
+						hideUntilComputed();
 					}
-					else if (count == 1 && !autoActivated && canAutoInsert(fComputedProposals[0]))
+					else if (count == 1 && !autoActivated && isComputed() && canAutoInsert(fComputedProposals[0]))
 					{
 						insertProposal(fComputedProposals[0], (char) 0, 0, fInvocationOffset);
 						hide();
@@ -387,11 +464,217 @@ public class CompletionProposalPopup implements IContentAssistListener
 	 */
 	private ICompletionProposal[] computeProposals(int offset, boolean autoActivated)
 	{
+		cancelCollector();
 		if (fContentAssistSubjectControl != null)
 		{
 			return fContentAssistant.computeCompletionProposals(fContentAssistSubjectControl, offset, fActivationKey);
 		}
-		return fContentAssistant.computeCompletionProposals(fViewer, offset, fActivationKey, autoActivated);
+		fCollector = new ProposalCollector(fContentAssistSubjectControlAdapter.getControl().getDisplay());
+		return fContentAssistant.computeCompletionProposals(fViewer, offset, fActivationKey, autoActivated,
+				fCollector);
+	}
+
+	/**
+	 * Cancels the computation of the proposals that haven't been reported yet, if any.
+	 */
+	private void cancelCollector()
+	{
+		if (fCollector != null)
+		{
+			fCollector.cancel();
+			fCollector = null;
+		}
+	}
+
+	/**
+	 * Hides this popup, but keeps waiting for the proposals that are still being computed so it can open again for
+	 * them.
+	 */
+	private void hideUntilComputed()
+	{
+		ProposalCollector collector = fCollector;
+		fCollector = null;
+		hide();
+		if (collector != null && !collector.isFinished())
+		{
+			fCollector = collector;
+		}
+	}
+
+	/**
+	 * Returns whether all proposals for the current invocation have been computed.
+	 * 
+	 * @return
+	 */
+	private boolean isComputed()
+	{
+		return fCollector == null || fCollector.isFinished();
+	}
+
+	/**
+	 * Merges the proposals reported by the given collector into this popup. If the popup isn't showing because none of
+	 * the proposals computed so far were valid, it's opened again unless the caret has moved before the invocation.
+	 * 
+	 * @param collector
+	 */
+	private void mergeProposals(ProposalCollector collector)
+	{
+		if (collector != fCollector || collector.isCancelled())
+		{
+			return;
+		}
+
+		ICompletionProposal[] proposals = collector.takeProposals();
+		Control control = fContentAssistSubjectControlAdapter.getControl();
+		if (!Helper.okToUse(control))
+		{
+			cancelCollector();
+			return;
+		}
+
+		if (Helper.okToUse(fProposalShell))
+		{
+			if (proposals != null)
+			{
+				updateProposals(proposals);
+			}
+		}
+		else if (fContentAssistSubjectControlAdapter.getSelectedRange().x < fInvocationOffset)
+		{
+			cancelCollector();
+		}
+		else if (proposals != null)
+		{
+			showLateProposals(proposals, fContentAssistSubjectControlAdapter.getSelectedRange().x);
+		}
+		else if (collector.isFinished())
+		{
+			fCollector = null;
+		}
+	}
+
+	/**
+	 * Replaces the proposals of the showing popup with the given complete list, filtered to the offset the displayed
+	 * proposals have been filtered to. The selected proposal stays selected if it's still in the list.
+	 * 
+	 * @param proposals
+	 */
+	private void updateProposals(ICompletionProposal[] proposals)
+	{
+		ICompletionProposal[] filtered = mergeComputedProposals(proposals, fFilterOffset);
+		if (filtered.length == 0)
+		{
+			return;
+		}
+
+		ICompletionProposal selected = getSelectedProposal();
+		setProposals(filtered, false);
+		for (int i = 1; i < filtered.length; i++)
+		{
+			if (filtered[i] == selected)
+			{
+				selectProposal(i, false, true);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Opens the popup again for proposals computed after none of the earlier ones were valid at the given offset.
+	 * 
+	 * @param proposals
+	 * @param offset
+	 */
+	private void showLateProposals(ICompletionProposal[] proposals, int offset)
+	{
+		ICompletionProposal[] filtered = mergeComputedProposals(proposals, offset);
+		if (filtered.length == 0)
+		{
+			return;
+		}
+
+		if (fKeyListener == null)
+		{
+			fKeyListener = new ProposalSelectionListener();
+		}
+		fContentAssistSubjectControlAdapter.addKeyListener(fKeyListener);
+		fFilterOffset = offset;
+		fComputedProposals = filtered;
+		createPopup();
+	}
+
+	/**
+	 * Makes the given complete list the computed proposals, keeping those valid at the invocation offset the same way
+	 * the initial ones were kept, and returns the ones valid at the given offset.
+	 * 
+	 * @param proposals
+	 * @param offset
+	 * @return
+	 */
+	private ICompletionProposal[] mergeComputedProposals(ICompletionProposal[] proposals, int offset)
+	{
+		Map<ICompletionProposal, Boolean> known = new IdentityHashMap<ICompletionProposal, Boolean>();
+		if (fComputedProposals != null)
+		{
+			for (ICompletionProposal proposal : fComputedProposals)
+			{
+				known.put(proposal, Boolean.TRUE);
+			}
+		}
+
+		IDocument document = fContentAssistSubjectControlAdapter.getDocument();
+		DocumentEvent initial = new DocumentEvent(document, fInvocationOffset, 0, StringUtil.EMPTY);
+		// the replacement length of proposals new to the popup has to grow by what has been typed since the invocation
+		DocumentEvent typed = getTypedEvent(document, offset);
+		List<ICompletionProposal> computed = new ArrayList<ICompletionProposal>(proposals.length);
+		List<ICompletionProposal> filtered = new ArrayList<ICompletionProposal>(proposals.length);
+		for (ICompletionProposal proposal : proposals)
+		{
+			if (known.containsKey(proposal))
+			{
+				computed.add(proposal);
+				if (isValid(proposal, document, offset, null))
+				{
+					filtered.add(proposal);
+				}
+			}
+			else if (isValid(proposal, document, fInvocationOffset, initial))
+			{
+				computed.add(proposal);
+				if (isValid(proposal, document, offset, typed))
+				{
+					filtered.add(proposal);
+				}
+			}
+		}
+
+		fComputedProposals = computed.toArray(new ICompletionProposal[computed.size()]);
+		return filtered.toArray(new ICompletionProposal[filtered.size()]);
+	}
+
+	/**
+	 * Returns an event inserting the text typed from the invocation offset up to the given offset, which the
+	 * replacement length of proposals computed for the invocation offset has to grow by.
+	 * 
+	 * @param document
+	 * @param offset
+	 * @return
+	 */
+	private DocumentEvent getTypedEvent(IDocument document, int offset)
+	{
+		String typed = StringUtil.EMPTY;
+		if (offset > fInvocationOffset)
+		{
+			try
+			{
+				typed = document.get(fInvocationOffset, offset - fInvocationOffset);
+			}
+			catch (BadLocationException e)
+			{
+				// ignore
+			}
+		}
+		return new DocumentEvent(document, fInvocationOffset, 0, typed);
 	}
 
 	/**
@@ -1055,6 +1338,7 @@ public class CompletionProposalPopup implements IContentAssistListener
 	public void hide()
 	{
 		fLastKeyPressed = '\0';
+		cancelCollector();
 		unregister();
 
 		if (fViewer instanceof IEditingSupportRegistry)
@@ -1081,6 +1365,7 @@ public class CompletionProposalPopup implements IContentAssistListener
 	 */
 	public void disposePopup()
 	{
+		cancelCollector();
 		if (fProposalShell != null && !fProposalShell.isDisposed())
 		{
 			fProposalShell.dispose();
@@ -1753,7 +2038,7 @@ public class CompletionProposalPopup implements IContentAssistListener
 				}
 				else
 				{
-					hide();
+					hideUntilComputed();
 				}
 			}
 		});
@@ -1844,24 +2129,9 @@ public class CompletionProposalPopup implements IContentAssistListener
 		{
 			ICompletionProposal proposal = proposals[i];
 
-			if (proposal instanceof ICompletionProposalExtension2)
-			{
-				ICompletionProposalExtension2 p = (ICompletionProposalExtension2) proposal;
-
-				if (p.validate(document, offset, event))
-				{
-					filtered.add(proposal);
-				}
-
-			}
-			else if (proposal instanceof ICompletionProposalExtension)
+			if (isValid(proposal, document, offset, event))
 			{
-				ICompletionProposalExtension p = (ICompletionProposalExtension) proposal;
-
-				if (p.isValidFor(document, offset))
-				{
-					filtered.add(proposal);
-				}
+				filtered.add(proposal);
 			}
 		}
 
@@ -1871,6 +2141,28 @@ public class CompletionProposalPopup implements IContentAssistListener
 		return filtered.toArray(new ICompletionProposal[filtered.size()]);
 	}
 
+	/**
+	 * Is the proposal valid in the current context of the document event?
+	 * 
+	 * @param proposal
+	 * @param document
+	 * @param offset
+	 * @param event
+	 * @return
+	 */
+	private boolean isValid(ICompletionProposal proposal, IDocument document, int offset, DocumentEvent event)
+	{
+		if (proposal instanceof ICompletionProposalExtension2)
+		{
+			return ((ICompletionProposalExtension2) proposal).validate(document, offset, event);
+		}
+		if (proposal instanceof ICompletionProposalExtension)
+		{
+			return ((ICompletionProposalExtension) proposal).isValidFor(document, offset);
+		}
+		return false;
+	}
+
 	/**
 	 * Requests the proposal shell to take focus.
 	 * 
@@ -1949,14 +2241,15 @@ public class CompletionProposalPopup implements IContentAssistListener
 						// control.getDisplay().beep();
 						hide();
 					}
-					else if (count == 1 && canAutoInsert(fFilteredProposals[0]))
+					else if (count == 1 && isComputed() && canAutoInsert(fFilteredProposals[0]))
 					{
 						insertProposal(fFilteredProposals[0], (char) 0, 0, fInvocationOffset);
 						hide();
 					}
 					else
 					{
-						if (completeCommonPrefix())
+						// the common prefix of the proposals computed so far may not be common to all of them
+						if (isComputed() && completeCommonPrefix())
 						{
 							hide();
 						}
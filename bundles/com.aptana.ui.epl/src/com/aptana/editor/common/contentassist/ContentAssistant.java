@@ -2205,6 +2205,29 @@ public class ContentAssistant implements IContentAssistant, IContentAssistantExt
 	 */
 	ICompletionProposal[] computeCompletionProposals(ITextViewer viewer, int offset, char activationChar,
 			boolean autoActivated)
+	{
+		return computeCompletionProposals(viewer, offset, activationChar, autoActivated, null);
+	}
+
+	/**
+	 * Returns an array of completion proposals computed based on the specified document position. Processors that
+	 * compute proposals asynchronously report the ones they haven't returned to the given collector; for all others the
+	 * collector is done once this method returns.
+	 * 
+	 * @param viewer
+	 *            the viewer for which to compute the proposals
+	 * @param offset
+	 *            a document offset
+	 * @param autoActivated
+	 *            determines whether we were autoActivated or not
+	 * @param collector
+	 *            the collector for proposals computed later on, may be <code>null</code>
+	 * @return an array of completion proposals
+	 * @see IAsyncContentAssistProcessor#computeCompletionProposals(ITextViewer, int, char, boolean,
+	 *      ICompletionProposalCollector)
+	 */
+	ICompletionProposal[] computeCompletionProposals(ITextViewer viewer, int offset, char activationChar,
+			boolean autoActivated, ICompletionProposalCollector collector)
 	{
 		fLastErrorMessage = null;
 		fUserAgentColumnCount = 0;
@@ -2218,7 +2241,15 @@ public class ContentAssistant implements IContentAssistant, IContentAssistantExt
 			{
 				ICommonContentAssistProcessor commonProcessor = (ICommonContentAssistProcessor) processor;
 
-				result = commonProcessor.computeCompletionProposals(viewer, offset, activationChar, autoActivated);
+				if (collector != null && processor instanceof IAsyncContentAssistProcessor)
+				{
+					result = ((IAsyncContentAssistProcessor) processor).computeCompletionProposals(viewer, offset,
+							activationChar, autoActivated, collector);
+				}
+				else
+				{
+					result = commonProcessor.computeCompletionProposals(viewer, offset, activationChar, autoActivated);
+				}
 
 				String[] ids = ((ICommonContentAssistProcessor) processor).getActiveUserAgentIds();
 
@@ -2232,6 +2263,11 @@ public class ContentAssistant implements IContentAssistant, IContentAssistantExt
 			fLastErrorMessage = processor.getErrorMessage();
 		}
 
+		// the asynchronous processor is done when it says so
+		if (collector != null && !(processor instanceof IAsyncContentAssistProcessor))
+		{
+			collector.done();
+		}
 		return result;
 	}
 
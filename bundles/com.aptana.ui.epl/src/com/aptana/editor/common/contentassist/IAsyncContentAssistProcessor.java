@@ -0,0 +1,34 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license-epl.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.editor.common.contentassist;
+
+import org.eclipse.jface.text.ITextViewer;
+import org.eclipse.jface.text.contentassist.ICompletionProposal;
+
+/**
+ * A content assist processor that may keep computing proposals in the background after it has returned the ones it
+ * had ready, so the proposal popup can open without waiting for slow proposal sources.
+ */
+public interface IAsyncContentAssistProcessor extends ICommonContentAssistProcessor
+{
+	/**
+	 * Returns the proposals that are ready and reports the rest to the collector once they have been computed.
+	 * Implementations must call {@link ICompletionProposalCollector#done()} when no more proposals will follow, before
+	 * returning if all proposals have already been computed, unless the collector has been cancelled.
+	 * 
+	 * @param viewer
+	 * @param offset
+	 * @param activationChar
+	 * @param autoActivated
+	 * @param collector
+	 *            the collector for the proposals computed later on
+	 * @return the proposals computed so far
+	 */
+	ICompletionProposal[] computeCompletionProposals(ITextViewer viewer, int offset, char activationChar,
+			boolean autoActivated, ICompletionProposalCollector collector);
+}
@@ -0,0 +1,38 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license-epl.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.editor.common.contentassist;
+
+import org.eclipse.jface.text.contentassist.ICompletionProposal;
+
+/**
+ * Receives the proposals an {@link IAsyncContentAssistProcessor} finishes computing after it has returned its initial
+ * ones. The methods may be called from any thread.
+ */
+public interface ICompletionProposalCollector
+{
+	/**
+	 * Replaces the proposals reported so far, including the initial ones, with the given complete and sorted list.
+	 * Proposals that were reported before should be passed as the same instances.
+	 * 
+	 * @param proposals
+	 */
+	void setProposals(ICompletionProposal[] proposals);
+
+	/**
+	 * Signals that no more proposals will be reported.
+	 */
+	void done();
+
+	/**
+	 * Returns whether the proposals are no longer wanted, e.g. because the popup has been closed or the proposals are
+	 * being computed again for another offset.
+	 * 
+	 * @return
+	 */
+	boolean isCancelled();
+}
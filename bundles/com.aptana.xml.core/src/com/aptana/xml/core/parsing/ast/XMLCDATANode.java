@@ -15,6 +15,13 @@ public class XMLCDATANode extends XMLNode
 
 	private String fText;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private XMLCDATANode()
+	{
+	}
+
 	public XMLCDATANode(String text, int start, int end)
 	{
 		super(XMLNodeType.CDATA, start, end);
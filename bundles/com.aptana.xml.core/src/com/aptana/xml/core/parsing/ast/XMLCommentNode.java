@@ -15,6 +15,13 @@ public class XMLCommentNode extends XMLNode
 
 	private String fText;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private XMLCommentNode()
+	{
+	}
+
 	public XMLCommentNode(String text, int start, int end)
 	{
 		super(XMLNodeType.COMMENT, start, end);
@@ -32,6 +32,14 @@ public class XMLElementNode extends XMLNode
 	private Map<String, IParseNodeAttribute> fAttributes;
 	private int startClose;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private XMLElementNode()
+	{
+		fIsSelfClosing = false;
+	}
+
 	/**
 	 * XMLElementNode
 	 * 
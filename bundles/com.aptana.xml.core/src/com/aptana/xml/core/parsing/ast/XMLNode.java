@@ -14,6 +14,13 @@ public class XMLNode extends ParseNode
 {
 	private XMLNodeType fType;
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	protected XMLNode()
+	{
+	}
+
 	/**
 	 * XMLNode
 	 * 
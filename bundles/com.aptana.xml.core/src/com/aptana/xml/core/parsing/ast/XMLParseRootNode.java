@@ -18,6 +18,14 @@ import com.aptana.xml.core.IXMLConstants;
 public class XMLParseRootNode extends ParseRootNode
 {
 
+	/**
+	 * Used when the node is read back from the persistent parse cache
+	 */
+	private XMLParseRootNode()
+	{
+		super(null);
+	}
+
 	public XMLParseRootNode(int start, int end)
 	{
 		super(new Symbol[0], start, end);
@@ -7,8 +7,11 @@ import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
@@ -137,6 +140,7 @@ public class UnifiedBuilderTest
 	private IBuildParticipant participant;
 	private IProject project;
 	private IResourceDelta delta;
+	private boolean parallelBuild;
 
 	private Mockery context = new Mockery()
 	{
@@ -188,6 +192,18 @@ public class UnifiedBuilderTest
 			{
 				return true;
 			}
+
+			@Override
+			protected boolean isParallelBuildEnabled()
+			{
+				return parallelBuild;
+			}
+
+			@Override
+			protected int getBuildThreadCount()
+			{
+				return 4;
+			}
 		};
 	}
 
@@ -200,6 +216,7 @@ public class UnifiedBuilderTest
 			project = null;
 		}
 		participant = null;
+		parallelBuild = false;
 		builder = null;
 		manager = null;
 //		super.tearDown();
@@ -293,6 +310,55 @@ public class UnifiedBuilderTest
 		// PROBLEM/TASK types?
 	}
 
+	@Test
+	public void testParallelFullBuild() throws Exception
+	{
+		parallelBuild = true;
+		final int fileCount = 25;
+		for (int i = 0; i < fileCount; i++)
+		{
+			IFile file = project.getFile("file" + i + ".txt");
+			file.create(new ByteArrayInputStream(("File " + i).getBytes()), true, null);
+		}
+
+		final Set<String> built = Collections.synchronizedSet(new HashSet<String>());
+		final AtomicInteger buildCount = new AtomicInteger();
+		participant = new RequiredBuildParticipant()
+		{
+
+			public void deleteFile(BuildContext context, IProgressMonitor monitor)
+			{
+			}
+
+			public void buildFile(BuildContext context, IProgressMonitor monitor)
+			{
+				buildCount.incrementAndGet();
+				built.add(context.getName());
+				Collection<IProblem> problems = new ArrayList<IProblem>();
+				problems.add(createTask(context.getURI().toString(), context.getName(), IMarker.PRIORITY_HIGH, 1, 0, 1));
+				context.putProblems(IMarkerConstants.TASK_MARKER, problems);
+			}
+
+			@Override
+			public boolean isThreadSafe()
+			{
+				return true;
+			}
+		};
+		builder.build(IncrementalProjectBuilder.FULL_BUILD, null, new NullProgressMonitor());
+
+		// Every file, including the .project file, is built once and gets its task marker
+		assertEquals(fileCount + 1, built.size());
+		assertEquals(fileCount + 1, buildCount.get());
+		for (int i = 0; i < fileCount; i++)
+		{
+			IFile file = project.getFile("file" + i + ".txt");
+			IMarker[] markers = file.findMarkers(IMarkerConstants.TASK_MARKER, true, IResource.DEPTH_ZERO);
+			assertEquals(1, markers.length);
+			assertEquals(file.getName(), markers[0].getAttribute(IMarker.MESSAGE));
+		}
+	}
+
 	@Test
 	public void testIncrementalBuildWithNoDeltaDoesFullBuild() throws Exception
 	{
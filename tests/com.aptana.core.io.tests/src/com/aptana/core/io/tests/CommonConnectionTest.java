@@ -28,8 +28,10 @@ import java.io.Writer;
 import java.text.MessageFormat;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Properties;
 import java.util.Random;
+import java.util.Set;
 
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileInfo;
@@ -43,6 +45,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.aptana.core.io.efs.EFSUtils;
 import com.aptana.core.io.vfs.ExtendedFileInfo;
 import com.aptana.core.io.vfs.IExtendedFileInfo;
 import com.aptana.core.io.vfs.IExtendedFileStore;
@@ -1172,4 +1175,33 @@ public abstract class CommonConnectionTest
 			assertNotNull(fs);
 		}
 	}
+
+	@Test
+	public final void testGetFilesInWideTree() throws CoreException, IOException
+	{
+		IFileStore fs = cp.getRoot().getFileStore(testPath);
+		assertNotNull(fs);
+		Set<String> expected = new HashSet<String>();
+		for (int i = 1; i < 6; ++i)
+		{
+			IFileStore folder = fs.getChild("folder" + i); //$NON-NLS-1$
+			folder.getChild("sub").mkdir(EFS.NONE, null); //$NON-NLS-1$
+			OutputStream out = folder.getChild("sub").getChild("file").openOutputStream(EFS.NONE, null); //$NON-NLS-1$ //$NON-NLS-2$
+			out.close();
+			expected.add("folder" + i); //$NON-NLS-1$
+			expected.add("folder" + i + "/sub"); //$NON-NLS-1$ //$NON-NLS-2$
+			expected.add("folder" + i + "/sub/file"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+
+		Set<String> listed = new HashSet<String>();
+		for (IFileStore file : EFSUtils.getFiles(fs, true, true, null))
+		{
+			String path = EFSUtils.getRelativePath(fs, file).toPortableString();
+			IPath parent = new Path(path).removeLastSegments(1);
+			assertTrue("Listed before its parent: " + path, //$NON-NLS-1$
+					parent.isEmpty() || listed.contains(parent.toPortableString()));
+			assertTrue("Listed twice: " + path, listed.add(path)); //$NON-NLS-1$
+		}
+		assertEquals(expected, listed);
+	}
 }
@@ -0,0 +1,219 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.core.io.vfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class BaseConnectionFileManagerTest
+{
+
+	private static final long TIMEOUT = 10000;
+
+	@Test
+	public void testCachedInfoDoesNotWaitForConnection() throws Exception
+	{
+		final TestConnectionFileManager manager = new TestConnectionFileManager();
+		final IPath path = Path.fromPortableString("/a/b.txt");
+		assertTrue(manager.fetchInfo(path, EFS.NONE, new NullProgressMonitor()).exists());
+		assertEquals(1, manager.fetchCount.get());
+
+		final CountDownLatch locked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Thread holder = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				synchronized (manager.connectionLock)
+				{
+					locked.countDown();
+					try
+					{
+						release.await();
+					}
+					catch (InterruptedException e)
+					{
+						// let go of the lock
+					}
+				}
+			}
+		};
+		holder.start();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try
+		{
+			assertTrue(locked.await(TIMEOUT, TimeUnit.MILLISECONDS));
+			Future<IExtendedFileInfo> future = executor.submit(new Callable<IExtendedFileInfo>()
+			{
+				public IExtendedFileInfo call() throws Exception
+				{
+					return manager.fetchInfo(path, EFS.NONE, new NullProgressMonitor());
+				}
+			});
+			IExtendedFileInfo fileInfo = future.get(TIMEOUT, TimeUnit.MILLISECONDS);
+			assertEquals("b.txt", fileInfo.getName());
+			assertTrue(fileInfo.exists());
+			assertEquals(1, manager.fetchCount.get());
+		}
+		finally
+		{
+			release.countDown();
+			holder.join(TIMEOUT);
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Serves every path as an existing file, counting the fetches.
+	 */
+	private static class TestConnectionFileManager extends BaseConnectionFileManager
+	{
+		final AtomicInteger fetchCount = new AtomicInteger();
+
+		TestConnectionFileManager()
+		{
+			basePath = Path.ROOT;
+			setCaching(true);
+		}
+
+		public void connect(IProgressMonitor monitor) throws CoreException
+		{
+		}
+
+		public boolean isConnected()
+		{
+			return true;
+		}
+
+		public void disconnect(IProgressMonitor monitor) throws CoreException
+		{
+		}
+
+		public URI getCanonicalURI(IPath path)
+		{
+			return null;
+		}
+
+		@Override
+		protected void testConnection(boolean force)
+		{
+		}
+
+		@Override
+		protected boolean canUseTemporaryFile(IPath path, ExtendedFileInfo fileInfo, IProgressMonitor monitor)
+		{
+			return false;
+		}
+
+		@Override
+		protected void changeCurrentDir(IPath path)
+		{
+		}
+
+		@Override
+		protected ExtendedFileInfo fetchFile(IPath path, int options, IProgressMonitor monitor)
+		{
+			fetchCount.incrementAndGet();
+			ExtendedFileInfo fileInfo = new ExtendedFileInfo(path.lastSegment());
+			fileInfo.setExists(true);
+			return fileInfo;
+		}
+
+		@Override
+		protected ExtendedFileInfo[] fetchFiles(IPath path, int options, IProgressMonitor monitor)
+		{
+			return new ExtendedFileInfo[0];
+		}
+
+		@Override
+		protected String[] listDirectory(IPath path, IProgressMonitor monitor)
+		{
+			return EMPTY_STRING_ARRAY;
+		}
+
+		@Override
+		protected InputStream readFile(IPath path, IProgressMonitor monitor) throws FileNotFoundException
+		{
+			throw new FileNotFoundException(path.toPortableString());
+		}
+
+		@Override
+		protected OutputStream writeFile(IPath path, boolean useTemporary, long permissions,
+				IProgressMonitor monitor) throws FileNotFoundException
+		{
+			throw new FileNotFoundException(path.toPortableString());
+		}
+
+		@Override
+		protected void createFile(IPath path, IProgressMonitor monitor)
+		{
+		}
+
+		@Override
+		protected void createDirectory(IPath path, IProgressMonitor monitor)
+		{
+		}
+
+		@Override
+		protected void renameFile(IPath sourcePath, IPath destinationPath, IProgressMonitor monitor)
+		{
+		}
+
+		@Override
+		protected void renameDirectory(IPath sourcePath, IPath destinationPath, IProgressMonitor monitor)
+		{
+		}
+
+		@Override
+		protected void deleteFile(IPath path, IProgressMonitor monitor)
+		{
+		}
+
+		@Override
+		protected void deleteDirectory(IPath path, IProgressMonitor monitor)
+		{
+		}
+
+		@Override
+		protected void setModificationTime(IPath path, long modificationTime, IProgressMonitor monitor)
+		{
+		}
+
+		@Override
+		protected void changeFilePermissions(IPath path, long permissions, IProgressMonitor monitor)
+		{
+		}
+
+		@Override
+		protected void changeFileGroup(IPath path, String group, IProgressMonitor monitor)
+		{
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.core.io.vfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class ExpiringPathCacheTest
+{
+
+	private static final long LONG_TIMEOUT = 60000;
+
+	@Test
+	public void testPutAndGet() throws Exception
+	{
+		ExpiringPathCache<String> cache = new ExpiringPathCache<String>(LONG_TIMEOUT, 100);
+		cache.put(path("/a/b"), "b");
+		assertEquals("b", cache.get(path("/a/b")));
+		assertNull(cache.get(path("/a")));
+		cache.remove(path("/a/b"));
+		assertNull(cache.get(path("/a/b")));
+	}
+
+	@Test
+	public void testExpires() throws Exception
+	{
+		ExpiringPathCache<String> cache = new ExpiringPathCache<String>(10, 100);
+		cache.put(path("/a"), "a");
+		Thread.sleep(50);
+		assertNull(cache.get(path("/a")));
+	}
+
+	@Test
+	public void testRemoveTree() throws Exception
+	{
+		ExpiringPathCache<String> cache = new ExpiringPathCache<String>(LONG_TIMEOUT, 100);
+		cache.put(path("/a"), "a");
+		cache.put(path("/a/b"), "b");
+		cache.put(path("/a/b/c"), "c");
+		cache.put(path("/a/bc"), "bc");
+		cache.removeTree(path("/a/b/"));
+		assertEquals("a", cache.get(path("/a")));
+		assertNull(cache.get(path("/a/b")));
+		assertNull(cache.get(path("/a/b/c")));
+		assertEquals("bc", cache.get(path("/a/bc")));
+
+		// values put after the removal are kept
+		cache.put(path("/a/b/c"), "c");
+		assertEquals("c", cache.get(path("/a/b/c")));
+
+		cache.removeTree(Path.ROOT);
+		assertNull(cache.get(path("/a")));
+		assertNull(cache.get(path("/a/bc")));
+	}
+
+	@Test
+	public void testStalePutIsDropped() throws Exception
+	{
+		ExpiringPathCache<String> cache = new ExpiringPathCache<String>(LONG_TIMEOUT, 100);
+		long stamp = ExpiringPathCache.stamp();
+		cache.removeTree(path("/a"));
+		cache.put(path("/a/b"), "fetched before the removal", stamp);
+		assertNull(cache.get(path("/a/b")));
+
+		stamp = ExpiringPathCache.stamp();
+		cache.clear();
+		cache.put(path("/a/b"), "fetched before the clear", stamp);
+		assertNull(cache.get(path("/a/b")));
+	}
+
+	@Test
+	public void testStalePutIsDroppedAfterRemovalExpires() throws Exception
+	{
+		ExpiringPathCache<String> cache = new ExpiringPathCache<String>(100, 1);
+		long stamp = ExpiringPathCache.stamp();
+		cache.removeTree(path("/a"));
+		Thread.sleep(200);
+		// purges the expired removal
+		cache.removeTree(path("/b"));
+		cache.removeTree(path("/c"));
+		cache.put(path("/a/b"), "fetched before the removal", stamp);
+		assertNull(cache.get(path("/a/b")));
+
+		cache.put(path("/a/b"), "b");
+		assertEquals("b", cache.get(path("/a/b")));
+	}
+
+	@Test
+	public void testSizeIsBounded() throws Exception
+	{
+		ExpiringPathCache<String> cache = new ExpiringPathCache<String>(LONG_TIMEOUT, 100);
+		for (int i = 0; i < 1000; i++)
+		{
+			cache.put(path("/file" + i), Integer.toString(i));
+		}
+		assertTrue(cache.size() <= 100);
+		// the newest are kept
+		assertEquals("999", cache.get(path("/file999")));
+		assertNull(cache.get(path("/file0")));
+	}
+
+	@Test
+	public void testConcurrentAccess() throws Exception
+	{
+		final ExpiringPathCache<String> cache = new ExpiringPathCache<String>(LONG_TIMEOUT, 500);
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicInteger failures = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++)
+		{
+			final int id = t;
+			Thread thread = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						start.await();
+						for (int i = 0; i < 2000; i++)
+						{
+							IPath path = path("/dir" + (i % 10) + "/file" + id + '-' + i);
+							cache.put(path, path.lastSegment());
+							String value = cache.get(path);
+							if (value != null && !value.equals(path.lastSegment()))
+							{
+								failures.incrementAndGet();
+							}
+							if (i % 100 == 0)
+							{
+								cache.removeTree(path.removeLastSegments(1));
+							}
+						}
+					}
+					catch (Exception e)
+					{
+						failures.incrementAndGet();
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		start.countDown();
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+		assertEquals(0, failures.get());
+		assertTrue(cache.size() <= 500);
+	}
+
+	private static IPath path(String path)
+	{
+		return Path.fromPortableString(path);
+	}
+}
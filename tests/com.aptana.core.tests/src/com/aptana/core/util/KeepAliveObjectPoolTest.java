@@ -0,0 +1,250 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.core.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.junit.After;
+import org.junit.Test;
+
+public class KeepAliveObjectPoolTest
+{
+
+	private static final int RELEASE_TIME = 60000;
+
+	private TestPool pool;
+
+	@After
+	public void tearDown() throws Exception
+	{
+		if (pool != null)
+		{
+			pool.dispose();
+		}
+	}
+
+	@Test
+	public void testReusesCheckedInObjects() throws Exception
+	{
+		pool = new TestPool(2, 1000);
+		Object first = pool.checkOut();
+		pool.checkIn(first);
+		assertSame(first, pool.checkOut());
+		assertEquals(1, pool.getCreateCount());
+		assertEquals(1, pool.getInUseCount());
+		assertEquals(0, pool.getIdleCount());
+		pool.checkIn(first);
+		assertEquals(0, pool.getInUseCount());
+		assertEquals(1, pool.getIdleCount());
+	}
+
+	@Test
+	public void testCheckOutTimesOutAtMaxSize() throws Exception
+	{
+		pool = new TestPool(2, 100);
+		Object first = pool.checkOut();
+		Object second = pool.checkOut();
+		assertNotNull(first);
+		assertNotNull(second);
+		long start = System.currentTimeMillis();
+		assertNull(pool.checkOut());
+		assertTrue(System.currentTimeMillis() - start >= 90);
+		assertEquals(2, pool.getCreateCount());
+		assertEquals(1, pool.getWaitCount());
+
+		// checking in twice doesn't make room for a third
+		pool.checkIn(first);
+		pool.checkIn(first);
+		assertSame(first, pool.checkOut());
+		assertNull(pool.checkOut());
+		pool.checkIn(first);
+		pool.checkIn(second);
+	}
+
+	@Test
+	public void testWaitersAreServedInOrder() throws Exception
+	{
+		pool = new TestPool(1, 5000);
+		final Object only = pool.checkOut();
+		final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 3; i++)
+		{
+			final int id = i;
+			Thread thread = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					Object object = pool.checkOut();
+					order.add(id);
+					try
+					{
+						Thread.sleep(20);
+					}
+					catch (InterruptedException e)
+					{
+					}
+					pool.checkIn(object);
+				}
+			};
+			threads.add(thread);
+			thread.start();
+			// lets each thread get in line before the next one
+			while (pool.getWaitCount() <= i)
+			{
+				Thread.sleep(5);
+			}
+		}
+		pool.checkIn(only);
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+		assertEquals(CollectionsUtil.newList(0, 1, 2), order);
+		assertEquals(1, pool.getCreateCount());
+	}
+
+	@Test
+	public void testWaitLastsWhileObjectsAreCheckedIn() throws Exception
+	{
+		pool = new TestPool(1, 200);
+		final Object only = pool.checkOut();
+		final AtomicInteger checkedOut = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 3; i++)
+		{
+			Thread thread = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					// the last one waits for longer than the timeout, but objects keep being checked in meanwhile
+					Object object = pool.checkOut();
+					if (object == null)
+					{
+						return;
+					}
+					checkedOut.incrementAndGet();
+					try
+					{
+						Thread.sleep(150);
+					}
+					catch (InterruptedException e)
+					{
+					}
+					pool.checkIn(object);
+				}
+			};
+			threads.add(thread);
+			thread.start();
+			while (pool.getWaitCount() <= i)
+			{
+				Thread.sleep(5);
+			}
+		}
+		Thread.sleep(150);
+		pool.checkIn(only);
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+		assertEquals(3, checkedOut.get());
+	}
+
+	@Test
+	public void testCheckOutIsCanceled() throws Exception
+	{
+		pool = new TestPool(1, 5000);
+		Object only = pool.checkOut();
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		monitor.setCanceled(true);
+		try
+		{
+			pool.checkOut(monitor);
+			fail("Expected the check out to be canceled");
+		}
+		catch (OperationCanceledException e)
+		{
+			// expected
+		}
+		pool.checkIn(only);
+		assertSame(only, pool.checkOut());
+		pool.checkIn(only);
+	}
+
+	@Test
+	public void testFailedCreationFreesItsPlace() throws Exception
+	{
+		pool = new TestPool(1, 100);
+		pool.failCreation = true;
+		assertNull(pool.checkOut());
+		assertEquals(1, pool.getFailureCount());
+		pool.failCreation = false;
+		Object object = pool.checkOut();
+		assertNotNull(object);
+		pool.checkIn(object);
+	}
+
+	@Test
+	public void testDisposeExpiresIdleObjects() throws Exception
+	{
+		pool = new TestPool(2, 100);
+		Object first = pool.checkOut();
+		Object second = pool.checkOut();
+		pool.checkIn(first);
+		pool.checkIn(second);
+		pool.dispose();
+		assertEquals(2, pool.expired.get());
+		assertEquals(0, pool.getIdleCount());
+
+		// the pool can still be used
+		assertNotNull(pool.checkOut());
+		assertEquals(3, pool.getCreateCount());
+		pool = null;
+	}
+
+	private static class TestPool extends KeepAliveObjectPool<Object>
+	{
+
+		final AtomicInteger expired = new AtomicInteger();
+		volatile boolean failCreation;
+
+		TestPool(int maxSize, long checkOutTimeout)
+		{
+			super(RELEASE_TIME, maxSize, checkOutTimeout);
+		}
+
+		public Object create()
+		{
+			return failCreation ? null : new Object();
+		}
+
+		public boolean validate(Object o)
+		{
+			return true;
+		}
+
+		public void expire(Object o)
+		{
+			expired.incrementAndGet();
+		}
+	}
+}
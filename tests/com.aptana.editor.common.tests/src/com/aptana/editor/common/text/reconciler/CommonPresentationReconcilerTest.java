@@ -0,0 +1,155 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.editor.common.text.reconciler;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension3;
+import org.eclipse.jface.text.IDocumentPartitioner;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.TextPresentation;
+import org.eclipse.jface.text.TextViewer;
+import org.eclipse.jface.text.rules.FastPartitioner;
+import org.eclipse.jface.text.rules.IPredicateRule;
+import org.eclipse.jface.text.rules.RuleBasedPartitionScanner;
+import org.eclipse.jface.text.rules.SingleLineRule;
+import org.eclipse.jface.text.rules.Token;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aptana.editor.common.ICommonEditorSystemProperties;
+import com.aptana.editor.epl.tests.DisplayHelper;
+
+public class CommonPresentationReconcilerTest
+{
+
+	private static final int LINES = 5000;
+	private static final int TOP_LINE = 2500;
+
+	private Shell shell;
+	private TextViewer viewer;
+	private RecordingReconciler reconciler;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		System.setProperty(ICommonEditorSystemProperties.RECONCILER_ITERATION_PARTITION_LIMIT, "100");
+		System.setProperty(ICommonEditorSystemProperties.RECONCILER_BACKGROUND_DELAY, "500");
+		System.setProperty(ICommonEditorSystemProperties.RECONCILER_ITERATION_DELAY, "0");
+		System.setProperty(ICommonEditorSystemProperties.RECONCILER_MINIMAL_VISIBLE_LENGTH, "0");
+
+		shell = new Shell();
+		shell.setSize(400, 200);
+		viewer = new TextViewer(shell, SWT.V_SCROLL);
+		viewer.getTextWidget().setSize(400, 200);
+		shell.open();
+
+		reconciler = new RecordingReconciler();
+		reconciler.setDocumentPartitioning(IDocumentExtension3.DEFAULT_PARTITIONING);
+		reconciler.install(viewer);
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		try
+		{
+			reconciler.uninstall();
+			shell.dispose();
+		}
+		finally
+		{
+			reconciler = null;
+			viewer = null;
+			shell = null;
+			System.clearProperty(ICommonEditorSystemProperties.RECONCILER_ITERATION_PARTITION_LIMIT);
+			System.clearProperty(ICommonEditorSystemProperties.RECONCILER_BACKGROUND_DELAY);
+			System.clearProperty(ICommonEditorSystemProperties.RECONCILER_ITERATION_DELAY);
+			System.clearProperty(ICommonEditorSystemProperties.RECONCILER_MINIMAL_VISIBLE_LENGTH);
+		}
+	}
+
+	@Test
+	public void testColorsViewportFirstInBackground() throws Exception
+	{
+		IDocument document = createDocument();
+		viewer.setDocument(document);
+		// scroll before the background job starts
+		viewer.setTopIndex(TOP_LINE);
+		int topOffset = viewer.getTopIndexStartOffset();
+		int bottomOffset = viewer.getBottomIndexEndOffset();
+
+		assertTrue("Background reconciling didn't start", new DisplayHelper()
+		{
+			@Override
+			protected boolean condition()
+			{
+				return !reconciler.getBackgroundDamages().isEmpty();
+			}
+		}.waitForCondition(shell.getDisplay(), 10000));
+
+		IRegion first = reconciler.getBackgroundDamages().get(0);
+		assertTrue("First region colored in the background is out of the viewport: " + first,
+				first.getOffset() < bottomOffset && first.getOffset() + first.getLength() > topOffset);
+	}
+
+	private IDocument createDocument()
+	{
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < LINES; i++)
+		{
+			builder.append("<a>text\n");
+		}
+		IDocument document = new Document(builder.toString());
+		IDocumentPartitioner partitioner = new FastPartitioner(createPartitionScanner(), new String[] { "tag" });
+		partitioner.connect(document);
+		document.setDocumentPartitioner(partitioner);
+		return document;
+	}
+
+	private RuleBasedPartitionScanner createPartitionScanner()
+	{
+		RuleBasedPartitionScanner scanner = new RuleBasedPartitionScanner();
+		scanner.setPredicateRules(new IPredicateRule[] { new SingleLineRule("<", ">", new Token("tag")) });
+		return scanner;
+	}
+
+	/**
+	 * Records the regions it computes presentations for off the UI thread.
+	 */
+	private static class RecordingReconciler extends CommonPresentationReconciler
+	{
+		private final List<IRegion> backgroundDamages = Collections.synchronizedList(new ArrayList<IRegion>());
+
+		@Override
+		protected TextPresentation createPresentation(IRegion damage, IDocument document, IProgressMonitor monitor)
+		{
+			if (Display.getCurrent() == null)
+			{
+				backgroundDamages.add(damage);
+			}
+			return super.createPresentation(damage, document, monitor);
+		}
+
+		List<IRegion> getBackgroundDamages()
+		{
+			return new ArrayList<IRegion>(backgroundDamages);
+		}
+	}
+}
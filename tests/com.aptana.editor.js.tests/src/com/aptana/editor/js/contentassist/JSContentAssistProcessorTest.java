@@ -1,6 +1,8 @@
 package com.aptana.editor.js.contentassist;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.net.URI;
@@ -9,6 +11,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.core.filesystem.IFileStore;
 import org.eclipse.core.resources.IProject;
@@ -19,6 +23,9 @@ import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.contentassist.ICompletionProposal;
 import org.jmock.Expectations;
 import org.jmock.Mockery;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.jmock.lib.concurrent.Synchroniser;
 import org.jmock.lib.legacy.ClassImposteriser;
 import org.junit.After;
 import org.junit.Before;
@@ -28,6 +35,8 @@ import com.aptana.buildpath.core.BuildPathManager;
 import com.aptana.buildpath.core.IBuildPathEntry;
 import com.aptana.core.util.CollectionsUtil;
 import com.aptana.editor.common.EditorContentAssistBasedTests;
+import com.aptana.editor.common.contentassist.CommonCompletionProposal;
+import com.aptana.editor.common.contentassist.ICompletionProposalCollector;
 import com.aptana.editor.common.tests.TextViewer;
 import com.aptana.editor.js.tests.JSEditorBasedTestCase;
 import com.aptana.index.core.FileStoreBuildContext;
@@ -37,11 +46,15 @@ import com.aptana.js.core.index.JSCAFileIndexingParticipant;
 import com.aptana.js.core.index.JSIndexQueryHelper;
 import com.aptana.js.core.model.FunctionElement;
 import com.aptana.js.core.model.ParameterElement;
+import com.aptana.js.core.model.PropertyElement;
+import com.aptana.parsing.lexer.IRange;
 
 public class JSContentAssistProcessorTest extends JSEditorBasedTestCase
 {
 
 	protected boolean LESS_THAN_3_4_SDK = false;
+	protected boolean ASYNC = false;
+	protected long ASYNC_DEADLINE = 0;
 	private JSContentAssistProcessor processor;
 	private IDocument document;
 	private Mockery context;
@@ -54,6 +67,7 @@ public class JSContentAssistProcessorTest extends JSEditorBasedTestCase
 		{
 			{
 				setImposteriser(ClassImposteriser.INSTANCE);
+				setThreadingPolicy(new Synchroniser());
 			}
 		};
 		helper = context.mock(JSIndexQueryHelper.class);
@@ -83,6 +97,18 @@ public class JSContentAssistProcessorTest extends JSEditorBasedTestCase
 			{
 				return LESS_THAN_3_4_SDK;
 			}
+
+			@Override
+			protected boolean isAsync()
+			{
+				return ASYNC;
+			}
+
+			@Override
+			protected long getAsyncDeadline()
+			{
+				return ASYNC_DEADLINE;
+			}
 		};
 	}
 
@@ -121,7 +147,7 @@ public class JSContentAssistProcessorTest extends JSEditorBasedTestCase
 				oneOf(helper).findFunctionInHierarchy(JSTypeConstants.WINDOW_TYPE, "foo");
 				will(returnValue(function));
 
-				allowing(helper).getGlobals("something.js");
+				allowing(helper).getGlobalsStartingWith(with(equal("something.js")), with(any(String.class)));
 				will(returnValue(Collections.emptyList()));
 			}
 		});
@@ -131,6 +157,146 @@ public class JSContentAssistProcessorTest extends JSEditorBasedTestCase
 		EditorContentAssistBasedTests.assertContains(proposals, "BAR");
 	}
 
+	@Test
+	public void testReportsGlobalsComputedAfterTheDeadline() throws Exception
+	{
+		ASYNC = true;
+		ASYNC_DEADLINE = 0;
+		document = new Document("zz");
+		final CountDownLatch lookup = new CountDownLatch(1);
+		final PropertyElement global = createGlobal("zzqAlpha");
+
+		context.checking(new Expectations()
+		{
+			{
+				allowing(helper).getGlobalsStartingWith(with(equal("something.js")), with(any(String.class)));
+				will(new CustomAction("wait for the test")
+				{
+					public Object invoke(Invocation invocation) throws Throwable
+					{
+						lookup.await(10, TimeUnit.SECONDS);
+						return CollectionsUtil.newList(global);
+					}
+				});
+			}
+		});
+
+		RecordingCollector collector = new RecordingCollector();
+		ICompletionProposal[] proposals = processor.computeCompletionProposals(new TextViewer(document), 2, '\t',
+				false, collector);
+		assertDoesntContain(proposals, "zzqAlpha");
+		assertFalse("Collector was done while globals were still being looked up", collector.isDone());
+
+		lookup.countDown();
+		assertTrue("Background proposals weren't done in time", collector.waitUntilDone(10000));
+		assertContains(collector.getProposals(), "zzqAlpha", "function");
+	}
+
+	@Test
+	public void testLateProposalsKeepTheirInvocationsState() throws Exception
+	{
+		ASYNC = true;
+		ASYNC_DEADLINE = 0;
+		document = new Document("zz");
+		final CountDownLatch lookup = new CountDownLatch(1);
+		final String[] prefix = new String[1];
+		final PropertyElement global = createGlobal("zzqAlpha");
+
+		context.checking(new Expectations()
+		{
+			{
+				allowing(helper).getGlobalsStartingWith(with(equal("something.js")), with(any(String.class)));
+				will(new CustomAction("wait for the test")
+				{
+					public Object invoke(Invocation invocation) throws Throwable
+					{
+						lookup.await(10, TimeUnit.SECONDS);
+						prefix[0] = (String) invocation.getParameter(1);
+						return CollectionsUtil.newList(global);
+					}
+				});
+			}
+		});
+
+		RecordingCollector collector = new RecordingCollector();
+		processor.computeCompletionProposals(new TextViewer(document), 2, '\t', false, collector);
+		IRange range = processor.getReplaceRange();
+		assertNotNull(range);
+
+		// the processor moves on to another location while the globals are looked up
+		document = new Document("    qq");
+		processor.getLocationType(document, 6);
+		assertEquals(4, processor.getReplaceRange().getStartingOffset());
+
+		lookup.countDown();
+		assertTrue("Background proposals weren't done in time", collector.waitUntilDone(10000));
+		assertEquals("zz", prefix[0]);
+		CommonCompletionProposal proposal = null;
+		for (ICompletionProposal candidate : collector.getProposals())
+		{
+			if ("zzqAlpha".equals(candidate.getDisplayString()))
+			{
+				proposal = (CommonCompletionProposal) candidate;
+			}
+		}
+		assertNotNull(proposal);
+		assertEquals(range.getStartingOffset(), proposal.getReplaceRange().getStartingOffset());
+		assertEquals(range.getLength(), proposal.getReplaceRange().getLength());
+	}
+
+	@Test
+	public void testReturnsAllProposalsComputedBeforeTheDeadline() throws Exception
+	{
+		ASYNC = true;
+		ASYNC_DEADLINE = 10000;
+		document = new Document("zz");
+		final PropertyElement global = createGlobal("zzqAlpha");
+
+		context.checking(new Expectations()
+		{
+			{
+				allowing(helper).getGlobalsStartingWith(with(equal("something.js")), with(any(String.class)));
+				will(returnValue(CollectionsUtil.newList(global)));
+			}
+		});
+
+		RecordingCollector collector = new RecordingCollector();
+		ICompletionProposal[] proposals = processor.computeCompletionProposals(new TextViewer(document), 2, '\t',
+				false, collector);
+		assertContains(proposals, "zzqAlpha", "function");
+		assertTrue("Collector wasn't done on return", collector.isDone());
+		assertTrue("Proposals were reported after the return", collector.getProposals() == null);
+	}
+
+	@Test
+	public void testSynchronousModeIsDoneOnReturn() throws Exception
+	{
+		document = new Document("zz");
+		final PropertyElement global = createGlobal("zzqAlpha");
+
+		context.checking(new Expectations()
+		{
+			{
+				allowing(helper).getGlobalsStartingWith(with(equal("something.js")), with(any(String.class)));
+				will(returnValue(CollectionsUtil.newList(global)));
+			}
+		});
+
+		RecordingCollector collector = new RecordingCollector();
+		ICompletionProposal[] proposals = processor.computeCompletionProposals(new TextViewer(document), 2, '\t',
+				false, collector);
+		assertContains(proposals, "zzqAlpha", "function");
+		assertTrue("Collector wasn't done on return", collector.isDone());
+	}
+
+	private PropertyElement createGlobal(String name)
+	{
+		PropertyElement global = new PropertyElement();
+		global.setName(name);
+		global.setOwningType(JSTypeConstants.WINDOW_TYPE);
+		return global;
+	}
+
 	private Index indexResource(String resource) throws CoreException
 	{
 		IFileStore fileToIndex = getFileStore(resource);
@@ -238,4 +404,46 @@ public class JSContentAssistProcessorTest extends JSEditorBasedTestCase
 		assertContains(actualProposals, "createButton", "backgroundColor", "KEYBOARD_ASCII", "addEventListener",
 				"getCurrentTab");
 	}
+
+	private static class RecordingCollector implements ICompletionProposalCollector
+	{
+		private ICompletionProposal[] proposals;
+		private boolean done;
+
+		public synchronized void setProposals(ICompletionProposal[] proposals)
+		{
+			this.proposals = proposals;
+		}
+
+		public synchronized void done()
+		{
+			done = true;
+			notifyAll();
+		}
+
+		public boolean isCancelled()
+		{
+			return false;
+		}
+
+		synchronized ICompletionProposal[] getProposals()
+		{
+			return proposals;
+		}
+
+		synchronized boolean isDone()
+		{
+			return done;
+		}
+
+		synchronized boolean waitUntilDone(long timeout) throws InterruptedException
+		{
+			long end = System.currentTimeMillis() + timeout;
+			while (!done && System.currentTimeMillis() < end)
+			{
+				wait(Math.max(1, end - System.currentTimeMillis()));
+			}
+			return done;
+		}
+	}
 }
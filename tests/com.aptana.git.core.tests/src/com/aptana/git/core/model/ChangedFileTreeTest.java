@@ -0,0 +1,98 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.Path;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aptana.git.core.model.ChangedFile.Status;
+
+public class ChangedFileTreeTest
+{
+
+	private List<ChangedFile> changedFiles;
+	private ChangedFileTree tree;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		changedFiles = new ArrayList<ChangedFile>();
+		changedFiles.add(changedFile("src/b/two.js"));
+		changedFiles.add(changedFile("README"));
+		changedFiles.add(changedFile("src/a/one.js"));
+		changedFiles.add(changedFile("src/a/deep/three.js"));
+		tree = new ChangedFileTree(changedFiles);
+	}
+
+	private ChangedFile changedFile(String path)
+	{
+		return new ChangedFile(null, Path.fromPortableString(path), Status.MODIFIED, null, null, false, true);
+	}
+
+	@Test
+	public void testGet() throws Exception
+	{
+		assertSame(changedFiles.get(1), tree.get(Path.fromPortableString("README")));
+		assertSame(changedFiles.get(3), tree.get(Path.fromPortableString("src/a/deep/three.js")));
+		assertNull(tree.get(Path.fromPortableString("src/a")));
+		assertNull(tree.get(Path.fromPortableString("src/a/two.js")));
+		assertNull(tree.get(Path.EMPTY));
+	}
+
+	@Test
+	public void testHasChanges() throws Exception
+	{
+		assertTrue(tree.hasChanges(Path.EMPTY));
+		assertTrue(tree.hasChanges(Path.fromPortableString("src")));
+		assertTrue(tree.hasChanges(Path.fromPortableString("src/a/deep")));
+		assertTrue(tree.hasChanges(Path.fromPortableString("src/b/two.js")));
+		assertFalse(tree.hasChanges(Path.fromPortableString("src/c")));
+		assertFalse(tree.hasChanges(Path.fromPortableString("src/b/two.js/child")));
+		assertFalse(tree.hasChanges(Path.fromPortableString("READ")));
+	}
+
+	@Test
+	public void testGetChangedFilesIsOrderedByPath() throws Exception
+	{
+		List<ChangedFile> underSrc = tree.getChangedFiles(Path.fromPortableString("src"));
+		assertEquals(3, underSrc.size());
+		assertSame(changedFiles.get(3), underSrc.get(0));
+		assertSame(changedFiles.get(2), underSrc.get(1));
+		assertSame(changedFiles.get(0), underSrc.get(2));
+
+		assertEquals(4, tree.getChangedFiles(Path.EMPTY).size());
+		assertEquals(1, tree.getChangedFiles(Path.fromPortableString("src/b/two.js")).size());
+		assertTrue(tree.getChangedFiles(Path.fromPortableString("lib")).isEmpty());
+	}
+
+	@Test
+	public void testEmpty() throws Exception
+	{
+		ChangedFileTree empty = new ChangedFileTree(new ArrayList<ChangedFile>());
+		assertTrue(empty.isEmpty());
+		assertFalse(empty.hasChanges(Path.EMPTY));
+		assertTrue(empty.getChangedFiles(Path.EMPTY).isEmpty());
+	}
+
+	@Test
+	public void testIsFor() throws Exception
+	{
+		assertTrue(tree.isFor(changedFiles));
+		assertFalse(tree.isFor(new ArrayList<ChangedFile>(changedFiles)));
+	}
+}
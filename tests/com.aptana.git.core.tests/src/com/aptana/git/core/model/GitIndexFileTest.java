@@ -0,0 +1,134 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.core.runtime.IStatus;
+import org.junit.Test;
+
+import com.aptana.core.util.CollectionsUtil;
+import com.aptana.core.util.StringUtil;
+
+@SuppressWarnings("nls")
+public class GitIndexFileTest extends GitTestCase
+{
+
+	@Test
+	public void testNoIndex() throws Exception
+	{
+		GitRepository repo = createRepo();
+		GitIndexFile indexFile = GitIndexFile.read(repo.gitFile(GitRepository.INDEX));
+		assertTrue(indexFile.getEntries().isEmpty());
+		assertNull(indexFile.getChecksum());
+	}
+
+	@Test
+	public void testEntriesMatchLsFiles() throws Exception
+	{
+		GitRepository repo = createRepo();
+		write(repo, "file.txt", "Hello World!\n");
+		write(repo, "dir/nested.txt", "Nested\n");
+		write(repo, "dir/sub/deeper.txt", "Deeper\n");
+		execute(repo, "add", ".");
+
+		for (int version = 2; version <= 4; version++)
+		{
+			execute(repo, "update-index", "--index-version", String.valueOf(version));
+			assertEquals(lsFiles(repo), entries(repo));
+		}
+	}
+
+	@Test
+	public void testStatDirtyPaths() throws Exception
+	{
+		GitRepository repo = createRepo();
+		File file = write(repo, "file.txt", "Hello World!\n");
+		File nested = write(repo, "dir/nested.txt", "Nested\n");
+		// Make sure the files are older than the index, so they aren't racily clean
+		long past = System.currentTimeMillis() - 10000;
+		file.setLastModified(past);
+		nested.setLastModified(past);
+		execute(repo, "add", ".");
+
+		File workingDirectory = repo.workingDirectory().toFile();
+		GitIndexFile indexFile = GitIndexFile.read(repo.gitFile(GitRepository.INDEX));
+		assertTrue(indexFile.getStatDirtyPaths(workingDirectory, Collections.<String> emptySet()).isEmpty());
+
+		write(repo, "file.txt", "Goodbye!\n");
+		assertTrue(nested.delete());
+		assertEquals(CollectionsUtil.newList("dir/nested.txt", "file.txt"),
+				indexFile.getStatDirtyPaths(workingDirectory, Collections.<String> emptySet()));
+
+		// Limited to a file or directory
+		assertEquals(CollectionsUtil.newList("file.txt"),
+				indexFile.getStatDirtyPaths(workingDirectory, CollectionsUtil.newSet("file.txt")));
+		assertEquals(CollectionsUtil.newList("dir/nested.txt"),
+				indexFile.getStatDirtyPaths(workingDirectory, CollectionsUtil.newSet("dir")));
+		assertTrue(indexFile.getStatDirtyPaths(workingDirectory, CollectionsUtil.newSet("other")).isEmpty());
+	}
+
+	@Test
+	public void testRefreshUsesIndexFile() throws Exception
+	{
+		GitRepository repo = createRepo();
+		GitIndex index = repo.index();
+		File file = write(repo, "file.txt", "Hello World!\n");
+		file.setLastModified(System.currentTimeMillis() - 10000);
+		assertRefresh(index);
+		assertStageFiles(index, index.changedFiles());
+		assertCommit(index, "Initial commit");
+
+		// Same size, but modified later
+		write(repo, "file.txt", "Hello Earth!\n");
+		assertRefresh(index);
+		assertEquals(1, index.changedFiles().size());
+		assertModifiedUnstagedFile(index.changedFiles().get(0));
+	}
+
+	private List<String> entries(GitRepository repo) throws Exception
+	{
+		List<String> entries = new ArrayList<String>();
+		for (GitIndexFile.Entry entry : GitIndexFile.read(repo.gitFile(GitRepository.INDEX)).getEntries())
+		{
+			entries.add(Integer.toOctalString(entry.getMode()) + ' ' + entry.getSHA() + ' ' + entry.getStage() + '\t'
+					+ entry.getPath());
+		}
+		return entries;
+	}
+
+	private List<String> lsFiles(GitRepository repo)
+	{
+		return StringUtil.tokenize(execute(repo, "ls-files", "-s"), "\n");
+	}
+
+	private File write(GitRepository repo, String path, String contents) throws Exception
+	{
+		File file = repo.workingDirectory().append(path).toFile();
+		file.getParentFile().mkdirs();
+		FileWriter writer = new FileWriter(file);
+		writer.write(contents);
+		writer.close();
+		return file;
+	}
+
+	private String execute(GitRepository repo, String... args)
+	{
+		IStatus status = repo.execute(GitRepository.ReadWrite.WRITE, args);
+		assertTrue(status.getMessage(), status.isOK());
+		return status.getMessage().trim();
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aptana.core.util.CollectionsUtil;
+import com.aptana.git.core.model.GitIndexRefreshPlanner.Plan;
+import com.aptana.git.core.model.GitIndexRefreshPlanner.Strategy;
+
+@SuppressWarnings("nls")
+public class GitIndexRefreshPlannerTest
+{
+
+	private GitIndexRefreshPlanner planner;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		planner = new GitIndexRefreshPlanner();
+	}
+
+	@Test
+	public void testNoPathsIsFullRefresh() throws Exception
+	{
+		assertEquals(Strategy.FULL, planner.plan(Collections.<IPath> emptyList()).getStrategy());
+		assertEquals(Strategy.FULL, planner.plan(paths("a.txt", "")).getStrategy());
+	}
+
+	@Test
+	public void testPathsInsideOthersAreDropped() throws Exception
+	{
+		Plan plan = planner.plan(paths("dir/sub/file.txt", "dir/b c", "dir", "dir2/file.txt", "dir/sub"));
+		assertEquals(Strategy.PATHS, plan.getStrategy());
+		assertEquals(paths("dir", "dir2/file.txt"), plan.getPaths());
+	}
+
+	@Test
+	public void testManyPathsCollapseToDirectories() throws Exception
+	{
+		List<IPath> requested = new ArrayList<IPath>();
+		for (int i = 0; i < 500; i++)
+		{
+			requested.add(Path.fromPortableString("node_modules/module" + (i % 50) + "/file" + i + ".js"));
+		}
+		requested.add(Path.fromPortableString("src/app.js"));
+		requested.add(Path.fromPortableString("README"));
+
+		Plan plan = planner.plan(requested);
+		assertEquals(Strategy.DIRECTORIES, plan.getStrategy());
+		assertEquals(52, plan.getPaths().size());
+		assertTrue(plan.getPaths().contains(Path.fromPortableString("node_modules/module7")));
+		assertTrue(plan.getPaths().contains(Path.fromPortableString("src")));
+		assertTrue(plan.getPaths().contains(Path.fromPortableString("README")));
+
+		// More directories than we pass git move up a level
+		requested.clear();
+		for (int i = 0; i < 500; i++)
+		{
+			requested.add(Path.fromPortableString("node_modules/module" + i + "/lib/file.js"));
+		}
+		plan = planner.plan(requested);
+		assertEquals(Strategy.DIRECTORIES, plan.getStrategy());
+		assertEquals(paths("node_modules"), plan.getPaths());
+
+		// Unless that means going up to the root
+		requested.clear();
+		for (int i = 0; i < 500; i++)
+		{
+			requested.add(Path.fromPortableString("file" + i + ".js"));
+		}
+		assertEquals(Strategy.FULL, planner.plan(requested).getStrategy());
+	}
+
+	@Test
+	public void testPicksCheapestMeasuredStrategy() throws Exception
+	{
+		List<IPath> ten = new ArrayList<IPath>();
+		for (int i = 0; i < 10; i++)
+		{
+			ten.add(Path.fromPortableString("dir" + i + "/file.txt"));
+		}
+		// Nothing timed yet, so try the narrowest
+		Plan plan = planner.plan(ten);
+		assertEquals(Strategy.PATHS, plan.getStrategy());
+
+		// Path refreshes get slower the more paths we pass, full refreshes are cheap here
+		planner.record(planner.plan(paths("a")), 20);
+		planner.record(planner.plan(paths("a", "b", "c", "d", "e")), 60);
+		planner.record(planner.plan(Collections.<IPath> emptyList()), 50);
+		assertEquals(20, planner.estimate(Strategy.PATHS, 1), 1);
+		assertEquals(60, planner.estimate(Strategy.PATHS, 5), 1);
+		assertEquals(50, planner.estimate(Strategy.FULL, 0), 1);
+
+		assertEquals(Strategy.PATHS, planner.plan(paths("a", "b")).getStrategy());
+		assertEquals(Strategy.FULL, planner.plan(ten).getStrategy());
+	}
+
+	private List<IPath> paths(String... paths)
+	{
+		List<IPath> result = new ArrayList<IPath>(paths.length);
+		for (String path : CollectionsUtil.newList(paths))
+		{
+			result.add(Path.fromPortableString(path));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.core.runtime.IStatus;
+import org.junit.Test;
+
+import com.aptana.core.util.StringUtil;
+
+@SuppressWarnings("nls")
+public class GitRefReaderTest extends GitTestCase
+{
+
+	@Test
+	public void testReadRefs() throws Exception
+	{
+		GitRepository repo = createRepoWithCommit();
+		execute(repo, "tag", "-a", "-m", "A tag", "v1.0");
+		execute(repo, "tag", "lightweight");
+		execute(repo, "branch", "feature/one");
+
+		GitRefReader reader = new GitRefReader(repo.gitFile(""));
+		assertEquals(forEachRef(repo), reader.readRefs());
+		assertEquals(4, reader.readRefs().size());
+
+		// Once packed, the refs are read from packed-refs
+		execute(repo, "pack-refs", "--all");
+		assertTrue(repo.gitFile("packed-refs").isFile());
+		assertEquals(forEachRef(repo), reader.readRefs());
+
+		// and a loose ref takes precedence over the packed one
+		execute(repo, "tag", "-f", "lightweight", "HEAD^{tree}");
+		assertEquals(forEachRef(repo), reader.readRefs());
+	}
+
+	@Test
+	public void testPeeledRefs() throws Exception
+	{
+		GitRepository repo = createRepoWithCommit();
+		execute(repo, "tag", "-a", "-m", "A tag", "v1.0");
+		execute(repo, "tag", "lightweight");
+		String commit = execute(repo, "rev-parse", "HEAD");
+		String tag = execute(repo, "rev-parse", "v1.0");
+		assertFalse(commit.equals(tag));
+
+		// Loose refs have to be peeled by the caller
+		GitRefReader reader = new GitRefReader(repo.gitFile(""));
+		Map<String, String> peeled = new HashMap<String, String>();
+		assertEquals(tag, reader.readRefs(peeled).get("refs/tags/v1.0"));
+		assertTrue(peeled.isEmpty());
+
+		// packed-refs records what the annotated tag points at
+		execute(repo, "pack-refs", "--all");
+		Map<String, String> refs = reader.readRefs(peeled);
+		assertEquals(tag, refs.get("refs/tags/v1.0"));
+		assertEquals(commit, peeled.get("refs/tags/v1.0"));
+		assertEquals(commit, peeled.get("refs/tags/lightweight"));
+
+		// but not once a loose ref overrides it
+		execute(repo, "tag", "-f", "-a", "-m", "Moved", "v1.0", "HEAD");
+		peeled.clear();
+		assertFalse(tag.equals(reader.readRefs(peeled).get("refs/tags/v1.0")));
+		assertFalse(peeled.containsKey("refs/tags/v1.0"));
+	}
+
+	@Test
+	public void testAnnotatedTagLabelsCommit() throws Exception
+	{
+		GitRepository repo = createRepoWithCommit();
+		execute(repo, "tag", "-a", "-m", "A tag", "v1.0");
+		String commit = execute(repo, "rev-parse", "HEAD");
+
+		repo.hasChanged();
+		repo.lazyReload();
+		assertTrue(refNames(new GitCommit(repo, commit)).contains("refs/tags/v1.0"));
+
+		// and the same once packed
+		execute(repo, "pack-refs", "--all");
+		repo.hasChanged();
+		repo.lazyReload();
+		assertTrue(refNames(new GitCommit(repo, commit)).contains("refs/tags/v1.0"));
+	}
+
+	@Test
+	public void testHEAD() throws Exception
+	{
+		GitRepository repo = createRepoWithCommit();
+		GitRefReader reader = new GitRefReader(repo.gitFile(""));
+
+		String branch = GitRef.REFS_HEADS + repo.currentBranch();
+		assertEquals(branch, reader.readSymbolicRef(GitRepository.HEAD));
+		String sha = execute(repo, "rev-parse", "HEAD");
+		assertEquals(sha, reader.resolve(GitRepository.HEAD));
+		assertEquals(sha, reader.resolve(branch));
+		assertEquals(sha, repo.toSHA(GitRef.refFromString(branch)));
+
+		// still resolves once the branch is packed
+		execute(repo, "pack-refs", "--all");
+		assertEquals(sha, reader.resolve(GitRepository.HEAD));
+
+		// a detached HEAD isn't a symbolic ref
+		execute(repo, "checkout", "-q", "--detach");
+		assertNull(reader.readSymbolicRef(GitRepository.HEAD));
+		assertEquals(sha, reader.resolve(GitRepository.HEAD));
+		assertNull(reader.resolve(GitRef.REFS_HEADS + "missing"));
+	}
+
+	private GitRepository createRepoWithCommit() throws Exception
+	{
+		GitRepository repo = createRepo();
+		GitIndex index = repo.index();
+		FileWriter writer = new FileWriter(repo.workingDirectory().append("file.txt").toFile());
+		writer.write("Hello World!\n");
+		writer.close();
+		assertRefresh(index);
+		assertStageFiles(index, index.changedFiles());
+		assertCommit(index, "Initial commit");
+		return repo;
+	}
+
+	private List<String> refNames(GitCommit commit)
+	{
+		List<String> names = new ArrayList<String>();
+		Collection<GitRef> refs = commit.getRefs();
+		if (refs != null)
+		{
+			for (GitRef ref : refs)
+			{
+				names.add(ref.ref());
+			}
+		}
+		return names;
+	}
+
+	private Map<String, String> forEachRef(GitRepository repo)
+	{
+		Map<String, String> refs = new TreeMap<String, String>();
+		String output = execute(repo, "for-each-ref", "--format=%(refname) %(objectname)", "refs");
+		for (String line : StringUtil.tokenize(output, "\n"))
+		{
+			String[] parts = line.split(" ");
+			refs.put(parts[0], parts[1]);
+		}
+		return refs;
+	}
+
+	private String execute(GitRepository repo, String... args)
+	{
+		IStatus status = repo.execute(GitRepository.ReadWrite.WRITE, args);
+		assertTrue(status.getMessage(), status.isOK());
+		return status.getMessage().trim();
+	}
+}
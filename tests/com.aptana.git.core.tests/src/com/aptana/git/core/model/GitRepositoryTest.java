@@ -130,6 +130,58 @@ public class GitRepositoryTest extends GitTestCase
 		assertCommit(index, "Initial commit");
 	}
 
+	@Test
+	public void testReadObject() throws Exception
+	{
+		GitRepository repo = createRepo();
+		GitIndex index = repo.index();
+
+		FileWriter writer = new FileWriter(fileToAdd());
+		writer.write("Hello World!\n");
+		writer.close();
+		assertRefresh();
+		assertStageFiles(index, index.changedFiles());
+		assertCommit(index, "Initial commit");
+
+		IStatus status = repo.readObject("HEAD:file.txt");
+		assertTrue(status.getMessage(), status.isOK());
+		assertEquals("Hello World!\n", status.getMessage());
+		assertFalse(repo.readObject("HEAD:missing.txt").isOK());
+
+		// Staging goes through the repo, so we should see the new contents in the index rather than what the running
+		// cat-file process read before
+		writer = new FileWriter(fileToAdd());
+		writer.write("Goodbye!\n");
+		writer.close();
+		assertRefresh();
+		assertStageFiles(index, index.changedFiles());
+
+		status = repo.readObject(":0:file.txt");
+		assertTrue(status.getMessage(), status.isOK());
+		assertEquals("Goodbye!\n", status.getMessage());
+		assertEquals("Hello World!\n", repo.readObject("HEAD:file.txt").getMessage());
+	}
+
+	@Test
+	public void testRevParse() throws Exception
+	{
+		GitRepository repo = createRepo();
+		GitIndex index = repo.index();
+
+		FileWriter writer = new FileWriter(fileToAdd());
+		writer.write("Hello World!");
+		writer.close();
+		assertRefresh();
+		assertStageFiles(index, index.changedFiles());
+		assertCommit(index, "Initial commit");
+
+		IStatus status = repo.revParse(repo.currentBranch());
+		assertTrue(status.getMessage(), status.isOK());
+		assertEquals(40, status.getMessage().length());
+		assertEquals(status.getMessage(), repo.revParse(GitRepository.HEAD).getMessage());
+		assertFalse(repo.revParse("no_such_branch").isOK());
+	}
+
 	@Test
 	public void testCommitMessageWithDoubleQuotes() throws Throwable
 	{
@@ -231,6 +283,111 @@ public class GitRepositoryTest extends GitTestCase
 		}
 	}
 
+	@Test
+	public void testWalkRevisionListInPages() throws Exception
+	{
+		GitRepository repo = createRepo();
+		for (int i = 0; i < 5; i++)
+		{
+			IStatus status = repo.execute(GitRepository.ReadWrite.WRITE, "commit", "--allow-empty", "-m",
+					"Commit " + i);
+			assertTrue(status.getMessage(), status.isOK());
+		}
+
+		GitRevList list = new GitRevList(repo);
+		assertTrue(list.walkRevisionListWithSpecifier(null, new NullProgressMonitor()).isOK());
+		List<GitCommit> all = list.getCommits();
+		assertEquals(5, all.size());
+		assertEquals("Commit 4", all.get(0).getSubject());
+
+		// Skip the newest, take the next 3, two at a time
+		final List<List<GitCommit>> pages = new ArrayList<List<GitCommit>>();
+		IGitCommitConsumer consumer = new IGitCommitConsumer()
+		{
+			public boolean commitsRead(List<GitCommit> commits)
+			{
+				pages.add(commits);
+				return true;
+			}
+		};
+		assertTrue(list.walkRevisionListWithSpecifier(null, 1, 3, 2, consumer, new NullProgressMonitor()).isOK());
+		assertEquals(2, pages.size());
+		assertEquals(2, pages.get(0).size());
+		assertEquals(1, pages.get(1).size());
+		assertEquals(all.get(1).sha(), pages.get(0).get(0).sha());
+		assertEquals(all.get(3).sha(), pages.get(1).get(0).sha());
+		// Walking in pages doesn't touch the commits collected before
+		assertEquals(5, list.getCommits().size());
+
+		// The consumer can stop the walk
+		pages.clear();
+		consumer = new IGitCommitConsumer()
+		{
+			public boolean commitsRead(List<GitCommit> commits)
+			{
+				pages.add(commits);
+				return false;
+			}
+		};
+		assertTrue(list.walkRevisionListWithSpecifier(null, 0, -1, 1, consumer, new NullProgressMonitor()).isOK());
+		assertEquals(1, pages.size());
+		assertEquals(all.get(0).sha(), pages.get(0).get(0).sha());
+	}
+
+	@Test
+	public void testWalkReadOnDemand() throws Exception
+	{
+		GitRepository repo = createRepo();
+		for (int i = 0; i < 5; i++)
+		{
+			IStatus status = repo.execute(GitRepository.ReadWrite.WRITE, "commit", "--allow-empty", "-m",
+					"Commit " + i);
+			assertTrue(status.getMessage(), status.isOK());
+		}
+		GitRevList list = new GitRevList(repo);
+		assertTrue(list.walkRevisionListWithSpecifier(null, new NullProgressMonitor()).isOK());
+		List<GitCommit> all = list.getCommits();
+
+		final List<GitCommit> read = new ArrayList<GitCommit>();
+		IGitCommitConsumer consumer = new IGitCommitConsumer()
+		{
+			public boolean commitsRead(List<GitCommit> commits)
+			{
+				read.addAll(commits);
+				return true;
+			}
+		};
+		GitRevWalk walk = list.startWalk(null);
+		try
+		{
+			// Each read carries on where the last one stopped
+			assertTrue(walk.read(2, 1, consumer, new NullProgressMonitor()).isOK());
+			assertEquals(2, read.size());
+			assertTrue(walk.hasMore());
+			assertTrue(walk.read(2, 10, consumer, new NullProgressMonitor()).isOK());
+			assertEquals(4, read.size());
+			assertTrue(walk.read(GitRevWalk.NO_LIMIT, 10, consumer, new NullProgressMonitor()).isOK());
+			assertFalse(walk.hasMore());
+			assertEquals(5, read.size());
+			for (int i = 0; i < all.size(); i++)
+			{
+				assertEquals(all.get(i).sha(), read.get(i).sha());
+			}
+		}
+		finally
+		{
+			walk.close();
+		}
+
+		// Once closed, there's nothing more to read
+		walk = list.startWalk(null);
+		walk.close();
+		assertFalse(walk.hasMore());
+		read.clear();
+		assertTrue(walk.read(GitRevWalk.NO_LIMIT, 10, consumer, new NullProgressMonitor()).isOK());
+		assertTrue(read.isEmpty());
+	}
+
 	@Test
 	public void testDeleteFile() throws Throwable
 	{
@@ -0,0 +1,167 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.index.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.aptana.jetty.util.epl.ajax.JSON;
+import com.aptana.jetty.util.epl.ajax.JSON.Convertible;
+import com.aptana.jetty.util.epl.ajax.JSON.Output;
+
+@SuppressWarnings({ "nls", "rawtypes" })
+public class ElementSerializerTest
+{
+	private static class Element implements Convertible
+	{
+		private final String name;
+		private final Element[] children;
+
+		Element(String name, Element... children)
+		{
+			this.name = name;
+			this.children = children;
+		}
+
+		public void fromJSON(Map object)
+		{
+		}
+
+		public void toJSON(Output out)
+		{
+			out.add("name", name);
+			out.add("description", null);
+			out.add("deprecated", false);
+			out.add("count", -42L);
+			out.add("ratio", 0.5);
+			out.add("examples", Arrays.asList("a\0b", "é中"));
+			out.add("children", Arrays.asList(children));
+		}
+	}
+
+	@Test
+	public void testRoundTripMatchesJSON()
+	{
+		Element element = new Element("parent", new Element("child1"), new Element("child2"));
+
+		Object decoded = ElementSerializer.deserialize(ElementSerializer.serialize(element));
+		Object parsed = JSON.parse(JSON.toString(element));
+
+		assertTrue(decoded instanceof Map);
+		assertEquivalent(parsed, decoded);
+	}
+
+	@Test
+	public void testDecodesFromOffset()
+	{
+		String word = "Type\0name\0" + ElementSerializer.serialize(new Element("member"));
+
+		Map decoded = (Map) ElementSerializer.deserialize(word, word.indexOf('\0', 5) + 1);
+
+		assertEquals("member", decoded.get("name"));
+	}
+
+	@Test
+	public void testReadsJSON()
+	{
+		Map decoded = (Map) ElementSerializer.deserialize("{\"name\":\"old\",\"deprecated\":true}");
+
+		assertEquals("old", decoded.get("name"));
+		assertEquals(Boolean.TRUE, decoded.get("deprecated"));
+	}
+
+	@Test
+	public void testSmallerThanJSON()
+	{
+		Element element = new Element("parent", new Element("child1"), new Element("child2"));
+		String encoded = ElementSerializer.serialize(element);
+
+		assertTrue(encoded.length() < JSON.toString(element).length());
+		// only the raw strings may contain the delimiter
+		assertFalse(encoded.replace("a\0b", "").contains("\0"));
+	}
+
+	@Test
+	public void testNumbersUseSingleByteCharacters()
+	{
+		final long[] values = { 0, 62, 63, 64, 4095, 4096, -1, Long.MAX_VALUE, Long.MIN_VALUE };
+		Convertible numbers = new Convertible()
+		{
+			public void fromJSON(Map object)
+			{
+			}
+
+			public void toJSON(Output out)
+			{
+				for (int i = 0; i < values.length; i++)
+				{
+					out.add("n" + i, values[i]);
+				}
+				out.add("ratio", -0.1);
+			}
+		};
+		String encoded = ElementSerializer.serialize(numbers);
+
+		for (int i = 0; i < encoded.length(); i++)
+		{
+			char c = encoded.charAt(i);
+			assertTrue("Not a single byte character: " + (int) c, c > 0 && c < 0x80);
+		}
+
+		Map decoded = (Map) ElementSerializer.deserialize(encoded);
+		for (int i = 0; i < values.length; i++)
+		{
+			assertEquals(values[i], decoded.get("n" + i));
+		}
+		assertEquals(-0.1, decoded.get("ratio"));
+	}
+
+	@Test
+	public void testNull()
+	{
+		assertNull(ElementSerializer.deserialize(ElementSerializer.serialize(null)));
+		assertNull(ElementSerializer.deserialize(null));
+	}
+
+	private void assertEquivalent(Object expected, Object actual)
+	{
+		if (expected instanceof Map)
+		{
+			Map expectedMap = (Map) expected;
+			Map actualMap = (Map) actual;
+
+			assertEquals(expectedMap.keySet(), actualMap.keySet());
+			for (Object key : expectedMap.keySet())
+			{
+				assertEquivalent(expectedMap.get(key), actualMap.get(key));
+			}
+		}
+		else if (expected instanceof Object[])
+		{
+			Object[] expectedArray = (Object[]) expected;
+			Object[] actualArray = (Object[]) actual;
+
+			assertEquals(expectedArray.length, actualArray.length);
+			for (int i = 0; i < expectedArray.length; i++)
+			{
+				assertEquivalent(expectedArray[i], actualArray[i]);
+			}
+		}
+		else
+		{
+			assertEquals(expected, actual);
+		}
+	}
+}
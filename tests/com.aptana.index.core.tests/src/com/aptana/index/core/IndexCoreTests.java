@@ -5,7 +5,7 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({ FileStoreBuildContextTest.class, IndexContainerJobTest.class, IndexTest.class, })
+@SuiteClasses({ ElementSerializerTest.class, FileStoreBuildContextTest.class, IndexContainerJobTest.class, IndexTest.class, })
 public class IndexCoreTests
 {
 
@@ -10,12 +10,15 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ConcurrentModificationException;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import org.junit.After;
 import org.junit.Test;
 
+import com.aptana.core.util.CollectionsUtil;
+
 @SuppressWarnings({ "nls", "deprecation" })
 public class IndexTest
 {
@@ -135,6 +138,76 @@ public class IndexTest
 		assertFalse("Received a ConcurrentModificationException while accessing index", failures[0]);
 	}
 
+	@Test
+	public void testMultiThreadedAddAndQuery() throws Exception
+	{
+		createIndex("multi_threaded_add");
+
+		final int NUM_DOCS = 50;
+		final int NUM_KEYS = 200;
+		final boolean[] failures = new boolean[1];
+		Thread writer = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					for (int i = 0; i < NUM_DOCS; i++)
+					{
+						URI document = new URI("doc" + i + ".js");
+						for (int j = 0; j < NUM_KEYS; j++)
+						{
+							index.addEntry("category", "Key" + j, document);
+						}
+					}
+				}
+				catch (Exception e)
+				{
+					e.printStackTrace();
+					failures[0] = true;
+				}
+			}
+		});
+
+		Thread reader = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					for (int i = 0; i < 500; i++)
+					{
+						index.query(new String[] { "category" }, "Key1", SearchPattern.PREFIX_MATCH
+								| SearchPattern.CASE_SENSITIVE);
+						Thread.yield();
+					}
+				}
+				catch (Exception e)
+				{
+					e.printStackTrace();
+					failures[0] = true;
+				}
+			}
+		});
+
+		writer.start();
+		reader.start();
+
+		writer.join();
+		reader.join();
+		assertFalse("Received an exception while accessing index", failures[0]);
+
+		List<QueryResult> results = index.query(new String[] { "category" }, "Key",
+				SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE);
+		assertEquals(NUM_KEYS, results.size());
+		for (QueryResult result : results)
+		{
+			assertEquals(NUM_DOCS, result.getDocuments().size());
+		}
+		assertTrue(index.getReadLockAcquisitions() >= NUM_DOCS * NUM_KEYS);
+		assertTrue(index.getReadLockContentions() <= index.getReadLockAcquisitions());
+	}
+
 	@Test
 	public void testAddEntry() throws Exception
 	{
@@ -194,6 +267,75 @@ public class IndexTest
 		assertTrue(docNames.contains("blah.rb"));
 	}
 
+	@Test
+	public void testQueryAnyPrefix() throws Exception
+	{
+		createIndex("query_any");
+		index.addEntry("member", "Array/length", new URI("array.js"));
+		index.addEntry("member", "Array/push", new URI("array.js"));
+		index.addEntry("member", "ArrayBuffer/slice", new URI("buffer.js"));
+		index.addEntry("member", "Object/toString", new URI("object.js"));
+		index.addEntry("member", "String/charAt", new URI("string.js"));
+
+		// query both the memory index and, after saving, the disk index
+		for (int i = 0; i < 2; i++)
+		{
+			List<QueryResult> results = index.queryAny(new String[] { "member" },
+					CollectionsUtil.newList("Array/", "Object/", "Missing/"), SearchPattern.PREFIX_MATCH
+							| SearchPattern.CASE_SENSITIVE);
+			assertNotNull(results);
+
+			Set<String> words = new HashSet<String>();
+			for (QueryResult result : results)
+			{
+				words.add(result.getWord());
+			}
+			assertEquals(CollectionsUtil.newSet("Array/length", "Array/push", "Object/toString"), words);
+
+			index.save();
+		}
+	}
+
+	@Test
+	public void testPatternMatch() throws Exception
+	{
+		int rule = SearchPattern.PATTERN_MATCH | SearchPattern.CASE_SENSITIVE;
+
+		assertTrue(Index.isMatch("Array*", "Array/length", rule));
+		assertTrue(Index.isMatch("push", "Array/push", rule));
+		assertTrue(Index.isMatch("?/p*h", "Array/push", rule));
+		assertFalse(Index.isMatch("Arr", "Array/push", rule));
+		assertFalse(Index.isMatch("array*", "Array/length", rule));
+		assertTrue(Index.isMatch("array*", "Array/length", SearchPattern.PATTERN_MATCH));
+		assertTrue(Index.isMatch("a\\*b", "a*b", rule));
+		assertFalse(Index.isMatch("a\\*b", "axb", rule));
+
+		// case sensitive and insensitive regexes don't share a compiled pattern
+		assertFalse(Index.isMatch("^array", "Array/length", SearchPattern.REGEX_MATCH | SearchPattern.CASE_SENSITIVE));
+		assertTrue(Index.isMatch("^array", "Array/length", SearchPattern.REGEX_MATCH));
+	}
+
+	@Test
+	public void testPatternsCachedAcrossQueries() throws Exception
+	{
+		createIndex("pattern_cache");
+		index.addEntry("member", "Array/length", new URI("array.js"));
+		index.addEntry("member", "Array/push", new URI("array.js"));
+
+		List<QueryResult> results = index.query(new String[] { "member" }, "Array/p*", SearchPattern.PATTERN_MATCH
+				| SearchPattern.CASE_SENSITIVE);
+		assertEquals(1, results.size());
+
+		long hits = Index.getPatternCacheHits();
+		long misses = Index.getPatternCacheMisses();
+
+		results = index.query(new String[] { "member" }, "Array/p*", SearchPattern.PATTERN_MATCH
+				| SearchPattern.CASE_SENSITIVE);
+		assertEquals(1, results.size());
+		assertTrue(Index.getPatternCacheHits() > hits);
+		assertEquals(misses, Index.getPatternCacheMisses());
+	}
+
 	@Test
 	public void testRemove() throws Exception
 	{
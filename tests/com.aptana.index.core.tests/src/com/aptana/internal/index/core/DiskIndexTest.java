@@ -7,19 +7,28 @@
  */
 package com.aptana.internal.index.core;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Platform;
 import org.junit.Test;
 
+import com.aptana.core.util.IOUtil;
 import com.aptana.core.util.ResourceUtil;
+import com.aptana.index.core.QueryResult;
+import com.aptana.index.core.SearchPattern;
 
 @SuppressWarnings("nls")
 public class DiskIndexTest
@@ -47,4 +56,116 @@ public class DiskIndexTest
 			fail("Expected an IOException, so that we'd catch it up the stack and clean up the index. Instead we got a NegativeArraySizeException!");
 		}
 	}
+
+	@Test
+	public void testExactAndPrefixQueriesAfterMerge() throws Exception
+	{
+		File file = File.createTempFile("disk_index", ".index");
+		file.delete();
+		file.deleteOnExit();
+
+		DiskIndex index = new DiskIndex(file.getAbsolutePath());
+		index.initialize(false);
+
+		// enough words to span several dictionary blocks, and one word referenced by enough documents to be stored
+		// as a separate long array
+		MemoryIndex memoryIndex = new MemoryIndex();
+		for (int i = 0; i < 300; i++)
+		{
+			memoryIndex.addEntry("function", "Type" + (i % 50) + ".member" + i, "file" + i + ".js");
+			memoryIndex.addEntry("function", "shared", "file" + i + ".js");
+		}
+		index = index.mergeWith(memoryIndex);
+
+		Map<String, QueryResult> results = index.addQueryResults(new String[] { "function" }, "Type7.member57",
+				SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE, null);
+		assertEquals(1, results.size());
+		assertEquals(1, results.get("Type7.member57").getDocuments().size());
+		assertTrue(results.get("Type7.member57").getDocuments().contains("file57.js"));
+
+		assertNull(index.addQueryResults(new String[] { "function" }, "Type7.member58",
+				SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE, null));
+
+		// Type1. matches members 1, 51, 101, 151, 201, 251
+		results = index.addQueryResults(new String[] { "function" }, "Type1.",
+				SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE, null);
+		assertEquals(6, results.size());
+
+		results = index.addQueryResults(new String[] { "function" }, "shared",
+				SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE, null);
+		assertEquals(300, results.get("shared").getDocuments().size());
+
+		// reopen the file from disk and make sure we read back the same thing
+		index = new DiskIndex(file.getAbsolutePath());
+		index.initialize(true);
+		results = index.addQueryResults(new String[] { "function" }, "Type1.",
+				SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE, null);
+		assertEquals(6, results.size());
+		results = index.addQueryResults(new String[] { "function" }, (String) null, SearchPattern.PREFIX_MATCH, null);
+		assertEquals(301, results.size());
+	}
+
+	@Test
+	public void testMigratesLegacyIndex() throws Exception
+	{
+		URL url = FileLocator.find(Platform.getBundle("com.aptana.index.core.tests"),
+				Path.fromPortableString("files/legacy_0.1.index"), null);
+		File legacy = ResourceUtil.resourcePathToFile(url);
+
+		// the file gets rewritten in place, so work on a copy
+		File file = File.createTempFile("legacy_index", ".index");
+		file.deleteOnExit();
+		IOUtil.copyFile(legacy, file);
+
+		DiskIndex index = new DiskIndex(file.getAbsolutePath());
+		index.initialize(true);
+
+		Set<String> categories = new HashSet<String>(index.getCategories());
+		assertEquals(2, categories.size());
+		assertTrue(categories.contains("type"));
+		assertTrue(categories.contains("function"));
+
+		Map<String, QueryResult> results = index.addQueryResults(new String[] { "function" }, "String.",
+				SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE, null);
+		assertEquals(2, results.size());
+		assertTrue(results.get("String.concat").getDocuments().contains("string.js"));
+
+		// once converted, the file reads back as the current format
+		index = new DiskIndex(file.getAbsolutePath());
+		index.initialize(true);
+		results = index.addQueryResults(new String[] { "type" }, "Array",
+				SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE, null);
+		assertEquals(1, results.size());
+		assertTrue(results.get("Array").getDocuments().contains("array.js"));
+	}
+
+	@Test
+	public void testDeletesReplacedIndexFilesLeftBehind() throws Exception
+	{
+		File file = File.createTempFile("disk_index", ".index");
+		file.delete();
+		file.deleteOnExit();
+
+		// a replaced file that was still mapped when the last session ended
+		File obsolete = new File(file.getPath() + ".0.obsolete");
+		assertTrue(obsolete.createNewFile());
+		obsolete.deleteOnExit();
+
+		DiskIndex index = new DiskIndex(file.getAbsolutePath());
+		index.initialize(false);
+		assertFalse(obsolete.exists());
+
+		MemoryIndex memoryIndex = new MemoryIndex();
+		memoryIndex.addEntry("function", "member", "file.js");
+		index = index.mergeWith(memoryIndex);
+		memoryIndex = new MemoryIndex();
+		memoryIndex.addEntry("function", "other", "other.js");
+		index = index.mergeWith(memoryIndex);
+
+		// merging replaces the mapped file in place
+		assertTrue(file.exists());
+		Map<String, QueryResult> results = index.addQueryResults(new String[] { "function" }, (String) null,
+				SearchPattern.PREFIX_MATCH, null);
+		assertEquals(2, results.size());
+	}
 }
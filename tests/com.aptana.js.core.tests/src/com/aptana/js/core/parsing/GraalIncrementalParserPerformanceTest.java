@@ -0,0 +1,164 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.js.core.parsing;
+
+import java.io.InputStream;
+
+import org.eclipse.core.runtime.FileLocator;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.test.performance.Performance;
+import org.junit.experimental.categories.Category;
+
+import com.aptana.core.tests.GlobalTimePerformanceTestCase;
+import com.aptana.core.util.IOUtil;
+import com.aptana.js.core.JSCorePlugin;
+import com.aptana.js.core.tests.ITestFiles;
+import com.aptana.parsing.ParseState;
+import com.aptana.testing.categories.PerformanceTests;
+
+/**
+ * Measures the cost of a reparse per keystroke, by typing a line comment into the middle of a large file one
+ * character at a time, like the reconciler does when a user types in the editor.
+ */
+@Category({ PerformanceTests.class })
+public class GraalIncrementalParserPerformanceTest extends GlobalTimePerformanceTestCase
+{
+	private static final String TYPED_TEXT = "// typed one character at a time\n"; //$NON-NLS-1$
+
+	private GraalJSParser fParser;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		IncrementalReparser.clear();
+		fParser = createParser();
+	}
+
+	protected GraalJSParser createParser()
+	{
+		return new GraalJSParser(true);
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		fParser = null;
+		IncrementalReparser.clear();
+		super.tearDown();
+	}
+
+	/**
+	 * assertKeystrokes
+	 *
+	 * @param numRuns
+	 * @param resources
+	 * @throws Exception
+	 */
+	private void assertKeystrokes(int numRuns, String... resources) throws Exception
+	{
+		for (String resourceName : resources)
+		{
+			if (fPerformanceMeter != null)
+			{
+				fPerformanceMeter.dispose();
+			}
+
+			Performance performance = Performance.getDefault();
+			fPerformanceMeter = performance.createPerformanceMeter(getClass().getName() + '#' + resourceName);
+
+			timeKeystrokes(resourceName, getSource(resourceName), numRuns);
+
+			commitMeasurements();
+			assertPerformance();
+		}
+	}
+
+	/**
+	 * getSource
+	 *
+	 * @param resourceName
+	 * @return
+	 * @throws Exception
+	 */
+	private String getSource(String resourceName) throws Exception
+	{
+		InputStream stream = FileLocator.openStream(Platform.getBundle(JSCorePlugin.PLUGIN_ID), new Path(resourceName),
+				false);
+		return IOUtil.read(stream);
+	}
+
+	/**
+	 * Types the text at the start of a line in the middle of the source, timing the parse after each character.
+	 *
+	 * @param resourceName
+	 * @param src
+	 * @param numRuns
+	 * @throws Exception
+	 */
+	private void timeKeystrokes(String resourceName, String src, int numRuns) throws Exception
+	{
+		int offset = src.indexOf('\n', src.length() / 2) + 1;
+		String before = src.substring(0, offset);
+		String after = src.substring(offset);
+
+		for (int i = 0; i < numRuns; i++)
+		{
+			// the parse of the unedited source is what the first keystroke gets to reuse, recent parses are kept per file
+			fParser.parse(new ParseState(src, resourceName));
+
+			for (int typed = 1; typed <= TYPED_TEXT.length(); typed++)
+			{
+				ParseState parseState = new ParseState(before + TYPED_TEXT.substring(0, typed) + after, resourceName);
+
+				startMeasuring();
+				try
+				{
+					fParser.parse(parseState);
+				}
+				catch (Exception e)
+				{
+					e.printStackTrace();
+					fail("Failed to parse '" + resourceName + "': " + e.getMessage());
+				}
+				stopMeasuring();
+			}
+		}
+	}
+
+	/**
+	 * testExt
+	 *
+	 * @throws Exception
+	 */
+	public void testExt() throws Exception
+	{
+		assertKeystrokes(5, ITestFiles.EXT_FILES);
+	}
+
+	/**
+	 * testTiMobile
+	 *
+	 * @throws Exception
+	 */
+	public void testTiMobile() throws Exception
+	{
+		assertKeystrokes(10, ITestFiles.TIMOBILE_FILES);
+	}
+
+	/**
+	 * testTinyMce
+	 *
+	 * @throws Exception
+	 */
+	public void testTinyMce() throws Exception
+	{
+		assertKeystrokes(10, ITestFiles.TINY_MCE_FILES);
+	}
+}
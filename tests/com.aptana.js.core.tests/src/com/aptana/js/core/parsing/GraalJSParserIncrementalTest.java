@@ -0,0 +1,364 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.js.core.parsing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import beaver.Symbol;
+
+import com.aptana.js.core.parsing.ast.JSBinaryOperatorNode;
+import com.aptana.js.core.parsing.ast.JSDeclarationNode;
+import com.aptana.js.core.parsing.ast.JSVarNode;
+import com.aptana.parsing.ParseResult;
+import com.aptana.parsing.ParseState;
+import com.aptana.parsing.ast.IParseNode;
+import com.aptana.parsing.ast.IParseRootNode;
+
+public class GraalJSParserIncrementalTest
+{
+	private static final String FUNCTION_NAME = "function f";
+	private static final String FILENAME = "/project/incremental.js";
+
+	private GraalJSParser incrementalParser;
+	private GraalJSParser fullParser;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		IncrementalReparser.clear();
+		incrementalParser = new GraalJSParser(true);
+		fullParser = new GraalJSParser(false);
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		IncrementalReparser.clear();
+		incrementalParser = null;
+		fullParser = null;
+	}
+
+	/**
+	 * Creates a source that is big enough to be reparsed incrementally
+	 *
+	 * @param count
+	 *            the number of functions
+	 * @return
+	 */
+	private String createSource(int count)
+	{
+		StringBuilder builder = new StringBuilder();
+
+		for (int i = 0; i < count; i++)
+		{
+			builder.append("/**\n * f").append(i).append("\n */\n");
+			builder.append(FUNCTION_NAME).append(i).append("(a, b) {\n");
+			builder.append("\tvar sum = a + b + ").append(i).append(";\n");
+			builder.append("\treturn sum * 2; // double it\n");
+			builder.append("}\n");
+			builder.append("var v").append(i).append(" = f").append(i).append("(1, 2);\n\n");
+		}
+
+		return builder.toString();
+	}
+
+	private ParseResult parse(GraalJSParser parser, String source) throws Exception
+	{
+		return parser.parse(new ParseState(source, FILENAME));
+	}
+
+	/**
+	 * Parses the original source, then parses the edited one both incrementally and from scratch, and compares the
+	 * results
+	 *
+	 * @param source
+	 * @param offset
+	 * @param removeLength
+	 * @param text
+	 * @throws Exception
+	 */
+	private void assertEdit(String source, int offset, int removeLength, String text) throws Exception
+	{
+		ParseResult original = parse(incrementalParser, source);
+		assertTrue(original.getErrors().isEmpty());
+
+		String edited = source.substring(0, offset) + text + source.substring(offset + removeLength);
+		ParseResult incremental = parse(incrementalParser, edited);
+		ParseResult full = parse(fullParser, edited);
+
+		assertEquals(full.getErrors().size(), incremental.getErrors().size());
+		assertSameTree(full.getRootNode(), incremental.getRootNode());
+		assertSameComments(full.getRootNode(), incremental.getRootNode());
+	}
+
+	private void assertSameTree(IParseNode expected, IParseNode actual)
+	{
+		assertEquals(expected.getNodeType(), actual.getNodeType());
+		assertEquals(expected.getStartingOffset(), actual.getStartingOffset());
+		assertEquals(expected.getEndingOffset(), actual.getEndingOffset());
+		assertEquals(expected.getChildCount(), actual.getChildCount());
+		assertSameTokens(expected, actual);
+
+		for (int i = 0; i < expected.getChildCount(); i++)
+		{
+			IParseNode child = actual.getChild(i);
+
+			assertEquals(actual, child.getParent());
+			assertSameTree(expected.getChild(i), child);
+		}
+	}
+
+	private void assertSameTokens(IParseNode expected, IParseNode actual)
+	{
+		if (expected instanceof JSVarNode)
+		{
+			assertSameSymbol(((JSVarNode) expected).getVar(), ((JSVarNode) actual).getVar());
+		}
+		else if (expected instanceof JSDeclarationNode)
+		{
+			assertSameSymbol(((JSDeclarationNode) expected).getEqualSign(), ((JSDeclarationNode) actual).getEqualSign());
+		}
+		else if (expected instanceof JSBinaryOperatorNode)
+		{
+			assertSameSymbol(((JSBinaryOperatorNode) expected).getOperator(),
+					((JSBinaryOperatorNode) actual).getOperator());
+		}
+	}
+
+	private void assertSameSymbol(Symbol expected, Symbol actual)
+	{
+		if (expected == null)
+		{
+			assertNull(actual);
+		}
+		else
+		{
+			assertEquals(expected.getStart(), actual.getStart());
+			assertEquals(expected.getEnd(), actual.getEnd());
+		}
+	}
+
+	private void assertSameComments(IParseRootNode expected, IParseRootNode actual)
+	{
+		IParseNode[] expectedComments = expected.getCommentNodes();
+		IParseNode[] actualComments = actual.getCommentNodes();
+
+		assertEquals(expectedComments.length, actualComments.length);
+
+		for (int i = 0; i < expectedComments.length; i++)
+		{
+			assertEquals(expectedComments[i].getNodeType(), actualComments[i].getNodeType());
+			assertEquals(expectedComments[i].getStartingOffset(), actualComments[i].getStartingOffset());
+			assertEquals(expectedComments[i].getEndingOffset(), actualComments[i].getEndingOffset());
+		}
+	}
+
+	@Test
+	public void testRegionAroundEdit() throws Exception
+	{
+		String source = createSource(100);
+		parse(incrementalParser, source);
+
+		int offset = source.indexOf("return sum", source.indexOf(FUNCTION_NAME + "50("));
+		String edited = source.substring(0, offset) + "sum++;\n\t" + source.substring(offset);
+		IncrementalReparser.Region region = IncrementalReparser.getRegion(FILENAME, edited);
+
+		assertNotNull(region);
+		assertTrue(region.start > 0);
+		assertTrue(region.start <= offset);
+		assertTrue(region.end > offset);
+		assertTrue(region.end < edited.length());
+	}
+
+	@Test
+	public void testSmallSourceNotReparsed() throws Exception
+	{
+		String source = createSource(2);
+		parse(incrementalParser, source);
+
+		assertNull(IncrementalReparser.getRegion(FILENAME, source + "\n"));
+	}
+
+	@Test
+	public void testUnrelatedSourceNotReparsed() throws Exception
+	{
+		parse(incrementalParser, createSource(100));
+
+		assertNull(IncrementalReparser.getRegion(FILENAME, createSource(100).replace("sum", "total")));
+	}
+
+	@Test
+	public void testOtherFileNotReparsed() throws Exception
+	{
+		String source = createSource(100);
+		parse(incrementalParser, source);
+
+		assertNull(IncrementalReparser.getRegion("/project/other.js", source + "\n"));
+	}
+
+	@Test
+	public void testUnnamedSourceNotReparsed() throws Exception
+	{
+		String source = createSource(100);
+		incrementalParser.parse(new ParseState(source));
+
+		assertNull(IncrementalReparser.getRegion(null, source + "\n"));
+		assertNull(IncrementalReparser.getRegion(FILENAME, source + "\n"));
+	}
+
+	@Test
+	public void testOffsetsAfterEditAbove() throws Exception
+	{
+		String source = createSource(100);
+		int offset = source.indexOf("return sum", source.indexOf(FUNCTION_NAME + "5("));
+		String edited = source.substring(0, offset) + "sum++;\n\t" + source.substring(offset);
+
+		parse(incrementalParser, source);
+		IParseRootNode root = parse(incrementalParser, edited).getRootNode();
+
+		// the last statement was reused from the previous parse, and moved along with its tokens
+		JSVarNode last = (JSVarNode) root.getLastChild();
+		int start = edited.lastIndexOf("var v99");
+		JSDeclarationNode declaration = (JSDeclarationNode) last.getFirstChild();
+
+		assertEquals(start, last.getStartingOffset());
+		assertEquals(start, last.getVar().getStart());
+		assertEquals(edited.indexOf('=', start), declaration.getEqualSign().getStart());
+		assertSameTree(parse(fullParser, edited).getRootNode(), root);
+	}
+
+	@Test
+	public void testInsertStatement() throws Exception
+	{
+		String source = createSource(100);
+		int offset = source.indexOf("return sum", source.indexOf(FUNCTION_NAME + "50("));
+
+		assertEdit(source, offset, 0, "sum++;\n\t");
+	}
+
+	@Test
+	public void testRemoveStatement() throws Exception
+	{
+		String source = createSource(100);
+		int offset = source.indexOf("var v60");
+
+		assertEdit(source, offset, source.indexOf('\n', offset) + 1 - offset, "");
+	}
+
+	@Test
+	public void testTypeIdentifier() throws Exception
+	{
+		String source = createSource(100);
+		int offset = source.indexOf("sum * 2", source.indexOf(FUNCTION_NAME + "10(")) + 3;
+
+		assertEdit(source, offset, 0, "m");
+	}
+
+	@Test
+	public void testEditFirstStatement() throws Exception
+	{
+		String source = createSource(100);
+		int offset = source.indexOf("a + b");
+
+		assertEdit(source, offset, 1, "b");
+	}
+
+	@Test
+	public void testEditLastStatement() throws Exception
+	{
+		String source = createSource(100);
+		int offset = source.lastIndexOf("(1, 2)") + 1;
+
+		assertEdit(source, offset, 1, "3");
+	}
+
+	@Test
+	public void testAddComment() throws Exception
+	{
+		String source = createSource(100);
+		int offset = source.indexOf("var v30");
+
+		assertEdit(source, offset, 0, "// a comment\n/* and another */\n");
+	}
+
+	@Test
+	public void testUnclosedBrace() throws Exception
+	{
+		String source = createSource(100);
+		int offset = source.indexOf("return sum", source.indexOf(FUNCTION_NAME + "50("));
+
+		assertEdit(source, offset, 0, "if (a) {\n\t");
+	}
+
+	@Test
+	public void testUnclosedComment() throws Exception
+	{
+		String source = createSource(100);
+		int offset = source.indexOf("var v40");
+
+		assertEdit(source, offset, 0, "/* ");
+	}
+
+	@Test
+	public void testNewTopLevelName() throws Exception
+	{
+		String source = createSource(100);
+		int offset = source.indexOf("var v40");
+
+		assertEdit(source, offset, 0, "var v90 = 1;\n");
+	}
+
+	@Test
+	public void testDestructuring() throws Exception
+	{
+		String source = createSource(100);
+		int offset = source.indexOf("var v40");
+
+		assertEdit(source, offset, 0, "var { x, y } = v39;\n");
+	}
+
+	@Test
+	public void testSuccessiveEdits() throws Exception
+	{
+		String source = createSource(100);
+
+		for (int i = 0; i < 20; i++)
+		{
+			int offset = source.indexOf("return sum", source.indexOf(FUNCTION_NAME + (i * 5) + "("));
+
+			assertEdit(source, offset, 0, "sum += " + i + ";\n\t");
+			source = source.substring(0, offset) + "sum += " + i + ";\n\t" + source.substring(offset);
+		}
+	}
+
+	@Test
+	public void testPreviousResultUnchanged() throws Exception
+	{
+		String source = createSource(100);
+		IParseRootNode original = parse(incrementalParser, source).getRootNode();
+		JSVarNode last = (JSVarNode) original.getLastChild();
+		int lastStart = last.getStartingOffset();
+		int lastEnd = last.getEndingOffset();
+		Symbol var = last.getVar();
+
+		parse(incrementalParser, source.replace("var v50 = f50(1, 2);", "f50(1, 2);"));
+
+		assertEquals(original, last.getParent());
+		assertEquals(lastStart, last.getStartingOffset());
+		assertEquals(lastEnd, last.getEndingOffset());
+		assertEquals(var, last.getVar());
+		assertEquals(lastStart, var.getStart());
+	}
+}
@@ -7,7 +7,7 @@ public class GraalParserPerformanceTest extends JSParserPerformanceTest
 	@Override
 	protected IParser createParser()
 	{
-		return new GraalJSParser();
+		return new GraalJSParser(false);
 	}
 
 }
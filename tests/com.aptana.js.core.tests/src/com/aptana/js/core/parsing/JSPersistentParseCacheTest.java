@@ -0,0 +1,112 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.js.core.parsing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aptana.core.util.FileUtil;
+import com.aptana.internal.parsing.PersistentParseCache;
+import com.aptana.js.core.IJSConstants;
+import com.aptana.parsing.ParseResult;
+import com.aptana.parsing.ParseState;
+import com.aptana.parsing.ast.IParseNode;
+import com.aptana.parsing.ast.IParseRootNode;
+
+/**
+ * Stores the ASTs of the JS parser in the persistent parse cache and reads them back.
+ */
+@SuppressWarnings("nls")
+public class JSPersistentParseCacheTest
+{
+	private static final String SOURCE = "/* header */\n" //
+			+ "var a = 1, b = 'two', c = /th+ree/g;\n" //
+			+ "function sum(x, y) { return x + y; }\n" //
+			+ "class Point extends Object { constructor(x) { super(); this.x = x; } get y() { return 0; } }\n" //
+			+ "const f = (x, ...rest) => [x, , ...rest];\n" //
+			+ "function* gen() { yield [1, 2]; }\n" //
+			+ "for (let i = 0; i < 3; i++) { if (i % 2) continue; else break; }\n" //
+			+ "for (var k in { p: 1, q: 2 }) {}\n" //
+			+ "for (const v of [1, 2]) { do { a--; } while (a > 0); }\n" //
+			+ "outer: while (true) { break outer; }\n" //
+			+ "switch (b) { case 'two': a = sum(a, 2); break; default: a = !a ? -1 : typeof a; }\n" //
+			+ "try { throw new Error('e'); } catch (e) { a = e.message; } finally { a = b[0]; }\n" //
+			+ "with (Math) { a = (PI, E); }\n" //
+			+ "var o = { get p() { return 1; }, set p(v) {}, m() {} };\n" //
+			+ "a && b || delete o.p; void 0; a instanceof Object; null; true; false; this;\n";
+
+	private File fDirectory;
+	private PersistentParseCache fCache;
+	private GraalJSParser fParser;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		fDirectory = FileUtil.getTempDirectory().append(FileUtil.getRandomFileName("asts", null)).toFile();
+		fCache = new PersistentParseCache(fDirectory, 1024 * 1024);
+		fParser = new GraalJSParser();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		fCache.dispose();
+		FileUtil.deleteRecursively(fDirectory);
+		fCache = null;
+		fParser = null;
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception
+	{
+		ParseState parseState = new ParseState(SOURCE);
+		ParseResult stored = fParser.parse(parseState);
+		assertTrue(stored.getErrors().isEmpty());
+
+		fCache.put(IJSConstants.CONTENT_TYPE_JS, parseState, fParser, stored);
+		fCache.flush();
+		assertEquals(1, fCache.getWrites());
+
+		ParseResult result = fCache.get(IJSConstants.CONTENT_TYPE_JS, new ParseState(SOURCE), fParser);
+		assertNotNull(result);
+		assertEquals(1, fCache.getHits());
+
+		IParseRootNode expected = stored.getRootNode();
+		IParseRootNode actual = result.getRootNode();
+
+		assertNotSame(expected, actual);
+		assertSameTree(expected, actual);
+		assertEquals(expected.getCommentNodes().length, actual.getCommentNodes().length);
+		assertEquals(expected.toString(), actual.toString());
+	}
+
+	private static void assertSameTree(IParseNode expected, IParseNode actual)
+	{
+		assertSame(expected.getClass(), actual.getClass());
+		assertEquals(expected.getNodeType(), actual.getNodeType());
+		assertEquals(expected.getStartingOffset(), actual.getStartingOffset());
+		assertEquals(expected.getEndingOffset(), actual.getEndingOffset());
+		assertEquals(expected.getText(), actual.getText());
+		assertEquals(expected.getChildCount(), actual.getChildCount());
+
+		for (int i = 0; i < expected.getChildCount(); i++)
+		{
+			assertSame(actual, actual.getChild(i).getParent());
+			assertSameTree(expected.getChild(i), actual.getChild(i));
+		}
+	}
+}
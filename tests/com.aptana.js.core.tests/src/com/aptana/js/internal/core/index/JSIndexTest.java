@@ -17,8 +17,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.FileLocator;
@@ -34,6 +36,7 @@ import com.aptana.core.IUserAgentManager;
 import com.aptana.core.util.CollectionsUtil;
 import com.aptana.core.util.IOUtil;
 import com.aptana.core.util.StringUtil;
+import com.aptana.index.core.ElementSerializer;
 import com.aptana.index.core.Index;
 import com.aptana.index.core.IndexManager;
 import com.aptana.index.core.IndexPlugin;
@@ -41,8 +44,8 @@ import com.aptana.index.core.IndexReader;
 import com.aptana.index.core.QueryResult;
 import com.aptana.index.core.SearchPattern;
 import com.aptana.index.core.build.BuildContext;
-import com.aptana.jetty.util.epl.ajax.JSON;
 import com.aptana.js.core.JSCorePlugin;
+import com.aptana.js.core.JSTypeConstants;
 import com.aptana.js.core.index.IJSIndexConstants;
 import com.aptana.js.core.index.JSFileIndexingParticipant;
 import com.aptana.js.core.index.JSIndexQueryHelper;
@@ -488,12 +491,11 @@ public class JSIndexTest
 		String[] columns = IndexReader.DELIMITER_PATTERN.split(word);
 		assertEquals(3, columns.length);
 
-		// grab last column and parse as JSON
-		String json = columns[2];
-		Object m = JSON.parse(json);
+		// grab last column and decode it
+		Object m = ElementSerializer.deserialize(columns[2]);
 
 		// make sure we have a map
-		assertTrue("Expected a Map from the JSON string", m instanceof Map);
+		assertTrue("Expected a Map from the encoded element", m instanceof Map);
 		Map<?, ?> map = (Map<?, ?>) m;
 
 		// test userAgents for "special value" which is really just a null value.
@@ -749,4 +751,76 @@ public class JSIndexTest
 		assertEquals(1, types.size());
 		assertTrue(types.get(0).isInternal());
 	}
+
+	@Test
+	public void testMembersStartingWithPrefixIgnoreCase()
+	{
+		TypeElement type = new TypeElement();
+		type.setName("Testing");
+		for (String name : CollectionsUtil.newList("apple", "Apricot", "APPLET", "banana", "item", "\u0131tem"))
+		{
+			PropertyElement property = new PropertyElement();
+			property.setName(name);
+			type.addProperty(property);
+		}
+		FunctionElement function = new FunctionElement();
+		function.setName("applyAll");
+		type.addProperty(function);
+
+		JSIndexWriter writer = new JSIndexWriter();
+		writer.writeType(getIndex(), type);
+
+		JSIndexReader reader = new JSIndexReader();
+		List<String> types = CollectionsUtil.newList("Testing");
+		assertEquals(CollectionsUtil.newSet("apple", "Apricot", "APPLET"),
+				getNames(reader.getProperties(getIndex(), types, "aP")));
+		assertEquals(CollectionsUtil.newSet("apple", "APPLET"),
+				getNames(reader.getProperties(getIndex(), types, "appl")));
+		assertEquals(CollectionsUtil.newSet("applyAll"), getNames(reader.getFunctions(getIndex(), types, "APP")));
+		// the dotless i matches I, ignoring case
+		assertEquals(CollectionsUtil.newSet("item", "\u0131tem"),
+				getNames(reader.getProperties(getIndex(), types, "IT")));
+		assertEquals(7, reader.getProperties(getIndex(), types, "").size()
+				+ reader.getFunctions(getIndex(), types, null).size());
+	}
+
+	@Test
+	public void testGlobalsStartingWithAreLookedUpAgainOnIndexChange()
+	{
+		TypeElement global = new TypeElement();
+		global.setName(JSTypeConstants.GLOBAL_TYPE);
+		PropertyElement alpha = new PropertyElement();
+		alpha.setName("zzqAlpha");
+		global.addProperty(alpha);
+
+		JSIndexWriter writer = new JSIndexWriter();
+		writer.writeType(getIndex(), global);
+
+		JSIndexQueryHelper queryHelper = new JSIndexQueryHelper(getIndex());
+		assertEquals(CollectionsUtil.newSet("zzqAlpha"),
+				getNames(queryHelper.getGlobalsStartingWith("globals.js", "zzq")));
+		assertEquals(CollectionsUtil.newSet("zzqAlpha"),
+				getNames(queryHelper.getGlobalsStartingWith("globals.js", "ZZQAL")));
+		assertTrue(queryHelper.getGlobalsStartingWith("globals.js", "zzqB").isEmpty());
+
+		PropertyElement alps = new PropertyElement();
+		alps.setName("zzqAlps");
+		TypeElement moreGlobals = new TypeElement();
+		moreGlobals.setName(JSTypeConstants.GLOBAL_TYPE);
+		moreGlobals.addProperty(alps);
+		writer.writeType(getIndex(), moreGlobals);
+
+		assertEquals(CollectionsUtil.newSet("zzqAlpha", "zzqAlps"),
+				getNames(queryHelper.getGlobalsStartingWith("globals.js", "zzqal")));
+	}
+
+	private Set<String> getNames(Collection<? extends PropertyElement> properties)
+	{
+		Set<String> names = new HashSet<String>();
+		for (PropertyElement property : properties)
+		{
+			names.add(property.getName());
+		}
+		return names;
+	}
 }
@@ -0,0 +1,384 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.parsing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import beaver.Symbol;
+
+import com.aptana.core.build.IProblem.Severity;
+import com.aptana.core.util.FileUtil;
+import com.aptana.core.util.IOUtil;
+import com.aptana.internal.parsing.PersistentParseCache;
+import com.aptana.parsing.ast.IParseError;
+import com.aptana.parsing.ast.IParseNode;
+import com.aptana.parsing.ast.IParseRootNode;
+import com.aptana.parsing.ast.ParseError;
+import com.aptana.parsing.ast.ParseNode;
+import com.aptana.parsing.ast.ParseRootNode;
+
+@SuppressWarnings("nls")
+public class PersistentParseCacheTest
+{
+	private static final String CONTENT_TYPE = "text/test";
+
+	static class TestNode extends ParseNode
+	{
+		private final String fText;
+
+		/**
+		 * Used when the node is read back
+		 */
+		private TestNode()
+		{
+			fText = null;
+		}
+
+		TestNode(String text, int start, int end)
+		{
+			fText = text;
+			setLocation(start, end);
+		}
+
+		public String getLanguage()
+		{
+			return CONTENT_TYPE;
+		}
+
+		public String getText()
+		{
+			return fText;
+		}
+	}
+
+	static class UnwritableNode extends TestNode
+	{
+		private final Object fData = new Object();
+
+		UnwritableNode(String text, int start, int end)
+		{
+			super(text, start, end);
+		}
+
+		Object getData()
+		{
+			return fData;
+		}
+	}
+
+	/**
+	 * Writable, but can't be created when read back
+	 */
+	static class NoDefaultConstructorNode extends TestNode
+	{
+		NoDefaultConstructorNode(String text, int start, int end)
+		{
+			super(text, start, end);
+		}
+	}
+
+	static class TestRootNode extends ParseRootNode
+	{
+		/**
+		 * Used when the node is read back
+		 */
+		private TestRootNode()
+		{
+			super(new Symbol[0]);
+		}
+
+		TestRootNode(int start, int end)
+		{
+			super(new Symbol[0], start, end);
+		}
+
+		public String getLanguage()
+		{
+			return CONTENT_TYPE;
+		}
+	}
+
+	/**
+	 * Creates a root with a node per word of the source
+	 */
+	static class TestParser extends AbstractParser
+	{
+		int parses;
+
+		@Override
+		protected void parse(IParseState parseState, WorkingParseResult working) throws Exception
+		{
+			parses++;
+
+			String source = parseState.getSource();
+			TestRootNode root = new TestRootNode(0, source.length() - 1);
+			int start = 0;
+
+			for (String word : source.split(" "))
+			{
+				root.addChild(new TestNode(word, start, start + word.length() - 1));
+				start += word.length() + 1;
+			}
+			working.setParseResult(root);
+		}
+	}
+
+	private File fDirectory;
+	private PersistentParseCache fCache;
+	private TestParser fParser;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		fDirectory = FileUtil.getTempDirectory().append(FileUtil.getRandomFileName("asts", null)).toFile();
+		fCache = new PersistentParseCache(fDirectory, 1024 * 1024);
+		fParser = new TestParser();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		fCache.dispose();
+		FileUtil.deleteRecursively(fDirectory);
+		fCache = null;
+		fParser = null;
+	}
+
+	private ParseResult parseAndStore(String source) throws Exception
+	{
+		ParseState parseState = new ParseState(source);
+		ParseResult result = fParser.parse(parseState);
+
+		fCache.put(CONTENT_TYPE, parseState, fParser, result);
+		fCache.flush();
+
+		return result;
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception
+	{
+		String source = "one two three";
+		ParseResult stored = parseAndStore(source);
+
+		ParseResult result = fCache.get(CONTENT_TYPE, new ParseState(source), fParser);
+
+		assertNotNull(result);
+		assertTrue(result.getErrors().isEmpty());
+		assertEquals(1, fCache.getWrites());
+		assertEquals(1, fCache.getHits());
+
+		IParseRootNode expected = stored.getRootNode();
+		IParseRootNode actual = result.getRootNode();
+
+		assertNotSame(expected, actual);
+		assertEquals(expected.getStartingOffset(), actual.getStartingOffset());
+		assertEquals(expected.getEndingOffset(), actual.getEndingOffset());
+		assertEquals(3, actual.getChildCount());
+
+		for (int i = 0; i < 3; i++)
+		{
+			IParseNode child = actual.getChild(i);
+
+			assertEquals(actual, child.getParent());
+			assertEquals(expected.getChild(i).getText(), child.getText());
+			assertEquals(expected.getChild(i).getStartingOffset(), child.getStartingOffset());
+			assertEquals(expected.getChild(i).getEndingOffset(), child.getEndingOffset());
+		}
+
+		// the tree we read can be changed like any other
+		actual.addChild(new TestNode("four", 14, 17));
+		assertEquals(4, actual.getChildCount());
+	}
+
+	@Test
+	public void testDifferentSourceMisses() throws Exception
+	{
+		parseAndStore("one two three");
+
+		assertNull(fCache.get(CONTENT_TYPE, new ParseState("one two four"), fParser));
+		assertEquals(1, fCache.getMisses());
+	}
+
+	@Test
+	public void testDifferentContentTypeMisses() throws Exception
+	{
+		parseAndStore("one two three");
+
+		assertNull(fCache.get("text/other", new ParseState("one two three"), fParser));
+	}
+
+	@Test
+	public void testDifferentStartingOffsetMisses() throws Exception
+	{
+		parseAndStore("one two three");
+
+		assertNull(fCache.get(CONTENT_TYPE, new ParseState("one two three", 10), fParser));
+	}
+
+	@Test
+	public void testResultWithErrorsNotStored() throws Exception
+	{
+		ParseState parseState = new ParseState("one two three");
+		ParseResult result = new ParseResult(fParser.parse(parseState).getRootNode(),
+				Collections.<IParseError> singletonList(new ParseError(CONTENT_TYPE, 0, 3, "error", Severity.ERROR)));
+
+		fCache.put(CONTENT_TYPE, parseState, fParser, result);
+		fCache.flush();
+
+		assertEquals(0, fCache.getWrites());
+		assertNull(fCache.get(CONTENT_TYPE, new ParseState("one two three"), fParser));
+	}
+
+	@Test
+	public void testUnwritableResultNotStored() throws Exception
+	{
+		ParseState parseState = new ParseState("one two three");
+		ParseResult result = fParser.parse(parseState);
+		result.getRootNode().addChild(new UnwritableNode("four", 14, 17));
+
+		fCache.put(CONTENT_TYPE, parseState, fParser, result);
+		fCache.flush();
+
+		assertEquals(0, fCache.getWrites());
+		assertEquals(0, fDirectory.list().length);
+	}
+
+	@Test
+	public void testNodeWithoutDefaultConstructorNotStored() throws Exception
+	{
+		ParseState parseState = new ParseState("one two three");
+		ParseResult result = fParser.parse(parseState);
+		result.getRootNode().addChild(new NoDefaultConstructorNode("four", 14, 17));
+
+		fCache.put(CONTENT_TYPE, parseState, fParser, result);
+		fCache.flush();
+
+		assertEquals(0, fCache.getWrites());
+		assertEquals(0, fDirectory.list().length);
+	}
+
+	@Test
+	public void testCorruptEntryDiscarded() throws Exception
+	{
+		parseAndStore("one two three");
+
+		File[] files = fDirectory.listFiles();
+		assertEquals(1, files.length);
+		IOUtil.write(new FileOutputStream(files[0]), "not an AST");
+
+		assertNull(fCache.get(CONTENT_TYPE, new ParseState("one two three"), fParser));
+		assertFalse(files[0].exists());
+	}
+
+	@Test
+	public void testEviction() throws Exception
+	{
+		parseAndStore("one two three");
+		long entrySize = fCache.getSize();
+
+		fCache.dispose();
+		fCache = new PersistentParseCache(fDirectory, entrySize * 4);
+
+		for (int i = 0; i < 10; i++)
+		{
+			parseAndStore("one two three " + i);
+			assertTrue(fCache.getSize() <= entrySize * 4);
+		}
+		assertTrue(fDirectory.listFiles().length <= 4);
+	}
+
+	@Test
+	public void testClear() throws Exception
+	{
+		parseAndStore("one two three");
+		fCache.clear();
+
+		assertEquals(0, fCache.getSize());
+		assertNull(fCache.get(CONTENT_TYPE, new ParseState("one two three"), fParser));
+	}
+
+	@Test
+	public void testCanCache() throws Exception
+	{
+		assertTrue(PersistentParseCache.canCache(new ParseState("source")));
+		assertFalse(PersistentParseCache.canCache(new ParseState("source")
+		{
+			// options of subclasses aren't part of the key
+		}));
+	}
+
+	@Test
+	public void testParsingEngineUsesStoredResult() throws Exception
+	{
+		final IParserPool pool = new IParserPool()
+		{
+			public IParser create()
+			{
+				return fParser;
+			}
+
+			public boolean validate(IParser parser)
+			{
+				return true;
+			}
+
+			public void expire(IParser parser)
+			{
+			}
+
+			public IParser checkOut()
+			{
+				return fParser;
+			}
+
+			public void checkIn(IParser parser)
+			{
+			}
+
+			public void dispose()
+			{
+			}
+		};
+		ParsingEngine.IParserPoolProvider provider = new ParsingEngine.IParserPoolProvider()
+		{
+			public IParserPool getParserPool(String contentTypeId)
+			{
+				return pool;
+			}
+		};
+		String source = "one two three";
+
+		// a previous session
+		new ParsingEngine(provider, 10, 0, fCache)
+		{
+		}.parse(CONTENT_TYPE, new ParseState(source));
+		fCache.flush();
+		assertEquals(1, fParser.parses);
+
+		IParseRootNode root = new ParsingEngine(provider, 10, 0, fCache)
+		{
+		}.parse(CONTENT_TYPE, new ParseState(source)).getRootNode();
+
+		assertEquals(1, fParser.parses);
+		assertEquals(3, root.getChildCount());
+	}
+}
@@ -11,12 +11,14 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 import com.aptana.parsing.ParseStateCacheKeyWithCommentsTest;
+import com.aptana.parsing.PersistentParseCacheTest;
 
 @RunWith(Suite.class)
 // @formatter:off
 @Suite.SuiteClasses({
 	ParseStateCacheKeyWithCommentsTest.class,
 	ParseStateTest.class,
+	PersistentParseCacheTest.class,
 	com.aptana.json.AllTests.class,
 	com.aptana.parsing.ast.AllTests.class,
 	com.aptana.parsing.lexer.LexerTests.class,
@@ -0,0 +1,170 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.scope;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ScopeSelectorIndexTests
+{
+	private static final String[] SELECTORS = {
+			"string",
+			"string.quoted",
+			"source.php",
+			"source.js string - source.php",
+			"meta.tag entity",
+			"meta.tag.block entity",
+			"entity.name.tag",
+			"entity.name.tag.doctype.html, meta.tag.sgml.html",
+			"text source",
+			"meta source",
+			"text -meta",
+			"text -meta source",
+			"text.html - (source | string)",
+			"constant.numeric",
+			"comment",
+			"keyword & source" };
+
+	private static final String[] SCOPES = {
+			"source.php string.quoted",
+			"source.js string.quoted.single.js",
+			"source.js constant.numeric.js",
+			"text.html.markdown meta.disable-markdown meta.tag.block.any.html entity.name.tag.block.any.html",
+			"text.html.basic meta.tag.sgml.html meta.tag.sgml.doctype.html entity.name.tag.doctype.html",
+			"text.haml meta.line.ruby.haml source.ruby.embedded.haml comment.line.number-sign.ruby",
+			"text.haml meta.line.ruby.haml",
+			"text.haml",
+			"text.html.basic",
+			"text.html.basic source.ruby.embedded.html",
+			"keyword source",
+			" source.php  string.quoted ",
+			"",
+			"plain" };
+
+	@Test
+	public void testDeepestElementWins()
+	{
+		ScopeSelectorIndex<String> index = new ScopeSelectorIndex<String>();
+		index.add(new ScopeSelector("string"), "string");
+		index.add(new ScopeSelector("source.php"), "source");
+		assertEquals("string", index.bestMatch("source.php string.quoted"));
+		assertEquals("source", index.bestMatch("source.php"));
+		assertNull(index.bestMatch("source.js"));
+		assertNull(index.bestMatch(null));
+	}
+
+	@Test
+	public void testLastAddedWinsTies()
+	{
+		ScopeSelectorIndex<String> index = new ScopeSelectorIndex<String>();
+		index.add(new ScopeSelector("text -meta source"), "first");
+		index.add(new ScopeSelector("text source"), "no match");
+		index.add(new ScopeSelector("text -meta"), "last");
+		assertEquals("last", index.bestMatch("text.haml"));
+		assertEquals(3, index.size());
+	}
+
+	@Test
+	public void testMatchAnyRanksLowest()
+	{
+		ScopeSelectorIndex<String> index = new ScopeSelectorIndex<String>();
+		index.add(new ScopeSelector("source"), "source");
+		index.add(new MatchAnyScopeSelector(), "any");
+		assertEquals("source", index.bestMatch("text.html source.ruby"));
+		assertEquals("any", index.bestMatch("text.html"));
+	}
+
+	@Test
+	public void testSameAsBestMatch()
+	{
+		List<IScopeSelector> selectors = new ArrayList<IScopeSelector>();
+		for (String selector : SELECTORS)
+		{
+			selectors.add(new ScopeSelector(selector));
+		}
+
+		for (String scope : SCOPES)
+		{
+			for (int i = 0; i < selectors.size(); i++)
+			{
+				// rotate the selectors, so that each takes its turn last
+				List<IScopeSelector> rotated = new ArrayList<IScopeSelector>(selectors.subList(i, selectors.size()));
+				rotated.addAll(selectors.subList(0, i));
+				ScopeSelectorIndex<IScopeSelector> rotatedIndex = new ScopeSelectorIndex<IScopeSelector>();
+				for (IScopeSelector selector : rotated)
+				{
+					rotatedIndex.add(selector, selector);
+				}
+				assertSame(scope, ScopeSelector.bestMatch(rotated, scope), rotatedIndex.bestMatch(scope));
+			}
+		}
+	}
+
+	@Test
+	public void testConcurrentLookups() throws Exception
+	{
+		final ScopeSelectorIndex<IScopeSelector> index = new ScopeSelectorIndex<IScopeSelector>();
+		List<IScopeSelector> selectors = new ArrayList<IScopeSelector>();
+		for (String selector : SELECTORS)
+		{
+			ScopeSelector scopeSelector = new ScopeSelector(selector);
+			selectors.add(scopeSelector);
+			index.add(scopeSelector, scopeSelector);
+		}
+		final List<IScopeSelector> expected = new ArrayList<IScopeSelector>();
+		for (String scope : SCOPES)
+		{
+			expected.add(ScopeSelector.bestMatch(selectors, scope));
+		}
+
+		final AtomicInteger failures = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++)
+		{
+			Thread thread = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					for (int i = 0; i < 1000; i++)
+					{
+						int s = i % SCOPES.length;
+						if (index.bestMatch(SCOPES[s]) != expected.get(s))
+						{
+							failures.incrementAndGet();
+						}
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+		assertEquals(0, failures.get());
+	}
+
+	@Test
+	public void testSplitLikeWhitespacePattern()
+	{
+		assertEquals(Arrays.asList("a", "b.c"), Arrays.asList(MatchContext.split("a \t b.c  ")));
+		assertEquals(Arrays.asList("", "a"), Arrays.asList(MatchContext.split(" a")));
+		assertEquals(Arrays.asList(""), Arrays.asList(MatchContext.split("")));
+		assertEquals(0, MatchContext.split("  ").length);
+	}
+}
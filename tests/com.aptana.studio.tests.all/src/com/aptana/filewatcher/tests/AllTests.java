@@ -0,0 +1,24 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.filewatcher.tests;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+@RunWith(Suite.class)
+// @formatter:off
+@Suite.SuiteClasses({
+	BatchedWatchTest.class,
+	FileChangeSetTest.class,
+	WatchServiceNotifierTest.class
+})
+// @formatter:on
+public class AllTests
+{
+
+}
@@ -0,0 +1,193 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.filewatcher.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.contentobjects.jnotify.IJNotify;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aptana.core.util.FileUtil;
+import com.aptana.filewatcher.FileChangeBatch;
+import com.aptana.filewatcher.FileChangeSet;
+import com.aptana.filewatcher.FileWatcher;
+import com.aptana.filewatcher.IFileChangeBatchListener;
+
+/**
+ * Tests {@link FileWatcher#addBatchedWatch(String, int, boolean, long, IFileChangeBatchListener)} on a real directory
+ */
+public class BatchedWatchTest
+{
+	/**
+	 * How long a batch waits for more events, in milliseconds
+	 */
+	private static final long DELAY = 200;
+
+	/**
+	 * How long we wait for a batch to be reported, in milliseconds
+	 */
+	private static final long TIMEOUT = 10000;
+
+	private File fRoot;
+	private int fWatchId = -1;
+	private final BlockingQueue<FileChangeBatch> fBatches = new LinkedBlockingQueue<FileChangeBatch>();
+	private final BlockingQueue<Long> fReportTimes = new LinkedBlockingQueue<Long>();
+
+	@Before
+	public void setUp() throws Exception
+	{
+		fRoot = FileUtil.getTempDirectory().append(FileUtil.getRandomFileName("batched", null)).toFile(); //$NON-NLS-1$
+		fRoot.mkdirs();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		if (fWatchId != -1)
+		{
+			FileWatcher.removeWatch(fWatchId);
+			fWatchId = -1;
+		}
+		FileUtil.deleteRecursively(fRoot);
+		fRoot = null;
+	}
+
+	private void watch() throws Exception
+	{
+		fWatchId = FileWatcher.addBatchedWatch(fRoot.getAbsolutePath(), IJNotify.FILE_ANY, false, DELAY,
+				new IFileChangeBatchListener()
+				{
+					public void filesChanged(FileChangeBatch batch)
+					{
+						fReportTimes.add(System.currentTimeMillis());
+						fBatches.add(batch);
+					}
+				});
+	}
+
+	private void write(String name, String contents) throws IOException
+	{
+		FileWriter writer = new FileWriter(new File(fRoot, name));
+		try
+		{
+			writer.write(contents);
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+
+	/**
+	 * Waits for the next batch, and returns the changes to the watched directory
+	 */
+	private FileChangeSet nextChangeSet() throws InterruptedException
+	{
+		FileChangeBatch batch = fBatches.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+		assertNotNull("No batch reported", batch); //$NON-NLS-1$
+
+		Collection<FileChangeSet> changeSets = batch.getChangeSets();
+		assertEquals(batch.toString(), 1, changeSets.size());
+		return changeSets.iterator().next();
+	}
+
+	@Test
+	public void testCreatedAndDeletedNotReported() throws Exception
+	{
+		watch();
+
+		write("a.txt", "a"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue(new File(fRoot, "a.txt").delete()); //$NON-NLS-1$
+		write("b.txt", "b"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		FileChangeSet changes = nextChangeSet();
+		assertEquals(Collections.singleton("b.txt"), changes.getChanged()); //$NON-NLS-1$
+		assertEquals(0, changes.getKind("a.txt")); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testDeletedAndCreatedReportedAsModified() throws Exception
+	{
+		write("a.txt", "a"); //$NON-NLS-1$ //$NON-NLS-2$
+		watch();
+
+		assertTrue(new File(fRoot, "a.txt").delete()); //$NON-NLS-1$
+		write("a.txt", "replaced"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		FileChangeSet changes = nextChangeSet();
+		assertEquals(Collections.singleton("a.txt"), changes.getModified()); //$NON-NLS-1$
+		assertTrue(changes.getCreated().isEmpty());
+		assertTrue(changes.getDeleted().isEmpty());
+	}
+
+	@Test
+	public void testRepeatedModifiesReportedOnce() throws Exception
+	{
+		write("a.txt", "a"); //$NON-NLS-1$ //$NON-NLS-2$
+		watch();
+
+		for (int i = 0; i < 3; i++)
+		{
+			write("a.txt", "changed " + i); //$NON-NLS-1$ //$NON-NLS-2$
+			Thread.sleep(DELAY / 10);
+		}
+
+		FileChangeSet changes = nextChangeSet();
+		assertEquals(Collections.singleton("a.txt"), changes.getChanged()); //$NON-NLS-1$
+		assertEquals(IJNotify.FILE_MODIFIED, changes.getKind("a.txt")); //$NON-NLS-1$
+		assertNull(fBatches.poll(DELAY * 3, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testBatchWaitsUntilQuiet() throws Exception
+	{
+		watch();
+
+		write("a.txt", "a"); //$NON-NLS-1$ //$NON-NLS-2$
+		Thread.sleep(DELAY / 2);
+		write("b.txt", "b"); //$NON-NLS-1$ //$NON-NLS-2$
+		long lastWrite = System.currentTimeMillis();
+
+		FileChangeSet changes = nextChangeSet();
+		assertEquals(2, changes.getCreated().size());
+		assertTrue(fReportTimes.take() - lastWrite >= DELAY);
+	}
+
+	@Test
+	public void testSteadyStreamReportedAfterMaxDelay() throws Exception
+	{
+		watch();
+
+		// keeps writing for twice as long as a batch may take
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < 40; i++)
+		{
+			write("a.txt", "changed " + i); //$NON-NLS-1$ //$NON-NLS-2$
+			Thread.sleep(DELAY / 4);
+		}
+
+		nextChangeSet();
+		long reported = fReportTimes.take() - start;
+		assertTrue("First batch reported after " + reported + "ms", reported < 7 * DELAY); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
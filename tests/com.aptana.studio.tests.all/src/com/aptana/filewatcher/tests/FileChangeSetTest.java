@@ -0,0 +1,72 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.filewatcher.tests;
+
+import static net.contentobjects.jnotify.IJNotify.FILE_CREATED;
+import static net.contentobjects.jnotify.IJNotify.FILE_DELETED;
+import static net.contentobjects.jnotify.IJNotify.FILE_MODIFIED;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.aptana.filewatcher.FileChangeSet;
+
+public class FileChangeSetTest
+{
+	private int fold(int... events)
+	{
+		int kind = 0;
+		for (int event : events)
+		{
+			kind = FileChangeSet.fold(kind, event);
+		}
+		return kind;
+	}
+
+	@Test
+	public void testCreatedAndDeleted()
+	{
+		assertEquals(0, fold(FILE_CREATED, FILE_DELETED));
+	}
+
+	@Test
+	public void testDeletedAndCreated()
+	{
+		assertEquals(FILE_MODIFIED, fold(FILE_DELETED, FILE_CREATED));
+	}
+
+	@Test
+	public void testRepeatedModifies()
+	{
+		assertEquals(FILE_MODIFIED, fold(FILE_MODIFIED, FILE_MODIFIED, FILE_MODIFIED));
+	}
+
+	@Test
+	public void testCreatedAndModified()
+	{
+		assertEquals(FILE_CREATED, fold(FILE_CREATED, FILE_MODIFIED, FILE_MODIFIED));
+	}
+
+	@Test
+	public void testModifiedAndDeleted()
+	{
+		assertEquals(FILE_DELETED, fold(FILE_MODIFIED, FILE_DELETED));
+	}
+
+	@Test
+	public void testCreatedDeletedAndCreatedAgain()
+	{
+		assertEquals(FILE_CREATED, fold(FILE_CREATED, FILE_DELETED, FILE_CREATED));
+	}
+
+	@Test
+	public void testDeletedCreatedAndDeletedAgain()
+	{
+		assertEquals(FILE_DELETED, fold(FILE_DELETED, FILE_CREATED, FILE_DELETED));
+	}
+}
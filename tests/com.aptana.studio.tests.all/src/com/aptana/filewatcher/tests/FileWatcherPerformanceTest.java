@@ -0,0 +1,230 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.filewatcher.tests;
+
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.contentobjects.jnotify.IJNotify;
+import net.contentobjects.jnotify.JNotifyAdapter;
+
+import org.eclipse.test.performance.Performance;
+import org.eclipse.test.performance.PerformanceMeter;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestName;
+
+import com.aptana.core.util.FileUtil;
+import com.aptana.filewatcher.nio.WatchServiceNotifier;
+import com.aptana.filewatcher.poller.PollingNotifier;
+import com.aptana.testing.categories.PerformanceTests;
+
+/**
+ * Compares the notifiers watching a tree of 100,000 files: how much CPU they take while nothing changes, and how long
+ * it takes them to report a change.
+ */
+@Category({ PerformanceTests.class })
+public class FileWatcherPerformanceTest
+{
+	private static final int DIRECTORIES = 100;
+	private static final int SUBDIRECTORIES = 10;
+	private static final int FILES = 100;
+
+	/**
+	 * How long we measure an idle tree, in milliseconds
+	 */
+	private static final long IDLE_PERIOD = 10000;
+
+	/**
+	 * How long we wait for a change to be reported, in milliseconds
+	 */
+	private static final long TIMEOUT = 10000;
+
+	private static final int CHANGES = 10;
+
+	private static File fgRoot;
+
+	@Rule
+	public TestName name = new TestName();
+	private PerformanceMeter fPerformanceMeter;
+	private IJNotify fNotifier;
+	private int fWatchId = -1;
+	private final BlockingQueue<File> fReported = new LinkedBlockingQueue<File>();
+
+	@BeforeClass
+	public static void createTree() throws IOException
+	{
+		fgRoot = FileUtil.getTempDirectory().append(FileUtil.getRandomFileName("tree", null)).toFile(); //$NON-NLS-1$
+		for (int i = 0; i < DIRECTORIES; i++)
+		{
+			for (int j = 0; j < SUBDIRECTORIES; j++)
+			{
+				File directory = new File(fgRoot, "dir" + i + File.separator + "sub" + j); //$NON-NLS-1$ //$NON-NLS-2$
+				directory.mkdirs();
+				for (int k = 0; k < FILES; k++)
+				{
+					new File(directory, "file" + k + ".txt").createNewFile(); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+			}
+		}
+	}
+
+	@AfterClass
+	public static void deleteTree()
+	{
+		FileUtil.deleteRecursively(fgRoot);
+		fgRoot = null;
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		if (fWatchId != -1)
+		{
+			fNotifier.removeWatch(fWatchId);
+			fWatchId = -1;
+		}
+		if (fPerformanceMeter != null)
+		{
+			fPerformanceMeter.dispose();
+			fPerformanceMeter = null;
+		}
+		fNotifier = null;
+	}
+
+	@Test
+	public void testPollingIdle() throws Exception
+	{
+		measureIdle(new PollingNotifier());
+	}
+
+	@Test
+	public void testWatchServiceIdle() throws Exception
+	{
+		measureIdle(new WatchServiceNotifier());
+	}
+
+	@Test
+	public void testPollingLatency() throws Exception
+	{
+		measureLatency(new PollingNotifier());
+	}
+
+	@Test
+	public void testWatchServiceLatency() throws Exception
+	{
+		measureLatency(new WatchServiceNotifier());
+	}
+
+	/**
+	 * Measures the CPU time of the process while the tree is watched and nothing changes.
+	 */
+	private void measureIdle(IJNotify notifier) throws Exception
+	{
+		watch(notifier);
+
+		fPerformanceMeter.start();
+		Thread.sleep(IDLE_PERIOD);
+		fPerformanceMeter.stop();
+
+		commitMeasurements();
+	}
+
+	/**
+	 * Measures the time from writing to a file in the tree until the change is reported.
+	 */
+	private void measureLatency(IJNotify notifier) throws Exception
+	{
+		watch(notifier);
+
+		for (int i = 0; i < CHANGES; i++)
+		{
+			File file = new File(fgRoot, "dir" + (i * DIRECTORIES / CHANGES) + File.separator + "sub0" //$NON-NLS-1$ //$NON-NLS-2$
+					+ File.separator + "file" + i + ".txt"); //$NON-NLS-1$ //$NON-NLS-2$
+			fReported.clear();
+
+			fPerformanceMeter.start();
+			FileWriter writer = new FileWriter(file);
+			try
+			{
+				writer.write("changed " + i); //$NON-NLS-1$
+			}
+			finally
+			{
+				writer.close();
+			}
+			waitFor(file);
+			fPerformanceMeter.stop();
+		}
+
+		commitMeasurements();
+	}
+
+	/**
+	 * Watches the tree, and waits for the notifier to settle: the poller reports every file as created on its first
+	 * scan.
+	 */
+	private void watch(IJNotify notifier) throws Exception
+	{
+		fNotifier = notifier;
+		fWatchId = notifier.addWatch(fgRoot.getAbsolutePath(), IJNotify.FILE_ANY, true, true, new JNotifyAdapter()
+		{
+			@Override
+			public void fileCreated(int wd, String rootPath, String name)
+			{
+				fReported.add(new File(rootPath, name));
+			}
+
+			@Override
+			public void fileModified(int wd, String rootPath, String name)
+			{
+				fReported.add(new File(rootPath, name));
+			}
+		});
+		while (fReported.poll(5, TimeUnit.SECONDS) != null)
+		{
+			fReported.clear();
+		}
+
+		fPerformanceMeter = Performance.getDefault().createPerformanceMeter(
+				getClass().getName() + '#' + name.getMethodName() + "()"); //$NON-NLS-1$
+	}
+
+	private void waitFor(File file) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (true)
+		{
+			File reported = fReported.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+			if (reported == null)
+			{
+				fail("No change reported for " + file); //$NON-NLS-1$
+			}
+			if (reported.equals(file))
+			{
+				return;
+			}
+		}
+	}
+
+	private void commitMeasurements()
+	{
+		fPerformanceMeter.commit();
+		Performance.getDefault().assertPerformance(fPerformanceMeter);
+	}
+}
@@ -0,0 +1,215 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.filewatcher.tests;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.contentobjects.jnotify.IJNotify;
+import net.contentobjects.jnotify.JNotifyAdapter;
+import net.contentobjects.jnotify.JNotifyException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aptana.core.util.FileUtil;
+import com.aptana.filewatcher.nio.WatchServiceNotifier;
+
+public class WatchServiceNotifierTest
+{
+	/**
+	 * How long we wait for a change to be reported, in milliseconds
+	 */
+	private static final long TIMEOUT = 10000;
+
+	private static final String CREATED = "created "; //$NON-NLS-1$
+	private static final String DELETED = "deleted "; //$NON-NLS-1$
+	private static final String MODIFIED = "modified "; //$NON-NLS-1$
+
+	private File fRoot;
+	private WatchServiceNotifier fNotifier;
+	private int fWatchId = -1;
+	private final BlockingQueue<String> fReported = new LinkedBlockingQueue<String>();
+
+	@Before
+	public void setUp() throws Exception
+	{
+		fRoot = FileUtil.getTempDirectory().append(FileUtil.getRandomFileName("watched", null)).toFile(); //$NON-NLS-1$
+		fRoot.mkdirs();
+		fNotifier = new WatchServiceNotifier();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		if (fWatchId != -1)
+		{
+			fNotifier.removeWatch(fWatchId);
+			fWatchId = -1;
+		}
+		FileUtil.deleteRecursively(fRoot);
+		fRoot = null;
+		fNotifier = null;
+	}
+
+	private void watch(boolean watchSubtree) throws JNotifyException
+	{
+		fWatchId = fNotifier.addWatch(fRoot.getAbsolutePath(), IJNotify.FILE_ANY, watchSubtree, true,
+				new JNotifyAdapter()
+				{
+					@Override
+					public void fileCreated(int wd, String rootPath, String name)
+					{
+						fReported.add(CREATED + name);
+					}
+
+					@Override
+					public void fileDeleted(int wd, String rootPath, String name)
+					{
+						fReported.add(DELETED + name);
+					}
+
+					@Override
+					public void fileModified(int wd, String rootPath, String name)
+					{
+						fReported.add(MODIFIED + name);
+					}
+				});
+	}
+
+	private void write(File file, String contents) throws IOException
+	{
+		FileWriter writer = new FileWriter(file);
+		try
+		{
+			writer.write(contents);
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+
+	/**
+	 * Waits until the event is reported, and returns the events reported before it
+	 */
+	private List<String> waitFor(String event) throws InterruptedException
+	{
+		List<String> before = new ArrayList<String>();
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (true)
+		{
+			String reported = fReported.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+			if (reported == null)
+			{
+				fail("Not reported: " + event + ", got " + before); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			if (reported.equals(event))
+			{
+				return before;
+			}
+			before.add(reported);
+		}
+	}
+
+	@Test
+	public void testFileCreated() throws Exception
+	{
+		watch(false);
+
+		write(new File(fRoot, "a.txt"), "a"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		waitFor(CREATED + "a.txt"); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testFileModified() throws Exception
+	{
+		File file = new File(fRoot, "a.txt"); //$NON-NLS-1$
+		write(file, "a"); //$NON-NLS-1$
+		watch(false);
+
+		write(file, "changed"); //$NON-NLS-1$
+
+		waitFor(MODIFIED + "a.txt"); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testFileDeleted() throws Exception
+	{
+		File file = new File(fRoot, "a.txt"); //$NON-NLS-1$
+		write(file, "a"); //$NON-NLS-1$
+		watch(false);
+
+		assertTrue(file.delete());
+
+		waitFor(DELETED + "a.txt"); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testSubtreeChangeReported() throws Exception
+	{
+		File directory = new File(fRoot, "dir"); //$NON-NLS-1$
+		directory.mkdirs();
+		watch(true);
+
+		write(new File(directory, "a.txt"), "a"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		waitFor(CREATED + "dir" + File.separator + "a.txt"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testNewSubtreeWatched() throws Exception
+	{
+		watch(true);
+
+		File directory = new File(fRoot, "dir"); //$NON-NLS-1$
+		assertTrue(directory.mkdir());
+		waitFor(CREATED + "dir"); //$NON-NLS-1$
+
+		// reported whether it shows up before or after the new directory is registered
+		File file = new File(directory, "a.txt"); //$NON-NLS-1$
+		write(file, "a"); //$NON-NLS-1$
+		waitFor(CREATED + "dir" + File.separator + "a.txt"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		assertTrue(file.delete());
+		waitFor(DELETED + "dir" + File.separator + "a.txt"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testSubtreeNotWatched() throws Exception
+	{
+		File directory = new File(fRoot, "dir"); //$NON-NLS-1$
+		directory.mkdirs();
+		watch(false);
+
+		write(new File(directory, "a.txt"), "a"); //$NON-NLS-1$ //$NON-NLS-2$
+		write(new File(fRoot, "b.txt"), "b"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		String unwatched = CREATED + "dir" + File.separator + "a.txt"; //$NON-NLS-1$ //$NON-NLS-2$
+		List<String> before = waitFor(CREATED + "b.txt"); //$NON-NLS-1$
+		assertTrue(before.toString(), !before.contains(unwatched));
+	}
+
+	@Test(expected = JNotifyException.class)
+	public void testMissingPathRefused() throws Exception
+	{
+		fNotifier.addWatch(new File(fRoot, "missing").getAbsolutePath(), IJNotify.FILE_ANY, true, true, //$NON-NLS-1$
+				new JNotifyAdapter());
+	}
+}
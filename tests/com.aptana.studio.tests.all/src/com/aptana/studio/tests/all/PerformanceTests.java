@@ -14,6 +14,7 @@ import org.junit.runners.Suite;
 // @formatter:off
 @Suite.SuiteClasses({
 	com.aptana.studio.tests.startup.AllTests.class,
+	com.aptana.filewatcher.tests.FileWatcherPerformanceTest.class,
 	com.aptana.git.core.tests.PerformanceTests.class,
 	com.aptana.js.core.tests.PerformanceTests.class,
 	com.aptana.scripting.tests.PerformanceTests.class,
@@ -10,6 +10,7 @@ package com.aptana.syncing.core.tests;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -29,6 +30,7 @@ import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileInfo;
 import org.eclipse.core.filesystem.IFileStore;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.Path;
 import org.junit.After;
 import org.junit.Before;
@@ -42,9 +44,11 @@ import com.aptana.ide.core.io.CoreIOPlugin;
 import com.aptana.ide.core.io.IConnectionPoint;
 import com.aptana.ide.syncing.core.SyncingPlugin;
 import com.aptana.ide.syncing.core.old.ILogger;
+import com.aptana.ide.syncing.core.old.SyncManifest;
 import com.aptana.ide.syncing.core.old.SyncState;
 import com.aptana.ide.syncing.core.old.Synchronizer;
 import com.aptana.ide.syncing.core.old.VirtualFileSyncPair;
+import com.aptana.ide.syncing.core.old.handlers.SyncEventHandlerAdapter;
 
 /**
  * @author Kevin Lindsey
@@ -2104,6 +2108,257 @@ public abstract class SyncingTests
 		assertEquals(1, syncManager.getServerFileTransferedCount());
 	}
 
+	/**
+	 * testFileCRCsMatchFromManifest
+	 * 
+	 * @throws IOException
+	 * @throws CoreException
+	 */
+	@Test
+	public void testFileCRCsMatchFromManifest() throws IOException, CoreException
+	{
+		long currentTime = new Date().getTime();
+		this.createClientFile(fileName, currentTime, "abc123"); //$NON-NLS-1$
+		this.createServerFile(fileName, currentTime, "abc123"); //$NON-NLS-1$
+		File manifestFile = File.createTempFile("manifest", null); //$NON-NLS-1$
+		manifestFile.delete();
+
+		Synchronizer syncManager = new Synchronizer(true, 0);
+		syncManager.setManifest(new SyncManifest(manifestFile));
+		VirtualFileSyncPair[] items = syncManager.getSyncItems(clientManager, serverManager, clientDirectory,
+				serverDirectory, null);
+		assertSyncPairLength(1, items);
+		assertEquals(SyncState.ItemsMatch, items[0].getSyncState());
+		assertTrue(manifestFile.exists());
+
+		// same size and modification time, so the manifest says the files still match without reading them
+		this.createServerFile(fileName, currentTime, "xyz789"); //$NON-NLS-1$
+		syncManager = new Synchronizer(true, 0);
+		syncManager.setManifest(new SyncManifest(manifestFile));
+		items = syncManager.getSyncItems(clientManager, serverManager, clientDirectory, serverDirectory, null);
+		assertSyncPairLength(1, items);
+		assertEquals(SyncState.ItemsMatch, items[0].getSyncState());
+
+		// whereas reading them tells them apart
+		syncManager = new Synchronizer(true, 0);
+		items = syncManager.getSyncItems(clientManager, serverManager, clientDirectory, serverDirectory, null);
+		assertSyncPairLength(1, items);
+		assertEquals(SyncState.CRCMismatch, items[0].getSyncState());
+		manifestFile.delete();
+	}
+
+	/**
+	 * testUploadRecordedInManifest
+	 * 
+	 * @throws IOException
+	 * @throws CoreException
+	 */
+	@Test
+	public void testUploadRecordedInManifest() throws IOException, CoreException
+	{
+		long currentTime = new Date().getTime();
+		this.createClientFile(fileName, currentTime, "abc123"); //$NON-NLS-1$
+		this.createServerFile(fileName, currentTime, "abc"); //$NON-NLS-1$
+		File manifestFile = File.createTempFile("manifest", null); //$NON-NLS-1$
+		manifestFile.delete();
+
+		Synchronizer syncManager = new Synchronizer(true, 0);
+		syncManager.setManifest(new SyncManifest(manifestFile));
+		VirtualFileSyncPair[] items = syncManager.getSyncItems(clientManager, serverManager, clientDirectory,
+				serverDirectory, null);
+		assertSyncPairLength(1, items);
+		assertEquals(SyncState.CRCMismatch, items[0].getSyncState());
+		assertTrue(syncManager.upload(items, null));
+		assertEquals(1, syncManager.getClientFileTransferedCount());
+
+		IFileInfo serverInfo = getFile(serverDirectory, fileName).fetchInfo();
+		this.createServerFile(fileName, serverInfo.getLastModified(), "xyz789"); //$NON-NLS-1$
+		syncManager = new Synchronizer(true, 0);
+		syncManager.setManifest(new SyncManifest(manifestFile));
+		items = syncManager.getSyncItems(clientManager, serverManager, clientDirectory, serverDirectory, null);
+		assertSyncPairLength(1, items);
+		assertEquals(SyncState.ItemsMatch, items[0].getSyncState());
+		manifestFile.delete();
+	}
+
+	/**
+	 * testNestedFilesUploadInParallel
+	 * 
+	 * @throws IOException
+	 * @throws CoreException
+	 */
+	@Test
+	public void testNestedFilesUploadInParallel() throws IOException, CoreException
+	{
+		long currentTime = new Date().getTime();
+		createNestedClientFiles(currentTime);
+
+		Synchronizer syncManager = new Synchronizer(false, 10);
+		syncManager.setTransferConnections(4);
+		SyncEventCounter counter = new SyncEventCounter();
+		syncManager.setEventHandler(counter);
+		VirtualFileSyncPair[] items = syncManager.getSyncItems(clientManager, serverManager, clientDirectory,
+				serverDirectory, null);
+		assertSyncPairLength(15, items);
+
+		// sync
+		assertTrue(syncManager.upload(items, null));
+
+		// every item is reported once, on the thread running the sync
+		assertEquals(15, counter.events);
+		assertEquals(15, counter.done);
+		assertEquals(0, counter.errors);
+
+		// check client counts
+		assertEquals(12, syncManager.getClientFileTransferedCount());
+
+		// check server counts
+		assertEquals(3, syncManager.getServerDirectoryCreatedCount());
+		assertEquals(0, syncManager.getServerFileTransferedCount());
+		assertEquals(15, syncManager.getNewFilesUploaded().length);
+
+		for (int i = 0; i < 3; i++)
+		{
+			for (int j = 0; j < 4; j++)
+			{
+				IFileStore file = getFile(serverDirectory, "dir" + i + "/file" + j + ".txt");
+				assertTrue("Server file: " + EFSUtils.getAbsolutePath(file) + " does not exist.", file.fetchInfo()
+						.exists());
+			}
+		}
+	}
+
+	/**
+	 * testNestedFilesDownloadInParallel
+	 * 
+	 * @throws IOException
+	 * @throws CoreException
+	 */
+	@Test
+	public void testNestedFilesDownloadInParallel() throws IOException, CoreException
+	{
+		long currentTime = new Date().getTime();
+		for (int i = 0; i < 3; i++)
+		{
+			this.createServerDirectory("dir" + i, currentTime);
+			for (int j = 0; j < 4; j++)
+			{
+				this.createServerFile("dir" + i + "/file" + j + ".txt", currentTime, "content " + i + j);
+			}
+		}
+
+		Synchronizer syncManager = new Synchronizer(false, 10);
+		syncManager.setTransferConnections(4);
+		SyncEventCounter counter = new SyncEventCounter();
+		syncManager.setEventHandler(counter);
+		VirtualFileSyncPair[] items = syncManager.getSyncItems(clientManager, serverManager, clientDirectory,
+				serverDirectory, null);
+
+		// sync
+		assertTrue(syncManager.download(items, null));
+
+		assertEquals(15, counter.events);
+		assertEquals(15, counter.done);
+
+		// check client counts
+		assertEquals(3, syncManager.getClientDirectoryCreatedCount());
+		assertEquals(0, syncManager.getClientFileTransferedCount());
+
+		// check server counts
+		assertEquals(12, syncManager.getServerFileTransferedCount());
+		assertEquals(15, syncManager.getNewFilesDownloaded().length);
+
+		for (int i = 0; i < 3; i++)
+		{
+			for (int j = 0; j < 4; j++)
+			{
+				IFileStore file = getFile(clientDirectory, "dir" + i + "/file" + j + ".txt");
+				assertTrue("Client file: " + EFSUtils.getAbsolutePath(file) + " does not exist.", file.fetchInfo()
+						.exists());
+			}
+		}
+	}
+
+	/**
+	 * testParallelUploadStopsOnError
+	 * 
+	 * @throws IOException
+	 * @throws CoreException
+	 */
+	@Test
+	public void testParallelUploadStopsOnError() throws IOException, CoreException
+	{
+		long currentTime = new Date().getTime();
+		createNestedClientFiles(currentTime);
+
+		Synchronizer syncManager = new Synchronizer(false, 10);
+		syncManager.setTransferConnections(4);
+		VirtualFileSyncPair[] items = syncManager.getSyncItems(clientManager, serverManager, clientDirectory,
+				serverDirectory, null);
+		// removes a file after listing it, so copying it fails
+		getFile(clientDirectory, "dir1/file2.txt").delete(EFS.NONE, null);
+
+		SyncEventCounter counter = new SyncEventCounter();
+		syncManager.setEventHandler(counter);
+		assertFalse(syncManager.upload(items, null));
+
+		// the copies already started finish, but no more items are handled
+		assertEquals(1, counter.errors);
+		assertEquals(counter.events - 1, counter.done);
+		int directories = syncManager.getServerDirectoryCreatedCount();
+		assertTrue(directories >= 2);
+		assertEquals(counter.done - directories, syncManager.getClientFileTransferedCount());
+	}
+
+	private void createNestedClientFiles(long modificationTime) throws IOException, CoreException
+	{
+		for (int i = 0; i < 3; i++)
+		{
+			this.createClientDirectory("dir" + i, modificationTime);
+			for (int j = 0; j < 4; j++)
+			{
+				this.createClientFile("dir" + i + "/file" + j + ".txt", modificationTime, "content " + i + j);
+			}
+		}
+	}
+
+	/**
+	 * Counts the sync events, making sure they all fire on the thread running the sync, in the order of the items.
+	 */
+	private static class SyncEventCounter extends SyncEventHandlerAdapter
+	{
+		private final Thread thread = Thread.currentThread();
+		int events;
+		int done;
+		int errors;
+		int lastIndex = -1;
+
+		@Override
+		public boolean syncEvent(VirtualFileSyncPair item, int index, int totalItems, IProgressMonitor monitor)
+		{
+			assertSame(thread, Thread.currentThread());
+			assertTrue(index > lastIndex);
+			lastIndex = index;
+			events++;
+			return true;
+		}
+
+		@Override
+		public void syncDone(VirtualFileSyncPair item, IProgressMonitor monitor)
+		{
+			assertSame(thread, Thread.currentThread());
+			done++;
+		}
+
+		@Override
+		public boolean syncErrorEvent(VirtualFileSyncPair item, Exception e, IProgressMonitor monitor)
+		{
+			assertSame(thread, Thread.currentThread());
+			errors++;
+			return false;
+		}
+	}
+
 	protected void assertSyncPairLength(int length, VirtualFileSyncPair[] items)
 	{
 		if (items.length != length)
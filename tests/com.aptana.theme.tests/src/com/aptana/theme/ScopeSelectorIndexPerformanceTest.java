@@ -0,0 +1,104 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.theme;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.FileLocator;
+import org.eclipse.core.runtime.Path;
+import org.junit.experimental.categories.Category;
+
+import com.aptana.core.tests.GlobalTimePerformanceTestCase;
+import com.aptana.core.util.IOUtil;
+import com.aptana.core.util.StringUtil;
+import com.aptana.scope.IScopeSelector;
+import com.aptana.scope.ScopeSelector;
+import com.aptana.scope.ScopeSelectorIndex;
+import com.aptana.testing.categories.PerformanceTests;
+import com.aptana.theme.internal.ThemeManager;
+
+/**
+ * Compares finding the best matching rule of a theme for the scopes of an editor by matching all the rules, to looking
+ * it up in a {@link ScopeSelectorIndex}.
+ */
+@Category({ PerformanceTests.class })
+public class ScopeSelectorIndexPerformanceTest extends GlobalTimePerformanceTestCase
+{
+	private List<String> scopes;
+	private List<IScopeSelector> selectors;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+
+		// scopes_performance.txt was generated from opening the js editor
+		URL url = FileLocator.find(ThemePlugin.getDefault().getBundle(),
+				Path.fromPortableString("scopes_performance.txt"), null);
+		String contents = IOUtil.read(new FileInputStream(new File(FileLocator.toFileURL(url).toURI())));
+		scopes = StringUtil.split(contents.replace("\r\n", "\n").replace('\r', '\n'), '\n');
+
+		selectors = new ArrayList<IScopeSelector>();
+		for (ThemeRule rule : ThemeManager.instance().getTheme("Twilight").getTokens())
+		{
+			if (!rule.isSeparator())
+			{
+				selectors.add(rule.getScopeSelector());
+			}
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		scopes = null;
+		selectors = null;
+
+		super.tearDown();
+	}
+
+	public void testBestMatch() throws Exception
+	{
+		for (int i = 0; i < 25; i++)
+		{
+			startMeasuring();
+			for (String scope : scopes)
+			{
+				ScopeSelector.bestMatch(selectors, scope);
+			}
+			stopMeasuring();
+		}
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	public void testIndex() throws Exception
+	{
+		for (int i = 0; i < 25; i++)
+		{
+			// building the index is part of the cost
+			startMeasuring();
+			ScopeSelectorIndex<IScopeSelector> index = new ScopeSelectorIndex<IScopeSelector>();
+			for (IScopeSelector selector : selectors)
+			{
+				index.add(selector, selector);
+			}
+			for (String scope : scopes)
+			{
+				index.bestMatch(scope);
+			}
+			stopMeasuring();
+		}
+		commitMeasurements();
+		assertPerformance();
+	}
+}
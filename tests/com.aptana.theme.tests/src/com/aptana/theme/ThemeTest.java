@@ -9,6 +9,7 @@ package com.aptana.theme;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -123,6 +124,27 @@ public class ThemeTest
 		assertEquals(new RGB(64, 0, 64), theme.getBackgroundAsRGB("constant.language"));
 	}
 
+	@Test
+	public void testTextAttributesAreCached()
+	{
+		ThemeGetTextAttribute cache = theme.obtainGetThemeTextAttribute();
+		String scope = "source.js constant.language.js";
+		TextAttribute attribute = theme.getTextAttribute(scope);
+		assertEquals(0, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(attribute, theme.getTextAttribute(scope));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertTrue(cache.getCacheSize() >= 1);
+
+		// changing the theme drops what was cached
+		ThemeRule rule = theme.getRuleForSelector(new ScopeSelector("constant.language.js"));
+		theme.updateRule(theme.getTokens().indexOf(rule),
+				rule.setTextAttribute(new RGBa(128, 128, 128), new RGBa(64, 0, 64), SWT.NORMAL));
+		assertNotSame(cache, theme.obtainGetThemeTextAttribute());
+		assertEquals(new RGB(128, 128, 128), theme.getTextAttribute(scope).getForeground().getRGB());
+	}
+
 	@Test
 	public void testUpdateGlobalBGColor()
 	{
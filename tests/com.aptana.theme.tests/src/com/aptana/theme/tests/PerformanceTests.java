@@ -4,12 +4,14 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import com.aptana.theme.ScopeSelectorIndexPerformanceTest;
 import com.aptana.theme.ThemePerformanceTest;
 
 @RunWith(Suite.class)
 //@formatter:off
 @SuiteClasses({
-	ThemePerformanceTest.class
+	ThemePerformanceTest.class,
+	ScopeSelectorIndexPerformanceTest.class
 })
 //@formatter:on
 public class PerformanceTests